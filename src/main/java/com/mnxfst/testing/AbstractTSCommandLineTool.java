@@ -86,6 +86,28 @@ public abstract class AbstractTSCommandLineTool {
 		}		
 	}
 	
+	/**
+	 * Extracts a double value from the named command-line option
+	 * @param cmd
+	 * @param opt
+	 * @param shortOpt
+	 * @return
+	 * @throws TSClientConfigurationException
+	 */
+	public double extractDoubleValue(CommandLine cmd, String opt, String shortOpt) throws TSClientConfigurationException {		
+		String tmp = cmd.getOptionValue(opt);
+		if(tmp == null || tmp.isEmpty())
+			tmp = cmd.getOptionValue(shortOpt);
+		if(tmp == null || tmp.isEmpty())
+			throw new TSClientConfigurationException("Missing value for required option '"+opt+"' ('"+shortOpt+"')");
+		
+		try {
+			return Double.parseDouble(tmp.trim());
+		} catch(NumberFormatException e) {
+			throw new TSClientConfigurationException("Value for required option '"+opt+"' ('"+shortOpt+"') does not represent a valid numerical value: " + tmp);
+		}		
+	}
+	
 	/**
 	 * Extracts a string value from the named command-line option
 	 * @param cmd
@@ -22,6 +22,13 @@ package com.mnxfst.testing.activities;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanContextTemplate;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionReplacementPattern;
+import com.mnxfst.testing.plan.expr.TSPlanExpression;
+
 /**
  * Defines a common parent to single steps within a {@link ITSPlan test plan}.
  * These steps a so-called <i>activities</i>
@@ -40,12 +47,84 @@ public abstract class AbstractTSPlanActivity implements TSPlanActivity {
 	public String className = null;
 	/** name of next activity */
 	public String nextActivity = null;
+	/** expression selecting the name of the next activity at runtime - overrides the next activity if present */
+	private String nextActivityExpression = null;
 	/** variable used for storing results etc */
 	private Map<String, String> contextExportVariables = null;
+	/** slot table the context variables are resolved against - replaced by the one of the compiled test plan */
+	private TSPlanContextSlotTable contextSlotTable = new TSPlanContextSlotTable();
 	
 	public AbstractTSPlanActivity() {
 		
 	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanActivity#bindContextVariables(com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable)
+	 */
+	public void bindContextVariables(TSPlanContextSlotTable slotTable) {
+		if(slotTable != null) {
+			this.contextSlotTable = slotTable;
+			resolveContextVariables();
+		}
+	}
+	
+	/**
+	 * Resolves the {@link TSPlanContextVariable variable handles} used by the activity. Invoked whenever the activity is bound
+	 * to another slot table, activities must invoke it at the end of their initialization as well. Default: does nothing
+	 */
+	protected void resolveContextVariables() {		
+	}
+	
+	/**
+	 * Returns the handle for the named context variable from the slot table the activity is bound to. If no name is provided,
+	 * the method returns null
+	 * @param name
+	 * @param type
+	 * @return
+	 */
+	protected TSPlanContextVariable getContextVariable(String name, ExecutionContextValueType type) {
+		if(name == null || name.isEmpty())
+			return null;
+		return contextSlotTable.getVariable(name, type);
+	}
+	
+	/**
+	 * Returns the handle for the context variable referenced by the given replacement pattern, eg. ${run.customer.name}, from
+	 * the slot table the activity is bound to. If the input is no replacement pattern, the method returns null
+	 * @param replacementPattern
+	 * @return
+	 */
+	protected TSPlanContextVariable getContextVariableForPattern(String replacementPattern) {
+		return contextSlotTable.getVariableForPattern(replacementPattern);
+	}
+	
+	/**
+	 * Returns the compiled replacement pattern, eg. ${run.customer.name}, shared by all activities bound to the same slot table. If the 
+	 * input is no replacement pattern, the method returns null
+	 * @param replacementPattern
+	 * @return
+	 */
+	protected TSPlanExecutionReplacementPattern getContextReplacementPattern(String replacementPattern) {
+		return contextSlotTable.getReplacementPattern(replacementPattern);
+	}
+	
+	/**
+	 * Binds the placeholders of the given template to the slot table the activity is bound to. Null is ignored
+	 * @param template
+	 */
+	protected void bindContextTemplate(TSPlanContextTemplate template) {
+		if(template != null)
+			template.bind(contextSlotTable);
+	}
+	
+	/**
+	 * Binds the variables of the given expression to the slot table the activity is bound to. Null is ignored
+	 * @param expression
+	 */
+	protected void bindContextExpression(TSPlanExpression expression) {
+		if(expression != null)
+			expression.bind(contextSlotTable);
+	}
 		
 	/**
 	 * Returns a map containing the name of context variables associated with their pattern to be applied via String.replaceAll which 
@@ -154,6 +233,14 @@ public abstract class AbstractTSPlanActivity implements TSPlanActivity {
 		this.nextActivity = nextActivity;
 	}
 
+	public String getNextActivityExpression() {
+		return nextActivityExpression;
+	}
+
+	public void setNextActivityExpression(String nextActivityExpression) {
+		this.nextActivityExpression = nextActivityExpression;
+	}
+
 	/**
 	 * @return the contextExportVariables
 	 */
@@ -79,7 +79,25 @@ public abstract class AbstractTSPlanVarExportActivity extends AbstractTSPlanActi
 		
 	}
 	
+	/**
+	 * Formats the value according to the given pattern and quotes it for being used as replacement in String.replaceAll
+	 * @param logPattern
+	 * @param value
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
 	public String format(String logPattern, Serializable value) throws TSPlanActivityExecutionException {
+		return Matcher.quoteReplacement(formatValue(logPattern, value));
+	}
+	
+	/**
+	 * Formats the value according to the given pattern, eg. ${global.threads} - values of other patterns are converted into strings
+	 * @param logPattern
+	 * @param value
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	public String formatValue(String logPattern, Serializable value) throws TSPlanActivityExecutionException {
 
 		// TODO test and refactor!!!
 		if(logPattern != null) {
@@ -103,7 +121,7 @@ public abstract class AbstractTSPlanVarExportActivity extends AbstractTSPlanActi
 					return this.dateFormatter.format(new Date((Long)value));
 				else if(logPattern.equalsIgnoreCase("${run.finalDate}"))
 					return this.dateFormatter.format(new Date((Long)value));
-				return Matcher.quoteReplacement(value.toString());
+				return value.toString();
 			}			
 		}
 		return "";
@@ -23,6 +23,7 @@ import java.util.Map;
 
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -110,6 +111,19 @@ public interface TSPlanActivity {
 	 */
 	public void setNextActivity(String activityName);
 	
+	/**
+	 * Returns the {@link com.mnxfst.testing.plan.expr.TSPlanExpression expression} selecting the name of the next activity 
+	 * at runtime - null if the next activity is fixed
+	 * @return
+	 */
+	public String getNextActivityExpression();
+	
+	/**
+	 * Sets the expression selecting the name of the next activity at runtime
+	 * @param expression
+	 */
+	public void setNextActivityExpression(String expression);
+	
 	/**
 	 * Returns the name of the context variable used for storing results per activity
 	 * @return
@@ -122,5 +136,12 @@ public interface TSPlanActivity {
 	 */
 	public void setContextExportVariables(Map<String, String> contextExportVariables);
 	
+	/**
+	 * Resolves the context variables read or written by the activity against the provided slot table. Invoked once after
+	 * initialization while the test plan is being compiled 
+	 * @param slotTable
+	 */
+	public void bindContextVariables(TSPlanContextSlotTable slotTable);
+	
 }
 
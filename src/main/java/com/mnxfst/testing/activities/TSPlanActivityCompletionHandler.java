@@ -0,0 +1,45 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.activities;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Receives the outcome of a {@link TSPlanAsyncActivity#executeAsync(TSPlanExecutionContext, TSPlanAsyncActivityRuntime, TSPlanActivityCompletionHandler) asynchronous activity execution}.
+ * Exactly one of both methods must be called exactly once for each execution
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public interface TSPlanActivityCompletionHandler {
+
+	/**
+	 * Called as soon as the activity execution has finished successfully
+	 * @param ctx the (un)modified context
+	 */
+	public void completed(TSPlanExecutionContext ctx);
+	
+	/**
+	 * Called in case the activity execution failed for some reason
+	 * @param ctx the context as provided to the activity
+	 * @param e
+	 */
+	public void failed(TSPlanExecutionContext ctx, TSPlanActivityExecutionException e);
+	
+}
@@ -0,0 +1,43 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.activities;
+
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Optional extension to the {@link TSPlanActivity} contract for activities being able to execute without holding the calling 
+ * thread until they have finished. Activities implementing this interface must still provide a working synchronous 
+ * {@link TSPlanActivity#execute(TSPlanExecutionContext)} as they may be run by any executor. Activities which only implement 
+ * the synchronous contract are executed by event-driven executors through the {@link TSPlanSyncActivityAdapter}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public interface TSPlanAsyncActivity extends TSPlanActivity {
+
+	/**
+	 * Starts the action implemented by the current activity and returns immediately. The outcome is reported to the provided
+	 * {@link TSPlanActivityCompletionHandler handler} - possibly from another thread. Implementations must not block the calling 
+	 * thread, blocking work has to be moved to the {@link TSPlanAsyncActivityRuntime#getBlockingExecutor() blocking executor} 
+	 * @param ctx
+	 * @param runtime provides the threads the activity may use
+	 * @param handler
+	 */
+	public void executeAsync(TSPlanExecutionContext ctx, TSPlanAsyncActivityRuntime runtime, TSPlanActivityCompletionHandler handler);
+	
+}
@@ -0,0 +1,65 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.activities;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Provides the threads available to {@link TSPlanAsyncActivity asynchronous activities}: a small number of event loop threads
+ * which must never be blocked and an executor for work that cannot be done without blocking
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanAsyncActivityRuntime {
+
+	/** event loop threads - used for driving plan iterations and for timers */
+	private ScheduledExecutorService eventLoop = null;
+	/** executes blocking work, eg. synchronous activities */
+	private ExecutorService blockingExecutor = null;
+	
+	/**
+	 * Initializes the runtime
+	 * @param eventLoop
+	 * @param blockingExecutor
+	 */
+	public TSPlanAsyncActivityRuntime(ScheduledExecutorService eventLoop, ExecutorService blockingExecutor) {
+		this.eventLoop = eventLoop;
+		this.blockingExecutor = blockingExecutor;
+	}
+
+	public ScheduledExecutorService getEventLoop() {
+		return eventLoop;
+	}
+
+	public ExecutorService getBlockingExecutor() {
+		return blockingExecutor;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("eventLoop", eventLoop)
+				.append("blockingExecutor", blockingExecutor).toString();
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.activities;
+
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Makes a synchronous {@link TSPlanActivity} usable by event-driven executors: the activity is executed on the 
+ * {@link TSPlanAsyncActivityRuntime#getBlockingExecutor() blocking executor}, thus it still holds a thread while running
+ * but never blocks the event loop. All other calls are forwarded to the wrapped activity 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanSyncActivityAdapter implements TSPlanAsyncActivity {
+
+	private static final Logger logger = Logger.getLogger(TSPlanSyncActivityAdapter.class);
+	
+	/** wrapped synchronous activity */
+	private TSPlanActivity activity = null;
+	
+	/**
+	 * Initializes the adapter
+	 * @param activity
+	 */
+	public TSPlanSyncActivityAdapter(TSPlanActivity activity) {
+		this.activity = activity;
+	}
+	
+	/**
+	 * Returns the provided activity if it implements the {@link TSPlanAsyncActivity asynchronous contract}, otherwise it will be wrapped by an adapter
+	 * @param activity
+	 * @return
+	 */
+	public static TSPlanAsyncActivity adapt(TSPlanActivity activity) {
+		if(activity instanceof TSPlanAsyncActivity)
+			return (TSPlanAsyncActivity)activity;
+		return new TSPlanSyncActivityAdapter(activity);
+	}
+
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanAsyncActivity#executeAsync(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext, com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime, com.mnxfst.testing.activities.TSPlanActivityCompletionHandler)
+	 */
+	public void executeAsync(TSPlanExecutionContext ctx, TSPlanAsyncActivityRuntime runtime, TSPlanActivityCompletionHandler handler) {
+		executeOn(runtime.getBlockingExecutor(), activity, ctx, handler);
+	}
+	
+	/**
+	 * Executes the synchronous contract of the given activity on the provided executor and reports the outcome to the handler
+	 * @param executor
+	 * @param activity
+	 * @param ctx
+	 * @param handler
+	 */
+	public static void executeOn(Executor executor, final TSPlanActivity activity, final TSPlanExecutionContext ctx, final TSPlanActivityCompletionHandler handler) {
+		executor.execute(new Runnable() {			
+			public void run() {
+				TSPlanExecutionContext result = null;
+				try {
+					result = activity.execute(ctx);
+				} catch(TSPlanActivityExecutionException e) {
+					handler.failed(ctx, e);
+					return;
+				} catch(RuntimeException e) {
+					logger.error("Unexpected error while executing activity '"+activity.getName()+"'. Error: " + e.getMessage(), e);
+					handler.failed(ctx, new TSPlanActivityExecutionException("Unexpected error while executing activity '"+activity.getName()+"'. Error: " + e.getMessage(), e));
+					return;
+				}
+				handler.completed(result);
+			}
+		});
+	}
+
+	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		return activity.execute(ctx);
+	}
+
+	public void initialize(TSPlanConfigOption cfgOpt) throws TSPlanActivityExecutionException {
+		activity.initialize(cfgOpt);
+	}
+
+	public void shutdown() {
+		activity.shutdown();
+	}
+
+	public String getId() {
+		return activity.getId();
+	}
+
+	public void setId(String id) {
+		activity.setId(id);
+	}
+
+	public String getName() {
+		return activity.getName();
+	}
+
+	public void setName(String name) {
+		activity.setName(name);
+	}
+
+	public String getDescription() {
+		return activity.getDescription();
+	}
+
+	public void setDescription(String description) {
+		activity.setDescription(description);
+	}
+
+	public String getClassName() {
+		return activity.getClassName();
+	}
+
+	public void setClassName(String className) {
+		activity.setClassName(className);
+	}
+
+	public String getNextActivity() {
+		return activity.getNextActivity();
+	}
+
+	public void setNextActivity(String activityName) {
+		activity.setNextActivity(activityName);
+	}
+
+	public String getNextActivityExpression() {
+		return activity.getNextActivityExpression();
+	}
+
+	public void setNextActivityExpression(String expression) {
+		activity.setNextActivityExpression(expression);
+	}
+
+	public Map<String, String> getContextExportVariables() {
+		return activity.getContextExportVariables();
+	}
+
+	public void setContextExportVariables(Map<String, String> contextExportVariables) {
+		activity.setContextExportVariables(contextExportVariables);
+	}
+
+	public void bindContextVariables(TSPlanContextSlotTable slotTable) {
+		activity.bindContextVariables(slotTable);
+	}
+
+	/**
+	 * Returns the wrapped activity
+	 * @return
+	 */
+	public TSPlanActivity getActivity() {
+		return activity;
+	}
+}
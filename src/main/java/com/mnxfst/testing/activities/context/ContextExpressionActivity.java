@@ -0,0 +1,122 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.context;
+
+import java.io.Serializable;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.activities.AbstractTSPlanActivity;
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.expr.TSPlanExpression;
+
+/**
+ * This activity evaluates a configured {@link TSPlanExpression expression} against the context and exports its result. Integral
+ * results are stored as primitive long, floating point results as primitive double values. A null result removes the exported value  
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class ContextExpressionActivity extends AbstractTSPlanActivity {
+
+	private static final Logger logger = Logger.getLogger(ContextExpressionActivity.class);
+	
+	private static final String CFG_OPT_EXPRESSION = "expression";
+	private static final String CTX_EXPORT_EXPRESSION_RESULT_VARIABLE = "expressionResult";
+	
+	private TSPlanExpression expression = null;
+	private String contextExportVariableName = null;
+	/** handle of the variable written */
+	private TSPlanContextVariable contextExportVariable = null;
+	
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
+	 */
+	public void initialize(TSPlanConfigOption cfgOpt) throws TSPlanActivityExecutionException {
+
+		if(cfgOpt == null)
+			throw new TSPlanActivityExecutionException("Required configuration options missing for activity '"+getName()+"'");
+		
+		String expressionSource = (String)cfgOpt.getOption(CFG_OPT_EXPRESSION);
+		if(expressionSource == null || expressionSource.trim().isEmpty())
+			throw new TSPlanActivityExecutionException("Required config option '"+CFG_OPT_EXPRESSION+"' missing for activity '"+getName()+"'");
+		
+		try {
+			this.expression = TSPlanExpression.compile(expressionSource.trim());
+		} catch(TSPlanConfigurationFormatException e) {
+			throw new TSPlanActivityExecutionException("Failed to compile expression of activity '"+getName()+"'. Error: " + e.getMessage(), e);
+		}
+
+		if(getContextExportVariables() != null) {
+			this.contextExportVariableName = getContextExportVariables().get(CTX_EXPORT_EXPRESSION_RESULT_VARIABLE);
+		}
+
+		resolveContextVariables();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		bindContextExpression(expression);
+		this.contextExportVariable = getContextVariable(contextExportVariableName, ExecutionContextValueType.RUN);
+	}
+
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanActivity#execute(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
+	 */
+	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		
+		if(ctx == null)
+			throw new TSPlanActivityExecutionException("Required activity context missing");
+		
+		Object result = null;
+		try {
+			result = expression.evaluate(ctx);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate expression '"+expression.getSource()+"'. Error: " + e.getMessage(), e);
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("expression["+expression.getSource()+" = " + result + "]");
+		
+		if(contextExportVariable != null) {
+			if(result == null)
+				ctx.removeContextValue(contextExportVariable);
+			else if(result instanceof Long)
+				ctx.addLongContextValue(contextExportVariable, ((Long)result).longValue());
+			else if(result instanceof Double)
+				ctx.addDoubleContextValue(contextExportVariable, ((Double)result).doubleValue());
+			else 
+				ctx.addContextValue(contextExportVariable, (Serializable)result);
+		}
+		
+		return ctx;
+	}
+
+	public TSPlanExpression getExpression() {
+		return expression;
+	}
+}
@@ -23,12 +23,14 @@ import org.apache.log4j.Logger;
 
 import com.mnxfst.testing.activities.AbstractTSPlanActivity;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
- * Decrements a referenced context value (<b>attention:</b> must be of type {@link Long})
+ * Decrements a referenced numerical context value. The result is stored as primitive long value
  * @author ckreutzfeldt
  * @since 01.02.2012
  */
@@ -42,6 +44,8 @@ public class ContextVarDecrementActivity extends AbstractTSPlanActivity {
 	private ExecutionContextValueType contextVariableType = ExecutionContextValueType.RUN;
 	/** value to decrement by the referenced variable */
 	private long decrementValue = 0;
+	/** handle of the context variable to decrement */
+	private TSPlanContextVariable contextVariableHandle = null;
 	
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
@@ -81,24 +85,28 @@ public class ContextVarDecrementActivity extends AbstractTSPlanActivity {
 			throw new TSPlanActivityExecutionException("Required configuration option 'decrementValue' missing for activity '"+getName()+"'");
 		}
 		
+		resolveContextVariables();
+		
 		if(logger.isDebugEnabled())
 			logger.debug("decrementActivity[contextVariable="+contextVariable+", variableType="+contextVariableType+", decrementValue="+decrementValue+"]");
 	}
 
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		this.contextVariableHandle = getContextVariable(contextVariable, contextVariableType);
+	}
+
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#execute(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
 	 */
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
 		
 		try {
-			Long ctxVar2Decrement = (Long)ctx.getContextValue(this.contextVariable, this.contextVariableType);
-			if(ctxVar2Decrement != null) {
-				ctx.addContextValue(this.contextVariable, ctxVar2Decrement-decrementValue, this.contextVariableType);
-			} else {
-				throw new TSPlanActivityExecutionException("Expected to find a " + Long.class.getName() + " value for context variable '"+this.contextVariable+"', but the retrieved object was null");
-			}
-		} catch(ClassCastException e) {
-			throw new TSPlanActivityExecutionException("Expected to find a " + Long.class.getName() + " value for context variable '"+this.contextVariable+"'. Error: " + e.getMessage());
+			ctx.addLongContextValue(this.contextVariableHandle, ctx.getLongContextValue(this.contextVariableHandle) - decrementValue);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Expected to find a numerical value for context variable '"+this.contextVariable+"'. Error: " + e.getMessage());
 		} 
 		
 		return ctx;
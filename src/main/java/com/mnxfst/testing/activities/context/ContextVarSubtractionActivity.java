@@ -23,8 +23,10 @@ import org.apache.log4j.Logger;
 
 import com.mnxfst.testing.activities.AbstractTSPlanActivity;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -41,6 +43,10 @@ public class ContextVarSubtractionActivity extends AbstractTSPlanActivity {
 	private String leftHandVariable = null;
 	private String rightHandVariable = null;
 	private String contextExportVariableName = null;
+	/** handles of the variables read and written */
+	private TSPlanContextVariable leftHandContextVariable = null;
+	private TSPlanContextVariable rightHandContextVariable = null;
+	private TSPlanContextVariable contextExportVariable = null;
 	
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
@@ -63,7 +69,16 @@ public class ContextVarSubtractionActivity extends AbstractTSPlanActivity {
 			this.contextExportVariableName = getContextExportVariables().get(CTX_EXPORT_SUBTRACTION_RESULT_VARIABLE);
 		}
 
-		
+		resolveContextVariables();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		this.leftHandContextVariable = getContextVariable(leftHandVariable, ExecutionContextValueType.RUN);
+		this.rightHandContextVariable = getContextVariable(rightHandVariable, ExecutionContextValueType.RUN);
+		this.contextExportVariable = getContextVariable(contextExportVariableName, ExecutionContextValueType.RUN);
 	}
 
 	/**
@@ -74,18 +89,24 @@ public class ContextVarSubtractionActivity extends AbstractTSPlanActivity {
 		if(ctx == null)
 			throw new TSPlanActivityExecutionException("Required activity context missing");
 		
-		Long left = (Long)ctx.getContextValue(leftHandVariable, ExecutionContextValueType.RUN);
-		Long right = (Long)ctx.getContextValue(rightHandVariable, ExecutionContextValueType.RUN);
-
-		if(left == null)
-			throw new TSPlanActivityExecutionException("Failed to read left hand value from context varibale '"+left+"'");
-		if(right == null)
-			throw new TSPlanActivityExecutionException("Failed to read right hand value from context varibale '"+right+"'");
+		long left = 0;
+		long right = 0;
+		try {
+			left = ctx.getLongContextValue(leftHandContextVariable);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to read left hand value from context variable '"+leftHandVariable+"'. Error: " + e.getMessage());
+		}
+		try {
+			right = ctx.getLongContextValue(rightHandContextVariable);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to read right hand value from context variable '"+rightHandVariable+"'. Error: " + e.getMessage());
+		}
 
 		if(logger.isDebugEnabled())
 			logger.debug("subtraction["+left+" - "+right+" = " + (left-right)+"]");
 		
-		ctx.addContextValue(contextExportVariableName, (left-right), ExecutionContextValueType.RUN);
+		if(contextExportVariable != null)
+			ctx.addLongContextValue(contextExportVariable, (left-right));
 		
 		return ctx;
 	}
@@ -28,6 +28,7 @@ import com.mnxfst.testing.activities.AbstractTSPlanActivity;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -44,6 +45,9 @@ public class RandomCtxVarGenActivity extends AbstractTSPlanActivity {
 		
 	/** holds a mapping from a context variable name to a value generator */
 	private Map<String, IRandomCtxVarValueGenerator<?>> valueGenerators = new HashMap<String, IRandomCtxVarValueGenerator<?>>(); 
+	/** handles of the generated context variables and their generators, ordered alike */
+	private TSPlanContextVariable[] generatedVariables = new TSPlanContextVariable[0];
+	private IRandomCtxVarValueGenerator<?>[] generators = new IRandomCtxVarValueGenerator<?>[0];
 
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
@@ -82,6 +86,22 @@ public class RandomCtxVarGenActivity extends AbstractTSPlanActivity {
 
 		if(valueGenerators.isEmpty())
 			throw new TSPlanActivityExecutionException("No value generator configuration found in activity settings. Either remove the activity or provide a proper configuration");
+		
+		resolveContextVariables();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		generatedVariables = new TSPlanContextVariable[valueGenerators.size()];
+		generators = new IRandomCtxVarValueGenerator<?>[valueGenerators.size()];
+		int index = 0;
+		for(String varName : valueGenerators.keySet()) {
+			generatedVariables[index] = getContextVariable(varName, ExecutionContextValueType.RUN);
+			generators[index] = valueGenerators.get(varName);
+			index = index + 1;
+		}
 	}
 
 	/**
@@ -90,12 +110,11 @@ public class RandomCtxVarGenActivity extends AbstractTSPlanActivity {
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
 		
 		// iterate through context variable names, generate values and write them back into the contxt
-		for(String varName : valueGenerators.keySet()) {
-			IRandomCtxVarValueGenerator<?> generator = valueGenerators.get(varName);			
-			ctx.addContextValue(varName, generator.generate(), ExecutionContextValueType.RUN);
+		for(int i = 0; i < generatedVariables.length; i++) {
+			ctx.addContextValue(generatedVariables[i], generators[i].generate());
 			
 			if(logger.isDebugEnabled())
-				logger.debug("generate[ctxVar: " + varName + ", value=" + ctx.getContextValue(varName, ExecutionContextValueType.RUN)+"]");
+				logger.debug("generate[ctxVar: " + generatedVariables[i].getName() + ", value=" + ctx.getContextValue(generatedVariables[i])+"]");
 		}
 		
 		return ctx;
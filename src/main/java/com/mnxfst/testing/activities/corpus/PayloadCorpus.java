@@ -0,0 +1,591 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.activities.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.log4j.Logger;
+
+/**
+ * Read-only payload corpus backed by a memory-mapped file. The file holds length-prefixed records, each one consisting of
+ * <ul>
+ *   <li>key length (int, big endian) - 0 if the record has no key</li>
+ *   <li>key (UTF-8)</li>
+ *   <li>payload length (int, big endian)</li>
+ *   <li>payload</li>
+ * </ul>
+ * The index file next to the corpus (<i>corpus file name</i>.idx) is mapped as well. It starts with a header (magic, number of records, 
+ * number of keys), followed by the offset of each record as long and by one entry per key holding its {@link #keyHash(byte[], int, int) hash} 
+ * and its record as ints, sorted by hash and record. It is built by scanning the corpus if missing or outdated. The corpus is mapped in 
+ * segments of up to 2GB each, thus its size is limited by the address space only and neither payloads nor keys occupy the heap. All threads 
+ * drawing from the same file share one instance and one sequential cursor, see {@link #open(File)} and {@link #release()}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class PayloadCorpus {
+
+	private static final Logger logger = Logger.getLogger(PayloadCorpus.class);
+	
+	public static final String INDEX_FILE_SUFFIX = ".idx";
+	/** first bytes of an index file: PCI1 */
+	protected static final int INDEX_MAGIC = 0x50434931;
+	/** magic, number of records and number of keys */
+	protected static final int INDEX_HEADER_SIZE = 12;
+	private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+	/** max size of a single mapping */
+	private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+	
+	/** corpora opened so far - referenced by canonical path, guards the reference counters as well */
+	private static final Map<String, PayloadCorpus> corpora = new HashMap<String, PayloadCorpus>();
+	
+	/** corpus file */
+	private final File file;
+	/** size and modification time of the file when it was opened */
+	private final long fileLength;
+	private final long fileLastModified;
+	/** mapped index */
+	private final MappedByteBuffer index;
+	/** number of records and keys found in the index */
+	private final int records;
+	private final int keys;
+	/** mapped segments - each one starts at a record boundary */
+	private final MappedByteBuffer[] segments;
+	/** first record and file offset of each segment */
+	private final int[] segmentRecords;
+	private final long[] segmentOffsets;
+	/** number of holders which opened the corpus and did not release it yet */
+	private int references = 0;
+	/** sequential cursor shared by all threads */
+	private final AtomicLong cursor = new AtomicLong(0);
+	/** random source of the current thread */
+	private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+	
+	/**
+	 * Returns the corpus for the given file. It is opened on first access and shared afterwards - unless the file has been modified
+	 * in the meantime. Each call must be followed by {@link #release()} once the caller does not need the corpus anymore
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static PayloadCorpus open(File file) throws IOException {
+		
+		if(file == null)
+			throw new IOException("No corpus file provided");
+		
+		String path = file.getCanonicalPath();
+		synchronized(corpora) {
+			PayloadCorpus corpus = corpora.get(path);
+			if(corpus == null || corpus.fileLength != file.length() || corpus.fileLastModified != file.lastModified()) {
+				corpus = new PayloadCorpus(new File(path));
+				corpora.put(path, corpus);
+			}
+			corpus.references = corpus.references + 1;
+			return corpus;
+		}
+	}
+	
+	/**
+	 * Releases a corpus received from {@link #open(File)}. As soon as all holders released it, the corpus is no longer shared and 
+	 * its mappings are dropped along with the instance
+	 */
+	public void release() {
+		synchronized(corpora) {
+			if(references < 1)
+				return;
+			references = references - 1;
+			if(references == 0 && corpora.get(file.getPath()) == this)
+				corpora.remove(file.getPath());
+		}
+	}
+	
+	/**
+	 * Returns true if the corpus is shared with further callers of {@link #open(File)}
+	 * @return
+	 */
+	public boolean isShared() {
+		synchronized(corpora) {
+			return corpora.get(file.getPath()) == this;
+		}
+	}
+	
+	/**
+	 * Maps the given file - see {@link #open(File)} for shared instances
+	 * @param file
+	 * @throws IOException
+	 */
+	protected PayloadCorpus(File file) throws IOException {
+		
+		if(!file.isFile())
+			throw new IOException("Corpus file '"+file.getAbsolutePath()+"' not found");
+		
+		this.file = file;
+		this.fileLength = file.length();
+		this.fileLastModified = file.lastModified();
+		
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			
+			File indexFile = new File(file.getPath() + INDEX_FILE_SUFFIX);
+			MappedByteBuffer mappedIndex = null;
+			if(indexFile.isFile() && indexFile.lastModified() >= file.lastModified())
+				mappedIndex = mapIndex(indexFile, size);
+			if(mappedIndex == null)
+				mappedIndex = buildIndex(channel, size, file);
+			
+			this.index = mappedIndex;
+			this.records = mappedIndex.getInt(4);
+			this.keys = mappedIndex.getInt(8);
+			if(records == 0)
+				throw new IOException("Corpus file '"+file.getAbsolutePath()+"' contains no records");
+			
+			// records must not span segments, thus a new segment starts with the first record exceeding the current one
+			List<MappedByteBuffer> mapped = new ArrayList<MappedByteBuffer>();
+			List<Integer> firstRecords = new ArrayList<Integer>();
+			List<Long> offsets = new ArrayList<Long>();
+			int record = 0;
+			while(record < records) {
+				long segmentStart = getOffset(record);
+				int last = record;
+				while(last + 1 < records && getRecordEnd(last + 1, size) - segmentStart <= MAX_SEGMENT_SIZE)
+					last = last + 1;
+				long segmentEnd = getRecordEnd(last, size);
+				if(segmentEnd - segmentStart > MAX_SEGMENT_SIZE)
+					throw new IOException("Record " + record + " of corpus file '"+file.getAbsolutePath()+"' exceeds the max. size of " + MAX_SEGMENT_SIZE + " bytes");
+				
+				MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart);
+				for(int i = record; i <= last; i++)
+					validateRecord(segment, i, (int)(getOffset(i) - segmentStart), (int)(getRecordEnd(i, size) - segmentStart));
+				mapped.add(segment);
+				firstRecords.add(Integer.valueOf(record));
+				offsets.add(Long.valueOf(segmentStart));
+				record = last + 1;
+			}
+			this.segments = mapped.toArray(new MappedByteBuffer[mapped.size()]);
+			this.segmentRecords = new int[segments.length];
+			this.segmentOffsets = new long[segments.length];
+			for(int i = 0; i < segments.length; i++) {
+				segmentRecords[i] = firstRecords.get(i).intValue();
+				segmentOffsets[i] = offsets.get(i).longValue();
+			}
+		} finally {
+			// mappings remain valid after the channel has been closed
+			raf.close();
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("corpus[file="+file.getAbsolutePath()+", records="+records+", keys="+keys+", segments="+segments.length+"]");
+	}
+	
+	/**
+	 * Returns the offset of the given record read from the index
+	 * @param record
+	 * @return
+	 */
+	private long getOffset(int record) {
+		return index.getLong(INDEX_HEADER_SIZE + 8 * record);
+	}
+	
+	/**
+	 * Returns the offset of the first byte following the given record 
+	 * @param record
+	 * @param size
+	 * @return
+	 */
+	private long getRecordEnd(int record, long size) {
+		return (record + 1 < records ? getOffset(record + 1) : size);
+	}
+	
+	/**
+	 * Ensures that key and payload of the record starting at the given position fill the record exactly
+	 * @param segment
+	 * @param record
+	 * @param position
+	 * @param end
+	 * @throws IOException
+	 */
+	private void validateRecord(MappedByteBuffer segment, int record, int position, int end) throws IOException {
+		
+		int keyLength = segment.getInt(position);
+		if(keyLength < 0 || (long)position + 4 + keyLength + 4 > end)
+			throw new IOException("Invalid key length " + keyLength + " found for record " + record + " of corpus file '"+file.getAbsolutePath()+"'");
+		
+		int payloadLength = segment.getInt(position + 4 + keyLength);
+		if(payloadLength < 0 || (long)position + 4 + keyLength + 4 + payloadLength != end)
+			throw new IOException("Invalid payload length " + payloadLength + " found for record " + record + " of corpus file '"+file.getAbsolutePath()+"'");
+	}
+	
+	/**
+	 * Maps the given index file. Returns null if the index is invalid or does not match the corpus size
+	 * @param indexFile
+	 * @param size
+	 * @return
+	 */
+	private static MappedByteBuffer mapIndex(File indexFile, long size) {
+		
+		long length = indexFile.length();
+		if(length < INDEX_HEADER_SIZE || length > MAX_SEGMENT_SIZE) {
+			logger.warn("Ignoring index file '"+indexFile.getAbsolutePath()+"' of invalid size " + length);
+			return null;
+		}
+		
+		MappedByteBuffer mapped = null;
+		try {
+			RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+			try {
+				mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			} finally {
+				raf.close();
+			}
+		} catch(IOException e) {
+			logger.warn("Ignoring unreadable index file '"+indexFile.getAbsolutePath()+"'. Error: " + e.getMessage());
+			return null;
+		}
+		
+		int records = mapped.getInt(4);
+		int keys = mapped.getInt(8);
+		if(mapped.getInt(0) != INDEX_MAGIC || records < 0 || keys < 0 || keys > records || INDEX_HEADER_SIZE + 8L * records + 8L * keys != length) {
+			logger.warn("Ignoring index file '"+indexFile.getAbsolutePath()+"'. Invalid or outdated header");
+			return null;
+		}
+		
+		for(int i = 0; i < records; i++) {
+			long offset = mapped.getLong(INDEX_HEADER_SIZE + 8 * i);
+			if(offset < 0 || offset >= size || (i > 0 && offset <= mapped.getLong(INDEX_HEADER_SIZE + 8 * (i - 1)))) {
+				logger.warn("Ignoring invalid index file '"+indexFile.getAbsolutePath()+"'. Offset " + offset + " of record " + i + " is out of order");
+				return null;
+			}
+		}
+		int keysStart = INDEX_HEADER_SIZE + 8 * records;
+		for(int i = 0; i < keys; i++) {
+			int record = mapped.getInt(keysStart + 8 * i + 4);
+			if(record < 0 || record >= records || (i > 0 && mapped.getLong(keysStart + 8 * i) < mapped.getLong(keysStart + 8 * (i - 1)))) {
+				logger.warn("Ignoring invalid index file '"+indexFile.getAbsolutePath()+"'. Key entry " + i + " is out of order");
+				return null;
+			}
+		}
+		return mapped;
+	}
+	
+	/**
+	 * Determines record offsets and key hashes by reading the records one after another and writes them to the index file. If the
+	 * index file cannot be written, eg. as the directory is read-only, a temporary file is used instead  
+	 * @param channel
+	 * @param size
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static MappedByteBuffer buildIndex(FileChannel channel, long size, File file) throws IOException {
+		
+		ByteBuffer header = ByteBuffer.allocate(4);
+		ByteBuffer key = ByteBuffer.allocate(256);
+		long[] offsets = new long[1024];
+		long[] keyEntries = new long[1024];
+		int count = 0;
+		int keyCount = 0;
+		long position = 0;
+		while(position < size) {
+			if(count == Integer.MAX_VALUE)
+				throw new IOException("Corpus file '"+file.getAbsolutePath()+"' exceeds the max. number of records");
+			if(count == offsets.length)
+				offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			offsets[count] = position;
+			
+			int keyLength = readInt(channel, header, position, file);
+			if(keyLength > 0) {
+				if(key.capacity() < keyLength)
+					key = ByteBuffer.allocate(keyLength);
+				key.clear();
+				key.limit(keyLength);
+				readFully(channel, key, position + 4, file);
+				if(keyCount == keyEntries.length)
+					keyEntries = Arrays.copyOf(keyEntries, keyEntries.length * 2);
+				keyEntries[keyCount] = toKeyEntry(keyHash(key.array(), 0, keyLength), count);
+				keyCount = keyCount + 1;
+			}
+			long payloadLength = readInt(channel, header, position + 4 + keyLength, file);
+			position = position + 4 + keyLength + 4 + payloadLength;
+			count = count + 1;
+		}
+		if(position != size)
+			throw new IOException("Corpus file '"+file.getAbsolutePath()+"' is truncated. Last record ends at " + position + " of " + size + " bytes");
+		
+		File indexFile = new File(file.getPath() + INDEX_FILE_SUFFIX);
+		try {
+			PayloadCorpusWriter.writeIndex(indexFile, offsets, count, keyEntries, keyCount);
+		} catch(IOException e) {
+			logger.warn("Failed to write index for corpus file '"+file.getAbsolutePath()+"'. Using a temporary index. Error: " + e.getMessage());
+			indexFile = File.createTempFile("corpus", INDEX_FILE_SUFFIX);
+			PayloadCorpusWriter.writeIndex(indexFile, offsets, count, keyEntries, keyCount);
+		}
+		
+		MappedByteBuffer mapped = mapIndex(indexFile, size);
+		if(!indexFile.getPath().equals(file.getPath() + INDEX_FILE_SUFFIX) && !indexFile.delete())
+			indexFile.deleteOnExit();
+		if(mapped == null)
+			throw new IOException("Failed to map index of corpus file '"+file.getAbsolutePath()+"'");
+		return mapped;
+	}
+	
+	/**
+	 * Reads a non-negative int from the given position
+	 * @param channel
+	 * @param buffer
+	 * @param position
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	private static int readInt(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+		buffer.clear();
+		readFully(channel, buffer, position, file);
+		int value = buffer.getInt(0);
+		if(value < 0)
+			throw new IOException("Invalid length " + value + " found at " + position + " of corpus file '"+file.getAbsolutePath()+"'");
+		return value;
+	}
+	
+	/**
+	 * Fills the remaining space of the given buffer with the bytes found at the given position
+	 * @param channel
+	 * @param buffer
+	 * @param position
+	 * @param file
+	 * @throws IOException
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position, File file) throws IOException {
+		long start = position - buffer.position();
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, start + buffer.position()) < 0)
+				throw new IOException("Corpus file '"+file.getAbsolutePath()+"' is truncated at " + position);
+		}
+	}
+	
+	/**
+	 * Returns the hash of the given UTF-8 encoded key as stored in the index
+	 * @param key
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	protected static int keyHash(byte[] key, int offset, int length) {
+		int hash = 0;
+		for(int i = offset; i < offset + length; i++)
+			hash = 31 * hash + (key[i] & 0xff);
+		return hash;
+	}
+	
+	/**
+	 * Returns the index entry of the given key hash and record. Entries sort by hash first and by record second
+	 * @param hash
+	 * @param record
+	 * @return
+	 */
+	protected static long toKeyEntry(int hash, int record) {
+		return ((long)hash << 32) | (record & 0xffffffffL);
+	}
+	
+	/**
+	 * Returns the number of records
+	 * @return
+	 */
+	public int size() {
+		return records;
+	}
+	
+	/**
+	 * Returns the index of the next record - all threads share the same cursor, thus each one receives another record until the corpus 
+	 * wraps around
+	 * @return
+	 */
+	public int nextIndex() {
+		return (int)((cursor.getAndIncrement() & Long.MAX_VALUE) % records);
+	}
+	
+	/**
+	 * Returns the index of a randomly selected record
+	 * @return
+	 */
+	public int randomIndex() {
+		return random.get().nextInt(records);
+	}
+	
+	/**
+	 * Returns the index of the first record carrying the given key or -1 if there is none. The key entries of the mapped index are 
+	 * searched for its hash, the keys of matching records are compared in the mapped corpus
+	 * @param key
+	 * @return
+	 */
+	public int indexOf(String key) {
+		
+		if(key == null || key.isEmpty() || keys == 0)
+			return -1;
+		
+		byte[] keyBytes = key.getBytes(KEY_CHARSET);
+		int hash = keyHash(keyBytes, 0, keyBytes.length);
+		int keysStart = INDEX_HEADER_SIZE + 8 * records;
+		
+		// first entry carrying the hash
+		int low = 0;
+		int high = keys;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(index.getInt(keysStart + 8 * middle) < hash)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		
+		for(int i = low; i < keys && index.getInt(keysStart + 8 * i) == hash; i++) {
+			int record = index.getInt(keysStart + 8 * i + 4);
+			if(matchesKey(record, keyBytes))
+				return record;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns true if the given record carries the given key
+	 * @param record
+	 * @param key
+	 * @return
+	 */
+	private boolean matchesKey(int record, byte[] key) {
+		int segment = getSegment(record);
+		int position = getPosition(segment, record);
+		if(segments[segment].getInt(position) != key.length)
+			return false;
+		for(int i = 0; i < key.length; i++) {
+			if(segments[segment].get(position + 4 + i) != key[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the segment holding the given record
+	 * @param record
+	 * @return
+	 */
+	private int getSegment(int record) {
+		int segment = Arrays.binarySearch(segmentRecords, record);
+		return (segment >= 0 ? segment : -segment - 2);
+	}
+	
+	/**
+	 * Returns the position of the given record within its segment
+	 * @param segment
+	 * @param record
+	 * @return
+	 */
+	private int getPosition(int segment, int record) {
+		return (int)(getOffset(record) - segmentOffsets[segment]);
+	}
+	
+	/**
+	 * Returns a view on the payload of the given record. The view is backed by the mapped file, nothing is copied
+	 * @param index
+	 * @return
+	 */
+	public ByteBuffer getPayload(int index) {
+		int segment = getSegment(index);
+		int position = getPosition(segment, index);
+		int payloadPosition = position + 4 + segments[segment].getInt(position) + 4;
+		
+		ByteBuffer payload = segments[segment].duplicate();
+		payload.limit(payloadPosition + segments[segment].getInt(payloadPosition - 4));
+		payload.position(payloadPosition);
+		return payload.slice();
+	}
+	
+	/**
+	 * Returns the given record as context value
+	 * @param index
+	 * @param charset charset the payload is decoded with if read as string
+	 * @return
+	 */
+	public PayloadCorpusRecord getRecord(int index, Charset charset) {
+		return new PayloadCorpusRecord(index, getKey(index), getPayload(index), charset);
+	}
+	
+	/**
+	 * Returns the key of the given record - null if it has none. The key is decoded from the mapped file on each call
+	 * @param index
+	 * @return
+	 */
+	public String getKey(int index) {
+		int segment = getSegment(index);
+		int position = getPosition(segment, index);
+		int keyLength = segments[segment].getInt(position);
+		if(keyLength == 0)
+			return null;
+		
+		byte[] key = new byte[keyLength];
+		ByteBuffer keyBytes = segments[segment].duplicate();
+		keyBytes.position(position + 4);
+		keyBytes.get(key);
+		return new String(key, KEY_CHARSET);
+	}
+	
+	/**
+	 * Returns the payload size of the given record
+	 * @param index
+	 * @return
+	 */
+	public int getPayloadLength(int index) {
+		int segment = getSegment(index);
+		int position = getPosition(segment, index);
+		return segments[segment].getInt(position + 4 + segments[segment].getInt(position));
+	}
+
+	public File getFile() {
+		return file;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("file", this.file)
+				.append("records", this.records)
+				.append("keys", this.keys)
+				.append("segments", this.segments.length).toString();
+	}
+}
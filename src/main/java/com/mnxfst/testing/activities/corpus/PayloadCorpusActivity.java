@@ -0,0 +1,250 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.activities.AbstractTSPlanActivity;
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextTemplate;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Draws a payload from a memory-mapped {@link PayloadCorpus corpus} and exports it to the context. Payloads are selected sequentially - 
+ * all virtual users share one cursor -, randomly or by a key rendered from the context. Request activities referencing the exported 
+ * variable as their only body content, eg. <code>soapPayloadTemplate=${run.payload}</code>, send the payload straight from the mapped file.
+ * Relative corpus file names are resolved against the data directory of the registered test plan bundle. The corpus is released when 
+ * the activity is shut down, eg. when its plan has been removed
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class PayloadCorpusActivity extends AbstractTSPlanActivity {
+
+	private static final Logger logger = Logger.getLogger(PayloadCorpusActivity.class);
+	
+	private static final String CFG_OPT_CORPUS_FILE = "corpusFile";
+	private static final String CFG_OPT_CORPUS_ENCODING = "corpusEncoding";
+	private static final String CFG_OPT_SELECTION = "selection";
+	private static final String CFG_OPT_KEY = "key";
+	
+	private static final String CTX_EXPORT_VAR_PAYLOAD = "payload";
+	private static final String CTX_EXPORT_VAR_PAYLOAD_KEY = "payloadKey";
+	
+	/** global variable holding the data directory of registered test plans - provided by the server */
+	private static final String CTX_VAR_PLAN_DATA_DIRECTORY = "ptestPlanDataDirectory";
+	
+	/** all virtual users draw from one shared cursor - default */
+	public static final String SELECTION_SEQUENTIAL = "sequential";
+	/** each draw selects a random record */
+	public static final String SELECTION_RANDOM = "random";
+	/** the record is looked up by the key rendered from the context */
+	public static final String SELECTION_KEY = "key";
+	
+	/** corpus file as configured */
+	private String corpusFileName = null;
+	/** charset used for decoding payloads read as strings */
+	private Charset corpusCharset = null;
+	/** selected draw mode */
+	private String selection = SELECTION_SEQUENTIAL;
+	/** key template - required for key selection only */
+	private TSPlanContextTemplate keyTemplate = null;
+	/** corpus - opened on initialization if the file name is absolute, on first execution otherwise. Guarded by the activity's monitor when changed */
+	private volatile PayloadCorpus corpus = null;
+	
+	protected String contextExportVariablePayload = null;
+	protected String contextExportVariablePayloadKey = null;
+	/** handles of the export variables - null if not configured */
+	protected TSPlanContextVariable contextExportPayload = null;
+	protected TSPlanContextVariable contextExportPayloadKey = null;
+	
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
+	 */
+	public void initialize(TSPlanConfigOption cfg) throws TSPlanActivityExecutionException {
+		
+		if(cfg == null)
+			throw new TSPlanActivityExecutionException("Missing required configuration options for activity '"+getName()+"'");
+		
+		this.corpusFileName = (String)cfg.getOption(CFG_OPT_CORPUS_FILE);
+		if(corpusFileName == null || corpusFileName.trim().isEmpty())
+			throw new TSPlanActivityExecutionException("Required corpus file not provided for activity '"+getName()+"'");
+		this.corpusFileName = this.corpusFileName.trim();
+		
+		String encoding = (String)cfg.getOption(CFG_OPT_CORPUS_ENCODING);
+		if(encoding == null || encoding.trim().isEmpty())
+			encoding = "UTF-8";
+		try {
+			this.corpusCharset = Charset.forName(encoding.trim());
+		} catch(IllegalCharsetNameException e) {
+			throw new TSPlanActivityExecutionException("Invalid corpus encoding '"+encoding+"' found for activity '"+getName()+"'");
+		} catch(UnsupportedCharsetException e) {
+			throw new TSPlanActivityExecutionException("Unsupported corpus encoding '"+encoding+"' found for activity '"+getName()+"'");
+		}
+		
+		String mode = (String)cfg.getOption(CFG_OPT_SELECTION);
+		this.selection = (mode != null && !mode.trim().isEmpty() ? mode.trim().toLowerCase() : SELECTION_SEQUENTIAL);
+		if(!selection.equals(SELECTION_SEQUENTIAL) && !selection.equals(SELECTION_RANDOM) && !selection.equals(SELECTION_KEY))
+			throw new TSPlanActivityExecutionException("Invalid selection '"+mode+"' found for activity '"+getName()+"'. Valid values: " + SELECTION_SEQUENTIAL + ", " + SELECTION_RANDOM + ", " + SELECTION_KEY);
+		
+		String key = (String)cfg.getOption(CFG_OPT_KEY);
+		if(selection.equals(SELECTION_KEY)) {
+			if(key == null || key.isEmpty())
+				throw new TSPlanActivityExecutionException("Required key not provided for activity '"+getName()+"' selecting payloads by key");
+			this.keyTemplate = new TSPlanContextTemplate(key);
+		} else {
+			this.keyTemplate = null;
+		}
+		
+		Map<String, String> exportVariables = getContextExportVariables();
+		this.contextExportVariablePayload = (exportVariables != null ? exportVariables.get(CTX_EXPORT_VAR_PAYLOAD) : null);
+		if(contextExportVariablePayload == null || contextExportVariablePayload.isEmpty())
+			throw new TSPlanActivityExecutionException("Required export variable '"+CTX_EXPORT_VAR_PAYLOAD+"' not provided for activity '"+getName()+"'");
+		this.contextExportVariablePayloadKey = exportVariables.get(CTX_EXPORT_VAR_PAYLOAD_KEY);
+		resolveContextVariables();
+		
+		// relative files depend on the plan data directory which is known at execution time only
+		releaseCorpus();
+		File corpusFile = new File(corpusFileName);
+		if(corpusFile.isAbsolute()) {
+			synchronized(this) {
+				this.corpus = openCorpus(corpusFile);
+			}
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("activity[name="+getName()+", id="+getId()+", corpusFile="+corpusFileName+", corpusEncoding="+corpusCharset+", selection="+selection+", key="+key+"]");
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		bindContextTemplate(keyTemplate);
+		this.contextExportPayload = getContextVariable(contextExportVariablePayload, ExecutionContextValueType.RUN);
+		this.contextExportPayloadKey = getContextVariable(contextExportVariablePayloadKey, ExecutionContextValueType.RUN);
+	}
+
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanActivity#execute(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
+	 */
+	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		
+		PayloadCorpus current = getCorpus(ctx);
+		
+		int index = 0;
+		if(selection.equals(SELECTION_SEQUENTIAL)) {
+			index = current.nextIndex();
+		} else if(selection.equals(SELECTION_RANDOM)) {
+			index = current.randomIndex();
+		} else {
+			String key = null;
+			try {
+				key = keyTemplate.render(ctx);
+			} catch(TSVariableEvaluationFailedException e) {
+				throw new TSPlanActivityExecutionException("Failed to evaluate key for activity '"+getName()+"'. Error: " + e.getMessage());
+			}
+			index = current.indexOf(key);
+			if(index < 0)
+				throw new TSPlanActivityExecutionException("No payload found for key '"+key+"' in corpus file '"+current.getFile().getAbsolutePath()+"'");
+		}
+		
+		ctx.addContextValue(contextExportPayload, current.getRecord(index, corpusCharset));
+		if(contextExportPayloadKey != null)
+			ctx.addContextValue(contextExportPayloadKey, current.getKey(index));
+		
+		return ctx;
+	}
+	
+	/**
+	 * Returns the corpus - opens it on first access if the file name is relative
+	 * @param ctx
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected PayloadCorpus getCorpus(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		
+		PayloadCorpus current = this.corpus;
+		if(current != null)
+			return current;
+		
+		File corpusFile = new File(corpusFileName);
+		Serializable dataDirectory = ctx.getContextValue(CTX_VAR_PLAN_DATA_DIRECTORY, ExecutionContextValueType.GLOBAL);
+		if(dataDirectory != null && !corpusFile.isAbsolute())
+			corpusFile = new File(dataDirectory.toString(), corpusFileName);
+		
+		// each opened corpus must be released exactly once, thus concurrent first executions must not open it twice
+		synchronized(this) {
+			if(this.corpus == null)
+				this.corpus = openCorpus(corpusFile);
+			return this.corpus;
+		}
+	}
+	
+	/**
+	 * Releases the corpus opened by the activity - if any
+	 */
+	protected synchronized void releaseCorpus() {
+		if(this.corpus != null) {
+			this.corpus.release();
+			this.corpus = null;
+		}
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#shutdown()
+	 */
+	public void shutdown() {
+		releaseCorpus();
+	}
+	
+	/**
+	 * Opens the given corpus file
+	 * @param corpusFile
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	private PayloadCorpus openCorpus(File corpusFile) throws TSPlanActivityExecutionException {
+		try {
+			return PayloadCorpus.open(corpusFile);
+		} catch(IOException e) {
+			throw new TSPlanActivityExecutionException("Failed to open corpus file '"+corpusFile.getAbsolutePath()+"' for activity '"+getName()+"'. Error: " + e.getMessage(), e);
+		}
+	}
+	
+	public String getSelection() {
+		return selection;
+	}
+
+	public Charset getCorpusCharset() {
+		return corpusCharset;
+	}
+}
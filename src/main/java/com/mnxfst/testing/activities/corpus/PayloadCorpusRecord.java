@@ -0,0 +1,173 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.corpus;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.mnxfst.testing.plan.ctx.TSPlanContextBinaryValue;
+
+/**
+ * Record drawn from a {@link PayloadCorpus} and exported to the context. The payload remains in the mapped file: request activities
+ * send it {@link TSPlanContextBinaryValue as it is}, templates and log activities reading it like a string decode it on first access.
+ * Serializing the record copies the payload
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class PayloadCorpusRecord implements TSPlanContextBinaryValue, CharSequence, Serializable {
+
+	private static final long serialVersionUID = -2207355178427143398L;
+	
+	/** index of the record within the corpus */
+	private final int index;
+	/** record key - null if the record has none */
+	private final String key;
+	/** name of the charset used for decoding the payload */
+	private final String charsetName;
+	/** view on the payload - position and limit are never modified */
+	private transient ByteBuffer payload;
+	/** decoded payload - null until accessed for the first time */
+	private transient String decoded = null;
+	
+	/**
+	 * Initializes the record. The payload is referenced, not copied
+	 * @param index
+	 * @param key
+	 * @param payload
+	 * @param charset
+	 */
+	public PayloadCorpusRecord(int index, String key, ByteBuffer payload, Charset charset) {
+		if(payload == null)
+			throw new IllegalArgumentException("Required payload missing");
+		if(charset == null)
+			throw new IllegalArgumentException("Required charset missing");
+		
+		this.index = index;
+		this.key = key;
+		this.payload = payload;
+		this.charsetName = charset.name();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.plan.ctx.TSPlanContextBinaryValue#getBuffer()
+	 */
+	public ChannelBuffer getBuffer() {
+		return ChannelBuffers.wrappedBuffer(payload.duplicate());
+	}
+	
+	/**
+	 * Returns the payload size in bytes without decoding it
+	 * @return
+	 */
+	public int getByteLength() {
+		return payload.remaining();
+	}
+	
+	public int getIndex() {
+		return index;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getCharsetName() {
+		return charsetName;
+	}
+	
+	/**
+	 * Returns true if the payload has already been decoded
+	 * @return
+	 */
+	public boolean isDecoded() {
+		return decoded != null;
+	}
+
+	/**
+	 * @see java.lang.CharSequence#length()
+	 */
+	public int length() {
+		return toString().length();
+	}
+
+	/**
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	/**
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	/**
+	 * Decodes the payload on first access and returns the cached result afterwards
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String result = decoded;
+		if(result == null) {
+			result = Charset.forName(charsetName).decode(payload.duplicate()).toString();
+			decoded = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Describes the record without decoding the payload
+	 * @return
+	 */
+	public String describe() {
+		return new ToStringBuilder(this)
+			.append("index", this.index)
+			.append("key", this.key)
+			.append("byteLength", getByteLength())
+			.append("charsetName", this.charsetName)
+			.append("decoded", isDecoded()).toString();
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		byte[] content = new byte[payload.remaining()];
+		payload.duplicate().get(content);
+		out.writeInt(content.length);
+		out.write(content);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		byte[] content = new byte[in.readInt()];
+		in.readFully(content);
+		this.payload = ByteBuffer.wrap(content);
+	}
+
+}
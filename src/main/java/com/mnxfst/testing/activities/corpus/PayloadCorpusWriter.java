@@ -0,0 +1,151 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.corpus;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes records to a {@link PayloadCorpus payload corpus} file. The index is written along with the corpus when the writer is closed
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class PayloadCorpusWriter {
+
+	private static final Charset KEY_CHARSET = Charset.forName("UTF-8");
+	
+	/** corpus file */
+	private final File file;
+	/** receives the records */
+	private final DataOutputStream out;
+	/** offsets of the records written so far */
+	private long[] offsets = new long[1024];
+	private int count = 0;
+	/** index entries of the keys written so far */
+	private long[] keyEntries = new long[1024];
+	private int keyCount = 0;
+	/** offset of the next record */
+	private long position = 0;
+	
+	/**
+	 * Creates the given corpus file - an existing file is replaced
+	 * @param file
+	 * @throws IOException
+	 */
+	public PayloadCorpusWriter(File file) throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+	}
+	
+	/**
+	 * Appends a record without key
+	 * @param payload
+	 * @throws IOException
+	 */
+	public void append(byte[] payload) throws IOException {
+		append(null, payload);
+	}
+	
+	/**
+	 * Appends a record 
+	 * @param key optional
+	 * @param payload
+	 * @throws IOException
+	 */
+	public void append(String key, byte[] payload) throws IOException {
+		
+		if(payload == null)
+			payload = new byte[0];
+		byte[] keyBytes = (key != null ? key.getBytes(KEY_CHARSET) : new byte[0]);
+		
+		if(count == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		offsets[count] = position;
+		if(keyBytes.length > 0) {
+			if(keyCount == keyEntries.length)
+				keyEntries = Arrays.copyOf(keyEntries, keyEntries.length * 2);
+			keyEntries[keyCount] = PayloadCorpus.toKeyEntry(PayloadCorpus.keyHash(keyBytes, 0, keyBytes.length), count);
+			keyCount = keyCount + 1;
+		}
+		count = count + 1;
+		
+		out.writeInt(keyBytes.length);
+		out.write(keyBytes);
+		out.writeInt(payload.length);
+		out.write(payload);
+		position = position + 4 + keyBytes.length + 4 + payload.length;
+	}
+	
+	/**
+	 * Closes the corpus file and writes its index
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		out.close();
+		writeIndex(new File(file.getPath() + PayloadCorpus.INDEX_FILE_SUFFIX), offsets, count, keyEntries, keyCount);
+	}
+	
+	/**
+	 * Writes the first count offsets and the first keyCount key entries to the given index file. The key entries are sorted in place
+	 * @param indexFile
+	 * @param offsets
+	 * @param count
+	 * @param keyEntries
+	 * @param keyCount
+	 * @throws IOException
+	 */
+	protected static void writeIndex(File indexFile, long[] offsets, int count, long[] keyEntries, int keyCount) throws IOException {
+		Arrays.sort(keyEntries, 0, keyCount);
+		DataOutputStream index = null;
+		try {
+			index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 65536));
+			index.writeInt(PayloadCorpus.INDEX_MAGIC);
+			index.writeInt(count);
+			index.writeInt(keyCount);
+			for(int i = 0; i < count; i++)
+				index.writeLong(offsets[i]);
+			for(int i = 0; i < keyCount; i++)
+				index.writeLong(keyEntries[i]);
+			index.close();
+			index = null;
+		} finally {
+			IOUtils.closeQuietly(index);
+		}
+	}
+	
+	/**
+	 * Returns the number of records written so far
+	 * @return
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	public File getFile() {
+		return file;
+	}
+}
@@ -19,12 +19,19 @@
 
 package com.mnxfst.testing.activities.http;
 
+import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
 
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.HttpHost;
@@ -54,17 +61,33 @@ import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpRequestExecutor;
 import org.apache.http.protocol.ImmutableHttpProcessor;
 import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
 
 import com.mnxfst.testing.activities.AbstractTSPlanActivity;
+import com.mnxfst.testing.activities.TSPlanActivityCompletionHandler;
+import com.mnxfst.testing.activities.TSPlanAsyncActivity;
+import com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime;
+import com.mnxfst.testing.activities.TSPlanSyncActivityAdapter;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.TSPlanContextByteTemplate;
+import com.mnxfst.testing.plan.ctx.TSPlanContextTemplate;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
 
 /**
  * Common base for http request activities
  * @author ckreutzfeldt
  *
  */
-public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity {
+public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity implements TSPlanAsyncActivity {
 
 	private static final Logger logger = Logger.getLogger(AbstractHTTPRequestActivity.class);
 
@@ -92,8 +115,36 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 	private static final String CFG_OPT_EXPECT_CONTINUE = "expectContinue";
 	private static final String CFG_OPT_HTTP_REQUEST_PROCESSORS = "httpRequestProcessors";
 	private static final String CFG_OPT_METHOD = "method";
+	private static final String CFG_OPT_TRANSPORT = "transport";
+	private static final String CFG_OPT_MAX_RESPONSE_LENGTH = "maxResponseLength";
+	private static final String CFG_OPT_RESPONSE_TIMEOUT = "responseTimeout";
+	private static final String CFG_OPT_REQUEST_BODY_TEMPLATE = "requestBodyTemplate";
+	private static final String CFG_OPT_REQUEST_CONTENT_TYPE = "requestContentType";
+	
+	/** requests are sent through a blocking http client - each request holds a thread until the response has been received */
+	public static final String TRANSPORT_BLOCKING = "blocking";
+	/** requests are sent through the non-blocking {@link NettyHTTPClient} */
+	public static final String TRANSPORT_NETTY = "netty";
 	
 	private static final String REQUEST_PARAM_OPTION_PREFIX = "request.param.";
+	private static final String REQUEST_HEADER_OPTION_PREFIX = "request.header.";
+	
+	/** max. capacity of a request buffer kept for the next request - a buffer grown beyond by a large body is dropped */
+	protected static final int MAX_POOLED_REQUEST_BUFFER_CAPACITY = 65536;
+	
+	/** request bodies sent by the blocking client from the current thread are rendered into this buffer */
+	private static final ThreadLocal<ChannelBuffer> pooledRequestBuffer = new ThreadLocal<ChannelBuffer>() {
+		protected ChannelBuffer initialValue() {
+			return ChannelBuffers.dynamicBuffer(1024);
+		}
+	};
+	
+	/** timings reused by the requests the blocking client sends from the current thread */
+	private static final ThreadLocal<HTTPRequestTimings> blockingRequestTimings = new ThreadLocal<HTTPRequestTimings>() {
+		protected HTTPRequestTimings initialValue() {
+			return new HTTPRequestTimings();
+		}
+	};
 
 	/////////////////////////////////////////////////////////////////////////////////////////
 	// scheme, host, port and path
@@ -180,6 +231,33 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
     private String basicAuthHostScope = null;
     /** http basic authentication - port scope */
     private int basicAuthPortScope = -1;
+    /** non-blocking http client - null if the blocking transport is selected */
+    protected NettyHTTPClient nettyClient = null;
+    /** request uri sent by the non-blocking client - absolute when sent through a proxy */
+    private String nettyRequestUri = null;
+    /** value of the host header sent by the non-blocking client */
+    private String nettyHostHeader = null;
+    /** preemptive basic authentication header sent by the non-blocking client - null if no credentials are configured */
+    private String nettyAuthorizationHeader = null;
+    /** charset used for decoding response contents which do not name a charset of their own */
+    protected Charset contentCharset = null;
+    
+	/////////////////////////////////////////////////////////////////////////////////////////
+    
+	/////////////////////////////////////////////////////////////////////////////////////////
+	// request templates - literal parts are encoded on initialization, context variables are spliced in per request
+    
+    /** request path and query - null unless any of them references a context variable */
+    protected HTTPURLTemplate pathTemplate = null;
+    protected HTTPURLTemplate queryTemplate = null;
+    /** scheme, host and port preceding the rendered path of absolute request uris */
+    private String requestURIPrefix = null;
+    /** headers whose values reference context variables - the others are kept in {@link #header} */
+    protected Map<String, TSPlanContextTemplate> headerTemplates = new LinkedHashMap<String, TSPlanContextTemplate>();
+    /** request body - null if none is configured */
+    protected TSPlanContextByteTemplate requestBodyTemplate = null;
+    /** content type of the request body */
+    protected String requestContentType = null;
     
 	/////////////////////////////////////////////////////////////////////////////////////////
 	
@@ -248,6 +326,7 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 		this.httpHost = new HttpHost(this.host, this.port);
 
 		// URI builder
+		Map<String, String> requestParameters = new LinkedHashMap<String, String>();
 		try {
 			
 			// query parameters
@@ -257,15 +336,23 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 					String value = (String)cfg.getOption(key);
 					String requestParameterName = key.substring(REQUEST_PARAM_OPTION_PREFIX.length(), key.length());				
 					qParams.add(new BasicNameValuePair(requestParameterName, value));
+					requestParameters.put(requestParameterName, value);
 					
 					if(logger.isDebugEnabled())
 						logger.debug("activity[name="+getName()+", id="+getId()+", requestParameter="+requestParameterName+", value="+value+"]");
 				}
 			}
 
-			this.destinationURI = URIUtils.createURI(this.scheme, this.host, this.port, this.path, URLEncodedUtils.format(qParams, this.contentChartset), null);
-			
-			// TODO handle post values
+			// placeholders are no valid uri characters, thus they are left out of the static uri - the request uri is rendered per request then
+			String staticPath = this.path;
+			if(staticPath.indexOf("${") != -1) {
+				StringBuilder literals = new StringBuilder(staticPath.length());
+				for(String literal : new TSPlanContextTemplate(staticPath).getLiterals())
+					literals.append(literal);
+				staticPath = literals.toString();
+			}
+			this.destinationURI = URIUtils.createURI(this.scheme, this.host, this.port, staticPath, URLEncodedUtils.format(qParams, this.contentChartset), null);
+			this.requestURIPrefix = URIUtils.createURI(this.scheme, this.host, this.port, null, null, null).toString();
 			
 		} catch (URISyntaxException e) {
 			throw new TSPlanActivityExecutionException("Failed to initialize uri for [scheme="+this.scheme+", host="+this.host+", port="+this.port+", path="+this.path+"]");
@@ -303,6 +390,11 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 		this.contentChartset = (String)cfg.getOption(CFG_OPT_CONTENT_CHARSET);
 		if(this.contentChartset == null || this.contentChartset.isEmpty())
 			this.contentChartset = "UTF-8";
+		try {
+			this.contentCharset = Charset.forName(this.contentChartset);
+		} catch(IllegalArgumentException e) {
+			throw new TSPlanActivityExecutionException("Unsupported content charset '"+this.contentChartset+"' found for activity '"+getName()+"'");
+		}
 		
 		String expectContStr = (String)cfg.getOption(CFG_OPT_EXPECT_CONTINUE);
 		if(expectContStr != null && !expectContStr.isEmpty()) {
@@ -347,6 +439,45 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 		
 		/////////////////////////////////////////////////////////////////////////////////////////
 
+		/////////////////////////////////////////////////////////////////////////////////////////
+		// compile request templates
+		
+		HTTPURLTemplate compiledPath = HTTPURLTemplate.forPath(this.path, contentCharset);
+		HTTPURLTemplate compiledQuery = HTTPURLTemplate.forQuery(requestParameters, contentCharset);
+		// static uris are computed once and remain unchanged
+		if(compiledPath.hasPlaceholders() || compiledQuery.hasPlaceholders()) {
+			this.pathTemplate = compiledPath;
+			this.queryTemplate = compiledQuery;
+		} else {
+			this.pathTemplate = null;
+			this.queryTemplate = null;
+		}
+		
+		this.headerTemplates.clear();
+		for(String key : cfg.getOptions().keySet()) {
+			if(key.startsWith(REQUEST_HEADER_OPTION_PREFIX)) {
+				String headerName = key.substring(REQUEST_HEADER_OPTION_PREFIX.length());
+				TSPlanContextTemplate headerTemplate = new TSPlanContextTemplate((String)cfg.getOption(key));
+				if(headerTemplate.hasPlaceholders()) {
+					this.header.remove(headerName);
+					this.headerTemplates.put(headerName, headerTemplate);
+				} else {
+					this.header.put(headerName, headerTemplate.getTemplate());
+				}
+			}
+		}
+		
+		String requestBody = (String)cfg.getOption(CFG_OPT_REQUEST_BODY_TEMPLATE);
+		this.requestBodyTemplate = (requestBody != null && !requestBody.isEmpty() ? new TSPlanContextByteTemplate(requestBody, contentCharset) : null);
+		this.requestContentType = (String)cfg.getOption(CFG_OPT_REQUEST_CONTENT_TYPE);
+		if(this.requestContentType == null || this.requestContentType.trim().isEmpty())
+			this.requestContentType = "text/plain; charset=" + this.contentChartset;
+		
+		if(logger.isDebugEnabled())
+			logger.debug("activity[name="+getName()+", id="+getId()+", dynamicUri="+(pathTemplate != null)+", headerTemplates="+headerTemplates.keySet()+", requestBodyTemplate="+(requestBodyTemplate != null)+", requestContentType="+requestContentType+"]");
+		
+		/////////////////////////////////////////////////////////////////////////////////////////
+
 		/////////////////////////////////////////////////////////////////////////////////////////
 		// fetch proxy settings
 		
@@ -378,6 +509,19 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 
 		/////////////////////////////////////////////////////////////////////////////////////////
 
+		/////////////////////////////////////////////////////////////////////////////////////////
+		// select transport
+		
+		String transport = (String)cfg.getOption(CFG_OPT_TRANSPORT);
+		if(transport != null && transport.trim().equalsIgnoreCase(TRANSPORT_NETTY)) {
+			initializeNettyClient(cfg);
+			return;
+		} else if(transport != null && !transport.trim().isEmpty() && !transport.trim().equalsIgnoreCase(TRANSPORT_BLOCKING)) {
+			throw new TSPlanActivityExecutionException("Invalid transport '"+transport+"' found for activity '"+getName()+"'. Valid values: " + TRANSPORT_BLOCKING + ", " + TRANSPORT_NETTY);
+		}
+		
+		/////////////////////////////////////////////////////////////////////////////////////////
+
 //		/////////////////////////////////////////////////////////////////////////////////////////
 //		// fetch request parameters
 //
@@ -398,16 +542,21 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 		// configure scheme registry and initialize http client
 		
 		SchemeRegistry schemeRegistry = new SchemeRegistry();
-		schemeRegistry.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
-		schemeRegistry.register(new Scheme("https", 443, SSLSocketFactory.getSocketFactory()));
+		schemeRegistry.register(new Scheme("http", 80, HTTPClientTimingSupport.createTimingSocketFactory(PlainSocketFactory.getSocketFactory())));
+		schemeRegistry.register(new Scheme("https", 443, HTTPClientTimingSupport.createTimingSocketFactory(SSLSocketFactory.getSocketFactory())));
 		
 		if(logger.isDebugEnabled())
 			logger.debug("activity[name="+getName()+", id="+getId()+", registeredSchemes={http, https}]");
 		
-		ThreadSafeClientConnManager threadSafeClientConnectionManager = new ThreadSafeClientConnManager(schemeRegistry);
+		// connection manager and request executor report the request phases to the timings bound to the executing thread 
+		ThreadSafeClientConnManager threadSafeClientConnectionManager = HTTPClientTimingSupport.createConnectionManager(schemeRegistry);
 		threadSafeClientConnectionManager.setMaxTotal(maxConnections);
 		threadSafeClientConnectionManager.setDefaultMaxPerRoute(maxConnections);		
-		this.httpClient = new DefaultHttpClient(threadSafeClientConnectionManager);
+		this.httpClient = new DefaultHttpClient(threadSafeClientConnectionManager) {
+			protected HttpRequestExecutor createRequestExecutor() {
+				return HTTPClientTimingSupport.createRequestExecutor();
+			}
+		};
 		
 		if(this.basicAuthUsername != null && !this.basicAuthUsername.trim().isEmpty() && this.basicAuthPassword != null && !this.basicAuthPassword.trim().isEmpty()) {
 			UsernamePasswordCredentials creds = new UsernamePasswordCredentials(this.basicAuthUsername, this.basicAuthPassword);
@@ -430,5 +579,379 @@ public abstract class AbstractHTTPRequestActivity extends AbstractTSPlanActivity
 		
 	}
 	
+	/**
+	 * Initializes the non-blocking {@link NettyHTTPClient} along with the information required for building its requests
+	 * @param cfg
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected void initializeNettyClient(TSPlanConfigOption cfg) throws TSPlanActivityExecutionException {
+		
+		if(!this.scheme.equalsIgnoreCase("http"))
+			throw new TSPlanActivityExecutionException("Unsupported scheme '"+this.scheme+"' found for activity '"+getName()+"'. The "+TRANSPORT_NETTY+" transport supports http only");
+		
+		int maxResponseLength = NettyHTTPClient.DEFAULT_MAX_RESPONSE_LENGTH;
+		String maxResponseLengthStr = (String)cfg.getOption(CFG_OPT_MAX_RESPONSE_LENGTH);
+		if(maxResponseLengthStr != null && !maxResponseLengthStr.trim().isEmpty()) {
+			try {
+				maxResponseLength = Integer.parseInt(maxResponseLengthStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanActivityExecutionException("Failed to parse expected numerical value for config option '"+CFG_OPT_MAX_RESPONSE_LENGTH+"' for activity '"+getName()+"'");
+			}
+		}
+		
+		long responseTimeout = NettyHTTPClient.DEFAULT_RESPONSE_TIMEOUT;
+		String responseTimeoutStr = (String)cfg.getOption(CFG_OPT_RESPONSE_TIMEOUT);
+		if(responseTimeoutStr != null && !responseTimeoutStr.trim().isEmpty()) {
+			try {
+				responseTimeout = Long.parseLong(responseTimeoutStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanActivityExecutionException("Failed to parse expected numerical value for config option '"+CFG_OPT_RESPONSE_TIMEOUT+"' for activity '"+getName()+"'");
+			}
+		}
+		
+		// requests sent through a proxy must reference the absolute uri
+		if(this.proxyHost != null) {
+			this.nettyRequestUri = this.destinationURI.toString();
+			this.nettyClient = new NettyHTTPClient(this.proxyHost.getHostName(), (this.proxyHost.getPort() > 0 ? this.proxyHost.getPort() : 80), this.maxConnections, maxResponseLength, responseTimeout);
+		} else {
+			this.nettyRequestUri = this.destinationURI.getRawPath() + (this.destinationURI.getRawQuery() != null ? "?" + this.destinationURI.getRawQuery() : "");
+			this.nettyClient = new NettyHTTPClient(this.host, this.port, this.maxConnections, maxResponseLength, responseTimeout);
+		}
+		this.nettyHostHeader = (this.port == 80 ? this.host : this.host + ":" + this.port);
+		
+		// credentials are sent preemptively as there is no challenge handling
+		if(this.basicAuthUsername != null && !this.basicAuthUsername.trim().isEmpty() && this.basicAuthPassword != null && !this.basicAuthPassword.trim().isEmpty()) {
+			try {
+				this.nettyAuthorizationHeader = "Basic " + new String(Base64.encodeBase64((this.basicAuthUsername + ":" + this.basicAuthPassword).getBytes(this.contentChartset)), "US-ASCII");
+			} catch(UnsupportedEncodingException e) {
+				throw new TSPlanActivityExecutionException("Failed to encode basic authentication credentials for activity '"+getName()+"'. Error: " + e.getMessage());
+			}
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("activity[name="+getName()+", id="+getId()+", transport="+TRANSPORT_NETTY+", requestUri="+nettyRequestUri+", maxConnections="+maxConnections+", maxResponseLength="+maxResponseLength+", responseTimeout="+responseTimeout+"]");
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		bindContextTemplate(pathTemplate);
+		bindContextTemplate(queryTemplate);
+		for(TSPlanContextTemplate headerTemplate : headerTemplates.values())
+			bindContextTemplate(headerTemplate);
+		bindContextTemplate(requestBodyTemplate);
+	}
+	
+	/**
+	 * Creates the request sent by the non-blocking client for the given context. The default implementation sends the configured
+	 * method along with the rendered request body template - if any
+	 * @param ctx
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected HttpRequest createNettyRequest(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		if(requestBodyTemplate != null && this.method.equalsIgnoreCase("post"))
+			return newNettyRequest(ctx, renderRequestBody(ctx, null), requestContentType);
+		return newNettyRequest(ctx, null, null);
+	}
+	
+	/**
+	 * Renders the request body template into the given buffer. If no buffer is provided, a new one is allocated which the caller may hand 
+	 * over to the non-blocking client. A template consisting of a single binary value, eg. a corpus payload, is not copied but returned as 
+	 * view. Returns null if no request body template is configured
+	 * @param ctx
+	 * @param buffer
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected ChannelBuffer renderRequestBody(TSPlanExecutionContext ctx, ChannelBuffer buffer) throws TSPlanActivityExecutionException {
+		if(requestBodyTemplate == null)
+			return null;
+		try {
+			return requestBodyTemplate.renderBuffer(ctx, buffer);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate request body template. Error: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the request buffer of the current thread after clearing it. The content remains valid until the thread requests the 
+	 * buffer again, thus it must not be handed over to the non-blocking client
+	 * @return
+	 */
+	protected ChannelBuffer getPooledRequestBuffer() {
+		ChannelBuffer buffer = pooledRequestBuffer.get();
+		buffer.clear();
+		return buffer;
+	}
+	
+	/**
+	 * Drops the request buffer of the current thread if a large body made it grow beyond {@link #MAX_POOLED_REQUEST_BUFFER_CAPACITY},
+	 * thus a single large request does not pin its memory for the lifetime of the thread. Must be called once the request has been sent
+	 */
+	protected void releasePooledRequestBuffer() {
+		if(pooledRequestBuffer.get().capacity() > MAX_POOLED_REQUEST_BUFFER_CAPACITY)
+			pooledRequestBuffer.remove();
+	}
+	
+	/**
+	 * Returns the destination of the blocking client - the static uri unless the path or query reference any context variable
+	 * @param ctx
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected URI renderDestinationURI(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		if(pathTemplate == null)
+			return this.destinationURI;
+		
+		StringBuilder uri = new StringBuilder(128).append(requestURIPrefix);
+		renderPathAndQuery(ctx, uri);
+		try {
+			return new URI(uri.toString());
+		} catch(URISyntaxException e) {
+			throw new TSPlanActivityExecutionException("Invalid request uri '"+uri+"' rendered for activity '"+getName()+"'. Error: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the request uri sent by the non-blocking client - the precomputed one unless the path or query reference any context variable
+	 * @param ctx
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected String renderNettyRequestURI(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		if(pathTemplate == null)
+			return this.nettyRequestUri;
+		
+		StringBuilder uri = new StringBuilder(128);
+		if(this.proxyHost != null)
+			uri.append(requestURIPrefix);
+		renderPathAndQuery(ctx, uri);
+		return uri.toString();
+	}
+	
+	/**
+	 * Appends the rendered path and query - the latter is left out if empty
+	 * @param ctx
+	 * @param uri
+	 * @throws TSPlanActivityExecutionException
+	 */
+	private void renderPathAndQuery(TSPlanExecutionContext ctx, StringBuilder uri) throws TSPlanActivityExecutionException {
+		try {
+			pathTemplate.renderTo(ctx, uri);
+			int queryStart = uri.length();
+			uri.append('?');
+			queryTemplate.renderTo(ctx, uri);
+			if(uri.length() == queryStart + 1)
+				uri.setLength(queryStart);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate request uri for activity '"+getName()+"'. Error: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Adds the configured headers to the given request of the blocking client, including the ones rendered from context variables
+	 * @param ctx
+	 * @param request
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected void addRequestHeaders(TSPlanExecutionContext ctx, org.apache.http.HttpMessage request) throws TSPlanActivityExecutionException {
+		for(Map.Entry<String, String> entry : header.entrySet())
+			request.addHeader(entry.getKey(), entry.getValue());
+		for(Map.Entry<String, TSPlanContextTemplate> entry : headerTemplates.entrySet())
+			request.addHeader(entry.getKey(), renderHeader(ctx, entry.getKey(), entry.getValue()));
+	}
+	
+	/**
+	 * Renders the value of the named header template
+	 * @param ctx
+	 * @param name
+	 * @param headerTemplate
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	private String renderHeader(TSPlanExecutionContext ctx, String name, TSPlanContextTemplate headerTemplate) throws TSPlanActivityExecutionException {
+		try {
+			return headerTemplate.render(ctx);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate value of header '"+name+"' for activity '"+getName()+"'. Error: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the consumer the body of the response to the request sent for the given context is streamed to. The default 
+	 * implementation returns null, thus the body is aggregated
+	 * @param ctx
+	 * @return
+	 */
+	protected NettyHTTPContentConsumer createNettyContentConsumer(TSPlanExecutionContext ctx) {
+		return null;
+	}
+	
+	/**
+	 * Processes the response received by the non-blocking client for the given context. The default implementation ignores the response
+	 * @param ctx
+	 * @param response
+	 * @param contentConsumer consumer the body has been streamed to - null if the body has been aggregated
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected void processNettyResponse(TSPlanExecutionContext ctx, HttpResponse response, NettyHTTPContentConsumer contentConsumer) throws TSPlanActivityExecutionException {		
+	}
+	
+	/**
+	 * Returns a request for the configured destination carrying the provided content (optional). Request uri and headers are rendered
+	 * from the given context if they reference any context variable
+	 * @param ctx
+	 * @param content
+	 * @param contentType
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected HttpRequest newNettyRequest(TSPlanExecutionContext ctx, ChannelBuffer content, String contentType) throws TSPlanActivityExecutionException {
+		
+		org.jboss.netty.handler.codec.http.HttpVersion version = (this.httpVersion == HttpVersion.HTTP_1_1 ? org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1 : org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_0);
+		HttpRequest request = new DefaultHttpRequest(version, (this.method.equalsIgnoreCase("post") ? HttpMethod.POST : HttpMethod.GET), renderNettyRequestURI(ctx));
+		request.setHeader(HttpHeaders.Names.HOST, nettyHostHeader);
+		request.setHeader(HttpHeaders.Names.USER_AGENT, userAgent);
+		request.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+		if(nettyAuthorizationHeader != null)
+			request.setHeader(HttpHeaders.Names.AUTHORIZATION, nettyAuthorizationHeader);
+		for(Map.Entry<String, String> entry : header.entrySet()) {
+			if(entry.getValue() != null)
+				request.setHeader(entry.getKey(), entry.getValue());
+		}
+		for(Map.Entry<String, TSPlanContextTemplate> entry : headerTemplates.entrySet())
+			request.setHeader(entry.getKey(), renderHeader(ctx, entry.getKey(), entry.getValue()));
+		
+		if(content != null) {
+			request.setContent(content);
+			if(contentType != null)
+				request.setHeader(HttpHeaders.Names.CONTENT_TYPE, contentType);
+			HttpHeaders.setContentLength(request, content.readableBytes());
+		} else if(request.getMethod() == HttpMethod.POST) {
+			HttpHeaders.setContentLength(request, 0);
+		}
+		return request;
+	}
+	
+	/**
+	 * Binds the timings of the current thread to the blocking client, thus it records the phases of the next request. Callers
+	 * must hand the timings to {@link #finishBlockingRequestTimings(TSPlanExecutionContext, HTTPRequestTimings)} afterwards
+	 * @return
+	 */
+	protected HTTPRequestTimings startBlockingRequestTimings() {
+		HTTPRequestTimings timings = blockingRequestTimings.get();
+		timings.reset();
+		HTTPClientTimingSupport.bind(timings);
+		return timings;
+	}
+	
+	/**
+	 * Unbinds the timings from the blocking client and records them to the statistics of the activity - if provided by the executor
+	 * @param ctx
+	 * @param timings
+	 */
+	protected void finishBlockingRequestTimings(TSPlanExecutionContext ctx, HTTPRequestTimings timings) {
+		HTTPClientTimingSupport.unbind();
+		timings.record(ctx.getActivityStatistics());
+	}
+	
+	/**
+	 * Sends the request created for the given context through the non-blocking client and waits for the response. Used by the
+	 * synchronous contract if the {@link #TRANSPORT_NETTY netty transport} is selected. If the response timeout is enabled, the 
+	 * request fails if no response has been received in time - including the time spent waiting for a connection
+	 * @param ctx
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected TSPlanExecutionContext executeNetty(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		
+		final CountDownLatch latch = new CountDownLatch(1);
+		final HttpResponse[] response = new HttpResponse[1];
+		final Throwable[] cause = new Throwable[1];
+		HTTPRequestTimings timings = new HTTPRequestTimings();
+		NettyHTTPContentConsumer contentConsumer = createNettyContentConsumer(ctx);
+		
+		nettyClient.execute(createNettyRequest(ctx), timings, contentConsumer, new NettyHTTPResponseHandler() {
+			public void completed(HttpResponse r) {
+				response[0] = r;
+				latch.countDown();
+			}
+			public void failed(Throwable t) {
+				cause[0] = t;
+				latch.countDown();
+			}
+		});
+		
+		try {
+			long responseTimeout = nettyClient.getResponseTimeout();
+			if(responseTimeout > 0) {
+				if(!latch.await(responseTimeout, TimeUnit.MILLISECONDS))
+					throw new TSPlanActivityExecutionException("No response received for '"+this.method+"' request of activity '"+getName()+"' within " + responseTimeout + "ms");
+			} else {
+				latch.await();
+			}
+		} catch(InterruptedException e) {
+			throw new TSPlanActivityExecutionException("Interrupted while waiting for response of activity '"+getName()+"'");
+		}
+		timings.record(ctx.getActivityStatistics());
+		if(cause[0] != null)
+			throw new TSPlanActivityExecutionException("Failed to execute '"+this.method+"' request. Error: " + cause[0].getMessage(), cause[0]);
+		
+		processNettyResponse(ctx, response[0], contentConsumer);
+		return ctx;
+	}
+	
+	/**
+	 * If the {@link #TRANSPORT_NETTY netty transport} is selected, the request is sent without holding any thread while waiting 
+	 * for the response. Otherwise the underlying http client blocks while waiting for the response, thus the request is sent from 
+	 * the blocking executor and the calling event loop thread is released immediately
+	 * @see com.mnxfst.testing.activities.TSPlanAsyncActivity#executeAsync(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext, com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime, com.mnxfst.testing.activities.TSPlanActivityCompletionHandler)
+	 */
+	public void executeAsync(final TSPlanExecutionContext ctx, TSPlanAsyncActivityRuntime runtime, final TSPlanActivityCompletionHandler handler) {
+		
+		if(nettyClient == null) {
+			TSPlanSyncActivityAdapter.executeOn(runtime.getBlockingExecutor(), this, ctx, handler);
+			return;
+		}
+		
+		HttpRequest request = null;
+		try {
+			request = createNettyRequest(ctx);
+		} catch(TSPlanActivityExecutionException e) {
+			handler.failed(ctx, e);
+			return;
+		}
+		
+		// the executor moves on to the next activity as soon as the handler has been notified, thus the statistics are fetched beforehand
+		final TSPlanActivityStatistics statistics = ctx.getActivityStatistics();
+		final HTTPRequestTimings timings = new HTTPRequestTimings();
+		final NettyHTTPContentConsumer contentConsumer = createNettyContentConsumer(ctx);
+		nettyClient.execute(request, timings, contentConsumer, new NettyHTTPResponseHandler() {
+			public void completed(HttpResponse response) {
+				timings.record(statistics);
+				try {
+					processNettyResponse(ctx, response, contentConsumer);
+				} catch(TSPlanActivityExecutionException e) {
+					handler.failed(ctx, e);
+					return;
+				}
+				handler.completed(ctx);
+			}
+			public void failed(Throwable cause) {
+				handler.failed(ctx, new TSPlanActivityExecutionException("Failed to execute '"+method+"' request. Error: " + cause.getMessage(), cause));
+			}
+		});
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#shutdown()
+	 */
+	public void shutdown() {
+		if(nettyClient != null)
+			nettyClient.shutdown();
+	}
+	
 }
 
@@ -0,0 +1,111 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
+/**
+ * Request entity writing the readable bytes of a {@link ChannelBuffer} straight to the connection, thus a request body rendered 
+ * into a reused buffer is sent without being copied into an array of its own. The buffer must not be modified before the request 
+ * has been sent
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class ChannelBufferEntity extends AbstractHttpEntity {
+
+	/** per-thread array used for copying the content of buffers not backed by an array to the connection */
+	private static final ThreadLocal<byte[]> writeBuffer = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+	
+	private final ChannelBuffer content;
+	
+	public ChannelBufferEntity(ChannelBuffer content, String contentType) {
+		if(content == null)
+			throw new IllegalArgumentException("Required content missing");
+		this.content = content;
+		setContentType(contentType);
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#isRepeatable()
+	 */
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#getContentLength()
+	 */
+	public long getContentLength() {
+		return content.readableBytes();
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#getContent()
+	 */
+	public InputStream getContent() throws IOException {
+		return new ChannelBufferInputStream(content.duplicate());
+	}
+
+	/**
+	 * Writes the backing array of the buffer straight to the stream, any other buffer is copied in chunks through an array
+	 * reused by the current thread
+	 * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+	 */
+	public void writeTo(OutputStream outstream) throws IOException {
+		if(outstream == null)
+			throw new IllegalArgumentException("Output stream may not be null");
+		
+		int index = content.readerIndex();
+		int length = content.readableBytes();
+		if(content.hasArray()) {
+			outstream.write(content.array(), content.arrayOffset() + index, length);
+		} else {
+			byte[] buffer = writeBuffer.get();
+			int end = index + length;
+			for(int i = index; i < end; i = i + buffer.length) {
+				int chunk = Math.min(buffer.length, end - i);
+				content.getBytes(i, buffer, 0, chunk);
+				outstream.write(buffer, 0, chunk);
+			}
+		}
+		outstream.flush();
+	}
+
+	/**
+	 * @see org.apache.http.HttpEntity#isStreaming()
+	 */
+	public boolean isStreaming() {
+		return false;
+	}
+	
+	public ChannelBuffer getBuffer() {
+		return content;
+	}
+}
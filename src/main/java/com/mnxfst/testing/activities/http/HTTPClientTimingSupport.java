@@ -0,0 +1,243 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.LayeredSchemeSocketFactory;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SchemeSocketFactory;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+
+/**
+ * Hooks into the blocking http client for measuring the phases of a request. The client runs each request on the calling thread,
+ * thus the {@link HTTPRequestTimings timings} of the current request are bound to that thread while it is executed and picked up 
+ * by the hooks: the connection operator measures the dns resolution, the socket factories measure the tcp connect and tls 
+ * handshake and the request executor measures writing the request and waiting for the response head. Nothing is recorded
+ * while no timings are bound
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class HTTPClientTimingSupport {
+
+	/** timings of the request currently executed by the thread - null if none */
+	private static final ThreadLocal<HTTPRequestTimings> boundTimings = new ThreadLocal<HTTPRequestTimings>();
+	
+	/**
+	 * Binds the given timings to the current thread
+	 * @param timings
+	 */
+	public static void bind(HTTPRequestTimings timings) {
+		boundTimings.set(timings);
+	}
+	
+	/**
+	 * Removes the timings bound to the current thread
+	 */
+	public static void unbind() {
+		boundTimings.remove();
+	}
+	
+	/**
+	 * Returns the timings bound to the current thread - null if none
+	 * @return
+	 */
+	public static HTTPRequestTimings current() {
+		return boundTimings.get();
+	}
+	
+	/**
+	 * Creates a connection manager which measures the dns resolution of the hosts it connects to
+	 * @param schemeRegistry
+	 * @return
+	 */
+	public static ThreadSafeClientConnManager createConnectionManager(SchemeRegistry schemeRegistry) {
+		return new ThreadSafeClientConnManager(schemeRegistry) {
+			protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg) {
+				return new DefaultClientConnectionOperator(schreg) {
+					protected InetAddress[] resolveHostname(String host) throws UnknownHostException {
+						long start = System.nanoTime();
+						try {
+							return super.resolveHostname(host);
+						} finally {
+							HTTPRequestTimings timings = current();
+							if(timings != null)
+								timings.addDns(System.nanoTime() - start);
+						}
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Wraps the given factory into one measuring the tcp connect and - for secure sockets - the tls handshake. Secure factories must
+	 * accept plain sockets for layering, like the http client's own ssl socket factory does
+	 * @param factory
+	 * @return
+	 */
+	public static SchemeSocketFactory createTimingSocketFactory(SchemeSocketFactory factory) {
+		if(factory instanceof LayeredSchemeSocketFactory)
+			return new TimingLayeredSocketFactory((LayeredSchemeSocketFactory)factory);
+		return new TimingSocketFactory(factory);
+	}
+	
+	/**
+	 * Creates a request executor which measures writing the request and waiting for the response head
+	 * @return
+	 */
+	public static HttpRequestExecutor createRequestExecutor() {
+		return new HttpRequestExecutor() {
+			protected HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+				long start = System.nanoTime();
+				try {
+					return super.doSendRequest(request, conn, context);
+				} finally {
+					HTTPRequestTimings timings = current();
+					if(timings != null)
+						timings.addRequestWrite(System.nanoTime() - start);
+				}
+			}
+			
+			protected HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+				long start = System.nanoTime();
+				try {
+					return super.doReceiveResponse(request, conn, context);
+				} finally {
+					HTTPRequestTimings timings = current();
+					if(timings != null)
+						timings.addTimeToFirstByte(System.nanoTime() - start);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Plain socket which keeps the duration of its connect
+	 */
+	private static class TimingSocket extends Socket {
+		
+		private long connectNanos = 0;
+		
+		/**
+		 * @see java.net.Socket#connect(java.net.SocketAddress, int)
+		 */
+		public void connect(SocketAddress endpoint, int timeout) throws IOException {
+			long start = System.nanoTime();
+			try {
+				super.connect(endpoint, timeout);
+			} finally {
+				connectNanos = System.nanoTime() - start;
+			}
+		}
+	}
+	
+	/**
+	 * Hands out {@link TimingSocket timing sockets} to the wrapped factory and records the connect duration. Everything the
+	 * wrapped factory does beyond the connect, ie. the tls handshake of secure factories, is recorded as tls phase
+	 */
+	private static class TimingSocketFactory implements SchemeSocketFactory {
+		
+		private final SchemeSocketFactory factory;
+		
+		TimingSocketFactory(SchemeSocketFactory factory) {
+			this.factory = factory;
+		}
+
+		/**
+		 * @see org.apache.http.conn.scheme.SchemeSocketFactory#createSocket(org.apache.http.params.HttpParams)
+		 */
+		public Socket createSocket(HttpParams params) throws IOException {
+			return new TimingSocket();
+		}
+
+		/**
+		 * @see org.apache.http.conn.scheme.SchemeSocketFactory#connectSocket(java.net.Socket, java.net.InetSocketAddress, java.net.InetSocketAddress, org.apache.http.params.HttpParams)
+		 */
+		public Socket connectSocket(Socket sock, InetSocketAddress remoteAddress, InetSocketAddress localAddress, HttpParams params) throws IOException, UnknownHostException, ConnectTimeoutException {
+			long start = System.nanoTime();
+			Socket connected = factory.connectSocket(sock, remoteAddress, localAddress, params);
+			long duration = System.nanoTime() - start;
+			
+			HTTPRequestTimings timings = current();
+			if(timings != null) {
+				if(sock instanceof TimingSocket) {
+					long connectNanos = ((TimingSocket)sock).connectNanos;
+					timings.addConnect(connectNanos);
+					if(factory.isSecure(connected))
+						timings.addTls(duration - connectNanos);
+				} else {
+					timings.addConnect(duration);
+				}
+			}
+			return connected;
+		}
+
+		/**
+		 * @see org.apache.http.conn.scheme.SchemeSocketFactory#isSecure(java.net.Socket)
+		 */
+		public boolean isSecure(Socket sock) throws IllegalArgumentException {
+			return factory.isSecure(sock);
+		}
+		
+		protected SchemeSocketFactory getFactory() {
+			return factory;
+		}
+	}
+	
+	/**
+	 * Timing wrapper of a secure factory - layering a tls connection on top of a tunnel established through a proxy is recorded as tls phase
+	 */
+	private static class TimingLayeredSocketFactory extends TimingSocketFactory implements LayeredSchemeSocketFactory {
+
+		TimingLayeredSocketFactory(LayeredSchemeSocketFactory factory) {
+			super(factory);
+		}
+
+		/**
+		 * @see org.apache.http.conn.scheme.LayeredSchemeSocketFactory#createLayeredSocket(java.net.Socket, java.lang.String, int, boolean)
+		 */
+		public Socket createLayeredSocket(Socket socket, String target, int port, boolean autoClose) throws IOException, UnknownHostException {
+			long start = System.nanoTime();
+			try {
+				return ((LayeredSchemeSocketFactory)getFactory()).createLayeredSocket(socket, target, port, autoClose);
+			} finally {
+				HTTPRequestTimings timings = current();
+				if(timings != null)
+					timings.addTls(System.nanoTime() - start);
+			}
+		}
+	}
+}
@@ -20,27 +20,80 @@
 package com.mnxfst.testing.activities.http;
 
 import java.io.IOException;
-import java.util.Map;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
 
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 public class HTTPRequestActivity extends AbstractHTTPRequestActivity {
 
+	private static final Logger logger = Logger.getLogger(HTTPRequestActivity.class);
+	
 	private static final String CTX_EXPORT_VAR_RESPONSE_CONTENT = "responseContent";
 	private static final String CTX_EXPORT_VAR_REQUEST_CONTENT = "requestContent";
+	private static final String CTX_EXPORT_VAR_RESPONSE_CHECKSUM = "responseChecksum";
+	private static final String CTX_EXPORT_VAR_RESPONSE_LENGTH = "responseLength";
+	
+	private static final String CFG_OPT_RESPONSE_BODY_MODE = "responseBodyMode";
+	private static final String CFG_OPT_RESPONSE_CAPTURE_LIMIT = "responseCaptureLimit";
+	private static final String CFG_OPT_RESPONSE_CHECKSUM_ALGORITHM = "responseChecksumAlgorithm";
+	
+	/** the whole body is decoded into a string - default if the response content is exported */
+	public static final String RESPONSE_BODY_MODE_DECODE = "decode";
+	/** the body is read and dropped without being copied - default if the response content is not exported */
+	public static final String RESPONSE_BODY_MODE_DISCARD = "discard";
+	/** the body is streamed through a message digest, only the checksum and the byte count are exported */
+	public static final String RESPONSE_BODY_MODE_CHECKSUM = "checksum";
+	/** the first bytes of the body are decoded, the remainder is dropped */
+	public static final String RESPONSE_BODY_MODE_CAPTURE = "capture";
+	/** the body bytes are exported as {@link HTTPResponseBody} which is decoded on first access */
+	public static final String RESPONSE_BODY_MODE_LAZY = "lazy";
+	
+	public static final int DEFAULT_RESPONSE_CAPTURE_LIMIT = 4096;
+	public static final String DEFAULT_RESPONSE_CHECKSUM_ALGORITHM = "MD5";
+	
+	/** per-thread buffer used for streaming response bodies */
+	private static final ThreadLocal<byte[]> responseReadBuffer = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
 	
 	protected String contextExportVariableResponseContent = null;
 	protected String contextExportVariableRequestInput = null;
+	protected String contextExportVariableResponseChecksum = null;
+	protected String contextExportVariableResponseLength = null;
+	/** handles of the export variables - null if not configured */
+	protected TSPlanContextVariable contextExportResponseContent = null;
+	protected TSPlanContextVariable contextExportRequestInput = null;
+	protected TSPlanContextVariable contextExportResponseChecksum = null;
+	protected TSPlanContextVariable contextExportResponseLength = null;
+	
+	/** selected response body mode */
+	protected String responseBodyMode = RESPONSE_BODY_MODE_DECODE;
+	/** max. number of bytes decoded in capture mode */
+	protected int responseCaptureLimit = DEFAULT_RESPONSE_CAPTURE_LIMIT;
+	/** message digest algorithm applied in checksum mode */
+	protected String responseChecksumAlgorithm = DEFAULT_RESPONSE_CHECKSUM_ALGORITHM;
 	
 	/**
 	 * @see com.mnxfst.testing.activities.http.AbstractHTTPRequestActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
@@ -50,6 +103,66 @@ public class HTTPRequestActivity extends AbstractHTTPRequestActivity {
 		
 		this.contextExportVariableResponseContent = getContextExportVariables().get(CTX_EXPORT_VAR_RESPONSE_CONTENT);
 		this.contextExportVariableRequestInput = getContextExportVariables().get(CTX_EXPORT_VAR_REQUEST_CONTENT);
+		this.contextExportVariableResponseChecksum = getContextExportVariables().get(CTX_EXPORT_VAR_RESPONSE_CHECKSUM);
+		this.contextExportVariableResponseLength = getContextExportVariables().get(CTX_EXPORT_VAR_RESPONSE_LENGTH);
+		resolveContextVariables();
+		
+		/////////////////////////////////////////////////////////////////////////
+		// response body handling
+		
+		String mode = (String)cfg.getOption(CFG_OPT_RESPONSE_BODY_MODE);
+		if(mode == null || mode.trim().isEmpty()) {
+			// nobody reads the content? do not spend any cycles on decoding it
+			this.responseBodyMode = (contextExportVariableResponseContent != null ? RESPONSE_BODY_MODE_DECODE : RESPONSE_BODY_MODE_DISCARD);
+		} else {
+			mode = mode.trim().toLowerCase();
+			if(!mode.equals(RESPONSE_BODY_MODE_DECODE) && !mode.equals(RESPONSE_BODY_MODE_DISCARD) && !mode.equals(RESPONSE_BODY_MODE_CHECKSUM) && !mode.equals(RESPONSE_BODY_MODE_CAPTURE) && !mode.equals(RESPONSE_BODY_MODE_LAZY))
+				throw new TSPlanActivityExecutionException("Invalid response body mode '"+mode+"' found for activity '"+getName()+"'. Valid values: " + RESPONSE_BODY_MODE_DECODE + ", " + RESPONSE_BODY_MODE_DISCARD + ", " + RESPONSE_BODY_MODE_CHECKSUM + ", " + RESPONSE_BODY_MODE_CAPTURE + ", " + RESPONSE_BODY_MODE_LAZY);
+			this.responseBodyMode = mode;
+		}
+		
+		this.responseCaptureLimit = DEFAULT_RESPONSE_CAPTURE_LIMIT;
+		String captureLimitStr = (String)cfg.getOption(CFG_OPT_RESPONSE_CAPTURE_LIMIT);
+		if(captureLimitStr != null && !captureLimitStr.trim().isEmpty()) {
+			try {
+				this.responseCaptureLimit = Integer.parseInt(captureLimitStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanActivityExecutionException("Failed to parse expected numerical value for config option '"+CFG_OPT_RESPONSE_CAPTURE_LIMIT+"' for activity '"+getName()+"'");
+			}
+			if(this.responseCaptureLimit < 0)
+				throw new TSPlanActivityExecutionException("Negative value found for config option '"+CFG_OPT_RESPONSE_CAPTURE_LIMIT+"' for activity '"+getName()+"'");
+		}
+		
+		this.responseChecksumAlgorithm = (String)cfg.getOption(CFG_OPT_RESPONSE_CHECKSUM_ALGORITHM);
+		if(this.responseChecksumAlgorithm == null || this.responseChecksumAlgorithm.trim().isEmpty())
+			this.responseChecksumAlgorithm = DEFAULT_RESPONSE_CHECKSUM_ALGORITHM;
+		this.responseChecksumAlgorithm = this.responseChecksumAlgorithm.trim();
+		if(this.responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM)) {
+			try {
+				MessageDigest.getInstance(this.responseChecksumAlgorithm);
+			} catch(NoSuchAlgorithmException e) {
+				throw new TSPlanActivityExecutionException("Unsupported checksum algorithm '"+this.responseChecksumAlgorithm+"' found for activity '"+getName()+"'");
+			}
+		}
+		
+		if(contextExportVariableResponseContent != null && (responseBodyMode.equals(RESPONSE_BODY_MODE_DISCARD) || responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM)))
+			logger.warn("activity[name="+getName()+", id="+getId()+"] exports the response content but runs in response body mode '"+responseBodyMode+"' which does not provide it");
+		
+		if(logger.isDebugEnabled())
+			logger.debug("activity[name="+getName()+", id="+getId()+", responseBodyMode="+responseBodyMode+", responseCaptureLimit="+responseCaptureLimit+", responseChecksumAlgorithm="+responseChecksumAlgorithm+"]");
+		
+		/////////////////////////////////////////////////////////////////////////
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		super.resolveContextVariables();
+		this.contextExportResponseContent = getContextVariable(contextExportVariableResponseContent, ExecutionContextValueType.RUN);
+		this.contextExportRequestInput = getContextVariable(contextExportVariableRequestInput, ExecutionContextValueType.RUN);
+		this.contextExportResponseChecksum = getContextVariable(contextExportVariableResponseChecksum, ExecutionContextValueType.RUN);
+		this.contextExportResponseLength = getContextVariable(contextExportVariableResponseLength, ExecutionContextValueType.RUN);
 	}
 
 	/**
@@ -57,54 +170,334 @@ public class HTTPRequestActivity extends AbstractHTTPRequestActivity {
 	 */
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
 		
-		// receives the http response
-		HttpResponse response = null;
-		try {		
+		if(nettyClient != null)
+			return executeNetty(ctx);
+		
+		HTTPRequestTimings timings = startBlockingRequestTimings();
+		try {
+			// receives the http response
+			HttpResponse response = null;
+			try {		
+				
+				if(this.method.equalsIgnoreCase("get")) {
+					response = sendGETRequest(ctx);
+				} else {
+					// the body is rendered into the buffer of the current thread which is sent without being copied
+					ChannelBuffer requestBody = renderRequestBody(ctx, getPooledRequestBuffer());
+					exportRequestContent(ctx, requestBody);
+					response = sendPOSTRequest(ctx, (requestBody != null ? new ChannelBufferEntity(requestBody, requestContentType) : null));
+				}
+			} catch(ClientProtocolException e) {
+				throw new TSPlanActivityExecutionException("Failed to execute '"+this.method+"' request. Error: " + e.getMessage(), e);
+			} catch (IOException e) {
+				throw new TSPlanActivityExecutionException("Failed to execute '"+this.method+"' request. Error: " + e.getMessage(), e);
+			}
+			timings.setStatusCode(response.getStatusLine().getStatusCode());
 			
-			if(this.method.equalsIgnoreCase("get")) {
-				response = sendGETRequest(header);
-			} else {
-				// TODO
-				response = sendPOSTRequest(null, header);
+			try {
+				exportResponseEntity(ctx, response.getEntity());
+			} catch(IOException e) {
+				logger.error("Failed to read response of '"+this.method+"' request for activity '"+getName()+"'. Error: " + e.getMessage(), e);
+				throw new TSPlanActivityExecutionException("Failed to read response of '"+this.method+"' request. Error: " + e.getMessage(), e);
+			} finally {
+				try {
+					clientConnection.close();
+				} catch (IOException e) {
+					logger.warn("Failed to close connection of activity '"+getName()+"'. Error: " + e.getMessage());
+				}
 			}
-		} catch(ClientProtocolException e) {
-			throw new TSPlanActivityExecutionException("Failed to execute '"+this.method+"' request. Error: " + e.getMessage(), e);
-		} catch (IOException e) {
-			throw new TSPlanActivityExecutionException("Failed to execute '"+this.method+"' request. Error: " + e.getMessage(), e);
+		} finally {
+			finishBlockingRequestTimings(ctx, timings);
+			releasePooledRequestBuffer();
 		}
 		
+		return ctx;
+	}
+
+	/**
+	 * Exports the rendered request body to the context
+	 * @see com.mnxfst.testing.activities.http.AbstractHTTPRequestActivity#createNettyRequest(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
+	 */
+	protected HttpRequest createNettyRequest(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		HttpRequest request = super.createNettyRequest(ctx);
+		exportRequestContent(ctx, request.getContent());
+		return request;
+	}
+	
+	/**
+	 * Exports the request body to the context - it is decoded only if the export is configured
+	 * @param ctx
+	 * @param content
+	 */
+	protected void exportRequestContent(TSPlanExecutionContext ctx, ChannelBuffer content) {
+		if(contextExportRequestInput != null && content != null && content.readable())
+			ctx.addContextValue(contextExportRequestInput, content.toString(requestBodyCharset()));
+	}
+	
+	/**
+	 * Returns the charset of the rendered request body
+	 * @return
+	 */
+	protected Charset requestBodyCharset() {
+		return (requestBodyTemplate != null ? requestBodyTemplate.getCharset() : contentCharset);
+	}
+	
+	/**
+	 * Streams the body in {@link #RESPONSE_BODY_MODE_DISCARD discard}, {@link #RESPONSE_BODY_MODE_CHECKSUM checksum} and 
+	 * {@link #RESPONSE_BODY_MODE_CAPTURE capture} mode, thus it is never aggregated 
+	 * @see com.mnxfst.testing.activities.http.AbstractHTTPRequestActivity#createNettyContentConsumer(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
+	 */
+	protected NettyHTTPContentConsumer createNettyContentConsumer(TSPlanExecutionContext ctx) {
+		if(responseBodyMode.equals(RESPONSE_BODY_MODE_DISCARD))
+			return new HTTPResponseBodyStream(null, 0);
+		if(responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM))
+			return new HTTPResponseBodyStream((contextExportResponseChecksum != null ? newResponseDigest() : null), 0);
+		if(responseBodyMode.equals(RESPONSE_BODY_MODE_CAPTURE))
+			return new HTTPResponseBodyStream(null, (contextExportResponseContent != null ? responseCaptureLimit : 0));
+		return null;
+	}
+	
+	/**
+	 * Exports the response content to the context
+	 * @see com.mnxfst.testing.activities.http.AbstractHTTPRequestActivity#processNettyResponse(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext, org.jboss.netty.handler.codec.http.HttpResponse, com.mnxfst.testing.activities.http.NettyHTTPContentConsumer)
+	 */
+	protected void processNettyResponse(TSPlanExecutionContext ctx, org.jboss.netty.handler.codec.http.HttpResponse response, NettyHTTPContentConsumer contentConsumer) throws TSPlanActivityExecutionException {
+		Charset charset = getResponseCharset(response.getHeader(HttpHeaders.Names.CONTENT_TYPE));
+		if(contentConsumer instanceof HTTPResponseBodyStream)
+			exportResponseStream(ctx, (HTTPResponseBodyStream)contentConsumer, charset);
+		else
+			exportResponseContent(ctx, response.getContent(), charset);
+	}
+	
+	/**
+	 * Returns the charset named by the given content type header value - the configured content charset if none or an unsupported 
+	 * one is named
+	 * @param contentType
+	 * @return
+	 */
+	protected Charset getResponseCharset(String contentType) {
+		if(contentType == null)
+			return contentCharset;
+		
+		int index = contentType.toLowerCase().indexOf("charset=");
+		if(index == -1)
+			return contentCharset;
+		
+		String charsetName = contentType.substring(index + "charset=".length());
+		int end = charsetName.indexOf(';');
+		if(end != -1)
+			charsetName = charsetName.substring(0, end);
+		charsetName = charsetName.trim();
+		if(charsetName.length() > 1 && charsetName.startsWith("\"") && charsetName.endsWith("\""))
+			charsetName = charsetName.substring(1, charsetName.length() - 1);
+		
 		try {
-			String content = EntityUtils.toString(response.getEntity());
-			ctx.addContextValue(contextExportVariableResponseContent, content, ExecutionContextValueType.RUN);
-		} catch(IOException e) {
-			e.printStackTrace(); // TODO handle - we should log this instead of throwing an exception
+			if(Charset.isSupported(charsetName))
+				return Charset.forName(charsetName);
+		} catch(IllegalCharsetNameException e) {
+			// ignored - the configured charset applies
+		}
+		return contentCharset;
+	}
+	
+	/**
+	 * Consumes the body of a response received by the blocking client according to the selected 
+	 * response body mode and exports the outcome to the context. The entity is always read to its
+	 * end, which releases the underlying connection for reuse. The time spent on reading the body is reported as transfer phase
+	 * @param ctx
+	 * @param entity
+	 * @throws IOException
+	 */
+	protected void exportResponseEntity(TSPlanExecutionContext ctx, HttpEntity entity) throws IOException {
+		
+		if(entity == null) {
+			exportResponseLength(ctx, 0);
+			return;
+		}
+
+		long transferStart = System.nanoTime();
+		String charsetName = EntityUtils.getContentCharSet(entity);
+		Charset charset = contentCharset;
+		if(charsetName != null && Charset.isSupported(charsetName))
+			charset = Charset.forName(charsetName);
+		
+		if(responseBodyMode.equals(RESPONSE_BODY_MODE_DECODE) || responseBodyMode.equals(RESPONSE_BODY_MODE_LAZY)) {
+			byte[] content = EntityUtils.toByteArray(entity);
+			recordTransfer(transferStart);
+			if(content == null)
+				content = new byte[0];
+			if(contextExportResponseContent != null)
+				ctx.addContextValue(contextExportResponseContent, (responseBodyMode.equals(RESPONSE_BODY_MODE_LAZY) ? new HTTPResponseBody(content, charset) : new String(content, charset)));
+			exportResponseLength(ctx, content.length);
+			return;
+		}
+
+		InputStream in = entity.getContent();
+		if(in == null) {
+			exportResponseLength(ctx, 0);
+			return;
+		}
+		
+		try {
+			byte[] buffer = responseReadBuffer.get();
+			long length = 0;
+			
+			if(responseBodyMode.equals(RESPONSE_BODY_MODE_CAPTURE)) {
+				// fill the capture array first and drop the remainder afterwards
+				long expected = entity.getContentLength();
+				byte[] captured = new byte[(expected >= 0 && expected < responseCaptureLimit ? (int)expected : responseCaptureLimit)];
+				int capturedLength = 0;
+				int read = 0;
+				while(capturedLength < captured.length && (read = in.read(captured, capturedLength, captured.length - capturedLength)) != -1)
+					capturedLength = capturedLength + read;
+				length = capturedLength;
+				while((read = in.read(buffer)) != -1)
+					length = length + read;
+				recordTransfer(transferStart);
+				if(contextExportResponseContent != null)
+					ctx.addContextValue(contextExportResponseContent, new String(captured, 0, capturedLength, charset));
+			} else if(responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM)) {
+				MessageDigest digest = newResponseDigest();
+				int read = 0;
+				while((read = in.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+					length = length + read;
+				}
+				recordTransfer(transferStart);
+				if(contextExportResponseChecksum != null)
+					ctx.addContextValue(contextExportResponseChecksum, new String(Hex.encodeHex(digest.digest())));
+			} else {
+				int read = 0;
+				while((read = in.read(buffer)) != -1)
+					length = length + read;
+				recordTransfer(transferStart);
+			}
+			
+			exportResponseLength(ctx, length);
 		} finally {
-			try {
-				clientConnection.close();
-			} catch (IOException e) {
-				e.printStackTrace();
+			in.close();
+		}
+	}
+	
+	/**
+	 * Handles the aggregated body of a response received by the non-blocking client according to the selected 
+	 * response body mode and exports the outcome to the context
+	 * @param ctx
+	 * @param content
+	 * @param charset charset the body is decoded with
+	 */
+	protected void exportResponseContent(TSPlanExecutionContext ctx, ChannelBuffer content, Charset charset) {
+		
+		int length = (content != null ? content.readableBytes() : 0);
+		if(length == 0) {
+			if(contextExportResponseContent != null && !responseBodyMode.equals(RESPONSE_BODY_MODE_DISCARD) && !responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM))
+				ctx.addContextValue(contextExportResponseContent, "");
+			if(contextExportResponseChecksum != null && responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM))
+				ctx.addContextValue(contextExportResponseChecksum, new String(Hex.encodeHex(newResponseDigest().digest())));
+			exportResponseLength(ctx, 0);
+			return;
+		}
+		
+		if(responseBodyMode.equals(RESPONSE_BODY_MODE_DECODE)) {
+			if(contextExportResponseContent != null)
+				ctx.addContextValue(contextExportResponseContent, content.toString(charset));
+		} else if(responseBodyMode.equals(RESPONSE_BODY_MODE_CAPTURE)) {
+			if(contextExportResponseContent != null)
+				ctx.addContextValue(contextExportResponseContent, content.toString(content.readerIndex(), Math.min(length, responseCaptureLimit), charset));
+		} else if(responseBodyMode.equals(RESPONSE_BODY_MODE_LAZY)) {
+			if(contextExportResponseContent != null) {
+				// the aggregated buffer belongs to this response only, so its backing array is safe to reference
+				if(content.hasArray()) {
+					ctx.addContextValue(contextExportResponseContent, new HTTPResponseBody(content.array(), content.arrayOffset() + content.readerIndex(), length, charset));
+				} else {
+					byte[] bytes = new byte[length];
+					content.getBytes(content.readerIndex(), bytes);
+					ctx.addContextValue(contextExportResponseContent, new HTTPResponseBody(bytes, charset));
+				}
+			}
+		} else if(responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM)) {
+			if(contextExportResponseChecksum != null) {
+				MessageDigest digest = newResponseDigest();
+				if(content.hasArray()) {
+					digest.update(content.array(), content.arrayOffset() + content.readerIndex(), length);
+				} else {
+					byte[] buffer = responseReadBuffer.get();
+					int index = content.readerIndex();
+					int end = index + length;
+					while(index < end) {
+						int chunk = Math.min(buffer.length, end - index);
+						content.getBytes(index, buffer, 0, chunk);
+						digest.update(buffer, 0, chunk);
+						index = index + chunk;
+					}
+				}
+				ctx.addContextValue(contextExportResponseChecksum, new String(Hex.encodeHex(digest.digest())));
 			}
 		}
 		
-		return ctx;
+		exportResponseLength(ctx, length);
+	}
+	
+	/**
+	 * Exports the outcome of a body streamed in by the non-blocking client according to the selected response body mode
+	 * @param ctx
+	 * @param stream
+	 * @param charset charset the captured content is decoded with
+	 */
+	protected void exportResponseStream(TSPlanExecutionContext ctx, HTTPResponseBodyStream stream, Charset charset) {
+		if(contextExportResponseContent != null && responseBodyMode.equals(RESPONSE_BODY_MODE_CAPTURE))
+			ctx.addContextValue(contextExportResponseContent, stream.getCapturedContent(charset));
+		if(contextExportResponseChecksum != null && responseBodyMode.equals(RESPONSE_BODY_MODE_CHECKSUM))
+			ctx.addContextValue(contextExportResponseChecksum, stream.getChecksum());
+		exportResponseLength(ctx, stream.getLength());
+	}
+	
+	/**
+	 * Reports the time passed since the given start as transfer phase to the timings bound to the blocking client - if any
+	 * @param transferStart
+	 */
+	protected void recordTransfer(long transferStart) {
+		HTTPRequestTimings timings = HTTPClientTimingSupport.current();
+		if(timings != null)
+			timings.addTransfer(System.nanoTime() - transferStart);
+	}
+	
+	/**
+	 * Exports the number of body bytes received
+	 * @param ctx
+	 * @param length
+	 */
+	protected void exportResponseLength(TSPlanExecutionContext ctx, long length) {
+		if(contextExportResponseLength != null)
+			ctx.addContextValue(contextExportResponseLength, Long.valueOf(length));
+	}
+	
+	/**
+	 * Returns a new digest for the configured checksum algorithm which has been validated during initialization
+	 * @return
+	 */
+	protected MessageDigest newResponseDigest() {
+		try {
+			return MessageDigest.getInstance(responseChecksumAlgorithm);
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Unsupported checksum algorithm '"+responseChecksumAlgorithm+"'", e);
+		}
 	}
 
 	/**
-	 * Sends a POST request to the configured url using the provided {@link HttpEntity entity} as additional payload
+	 * Sends a POST request to the configured url using the provided {@link HttpEntity entity} as additional payload. Uri and 
+	 * headers are rendered from the given context if they reference any context variable
+	 * @param ctx
 	 * @param entity
-	 * @param header
 	 * @return
 	 * @throws IOException
+	 * @throws TSPlanActivityExecutionException
 	 */
-	protected HttpResponse sendPOSTRequest(HttpEntity entity, Map<String, String> header) throws IOException {
+	protected HttpResponse sendPOSTRequest(TSPlanExecutionContext ctx, HttpEntity entity) throws IOException, TSPlanActivityExecutionException {
 
-		HttpPost httpPost = new HttpPost(this.destinationURI);
+		HttpPost httpPost = new HttpPost(renderDestinationURI(ctx));
 		httpPost.setParams(httpParameters);
-
-		if(header != null && !header.isEmpty()) {
-			for(String key : header.keySet())
-				httpPost.addHeader(key, header.get(key));
-		}
+		addRequestHeaders(ctx, httpPost);
 		
 		httpPost.setEntity(entity);
 
@@ -112,20 +505,17 @@ public class HTTPRequestActivity extends AbstractHTTPRequestActivity {
 	}
 	
 	/**
-	 * Sends a GET request to the configured url
-	 * @param header
+	 * Sends a GET request to the configured url. Uri and headers are rendered from the given context if they reference any context variable
+	 * @param ctx
 	 * @return
 	 * @throws IOException
+	 * @throws TSPlanActivityExecutionException
 	 */
-	protected HttpResponse sendGETRequest(Map<String, String> header) throws IOException {
+	protected HttpResponse sendGETRequest(TSPlanExecutionContext ctx) throws IOException, TSPlanActivityExecutionException {
 
-		HttpGet httpGet = new HttpGet(this.destinationURI);
+		HttpGet httpGet = new HttpGet(renderDestinationURI(ctx));
 		httpGet.setParams(httpParameters);
-
-		if(header != null && !header.isEmpty()) {
-			for(String key : header.keySet())
-				httpGet.addHeader(key, header.get(key));
-		}
+		addRequestHeaders(ctx, httpGet);
 
 		// execute request on selected client connection
 		return httpClient.execute(httpGet);
@@ -0,0 +1,225 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+
+/**
+ * Collects the phase durations (nanoseconds) of a single http request: dns resolution, tcp connect, tls handshake, request 
+ * write, time-to-first-byte and body transfer. Phases which did not take place, eg. the connect phase on a reused connection,
+ * remain unset and are not recorded. Along with the phases the status code class and whether the request was sent on a new
+ * or a reused connection are counted. Instances are reused through {@link #reset()} and are <b>not</b> thread-safe
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class HTTPRequestTimings {
+
+	public static final String PHASE_DNS = "dns";
+	public static final String PHASE_CONNECT = "connect";
+	public static final String PHASE_TLS = "tls";
+	public static final String PHASE_REQUEST_WRITE = "requestWrite";
+	public static final String PHASE_TIME_TO_FIRST_BYTE = "timeToFirstByte";
+	public static final String PHASE_TRANSFER = "transfer";
+	
+	public static final String COUNTER_STATUS_1XX = "status1xx";
+	public static final String COUNTER_STATUS_2XX = "status2xx";
+	public static final String COUNTER_STATUS_3XX = "status3xx";
+	public static final String COUNTER_STATUS_4XX = "status4xx";
+	public static final String COUNTER_STATUS_5XX = "status5xx";
+	public static final String COUNTER_STATUS_OTHER = "statusOther";
+	public static final String COUNTER_NEW_CONNECTION = "newConnection";
+	public static final String COUNTER_REUSED_CONNECTION = "reusedConnection";
+	
+	private static final long UNSET = -1;
+	
+	private long dnsNanos = UNSET;
+	private long connectNanos = UNSET;
+	private long tlsNanos = UNSET;
+	private long requestWriteNanos = UNSET;
+	private long timeToFirstByteNanos = UNSET;
+	private long transferNanos = UNSET;
+	/** status code of the response - 0 if no response has been received */
+	private int statusCode = 0;
+	
+	/**
+	 * Unsets all phases and the status code
+	 */
+	public void reset() {
+		this.dnsNanos = UNSET;
+		this.connectNanos = UNSET;
+		this.tlsNanos = UNSET;
+		this.requestWriteNanos = UNSET;
+		this.timeToFirstByteNanos = UNSET;
+		this.transferNanos = UNSET;
+		this.statusCode = 0;
+	}
+	
+	/**
+	 * Adds the given duration to the dns phase. Requests may resolve more than once, eg. when being redirected
+	 * @param nanos
+	 */
+	public void addDns(long nanos) {
+		this.dnsNanos = add(this.dnsNanos, nanos);
+	}
+
+	/**
+	 * Adds the given duration to the connect phase
+	 * @param nanos
+	 */
+	public void addConnect(long nanos) {
+		this.connectNanos = add(this.connectNanos, nanos);
+	}
+
+	/**
+	 * Adds the given duration to the tls handshake phase
+	 * @param nanos
+	 */
+	public void addTls(long nanos) {
+		this.tlsNanos = add(this.tlsNanos, nanos);
+	}
+
+	/**
+	 * Adds the given duration to the request write phase
+	 * @param nanos
+	 */
+	public void addRequestWrite(long nanos) {
+		this.requestWriteNanos = add(this.requestWriteNanos, nanos);
+	}
+
+	/**
+	 * Adds the given duration to the time-to-first-byte phase: the time passed between writing the request and receiving the response head
+	 * @param nanos
+	 */
+	public void addTimeToFirstByte(long nanos) {
+		this.timeToFirstByteNanos = add(this.timeToFirstByteNanos, nanos);
+	}
+
+	/**
+	 * Adds the given duration to the body transfer phase
+	 * @param nanos
+	 */
+	public void addTransfer(long nanos) {
+		this.transferNanos = add(this.transferNanos, nanos);
+	}
+	
+	/**
+	 * Sums up the durations - negative durations, eg. caused by racing timestamps, are treated as 0
+	 * @param current
+	 * @param nanos
+	 * @return
+	 */
+	private static long add(long current, long nanos) {
+		return (current == UNSET ? 0 : current) + (nanos > 0 ? nanos : 0);
+	}
+	
+	/**
+	 * Records all phases which took place along with the status class and connection counters to the given statistics
+	 * @param statistics
+	 */
+	public void record(TSPlanActivityStatistics statistics) {
+		
+		if(statistics == null)
+			return;
+		
+		if(dnsNanos != UNSET)
+			statistics.recordPhase(PHASE_DNS, dnsNanos);
+		if(connectNanos != UNSET)
+			statistics.recordPhase(PHASE_CONNECT, connectNanos);
+		if(tlsNanos != UNSET)
+			statistics.recordPhase(PHASE_TLS, tlsNanos);
+		if(requestWriteNanos != UNSET)
+			statistics.recordPhase(PHASE_REQUEST_WRITE, requestWriteNanos);
+		if(timeToFirstByteNanos != UNSET)
+			statistics.recordPhase(PHASE_TIME_TO_FIRST_BYTE, timeToFirstByteNanos);
+		if(transferNanos != UNSET)
+			statistics.recordPhase(PHASE_TRANSFER, transferNanos);
+		
+		if(statusCode > 0)
+			statistics.incrementCounter(getStatusCounter(statusCode));
+		
+		// the connection counters refer to requests which have actually been written
+		if(requestWriteNanos != UNSET)
+			statistics.incrementCounter(connectNanos != UNSET ? COUNTER_NEW_CONNECTION : COUNTER_REUSED_CONNECTION);
+	}
+	
+	/**
+	 * Returns the name of the counter for the class of the given status code
+	 * @param statusCode
+	 * @return
+	 */
+	public static String getStatusCounter(int statusCode) {
+		switch(statusCode / 100) {
+			case 1: return COUNTER_STATUS_1XX;
+			case 2: return COUNTER_STATUS_2XX;
+			case 3: return COUNTER_STATUS_3XX;
+			case 4: return COUNTER_STATUS_4XX;
+			case 5: return COUNTER_STATUS_5XX;
+			default: return COUNTER_STATUS_OTHER;
+		}
+	}
+
+	public long getDnsNanos() {
+		return dnsNanos;
+	}
+
+	public long getConnectNanos() {
+		return connectNanos;
+	}
+
+	public long getTlsNanos() {
+		return tlsNanos;
+	}
+
+	public long getRequestWriteNanos() {
+		return requestWriteNanos;
+	}
+
+	public long getTimeToFirstByteNanos() {
+		return timeToFirstByteNanos;
+	}
+
+	public long getTransferNanos() {
+		return transferNanos;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public void setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("dnsNanos", this.dnsNanos)
+				.append("connectNanos", this.connectNanos)
+				.append("tlsNanos", this.tlsNanos)
+				.append("requestWriteNanos", this.requestWriteNanos)
+				.append("timeToFirstByteNanos", this.timeToFirstByteNanos)
+				.append("transferNanos", this.transferNanos)
+				.append("statusCode", this.statusCode).toString();
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.Serializable;
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Byte view on a received response body which is exported to the context by activities running in
+ * {@link HTTPRequestActivity#RESPONSE_BODY_MODE_LAZY lazy} body mode. The content is decoded on first access
+ * through {@link #toString()} or any other {@link CharSequence} method, which lets templates and log activities
+ * read it like a string while runs that never look at the body skip charset decoding entirely.   
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class HTTPResponseBody implements CharSequence, Serializable {
+
+	private static final long serialVersionUID = 3476920285216434017L;
+
+	/** response body bytes - the array may be larger than the body itself */
+	private final byte[] content;
+	/** index of the first body byte within the content array */
+	private final int offset;
+	/** number of body bytes */
+	private final int length;
+	/** name of the charset used for decoding the body */
+	private final String charsetName;
+	/** decoded body - null until accessed for the first time */
+	private transient String decoded = null;
+	
+	/**
+	 * Initializes the view using the whole array as body
+	 * @param content
+	 * @param charset
+	 */
+	public HTTPResponseBody(byte[] content, Charset charset) {
+		this(content, 0, (content != null ? content.length : 0), charset);
+	}
+	
+	/**
+	 * Initializes the view on the given range of the array. The array is referenced, not copied
+	 * @param content
+	 * @param offset
+	 * @param length
+	 * @param charset
+	 */
+	public HTTPResponseBody(byte[] content, int offset, int length, Charset charset) {
+		if(content == null)
+			content = new byte[0];
+		if(offset < 0 || length < 0 || offset + length > content.length)
+			throw new IndexOutOfBoundsException("Invalid range [offset="+offset+", length="+length+"] for content of size " + content.length);
+		if(charset == null)
+			throw new IllegalArgumentException("Required charset missing");
+		
+		this.content = content;
+		this.offset = offset;
+		this.length = length;
+		this.charsetName = charset.name();
+	}
+	
+	/**
+	 * Returns the body size in bytes without decoding it
+	 * @return
+	 */
+	public int getByteLength() {
+		return length;
+	}
+	
+	/**
+	 * Returns a copy of the body bytes
+	 * @return
+	 */
+	public byte[] getBytes() {
+		byte[] result = new byte[length];
+		System.arraycopy(content, offset, result, 0, length);
+		return result;
+	}
+	
+	/**
+	 * Returns the name of the charset used for decoding the body
+	 * @return
+	 */
+	public String getCharsetName() {
+		return charsetName;
+	}
+	
+	/**
+	 * Returns true if the body has already been decoded
+	 * @return
+	 */
+	public boolean isDecoded() {
+		return decoded != null;
+	}
+
+	/**
+	 * @see java.lang.CharSequence#length()
+	 */
+	public int length() {
+		return toString().length();
+	}
+
+	/**
+	 * @see java.lang.CharSequence#charAt(int)
+	 */
+	public char charAt(int index) {
+		return toString().charAt(index);
+	}
+
+	/**
+	 * @see java.lang.CharSequence#subSequence(int, int)
+	 */
+	public CharSequence subSequence(int start, int end) {
+		return toString().subSequence(start, end);
+	}
+
+	/**
+	 * Decodes the body on first access and returns the cached result afterwards
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		String result = decoded;
+		if(result == null) {
+			result = new String(content, offset, length, Charset.forName(charsetName));
+			decoded = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Describes the view without decoding the body
+	 * @return
+	 */
+	public String describe() {
+		return new ToStringBuilder(this)
+			.append("byteLength", this.length)
+			.append("charsetName", this.charsetName)
+			.append("decoded", isDecoded()).toString();
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Consumes a response body streamed in by the {@link NettyHTTPClient} without keeping it: the bytes are counted and - if 
+ * requested - passed through a message digest and captured up to a limit. Used by {@link HTTPRequestActivity} in 
+ * {@link HTTPRequestActivity#RESPONSE_BODY_MODE_DISCARD discard}, {@link HTTPRequestActivity#RESPONSE_BODY_MODE_CHECKSUM checksum} 
+ * and {@link HTTPRequestActivity#RESPONSE_BODY_MODE_CAPTURE capture} body mode 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class HTTPResponseBodyStream implements NettyHTTPContentConsumer {
+
+	/** per-thread buffer used for digesting buffers not backed by an array */
+	private static final ThreadLocal<byte[]> digestBuffer = new ThreadLocal<byte[]>() {
+		protected byte[] initialValue() {
+			return new byte[8192];
+		}
+	};
+	
+	/** digest the body is passed through - null if no checksum is computed */
+	private final MessageDigest digest;
+	/** max. number of bytes captured */
+	private final int captureLimit;
+	/** first bytes of the body - allocated on arrival of the first content */
+	private byte[] captured = null;
+	private int capturedLength = 0;
+	/** number of body bytes received */
+	private long length = 0;
+	
+	/**
+	 * Initializes the stream
+	 * @param digest digest the body is passed through (optional)
+	 * @param captureLimit max. number of bytes captured - nothing is captured if not greater 0
+	 */
+	public HTTPResponseBodyStream(MessageDigest digest, int captureLimit) {
+		this.digest = digest;
+		this.captureLimit = (captureLimit > 0 ? captureLimit : 0);
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.http.NettyHTTPContentConsumer#contentReceived(org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	public void contentReceived(ChannelBuffer content) {
+		int index = content.readerIndex();
+		int readable = content.readableBytes();
+		
+		if(capturedLength < captureLimit) {
+			if(captured == null)
+				captured = new byte[captureLimit];
+			int capture = Math.min(readable, captureLimit - capturedLength);
+			content.getBytes(index, captured, capturedLength, capture);
+			capturedLength = capturedLength + capture;
+		}
+		
+		if(digest != null) {
+			if(content.hasArray()) {
+				digest.update(content.array(), content.arrayOffset() + index, readable);
+			} else {
+				byte[] buffer = digestBuffer.get();
+				int end = index + readable;
+				for(int i = index; i < end; i = i + buffer.length) {
+					int chunk = Math.min(buffer.length, end - i);
+					content.getBytes(i, buffer, 0, chunk);
+					digest.update(buffer, 0, chunk);
+				}
+			}
+		}
+		
+		length = length + readable;
+	}
+	
+	/**
+	 * Returns the number of body bytes received
+	 * @return
+	 */
+	public long getLength() {
+		return length;
+	}
+	
+	/**
+	 * Returns the hex encoded checksum of the body received - null if no digest has been provided. Must be called once the
+	 * body has been received completely
+	 * @return
+	 */
+	public String getChecksum() {
+		return (digest != null ? new String(Hex.encodeHex(digest.digest())) : null);
+	}
+	
+	/**
+	 * Decodes the captured bytes using the given charset
+	 * @param charset
+	 * @return
+	 */
+	public String getCapturedContent(Charset charset) {
+		return (captured != null ? new String(captured, 0, capturedLength, charset) : "");
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("length", this.length)
+				.append("capturedLength", this.capturedLength)
+				.append("captureLimit", this.captureLimit)
+				.append("digest", (this.digest != null ? this.digest.getAlgorithm() : null)).toString();
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import com.mnxfst.testing.plan.ctx.TSPlanContextTemplate;
+
+/**
+ * {@link TSPlanContextTemplate Template} of a request path or query string. The literal parts are encoded once when the template 
+ * is built, only the values of the placeholders are percent-encoded while rendering: query values the way html forms do, path
+ * values keep their slashes. Literal path parts are expected to be encoded already - just like static paths
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class HTTPURLTemplate extends TSPlanContextTemplate {
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	
+	/** charset the values are encoded with before being escaped */
+	private final Charset charset;
+	/** true for query templates, false for path templates */
+	private final boolean query;
+	
+	/**
+	 * Initializes the template - the literal parts of the given template must already be encoded
+	 * @param encodedTemplate
+	 * @param charset
+	 * @param query
+	 */
+	protected HTTPURLTemplate(String encodedTemplate, Charset charset, boolean query) {
+		super(encodedTemplate);
+		this.charset = charset;
+		this.query = query;
+	}
+	
+	/**
+	 * Builds the template of a path. The literal parts are taken as provided
+	 * @param path
+	 * @param charset
+	 * @return
+	 */
+	public static HTTPURLTemplate forPath(String path, Charset charset) {
+		return new HTTPURLTemplate((path != null ? path : ""), charset, false);
+	}
+	
+	/**
+	 * Builds the template of a query string from the given parameters. Names and the literal parts of the values are form-encoded
+	 * @param parameters
+	 * @param charset
+	 * @return
+	 */
+	public static HTTPURLTemplate forQuery(Map<String, String> parameters, Charset charset) {
+		
+		StringBuilder encoded = new StringBuilder();
+		if(parameters != null) {
+			for(Map.Entry<String, String> parameter : parameters.entrySet()) {
+				if(encoded.length() > 0)
+					encoded.append('&');
+				encode(encoded, parameter.getKey(), charset, true);
+				encoded.append('=');
+				
+				TSPlanContextTemplate value = new TSPlanContextTemplate(parameter.getValue());
+				String[] literals = value.getLiterals();
+				String[] placeholders = value.getPlaceholders();
+				for(int i = 0; i < placeholders.length; i++) {
+					encode(encoded, literals[i], charset, true);
+					encoded.append(placeholders[i]);
+				}
+				encode(encoded, literals[placeholders.length], charset, true);
+			}
+		}
+		return new HTTPURLTemplate(encoded.toString(), charset, true);
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.plan.ctx.TSPlanContextTemplate#appendValue(java.lang.StringBuilder, java.lang.String, java.lang.Object)
+	 */
+	protected void appendValue(StringBuilder result, String placeholder, Object value) {
+		encode(result, (value instanceof CharSequence ? (CharSequence)value : String.valueOf(value)), charset, query);
+	}
+	
+	/**
+	 * Percent-encodes the given value. Letters, digits and '-', '_', '.', '*' are kept. Form encoding replaces blanks by '+', 
+	 * path encoding keeps slashes and escapes blanks
+	 * @param result
+	 * @param value
+	 * @param charset
+	 * @param form
+	 */
+	protected static void encode(StringBuilder result, CharSequence value, Charset charset, boolean form) {
+		
+		int length = value.length();
+		for(int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.' || c == '*') {
+				result.append(c);
+			} else if(c == ' ' && form) {
+				result.append('+');
+			} else if(c == '/' && !form) {
+				result.append(c);
+			} else if(c < 0x80) {
+				appendEscaped(result, (byte)c);
+			} else {
+				// surrogate pairs are encoded as a whole
+				int end = (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)) ? i + 2 : i + 1);
+				byte[] bytes = value.subSequence(i, end).toString().getBytes(charset);
+				for(int j = 0; j < bytes.length; j++)
+					appendEscaped(result, bytes[j]);
+				i = end - 1;
+			}
+		}
+	}
+	
+	private static void appendEscaped(StringBuilder result, byte b) {
+		result.append('%').append(HEX[(b >> 4) & 0x0F]).append(HEX[b & 0x0F]);
+	}
+	
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Returns true for query templates, false for path templates
+	 * @return
+	 */
+	public boolean isQuery() {
+		return query;
+	}
+}
@@ -0,0 +1,636 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpClientCodec;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.timeout.ReadTimeoutException;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.jboss.netty.util.Timer;
+
+/**
+ * Non-blocking http client sending requests to a single destination through netty's nio transport. Connections are kept alive
+ * and reused: idle connections are kept in a lock-free queue, requests arriving while all of the max. number of connections are 
+ * busy wait in a second queue and are sent as soon as a connection becomes available. No thread is held while waiting for a 
+ * response, the outcome is reported to the {@link NettyHTTPResponseHandler} from the netty i/o thread. All clients share the same 
+ * netty i/o threads.<br/>
+ * The client keeps one connection pool instead of one pool per netty i/o thread: netty 3 assigns each new connection to an i/o 
+ * thread round robin and provides no way of connecting through a specific one, and requests are issued by executor threads rather 
+ * than by the i/o threads. Pools per i/o thread would thus split the max. number of connections without gaining any thread affinity.
+ * The shared pool does not use any lock - idle connections and waiting requests are kept in concurrent queues and the number of 
+ * connections is tracked by an atomic counter - thus it does not turn into the hotspot the blocking connection manager becomes.<br/>
+ * If {@link HTTPRequestTimings timings} are provided along with a request, they receive the connect duration (only if the request 
+ * is the first one sent on a new connection), the request write, the time-to-first-byte and the body transfer durations along with
+ * the status code. The destination is resolved once on instantiation, thus no dns phase is reported.<br/>
+ * Response bodies are aggregated up to the max. response length unless a {@link NettyHTTPContentConsumer} is provided along with 
+ * the request, which receives the body part by part instead.<br/>
+ * A request is failed if the destination does not send any data for longer than the response timeout while the request is served.
+ * Idle connections are not subject to the timeout
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class NettyHTTPClient {
+
+	private static final Logger logger = Logger.getLogger(NettyHTTPClient.class);
+	
+	/** default max. size of a response body - in bytes */
+	public static final int DEFAULT_MAX_RESPONSE_LENGTH = 10485760;
+	/** default max. time to wait for data from the destination while a request is served - in milliseconds */
+	public static final long DEFAULT_RESPONSE_TIMEOUT = 30000;
+	
+	private static final String PIPELINE_RESPONSE_HANDLER = "handler";
+	private static final String PIPELINE_FIRST_BYTE_HANDLER = "firstByte";
+	private static final String PIPELINE_CONTENT_STREAM_HANDLER = "stream";
+	private static final String PIPELINE_TIMEOUT_HANDLER = "timeout";
+
+	/** shared by all clients, thus the number of i/o threads does not grow with the number of activities */
+	private static NioClientSocketChannelFactory sharedChannelFactory = null;
+	/** shared by all clients, thus a single thread tracks the response timeouts of all connections */
+	private static Timer sharedTimer = null;
+	
+	/** address of the destination (or proxy) all connections are established with */
+	private final InetSocketAddress destination;
+	/** max. number of connections opened concurrently */
+	private final int maxConnections;
+	/** max. time to wait for data from the destination while a request is served - in milliseconds, disabled if not greater 0 */
+	private final long responseTimeout;
+	/** added to the pipeline of a connection while it serves a request - null if the response timeout is disabled */
+	private final ReadTimeoutHandler readTimeoutHandler;
+	/** bootstrap used for opening new connections */
+	private final ClientBootstrap bootstrap;
+	/** connected channels currently not serving any request */
+	private final Queue<Channel> idleChannels = new ConcurrentLinkedQueue<Channel>();
+	/** requests waiting for a connection */
+	private final Queue<PendingRequest> pendingRequests = new ConcurrentLinkedQueue<PendingRequest>();
+	/** number of connections being opened or already open */
+	private final AtomicInteger openConnections = new AtomicInteger(0);
+	/** set as soon as the client has been shut down */
+	private volatile boolean shutdown = false;
+	
+	/**
+	 * Initializes the client using the {@link #DEFAULT_MAX_RESPONSE_LENGTH default max. response length}
+	 * @param host
+	 * @param port
+	 * @param maxConnections
+	 */
+	public NettyHTTPClient(String host, int port, int maxConnections) {
+		this(host, port, maxConnections, DEFAULT_MAX_RESPONSE_LENGTH);
+	}
+	
+	/**
+	 * Initializes the client using the {@link #DEFAULT_RESPONSE_TIMEOUT default response timeout}
+	 * @param host
+	 * @param port
+	 * @param maxConnections
+	 * @param maxResponseLength max. size of a response body
+	 */
+	public NettyHTTPClient(String host, int port, int maxConnections, int maxResponseLength) {
+		this(host, port, maxConnections, maxResponseLength, DEFAULT_RESPONSE_TIMEOUT);
+	}
+	
+	/**
+	 * Initializes the client
+	 * @param host
+	 * @param port
+	 * @param maxConnections
+	 * @param maxResponseLength max. size of a response body
+	 * @param responseTimeout max. time to wait for data from the destination while a request is served - in milliseconds, 
+	 * disabled if not greater 0
+	 */
+	public NettyHTTPClient(String host, int port, int maxConnections, final int maxResponseLength, long responseTimeout) {
+		if(maxConnections < 1)
+			throw new IllegalArgumentException("Invalid number of max. connections: " + maxConnections + ". Values greater 0 are expected");
+		
+		this.destination = new InetSocketAddress(host, port);
+		this.maxConnections = maxConnections;
+		this.responseTimeout = responseTimeout;
+		this.readTimeoutHandler = (responseTimeout > 0 ? new ReadTimeoutHandler(getSharedTimer(), responseTimeout, TimeUnit.MILLISECONDS) : null);
+		this.bootstrap = new ClientBootstrap(getSharedChannelFactory());
+		this.bootstrap.setOption("tcpNoDelay", Boolean.TRUE);
+		this.bootstrap.setOption("keepAlive", Boolean.TRUE);
+		this.bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+			public ChannelPipeline getPipeline() throws Exception {
+				ChannelPipeline pipeline = Channels.pipeline();
+				ResponseChannelHandler responseHandler = new ResponseChannelHandler();
+				pipeline.addLast("codec", new HttpClientCodec());
+				pipeline.addLast(PIPELINE_FIRST_BYTE_HANDLER, new FirstByteHandler(responseHandler));
+				pipeline.addLast(PIPELINE_CONTENT_STREAM_HANDLER, new ContentStreamHandler(responseHandler));
+				pipeline.addLast("aggregator", new HttpChunkAggregator(maxResponseLength));
+				pipeline.addLast(PIPELINE_RESPONSE_HANDLER, responseHandler);
+				return pipeline;
+			}
+		});
+	}
+	
+	/**
+	 * Returns the channel factory shared by all clients - created on first access
+	 * @return
+	 */
+	private static synchronized NioClientSocketChannelFactory getSharedChannelFactory() {
+		if(sharedChannelFactory == null) {
+			ThreadFactory threadFactory = new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ptest-http-io-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			sharedChannelFactory = new NioClientSocketChannelFactory(Executors.newCachedThreadPool(threadFactory), Executors.newCachedThreadPool(threadFactory), Runtime.getRuntime().availableProcessors() * 2);
+		}
+		return sharedChannelFactory;
+	}
+	
+	/**
+	 * Returns the timer shared by all clients - created on first access
+	 * @return
+	 */
+	private static synchronized Timer getSharedTimer() {
+		if(sharedTimer == null) {
+			sharedTimer = new HashedWheelTimer(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "ptest-http-timeout");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sharedTimer;
+	}
+	
+	/**
+	 * Sends the given request and returns immediately. The outcome is reported to the provided handler
+	 * @param request
+	 * @param handler
+	 */
+	public void execute(HttpRequest request, NettyHTTPResponseHandler handler) {
+		execute(request, null, handler);
+	}
+	
+	/**
+	 * Sends the given request and returns immediately. The outcome is reported to the provided handler, the phase durations are
+	 * written to the given timings (optional) before the handler is notified of a response
+	 * @param request
+	 * @param timings
+	 * @param handler
+	 */
+	public void execute(HttpRequest request, HTTPRequestTimings timings, NettyHTTPResponseHandler handler) {
+		execute(request, timings, null, handler);
+	}
+	
+	/**
+	 * Sends the given request and returns immediately. The response body is streamed to the given consumer (optional) instead 
+	 * of being aggregated. The outcome is reported to the provided handler, the phase durations are written to the given timings 
+	 * (optional) before the handler is notified of a response
+	 * @param request
+	 * @param timings
+	 * @param contentConsumer
+	 * @param handler
+	 */
+	public void execute(HttpRequest request, HTTPRequestTimings timings, NettyHTTPContentConsumer contentConsumer, NettyHTTPResponseHandler handler) {
+		
+		if(shutdown) {
+			handler.failed(new IOException("Client for " + destination + " has been shut down"));
+			return;
+		}
+		
+		Channel channel = pollIdleChannel();
+		if(channel != null) {
+			send(channel, new PendingRequest(request, timings, contentConsumer, handler));
+			return;
+		}
+		
+		// open another connection if the limit allows it, otherwise the request is picked up by the next released connection
+		pendingRequests.offer(new PendingRequest(request, timings, contentConsumer, handler));
+		connectIfAllowed();
+		
+		// a connection may have been released between polling and queueing
+		channel = pollIdleChannel();
+		if(channel != null)
+			release(channel);
+	}
+	
+	/**
+	 * Closes all connections. Requests waiting for a connection are failed
+	 */
+	public void shutdown() {
+		this.shutdown = true;
+		Channel channel = null;
+		while((channel = idleChannels.poll()) != null)
+			channel.close();
+		failPendingRequests(new IOException("Client for " + destination + " has been shut down"));
+	}
+	
+	/**
+	 * Opens a new connection unless the max. number of connections is reached
+	 */
+	private void connectIfAllowed() {
+		while(true) {
+			int current = openConnections.get();
+			if(current >= maxConnections)
+				return;
+			if(openConnections.compareAndSet(current, current + 1)) {
+				connect();
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Opens a new connection and hands it over to the next waiting request
+	 */
+	private void connect() {
+		final long connectStart = System.nanoTime();
+		bootstrap.connect(destination).addListener(new ChannelFutureListener() {
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if(future.isSuccess()) {
+					// the connect duration is reported along with the first request sent on the connection
+					getResponseHandler(future.getChannel()).connectNanos = System.nanoTime() - connectStart;
+					release(future.getChannel());
+				} else {
+					// the failed channel gets closed, thus the connection is uncounted by the response handler
+					logger.error("Failed to connect to " + destination + ". Error: " + future.getCause().getMessage());
+					
+					// the destination is unreachable: waiting for another connection would just reconnect once this one is closed
+					failPendingRequests(future.getCause());
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Hands the given channel over to the next waiting request or marks it as idle if there is none
+	 * @param channel
+	 */
+	private void release(Channel channel) {
+		if(shutdown || !channel.isConnected()) {
+			channel.close();
+			return;
+		}
+		
+		PendingRequest pendingRequest = pendingRequests.poll();
+		if(pendingRequest != null) {
+			send(channel, pendingRequest);
+			return;
+		}
+		
+		idleChannels.offer(channel);
+		
+		// a request may have been queued between polling and marking the channel as idle
+		if(!pendingRequests.isEmpty()) {
+			Channel idleChannel = pollIdleChannel();
+			if(idleChannel != null)
+				release(idleChannel);
+		}
+	}
+	
+	/**
+	 * Returns the next idle channel which is still connected or null if there is none
+	 * @return
+	 */
+	private Channel pollIdleChannel() {
+		Channel channel = null;
+		while((channel = idleChannels.poll()) != null) {
+			if(channel.isConnected())
+				return channel;
+		}
+		return null;
+	}
+	
+	/**
+	 * Writes the request to the given channel
+	 * @param channel
+	 * @param pendingRequest
+	 */
+	private void send(Channel channel, final PendingRequest pendingRequest) {
+		ResponseChannelHandler responseHandler = getResponseHandler(channel);
+		pendingRequest.connectNanos = responseHandler.connectNanos;
+		responseHandler.connectNanos = -1;
+		responseHandler.setCurrentRequest(pendingRequest);
+		
+		// added per request, thus the timeout starts with sending and an idle connection is never timed out
+		if(readTimeoutHandler != null)
+			channel.getPipeline().addFirst(PIPELINE_TIMEOUT_HANDLER, readTimeoutHandler);
+		pendingRequest.sendStart = System.nanoTime();
+		channel.write(pendingRequest.request).addListener(new ChannelFutureListener() {
+			public void operationComplete(ChannelFuture future) throws Exception {
+				pendingRequest.writeEnd = System.nanoTime();
+				if(!future.isSuccess())
+					future.getChannel().close();
+			}
+		});
+	}
+	
+	/**
+	 * Returns the response handler of the given channel
+	 * @param channel
+	 * @return
+	 */
+	private ResponseChannelHandler getResponseHandler(Channel channel) {
+		return (ResponseChannelHandler)channel.getPipeline().get(PIPELINE_RESPONSE_HANDLER);
+	}
+	
+	/**
+	 * Fails all requests waiting for a connection
+	 * @param cause
+	 */
+	private void failPendingRequests(Throwable cause) {
+		PendingRequest pendingRequest = null;
+		while((pendingRequest = pendingRequests.poll()) != null)
+			pendingRequest.handler.failed(cause);
+	}
+	
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+	
+	public long getResponseTimeout() {
+		return responseTimeout;
+	}
+	
+	/**
+	 * Returns the number of connections being opened or already open
+	 * @return
+	 */
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("destination", this.destination)
+				.append("maxConnections", this.maxConnections)
+				.append("responseTimeout", this.responseTimeout)
+				.append("openConnections", this.openConnections.get())
+				.append("idleConnections", this.idleChannels.size())
+				.append("pendingRequests", this.pendingRequests.size()).toString();
+	}
+	
+	/**
+	 * Request waiting to be sent along with the handler receiving its outcome. The timestamps are taken on different threads and
+	 * are written to the timings by the i/o thread receiving the response
+	 */
+	private static class PendingRequest {
+		private final HttpRequest request;
+		private final HTTPRequestTimings timings;
+		/** receives the body while it streams in - null if the body is aggregated */
+		private final NettyHTTPContentConsumer contentConsumer;
+		private final NettyHTTPResponseHandler handler;
+		/** duration of opening the connection - negative if the request has been sent on a reused connection */
+		private volatile long connectNanos = -1;
+		private volatile long sendStart = 0;
+		private volatile long writeEnd = 0;
+		private volatile long firstByte = 0;
+		
+		PendingRequest(HttpRequest request, HTTPRequestTimings timings, NettyHTTPContentConsumer contentConsumer, NettyHTTPResponseHandler handler) {
+			this.request = request;
+			this.timings = timings;
+			this.contentConsumer = contentConsumer;
+			this.handler = handler;
+		}
+		
+		/**
+		 * Writes the phase durations and the status code to the timings - if provided
+		 * @param response
+		 * @param responseEnd
+		 */
+		void recordTimings(HttpResponse response, long responseEnd) {
+			if(timings == null)
+				return;
+			if(connectNanos >= 0)
+				timings.addConnect(connectNanos);
+			
+			// the write listener may not have been notified yet if the response arrives very quickly
+			long requestWritten = (writeEnd != 0 ? writeEnd : sendStart);
+			long responseStart = (firstByte != 0 ? firstByte : responseEnd);
+			timings.addRequestWrite(requestWritten - sendStart);
+			timings.addTimeToFirstByte(responseStart - requestWritten);
+			timings.addTransfer(responseEnd - responseStart);
+			timings.setStatusCode(response.getStatus().getCode());
+		}
+	}
+	
+	/**
+	 * Placed in front of the aggregator in order to note the arrival of the response head
+	 */
+	private static class FirstByteHandler extends SimpleChannelUpstreamHandler {
+		
+		private final ResponseChannelHandler responseHandler;
+		
+		FirstByteHandler(ResponseChannelHandler responseHandler) {
+			this.responseHandler = responseHandler;
+		}
+		
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+			if(event.getMessage() instanceof HttpResponse) {
+				PendingRequest pendingRequest = responseHandler.currentRequest.get();
+				if(pendingRequest != null && pendingRequest.firstByte == 0)
+					pendingRequest.firstByte = System.nanoTime();
+			}
+			ctx.sendUpstream(event);
+		}
+	}
+	
+	/**
+	 * Placed in front of the aggregator in order to hand the body of the current response to its content consumer - if provided.
+	 * The response is passed on without any content as soon as its last chunk has been consumed, thus the aggregator lets it 
+	 * pass. Responses of requests without content consumer are passed on unchanged
+	 */
+	private static class ContentStreamHandler extends SimpleChannelUpstreamHandler {
+		
+		private final ResponseChannelHandler responseHandler;
+		/** chunked response whose body is currently streamed - null if there is none */
+		private HttpResponse streamedResponse = null;
+		/** consumer of the body currently streamed */
+		private NettyHTTPContentConsumer streamedContentConsumer = null;
+		
+		ContentStreamHandler(ResponseChannelHandler responseHandler) {
+			this.responseHandler = responseHandler;
+		}
+		
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+			Object message = event.getMessage();
+			
+			if(message instanceof HttpResponse) {
+				PendingRequest pendingRequest = responseHandler.currentRequest.get();
+				NettyHTTPContentConsumer contentConsumer = (pendingRequest != null ? pendingRequest.contentConsumer : null);
+				if(contentConsumer == null) {
+					ctx.sendUpstream(event);
+					return;
+				}
+				
+				HttpResponse response = (HttpResponse)message;
+				if(response.isChunked()) {
+					// passed on along with the last chunk
+					streamedResponse = response;
+					streamedContentConsumer = contentConsumer;
+					return;
+				}
+				
+				if(response.getContent().readable())
+					contentConsumer.contentReceived(response.getContent());
+				response.setContent(ChannelBuffers.EMPTY_BUFFER);
+				ctx.sendUpstream(event);
+				return;
+			}
+			
+			if(message instanceof HttpChunk && streamedResponse != null) {
+				HttpChunk chunk = (HttpChunk)message;
+				if(chunk.getContent().readable())
+					streamedContentConsumer.contentReceived(chunk.getContent());
+				if(chunk.isLast()) {
+					HttpResponse response = streamedResponse;
+					streamedResponse = null;
+					streamedContentConsumer = null;
+					response.setChunked(false);
+					Channels.fireMessageReceived(ctx, response, event.getRemoteAddress());
+				}
+				return;
+			}
+			
+			ctx.sendUpstream(event);
+		}
+		
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelClosed(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+		 */
+		public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+			streamedResponse = null;
+			streamedContentConsumer = null;
+			ctx.sendUpstream(event);
+		}
+	}
+	
+	/**
+	 * Receives the responses of a single connection. Each connection serves one request at a time
+	 */
+	private class ResponseChannelHandler extends SimpleChannelUpstreamHandler {
+		
+		/** request currently served by the connection - null while idle or as soon as its outcome has been reported */
+		private final AtomicReference<PendingRequest> currentRequest = new AtomicReference<PendingRequest>();
+		/** duration of opening the connection - reset as soon as it has been handed to the first request */
+		private volatile long connectNanos = -1;
+		
+		void setCurrentRequest(PendingRequest pendingRequest) {
+			this.currentRequest.set(pendingRequest);
+		}
+		
+		/**
+		 * Returns the current request and marks the connection as idle - null if there is none. The response timeout is
+		 * stopped
+		 * @param pipeline
+		 * @return
+		 */
+		private PendingRequest takeCurrentRequest(ChannelPipeline pipeline) {
+			if(readTimeoutHandler != null && pipeline.get(PIPELINE_TIMEOUT_HANDLER) != null)
+				pipeline.remove(PIPELINE_TIMEOUT_HANDLER);
+			return currentRequest.getAndSet(null);
+		}
+		
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+			long responseEnd = System.nanoTime();
+			HttpResponse response = (HttpResponse)event.getMessage();
+			PendingRequest pendingRequest = takeCurrentRequest(ctx.getPipeline());
+			if(pendingRequest != null)
+				pendingRequest.recordTimings(response, responseEnd);
+			
+			// the connection is released before reporting, thus it may serve the next request right away
+			if(HttpHeaders.isKeepAlive(response))
+				release(event.getChannel());
+			else
+				event.getChannel().close();
+			
+			if(pendingRequest != null)
+				pendingRequest.handler.completed(response);
+		}
+		
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#exceptionCaught(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ExceptionEvent)
+		 */
+		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent event) throws Exception {
+			PendingRequest pendingRequest = takeCurrentRequest(ctx.getPipeline());
+			event.getChannel().close();
+			if(pendingRequest == null)
+				return;
+			
+			if(event.getCause() instanceof ReadTimeoutException)
+				pendingRequest.handler.failed(new IOException("No response received from " + destination + " within " + responseTimeout + "ms"));
+			else
+				pendingRequest.handler.failed(event.getCause());
+		}
+		
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelClosed(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+		 */
+		public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+			openConnections.decrementAndGet();
+			PendingRequest pendingRequest = takeCurrentRequest(ctx.getPipeline());
+			if(pendingRequest != null)
+				pendingRequest.handler.failed(new IOException("Connection to " + destination + " closed before the response was received"));
+			
+			// requests waiting for a connection must not be stranded if this was the last one
+			if(!shutdown && !pendingRequests.isEmpty())
+				connectIfAllowed();
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Receives the body of a response sent through the {@link NettyHTTPClient} part by part while it streams in, thus the body is
+ * never aggregated and its size is not limited. Called from a netty i/o thread before the {@link NettyHTTPResponseHandler} is 
+ * notified of the response - which carries no content then. Implementations must not block
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public interface NettyHTTPContentConsumer {
+
+	/**
+	 * Called for each part of the body in the order of arrival. The buffer is valid during the call only
+	 * @param content
+	 */
+	public void contentReceived(ChannelBuffer content);
+	
+}
@@ -0,0 +1,44 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import org.jboss.netty.handler.codec.http.HttpResponse;
+
+/**
+ * Receives the outcome of a request sent through the {@link NettyHTTPClient}. Exactly one of both methods is called exactly once 
+ * for each request - usually from a netty i/o thread, thus implementations must not block
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public interface NettyHTTPResponseHandler {
+
+	/**
+	 * Called as soon as the complete response has been received
+	 * @param response
+	 */
+	public void completed(HttpResponse response);
+	
+	/**
+	 * Called in case the request could not be sent or the response could not be received
+	 * @param cause
+	 */
+	public void failed(Throwable cause);
+	
+}
@@ -20,20 +20,19 @@
 package com.mnxfst.testing.activities.http;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 
 import org.apache.http.HttpResponse;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.util.EntityUtils;
 import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.handler.codec.http.HttpRequest;
 
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
-import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextByteTemplate;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -57,8 +56,8 @@ public class SOAPRequestActivity extends HTTPRequestActivity {
 	private String payloadTemplate = null;
 	/** holds the payload encoding */
 	private String payloadEncoding = null;
-	/** holds the identified payload variables */
-	private Map<String, String> payloadVariables = new HashMap<String, String>();
+	/** holds the payload template parsed into pre-encoded literal segments and variable placeholders */
+	private TSPlanContextByteTemplate compiledPayloadTemplate = null;
 	
 	/**
 	 * @see com.mnxfst.testing.activities.http.HTTPRequestActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
@@ -83,7 +82,14 @@ public class SOAPRequestActivity extends HTTPRequestActivity {
 			this.payloadEncoding = "UTF-8";
 		}		
 		
-		this.payloadVariables = getContextVariablesFromString(payloadTemplate);
+		try {
+			this.compiledPayloadTemplate = new TSPlanContextByteTemplate(payloadTemplate, Charset.forName(payloadEncoding));
+		} catch(IllegalCharsetNameException e) {
+			throw new TSPlanActivityExecutionException("Invalid payload encoding '"+payloadEncoding+"' found for activity '"+getName()+"'");
+		} catch(UnsupportedCharsetException e) {
+			throw new TSPlanActivityExecutionException("Unsupported payload encoding '"+payloadEncoding+"' found for activity '"+getName()+"'");
+		}
+		resolveContextVariables();
 		
 		header.put(HTTP_REQUEST_HEADER_SOAP_ACTION, this.soapAction);
 
@@ -92,47 +98,70 @@ public class SOAPRequestActivity extends HTTPRequestActivity {
 		
 	}
 
+	/**
+	 * @see com.mnxfst.testing.activities.http.HTTPRequestActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		super.resolveContextVariables();
+		bindContextTemplate(compiledPayloadTemplate);
+	}
+
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#execute(java.util.Map)
 	 */
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
 		
-		// replace payload variables with values fetched from context
-		String payload = new String(this.payloadTemplate);
+		if(nettyClient != null)
+			return executeNetty(ctx);
 		
-		for(String logPattern : payloadVariables.keySet()) {
-			String replacementPattern = payloadVariables.get(logPattern);
-			Object ctxValue = null;
-			try {
-				ctxValue = ctx.evaluate(logPattern);
-			} catch(TSVariableEvaluationFailedException e) {
-				throw new TSPlanActivityExecutionException("Failed to evaluate " + logPattern);
-			}
-			
-			if(ctxValue != null)
-				payload = payload.replaceAll(replacementPattern, ctxValue.toString());			
-			
-		}
-		
-		ctx.addContextValue(contextExportVariableRequestInput, payload, ExecutionContextValueType.RUN);
+		// the payload is rendered into the buffer of the current thread which is sent without being copied
+		ChannelBuffer payload = renderPayload(ctx, getPooledRequestBuffer());
+		ChannelBufferEntity entity = new ChannelBufferEntity(payload, "text/xml");
 		
-		// convert payload into request entity and assign it
-		StringEntity  entity = null;
+		HTTPRequestTimings timings = startBlockingRequestTimings();
 		try {
-			entity = new StringEntity(payload, payloadEncoding);
-			entity.setContentType("text/xml");			
-		} catch(UnsupportedEncodingException e) {
-			throw new TSPlanActivityExecutionException("Failed to assign configured payload to post request. Error: " + e.getMessage(), e);
-		}
-		try {
-			HttpResponse response = sendPOSTRequest(entity, header);
-			String content = EntityUtils.toString(response.getEntity());
-			ctx.addContextValue(contextExportVariableResponseContent, content, ExecutionContextValueType.RUN);
+			HttpResponse response = sendPOSTRequest(ctx, entity);
+			timings.setStatusCode(response.getStatusLine().getStatusCode());
+			exportResponseEntity(ctx, response.getEntity());
 		} catch (IOException e) {
 			logger.error("Error found while accessing remote server: " +e.getMessage(), e);
+		} finally {
+			finishBlockingRequestTimings(ctx, timings);
+			releasePooledRequestBuffer();
 		}
 		
 		return ctx;
 	}
+	
+	/**
+	 * Posts the rendered payload
+	 * @see com.mnxfst.testing.activities.http.AbstractHTTPRequestActivity#createNettyRequest(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
+	 */
+	protected HttpRequest createNettyRequest(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		// the request owns its buffer until it has been written
+		return newNettyRequest(ctx, renderPayload(ctx, null), "text/xml");
+	}
+	
+	/**
+	 * Replaces the payload variables with values fetched from the context and exports the result if requested. The payload
+	 * is written to the given buffer, a new one is allocated if none is provided. A payload consisting of a single binary value, eg. 
+	 * drawn from a corpus, is returned as view without being copied
+	 * @param ctx
+	 * @param buffer
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected ChannelBuffer renderPayload(TSPlanExecutionContext ctx, ChannelBuffer buffer) throws TSPlanActivityExecutionException {
+		try {
+			buffer = compiledPayloadTemplate.renderBuffer(ctx, buffer);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate payload template. Error: " + e.getMessage());
+		}
+		
+		// decoded only if somebody reads it
+		if(contextExportRequestInput != null)
+			ctx.addContextValue(contextExportRequestInput, buffer.toString(compiledPayloadTemplate.getCharset()));
+		return buffer;
+	}
 
 }
@@ -19,13 +19,11 @@
 
 package com.mnxfst.testing.activities.jms;
 
-import java.io.Serializable;
-import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.HashMap;
 import java.util.Hashtable;
-import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
@@ -42,9 +40,14 @@ import javax.naming.NamingException;
 import org.apache.log4j.Logger;
 
 import com.mnxfst.testing.activities.AbstractTSPlanActivity;
+import com.mnxfst.testing.activities.TSPlanActivityCompletionHandler;
+import com.mnxfst.testing.activities.TSPlanAsyncActivity;
+import com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime;
+import com.mnxfst.testing.activities.TSPlanSyncActivityAdapter;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.TSPlanContextTemplate;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -52,7 +55,7 @@ import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
  * @author ckreutzfeldt
  *
  */
-public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
+public class JMSDestinationRequestActivity extends AbstractTSPlanActivity implements TSPlanAsyncActivity {
 
 	private static final Logger logger = Logger.getLogger(JMSDestinationRequestActivity.class);
 	
@@ -87,8 +90,10 @@ public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
 	private MessageProducer jmsMessageProducer = null;
 	/** payload template */
 	private String jmsMessageTemplate = null;
-	/** holds the identified payload variables */
-	private Map<String, String> jmsPayloadVariables = new HashMap<String, String>();
+	/** holds the payload template parsed into literal segments and variable placeholders */
+	private TSPlanContextTemplate compiledMessageTemplate = null;
+	/** sends the messages of asynchronous executions - a jms session must not be used by more than one thread at a time */
+	private ExecutorService jmsSendExecutor = null;
 	
 	
 	/**
@@ -107,7 +112,8 @@ public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
 		if(jmsMessageTemplate == null || jmsMessageTemplate.isEmpty())
 			throw new TSPlanActivityExecutionException("Required payload template not provided for activity '"+getName()+"'");		
 		
-		this.jmsPayloadVariables = getContextVariablesFromString(jmsMessageTemplate);
+		this.compiledMessageTemplate = new TSPlanContextTemplate(jmsMessageTemplate);
+		resolveContextVariables();
 		
 		String connectionFactoryClass = (String)cfgOpt.getOption(CFG_OPT_JNDI_CONNECTION_FACTORY_CLASS);
 		if(connectionFactoryClass == null || connectionFactoryClass.isEmpty())
@@ -174,6 +180,8 @@ public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
 				throw new TSPlanActivityExecutionException("Missing required option 'deliveryMode' in activity configuration");
 			}
 				
+			
+			this.jmsSendExecutor = Executors.newSingleThreadExecutor();
 		} catch (NamingException e) {
 			logger.error("Error while initializing the naming context. Error: " + e.getMessage(), e);
 			throw new TSPlanActivityExecutionException("Failed to set up initial JNDI context. Error: " + e.getMessage(), e);
@@ -184,6 +192,13 @@ public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
 	}
 	
 
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		bindContextTemplate(compiledMessageTemplate);
+	}
+
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#execute(com.mnxfst.testing.plan.ctx.ITSPlanExecutionContext)
 	 */
@@ -192,23 +207,9 @@ public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
 		// replace payload variables with values fetched from context
 		String payload = null;
 		try {
-			payload = new String(this.jmsMessageTemplate.getBytes(), "UTF-8");
-		} catch(UnsupportedEncodingException e) {
-			logger.error("Failed to convert jms message template into UTF-8 string. Error: " + e.getMessage());
-			throw new TSPlanActivityExecutionException("Failed to convert jms message template into UTF-8 string. Error: " + e.getMessage());
-		}
-		for(String logPattern : jmsPayloadVariables.keySet()) {
-			
-			String replacementPattern = jmsPayloadVariables.get(logPattern);
-			Object ctxValue = null;
-			try {
-				ctxValue = ctx.evaluate(logPattern);
-			} catch(TSVariableEvaluationFailedException e) {
-				throw new TSPlanActivityExecutionException("Failed to evaluate " + logPattern);
-			}
-			
-			if(ctxValue != null)
-				payload = payload.replaceAll(replacementPattern, ctxValue.toString());			
+			payload = compiledMessageTemplate.render(ctx);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate jms message template. Error: " + e.getMessage());
 		}
 		
 		try {
@@ -222,10 +223,20 @@ public class JMSDestinationRequestActivity extends AbstractTSPlanActivity {
 		return ctx;
 	}
 
+	/**
+	 * Messages are sent by a single thread owned by this activity as jms sessions are single threaded. The calling thread is released immediately
+	 * @see com.mnxfst.testing.activities.TSPlanAsyncActivity#executeAsync(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext, com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime, com.mnxfst.testing.activities.TSPlanActivityCompletionHandler)
+	 */
+	public void executeAsync(TSPlanExecutionContext ctx, TSPlanAsyncActivityRuntime runtime, TSPlanActivityCompletionHandler handler) {
+		TSPlanSyncActivityAdapter.executeOn(jmsSendExecutor, this, ctx, handler);
+	}
+
 	/**
 	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#shutdown()
 	 */
 	public void shutdown() {
+		if(this.jmsSendExecutor != null)
+			this.jmsSendExecutor.shutdown();
 		try {
 			this.jmsMessageProducer.close();
 			this.jmsSession.close();
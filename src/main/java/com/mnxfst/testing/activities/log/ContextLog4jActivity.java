@@ -20,8 +20,6 @@
 package com.mnxfst.testing.activities.log;
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.apache.log4j.Appender;
 import org.apache.log4j.ConsoleAppender;
@@ -33,6 +31,8 @@ import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextTemplate;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -60,12 +60,15 @@ public class ContextLog4jActivity extends AbstractTSPlanVarExportActivity {
 	/** holds the configured log line pattern containing text and variables being formatted as dollar prefix strings surrounded by curly brackets: ${testVariable} */
 	private String logMessage = null;
 
-	/** contains the variable strings formatted for being used as patterns in String.replaceAll. The contents are being extracted during the init phase and stored as contextVariable/replacePattern */
-	private Map<String, String> logPatternVariables = null;
+	/** holds the log message parsed into literal segments and variable placeholders which are formatted via {@link #formatValue(String, Serializable)} */
+	private TSPlanContextTemplate logMessageTemplate = null;
 	
 	/** holds the name of the context variable to be used for exporting the log message */
 	private String contextExportVariableName = null;
 	
+	/** handle of the export variable - null if not configured */
+	private TSPlanContextVariable contextExportVariable = null;
+	
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
 	 */
@@ -135,7 +138,6 @@ public class ContextLog4jActivity extends AbstractTSPlanVarExportActivity {
 				}
 			}*/
 			
-			logPatternVariables = getContextVariablesFromString(logMessage);
 			
 			if(logger.isDebugEnabled())
 				logger.debug("ContextLog4jActivity initialized: [activity="+activityName+", appender="+appenderType+", logLevel="+logLevel+"]");
@@ -149,9 +151,25 @@ public class ContextLog4jActivity extends AbstractTSPlanVarExportActivity {
 			this.contextExportVariableName = getContextExportVariables().get(CTX_EXPORT_MESSAGE_VARIABLE);
 		}
 	
-		if(logPatternVariables == null)
-			logPatternVariables = new HashMap<String, String>();
+		this.logMessageTemplate = new TSPlanContextTemplate(logMessage) {
+			protected void appendValue(StringBuilder result, String placeholder, Object value) throws TSVariableEvaluationFailedException {
+				try {
+					result.append(formatValue(placeholder, (Serializable)value));
+				} catch(TSPlanActivityExecutionException e) {
+					throw new TSVariableEvaluationFailedException("Failed to format value of " + placeholder + ". Error: " + e.getMessage(), e);
+				}
+			}
+		};
 		
+		resolveContextVariables();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		this.contextExportVariable = getContextVariable(contextExportVariableName, ExecutionContextValueType.RUN);
+		bindContextTemplate(logMessageTemplate);
 	}
 
 	/**
@@ -159,22 +177,12 @@ public class ContextLog4jActivity extends AbstractTSPlanVarExportActivity {
 	 */
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
 
-		String resultMessage = new String(logMessage);
-		
 		if(ctx != null) {
-			for(String logPattern : logPatternVariables.keySet()) {
-				String replacementPattern = logPatternVariables.get(logPattern);
-				Object ctxValue = null;
-				try {
-					ctxValue = ctx.evaluate(logPattern);
-				} catch(TSVariableEvaluationFailedException e) {
-					e.printStackTrace();
-					throw new TSPlanActivityExecutionException("Failed to evaluate " + logPattern);
-				}
-				
-				if(ctxValue != null) {
-					resultMessage = resultMessage.replaceAll(replacementPattern, format(logPattern, (Serializable)ctxValue));
-				}
+			String resultMessage = null;
+			try {
+				resultMessage = logMessageTemplate.render(ctx);
+			} catch(TSVariableEvaluationFailedException e) {
+				throw new TSPlanActivityExecutionException("Failed to evaluate log message of activity '"+getName()+"'. Error: " + e.getMessage());
 			}
 		
 			switch(logLevel) {
@@ -196,8 +204,8 @@ public class ContextLog4jActivity extends AbstractTSPlanVarExportActivity {
 				}
 			}
 						
-			if(contextExportVariableName != null && !contextExportVariableName.isEmpty())
-				ctx.addContextValue(contextExportVariableName, resultMessage, ExecutionContextValueType.RUN);
+			if(contextExportVariable != null)
+				ctx.addContextValue(contextExportVariable, resultMessage);
 
 		} else {
 			throw new TSPlanActivityExecutionException("No context provided to activity '"+getName()+"'");
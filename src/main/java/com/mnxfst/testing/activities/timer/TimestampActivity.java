@@ -23,6 +23,7 @@ import com.mnxfst.testing.activities.AbstractTSPlanActivity;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
@@ -35,6 +36,8 @@ public class TimestampActivity extends AbstractTSPlanActivity {
 	private static final String CTX_EXPORT_TIMESTAMP_VARIABLE= "timestamp";
 	
 	private String[] contextExportVariables = null;
+	/** handles of the export variables */
+	private TSPlanContextVariable[] contextExportVariableHandles = new TSPlanContextVariable[0];
 	private boolean export = false;	
 	
 	/**
@@ -60,6 +63,18 @@ public class TimestampActivity extends AbstractTSPlanActivity {
 			contextExportVariables = new String[0];
 
 		export = (contextExportVariables.length > 0);
+		resolveContextVariables();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		if(contextExportVariables != null) {
+			contextExportVariableHandles = new TSPlanContextVariable[contextExportVariables.length];
+			for(int i = 0; i < contextExportVariables.length; i++)
+				contextExportVariableHandles[i] = getContextVariable(contextExportVariables[i], ExecutionContextValueType.RUN);
+		}
 	}
 
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
@@ -68,9 +83,11 @@ public class TimestampActivity extends AbstractTSPlanActivity {
 			throw new TSPlanActivityExecutionException("Missing required activity context!");
 		
 		if(export) {
-			Long timestamp = Long.valueOf(System.currentTimeMillis());
-			for(int i = 0; i < contextExportVariables.length; i++)
-				ctx.addContextValue(contextExportVariables[i], timestamp, ExecutionContextValueType.RUN);
+			long timestamp = System.currentTimeMillis();
+			for(int i = 0; i < contextExportVariableHandles.length; i++) {
+				if(contextExportVariableHandles[i] != null)
+					ctx.addLongContextValue(contextExportVariableHandles[i], timestamp);
+			}
 		}
 
 		return ctx;
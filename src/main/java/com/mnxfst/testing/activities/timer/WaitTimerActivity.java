@@ -19,23 +19,31 @@
 
 package com.mnxfst.testing.activities.timer;
 
+import java.util.concurrent.TimeUnit;
+
 import org.apache.log4j.Logger;
 
 import com.mnxfst.testing.activities.AbstractTSPlanActivity;
+import com.mnxfst.testing.activities.TSPlanActivityCompletionHandler;
+import com.mnxfst.testing.activities.TSPlanAsyncActivity;
+import com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.TSPlan;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionReplacementPattern;
 
 /**
  * Implements a simple timer that halts the {@link TSPlan} execution for a configured time (in millis). The wait time will be written
  * to the provided context using the configured variable. If the provided wait time is less than 0 it will be set to be 0. 
+ * When executed asynchronously the timer is scheduled on the event loop, thus no thread is held while waiting 
  * @author mnxfst
  *
  */
-public class WaitTimerActivity extends AbstractTSPlanActivity {
+public class WaitTimerActivity extends AbstractTSPlanActivity implements TSPlanAsyncActivity {
 
 	private static final Logger logger = Logger.getLogger(WaitTimerActivity.class);
 	
@@ -43,8 +51,12 @@ public class WaitTimerActivity extends AbstractTSPlanActivity {
 	
 	private boolean fetchWaitTimeFromContext = false;
 	private String waitTimeCtxPattern = null;
+	/** compiled wait time pattern - null if the wait time is not fetched from the context */
+	private TSPlanExecutionReplacementPattern waitTimeReplacementPattern = null;
 	private long waitTime = 0;
 	private String contextExportVariableName = null;
+	/** handle of the export variable - null if not configured */
+	private TSPlanContextVariable contextExportVariable = null;
 
 	/**
 	 * @see com.mnxfst.testing.activities.TSPlanActivity#initialize(com.mnxfst.testing.plan.config.TSPlanConfigOption)
@@ -82,6 +94,15 @@ public class WaitTimerActivity extends AbstractTSPlanActivity {
 			this.contextExportVariableName = getContextExportVariables().get(CTX_EXPORT_WAITTIME_VARIABLE);
 		}
 		
+		resolveContextVariables();
+	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.AbstractTSPlanActivity#resolveContextVariables()
+	 */
+	protected void resolveContextVariables() {
+		this.contextExportVariable = getContextVariable(contextExportVariableName, ExecutionContextValueType.RUN);
+		this.waitTimeReplacementPattern = getContextReplacementPattern(waitTimeCtxPattern);
 	}
 
 	/**
@@ -89,17 +110,7 @@ public class WaitTimerActivity extends AbstractTSPlanActivity {
 	 */
 	public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
 		
-		try {			
-			if(fetchWaitTimeFromContext)
-				this.waitTime = (Long)ctx.evaluate(this.waitTimeCtxPattern);
-		} catch(TSVariableEvaluationFailedException e) {
-			throw new TSPlanActivityExecutionException("Failed to evaluate pattern '"+this.waitTimeCtxPattern+"' in order to set wait time");
-		} catch(ClassCastException e) {
-			throw new TSPlanActivityExecutionException("Expected to find a " + Long.class.getName() + " value while evaluating '"+this.waitTimeCtxPattern+"'. Error: " + e.getMessage());
-		}
-		
-		if(waitTime < 0)
-			waitTime = 0;
+		this.waitTime = evaluateWaitTime(ctx);
 		
 		try {
 			Thread.sleep(waitTime);
@@ -107,10 +118,65 @@ public class WaitTimerActivity extends AbstractTSPlanActivity {
 			logger.error(WaitTimerActivity.class.getName() + " interrupted. Exception: "  + e.getMessage(), e);
 		}
 		
-		ctx.addContextValue(contextExportVariableName, Long.valueOf(waitTime), ExecutionContextValueType.RUN);
+		if(contextExportVariable != null)
+			ctx.addLongContextValue(contextExportVariable, waitTime);
 		
 		return ctx;
 	}
+	
+	/**
+	 * @see com.mnxfst.testing.activities.TSPlanAsyncActivity#executeAsync(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext, com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime, com.mnxfst.testing.activities.TSPlanActivityCompletionHandler)
+	 */
+	public void executeAsync(final TSPlanExecutionContext ctx, TSPlanAsyncActivityRuntime runtime, final TSPlanActivityCompletionHandler handler) {
+		
+		final long currentWaitTime;
+		try {
+			currentWaitTime = evaluateWaitTime(ctx);
+		} catch(TSPlanActivityExecutionException e) {
+			handler.failed(ctx, e);
+			return;
+		}
+		
+		runtime.getEventLoop().schedule(new Runnable() {
+			public void run() {
+				if(contextExportVariable != null)
+					ctx.addLongContextValue(contextExportVariable, currentWaitTime);
+				handler.completed(ctx);
+			}
+		}, currentWaitTime, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Returns the wait time to apply for the given context: either the configured one or the one fetched from the context. Plain
+	 * variable references are read as primitive value, patterns applying getters must evaluate to a {@link Number}. Values less than 0 are reset to 0
+	 * @param ctx
+	 * @return
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected long evaluateWaitTime(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+		
+		long currentWaitTime = this.waitTime;
+		try {			
+			if(fetchWaitTimeFromContext) {
+				if(waitTimeReplacementPattern.getGetterMethodNames().length == 0) {
+					currentWaitTime = ctx.getLongContextValue(waitTimeReplacementPattern.getVariable());
+				} else {
+					Object value = ctx.evaluatePattern(waitTimeReplacementPattern);
+					if(value == null)
+						throw new TSPlanActivityExecutionException("No value found while evaluating '"+this.waitTimeCtxPattern+"' in order to set wait time");
+					currentWaitTime = ((Number)value).longValue();
+				}
+			}
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanActivityExecutionException("Failed to evaluate pattern '"+this.waitTimeCtxPattern+"' in order to set wait time. Error: " + e.getMessage());
+		} catch(ClassCastException e) {
+			throw new TSPlanActivityExecutionException("Expected to find a numerical value while evaluating '"+this.waitTimeCtxPattern+"'. Error: " + e.getMessage());
+		}
+		
+		if(currentWaitTime < 0)
+			currentWaitTime = 0;
+		return currentWaitTime;
+	}
 
 	/**
 	 * @return the fetchWaitTimeFromContext
@@ -49,7 +49,9 @@ import org.xml.sax.SAXException;
 import com.mnxfst.testing.AbstractTSCommandLineTool;
 import com.mnxfst.testing.exception.TSClientConfigurationException;
 import com.mnxfst.testing.exception.TSClientExecutionException;
+import com.mnxfst.testing.plan.TSPlanRegistry;
 import com.mnxfst.testing.plan.exec.TSPlanRecurrenceType;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
 
 /**
  * Provides a command-line client to control the test servers 
@@ -85,6 +87,15 @@ public class TSClient extends AbstractTSCommandLineTool {
 	public static final String CMD_OPT_SAT_TEST_THREAD_INCREMENT_SHORT = "ti";
 	public static final String CMD_OPT_SAT_TEST_WAIT_TIME = "waitTime";
 	public static final String CMD_OPT_SAT_TEST_WAIT_TIME_SHORT = "wt";
+	public static final String CMD_OPT_SAT_TEST_PERCENTILE = "percentile";
+	public static final String CMD_OPT_SAT_TEST_PERCENTILE_SHORT = "pct";
+	public static final String CMD_OPT_WARM_UP_ITERATIONS = "warmUpIterations";
+	public static final String CMD_OPT_WARM_UP_ITERATIONS_SHORT = "wui";
+	public static final String CMD_OPT_WARM_UP_DURATION = "warmUpDuration";
+	public static final String CMD_OPT_WARM_UP_DURATION_SHORT = "wud";
+	
+	/** percentile of the single run durations compared against the max runtime during saturation test */
+	public static final double DEFAULT_SAT_TEST_PERCENTILE = 50.0;
 
 	public static final String REQUEST_PARAMETER_EXECUTE = "execute";
 	public static final String REQUEST_PARAMETER_COLLECT = "collect";
@@ -93,6 +104,11 @@ public class TSClient extends AbstractTSCommandLineTool {
 	public static final String REQUEST_PARAMETER_RECURRENCES = "recurrences";
 	public static final String REQUEST_PARAMETER_RECURRENCE_TYPE = "recurrencetype";
 	public static final String REQUEST_PARAMETER_TESTPLAN = "testplan";
+	public static final String REQUEST_PARAMETER_WARM_UP_ITERATIONS = "warmUpIterations";
+	public static final String REQUEST_PARAMETER_WARM_UP_DURATION = "warmUpDuration";
+	public static final String REQUEST_PARAMETER_REGISTER_PLAN = "registerPlan";
+	public static final String REQUEST_PARAMETER_UNREGISTER_PLAN = "unregisterPlan";
+	public static final String REQUEST_PARAMETER_PLAN_IDENTIFIER = "planIdentifier";
 
 	public static void main(String[] args) throws ClientProtocolException, IOException, SAXException, ParserConfigurationException, ParseException {
 
@@ -317,142 +333,221 @@ public class TSClient extends AbstractTSCommandLineTool {
 		if(waitTime != null && !waitTime.isEmpty())
 			additionalProperties.put("waitTime", waitTime);
 		
-		if(cmd.hasOption(CMD_OPT_MODE_EXECUTE)) {
-			try {
-				return executeTestPlan(ptestServerHosts, (int)ptestServerPort, threads, recurrences, recurrenceType, testplanContent, additionalProperties, urlEncoding);
-			} catch (TSClientConfigurationException e) {
-				System.out.println("Error while configuring the client: " + e.getMessage());
-			} catch (TSClientExecutionException e) {
-				System.out.println("Error while executing the client: " + e.getMessage());
-			}
-		} else if(cmd.hasOption(CMD_OPT_MODE_SATURATION_TEST)) {
+		// optional warm-up phase executed by each ptest-server before measuring - forwarded as request parameters
+		long warmUpIterations = 0;
+		long warmUpDuration = 0;
+		try {
+			if(cmd.hasOption(CMD_OPT_WARM_UP_ITERATIONS) || cmd.hasOption(CMD_OPT_WARM_UP_ITERATIONS_SHORT))
+				warmUpIterations = extractLongValue(cmd, CMD_OPT_WARM_UP_ITERATIONS, CMD_OPT_WARM_UP_ITERATIONS_SHORT);
+			if(cmd.hasOption(CMD_OPT_WARM_UP_DURATION) || cmd.hasOption(CMD_OPT_WARM_UP_DURATION_SHORT))
+				warmUpDuration = extractLongValue(cmd, CMD_OPT_WARM_UP_DURATION, CMD_OPT_WARM_UP_DURATION_SHORT);
+		} catch(TSClientConfigurationException e) {
+			printHelp(options, "Please provide a valid warm-up configuration: " + e.getMessage());
+			return null;
+		}
+		if(warmUpIterations < 0 || warmUpDuration < 0) {
+			printHelp(options, "Please provide a valid warm-up configuration (values must not be negative)");
+			return null;
+		}
+		if(warmUpIterations > 0)
+			additionalProperties.put(REQUEST_PARAMETER_WARM_UP_ITERATIONS, String.valueOf(warmUpIterations));
+		if(warmUpDuration > 0)
+			additionalProperties.put(REQUEST_PARAMETER_WARM_UP_DURATION, String.valueOf(warmUpDuration));
+		
+		// the plan is uploaded once, all subsequent execution requests reference it by the returned identifier
+		Map<String, String> planIdentifiers = null;
+		try {
+			planIdentifiers = registerTestPlan(ptestServerHosts, (int)ptestServerPort, testplanContent);
+		} catch (TSClientExecutionException e) {
+			System.out.println("Error while registering the test plan: " + e.getMessage());
+			return null;
+		}
+		
+		// registered plans are removed on all hosts when the client is done - running executions keep them until they have been finished
+		try {
+			if(cmd.hasOption(CMD_OPT_MODE_EXECUTE)) {
+				try {
+					return executeTestPlan(ptestServerHosts, (int)ptestServerPort, threads, recurrences, recurrenceType, planIdentifiers, additionalProperties, urlEncoding);
+				} catch (TSClientConfigurationException e) {
+					System.out.println("Error while configuring the client: " + e.getMessage());
+				} catch (TSClientExecutionException e) {
+					System.out.println("Error while executing the client: " + e.getMessage());
+				}
+			} else if(cmd.hasOption(CMD_OPT_MODE_SATURATION_TEST)) {
 
-			long maxRuntime = -1;
-			try {
-				maxRuntime = extractLongValue(cmd, CMD_OPT_SAT_TEST_MAX_RUNTIME, CMD_OPT_SAT_TEST_MAX_RUNTIME_SHORT);
-			} catch(TSClientConfigurationException e) {
-				printHelp(options, "Please provide a max. runtime allowed for test plan execution");
-				return null;
-			}
-			if(maxRuntime < 0) {
-				printHelp(options, "Please provide a max. runtime allowed for test plan execution");
-				return null;
-			}
+				long maxRuntime = -1;
+				try {
+					maxRuntime = extractLongValue(cmd, CMD_OPT_SAT_TEST_MAX_RUNTIME, CMD_OPT_SAT_TEST_MAX_RUNTIME_SHORT);
+				} catch(TSClientConfigurationException e) {
+					printHelp(options, "Please provide a max. runtime allowed for test plan execution");
+					return null;
+				}
+				if(maxRuntime < 0) {
+					printHelp(options, "Please provide a max. runtime allowed for test plan execution");
+					return null;
+				}
 			
-			int threadIncrement = 1;
-			try {
-				threadIncrement = extractIntValue(cmd, CMD_OPT_SAT_TEST_THREAD_INCREMENT, CMD_OPT_SAT_TEST_THREAD_INCREMENT_SHORT);
-			} catch(TSClientConfigurationException e) {
-				System.out.println("No or invalid value provided for '"+CMD_OPT_SAT_TEST_THREAD_INCREMENT+"/"+CMD_OPT_SAT_TEST_THREAD_INCREMENT_SHORT+"'");
-				threadIncrement = 1;
-			}
+				int threadIncrement = 1;
+				try {
+					threadIncrement = extractIntValue(cmd, CMD_OPT_SAT_TEST_THREAD_INCREMENT, CMD_OPT_SAT_TEST_THREAD_INCREMENT_SHORT);
+				} catch(TSClientConfigurationException e) {
+					System.out.println("No or invalid value provided for '"+CMD_OPT_SAT_TEST_THREAD_INCREMENT+"/"+CMD_OPT_SAT_TEST_THREAD_INCREMENT_SHORT+"'");
+					threadIncrement = 1;
+				}
+			
+				double saturationPercentile = DEFAULT_SAT_TEST_PERCENTILE;
+				if(cmd.hasOption(CMD_OPT_SAT_TEST_PERCENTILE) || cmd.hasOption(CMD_OPT_SAT_TEST_PERCENTILE_SHORT)) {
+					try {
+						saturationPercentile = extractDoubleValue(cmd, CMD_OPT_SAT_TEST_PERCENTILE, CMD_OPT_SAT_TEST_PERCENTILE_SHORT);
+					} catch(TSClientConfigurationException e) {
+						printHelp(options, "Please provide a valid percentile (0.0 - 100.0) to compare against the max. runtime");
+						return null;
+					}
+					if(saturationPercentile < 0.0 || saturationPercentile > 100.0) {
+						printHelp(options, "Please provide a valid percentile (0.0 - 100.0) to compare against the max. runtime");
+						return null;
+					}
+				}
 			
 
-			StringBuffer hn = new StringBuffer();
-			for(int i = 0; i < ptestServerHosts.length; i++) {
-				hn.append(ptestServerHosts[i]);
-				if(i < ptestServerHosts.length - 1)
-					hn.append(", ");
-			}
+				StringBuffer hn = new StringBuffer();
+				for(int i = 0; i < ptestServerHosts.length; i++) {
+					hn.append(ptestServerHosts[i]);
+					if(i < ptestServerHosts.length - 1)
+						hn.append(", ");
+				}
 
 			
-			System.out.println("ptest-client");
-			System.out.println("test mode:               saturation test");
-			System.out.println("ptest-server instances:  " + hn.toString());
-			System.out.println("ptest-server port:       " + ptestServerPort);
-			System.out.println("max. threads:            " + threads);
-			System.out.println("thread increment:        " + threadIncrement);
-			System.out.println("allowed max. runtime:    " + maxRuntime);
-			System.out.println("recurrences per thread:  " + recurrences);			
-			System.out.println("recurrence type:         " + recurrenceType);
-			System.out.println("test plan:               " + testPlan);
-			System.out.println("url encoding:            " + urlEncoding);
+				System.out.println("ptest-client");
+				System.out.println("test mode:               saturation test");
+				System.out.println("ptest-server instances:  " + hn.toString());
+				System.out.println("ptest-server port:       " + ptestServerPort);
+				System.out.println("max. threads:            " + threads);
+				System.out.println("thread increment:        " + threadIncrement);
+				System.out.println("allowed max. runtime:    " + maxRuntime);
+				System.out.println("runtime percentile:      " + saturationPercentile);
+				System.out.println("recurrences per thread:  " + recurrences);			
+				System.out.println("recurrence type:         " + recurrenceType);
+				System.out.println("test plan:               " + testPlan);
+				System.out.println("url encoding:            " + urlEncoding);
 			
-			long maxThreads = 0;
-			boolean interrupt = false;
+				long maxThreads = 0;
+				boolean interrupt = false;
 			
-			try {
+				try {
 				
-				if(threadIncrement > threads) {
-					threadIncrement = threads;
-					System.out.println("\nthread increment refixed to " + threadIncrement + " since it was greater than num. of threads " + threads);
-				}
+					if(threadIncrement > threads) {
+						threadIncrement = threads;
+						System.out.println("\nthread increment refixed to " + threadIncrement + " since it was greater than num. of threads " + threads);
+					}
 				
-				System.out.println("\n\n");
-				System.out.println("Saturation test execution:\n");
+					System.out.println("\n\n");
+					System.out.println("Saturation test execution:\n");
 				
-				for(int i = threadIncrement; i <= threads; i = i + threadIncrement) {
+					for(int i = threadIncrement; i <= threads; i = i + threadIncrement) {
 					
-					System.out.println("Hosts: " + ptestServerHosts.length + ", Threads: " + i + ", Recurrences: " + recurrences + ", Recurrence Type: " + recurrenceType + ", Allowed Max. Runtime: " + maxRuntime);
-					System.out.println("Result identifiers (per host):");
+						System.out.println("Hosts: " + ptestServerHosts.length + ", Threads: " + i + ", Recurrences: " + recurrences + ", Recurrence Type: " + recurrenceType + ", Allowed Max. Runtime: " + maxRuntime);
+						System.out.println("Result identifiers (per host):");
 					
-					Map<String, String> resultIdentifiers = executeTestPlan(ptestServerHosts, (int)ptestServerPort, i, recurrences, recurrenceType, testplanContent, additionalProperties, urlEncoding);
-					for(String hostName : resultIdentifiers.keySet())
-						System.out.println("\t\t" + hostName + ": " + resultIdentifiers.get(hostName));
+						Map<String, String> resultIdentifiers = executeTestPlan(ptestServerHosts, (int)ptestServerPort, i, recurrences, recurrenceType, planIdentifiers, additionalProperties, urlEncoding);
+						for(String hostName : resultIdentifiers.keySet())
+							System.out.println("\t\t" + hostName + ": " + resultIdentifiers.get(hostName));
 					
-					// TODO problem with TIMES!!
-					long waitMillis = 0;
+						// TODO problem with TIMES!!
+						long waitMillis = 0;
 					
-					switch(recurrenceType) {
-						case TIMES: {
-							waitMillis = recurrences * 500;
+						switch(recurrenceType) {
+							case TIMES: {
+								waitMillis = recurrences * 500;
+							}
+							case MILLIS: {
+								waitMillis = recurrences;				
+								break;
+							}
+							case SECONDS: {
+								waitMillis = recurrences * 1000;
+								break;
+							}
+							case MINUTES: {
+								waitMillis = recurrences * 1000 * 60;
+								break;
+							}
+							case HOURS: {
+								waitMillis = recurrences * 1000 * 60 * 60;
+								break;
+							}
+							case DAYS: {
+								waitMillis = recurrences * 1000 * 60 * 60 * 24;
+								break;
+							}
 						}
-						case MILLIS: {
-							waitMillis = recurrences;				
-							break;
-						}
-						case SECONDS: {
-							waitMillis = recurrences * 1000;
-							break;
-						}
-						case MINUTES: {
-							waitMillis = recurrences * 1000 * 60;
-							break;
-						}
-						case HOURS: {
-							waitMillis = recurrences * 1000 * 60 * 60;
-							break;
-						}
-						case DAYS: {
-							waitMillis = recurrences * 1000 * 60 * 60 * 24;
-							break;
-						}
-					}
 					
-					waitMillis = waitMillis + 5000; // add 5sec to be sure :-)
+						waitMillis = waitMillis + warmUpDuration; // warm-up runs are not counted as recurrences
+						waitMillis = waitMillis + 5000; // add 5sec to be sure :-)
 					
-					System.out.println("Waiting for approx. "+  (waitMillis / 1000) + " seconds before fetching the results");
+						System.out.println("Waiting for approx. "+  (waitMillis / 1000) + " seconds before fetching the results");
 
-					try {
-						Thread.sleep(waitMillis);
-					} catch(InterruptedException e) {
-						System.out.println("Interrupted while waiting. " + e.getMessage());
-					}
+						try {
+							Thread.sleep(waitMillis);
+						} catch(InterruptedException e) {
+							System.out.println("Interrupted while waiting. " + e.getMessage());
+						}
 					
-					Set<TSClientPlanExecutionResult> results = collectTestplanResults(resultIdentifiers, (int)ptestServerPort);
-					System.out.println("Results:");
-					for(TSClientPlanExecutionResult r : results)
-						System.out.println("\t\tHost: " + r.getHostName() + ", min: " + r.getSingleMinDuration() + "ms, max: " + r.getSingleMaxDuration() + "ms, median: " + r.getAverageDurationMedian() + "ms (surpasses max runtime for median: "+(r.getAverageDurationMedian() >= maxRuntime)+")" );
+						Set<TSClientPlanExecutionResult> results = collectTestplanResults(resultIdentifiers, (int)ptestServerPort);
+						System.out.println("Results:");
+						for(TSClientPlanExecutionResult r : results)
+							System.out.println("\t\tHost: " + r.getHostName() + ", min: " + r.getSingleMinDuration() + "ms, max: " + r.getSingleMaxDuration() + "ms, median: " + r.getAverageDurationMedian() + "ms (surpasses max runtime for median: "+(r.getAverageDurationMedian() >= maxRuntime)+")" );
 					
-					for(TSClientPlanExecutionResult r : results) {
-						if(r.getAverageDurationMedian() >= maxRuntime) {
-							maxThreads = i;
-							interrupt = true;
-							break;
+						// the decision is based on the distribution of all single runs on all hosts - measured from the intended start of each run if 
+						// provided by all hosts. older ptest-server instances do not provide any distribution, thus fall back to the per-host median
+						TSLatencyHistogram globalHistogram = mergeSingleRunDurationHistograms(results, false);
+						TSLatencyHistogram correctedGlobalHistogram = mergeSingleRunDurationHistograms(results, true);
+						TSLatencyHistogram warmUpGlobalHistogram = mergeWarmUpDurationHistograms(results);
+						if(warmUpGlobalHistogram != null && warmUpGlobalHistogram.getTotalCount() > 0)
+							printGlobalDistribution("All hosts (warm-up, excluded)", warmUpGlobalHistogram, saturationPercentile, maxRuntime);
+						if(globalHistogram != null) {
+							printGlobalDistribution("All hosts (uncorrected)", globalHistogram, saturationPercentile, maxRuntime);
+							
+							// the counts must not be compared: iterations dropped by the arrival rate scheduler are recorded by the corrected histogram only
+							boolean correctedByAllHosts = true;
+							for(TSClientPlanExecutionResult r : results) {
+								if(r.getSingleRunDurationHistogram() != null && r.getCorrectedSingleRunDurationHistogram() == null)
+									correctedByAllHosts = false;
+							}
+							if(correctedByAllHosts && correctedGlobalHistogram != null && correctedGlobalHistogram.getTotalCount() > 0)
+								printGlobalDistribution("All hosts (corrected)", correctedGlobalHistogram, saturationPercentile, maxRuntime);
+							else
+								correctedGlobalHistogram = null;
+						
+							double globalRuntime = (correctedGlobalHistogram != null ? correctedGlobalHistogram : globalHistogram).getValueAtPercentile(saturationPercentile) / 1000000.0;
+							if(globalRuntime >= maxRuntime) {
+								maxThreads = i;
+								interrupt = true;
+							}
+						} else {
+							for(TSClientPlanExecutionResult r : results) {
+								if(r.getAverageDurationMedian() >= maxRuntime) {
+									maxThreads = i;
+									interrupt = true;
+									break;
+								}
+							}
 						}
-					}
 					
-					if(interrupt)
-						break;
-				}
+						if(interrupt)
+							break;
+					}
 				
-				System.out.println("Saturation test finished. Max. number of threads on "+  ptestServerHosts.length+ " hosts the destinations are capable to serve: " + maxThreads);
-			} catch (TSClientConfigurationException e) {
-				System.out.println("Error while configuring the client: " + e.getMessage());
-			} catch (TSClientExecutionException e) {
-				System.out.println("Error while executing the client: " + e.getMessage());
-			}
+					System.out.println("Saturation test finished. Max. number of threads on "+  ptestServerHosts.length+ " hosts the destinations are capable to serve: " + maxThreads);
+				} catch (TSClientConfigurationException e) {
+					System.out.println("Error while configuring the client: " + e.getMessage());
+				} catch (TSClientExecutionException e) {
+					System.out.println("Error while executing the client: " + e.getMessage());
+				}
 			
+			}
+		} finally {
+			unregisterTestPlan(ptestServerHosts, (int)ptestServerPort, planIdentifiers);
 		}
 		
 		return new HashMap<String, String>();
@@ -465,6 +560,85 @@ public class TSClient extends AbstractTSCommandLineTool {
 	
 	///////////////////////////////////////////////// EXECUTE HTTP CALL /////////////////////////////////////////////////
 	
+	/**
+	 * Uploads the test plan - plain configuration or zip bundle - to all given host names. The result contains a mapping from a host name 
+	 * to the plan identifier returned by that ptest-server instance
+	 * @param hostNames
+	 * @param port
+	 * @param testplan
+	 * @return
+	 * @throws TSClientExecutionException thrown in case the plan could not be registered with any of the hosts
+	 */
+	protected Map<String, String> registerTestPlan(String[] hostNames, int port, byte[] testplan) throws TSClientExecutionException {
+		
+		TSClientPlanRegisterCallable[] registerCallables = new TSClientPlanRegisterCallable[hostNames.length];
+		for(int i = 0; i < hostNames.length; i++) {
+			registerCallables[i] = new TSClientPlanRegisterCallable(hostNames[i], port, testplan);
+		}
+		
+		ExecutorService executorService = Executors.newFixedThreadPool(hostNames.length);
+		List<Future<NameValuePair>> registrationResults = new ArrayList<Future<NameValuePair>>();
+		try {
+			registrationResults = executorService.invokeAll(Arrays.asList(registerCallables));
+		} catch (InterruptedException e) {
+			throw new TSClientExecutionException("Test plan registration interrupted: " + e.getMessage());
+		} finally {
+			executorService.shutdown();
+		}
+		
+		Map<String, String> result = new HashMap<String, String>();
+		for(Future<NameValuePair> r : registrationResults) {
+			try {
+				NameValuePair nvp = r.get();
+				result.put(nvp.getName(), nvp.getValue());
+			} catch (InterruptedException e) {
+				throw new TSClientExecutionException("Interrupted while waiting for test plan registration. Error: " + e.getMessage());
+			} catch (ExecutionException e) {
+				throw new TSClientExecutionException("Failed to register test plan. Error: " + e.getMessage());
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Removes the registered test plan from all given host names. Failures are reported but do not interrupt the removal from the remaining hosts
+	 * @param hostNames
+	 * @param port
+	 * @param planIdentifiers mapping from a host name to the identifier of the plan registered with that ptest-server instance
+	 */
+	protected void unregisterTestPlan(String[] hostNames, int port, Map<String, String> planIdentifiers) {
+		
+		List<TSClientPlanUnregisterCallable> unregisterCallables = new ArrayList<TSClientPlanUnregisterCallable>();
+		for(int i = 0; i < hostNames.length; i++) {
+			String planIdentifier = planIdentifiers.get(hostNames[i]);
+			if(planIdentifier != null)
+				unregisterCallables.add(new TSClientPlanUnregisterCallable(hostNames[i], port, planIdentifier));
+		}
+		if(unregisterCallables.isEmpty())
+			return;
+		
+		ExecutorService executorService = Executors.newFixedThreadPool(unregisterCallables.size());
+		List<Future<NameValuePair>> unregistrationResults = new ArrayList<Future<NameValuePair>>();
+		try {
+			unregistrationResults = executorService.invokeAll(unregisterCallables);
+		} catch (InterruptedException e) {
+			System.out.println("Test plan removal interrupted: " + e.getMessage());
+		} finally {
+			executorService.shutdown();
+		}
+		
+		for(Future<NameValuePair> r : unregistrationResults) {
+			try {
+				r.get();
+			} catch (InterruptedException e) {
+				System.out.println("Interrupted while waiting for test plan removal. Error: " + e.getMessage());
+			} catch (ExecutionException e) {
+				System.out.println("Failed to remove test plan. Error: " + e.getMessage());
+			}
+		}
+	}
+	
 	/**
 	 * Executes the referenced test plan for all given host names. The result contains a mapping from a host name to the returned result identifier
 	 * of that ptest-server instance 
@@ -473,14 +647,14 @@ public class TSClient extends AbstractTSCommandLineTool {
 	 * @param threads
 	 * @param recurrences
 	 * @param recurrenceType
-	 * @param testplan
+	 * @param planIdentifiers mapping from a host name to the identifier of the plan registered with that ptest-server instance
 	 * @param additionalParameters
 	 * @param urlEncoding
 	 * @return
 	 * @throws TSClientConfigurationException
 	 * @throws TSClientExecutionException
 	 */
-	protected Map<String, String> executeTestPlan(String[] hostNames, int port, long threads, long recurrences, TSPlanRecurrenceType recurrenceType, byte[] testplan, Properties additionalParameters, String urlEncoding) throws TSClientConfigurationException, TSClientExecutionException  {
+	protected Map<String, String> executeTestPlan(String[] hostNames, int port, long threads, long recurrences, TSPlanRecurrenceType recurrenceType, Map<String, String> planIdentifiers, Properties additionalParameters, String urlEncoding) throws TSClientConfigurationException, TSClientExecutionException  {
 		
 		// the ptest-server understands http get, thus we use it TODO refactor to post and send testplan as well and do not reference it anymore!
 		StringBuffer buffer = new StringBuffer("/?");
@@ -519,7 +693,10 @@ public class TSClient extends AbstractTSCommandLineTool {
 		
 		TSClientPlanExecCallable[] testplanCallables = new TSClientPlanExecCallable[hostNames.length];
 		for(int i = 0; i < hostNames.length; i++) {
-			testplanCallables[i] = new TSClientPlanExecCallable(hostNames[i], port, buffer.toString(), testplan);
+			String planIdentifier = planIdentifiers.get(hostNames[i]);
+			if(planIdentifier == null)
+				throw new TSClientExecutionException("No test plan registered with " + hostNames[i]);
+			testplanCallables[i] = new TSClientPlanExecCallable(hostNames[i], port, buffer.toString() + "&" + REQUEST_PARAMETER_PLAN_IDENTIFIER + "=" + planIdentifier);
 		}
 		
 		ExecutorService executorService = Executors.newFixedThreadPool(hostNames.length);
@@ -587,6 +764,63 @@ public class TSClient extends AbstractTSCommandLineTool {
 		return result;		
 	}
 	
+	/**
+	 * Merges the single run duration histograms received from all hosts. If no host provided a histogram, the method returns null
+	 * @param results
+	 * @param corrected merge the histograms measured from the intended start of each run rather than from the actual start
+	 * @return
+	 */
+	protected TSLatencyHistogram mergeSingleRunDurationHistograms(Set<TSClientPlanExecutionResult> results, boolean corrected) {
+		
+		TSLatencyHistogram merged = null;
+		if(results != null) {
+			for(TSClientPlanExecutionResult r : results) {
+				TSLatencyHistogram histogram = (r != null ? (corrected ? r.getCorrectedSingleRunDurationHistogram() : r.getSingleRunDurationHistogram()) : null);
+				if(histogram != null) {
+					if(merged == null)
+						merged = histogram.copy();
+					else
+						merged.add(histogram);
+				}
+			}
+		}
+		return merged;
+	}
+	
+	/**
+	 * Merges the warm-up run duration histograms received from all hosts. If no host provided a histogram, the method returns null
+	 * @param results
+	 * @return
+	 */
+	protected TSLatencyHistogram mergeWarmUpDurationHistograms(Set<TSClientPlanExecutionResult> results) {
+		
+		TSLatencyHistogram merged = null;
+		if(results != null) {
+			for(TSClientPlanExecutionResult r : results) {
+				TSLatencyHistogram histogram = (r != null ? r.getWarmUpDurationHistogram() : null);
+				if(histogram != null) {
+					if(merged == null)
+						merged = histogram.copy();
+					else
+						merged.add(histogram);
+				}
+			}
+		}
+		return merged;
+	}
+	
+	/**
+	 * Prints out the percentiles of the given distribution of single run durations
+	 * @param label
+	 * @param histogram
+	 * @param saturationPercentile
+	 * @param maxRuntime
+	 */
+	protected void printGlobalDistribution(String label, TSLatencyHistogram histogram, double saturationPercentile, long maxRuntime) {
+		double runtime = histogram.getValueAtPercentile(saturationPercentile) / 1000000.0;
+		System.out.println("\t\t" + label + ": runs: " + histogram.getTotalCount() + ", p" + saturationPercentile + ": " + runtime + "ms, p99: " + (histogram.getValueAtPercentile(99.0) / 1000000.0) + "ms, p99.9: " + (histogram.getValueAtPercentile(99.9) / 1000000.0) + "ms, max: " + (histogram.getMaxValue() / 1000000.0) + "ms (surpasses max runtime for p" + saturationPercentile + ": " + (runtime >= maxRuntime) + ")");
+	}
+	
 	/**
 	 * Reads in a test plan
 	 * @param fileName
@@ -628,15 +862,18 @@ public class TSClient extends AbstractTSCommandLineTool {
 		options.addOption(CMD_OPT_THREADS_SHORT, CMD_OPT_THREADS, true, "Number of threads used for executing the test case. In case of the saturation load this will be used as max, starting with one thread");
 		options.addOption(CMD_OPT_RECURRENCES_SHORT, CMD_OPT_RECURRENCES, true, "Number of tesplan recurrences");
 		options.addOption(CMD_OPT_RECURRENCE_TYPE_SHORT, CMD_OPT_RECURRENCE_TYPE, true, "Recurrence type (TIMES, MILLIS, SECONDS, MINUTES, HOURS, DAYS)");
-		options.addOption(CMD_OPT_TESTPLAN_SHORT, CMD_OPT_TESTPLAN, true, "References the file containing the test plan definition");
+		options.addOption(CMD_OPT_TESTPLAN_SHORT, CMD_OPT_TESTPLAN, true, "References the file containing the test plan definition or a zip bundle holding it as '" + TSPlanRegistry.BUNDLE_PLAN_ENTRY + "' along with its data files");
 		options.addOption(CMD_OPT_PTEST_SERVER_HOSTS_SHORT, CMD_OPT_PTEST_SERVER_HOSTS, true, "Comma-separated list of hosts running an available ptest-server instance");
 		options.addOption(CMD_OPT_PTEST_SERVER_PORT_SHORT, CMD_OPT_PTEST_SERVER_PORT, true, "Names the port to use for communication with the ptest-server instances");
 		options.addOption(CMD_OPT_PTEST_SERVER_URL_ENCODING_SHORT, CMD_OPT_PTEST_SERVER_URL_ENCODING, true, "Encoding to be used for url parameters");
 		options.addOption(CMD_OPT_PTEST_SERVER_ADDITIONAL_PROPERTIES_FILE_SHORT, CMD_OPT_PTEST_SERVER_ADDITIONAL_PROPERTIES_FILE, true, "Path to file which contains additional key/value pairs to be forwared to the ptest-server");
 		options.addOption(CMD_OPT_RESULT_IDENTIFIER_SHORT, CMD_OPT_RESULT_IDENTIFIER, true, "Key to identify results on the ptest-server (to be used with 'collect' option only)");
-		options.addOption(CMD_OPT_SAT_TEST_MAX_RUNTIME_SHORT, CMD_OPT_SAT_TEST_MAX_RUNTIME, true, "Max. average runtime accepted for saturation test before quitting test");
+		options.addOption(CMD_OPT_SAT_TEST_MAX_RUNTIME_SHORT, CMD_OPT_SAT_TEST_MAX_RUNTIME, true, "Max. runtime (ms) accepted for the configured percentile of single run durations before quitting saturation test");
 		options.addOption(CMD_OPT_SAT_TEST_THREAD_INCREMENT_SHORT, CMD_OPT_SAT_TEST_THREAD_INCREMENT, true, "Number to increase the running threads by during saturation test (default: 1). The value will be used as initial value.");
+		options.addOption(CMD_OPT_SAT_TEST_PERCENTILE_SHORT, CMD_OPT_SAT_TEST_PERCENTILE, true, "Percentile of single run durations across all hosts compared against the max. runtime during saturation test (default: 50.0)");
 		options.addOption(CMD_OPT_SAT_TEST_WAIT_TIME_SHORT, CMD_OPT_SAT_TEST_WAIT_TIME, true, "Defines the value for the waitTime parameter being provided as global variable to the test plan (default: 0)");
+		options.addOption(CMD_OPT_WARM_UP_ITERATIONS_SHORT, CMD_OPT_WARM_UP_ITERATIONS, true, "Number of test plan runs each executor performs before measuring - excluded from results (default: 0)");
+		options.addOption(CMD_OPT_WARM_UP_DURATION_SHORT, CMD_OPT_WARM_UP_DURATION, true, "Duration (ms) of the warm-up phase each ptest-server performs before measuring - excluded from results (default: 0)");
 		options.addOption("ri", true, "Response identifier used by the ptest-server to store results");
 		return options;
 	}
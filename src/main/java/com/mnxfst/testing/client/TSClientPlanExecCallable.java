@@ -34,6 +34,7 @@ import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -64,11 +65,14 @@ public class TSClientPlanExecCallable implements Callable<NameValuePair> {
 	private static final String TEST_EXEC_RESPONSE_ROOT = "testExecutionResponse";
 	private static final String TEST_EXEC_RESPONSE_CODE = "/testExecutionResponse/responseCode";
 	private static final String TEST_EXEC_RESULT_IDENTIFIER = "/testExecutionResponse/resultIdentifier";
+	private static final String TEST_EXEC_PLAN_IDENTIFIER = "/testExecutionResponse/planIdentifier";
 	private static final String TEST_EXEC_ERROR_CODES = "/testExecutionResponse/errorCodes/*";
 	private static final String TEST_EXEC_SINGLE_ERROR_CODE = "/errorCode";
 
 	private static final int RESPONSE_CODE_EXECUTION_STARTED = 1;
 	private static final int RESPONSE_CODE_ERROR = 4;	
+	private static final int RESPONSE_CODE_PLAN_REGISTERED = 5;
+	private static final int RESPONSE_CODE_PLAN_UNREGISTERED = 6;
 
 //	private HttpGet getMethod = null;
 	private HttpHost httpHost = null;
@@ -77,15 +81,26 @@ public class TSClientPlanExecCallable implements Callable<NameValuePair> {
 	
 	// TODO test and refactor from name value pair to something different and check the content copy method
 	public TSClientPlanExecCallable(String hostname, int port, String uri, byte[] testplan) {
+		this(hostname, port, uri, createTestplanEntity(testplan));
+	}
+	
+	/**
+	 * Initializes the callable for executing a test plan previously registered with the ptest-server. The uri is expected to 
+	 * reference the plan identifier, thus no request body is sent
+	 * @param hostname
+	 * @param port
+	 * @param uri
+	 */
+	public TSClientPlanExecCallable(String hostname, int port, String uri) {
+		this(hostname, port, uri, (HttpEntity)null);
+	}
+	
+	protected TSClientPlanExecCallable(String hostname, int port, String uri, HttpEntity entity) {
 		this.httpHost = new HttpHost(hostname, port);
 //		this.getMethod = new HttpGet(uri.toString());
 		this.postMethod = new HttpPost(uri.toString());
-		try {
-			String convertedTestplan = new String(testplan, "UTF-8");
-			postMethod.setEntity(new StringEntity(TSClient.REQUEST_PARAMETER_TESTPLAN+"="+URLEncoder.encode(convertedTestplan, "UTF-8")));
-		} catch (UnsupportedEncodingException e) {
-			throw new RuntimeException("Unsupported encoding exception. Error: " + e.getMessage());
-		}
+		if(entity != null)
+			postMethod.setEntity(entity);
 
 		// TODO setting?
 		SchemeRegistry schemeRegistry = new SchemeRegistry();
@@ -99,6 +114,20 @@ public class TSClientPlanExecCallable implements Callable<NameValuePair> {
 	
 	}
 
+	/**
+	 * Returns a request body containing the url-encoded test plan
+	 * @param testplan
+	 * @return
+	 */
+	private static HttpEntity createTestplanEntity(byte[] testplan) {
+		try {
+			String convertedTestplan = new String(testplan, "UTF-8");
+			return new StringEntity(TSClient.REQUEST_PARAMETER_TESTPLAN+"="+URLEncoder.encode(convertedTestplan, "UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException("Unsupported encoding exception. Error: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * @see java.util.concurrent.Callable#call()
 	 */
@@ -129,6 +158,11 @@ public class TSClientPlanExecCallable implements Callable<NameValuePair> {
 					String responseIdentifier = parseResultIdentifier(rootNode, xpath);
 					return new BasicNameValuePair(httpHost.getHostName(), responseIdentifier);
 				}
+				case RESPONSE_CODE_PLAN_REGISTERED:
+				case RESPONSE_CODE_PLAN_UNREGISTERED: {
+					String planIdentifier = parsePlanIdentifier(rootNode, xpath);
+					return new BasicNameValuePair(httpHost.getHostName(), planIdentifier);
+				}
 				case RESPONSE_CODE_ERROR: {
 					List<Long> errorCodes = parseErrorCodes(rootNode, xpath);
 					StringBuffer codes = new StringBuffer();
@@ -209,6 +243,27 @@ public class TSClientPlanExecCallable implements Callable<NameValuePair> {
 		return resultIdentifier;		
 	}
 
+	/**
+	 * Parses the plan identifier from the result returned on plan registration
+	 * @param rootNode
+	 * @return
+	 * @throws TSClientExecutionException
+	 */
+	protected String parsePlanIdentifier(Node rootNode, XPath xpath) throws TSClientExecutionException {
+		
+		String planIdentifier = null;
+		try {
+			planIdentifier = (String) xpath.evaluate(TEST_EXEC_PLAN_IDENTIFIER, rootNode, XPathConstants.STRING);
+		} catch(XPathExpressionException e) {
+			throw new TSClientExecutionException("Failed to parse out plan identifier from document received from " + httpHost.getHostName());
+		}
+
+		if(planIdentifier == null || planIdentifier.isEmpty())
+			throw new TSClientExecutionException("Failed to parse out plan identifier from document received from " + httpHost.getHostName());
+		
+		return planIdentifier;		
+	}
+
 	/**
 	 * Returns the error codes
 	 * @param rootNode
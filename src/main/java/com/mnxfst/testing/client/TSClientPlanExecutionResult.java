@@ -23,6 +23,8 @@ import java.io.Serializable;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+
 /**
  * Contains the results for a single test plan run on a single host being evaluated on the client
  * @author ckreutzfeldt
@@ -60,6 +62,12 @@ public class TSClientPlanExecutionResult implements Serializable {
 	private double averageDurationMedian = 0.0;
 	/** number of errors */
 	private int errors = 0;
+	/** distribution of single run durations (nanoseconds) - null if not provided by the ptest-server */
+	private TSLatencyHistogram singleRunDurationHistogram = null;
+	/** distribution of single run durations (nanoseconds) measured from the intended start of each run - null if not provided by the ptest-server */
+	private TSLatencyHistogram correctedSingleRunDurationHistogram = null;
+	/** distribution of warm-up run durations (nanoseconds) excluded from all other values - null if no warm-up was configured */
+	private TSLatencyHistogram warmUpDurationHistogram = null;
 	
 	public TSClientPlanExecutionResult() {		
 	}
@@ -176,6 +184,30 @@ public class TSClientPlanExecutionResult implements Serializable {
 		this.errors = errors;
 	}
 	
+	public TSLatencyHistogram getSingleRunDurationHistogram() {
+		return singleRunDurationHistogram;
+	}
+
+	public void setSingleRunDurationHistogram(TSLatencyHistogram singleRunDurationHistogram) {
+		this.singleRunDurationHistogram = singleRunDurationHistogram;
+	}
+
+	public TSLatencyHistogram getCorrectedSingleRunDurationHistogram() {
+		return correctedSingleRunDurationHistogram;
+	}
+
+	public void setCorrectedSingleRunDurationHistogram(TSLatencyHistogram correctedSingleRunDurationHistogram) {
+		this.correctedSingleRunDurationHistogram = correctedSingleRunDurationHistogram;
+	}
+
+	public TSLatencyHistogram getWarmUpDurationHistogram() {
+		return warmUpDurationHistogram;
+	}
+
+	public void setWarmUpDurationHistogram(TSLatencyHistogram warmUpDurationHistogram) {
+		this.warmUpDurationHistogram = warmUpDurationHistogram;
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -194,7 +226,10 @@ public class TSClientPlanExecutionResult implements Serializable {
 				.append("singleRunExecutionDurationMin", this.singleMinDuration)
 				.append("singleRunExecutionDurationMax", this.singleMaxDuration)
 				.append("averageDurationMedian", this.averageDurationMedian)
-				.append("errors", this.errors).toString();
+				.append("errors", this.errors)
+				.append("singleRunDurationHistogram", this.singleRunDurationHistogram)
+				.append("correctedSingleRunDurationHistogram", this.correctedSingleRunDurationHistogram)
+				.append("warmUpDurationHistogram", this.warmUpDurationHistogram).toString();
 				
 	}
 
@@ -46,6 +46,8 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import com.mnxfst.testing.exception.TSClientExecutionException;
+import com.mnxfst.testing.exception.TSLatencyHistogramEncodingException;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
 
 /**
  * Collects the test plan execution results from the server
@@ -67,6 +69,9 @@ public class TSClientPlanResultCollectCallable implements Callable<TSClientPlanE
 	protected static final String TEST_EXEC_SINGLE_AVERAGE_DURATION = "/testExecutionResponse/singleAverageDuration";
 	protected static final String TEST_EXEC_AVERAGE_MEDIAN = "/testExecutionResponse/averageDurationMedian";
 	protected static final String TEST_EXEC_ERRORS = "/testExecutionResponse/errors";
+	protected static final String TEST_EXEC_SINGLE_RUN_DURATION_HISTOGRAM = "/testExecutionResponse/singleRunDurationHistogram";
+	protected static final String TEST_EXEC_CORRECTED_SINGLE_RUN_DURATION_HISTOGRAM = "/testExecutionResponse/correctedSingleRunDurationHistogram";
+	protected static final String TEST_EXEC_WARM_UP_DURATION_HISTOGRAM = "/testExecutionResponse/warmUpDurationHistogram";
 	
 	private static final int RESPONSE_CODE_EXECUTION_RESULTS_CONTAINED = 2;
 	private static final int RESPONSE_CODE_EXECUTION_RESULTS_PENDING = 3;
@@ -153,6 +158,9 @@ public class TSClientPlanResultCollectCallable implements Callable<TSClientPlanE
 					planExecutionResult.setSingleMinDuration(singleMinDuration);
 					planExecutionResult.setStartTimestamp(startTimestamp);
 					planExecutionResult.setTestPlan(testPlan);
+					planExecutionResult.setSingleRunDurationHistogram(parseHistogramValue(rootNode, TEST_EXEC_SINGLE_RUN_DURATION_HISTOGRAM, xpath));
+					planExecutionResult.setCorrectedSingleRunDurationHistogram(parseHistogramValue(rootNode, TEST_EXEC_CORRECTED_SINGLE_RUN_DURATION_HISTOGRAM, xpath));
+					planExecutionResult.setWarmUpDurationHistogram(parseHistogramValue(rootNode, TEST_EXEC_WARM_UP_DURATION_HISTOGRAM, xpath));
 					
 					return planExecutionResult;
 				}
@@ -262,7 +270,34 @@ public class TSClientPlanResultCollectCallable implements Callable<TSClientPlanE
 		throw new TSClientExecutionException("No valid value found for '"+query+"' from document received from " + httpHost.getHostName());		
 	}
 
-	
+	/**
+	 * Parses the encoded histogram referenced by the given query. As older ptest-server instances do not provide
+	 * a histogram, the method returns null if no value is found
+	 * @param rootNode
+	 * @param query
+	 * @param xpath
+	 * @return
+	 * @throws TSClientExecutionException
+	 */
+	protected TSLatencyHistogram parseHistogramValue(Node rootNode, String query, XPath xpath) throws TSClientExecutionException {
+		
+		String tmp = null;
+		try {
+			tmp = (String) xpath.evaluate(query, rootNode, XPathConstants.STRING);
+		} catch(XPathExpressionException e) {
+			throw new TSClientExecutionException("Failed to parse out value for '"+query+"' from document received from " + httpHost.getHostName());
+		}
+		
+		if(tmp == null || tmp.isEmpty())
+			return null;
+		
+		try {
+			return TSLatencyHistogram.decodeFromCompressedString(tmp);
+		} catch(TSLatencyHistogramEncodingException e) {
+			throw new TSClientExecutionException("Failed to decode the histogram received through query '"+query+"'. Returning host: " + httpHost.getHostName() + ". Error: " + e.getMessage());
+		}
+	}
+		
 	/**
 	 * Parses the string value referenced by the given query
 	 * @param rootNode
@@ -0,0 +1,34 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.client;
+
+/**
+ * Removes a test plan previously registered via {@link TSClientPlanRegisterCallable} from a ptest-server instance and returns a 
+ * key/value pair containing the hostname and the identifier of the removed plan. Executions still running on the plan are not affected 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSClientPlanUnregisterCallable extends TSClientPlanExecCallable {
+
+	public TSClientPlanUnregisterCallable(String hostname, int port, String planIdentifier) {
+		super(hostname, port, "/?" + TSClient.REQUEST_PARAMETER_UNREGISTER_PLAN + "=1&" + TSClient.REQUEST_PARAMETER_PLAN_IDENTIFIER + "=" + planIdentifier);
+	}
+	
+}
@@ -0,0 +1,48 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.exception;
+
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+
+/**
+ * Thrown by {@link TSLatencyHistogram} in case an encoded histogram cannot be read
+ * @author mnxfst
+ * @since 20.02.2012
+ */
+public class TSLatencyHistogramEncodingException extends Exception {
+
+	private static final long serialVersionUID = -2281740386629340116L;
+
+	public TSLatencyHistogramEncodingException() {		
+	}
+	
+	public TSLatencyHistogramEncodingException(String msg) {
+		super(msg);
+	}
+	
+	public TSLatencyHistogramEncodingException(Throwable cause) {
+		super(cause);
+	}
+	
+	public TSLatencyHistogramEncodingException(String msg, Throwable cause) {
+		super(msg, cause);
+	}	
+
+}
@@ -0,0 +1,178 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.activities.TSPlanActivity;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.expr.TSPlanExpression;
+
+/**
+ * Compiled, read-only representation of a {@link TSPlan} as created by the {@link TSPlanBuilder}. The activities are kept 
+ * in an array and the successor of each activity is resolved to its array index, thus walking the plan requires neither 
+ * hashing nor string comparison. Static loops have already been rejected while compiling, names provided at runtime 
+ * (eg. next activity overrides) are resolved using a precomputed name-to-index table. The context variables referenced by the
+ * activities have been assigned to slots of the plan's {@link TSPlanContextSlotTable}
+ * @author mnxfst
+ * @since 17.02.2012
+ */
+public class TSCompiledPlan {
+
+	/** name and identifier of final activity. if this one is reached, the plan run is finished */
+	public static final String FINAL_ACTIVITY_NAME = "finish";
+	
+	/** index used for referencing the final activity */
+	public static final int FINAL_ACTIVITY_INDEX = -1;
+	/** index returned for names not referencing any activity */
+	public static final int UNKNOWN_ACTIVITY_INDEX = -2;
+
+	/** activities, ordered by index */
+	private TSPlanActivity[] activities = null;
+	/** activity names, ordered by index */
+	private String[] activityNames = null;
+	/** index of the successor for each activity */
+	private int[] successors = null;
+	/** compiled expressions selecting the successor at runtime, null for activities using their static successor */
+	private TSPlanExpression[] transitions = null;
+	/** index of initial activity */
+	private int initActivityIndex = FINAL_ACTIVITY_INDEX;
+	/** maps activity names to their index */
+	private Map<String, Integer> activityIndices = new HashMap<String, Integer>();
+	/** slots assigned to the context variables referenced by the activities */
+	private TSPlanContextSlotTable contextSlotTable = null;
+	
+	/**
+	 * Initializes the compiled plan. The arrays must be of equal length and ordered by activity index
+	 * @param activities
+	 * @param activityNames
+	 * @param successors
+	 * @param transitions
+	 * @param initActivityIndex
+	 * @param contextSlotTable
+	 */
+	TSCompiledPlan(TSPlanActivity[] activities, String[] activityNames, int[] successors, TSPlanExpression[] transitions, int initActivityIndex, TSPlanContextSlotTable contextSlotTable) {
+		this.activities = activities;
+		this.contextSlotTable = contextSlotTable;
+		this.activityNames = activityNames;
+		this.successors = successors;
+		this.transitions = transitions;
+		this.initActivityIndex = initActivityIndex;
+		for(int i = 0; i < activityNames.length; i++)
+			this.activityIndices.put(activityNames[i], Integer.valueOf(i));
+	}
+	
+	/**
+	 * Returns the index of the activity referenced by the given name, {@link #FINAL_ACTIVITY_INDEX} for null or the final 
+	 * activity name and {@link #UNKNOWN_ACTIVITY_INDEX} if there is no such activity
+	 * @param activityName
+	 * @return
+	 */
+	public int getActivityIndex(String activityName) {
+		if(activityName == null || activityName.equalsIgnoreCase(FINAL_ACTIVITY_NAME))
+			return FINAL_ACTIVITY_INDEX;
+		Integer index = activityIndices.get(activityName);
+		return (index != null ? index.intValue() : UNKNOWN_ACTIVITY_INDEX);
+	}
+	
+	/**
+	 * Returns the activity at the given index
+	 * @param activityIndex
+	 * @return
+	 */
+	public TSPlanActivity getActivity(int activityIndex) {
+		return activities[activityIndex];
+	}
+	
+	/**
+	 * Returns the name of the activity at the given index
+	 * @param activityIndex
+	 * @return
+	 */
+	public String getActivityName(int activityIndex) {
+		return activityNames[activityIndex];
+	}
+	
+	/**
+	 * Returns the index of the successor of the activity at the given index - {@link #FINAL_ACTIVITY_INDEX} if the plan run ends there
+	 * @param activityIndex
+	 * @return
+	 */
+	public int getSuccessor(int activityIndex) {
+		return successors[activityIndex];
+	}
+	
+	/**
+	 * Returns the compiled expression selecting the successor of the activity at the given index - null if there is none
+	 * @param activityIndex
+	 * @return
+	 */
+	public TSPlanExpression getTransition(int activityIndex) {
+		return transitions[activityIndex];
+	}
+	
+	/**
+	 * Returns the index of the activity to visit after the activity at the given index. If the activity has a transition expression,
+	 * it is evaluated against the provided context and its result is resolved as activity name - a null result ends the plan run. 
+	 * Otherwise the static successor is returned. Names not referencing any activity lead to {@link #UNKNOWN_ACTIVITY_INDEX}
+	 * @param activityIndex
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public int resolveSuccessor(int activityIndex, TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		TSPlanExpression transition = transitions[activityIndex];
+		if(transition == null)
+			return successors[activityIndex];
+		Object nextActivityName = transition.evaluate(ctx);
+		return getActivityIndex(nextActivityName != null ? nextActivityName.toString() : null);
+	}
+	
+	/**
+	 * Returns the number of activities
+	 * @return
+	 */
+	public int getActivityCount() {
+		return activities.length;
+	}
+
+	public int getInitActivityIndex() {
+		return initActivityIndex;
+	}
+
+	public TSPlanContextSlotTable getContextSlotTable() {
+		return contextSlotTable;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("activityNames", activityNames)
+				.append("successors", successors)
+				.append("initActivityIndex", initActivityIndex)
+				.append("contextSlotTable", contextSlotTable).toString();
+	}
+}
@@ -24,8 +24,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.log4j.Logger;
 
 import com.mnxfst.testing.activities.TSPlanActivity;
+import com.mnxfst.testing.plan.exec.TSPlanLoadProfile;
 
 /**
  * Contains a whole test plan
@@ -34,6 +36,8 @@ import com.mnxfst.testing.activities.TSPlanActivity;
  */
 public class TSPlan {
 
+	private static final Logger logger = Logger.getLogger(TSPlan.class);
+	
 	/** test plan name */
 	private String name = null;
 	/** test plan description */
@@ -44,14 +48,139 @@ public class TSPlan {
 	private String createdBy = null;	
 	/** initial activity name */
 	private String initActivityName = null;
+	/** target arrival rate (plan iterations per second) - values less than or equal to 0 select the closed model where each executor loops the plan as fast as possible */
+	private double arrivalRate = 0;
+	/** interval (millis) between the intended starts of two consecutive plan iterations on the same executor (closed model only) - values less than or equal to 0 disable pacing */
+	private long pacing = 0;
+	/** number of active executors over time (closed model only) - null if all executors are started at once */
+	private TSPlanLoadProfile loadProfile = null;
+	/** number of plan runs per executor treated as warm-up, thus recorded separately from the measured runs - values less than or equal to 0 disable the warm-up by iterations */
+	private int warmUpIterations = 0;
+	/** time (millis) after the executor start during which plan runs are treated as warm-up - values less than or equal to 0 disable the warm-up by duration */
+	private long warmUpDuration = 0;
 	
 	/** holds the ordered test plan */
 	private Map<String, TSPlanActivity> activities = new HashMap<String, TSPlanActivity>();
+	/** compiled representation of the activity graph - reset whenever the activities or the init activity are replaced */
+	private TSCompiledPlan compiledPlan = null;
+	/** activities are owned by a {@link TSPlanCache} or {@link TSPlanRegistry} and outlive a single execution, thus executors must not shut them down */
+	private boolean shared = false;
+	/** number of running executions using the activities of the shared plan - guarded by the plan's monitor */
+	private int runningExecutions = 0;
+	/** set once the owner removed the shared plan - the activities are shut down as soon as no execution is running anymore */
+	private boolean released = false;
+	/** task run after the activities of a released plan have been shut down, eg. removing its data files */
+	private Runnable releaseTask = null;
 	
 	
 	public TSPlan() {
 		
 	}
+	
+	/**
+	 * Returns a copy of the plan sharing its activities and its compiled representation. Settings like the warm-up may be changed 
+	 * on the copy without affecting the original plan, eg. when the original is kept in a {@link TSPlanCache}
+	 * @return
+	 */
+	public TSPlan copy() {
+		TSPlan copy = new TSPlan();
+		copy.name = this.name;
+		copy.description = this.description;
+		copy.creationDate = this.creationDate;
+		copy.createdBy = this.createdBy;
+		copy.initActivityName = this.initActivityName;
+		copy.arrivalRate = this.arrivalRate;
+		copy.pacing = this.pacing;
+		copy.loadProfile = this.loadProfile;
+		copy.warmUpIterations = this.warmUpIterations;
+		copy.warmUpDuration = this.warmUpDuration;
+		copy.activities.putAll(this.activities);
+		copy.compiledPlan = this.compiledPlan;
+		copy.shared = this.shared;
+		return copy;
+	}
+	
+	/**
+	 * Shuts down all contained {@link TSPlanActivity activities}
+	 */
+	public void shutdownActivities() {
+		for(TSPlanActivity activity : activities.values()) {
+			try {
+				activity.shutdown();
+			} catch(Exception e) {
+				logger.error("Failed to shutdown activity '"+activity.getName()+"'. Error: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	/**
+	 * Marks the start of an execution using the activities of the shared plan. Returns false if the owner released the plan 
+	 * already, thus it must not be executed anymore. Each successful call must be followed by {@link #releaseExecution()}
+	 * @return
+	 */
+	public synchronized boolean acquireExecution() {
+		if(released)
+			return false;
+		runningExecutions = runningExecutions + 1;
+		return true;
+	}
+	
+	/**
+	 * Marks the end of an execution acquired via {@link #acquireExecution()}. If the owner released the plan meanwhile and this
+	 * has been the last running execution, the activities are shut down
+	 */
+	public void releaseExecution() {
+		boolean shutdown = false;
+		synchronized(this) {
+			if(runningExecutions < 1)
+				return;
+			runningExecutions = runningExecutions - 1;
+			shutdown = (released && runningExecutions == 0);
+		}
+		if(shutdown)
+			shutdown();
+	}
+	
+	/**
+	 * Called by the owner when removing the shared plan: the activities are shut down right away if no execution is running,
+	 * otherwise as soon as the last running execution has been released. Must not be called while holding the owner's lock as
+	 * shutting down the activities may take a while
+	 * @param releaseTask task run after the activities have been shut down - may be null
+	 */
+	public void release(Runnable releaseTask) {
+		boolean shutdown = false;
+		synchronized(this) {
+			if(released)
+				return;
+			released = true;
+			this.releaseTask = releaseTask;
+			shutdown = (runningExecutions == 0);
+		}
+		if(shutdown)
+			shutdown();
+	}
+	
+	/**
+	 * Shuts down the activities of a released plan and runs its release task
+	 */
+	private void shutdown() {
+		shutdownActivities();
+		if(releaseTask != null) {
+			try {
+				releaseTask.run();
+			} catch(RuntimeException e) {
+				logger.error("Failed to release test plan '"+name+"'. Error: " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	public synchronized int getRunningExecutions() {
+		return runningExecutions;
+	}
+	
+	public synchronized boolean isReleased() {
+		return released;
+	}
 
 	/**
 	 * Adds an activity for the given name
@@ -60,6 +189,7 @@ public class TSPlan {
 	 */
 	public void addActivity(String activityName, TSPlanActivity activity) {
 		this.activities.put(activityName, activity);
+		this.compiledPlan = null;
 	}
 	
 	/**
@@ -68,6 +198,7 @@ public class TSPlan {
 	 */
 	public void removeActivity(String activityName) {
 		this.activities.remove(activityName);
+		this.compiledPlan = null;
 	}
 	
 	/**
@@ -85,6 +216,7 @@ public class TSPlan {
 
 	public void setInitActivityName(String initActivityName) {
 		this.initActivityName = initActivityName;
+		this.compiledPlan = null;
 	}
 
 	public String getName() {
@@ -119,12 +251,73 @@ public class TSPlan {
 		this.createdBy = createdBy;
 	}
 
+	public double getArrivalRate() {
+		return arrivalRate;
+	}
+
+	public void setArrivalRate(double arrivalRate) {
+		this.arrivalRate = arrivalRate;
+	}
+
+	public long getPacing() {
+		return pacing;
+	}
+
+	public void setPacing(long pacing) {
+		this.pacing = pacing;
+	}
+
+	public TSPlanLoadProfile getLoadProfile() {
+		return loadProfile;
+	}
+
+	public void setLoadProfile(TSPlanLoadProfile loadProfile) {
+		this.loadProfile = loadProfile;
+	}
+
+	public int getWarmUpIterations() {
+		return warmUpIterations;
+	}
+
+	public void setWarmUpIterations(int warmUpIterations) {
+		this.warmUpIterations = warmUpIterations;
+	}
+
+	public long getWarmUpDuration() {
+		return warmUpDuration;
+	}
+
+	public void setWarmUpDuration(long warmUpDuration) {
+		this.warmUpDuration = warmUpDuration;
+	}
+
 	public Map<String, TSPlanActivity> getActivities() {
 		return activities;
 	}
 
 	public void setActivities(Map<String, TSPlanActivity> activities) {
 		this.activities = activities;
+		this.compiledPlan = null;
+	}
+
+	/**
+	 * Returns the compiled representation of the activity graph or null if the plan has not been compiled by the {@link TSPlanBuilder}
+	 * @return
+	 */
+	public TSCompiledPlan getCompiledPlan() {
+		return compiledPlan;
+	}
+
+	public void setCompiledPlan(TSCompiledPlan compiledPlan) {
+		this.compiledPlan = compiledPlan;
+	}
+
+	public boolean isShared() {
+		return shared;
+	}
+
+	public void setShared(boolean shared) {
+		this.shared = shared;
 	}
 
 	/**
@@ -137,6 +330,11 @@ public class TSPlan {
 				.append("creationDate", creationDate)
 				.append("createdBy", createdBy)
 				.append("initActivityName", initActivityName)
+				.append("arrivalRate", arrivalRate)
+				.append("pacing", pacing)
+				.append("loadProfile", loadProfile)
+				.append("warmUpIterations", warmUpIterations)
+				.append("warmUpDuration", warmUpDuration)
 				.append("activities", activities).toString();
 	}	
 }
@@ -19,12 +19,22 @@
 
 package com.mnxfst.testing.plan;
 
+import java.io.InputStream;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpressionException;
@@ -41,6 +51,10 @@ import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
 import com.mnxfst.testing.exception.TSPlanInstantiationException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
 import com.mnxfst.testing.plan.config.TSPlanConfigOptionsBuilder;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.exec.TSPlanLoadProfile;
+import com.mnxfst.testing.plan.exec.TSPlanLoadStageType;
+import com.mnxfst.testing.plan.expr.TSPlanExpression;
 
 /**
  * Parses a provided input source for a {@link TSPlan test plan configuration}
@@ -59,13 +73,35 @@ public class TSPlanBuilder {
 	public static final String TEST_PLAN_CONFIGURATION_NAME_ATTRIBUTE = "name";
 	public static final String TEST_PLAN_ACTIVITIES_NODE = "activities";
 	public static final String TEST_PLAN_ACTIVITY_CONFIGURATION_NODE = "configuration";
+	public static final String TEST_PLAN_LOAD_PROFILE_NODE = "loadProfile";
+	public static final String TEST_PLAN_LOAD_PROFILE_STAGE_NODE = "stage";
+	
+	// nodes holding the test plan attributes
+	public static final String TEST_PLAN_NAME_NODE = "name";
+	public static final String TEST_PLAN_DESCRIPTION_NODE = "description";
+	public static final String TEST_PLAN_CREATION_DATE_NODE = "creationDate";
+	public static final String TEST_PLAN_CREATED_BY_NODE = "createdBy";
+	public static final String TEST_PLAN_INIT_ACTIVITY_NODE = "initActivity";
+	public static final String TEST_PLAN_ARRIVAL_RATE_NODE = "arrivalRate";
+	public static final String TEST_PLAN_PACING_NODE = "pacing";
+	public static final String TEST_PLAN_WARM_UP_ITERATIONS_NODE = "warmUpIterations";
+	public static final String TEST_PLAN_WARM_UP_DURATION_NODE = "warmUpDuration";
+	private static final String[] TEST_PLAN_ATTRIBUTE_NODES = new String[]{TEST_PLAN_NAME_NODE, TEST_PLAN_DESCRIPTION_NODE, TEST_PLAN_CREATION_DATE_NODE, 
+		TEST_PLAN_CREATED_BY_NODE, TEST_PLAN_INIT_ACTIVITY_NODE, TEST_PLAN_ARRIVAL_RATE_NODE, TEST_PLAN_PACING_NODE, TEST_PLAN_WARM_UP_ITERATIONS_NODE, 
+		TEST_PLAN_WARM_UP_DURATION_NODE};
+	private static final Set<String> TEST_PLAN_ATTRIBUTE_NODE_SET = new HashSet<String>(Arrays.asList(TEST_PLAN_ATTRIBUTE_NODES));
+	
+	// attributes read by the streaming parser
+	private static final String TEST_PLAN_ACTIVITY_ID_ATTRIBUTE = "id";
+	private static final String TEST_PLAN_ACTIVITY_NAME_ATTRIBUTE = "name";
+	private static final String TEST_PLAN_ACTIVITY_USE_GLOBAL_CONFIG_ATTRIBUTE = "useGlobalConfig";
+	private static final String TEST_PLAN_STAGE_NAME_ATTRIBUTE = "name";
+	private static final String TEST_PLAN_STAGE_TYPE_ATTRIBUTE = "type";
+	private static final String TEST_PLAN_STAGE_EXECUTORS_ATTRIBUTE = "executors";
+	private static final String TEST_PLAN_STAGE_DURATION_ATTRIBUTE = "duration";
 	
 	// xpath expressions required for parsing test plan attributes
-	private static final String XPATH_EXPRESSION_PLAN_INIT_ACTIVITY = "/ptestplan/initActivity";
-	private static final String XPATH_EXPRESSION_PLAN_NAME = "/ptestplan/name";
-	private static final String XPATH_EXPRESSION_PLAN_DESCRIPTION = "/ptestplan/description";
-	private static final String XPATH_EXPRESSION_PLAN_CREATION_DATE = "/ptestplan/creationDate";
-	private static final String XPATH_EXPRESSION_PLAN_CREATED_BY = "/ptestplan/createdBy";
+	private static final String XPATH_EXPRESSION_PLAN_LOAD_PROFILE_STAGES = "/ptestplan/loadProfile/stage";
 	
 	
 	private static final String XPATH_EXPRESSION_ALL_GLOBAL_CONFIG_OPTIONS = "/ptestplan/globalConfiguration/*";	
@@ -79,7 +115,14 @@ public class TSPlanBuilder {
 	private static final String XPATH_EXPRESSION_ACTIVITY_CLASS_NODE = "class";
 	private static final String XPATH_EXPRESSION_ACTIVITY_CONFIGURATION_NODES = "configuration";
 	private static final String XPATH_EXPRESSION_ACTIVITY_NEXT_ACTIVITY = "nextActivity";
+	private static final String XPATH_EXPRESSION_ACTIVITY_NEXT_ACTIVITY_EXPRESSION = "nextActivityExpression";
 	private static final String XPATH_EXPRESSION_ACTIVITY_CONTEXT_RESULT_VARIABLES = "contextExportVars";
+	
+	// xpath expressions required for parsing load profile stages
+	private static final String XPATH_EXPRESSION_STAGE_NAME_ATTRIBUTE = "@name";
+	private static final String XPATH_EXPRESSION_STAGE_TYPE_ATTRIBUTE = "@type";
+	private static final String XPATH_EXPRESSION_STAGE_EXECUTORS_ATTRIBUTE = "@executors";
+	private static final String XPATH_EXPRESSION_STAGE_DURATION_ATTRIBUTE = "@duration";
 
 	/** required date format */
 	private static SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyy-MM-dd");
@@ -87,6 +130,29 @@ public class TSPlanBuilder {
 	/** test plan configuration option parser */
 	private TSPlanConfigOptionsBuilder configOptionsParser = new TSPlanConfigOptionsBuilder();
 	
+	/** factory for the streaming parser - configured once, creating readers from it is thread-safe */
+	private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+	static {
+		xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+	}
+	
+	/**
+	 * Holds the settings of an activity read from the test plan configuration until it gets instantiated
+	 * @author mnxfst
+	 * @since 24.02.2012
+	 */
+	protected static class ActivityDefinition {
+		String id = null;
+		String name = null;
+		String useGlobalConfig = null;
+		String className = null;
+		String description = null;
+		String nextActivity = null;
+		String nextActivityExpression = null;
+		Map<String, String> contextExportVariables = null;
+		TSPlanConfigOption configOptions = null;
+	}
+	
 	/**
 	 * The singleton holder is loaded on the first execution of TSPlanBuilder.getInstance()
 	 * or the first access to TSPlanSingletonHolder.instance, not before
@@ -143,45 +209,183 @@ public class TSPlanBuilder {
 		// required temporary variables for storing parsed out information which are known to be existing beforehand (compare to activities!)
 		Map<String, TSPlanConfigOption> configurationOptions = parseGlobalConfigurationOptions(testPlanConfiguration);
 		Map<String, TSPlanActivity> activities = parseActivities(testPlanConfiguration, configurationOptions);
+		TSPlanLoadProfile loadProfile = parseLoadProfile(testPlanConfiguration);
 
-		String name = null;
-		String description = null;
-		String createdBy = null;
-		Date creationDate = null;
-		String initActivity = null;
-
+		// read the plan attributes, each one is held by a direct child of the root node
+		Map<String, String> planAttributes = new HashMap<String, String>();
 		XPath xpath = XPathFactory.newInstance().newXPath();
-		try {
-			name = (String) xpath.evaluate(XPATH_EXPRESSION_PLAN_NAME, testPlanConfiguration, XPathConstants.STRING);
-		} catch (XPathExpressionException e) {
-			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its name using a xpath expression. Error: " + e.getMessage(), e);
+		for(String attributeNode : TEST_PLAN_ATTRIBUTE_NODES) {
+			try {
+				planAttributes.put(attributeNode, (String) xpath.evaluate("/" + TEST_PLAN_ROOT_NODE + "/" + attributeNode, testPlanConfiguration, XPathConstants.STRING));
+			} catch (XPathExpressionException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its '"+attributeNode+"' attribute using a xpath expression. Error: " + e.getMessage(), e);
+			}
 		}
+		
+		return createPlan(planAttributes, activities, loadProfile);
+	}
+	
+	/**
+	 * Parses the provided stream for {@link TSPlan} configuration information and instantiates a test plan according to the 
+	 * provided information. Other than {@link #buildPlan(Document)} the configuration is read in a single pass using a StAX 
+	 * stream reader without building a document tree, thus large plans (eg. holding hundreds of activities or embedded payload
+	 * templates) are built considerably faster and with less memory. The resulting plan equals the one built from a document
+	 * @param testPlanConfiguration
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 * @throws TSPlanInstantiationException
+	 * @throws TSPlanActivityExecutionException
+	 */
+	public TSPlan parsePlan(InputStream testPlanConfiguration) throws TSPlanConfigurationFormatException, TSPlanInstantiationException, TSPlanActivityExecutionException {
+		
+		// check for any stream provided
+		if(testPlanConfiguration == null)
+			throw new TSPlanConfigurationFormatException("No test plan configuration provided");
+		
+		XMLStreamReader reader = null;
 		try {
-			description = (String) xpath.evaluate(XPATH_EXPRESSION_PLAN_DESCRIPTION, testPlanConfiguration, XPathConstants.STRING);
-		} catch (XPathExpressionException e) {
-			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its description using a xpath expression. Error: " + e.getMessage(), e);
+			reader = xmlInputFactory.createXMLStreamReader(testPlanConfiguration);
+			return readPlan(reader);
+		} catch(XMLStreamException e) {
+			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan. Error: " + e.getMessage(), e);
+		} finally {
+			if(reader != null) {
+				try {
+					reader.close();
+				} catch(XMLStreamException e) {
+					logger.error("Failed to close test plan reader. Error: " + e.getMessage());
+				}
+			}
 		}
-		try {
-			createdBy = (String) xpath.evaluate(XPATH_EXPRESSION_PLAN_CREATED_BY, testPlanConfiguration, XPathConstants.STRING);
-		} catch (XPathExpressionException e) {
-			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its 'created-by' attribute using a xpath expression. Error: " + e.getMessage(), e);
+	}
+	
+	/**
+	 * Reads the test plan from the provided stream reader which must not have consumed the root node yet 
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected TSPlan readPlan(XMLStreamReader reader) throws XMLStreamException, TSPlanConfigurationFormatException {
+
+		// find root node
+		if(!nextStartElement(reader))
+			throw new TSPlanConfigurationFormatException("No root node contained in test plan configuration");
+		
+		// validate root node name
+		if(!reader.getLocalName().equalsIgnoreCase(TEST_PLAN_ROOT_NODE)) 
+			throw new TSPlanConfigurationFormatException("Root node name either not provided or invalid");
+
+		Map<String, String> planAttributes = new HashMap<String, String>();
+		Map<String, TSPlanConfigOption> configurationOptions = new HashMap<String, TSPlanConfigOption>();
+		List<ActivityDefinition> activityDefinitions = new ArrayList<ActivityDefinition>();
+		TSPlanLoadProfile loadProfile = null;
+		
+		// step through the child nodes of the root. each nested reader leaves the stream at the end of the element it consumed, 
+		// thus the next end element found on this level closes the root node
+		boolean childNodes = false;
+		for(int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+			childNodes = true;
+			if(event != XMLStreamConstants.START_ELEMENT)
+				continue;
+			
+			String nodeName = reader.getLocalName();
+			if(TEST_PLAN_GLOBAL_CONFIGURATION_NODE.equals(nodeName)) {
+				parseGlobalConfigurationOptions(reader, configurationOptions);
+			} else if(TEST_PLAN_ACTIVITIES_NODE.equals(nodeName)) {
+				parseActivityDefinitions(reader, activityDefinitions);
+			} else if(TEST_PLAN_LOAD_PROFILE_NODE.equals(nodeName)) {
+				loadProfile = parseLoadProfile(reader, loadProfile);
+			} else if(TEST_PLAN_ATTRIBUTE_NODE_SET.contains(nodeName) && !planAttributes.containsKey(nodeName)) {
+				planAttributes.put(nodeName, readElementText(reader));
+			} else {
+				skipElement(reader);
+			}
 		}
-		try {
-			String creationDateStr = (String) xpath.evaluate(XPATH_EXPRESSION_PLAN_CREATION_DATE, testPlanConfiguration, XPathConstants.STRING);
-			if(creationDateStr != null && !creationDateStr.isEmpty()) {
-				try {
+		if(!childNodes)
+			throw new TSPlanConfigurationFormatException("No child nodes found for root node");
+		
+		// activities are instantiated after reading the whole plan as they may reference global configuration options declared later
+		Map<String, TSPlanActivity> activities = new HashMap<String, TSPlanActivity>();
+		for(ActivityDefinition definition : activityDefinitions)
+			activities.put(definition.name, createActivity(definition, configurationOptions));
+		
+		if(logger.isDebugEnabled())
+			logger.debug("Successfully parsed " + activities.size() + " activities from the provided test plan");
+
+		return createPlan(planAttributes, activities, loadProfile);
+	}
+	
+	/**
+	 * Creates the {@link TSPlan} from the provided attributes, activities and load profile. The attributes are expected to be 
+	 * referenced by the names of the nodes holding them
+	 * @param planAttributes
+	 * @param activities
+	 * @param loadProfile
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected TSPlan createPlan(Map<String, String> planAttributes, Map<String, TSPlanActivity> activities, TSPlanLoadProfile loadProfile) throws TSPlanConfigurationFormatException {
+		
+		String name = planAttributes.get(TEST_PLAN_NAME_NODE);
+		String description = planAttributes.get(TEST_PLAN_DESCRIPTION_NODE);
+		String createdBy = planAttributes.get(TEST_PLAN_CREATED_BY_NODE);
+		Date creationDate = null;
+		String initActivity = planAttributes.get(TEST_PLAN_INIT_ACTIVITY_NODE);
+		double arrivalRate = 0;
+		long pacing = 0;
+		int warmUpIterations = 0;
+		long warmUpDuration = 0;
+
+		String creationDateStr = planAttributes.get(TEST_PLAN_CREATION_DATE_NODE);
+		if(creationDateStr != null && !creationDateStr.isEmpty()) {
+			try {
+				synchronized(simpleDateFormat) {
 					creationDate = simpleDateFormat.parse(creationDateStr);
-				} catch(ParseException e) {
-					throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid creation date attribute value: " + creationDateStr + ". Expected a date following yyyy-mm-dd");
 				}
+			} catch(ParseException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid creation date attribute value: " + creationDateStr + ". Expected a date following yyyy-mm-dd");
 			}
-		} catch (XPathExpressionException e) {
-			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its creation date using a xpath expression. Error: " + e.getMessage(), e);
 		}
-		try {
-			initActivity = (String) xpath.evaluate(XPATH_EXPRESSION_PLAN_INIT_ACTIVITY, testPlanConfiguration, XPathConstants.STRING);
-		} catch (XPathExpressionException e) {
-			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its init activityusing a xpath expression. Error: " + e.getMessage(), e);
+		String arrivalRateStr = planAttributes.get(TEST_PLAN_ARRIVAL_RATE_NODE);
+		if(arrivalRateStr != null && !arrivalRateStr.trim().isEmpty()) {
+			try {
+				arrivalRate = Double.parseDouble(arrivalRateStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid arrival rate: " + arrivalRateStr + ". Expected a numerical value (iterations per second)");
+			}
+			if(arrivalRate <= 0)
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid arrival rate: " + arrivalRateStr + ". Values greater 0 are expected");
+		}
+		String pacingStr = planAttributes.get(TEST_PLAN_PACING_NODE);
+		if(pacingStr != null && !pacingStr.trim().isEmpty()) {
+			try {
+				pacing = Long.parseLong(pacingStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid pacing: " + pacingStr + ". Expected a numerical value (millis)");
+			}
+			if(pacing <= 0)
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid pacing: " + pacingStr + ". Values greater 0 are expected");
+		}
+		String warmUpIterationsStr = planAttributes.get(TEST_PLAN_WARM_UP_ITERATIONS_NODE);
+		if(warmUpIterationsStr != null && !warmUpIterationsStr.trim().isEmpty()) {
+			try {
+				warmUpIterations = Integer.parseInt(warmUpIterationsStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to invalid warm-up iterations: " + warmUpIterationsStr + ". Expected a numerical value");
+			}
+			if(warmUpIterations <= 0)
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to invalid warm-up iterations: " + warmUpIterationsStr + ". Values greater 0 are expected");
+		}
+		String warmUpDurationStr = planAttributes.get(TEST_PLAN_WARM_UP_DURATION_NODE);
+		if(warmUpDurationStr != null && !warmUpDurationStr.trim().isEmpty()) {
+			try {
+				warmUpDuration = Long.parseLong(warmUpDurationStr.trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid warm-up duration: " + warmUpDurationStr + ". Expected a numerical value (millis)");
+			}
+			if(warmUpDuration <= 0)
+				throw new TSPlanConfigurationFormatException("Failed to parse provided test plan due to an invalid warm-up duration: " + warmUpDurationStr + ". Values greater 0 are expected");
 		}
 		
 		// ensure that there is a name, a description, a creation date and a hint on who created the test plan
@@ -204,8 +408,14 @@ public class TSPlanBuilder {
 		testPlan.setDescription(description);
 		testPlan.setName(name);
 		testPlan.setInitActivityName(initActivity);
+		testPlan.setArrivalRate(arrivalRate);
+		testPlan.setPacing(pacing);
+		testPlan.setLoadProfile(loadProfile);
+		testPlan.setWarmUpIterations(warmUpIterations);
+		testPlan.setWarmUpDuration(warmUpDuration);
 		
 		testPlan.getActivities().putAll(activities);
+		testPlan.setCompiledPlan(compilePlan(testPlan));
 		
 		if(logger.isDebugEnabled())
 			logger.debug("Successfully created test plan instance: " + testPlan);
@@ -213,6 +423,183 @@ public class TSPlanBuilder {
 		return testPlan;		
 	}
 	
+	/**
+	 * Parses the optional load profile from the provided test plan configuration. Each stage is configured by a <i>stage</i> node
+	 * holding the attributes <i>type</i> (ramp, step or spike), <i>executors</i>, <i>duration</i> (millis) and optionally <i>name</i>. 
+	 * If there is no stage, the method returns null
+	 * @param testPlanConfiguration
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected TSPlanLoadProfile parseLoadProfile(Document testPlanConfiguration) throws TSPlanConfigurationFormatException {
+		
+		XPath xpath = XPathFactory.newInstance().newXPath();
+		NodeList stageNodes = null;
+		try {
+			stageNodes = (NodeList)xpath.evaluate(XPATH_EXPRESSION_PLAN_LOAD_PROFILE_STAGES, testPlanConfiguration, XPathConstants.NODESET);
+		} catch (XPathExpressionException e) {
+			throw new TSPlanConfigurationFormatException("Failed to parse provided test plan for its load profile using a xpath expression. Error: " + e.getMessage(), e);
+		}
+		
+		if(stageNodes == null || stageNodes.getLength() < 1)
+			return null;
+		
+		TSPlanLoadProfile loadProfile = new TSPlanLoadProfile();
+		for(int i = 0; i < stageNodes.getLength(); i++) {
+			Node stageNode = stageNodes.item(i);
+			
+			String name = null;
+			String type = null;
+			String executors = null;
+			String duration = null;
+			try {
+				name = (String)xpath.evaluate(XPATH_EXPRESSION_STAGE_NAME_ATTRIBUTE, stageNode, XPathConstants.STRING);
+				type = (String)xpath.evaluate(XPATH_EXPRESSION_STAGE_TYPE_ATTRIBUTE, stageNode, XPathConstants.STRING);
+				executors = (String)xpath.evaluate(XPATH_EXPRESSION_STAGE_EXECUTORS_ATTRIBUTE, stageNode, XPathConstants.STRING);
+				duration = (String)xpath.evaluate(XPATH_EXPRESSION_STAGE_DURATION_ATTRIBUTE, stageNode, XPathConstants.STRING);
+			} catch (XPathExpressionException e) {
+				throw new TSPlanConfigurationFormatException("Failed to parse load profile stage " + i + " using a xpath expression. Error: " + e.getMessage(), e);
+			}
+			
+			addLoadStage(loadProfile, name, type, executors, duration);
+		}
+		
+		return loadProfile;
+	}
+	
+	/**
+	 * Reads the stages of the load profile node the provided reader is positioned at and adds them to the given profile. If there is
+	 * no profile yet, a new one is created as soon as the first stage is found. The reader is left at the end of the load profile node 
+	 * @param reader
+	 * @param loadProfile
+	 * @return
+	 * @throws XMLStreamException
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected TSPlanLoadProfile parseLoadProfile(XMLStreamReader reader, TSPlanLoadProfile loadProfile) throws XMLStreamException, TSPlanConfigurationFormatException {
+		
+		while(nextChildElement(reader)) {
+			if(TEST_PLAN_LOAD_PROFILE_STAGE_NODE.equals(reader.getLocalName())) {
+				if(loadProfile == null)
+					loadProfile = new TSPlanLoadProfile();
+				addLoadStage(loadProfile, getAttribute(reader, TEST_PLAN_STAGE_NAME_ATTRIBUTE), getAttribute(reader, TEST_PLAN_STAGE_TYPE_ATTRIBUTE), 
+						getAttribute(reader, TEST_PLAN_STAGE_EXECUTORS_ATTRIBUTE), getAttribute(reader, TEST_PLAN_STAGE_DURATION_ATTRIBUTE));
+			}
+			skipElement(reader);
+		}
+		
+		return loadProfile;
+	}
+	
+	/**
+	 * Validates the provided stage settings and adds the stage to the load profile
+	 * @param loadProfile
+	 * @param name
+	 * @param type
+	 * @param executors
+	 * @param duration
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected void addLoadStage(TSPlanLoadProfile loadProfile, String name, String type, String executors, String duration) throws TSPlanConfigurationFormatException {
+		
+		int stage = loadProfile.getStages().size();
+		TSPlanLoadStageType stageType = TSPlanLoadProfile.parseStageType(type);
+		if(stageType == TSPlanLoadStageType.UNKNOWN)
+			throw new TSPlanConfigurationFormatException("Invalid type for load profile stage " + stage + ": " + type + ". Expected ramp, step or spike");
+		
+		try {
+			loadProfile.addStage(name, stageType, Integer.parseInt(executors.trim()), Long.parseLong(duration.trim()));
+		} catch(NumberFormatException e) {
+			throw new TSPlanConfigurationFormatException("Invalid executors or duration for load profile stage " + stage + ": [executors=" + executors + ", duration=" + duration + "]. Expected numerical values");
+		}
+	}
+	
+	/**
+	 * Compiles the activity graph of the provided {@link TSPlan} into a {@link TSCompiledPlan}: activities are placed in an array
+	 * (the init activity first) and the next activity of each one is resolved to its index. References to unknown activities as well 
+	 * as loops formed by the next activity settings are rejected. Finally each activity binds the context variables it references
+	 * to the slots of a table shared by all executors of the plan 
+	 * @param testPlan
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	public TSCompiledPlan compilePlan(TSPlan testPlan) throws TSPlanConfigurationFormatException {
+		
+		if(testPlan == null)
+			throw new TSPlanConfigurationFormatException("No test plan provided");
+		if(testPlan.getActivity(testPlan.getInitActivityName()) == null)
+			throw new TSPlanConfigurationFormatException("No activity found for name of init activity: " + testPlan.getInitActivityName());
+
+		// assign an index to each activity - the init activity goes first 
+		int activityCount = testPlan.getActivities().size();
+		TSPlanActivity[] activities = new TSPlanActivity[activityCount];
+		String[] activityNames = new String[activityCount];
+		Map<String, Integer> activityIndices = new HashMap<String, Integer>();
+		
+		activityNames[0] = testPlan.getInitActivityName();
+		activities[0] = testPlan.getActivity(activityNames[0]);
+		activityIndices.put(activityNames[0], Integer.valueOf(0));
+		int index = 1;
+		for(String activityName : testPlan.getActivities().keySet()) {
+			if(!activityName.equals(activityNames[0])) {
+				activityNames[index] = activityName;
+				activities[index] = testPlan.getActivity(activityName);
+				activityIndices.put(activityName, Integer.valueOf(index));
+				index = index + 1;
+			}
+		}
+		
+		// resolve the next activity of each activity and compile the transition expressions. activities selecting their successor
+		// through an expression may omit the static next activity which is then treated as the final one
+		int[] successors = new int[activityCount];
+		TSPlanExpression[] transitions = new TSPlanExpression[activityCount];
+		for(int i = 0; i < activityCount; i++) {
+			String nextActivityExpression = activities[i].getNextActivityExpression();
+			if(nextActivityExpression != null && !nextActivityExpression.trim().isEmpty())
+				transitions[i] = TSPlanExpression.compile(nextActivityExpression);
+			
+			String nextActivityName = activities[i].getNextActivity();
+			if(nextActivityName == null || nextActivityName.equalsIgnoreCase(TSCompiledPlan.FINAL_ACTIVITY_NAME) || (transitions[i] != null && nextActivityName.isEmpty())) {
+				successors[i] = TSCompiledPlan.FINAL_ACTIVITY_INDEX;
+			} else {
+				Integer successor = activityIndices.get(nextActivityName);
+				if(successor == null)
+					throw new TSPlanConfigurationFormatException("Activity '"+activityNames[i]+"' references an unknown next activity: " + nextActivityName);
+				successors[i] = successor.intValue();
+			}
+		}
+		
+		// each activity has at most one successor, thus following the successors from each activity either reaches the final activity
+		// or runs into a loop. states: 0 = not visited, 1 = on the currently followed path, 2 = known to reach the final activity
+		int[] states = new int[activityCount];
+		for(int i = 0; i < activityCount; i++) {
+			int current = i;
+			while(current != TSCompiledPlan.FINAL_ACTIVITY_INDEX && states[current] == 0) {
+				states[current] = 1;
+				current = successors[current];
+			}
+			if(current != TSCompiledPlan.FINAL_ACTIVITY_INDEX && states[current] == 1)
+				throw new TSPlanConfigurationFormatException("Loop found for activity: " + activityNames[current]);
+			
+			// mark the followed path as terminating
+			current = i;
+			while(current != TSCompiledPlan.FINAL_ACTIVITY_INDEX && states[current] == 1) {
+				states[current] = 2;
+				current = successors[current];
+			}
+		}
+		
+		// assign the context variable slots in activity order
+		TSPlanContextSlotTable contextSlotTable = new TSPlanContextSlotTable();
+		for(int i = 0; i < activityCount; i++)
+			activities[i].bindContextVariables(contextSlotTable);
+		for(int i = 0; i < activityCount; i++)
+			if(transitions[i] != null)
+				transitions[i].bind(contextSlotTable);
+		
+		return new TSCompiledPlan(activities, activityNames, successors, transitions, 0, contextSlotTable);
+	}
+	
 	/**
 	 * Parses contents for a node which only holds a string value as child element. If there
 	 * is no content, the method returns null
@@ -264,6 +651,21 @@ public class TSPlanBuilder {
 		return result;
 	}
 	
+	/**
+	 * Reads the global configuration options below the node the provided reader is positioned at and adds them to the given map. 
+	 * The reader is left at the end of the global configuration node
+	 * @param reader
+	 * @param result
+	 * @throws XMLStreamException
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected void parseGlobalConfigurationOptions(XMLStreamReader reader, Map<String, TSPlanConfigOption> result) throws XMLStreamException, TSPlanConfigurationFormatException {
+		while(nextChildElement(reader)) {
+			TSPlanConfigOption cfgOption = configOptionsParser.parseConfigurationElement(reader, null);
+			result.put(cfgOption.getName(), cfgOption);
+		}
+	}
+	
 	/**
 	 * Parses out the activities. If there are not activities, the result will be an empty (but non-null) map
 	 * @param testDocument
@@ -298,6 +700,7 @@ public class TSPlanBuilder {
 					String activityDescription = (String)xpath.evaluate(XPATH_EXPRESSION_ACTIVITY_DESCRIPTION_NODE, activityNodes.item(i), XPathConstants.STRING);
 //					String activityContextVariable = (String)xpath.evaluate(XPATH_EXPRESSION_ACTIVITY_CONTEXT_VARIABLE_NODE, activityNodes.item(i), XPathConstants.STRING);
 					String activityNextActivity = (String)xpath.evaluate(XPATH_EXPRESSION_ACTIVITY_NEXT_ACTIVITY,  activityNodes.item(i), XPathConstants.STRING);
+					String activityNextActivityExpression = (String)xpath.evaluate(XPATH_EXPRESSION_ACTIVITY_NEXT_ACTIVITY_EXPRESSION,  activityNodes.item(i), XPathConstants.STRING);
 
 					Map<String, String> activityContextExportVariables = new HashMap<String, String>();
 					// fetch the association of values being exported by the activity and the context variable name to use
@@ -341,34 +744,21 @@ public class TSPlanBuilder {
 						throw new TSPlanConfigurationFormatException("Failed to parse provided test plan using a xpath expression. Error: " + e.getMessage(), e);
 					} 
 					
-					TSPlanActivity activity = getActivityParserInstance(activityClass);
-					activity.setId(activityId);
-					activity.setClassName(activityClass);
-					activity.setContextExportVariables(activityContextExportVariables);
-					activity.setDescription(activityDescription);
-					activity.setName(activityName);
-					activity.setNextActivity(activityNextActivity);
-					if(activityUseGlobalConfig != null && !activityUseGlobalConfig.isEmpty()) {
-						TSPlanConfigOption cfgOpt = globalOptions.get(activityUseGlobalConfig);
-						if(cfgOpt == null)
-							throw new TSPlanConfigurationFormatException("No such global configuration option found for name '"+activityUseGlobalConfig+"'");
-						activity.initialize(cfgOpt);
-					} else {
-						activity.initialize(activityConfigOptions);
-					}
-
+					ActivityDefinition definition = new ActivityDefinition();
+					definition.id = activityId;
+					definition.name = activityName;
+					definition.useGlobalConfig = activityUseGlobalConfig;
+					definition.className = activityClass;
+					definition.description = activityDescription;
+					definition.nextActivity = activityNextActivity;
+					definition.nextActivityExpression = activityNextActivityExpression;
+					definition.contextExportVariables = activityContextExportVariables;
+					definition.configOptions = activityConfigOptions;
 					
-					if(logger.isDebugEnabled())
-						logger.debug("Parsed activity: [id="+activityId+", name="+activityName+", class="+activityClass+", useGlobalCfg="+activityUseGlobalConfig+", ctxExportVars="+activityContextExportVariables.size()+", nextActivity="+activityNextActivity+", description="+activityDescription+"]");
-					
-					result.put(activityName, activity);
+					result.put(activityName, createActivity(definition, globalOptions));
 						
 				} catch (XPathExpressionException e) {
 					throw new TSPlanConfigurationFormatException("Failed to parse activity using a xpath expression. Error: " + e.getMessage(), e);
-				} catch (TSPlanInstantiationException e) {
-					throw new TSPlanConfigurationFormatException("Failed to instantiate a referenced activity. Error: " + e.getMessage(), e);				
-				} catch (TSPlanActivityExecutionException e) {
-					throw new TSPlanConfigurationFormatException("Failed to post initialize activity instance ('"+activityName+"'). Error: " + e.getMessage(), e);
 				}
 				
 			}
@@ -382,6 +772,210 @@ public class TSPlanBuilder {
 		
 	}
 	
+	/**
+	 * Reads the activity nodes below the activities node the provided reader is positioned at and adds their definitions to 
+	 * the given list. The reader is left at the end of the activities node
+	 * @param reader
+	 * @param result
+	 * @throws XMLStreamException
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected void parseActivityDefinitions(XMLStreamReader reader, List<ActivityDefinition> result) throws XMLStreamException, TSPlanConfigurationFormatException {
+		
+		while(nextChildElement(reader)) {
+			
+			ActivityDefinition definition = new ActivityDefinition();
+			definition.id = getAttribute(reader, TEST_PLAN_ACTIVITY_ID_ATTRIBUTE);
+			definition.name = getAttribute(reader, TEST_PLAN_ACTIVITY_NAME_ATTRIBUTE);
+			definition.useGlobalConfig = getAttribute(reader, TEST_PLAN_ACTIVITY_USE_GLOBAL_CONFIG_ATTRIBUTE);
+			definition.contextExportVariables = new HashMap<String, String>();
+			
+			// like the xpath expressions applied to documents, the first node of each kind is used - except for the configuration 
+			// and the export variables which are ignored if provided more than once
+			int configurationNodes = 0;
+			int contextExportNodes = 0;
+			while(nextChildElement(reader)) {
+				String nodeName = reader.getLocalName();
+				if(XPATH_EXPRESSION_ACTIVITY_CLASS_NODE.equals(nodeName) && definition.className == null) {
+					definition.className = readElementText(reader);
+				} else if(XPATH_EXPRESSION_ACTIVITY_DESCRIPTION_NODE.equals(nodeName) && definition.description == null) {
+					definition.description = readElementText(reader);
+				} else if(XPATH_EXPRESSION_ACTIVITY_NEXT_ACTIVITY.equals(nodeName) && definition.nextActivity == null) {
+					definition.nextActivity = readElementText(reader);
+				} else if(XPATH_EXPRESSION_ACTIVITY_NEXT_ACTIVITY_EXPRESSION.equals(nodeName) && definition.nextActivityExpression == null) {
+					definition.nextActivityExpression = readElementText(reader);
+				} else if(XPATH_EXPRESSION_ACTIVITY_CONFIGURATION_NODES.equals(nodeName)) {
+					configurationNodes = configurationNodes + 1;
+					if(configurationNodes == 1) {
+						definition.configOptions = configOptionsParser.parseConfigurationElement(reader, definition.name);
+					} else {
+						definition.configOptions = null;
+						skipElement(reader);
+					}
+				} else if(XPATH_EXPRESSION_ACTIVITY_CONTEXT_RESULT_VARIABLES.equals(nodeName)) {
+					contextExportNodes = contextExportNodes + 1;
+					if(contextExportNodes == 1) {
+						while(nextChildElement(reader))
+							definition.contextExportVariables.put(reader.getLocalName(), readSimpleText(reader));
+					} else {
+						definition.contextExportVariables.clear();
+						skipElement(reader);
+					}
+				} else {
+					skipElement(reader);
+				}
+			}
+			
+			// missing nodes are treated like empty ones - as done by the xpath expressions
+			if(definition.className == null)
+				definition.className = "";
+			if(definition.description == null)
+				definition.description = "";
+			if(definition.nextActivity == null)
+				definition.nextActivity = "";
+			result.add(definition);
+		}
+	}
+	
+	/**
+	 * Instantiates and initializes the activity described by the provided definition. If the activity references a global configuration
+	 * option, it must be contained in the provided map
+	 * @param definition
+	 * @param globalOptions
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected TSPlanActivity createActivity(ActivityDefinition definition, Map<String, TSPlanConfigOption> globalOptions) throws TSPlanConfigurationFormatException {
+		
+		try {
+			TSPlanActivity activity = getActivityParserInstance(definition.className);
+			activity.setId(definition.id);
+			activity.setClassName(definition.className);
+			activity.setContextExportVariables(definition.contextExportVariables);
+			activity.setDescription(definition.description);
+			activity.setName(definition.name);
+			activity.setNextActivity(definition.nextActivity);
+			if(definition.nextActivityExpression != null && !definition.nextActivityExpression.trim().isEmpty())
+				activity.setNextActivityExpression(definition.nextActivityExpression.trim());
+			if(definition.useGlobalConfig != null && !definition.useGlobalConfig.isEmpty()) {
+				TSPlanConfigOption cfgOpt = globalOptions.get(definition.useGlobalConfig);
+				if(cfgOpt == null)
+					throw new TSPlanConfigurationFormatException("No such global configuration option found for name '"+definition.useGlobalConfig+"'");
+				activity.initialize(cfgOpt);
+			} else {
+				activity.initialize(definition.configOptions);
+			}
+			
+			if(logger.isDebugEnabled())
+				logger.debug("Parsed activity: [id="+definition.id+", name="+definition.name+", class="+definition.className+", useGlobalCfg="+definition.useGlobalConfig+", ctxExportVars="+definition.contextExportVariables.size()+", nextActivity="+definition.nextActivity+", nextActivityExpression="+definition.nextActivityExpression+", description="+definition.description+"]");
+			
+			return activity;
+		} catch (TSPlanInstantiationException e) {
+			throw new TSPlanConfigurationFormatException("Failed to instantiate a referenced activity. Error: " + e.getMessage(), e);				
+		} catch (TSPlanActivityExecutionException e) {
+			throw new TSPlanConfigurationFormatException("Failed to post initialize activity instance ('"+definition.name+"'). Error: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Moves the reader to the next start element and returns true. If the document ends before, the method returns false
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static boolean nextStartElement(XMLStreamReader reader) throws XMLStreamException {
+		while(reader.hasNext()) {
+			if(reader.next() == XMLStreamConstants.START_ELEMENT)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Moves the reader to the start of the next child of the current element and returns true. If the current element ends before, 
+	 * the reader is left at its end and the method returns false. Child elements must be consumed completely by the caller 
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+		for(int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+			if(event == XMLStreamConstants.START_ELEMENT)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Skips the element the reader is positioned at including all its children. The reader is left at the end of the element
+	 * @param reader
+	 * @throws XMLStreamException
+	 */
+	public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while(depth > 0) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+				depth = depth + 1;
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				depth = depth - 1;
+		}
+	}
+	
+	/**
+	 * Returns the text contained in the element the reader is positioned at, including the text of all nested elements - equal 
+	 * to the string value of the element as returned by an xpath expression. The reader is left at the end of the element
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static String readElementText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while(depth > 0) {
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+				depth = depth + 1;
+			else if(event == XMLStreamConstants.END_ELEMENT)
+				depth = depth - 1;
+			else if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE)
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+		}
+		return text.toString();
+	}
+	
+	/**
+	 * Returns the text directly contained in the element the reader is positioned at or null if there is none. Nested elements
+	 * are skipped. The reader is left at the end of the element 
+	 * @param reader
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	public static String readSimpleText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder text = null;
+		for(int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				skipElement(reader);
+			} else if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+				if(text == null)
+					text = new StringBuilder();
+				text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+			}
+		}
+		return (text != null ? text.toString() : null);
+	}
+	
+	/**
+	 * Returns the value of the named attribute of the element the reader is positioned at - an empty string if there is no such attribute 
+	 * @param reader
+	 * @param attributeName
+	 * @return
+	 */
+	public static String getAttribute(XMLStreamReader reader, String attributeName) {
+		String value = reader.getAttributeValue(null, attributeName);
+		return (value != null ? value : "");
+	}
+	
 	/**
 	 * Returns an instance of type {@link TSPlanActivity activity} 
 	 * @param activityParser
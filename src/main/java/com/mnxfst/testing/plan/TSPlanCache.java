@@ -0,0 +1,265 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+
+/**
+ * Keeps parsed and validated {@link TSPlan test plans} referenced by the hash of their configuration content. Requesting a plan
+ * whose content has been seen before returns the cached instance, thus neither parsing nor activity initialization is repeated 
+ * and resources held by the activities (eg. connection pools) carry over between executions. If the capacity is exceeded, the 
+ * least recently used plan is evicted. The activities of cached plans are shut down when the plan is evicted or removed rather than 
+ * after each execution - and not before the last execution {@link TSPlan#acquireExecution() acquired} on the plan has finished
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanCache {
+
+	private static final Logger logger = Logger.getLogger(TSPlanCache.class);
+	
+	/** default number of plans kept */
+	public static final int DEFAULT_CAPACITY = 32;
+	/** algorithm used for computing content hashes */
+	private static final String CONTENT_HASH_ALGORITHM = "SHA-1";
+	/** encoding used for converting plan contents into bytes */
+	private static final String CONTENT_ENCODING = "UTF-8";
+	
+	/** max. number of plans kept */
+	private final int capacity;
+	/** cached plans, ordered by access - the least recently used one goes first */
+	private final LinkedHashMap<String, TSPlan> plans;
+	/** plans evicted while holding the lock - released after the lock has been left */
+	private final List<TSPlan> evictedPlans = new ArrayList<TSPlan>();
+	/** number of requests answered from the cache */
+	private long hits = 0;
+	/** number of requests which required the plan to be parsed */
+	private long misses = 0;
+	
+	/**
+	 * Initializes the cache using the {@link #DEFAULT_CAPACITY default capacity}
+	 */
+	public TSPlanCache() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Initializes the cache using the provided capacity
+	 * @param capacity
+	 */
+	public TSPlanCache(int capacity) {
+		if(capacity < 1)
+			throw new IllegalArgumentException("Invalid cache capacity: " + capacity + ". Values greater 0 are expected");
+		this.capacity = capacity;
+		this.plans = new LinkedHashMap<String, TSPlan>(16, 0.75f, true) {
+			private static final long serialVersionUID = -6412938510284726125L;
+			protected boolean removeEldestEntry(Map.Entry<String, TSPlan> eldest) {
+				boolean evict = size() > TSPlanCache.this.capacity;
+				if(evict) {
+					if(logger.isDebugEnabled())
+						logger.debug("Evicting test plan '" + eldest.getValue().getName() + "' [hash=" + eldest.getKey() + "]");
+					evictedPlans.add(eldest.getValue());
+				}
+				return evict;
+			}
+		};
+	}
+	
+	/**
+	 * Returns the plan built from the provided configuration. If the configuration has been requested before and the plan has not
+	 * been evicted yet, the cached instance is returned, otherwise the configuration is parsed and the resulting plan is cached. 
+	 * Plans are shared between all callers, thus settings must not be modified on the returned instance - use {@link TSPlan#copy()}.
+	 * Executions must {@link TSPlan#acquireExecution() acquire} the plan, which fails if it has been evicted meanwhile
+	 * @param testPlanConfiguration
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 * @throws TSPlanInstantiationException
+	 * @throws TSPlanActivityExecutionException
+	 */
+	public TSPlan getPlan(String testPlanConfiguration) throws TSPlanConfigurationFormatException, TSPlanInstantiationException, TSPlanActivityExecutionException {
+		
+		if(testPlanConfiguration == null || testPlanConfiguration.isEmpty())
+			throw new TSPlanConfigurationFormatException("No test plan configuration provided");
+		
+		byte[] content = null;
+		try {
+			content = testPlanConfiguration.getBytes(CONTENT_ENCODING);
+		} catch(UnsupportedEncodingException e) {
+			throw new TSPlanConfigurationFormatException("Failed to encode test plan configuration. Error: " + e.getMessage(), e);
+		}
+		String contentHash = computeContentHash(content);
+		
+		synchronized(plans) {
+			TSPlan plan = plans.get(contentHash);
+			if(plan != null) {
+				hits = hits + 1;
+				return plan;
+			}
+			misses = misses + 1;
+		}
+		
+		// the plan is parsed outside the lock as it may take a while - if another caller parsed the same plan meanwhile, its 
+		// instance wins in order to keep a single set of activity resources per plan 
+		TSPlan plan = TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(content));
+		plan.setShared(true);
+		TSPlan cachedPlan = null;
+		List<TSPlan> evicted = null;
+		synchronized(plans) {
+			cachedPlan = plans.get(contentHash);
+			if(cachedPlan == null)
+				plans.put(contentHash, plan);
+			evicted = drainEvictedPlans();
+		}
+		releasePlans(evicted);
+		if(cachedPlan != null) {
+			plan.shutdownActivities();
+			return cachedPlan;
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("Cached test plan '" + plan.getName() + "' [hash=" + contentHash + "]");
+		
+		return plan;
+	}
+	
+	/**
+	 * Returns the cached plan referenced by the given content hash or null if there is none
+	 * @param contentHash
+	 * @return
+	 */
+	public TSPlan getPlanByHash(String contentHash) {
+		synchronized(plans) {
+			return plans.get(contentHash);
+		}
+	}
+	
+	/**
+	 * Removes the plan referenced by the given content hash and returns it - null if there is none
+	 * @param contentHash
+	 * @return
+	 */
+	public TSPlan removePlan(String contentHash) {
+		TSPlan plan = null;
+		synchronized(plans) {
+			plan = plans.remove(contentHash);
+		}
+		if(plan != null)
+			plan.release(null);
+		return plan;
+	}
+	
+	/**
+	 * Removes all plans
+	 */
+	public void clear() {
+		List<TSPlan> removed = null;
+		synchronized(plans) {
+			removed = new ArrayList<TSPlan>(plans.values());
+			plans.clear();
+		}
+		releasePlans(removed);
+	}
+	
+	/**
+	 * Returns the plans evicted since the last call and resets the list - must be called while holding the lock
+	 * @return
+	 */
+	private List<TSPlan> drainEvictedPlans() {
+		if(evictedPlans.isEmpty())
+			return null;
+		List<TSPlan> evicted = new ArrayList<TSPlan>(evictedPlans);
+		evictedPlans.clear();
+		return evicted;
+	}
+	
+	/**
+	 * Releases the given plans - must not be called while holding the lock 
+	 * @param plans
+	 */
+	private void releasePlans(List<TSPlan> plans) {
+		if(plans != null) {
+			for(TSPlan plan : plans)
+				plan.release(null);
+		}
+	}
+	
+	/**
+	 * Computes the hash used for referencing the plan built from the given configuration content
+	 * @param content
+	 * @return
+	 */
+	public static String computeContentHash(byte[] content) {
+		try {
+			return new String(Hex.encodeHex(MessageDigest.getInstance(CONTENT_HASH_ALGORITHM).digest(content)));
+		} catch(NoSuchAlgorithmException e) {
+			// each java platform is required to support SHA-1
+			throw new RuntimeException("Content hash algorithm not supported: " + CONTENT_HASH_ALGORITHM, e);
+		}
+	}
+	
+	public int size() {
+		synchronized(plans) {
+			return plans.size();
+		}
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public long getHits() {
+		synchronized(plans) {
+			return hits;
+		}
+	}
+
+	public long getMisses() {
+		synchronized(plans) {
+			return misses;
+		}
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		synchronized(plans) {
+			return new ToStringBuilder(this)
+					.append("capacity", this.capacity)
+					.append("size", this.plans.size())
+					.append("hits", this.hits)
+					.append("misses", this.misses).toString();
+		}
+	}
+}
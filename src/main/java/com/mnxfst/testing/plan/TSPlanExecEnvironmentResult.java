@@ -20,13 +20,19 @@
 package com.mnxfst.testing.plan;
 
 import java.io.Serializable;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 
 import com.mnxfst.testing.plan.exec.TSPlanExecEnvironment;
 import com.mnxfst.testing.plan.exec.TSPlanExecutor;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStageStatistics;
 
 /**
  * Contains the consolidated {@link TSPlanExecutorResult results} of the {@link TSPlanExecutor executors} controlled by 
@@ -48,8 +54,20 @@ public class TSPlanExecEnvironmentResult implements Serializable {
 	private long endMillis = 0;
 	/** average test plan execution */
 	private long averageDurationMillis = 0;
-	/** average duration median */
+	/** median of single run durations computed for all executors */
 	private double averageDurationMedian = 0;
+	/** distribution of single run durations (nanoseconds) merged from all executors */
+	private TSLatencyHistogram singleRunDurationHistogram = null;
+	/** distribution of single run durations (nanoseconds) measured from the intended start of each run, merged from all executors */
+	private TSLatencyHistogram correctedSingleRunDurationHistogram = null;
+	/** execution statistics for each activity (by name) merged from all executors */
+	private Map<String, TSPlanActivityStatistics> activityStatistics = new HashMap<String, TSPlanActivityStatistics>();
+	/** statistics for each load profile stage (by name, in order of execution) merged from all executors - empty if no load profile has been applied */
+	private Map<String, TSPlanStageStatistics> stageStatistics = new LinkedHashMap<String, TSPlanStageStatistics>();
+	/** distribution of single run durations (nanoseconds) recorded during the warm-up, merged from all executors - null if no warm-up has been configured */
+	private TSLatencyHistogram warmUpDurationHistogram = null;
+	/** number of activities which failed to execute during the warm-up */
+	private int warmUpErrors = 0;
 	/** max test plan execution for all recurrences */
 	private long maxDurationMillis = 0;
 	/** min test plan execution for all recurrences */
@@ -60,6 +78,14 @@ public class TSPlanExecEnvironmentResult implements Serializable {
 	private long singleRunExecutionDurationMin = Long.MAX_VALUE;
 	/** max test plan execution for a single run computed for all executors */
 	private long singleRunExecutionDurationMax = 0;
+	/** target arrival rate (iterations per second) - 0 if the plan has been executed following the closed model */
+	private double arrivalRate = 0;
+	/** number of iterations scheduled at the target arrival rate */
+	private long scheduledIterations = 0;
+	/** number of scheduled iterations started late as all executors were busy */
+	private long delayedIterations = 0;
+	/** number of scheduled iterations dropped as all executors were busy */
+	private long droppedIterations = 0;
 	private int errors = 0;
 	private Set<String> executorIds = new HashSet<String>();
 
@@ -187,6 +213,156 @@ public class TSPlanExecEnvironmentResult implements Serializable {
 		this.averageDurationMedian = averageDurationMedian;
 	}
 
+	public double getArrivalRate() {
+		return arrivalRate;
+	}
+
+	public void setArrivalRate(double arrivalRate) {
+		this.arrivalRate = arrivalRate;
+	}
+
+	public long getScheduledIterations() {
+		return scheduledIterations;
+	}
+
+	public void setScheduledIterations(long scheduledIterations) {
+		this.scheduledIterations = scheduledIterations;
+	}
+
+	public long getDelayedIterations() {
+		return delayedIterations;
+	}
+
+	public void setDelayedIterations(long delayedIterations) {
+		this.delayedIterations = delayedIterations;
+	}
+
+	public long getDroppedIterations() {
+		return droppedIterations;
+	}
+
+	public void setDroppedIterations(long droppedIterations) {
+		this.droppedIterations = droppedIterations;
+	}
+
+	/**
+	 * @return the distribution of single run durations (nanoseconds) merged from all executors
+	 */
+	public TSLatencyHistogram getSingleRunDurationHistogram() {
+		return singleRunDurationHistogram;
+	}
+
+	/**
+	 * @param singleRunDurationHistogram the merged distribution of single run durations (nanoseconds) to set
+	 */
+	public void setSingleRunDurationHistogram(TSLatencyHistogram singleRunDurationHistogram) {
+		this.singleRunDurationHistogram = singleRunDurationHistogram;
+	}
+
+	/**
+	 * @return the distribution of single run durations (nanoseconds) measured from the intended start of each run, merged from all executors
+	 */
+	public TSLatencyHistogram getCorrectedSingleRunDurationHistogram() {
+		return correctedSingleRunDurationHistogram;
+	}
+
+	/**
+	 * @param correctedSingleRunDurationHistogram the merged distribution of single run durations (nanoseconds) measured from the intended start of each run to set
+	 */
+	public void setCorrectedSingleRunDurationHistogram(TSLatencyHistogram correctedSingleRunDurationHistogram) {
+		this.correctedSingleRunDurationHistogram = correctedSingleRunDurationHistogram;
+	}
+
+	/**
+	 * Adds the given activity statistics to the statistics kept for the same activity
+	 * @param statistics
+	 */
+	public void addActivityStatistics(TSPlanActivityStatistics statistics) {
+		if(statistics == null)
+			return;
+		TSPlanActivityStatistics merged = this.activityStatistics.get(statistics.getActivityName());
+		if(merged == null)
+			this.activityStatistics.put(statistics.getActivityName(), statistics.copy());
+		else
+			merged.add(statistics);
+	}
+
+	/**
+	 * @return the execution statistics for each activity (by name) merged from all executors
+	 */
+	public Map<String, TSPlanActivityStatistics> getActivityStatistics() {
+		return activityStatistics;
+	}
+
+	public void setActivityStatistics(Map<String, TSPlanActivityStatistics> activityStatistics) {
+		this.activityStatistics = activityStatistics;
+	}
+
+	/**
+	 * Adds the given stage statistics to the statistics kept for the same stage
+	 * @param statistics
+	 */
+	public void addStageStatistics(TSPlanStageStatistics statistics) {
+		if(statistics == null)
+			return;
+		TSPlanStageStatistics merged = this.stageStatistics.get(statistics.getStageName());
+		if(merged == null)
+			this.stageStatistics.put(statistics.getStageName(), statistics.copy());
+		else
+			merged.add(statistics);
+	}
+
+	/**
+	 * @return the statistics for each load profile stage (by name, in order of execution) merged from all executors
+	 */
+	public Map<String, TSPlanStageStatistics> getStageStatistics() {
+		return stageStatistics;
+	}
+
+	public void setStageStatistics(Map<String, TSPlanStageStatistics> stageStatistics) {
+		this.stageStatistics = stageStatistics;
+	}
+
+	/**
+	 * @return the distribution of single run durations (nanoseconds) recorded during the warm-up, merged from all executors
+	 */
+	public TSLatencyHistogram getWarmUpDurationHistogram() {
+		return warmUpDurationHistogram;
+	}
+
+	/**
+	 * @param warmUpDurationHistogram the merged distribution of single run durations (nanoseconds) recorded during the warm-up to set
+	 */
+	public void setWarmUpDurationHistogram(TSLatencyHistogram warmUpDurationHistogram) {
+		this.warmUpDurationHistogram = warmUpDurationHistogram;
+	}
+
+	public int getWarmUpErrors() {
+		return warmUpErrors;
+	}
+
+	public void setWarmUpErrors(int warmUpErrors) {
+		this.warmUpErrors = warmUpErrors;
+	}
+
+	/**
+	 * Returns the single run duration (nanoseconds) measured from the intended start found at the given percentile across all executors or 0 if no histogram is attached
+	 * @param percentile
+	 * @return
+	 */
+	public long getCorrectedSingleRunDurationAtPercentile(double percentile) {
+		return (correctedSingleRunDurationHistogram != null ? correctedSingleRunDurationHistogram.getValueAtPercentile(percentile) : 0);
+	}
+
+	/**
+	 * Returns the single run duration (nanoseconds) found at the given percentile across all executors or 0 if no histogram is attached
+	 * @param percentile
+	 * @return
+	 */
+	public long getSingleRunDurationAtPercentile(double percentile) {
+		return (singleRunDurationHistogram != null ? singleRunDurationHistogram.getValueAtPercentile(percentile) : 0);
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -203,6 +379,24 @@ public class TSPlanExecEnvironmentResult implements Serializable {
 				.append("singleRunExecutionDurationMin", this.singleRunExecutionDurationMin)
 				.append("singleRunExecutionDurationMax", this.singleRunExecutionDurationMax)
 				.append("averageDurationMedian", this.averageDurationMedian)
+				.append("p50Nanos", getSingleRunDurationAtPercentile(50.0))
+				.append("p90Nanos", getSingleRunDurationAtPercentile(90.0))
+				.append("p99Nanos", getSingleRunDurationAtPercentile(99.0))
+				.append("p999Nanos", getSingleRunDurationAtPercentile(99.9))
+				.append("p9999Nanos", getSingleRunDurationAtPercentile(99.99))
+				.append("maxNanos", (singleRunDurationHistogram != null ? singleRunDurationHistogram.getMaxValue() : 0))
+				.append("correctedP50Nanos", getCorrectedSingleRunDurationAtPercentile(50.0))
+				.append("correctedP99Nanos", getCorrectedSingleRunDurationAtPercentile(99.0))
+				.append("correctedP999Nanos", getCorrectedSingleRunDurationAtPercentile(99.9))
+				.append("correctedMaxNanos", (correctedSingleRunDurationHistogram != null ? correctedSingleRunDurationHistogram.getMaxValue() : 0))
+				.append("activityStatistics", this.activityStatistics)
+				.append("stageStatistics", this.stageStatistics)
+				.append("warmUpRuns", (warmUpDurationHistogram != null ? warmUpDurationHistogram.getTotalCount() : 0))
+				.append("warmUpErrors", this.warmUpErrors)
+				.append("arrivalRate", this.arrivalRate)
+				.append("scheduledIterations", this.scheduledIterations)
+				.append("delayedIterations", this.delayedIterations)
+				.append("droppedIterations", this.droppedIterations)
 				.append("errors", this.errors)
 				.append("executorIds", this.executorIds).toString();
 				
@@ -20,9 +20,16 @@
 package com.mnxfst.testing.plan;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStageStatistics;
+
 
 /**
  * Holds the result of a {@link TSPlan} execution. Beside basic timing information the context of a single
@@ -55,6 +62,18 @@ public class TSPlanExecutorResult implements Serializable {
 	private long singleRunExecutionDurationMax = 0;	
 	/** duration median */
 	private double durationMedian = 0;
+	/** distribution of single run durations (nanoseconds) */
+	private TSLatencyHistogram singleRunDurationHistogram = null;
+	/** distribution of single run durations (nanoseconds) measured from the intended start of each run - corrected for coordinated omission */
+	private TSLatencyHistogram correctedSingleRunDurationHistogram = null;
+	/** execution statistics for each activity (by name) */
+	private Map<String, TSPlanActivityStatistics> activityStatistics = new HashMap<String, TSPlanActivityStatistics>();
+	/** statistics for each load profile stage (by name, in order of execution) - empty if no load profile has been applied */
+	private Map<String, TSPlanStageStatistics> stageStatistics = new LinkedHashMap<String, TSPlanStageStatistics>();
+	/** distribution of single run durations (nanoseconds) recorded during the warm-up - null if no warm-up has been configured */
+	private TSLatencyHistogram warmUpDurationHistogram = null;
+	/** number of activities which failed to execute during the warm-up */
+	private int warmUpErrors = 0;
 	
 	private int errors = 0;
 	
@@ -174,6 +193,144 @@ public class TSPlanExecutorResult implements Serializable {
 		this.durationMedian = durationMedian;
 	}
 
+	/**
+	 * @return the distribution of single run durations (nanoseconds)
+	 */
+	public TSLatencyHistogram getSingleRunDurationHistogram() {
+		return singleRunDurationHistogram;
+	}
+
+	/**
+	 * @param singleRunDurationHistogram the distribution of single run durations (nanoseconds) to set
+	 */
+	public void setSingleRunDurationHistogram(TSLatencyHistogram singleRunDurationHistogram) {
+		this.singleRunDurationHistogram = singleRunDurationHistogram;
+	}
+	
+	/**
+	 * @return the distribution of single run durations (nanoseconds) measured from the intended start of each run
+	 */
+	public TSLatencyHistogram getCorrectedSingleRunDurationHistogram() {
+		return correctedSingleRunDurationHistogram;
+	}
+
+	/**
+	 * @param correctedSingleRunDurationHistogram the distribution of single run durations (nanoseconds) measured from the intended start of each run to set
+	 */
+	public void setCorrectedSingleRunDurationHistogram(TSLatencyHistogram correctedSingleRunDurationHistogram) {
+		this.correctedSingleRunDurationHistogram = correctedSingleRunDurationHistogram;
+	}
+	
+	/**
+	 * @return the execution statistics for each activity (by name)
+	 */
+	public Map<String, TSPlanActivityStatistics> getActivityStatistics() {
+		return activityStatistics;
+	}
+
+	/**
+	 * @param activityStatistics the execution statistics for each activity (by name) to set
+	 */
+	public void setActivityStatistics(Map<String, TSPlanActivityStatistics> activityStatistics) {
+		this.activityStatistics = activityStatistics;
+	}
+	
+	/**
+	 * @return the statistics for each load profile stage (by name, in order of execution)
+	 */
+	public Map<String, TSPlanStageStatistics> getStageStatistics() {
+		return stageStatistics;
+	}
+
+	/**
+	 * @param stageStatistics the statistics for each load profile stage (by name, in order of execution) to set
+	 */
+	public void setStageStatistics(Map<String, TSPlanStageStatistics> stageStatistics) {
+		this.stageStatistics = stageStatistics;
+	}
+	
+	/**
+	 * @return the distribution of single run durations (nanoseconds) recorded during the warm-up
+	 */
+	public TSLatencyHistogram getWarmUpDurationHistogram() {
+		return warmUpDurationHistogram;
+	}
+
+	/**
+	 * @param warmUpDurationHistogram the distribution of single run durations (nanoseconds) recorded during the warm-up to set
+	 */
+	public void setWarmUpDurationHistogram(TSLatencyHistogram warmUpDurationHistogram) {
+		this.warmUpDurationHistogram = warmUpDurationHistogram;
+	}
+
+	public int getWarmUpErrors() {
+		return warmUpErrors;
+	}
+
+	public void setWarmUpErrors(int warmUpErrors) {
+		this.warmUpErrors = warmUpErrors;
+	}
+	
+	/**
+	 * Returns the single run duration (nanoseconds) measured from the intended start found at the given percentile or 0 if no histogram is attached
+	 * @param percentile
+	 * @return
+	 */
+	public long getCorrectedSingleRunDurationAtPercentile(double percentile) {
+		return (correctedSingleRunDurationHistogram != null ? correctedSingleRunDurationHistogram.getValueAtPercentile(percentile) : 0);
+	}
+
+	/**
+	 * Returns the single run duration (nanoseconds) found at the given percentile or 0 if no histogram is attached
+	 * @param percentile
+	 * @return
+	 */
+	public long getSingleRunDurationAtPercentile(double percentile) {
+		return (singleRunDurationHistogram != null ? singleRunDurationHistogram.getValueAtPercentile(percentile) : 0);
+	}
+
+	/**
+	 * @return 50th percentile of single run durations (nanoseconds)
+	 */
+	public long getSingleRunDurationP50() {
+		return getSingleRunDurationAtPercentile(50.0);
+	}
+
+	/**
+	 * @return 90th percentile of single run durations (nanoseconds)
+	 */
+	public long getSingleRunDurationP90() {
+		return getSingleRunDurationAtPercentile(90.0);
+	}
+
+	/**
+	 * @return 99th percentile of single run durations (nanoseconds)
+	 */
+	public long getSingleRunDurationP99() {
+		return getSingleRunDurationAtPercentile(99.0);
+	}
+
+	/**
+	 * @return 99.9th percentile of single run durations (nanoseconds)
+	 */
+	public long getSingleRunDurationP999() {
+		return getSingleRunDurationAtPercentile(99.9);
+	}
+
+	/**
+	 * @return 99.99th percentile of single run durations (nanoseconds)
+	 */
+	public long getSingleRunDurationP9999() {
+		return getSingleRunDurationAtPercentile(99.99);
+	}
+
+	/**
+	 * @return max single run duration (nanoseconds)
+	 */
+	public long getSingleRunDurationMaxNanos() {
+		return (singleRunDurationHistogram != null ? singleRunDurationHistogram.getMaxValue() : 0);
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -189,6 +346,20 @@ public class TSPlanExecutorResult implements Serializable {
 				.append("singleRunExecutionDurationMax", this.singleRunExecutionDurationMax)
 				.append("singleRunExecutionDurationAverage", this.singleRunExecutionDurationAverage)
 				.append("durationMedian", this.durationMedian)
+				.append("p50Nanos", getSingleRunDurationP50())
+				.append("p90Nanos", getSingleRunDurationP90())
+				.append("p99Nanos", getSingleRunDurationP99())
+				.append("p999Nanos", getSingleRunDurationP999())
+				.append("p9999Nanos", getSingleRunDurationP9999())
+				.append("maxNanos", getSingleRunDurationMaxNanos())
+				.append("correctedP50Nanos", getCorrectedSingleRunDurationAtPercentile(50.0))
+				.append("correctedP99Nanos", getCorrectedSingleRunDurationAtPercentile(99.0))
+				.append("correctedP999Nanos", getCorrectedSingleRunDurationAtPercentile(99.9))
+				.append("correctedMaxNanos", (correctedSingleRunDurationHistogram != null ? correctedSingleRunDurationHistogram.getMaxValue() : 0))
+				.append("activityStatistics", this.activityStatistics)
+				.append("stageStatistics", this.stageStatistics)
+				.append("warmUpRuns", (warmUpDurationHistogram != null ? warmUpDurationHistogram.getTotalCount() : 0))
+				.append("warmUpErrors", this.warmUpErrors)
 				.append("errors", this.errors).toString();
 				
 	}
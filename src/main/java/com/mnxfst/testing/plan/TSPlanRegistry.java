@@ -0,0 +1,303 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+
+/**
+ * Keeps {@link TSPlan test plans} uploaded once and executed any number of times afterwards. Each plan is referenced by the hash of
+ * the uploaded content, thus uploading the same content again returns the identifier of the already registered plan. Next to plain
+ * test plan configurations, the registry accepts zip bundles which contain the plan configuration as {@link #BUNDLE_PLAN_ENTRY} 
+ * along with any number of data files. The data files are extracted into a plan specific directory below the registry's data 
+ * directory. Contrary to the {@link TSPlanCache}, registered plans are kept until they are removed explicitly - their activities are
+ * shut down and their data files are deleted on removal, but not before the last running execution has finished
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanRegistry {
+
+	private static final Logger logger = Logger.getLogger(TSPlanRegistry.class);
+	
+	/** name of the bundle entry holding the test plan configuration */
+	public static final String BUNDLE_PLAN_ENTRY = "testplan.xml";
+	/** leading bytes of each zip archive */
+	private static final byte[] ZIP_SIGNATURE = new byte[]{'P', 'K', 3, 4};
+	/** separates the plan identifier from the sequence number in the name of a staging directory */
+	private static final String STAGING_DIRECTORY_SEPARATOR = ".staging-";
+
+	/** directory holding the data files extracted from uploaded bundles */
+	private final File dataDirectory;
+	/** registered plans referenced by the hash of the uploaded content */
+	private final Map<String, TSPlan> plans = new HashMap<String, TSPlan>();
+	/** directories holding the data files of plans uploaded as bundle */
+	private final Map<String, File> planDataDirectories = new HashMap<String, File>();
+	/** provides unique names for the directories bundles are extracted into before being registered */
+	private final AtomicLong stagingSequence = new AtomicLong();
+	
+	/**
+	 * Initializes the registry using a directory below the system's temp directory for extracting bundles
+	 */
+	public TSPlanRegistry() {
+		this(new File(System.getProperty("java.io.tmpdir"), "ptest-server-plans"));
+	}
+	
+	/**
+	 * Initializes the registry using the provided directory for extracting bundles
+	 * @param dataDirectory
+	 */
+	public TSPlanRegistry(File dataDirectory) {
+		if(dataDirectory == null)
+			throw new IllegalArgumentException("No data directory provided");
+		this.dataDirectory = dataDirectory;
+	}
+	
+	/**
+	 * Registers the plan contained in the provided content - either a plain test plan configuration or a zip bundle - and returns 
+	 * its identifier. If the content has been registered before, the identifier of the existing plan is returned. The content is 
+	 * parsed outside the lock, if another caller registered the same content meanwhile, its plan wins 
+	 * @param content
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 * @throws TSPlanInstantiationException
+	 * @throws TSPlanActivityExecutionException
+	 */
+	public String registerPlan(byte[] content) throws TSPlanConfigurationFormatException, TSPlanInstantiationException, TSPlanActivityExecutionException {
+		
+		if(content == null || content.length < 1)
+			throw new TSPlanConfigurationFormatException("No test plan content provided");
+		
+		String planId = TSPlanCache.computeContentHash(content);
+		synchronized(this) {
+			if(plans.containsKey(planId))
+				return planId;
+		}
+
+		// bundles are extracted into a staging directory first as concurrent registrations of the same content must not interfere
+		TSPlan plan = null;
+		File stagingDirectory = null;
+		if(isBundle(content)) {
+			stagingDirectory = new File(dataDirectory, planId + STAGING_DIRECTORY_SEPARATOR + stagingSequence.incrementAndGet());
+			try {
+				byte[] planConfiguration = extractBundle(content, stagingDirectory);
+				plan = TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(planConfiguration));
+			} catch(TSPlanConfigurationFormatException e) {
+				FileUtils.deleteQuietly(stagingDirectory);
+				throw e;
+			} catch(TSPlanInstantiationException e) {
+				FileUtils.deleteQuietly(stagingDirectory);
+				throw e;
+			} catch(TSPlanActivityExecutionException e) {
+				FileUtils.deleteQuietly(stagingDirectory);
+				throw e;
+			}
+		} else {
+			plan = TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(content));
+		}
+		plan.setShared(true);
+		
+		boolean registered = false;
+		synchronized(this) {
+			if(!plans.containsKey(planId)) {
+				if(stagingDirectory != null) {
+					// the data files of a removed plan with the same identifier may still be in use, thus the staging directory is kept then 
+					File planDataDirectory = new File(dataDirectory, planId);
+					if(!stagingDirectory.renameTo(planDataDirectory))
+						planDataDirectory = stagingDirectory;
+					planDataDirectories.put(planId, planDataDirectory);
+				}
+				plans.put(planId, plan);
+				registered = true;
+			}
+		}
+		
+		if(!registered) {
+			plan.shutdownActivities();
+			if(stagingDirectory != null)
+				FileUtils.deleteQuietly(stagingDirectory);
+			return planId;
+		}
+		
+		if(logger.isDebugEnabled())
+			logger.debug("Registered test plan '" + plan.getName() + "' [id=" + planId + "]");
+		
+		return planId;
+	}
+	
+	/**
+	 * Returns the plan registered for the given identifier or null if there is none. Plans are shared between all callers, thus 
+	 * settings must not be modified on the returned instance - use {@link TSPlan#copy()}
+	 * @param planId
+	 * @return
+	 */
+	public synchronized TSPlan getPlan(String planId) {
+		return plans.get(planId);
+	}
+	
+	/**
+	 * Returns the directory holding the data files of the referenced plan. If the plan was not uploaded as bundle or if 
+	 * there is no such plan, the method returns null
+	 * @param planId
+	 * @return
+	 */
+	public synchronized File getPlanDataDirectory(String planId) {
+		return planDataDirectories.get(planId);
+	}
+	
+	/**
+	 * Removes the referenced plan along with its data files and returns it - null if there is none
+	 * @param planId
+	 * @return
+	 */
+	public TSPlan removePlan(String planId) {
+		TSPlan plan = null;
+		File planDataDirectory = null;
+		synchronized(this) {
+			plan = plans.remove(planId);
+			planDataDirectory = planDataDirectories.remove(planId);
+		}
+		
+		// running executions may still access the data files
+		final File releasedDataDirectory = planDataDirectory;
+		Runnable releaseTask = null;
+		if(releasedDataDirectory != null) {
+			releaseTask = new Runnable() {
+				public void run() {
+					FileUtils.deleteQuietly(releasedDataDirectory);
+				}
+			};
+		}
+		
+		if(plan != null)
+			plan.release(releaseTask);
+		else if(releaseTask != null)
+			releaseTask.run();
+		return plan;
+	}
+	
+	/**
+	 * Returns the identifiers of all registered plans
+	 * @return
+	 */
+	public synchronized Set<String> getPlanIdentifiers() {
+		return new TreeSet<String>(plans.keySet());
+	}
+	
+	public synchronized int size() {
+		return plans.size();
+	}
+
+	public File getDataDirectory() {
+		return dataDirectory;
+	}
+	
+	/**
+	 * Returns true if the provided content starts with the zip archive signature
+	 * @param content
+	 * @return
+	 */
+	protected static boolean isBundle(byte[] content) {
+		if(content == null || content.length < ZIP_SIGNATURE.length)
+			return false;
+		for(int i = 0; i < ZIP_SIGNATURE.length; i++) {
+			if(content[i] != ZIP_SIGNATURE[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Extracts the data files contained in the provided bundle into the given directory and returns the test plan configuration
+	 * @param bundle
+	 * @param planDataDirectory
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	protected byte[] extractBundle(byte[] bundle, File planDataDirectory) throws TSPlanConfigurationFormatException {
+		
+		byte[] planConfiguration = null;
+		ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(bundle));
+		try {
+			String canonicalDirectory = planDataDirectory.getCanonicalPath() + File.separator;
+			ZipEntry entry = null;
+			while((entry = zipStream.getNextEntry()) != null) {
+				
+				if(BUNDLE_PLAN_ENTRY.equals(entry.getName())) {
+					planConfiguration = IOUtils.toByteArray(zipStream);
+					continue;
+				}
+				
+				// entries must not escape the plan data directory
+				File file = new File(planDataDirectory, entry.getName());
+				if(!file.getCanonicalPath().startsWith(canonicalDirectory))
+					throw new TSPlanConfigurationFormatException("Invalid bundle entry: " + entry.getName());
+				
+				if(entry.isDirectory()) {
+					FileUtils.forceMkdir(file);
+				} else {
+					FileUtils.forceMkdir(file.getParentFile());
+					OutputStream out = new FileOutputStream(file);
+					try {
+						IOUtils.copy(zipStream, out);
+					} finally {
+						IOUtils.closeQuietly(out);
+					}
+				}
+			}
+		} catch(IOException e) {
+			throw new TSPlanConfigurationFormatException("Failed to extract test plan bundle. Error: " + e.getMessage(), e);
+		} finally {
+			IOUtils.closeQuietly(zipStream);
+		}
+		
+		if(planConfiguration == null)
+			throw new TSPlanConfigurationFormatException("Test plan bundle does not contain a '" + BUNDLE_PLAN_ENTRY + "' entry");
+		
+		return planConfiguration;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return new ToStringBuilder(this)
+				.append("dataDirectory", this.dataDirectory)
+				.append("plans", this.plans.keySet()).toString();
+	}
+}
@@ -19,6 +19,10 @@
 
 package com.mnxfst.testing.plan.config;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -105,6 +109,52 @@ public class TSPlanConfigOptionsBuilder {
 		
 		return option;		
 	}
+	
+	/**
+	 * Reads the configuration element the provided stream reader is positioned at. The element is validated the same way 
+	 * {@link #parseConfigurationNode(Node, String)} validates configuration nodes. The value of each option is the text directly 
+	 * contained in its element (character data and CDATA sections), null if there is none. The reader is left at the end of the 
+	 * configuration element
+	 * @param reader
+	 * @param defaultName
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	public TSPlanConfigOption parseConfigurationElement(XMLStreamReader reader, String defaultName) throws TSPlanConfigurationFormatException {
+		
+		// validate provided reader
+		if(reader == null || !reader.isStartElement())
+			throw new TSPlanConfigurationFormatException("Missing required configuration node");
+		
+		// validate name of current element
+		if(!TSPlanBuilder.TEST_PLAN_ACTIVITY_CONFIGURATION_NODE.equalsIgnoreCase(reader.getLocalName()))
+			throw new TSPlanConfigurationFormatException("Invalid node nam: " + reader.getLocalName() + ". Expected: " + TSPlanBuilder.TEST_PLAN_ACTIVITY_CONFIGURATION_NODE);
+		
+		String nameAttribute = reader.getAttributeValue(null, TSPlanBuilder.TEST_PLAN_CONFIGURATION_NAME_ATTRIBUTE);
+		String cfgOptionName = (nameAttribute != null ? nameAttribute : defaultName);
+		if(cfgOptionName == null || cfgOptionName.isEmpty())
+			throw new TSPlanConfigurationFormatException("The current configuration option either misses the name attribute or the caller did not provide a default value");
+
+		TSPlanConfigOption option = new TSPlanConfigOption();
+		option.setName(cfgOptionName.trim());
+
+		try {
+			boolean childNodes = false;
+			for(int event = reader.next(); event != XMLStreamConstants.END_ELEMENT; event = reader.next()) {
+				childNodes = true;
+				if(event == XMLStreamConstants.START_ELEMENT) {
+					String optionName = reader.getLocalName().trim();
+					option.addOption(optionName, TSPlanBuilder.readSimpleText(reader));
+				}
+			}
+			if(!childNodes)
+				throw new TSPlanConfigurationFormatException("No child nodes found for current configuration element");
+		} catch(XMLStreamException e) {
+			throw new TSPlanConfigurationFormatException("Failed to read configuration element '"+cfgOptionName+"'. Error: " + e.getMessage(), e);
+		}
+		
+		return option;
+	}
 
 	
 }
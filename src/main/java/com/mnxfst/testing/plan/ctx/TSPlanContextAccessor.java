@@ -0,0 +1,191 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
+/**
+ * Compiled chain of getter methods evaluated along a property path, eg. <i>address.street</i> for ${run.customer.address.street}. 
+ * The methods are resolved once for a (class, path) pair and kept in a cache shared by all executors, access checks are 
+ * suppressed where permitted. Evaluating the chain walks an array and neither allocates nor recurses 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanContextAccessor {
+
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	
+	/** accessors by (class, path) */
+	private static final ConcurrentMap<TSPlanContextAccessorKey, TSPlanContextAccessor> accessors = new ConcurrentHashMap<TSPlanContextAccessorKey, TSPlanContextAccessor>();
+	
+	/** type the chain starts from */
+	private final Class<?> type;
+	/** getter methods along the path */
+	private final Method[] getterMethods;
+	
+	/**
+	 * Initializes the accessor
+	 * @param type
+	 * @param getterMethods
+	 */
+	private TSPlanContextAccessor(Class<?> type, Method[] getterMethods) {
+		this.type = type;
+		this.getterMethods = getterMethods;
+	}
+	
+	/**
+	 * Returns the accessor evaluating the given getter methods starting from the provided type. Accessors are created once 
+	 * and shared afterwards
+	 * @param type
+	 * @param getterMethodNames
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case there is no such getter along the path
+	 */
+	public static TSPlanContextAccessor getAccessor(Class<?> type, String[] getterMethodNames) throws TSVariableEvaluationFailedException {
+		
+		TSPlanContextAccessorKey key = new TSPlanContextAccessorKey(type, getterMethodNames);
+		TSPlanContextAccessor accessor = accessors.get(key);
+		if(accessor == null) {
+			accessor = new TSPlanContextAccessor(type, resolveGetterMethods(type, getterMethodNames));
+			TSPlanContextAccessor existing = accessors.putIfAbsent(key, accessor);
+			if(existing != null)
+				accessor = existing;
+		}
+		return accessor;
+	}
+	
+	/**
+	 * Resolves the {@link Method method representations} for the given path of getter methods. Each getter is looked up on the
+	 * return type of its predecessor
+	 * @param type
+	 * @param getterMethodNames
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public static Method[] resolveGetterMethods(Class<?> type, String[] getterMethodNames) throws TSVariableEvaluationFailedException {
+		
+		if(type == null || getterMethodNames == null)
+			return new Method[0];
+		
+		Method[] methods = new Method[getterMethodNames.length];
+		Class<?> currentType = type;
+		for(int i = 0; i < getterMethodNames.length; i++) {
+			try {
+				methods[i] = currentType.getMethod(getterMethodNames[i]);
+			} catch(NoSuchMethodException e) {
+				throw new TSVariableEvaluationFailedException("No such getter '"+getterMethodNames[i]+"' for class " + currentType.getName());
+			}
+			
+			try {
+				methods[i].setAccessible(true);
+			} catch(RuntimeException e) {
+				// access checks remain active - the method is public anyway
+			}
+			currentType = methods[i].getReturnType();
+		}
+		return methods;
+	}
+	
+	/**
+	 * Evaluates the getter chain on the given input. If the input or any intermediate result is null, the method returns null
+	 * @param input
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public Object evaluate(Object input) throws TSVariableEvaluationFailedException {
+		
+		Object result = input;
+		for(int i = 0; i < getterMethods.length && result != null; i++) {
+			try {
+				result = getterMethods[i].invoke(result, NO_ARGUMENTS);
+			} catch (IllegalArgumentException e) {
+				throw new TSVariableEvaluationFailedException("Failed to evaluate method '"+getterMethods[i].getName()+"' on entity of type " + result.getClass().getName() + ". Error: " + e.getMessage());
+			} catch (IllegalAccessException e) {
+				throw new TSVariableEvaluationFailedException("Failed to evaluate method '"+getterMethods[i].getName()+"' on entity of type " + result.getClass().getName() + ". Error: " + e.getMessage());
+			} catch (InvocationTargetException e) {
+				throw new TSVariableEvaluationFailedException("Failed to evaluate method '"+getterMethods[i].getName()+"' on entity of type " + result.getClass().getName() + ". Error: " + e.getMessage());
+			}
+		}
+		return result;
+	}
+
+	public Class<?> getType() {
+		return type;
+	}
+
+	public Method[] getGetterMethods() {
+		return getterMethods;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("type", this.type)
+				.append("getterMethods", this.getterMethods).toString();
+	}
+	
+	/**
+	 * Identifies an accessor by the type it starts from and the names of the getter methods along the path
+	 * @author mnxfst
+	 */
+	private static final class TSPlanContextAccessorKey {
+		
+		private final Class<?> type;
+		private final String[] getterMethodNames;
+		private final int hashCode;
+		
+		public TSPlanContextAccessorKey(Class<?> type, String[] getterMethodNames) {
+			this.type = type;
+			this.getterMethodNames = (getterMethodNames != null ? getterMethodNames : new String[0]);
+			int hash = type.hashCode();
+			for(int i = 0; i < this.getterMethodNames.length; i++)
+				hash = 31 * hash + this.getterMethodNames[i].hashCode();
+			this.hashCode = hash;
+		}
+		
+		public int hashCode() {
+			return hashCode;
+		}
+		
+		public boolean equals(Object obj) {
+			if(this == obj)
+				return true;
+			if(!(obj instanceof TSPlanContextAccessorKey))
+				return false;
+			TSPlanContextAccessorKey other = (TSPlanContextAccessorKey)obj;
+			if(type != other.type || getterMethodNames.length != other.getterMethodNames.length)
+				return false;
+			for(int i = 0; i < getterMethodNames.length; i++) {
+				if(!getterMethodNames[i].equals(other.getterMethodNames[i]))
+					return false;
+			}
+			return true;
+		}
+	}
+}
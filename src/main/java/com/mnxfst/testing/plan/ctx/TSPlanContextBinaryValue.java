@@ -0,0 +1,39 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Context value providing its content as bytes, eg. a payload drawn from a memory-mapped corpus. {@link TSPlanContextByteTemplate Byte templates}
+ * write these bytes as they are instead of encoding the string representation of the value
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public interface TSPlanContextBinaryValue {
+
+	/**
+	 * Returns a view on the content. Each invocation returns a buffer of its own, thus readers do not affect each other. The 
+	 * content is not copied
+	 * @return
+	 */
+	public ChannelBuffer getBuffer();
+	
+}
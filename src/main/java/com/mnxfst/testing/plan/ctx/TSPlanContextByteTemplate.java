@@ -0,0 +1,193 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
+/**
+ * {@link TSPlanContextTemplate Template} rendered into bytes rather than strings. The literal segments are encoded once on 
+ * instantiation, rendering writes them along with the encoded placeholder values straight into a {@link ChannelBuffer}. Values
+ * consisting of ascii characters are written char by char if the charset is ascii compatible, thus rendering a template 
+ * usually creates no intermediate string or array at all. {@link TSPlanContextBinaryValue Binary values} are written as they are. 
+ * Placeholders evaluating to null are left as is
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanContextByteTemplate extends TSPlanContextTemplate {
+
+	/** charset the template and all values are encoded with */
+	private final Charset charset;
+	/** encoded literal segments */
+	private final byte[][] literalBytes;
+	/** encoded placeholders - written if a placeholder evaluates to null */
+	private final byte[][] placeholderBytes;
+	/** sum of all literal segment sizes */
+	private final int literalLength;
+	/** true if the charset encodes ascii characters as single bytes of the same value */
+	private final boolean asciiCompatible;
+	
+	public TSPlanContextByteTemplate(String template, Charset charset) {
+		super(template);
+		
+		if(charset == null)
+			throw new IllegalArgumentException("Required charset missing");
+		this.charset = charset;
+		this.asciiCompatible = isAsciiCompatible(charset);
+		
+		String[] literals = getLiterals();
+		this.literalBytes = new byte[literals.length][];
+		int length = 0;
+		for(int i = 0; i < literals.length; i++) {
+			literalBytes[i] = literals[i].getBytes(charset);
+			length = length + literalBytes[i].length;
+		}
+		this.literalLength = length;
+		
+		String[] placeholders = getPlaceholders();
+		this.placeholderBytes = new byte[placeholders.length][];
+		for(int i = 0; i < placeholders.length; i++)
+			placeholderBytes[i] = placeholders[i].getBytes(charset);
+	}
+	
+	/**
+	 * Returns true if the charset encodes all ascii characters as single bytes of the same value, eg. UTF-8 or ISO-8859-1
+	 * @param charset
+	 * @return
+	 */
+	protected static boolean isAsciiCompatible(Charset charset) {
+		char[] ascii = new char[128];
+		byte[] expected = new byte[128];
+		for(int i = 0; i < 128; i++) {
+			ascii[i] = (char)i;
+			expected[i] = (byte)i;
+		}
+		return Arrays.equals(expected, new String(ascii).getBytes(charset));
+	}
+	
+	/**
+	 * Renders the template into a new buffer sized for the literal segments plus some room for the values
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public ChannelBuffer renderBuffer(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		return renderBuffer(ctx, null);
+	}
+	
+	/**
+	 * Renders the template into the given buffer - or into a new one if none is provided - and returns the buffer holding the result. If 
+	 * the template consists of a single placeholder which evaluates to a {@link TSPlanContextBinaryValue binary value}, the view provided
+	 * by the value is returned instead, thus its content is not copied at all 
+	 * @param ctx
+	 * @param buffer
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public ChannelBuffer renderBuffer(TSPlanExecutionContext ctx, ChannelBuffer buffer) throws TSVariableEvaluationFailedException {
+		
+		if(placeholderBytes.length == 1 && literalLength == 0) {
+			Object value = evaluatePlaceholder(ctx, getPatterns(), 0);
+			if(value instanceof TSPlanContextBinaryValue)
+				return ((TSPlanContextBinaryValue)value).getBuffer();
+			
+			if(buffer == null)
+				buffer = ChannelBuffers.dynamicBuffer(64);
+			if(value != null)
+				writeValue(buffer, value);
+			else
+				buffer.writeBytes(placeholderBytes[0]);
+			return buffer;
+		}
+		
+		if(buffer == null)
+			buffer = ChannelBuffers.dynamicBuffer(literalLength + placeholderBytes.length * 16 + 16);
+		renderTo(ctx, buffer);
+		return buffer;
+	}
+	
+	/**
+	 * Appends the rendered template to the given buffer
+	 * @param ctx
+	 * @param buffer
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public void renderTo(TSPlanExecutionContext ctx, ChannelBuffer buffer) throws TSVariableEvaluationFailedException {
+		
+		TSPlanExecutionReplacementPattern[] compiledPatterns = getPatterns();
+		for(int i = 0; i < placeholderBytes.length; i++) {
+			buffer.writeBytes(literalBytes[i]);
+			
+			Object value = evaluatePlaceholder(ctx, compiledPatterns, i);
+			if(value != null)
+				writeValue(buffer, value);
+			else
+				buffer.writeBytes(placeholderBytes[i]);
+		}
+		buffer.writeBytes(literalBytes[placeholderBytes.length]);
+	}
+	
+	/**
+	 * Writes the encoded value to the given buffer
+	 * @param buffer
+	 * @param value
+	 */
+	protected void writeValue(ChannelBuffer buffer, Object value) {
+		
+		if(value instanceof TSPlanContextBinaryValue) {
+			ChannelBuffer content = ((TSPlanContextBinaryValue)value).getBuffer();
+			buffer.writeBytes(content, content.readerIndex(), content.readableBytes());
+			return;
+		}
+		
+		CharSequence chars = (value instanceof CharSequence ? (CharSequence)value : String.valueOf(value));
+		if(asciiCompatible) {
+			int length = chars.length();
+			for(int i = 0; i < length; i++) {
+				char c = chars.charAt(i);
+				if(c >= 0x80) {
+					// leave the remainder to the charset
+					buffer.writeBytes(chars.subSequence(i, length).toString().getBytes(charset));
+					return;
+				}
+				buffer.writeByte(c);
+			}
+			return;
+		}
+		buffer.writeBytes(chars.toString().getBytes(charset));
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+	
+	/**
+	 * Returns the sum of all encoded literal segment sizes
+	 * @return
+	 */
+	public int getLiteralLength() {
+		return literalLength;
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Assigns a fixed slot index to each context variable name - separately for the {@link ExecutionContextValueType#GLOBAL global} and
+ * the {@link ExecutionContextValueType#RUN run} store. The {@link com.mnxfst.testing.plan.TSPlanBuilder} fills the table with all variables
+ * referenced by the activities while compiling the plan, the {@link TSPlanExecutionContext contexts} of all executors share it and keep
+ * their values in arrays indexed by slot. Names showing up at runtime only are appended, slots once assigned never change
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanContextSlotTable implements Serializable {
+
+	private static final long serialVersionUID = -3410587946315512042L;
+
+	private static final String REPLACEMENT_PATTERN_PREFIX_GLOBAL = "${global.";
+	private static final String REPLACEMENT_PATTERN_PREFIX_RUN = "${run.";
+
+	/** variables of the global store by name */
+	private final ConcurrentMap<String, TSPlanContextVariable> globalVariables = new ConcurrentHashMap<String, TSPlanContextVariable>();
+	/** variables of the run store by name */
+	private final ConcurrentMap<String, TSPlanContextVariable> runVariables = new ConcurrentHashMap<String, TSPlanContextVariable>();
+	/** names of the global store variables, ordered by slot */
+	private final List<String> globalNames = new ArrayList<String>();
+	/** names of the run store variables, ordered by slot */
+	private final List<String> runNames = new ArrayList<String>();
+	/** replacement patterns evaluated against the variables, shared by all contexts using the table */
+	private final ConcurrentMap<String, TSPlanExecutionReplacementPattern> replacementPatterns = new ConcurrentHashMap<String, TSPlanExecutionReplacementPattern>();
+	
+	/**
+	 * Returns the variable registered for the given name and store type. If there is none, a new slot is assigned. If no store
+	 * type is provided the default (run/transient) store is assumed
+	 * @param name must not be null
+	 * @param type
+	 * @return
+	 */
+	public TSPlanContextVariable getVariable(String name, ExecutionContextValueType type) {
+		
+		ConcurrentMap<String, TSPlanContextVariable> variables = (type == ExecutionContextValueType.GLOBAL ? globalVariables : runVariables);
+		TSPlanContextVariable variable = variables.get(name);
+		if(variable != null)
+			return variable;
+		
+		synchronized(this) {
+			variable = variables.get(name);
+			if(variable == null) {
+				List<String> names = (type == ExecutionContextValueType.GLOBAL ? globalNames : runNames);
+				variable = new TSPlanContextVariable(name, (type == ExecutionContextValueType.GLOBAL ? ExecutionContextValueType.GLOBAL : ExecutionContextValueType.RUN), names.size(), this);
+				names.add(name);
+				variables.put(name, variable);
+			}
+			return variable;
+		}
+	}
+	
+	/**
+	 * Returns the variable registered for the given name and store type or null if there is none
+	 * @param name
+	 * @param type
+	 * @return
+	 */
+	public TSPlanContextVariable lookupVariable(String name, ExecutionContextValueType type) {
+		if(name == null)
+			return null;
+		return (type == ExecutionContextValueType.GLOBAL ? globalVariables : runVariables).get(name);
+	}
+	
+	/**
+	 * Returns the variable referenced by the given replacement pattern, eg. ${run.customer.name} references the variable 'customer'
+	 * of the run store. If the input is not a replacement pattern, the method returns null 
+	 * @param replacementPattern
+	 * @return
+	 */
+	public TSPlanContextVariable getVariableForPattern(String replacementPattern) {
+		
+		if(replacementPattern == null || !replacementPattern.endsWith("}"))
+			return null;
+		
+		if(replacementPattern.startsWith(REPLACEMENT_PATTERN_PREFIX_GLOBAL))
+			return getVariable(extractVariableName(replacementPattern, REPLACEMENT_PATTERN_PREFIX_GLOBAL), ExecutionContextValueType.GLOBAL);
+		if(replacementPattern.startsWith(REPLACEMENT_PATTERN_PREFIX_RUN))
+			return getVariable(extractVariableName(replacementPattern, REPLACEMENT_PATTERN_PREFIX_RUN), ExecutionContextValueType.RUN);
+		return null;
+	}
+	
+	/**
+	 * Returns the number of slots assigned for the given store type
+	 * @param type
+	 * @return
+	 */
+	public synchronized int getSlotCount(ExecutionContextValueType type) {
+		return (type == ExecutionContextValueType.GLOBAL ? globalNames : runNames).size();
+	}
+	
+	/**
+	 * Returns the name of the variable assigned to the given slot of the referenced store
+	 * @param slot
+	 * @param type
+	 * @return
+	 */
+	public synchronized String getVariableName(int slot, ExecutionContextValueType type) {
+		return (type == ExecutionContextValueType.GLOBAL ? globalNames : runNames).get(slot);
+	}
+	
+	/**
+	 * Returns the replacement patterns compiled for the variables of this table
+	 * @return
+	 */
+	public ConcurrentMap<String, TSPlanExecutionReplacementPattern> getReplacementPatterns() {
+		return replacementPatterns;
+	}
+	
+	/**
+	 * Returns the compiled replacement pattern shared by all contexts using this table. If there is none yet, the pattern
+	 * is compiled and the referenced variable gets a slot assigned. If the input is not a replacement pattern, the method returns null
+	 * @param replacementPattern
+	 * @return
+	 */
+	public TSPlanExecutionReplacementPattern getReplacementPattern(String replacementPattern) {
+		
+		if(replacementPattern == null)
+			return null;
+		
+		TSPlanExecutionReplacementPattern pattern = replacementPatterns.get(replacementPattern);
+		if(pattern != null)
+			return pattern;
+		
+		pattern = compileReplacementPattern(replacementPattern);
+		if(pattern == null)
+			return null;
+		
+		TSPlanExecutionReplacementPattern existing = replacementPatterns.putIfAbsent(replacementPattern, pattern);
+		return (existing != null ? existing : pattern);
+	}
+	
+	/**
+	 * Compiles the given replacement pattern without sharing it. If the input is not a replacement pattern, the method returns null
+	 * @param replacementPattern
+	 * @return
+	 */
+	protected TSPlanExecutionReplacementPattern compileReplacementPattern(String replacementPattern) {
+		
+		TSPlanContextVariable variable = getVariableForPattern(replacementPattern);
+		if(variable == null)
+			return null;
+		
+		String storageDependentPrefix = (variable.getType() == ExecutionContextValueType.GLOBAL ? REPLACEMENT_PATTERN_PREFIX_GLOBAL : REPLACEMENT_PATTERN_PREFIX_RUN);
+		TSPlanExecutionReplacementPattern pattern = new TSPlanExecutionReplacementPattern(replacementPattern, variable.getName(), variable.getType());
+		pattern.setVariable(variable);
+		pattern.setGetterMethodNames(extractGetterMethodNames(replacementPattern, storageDependentPrefix));
+		return pattern;
+	}
+	
+	/**
+	 * Extracts the names of the getters to apply along the pattern path, eg. ${run.customer.address} leads to getAddress
+	 * @param replacementPattern the provided input is assumed to be not null and must contain the provided prefix
+	 * @param storageDependentPrefix the provided input is assumed to be not null and not empty
+	 * @return
+	 */
+	protected static String[] extractGetterMethodNames(String replacementPattern, String storageDependentPrefix) {
+		
+		String[] splittedPath = replacementPattern.substring(storageDependentPrefix.length(), replacementPattern.length() - 1).split("\\.");
+		List<String> result = new ArrayList<String>();
+		for(int i = 1; i < splittedPath.length; i++) {
+			String attrName = splittedPath[i];
+			if(attrName != null && !attrName.isEmpty())
+				result.add("get" + attrName.substring(0, 1).toUpperCase() + attrName.substring(1));
+		}
+		return result.toArray(new String[result.size()]);
+	}
+	
+	/**
+	 * Extracts the variable name from the given replacement pattern which must start with the provided prefix
+	 * @param replacementPattern
+	 * @param storageDependentPrefix
+	 * @return
+	 */
+	protected String extractVariableName(String replacementPattern, String storageDependentPrefix) {
+		String tmp = replacementPattern.substring(storageDependentPrefix.length(), replacementPattern.length() - 1);
+		int index = tmp.indexOf('.');
+		return (index == -1 ? tmp : tmp.substring(0, index));
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return new ToStringBuilder(this)
+				.append("globalVariables", this.globalNames)
+				.append("runVariables", this.runNames).toString();
+	}
+}
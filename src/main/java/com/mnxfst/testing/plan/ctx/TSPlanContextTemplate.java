@@ -0,0 +1,210 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
+/**
+ * Payload template containing context variables denoted by ${global.varName} or ${run.varName}. The template is parsed
+ * once into literal segments and variable placeholders, rendering it writes all segments in a single pass into a
+ * builder kept by each thread. Placeholders evaluating to null are left as is
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanContextTemplate {
+
+	private static final String PLACEHOLDER_START = "${";
+	private static final String PLACEHOLDER_END = "}";
+	
+	/** the template as provided */
+	private final String template;
+	/** literal segments - the segment at index i precedes the placeholder at index i, the last one closes the template */
+	private final String[] literals;
+	/** placeholders found in the template, eg. ${run.customer.name} */
+	private final String[] placeholders;
+	/** compiled patterns of the placeholders - null if not bound or not a valid context variable pattern */
+	private volatile TSPlanExecutionReplacementPattern[] patterns = null;
+	/** builder used by the current thread for rendering the template */
+	private final ThreadLocal<StringBuilder> builder = new ThreadLocal<StringBuilder>() {
+		protected StringBuilder initialValue() {
+			return new StringBuilder(template.length() + 64);
+		}
+	};
+	
+	public TSPlanContextTemplate(String template) {
+		
+		if(template == null)
+			template = "";
+		
+		this.template = template;
+
+		List<String> literalSegments = new ArrayList<String>();
+		List<String> placeholderSegments = new ArrayList<String>();
+		
+		int index = 0;
+		while(index < template.length()) {
+			int start = template.indexOf(PLACEHOLDER_START, index);
+			int end = (start != -1 ? template.indexOf(PLACEHOLDER_END, start + PLACEHOLDER_START.length()) : -1);
+			if(end == -1) 
+				break;
+			
+			literalSegments.add(template.substring(index, start));
+			placeholderSegments.add(template.substring(start, end + 1));
+			index = end + 1;
+		}
+		literalSegments.add(template.substring(index));
+		
+		this.literals = literalSegments.toArray(new String[literalSegments.size()]);
+		this.placeholders = placeholderSegments.toArray(new String[placeholderSegments.size()]);
+	}
+	
+	/**
+	 * Binds the placeholders to the compiled patterns of the given slot table. Placeholders which do not reference a 
+	 * context variable remain unbound and are evaluated by name which reports them as invalid
+	 * @param slotTable
+	 */
+	public void bind(TSPlanContextSlotTable slotTable) {
+		
+		if(slotTable == null) {
+			this.patterns = null;
+			return;
+		}
+		
+		TSPlanExecutionReplacementPattern[] compiledPatterns = new TSPlanExecutionReplacementPattern[placeholders.length];
+		for(int i = 0; i < placeholders.length; i++)
+			compiledPatterns[i] = slotTable.getReplacementPattern(placeholders[i]);
+		this.patterns = compiledPatterns;
+	}
+	
+	/**
+	 * Renders the template using the values of the provided context 
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public String render(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		
+		if(placeholders.length == 0)
+			return template;
+		
+		StringBuilder result = builder.get();
+		result.setLength(0);
+		renderTo(ctx, result);
+		return result.toString();
+	}
+	
+	/**
+	 * Appends the rendered template to the given builder
+	 * @param ctx
+	 * @param result
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public void renderTo(TSPlanExecutionContext ctx, StringBuilder result) throws TSVariableEvaluationFailedException {
+		
+		TSPlanExecutionReplacementPattern[] compiledPatterns = this.patterns;
+		for(int i = 0; i < placeholders.length; i++) {
+			result.append(literals[i]);
+			
+			Object value = evaluatePlaceholder(ctx, compiledPatterns, i);
+			if(value != null)
+				appendValue(result, placeholders[i], value);
+			else
+				result.append(placeholders[i]);
+		}
+		result.append(literals[placeholders.length]);
+	}
+	
+	/**
+	 * Evaluates the placeholder at the given index - through its compiled pattern if bound, by name otherwise
+	 * @param ctx
+	 * @param compiledPatterns patterns read once per rendering - may be null
+	 * @param index
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	protected Object evaluatePlaceholder(TSPlanExecutionContext ctx, TSPlanExecutionReplacementPattern[] compiledPatterns, int index) throws TSVariableEvaluationFailedException {
+		if(compiledPatterns != null && compiledPatterns[index] != null)
+			return ctx.evaluatePattern(compiledPatterns[index]);
+		return ctx.evaluate(placeholders[index]);
+	}
+	
+	/**
+	 * Returns the compiled patterns of the placeholders - null if the template has not been bound
+	 * @return
+	 */
+	protected TSPlanExecutionReplacementPattern[] getPatterns() {
+		return patterns;
+	}
+	
+	/**
+	 * Appends the value evaluated for the given placeholder. Override to apply placeholder specific formatting
+	 * @param result
+	 * @param placeholder
+	 * @param value
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	protected void appendValue(StringBuilder result, String placeholder, Object value) throws TSVariableEvaluationFailedException {
+		result.append(value);
+	}
+
+	/**
+	 * @return the template
+	 */
+	public String getTemplate() {
+		return template;
+	}
+	
+	/**
+	 * @return the placeholders
+	 */
+	public String[] getPlaceholders() {
+		return placeholders;
+	}
+	
+	/**
+	 * Returns the literal segments - the segment at index i precedes the placeholder at index i, the last one closes the template
+	 * @return
+	 */
+	public String[] getLiterals() {
+		return literals;
+	}
+	
+	/**
+	 * Returns true if the template contains any placeholder
+	 * @return
+	 */
+	public boolean hasPlaceholders() {
+		return placeholders.length > 0;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("template", this.template)
+				.append("placeholders", this.placeholders).toString();
+	}
+}
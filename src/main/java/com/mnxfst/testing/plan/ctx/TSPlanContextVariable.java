@@ -0,0 +1,85 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Handle of a context variable as assigned by a {@link TSPlanContextSlotTable}. Activities resolve the handles of the variables
+ * they read or write once while the plan is being built, thus accessing the variable within an {@link TSPlanExecutionContext} 
+ * backed by the same slot table requires neither hashing nor string comparison
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanContextVariable implements Serializable {
+
+	private static final long serialVersionUID = 4216417357402563151L;
+
+	/** variable name */
+	private final String name;
+	/** store the variable is kept in */
+	private final ExecutionContextValueType type;
+	/** slot assigned to the variable within its store */
+	private final int slot;
+	/** slot table which assigned the slot */
+	private final TSPlanContextSlotTable slotTable;
+	
+	/**
+	 * Initializes the variable handle - instances are created by the {@link TSPlanContextSlotTable} only
+	 * @param name
+	 * @param type
+	 * @param slot
+	 * @param slotTable
+	 */
+	TSPlanContextVariable(String name, ExecutionContextValueType type, int slot, TSPlanContextSlotTable slotTable) {
+		this.name = name;
+		this.type = type;
+		this.slot = slot;
+		this.slotTable = slotTable;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public ExecutionContextValueType getType() {
+		return type;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public TSPlanContextSlotTable getSlotTable() {
+		return slotTable;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("name", this.name)
+				.append("type", this.type)
+				.append("slot", this.slot).toString();
+	}
+}
@@ -20,22 +20,26 @@
 package com.mnxfst.testing.plan.ctx;
 
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.commons.lang.ArrayUtils;
-
 import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
 import com.mnxfst.testing.plan.TSPlan;
 import com.mnxfst.testing.plan.exec.TSPlanExecutor;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
 
 /**
- * Holds all information and data required for executing a {@link TSPlan test plan}
+ * Holds all information and data required for executing a {@link TSPlan test plan}. The values are kept in arrays indexed by the
+ * slots assigned by a {@link TSPlanContextSlotTable}: activities holding a {@link TSPlanContextVariable variable handle} of the 
+ * same slot table access them directly, string keyed access resolves the slot first and remains available for compatibility.
+ * Numerical values may be kept as primitive long or double values which are read and written without boxing via the typed 
+ * methods, eg. {@link #addLongContextValue(TSPlanContextVariable, long)}. Clearing the run/transient store only increments a generation counter.<br/>
+ * Global values are looked up in three tiers: the run store, the global store of the context and - if provided - the immutable 
+ * {@link TSPlanSharedContext shared layer} of the test plan. Reads fall through to the shared layer without copying, writes and removals
+ * only affect the context itself, thus its memory footprint scales with the values written by its executor
  * @author mnxfst
  * @since 26.01.2012
  */
@@ -43,32 +47,147 @@ public class TSPlanExecutionContext implements Serializable {
 
 	private static final long serialVersionUID = -8239932328234778246L;
 	
-	private static final String[] EMPTY_STRING_ARRAY = new String[0];
-	
 	private static final String REPLACEMENT_PATTERN_PREFIX_GLOBAL = "${global.";
 	private static final String REPLACEMENT_PATTERN_PREFIX_RUN = "${run.";
 
+	/** assigns the slots of all variables - usually shared with the compiled test plan and all other executors */
+	private final TSPlanContextSlotTable slotTable;
+	
 	/** keeps all values exported by the executed activities in a durable store which is kept throughout the test plan execution */
-	private Map<String, Serializable> globalValues = new HashMap<String, Serializable>();
+	private final TSPlanContextSlotStore globalValues = new TSPlanContextSlotStore();
 	
 	/** keeps all values exported by the executed activities in a transient store which is cleared after each test plan run by the {@link TSPlanExecutor} */
-	private Map<String, Serializable> transientRunValues = new HashMap<String, Serializable>();
-
-	/** contains all replacement patterns available through this context implementation */
-	private Map<String, TSPlanExecutionReplacementPattern> replacementPatternMapping = new HashMap<String, TSPlanExecutionReplacementPattern>();
+	private final TSPlanContextSlotStore transientRunValues = new TSPlanContextSlotStore();
+	
+	/** global values shared by all contexts of a test plan - may be null */
+	private final TSPlanSharedContext sharedContext;
+	
+	/** statistics of the activity currently executed on this context - set by the executor, may be null */
+	private transient TSPlanActivityStatistics activityStatistics = null;
 
+	/**
+	 * Initializes the context using a slot table of its own
+	 */
+	public TSPlanExecutionContext() {
+		this(null);
+	}
+	
+	/**
+	 * Initializes the context using the provided slot table. If no table is provided, the context uses one of its own
+	 * @param slotTable
+	 */
+	public TSPlanExecutionContext(TSPlanContextSlotTable slotTable) {
+		this(slotTable, null);
+	}
+	
+	/**
+	 * Initializes the context using the provided slot table and shared layer of global values. If no table is provided, the one
+	 * of the shared layer or - if that is missing as well - one of its own is used
+	 * @param slotTable
+	 * @param sharedContext
+	 */
+	public TSPlanExecutionContext(TSPlanContextSlotTable slotTable, TSPlanSharedContext sharedContext) {
+		if(slotTable == null)
+			slotTable = (sharedContext != null ? sharedContext.getSlotTable() : new TSPlanContextSlotTable());
+		if(sharedContext != null && sharedContext.getSlotTable() != slotTable)
+			throw new IllegalArgumentException("The shared context must use the slot table of the execution context");
+		this.slotTable = slotTable;
+		this.sharedContext = sharedContext;
+	}
+	
 	/**
 	 * Adds the provided key/value pair to the referenced store type. If no type is provided,
-	 * the default (run/transient) is assumed
+	 * the default (run/transient) is assumed. Values without key are ignored
 	 * @param key
 	 * @param value
 	 * @param type
 	 */
 	public void addContextValue(String key, Serializable value, ExecutionContextValueType type) {
-		if(type != null && type == ExecutionContextValueType.GLOBAL)
-			this.globalValues.put(key, value);
+		if(key != null)
+			getStore(type).put(slotTable.getVariable(key, type).getSlot(), value);
+	}
+	
+	/**
+	 * Adds the provided value to the store and slot referenced by the given variable
+	 * @param variable
+	 * @param value
+	 */
+	public void addContextValue(TSPlanContextVariable variable, Serializable value) {
+		if(variable.getSlotTable() == slotTable)
+			getStore(variable.getType()).put(variable.getSlot(), value);
 		else
-			this.transientRunValues.put(key, value);
+			addContextValue(variable.getName(), value, variable.getType());
+	}
+	
+	/**
+	 * Adds the provided primitive long value to the store and slot referenced by the given variable
+	 * @param variable
+	 * @param value
+	 */
+	public void addLongContextValue(TSPlanContextVariable variable, long value) {
+		if(variable.getSlotTable() != slotTable)
+			variable = slotTable.getVariable(variable.getName(), variable.getType());
+		getStore(variable.getType()).putLong(variable.getSlot(), value);
+	}
+	
+	/**
+	 * Adds the provided primitive double value to the store and slot referenced by the given variable
+	 * @param variable
+	 * @param value
+	 */
+	public void addDoubleContextValue(TSPlanContextVariable variable, double value) {
+		if(variable.getSlotTable() != slotTable)
+			variable = slotTable.getVariable(variable.getName(), variable.getType());
+		getStore(variable.getType()).putDouble(variable.getSlot(), value);
+	}
+	
+	/**
+	 * Returns the numerical value associated with the given variable as long. Values stored as objects must be {@link Number numbers}
+	 * @param variable
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case there is no value or the value is not numerical
+	 */
+	public long getLongContextValue(TSPlanContextVariable variable) throws TSVariableEvaluationFailedException {
+		TSPlanContextVariable localVariable = getLocalVariable(variable);
+		if(localVariable != null) {
+			TSPlanContextSlotStore store = getStore(variable.getType());
+			if(store.isNumeric(localVariable.getSlot()))
+				return store.getLong(localVariable.getSlot());
+			Serializable sharedValue = readSharedValue(variable.getType(), localVariable.getSlot());
+			if(sharedValue instanceof Number)
+				return ((Number)sharedValue).longValue();
+		}
+		throw new TSVariableEvaluationFailedException("No numerical value found for context variable '"+variable.getName()+"'");
+	}
+	
+	/**
+	 * Returns the numerical value associated with the given variable as double. Values stored as objects must be {@link Number numbers}
+	 * @param variable
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case there is no value or the value is not numerical
+	 */
+	public double getDoubleContextValue(TSPlanContextVariable variable) throws TSVariableEvaluationFailedException {
+		TSPlanContextVariable localVariable = getLocalVariable(variable);
+		if(localVariable != null) {
+			TSPlanContextSlotStore store = getStore(variable.getType());
+			if(store.isNumeric(localVariable.getSlot()))
+				return store.getDouble(localVariable.getSlot());
+			Serializable sharedValue = readSharedValue(variable.getType(), localVariable.getSlot());
+			if(sharedValue instanceof Number)
+				return ((Number)sharedValue).doubleValue();
+		}
+		throw new TSVariableEvaluationFailedException("No numerical value found for context variable '"+variable.getName()+"'");
+	}
+	
+	/**
+	 * Returns the handle of this context's slot table for the given variable or null if the variable is not known to the table
+	 * @param variable
+	 * @return
+	 */
+	private TSPlanContextVariable getLocalVariable(TSPlanContextVariable variable) {
+		if(variable.getSlotTable() == slotTable)
+			return variable;
+		return slotTable.lookupVariable(variable.getName(), variable.getType());
 	}
 	
 	/**
@@ -79,9 +198,19 @@ public class TSPlanExecutionContext implements Serializable {
 	 * @return
 	 */
 	public Serializable getContextValue(String key, ExecutionContextValueType type) {
-		if(type != null && type == ExecutionContextValueType.GLOBAL)
-			return globalValues.get(key);
-		return transientRunValues.get(key);
+		TSPlanContextVariable variable = slotTable.lookupVariable(key, type);
+		return (variable != null ? readValue(type, variable.getSlot()) : null);
+	}
+	
+	/**
+	 * Looks up the value associated with the given variable
+	 * @param variable
+	 * @return
+	 */
+	public Serializable getContextValue(TSPlanContextVariable variable) {
+		if(variable.getSlotTable() == slotTable)
+			return readValue(variable.getType(), variable.getSlot());
+		return getContextValue(variable.getName(), variable.getType());
 	}
 	
 	/**
@@ -91,10 +220,20 @@ public class TSPlanExecutionContext implements Serializable {
 	 * @param type
 	 */
 	public void removeContextValue(String key, ExecutionContextValueType type) {
-		if(type != null && type == ExecutionContextValueType.GLOBAL)
-			this.globalValues.remove(key);
+		TSPlanContextVariable variable = slotTable.lookupVariable(key, type);
+		if(variable != null)
+			removeValue(type, variable.getSlot());
+	}
+	
+	/**
+	 * Removes the value associated with the given variable
+	 * @param variable
+	 */
+	public void removeContextValue(TSPlanContextVariable variable) {
+		if(variable.getSlotTable() == slotTable)
+			removeValue(variable.getType(), variable.getSlot());
 		else
-			this.transientRunValues.remove(key);
+			removeContextValue(variable.getName(), variable.getType());
 	}
 	
 	/**
@@ -103,9 +242,13 @@ public class TSPlanExecutionContext implements Serializable {
 	 * @return
 	 */
 	public Set<String> getContextValueNames(ExecutionContextValueType type) {
-		if(type != null && type == ExecutionContextValueType.GLOBAL)
-			return globalValues.keySet();
-		return transientRunValues.keySet();
+		
+		Set<String> names = new HashSet<String>();
+		for(int slot = 0; slot < getCapacity(type); slot++) {
+			if(containsValue(type, slot))
+				names.add(slotTable.getVariableName(slot, type));
+		}
+		return names;
 	}
 	
 	/**
@@ -122,16 +265,96 @@ public class TSPlanExecutionContext implements Serializable {
 	 * @return
 	 */
 	public boolean hasContextVariable(String key, ExecutionContextValueType type) {
-		if(type != null && type == ExecutionContextValueType.GLOBAL)
-			return globalValues.containsKey(key);
-		return transientRunValues.containsKey(key);
-		
+		TSPlanContextVariable variable = slotTable.lookupVariable(key, type);
+		return (variable != null && containsValue(type, variable.getSlot()));
+	}
+	
+	/**
+	 * Returns true in case a value is associated with the given variable
+	 * @param variable
+	 * @return
+	 */
+	public boolean hasContextVariable(TSPlanContextVariable variable) {
+		if(variable.getSlotTable() == slotTable)
+			return containsValue(variable.getType(), variable.getSlot());
+		return hasContextVariable(variable.getName(), variable.getType());
+	}
+	
+	/**
+	 * Returns the store for the given type, the run/transient store if no type is provided
+	 * @param type
+	 * @return
+	 */
+	private TSPlanContextSlotStore getStore(ExecutionContextValueType type) {
+		return (type == ExecutionContextValueType.GLOBAL ? globalValues : transientRunValues);
+	}
+	
+	/**
+	 * Returns the value of the given slot - global values not written by this context are read from the shared layer
+	 * @param type
+	 * @param slot
+	 * @return
+	 */
+	private Serializable readValue(ExecutionContextValueType type, int slot) {
+		TSPlanContextSlotStore store = getStore(type);
+		if(store.contains(slot))
+			return store.get(slot);
+		return readSharedValue(type, slot);
+	}
+	
+	/**
+	 * Returns the value of the given slot from the shared layer if it is neither overwritten nor removed by this context, null otherwise
+	 * @param type
+	 * @param slot
+	 * @return
+	 */
+	private Serializable readSharedValue(ExecutionContextValueType type, int slot) {
+		if(sharedContext == null || type != ExecutionContextValueType.GLOBAL || globalValues.contains(slot) || globalValues.isMasked(slot))
+			return null;
+		return sharedContext.get(slot);
+	}
+	
+	/**
+	 * Returns true in case a value is assigned to the given slot - either by this context or by the shared layer
+	 * @param type
+	 * @param slot
+	 * @return
+	 */
+	private boolean containsValue(ExecutionContextValueType type, int slot) {
+		TSPlanContextSlotStore store = getStore(type);
+		if(store.contains(slot))
+			return true;
+		return (sharedContext != null && type == ExecutionContextValueType.GLOBAL && !store.isMasked(slot) && sharedContext.contains(slot));
 	}
 	
+	/**
+	 * Removes the value of the given slot. Shared values are masked as they must not be modified
+	 * @param type
+	 * @param slot
+	 */
+	private void removeValue(ExecutionContextValueType type, int slot) {
+		if(sharedContext != null && type == ExecutionContextValueType.GLOBAL && sharedContext.contains(slot))
+			globalValues.mask(slot);
+		else
+			getStore(type).remove(slot);
+	}
+	
+	/**
+	 * Returns the number of slots to inspect for the given store type
+	 * @param type
+	 * @return
+	 */
+	private int getCapacity(ExecutionContextValueType type) {
+		int capacity = getStore(type).getCapacity();
+		if(sharedContext != null && type == ExecutionContextValueType.GLOBAL)
+			capacity = Math.max(capacity, sharedContext.getCapacity());
+		return capacity;
+	}
 	
 	/**
 	 * Evaluates the given pattern which either starts with ${global.} or ${run.}. If there is no context variable
-	 * that matches the named contained in the pattern, the pattern itself will be returned.
+	 * that matches the named contained in the pattern, the method returns null. Patterns are compiled once and 
+	 * shared with all other contexts using the same slot table
 	 * @param replacementPattern
 	 * @return
 	 * @throws TSVariableEvaluationFailedException
@@ -142,173 +365,61 @@ public class TSPlanExecutionContext implements Serializable {
 		if(replacementPattern == null || replacementPattern.isEmpty())
 			throw new TSVariableEvaluationFailedException("No replacement pattern provided");
 
-		// find replacement pattern in map of previously computed pattern
-		TSPlanExecutionReplacementPattern pattern = replacementPatternMapping.get(replacementPattern);
-		if(pattern != null) {
-			switch(pattern.getVariableStoreType()) {
-				case GLOBAL: {
-					Serializable variable = globalValues.get(pattern.getName());
-					return evaluateObject(variable, pattern.getAccessMethods());
-				}
-				case RUN: {
-					Serializable variable = transientRunValues.get(pattern.getName());
-					return evaluateObject(variable, pattern.getAccessMethods());
-				}
-				default:
-					throw new TSVariableEvaluationFailedException("Invalid variable storage type ('"+pattern.getVariableStoreType()+"') found for pattern: " + replacementPattern);
-			}
-		}
+		// find replacement pattern in map of previously compiled patterns
+		TSPlanExecutionReplacementPattern pattern = slotTable.getReplacementPatterns().get(replacementPattern);
+		if(pattern != null)
+			return pattern.evaluate(getContextValue(pattern.getVariable()));
 
 		// if the pattern is not contained in the mentioned map, figure out how to evaluate it: for global or transient run variables
+		String storageDependentPrefix = null;
+		ExecutionContextValueType type = null;
 		if(replacementPattern.startsWith(REPLACEMENT_PATTERN_PREFIX_GLOBAL) && replacementPattern.endsWith("}")) {
-			
-			
-			// extract the name of the context variable and try to fetch the associated value. if there is no value, return null
-			String ctxVar = extractContextVariableName(replacementPattern, REPLACEMENT_PATTERN_PREFIX_GLOBAL);
-			Serializable variable = globalValues.get(ctxVar);
-			if(variable == null)
-				return null;
-			
-			// if the variable has been found, try to extract the getter method names along the path described
-			String[] getterMethodNames = extractGetterMethodNames(replacementPattern, REPLACEMENT_PATTERN_PREFIX_GLOBAL);
-			if(getterMethodNames == null || getterMethodNames.length < 1)
-				return variable;
-			
-			// convert the getter names into method representations
-			List<Method> getterMethods = new ArrayList<Method>();
-			extractGetterMethods(variable.getClass(), getterMethodNames, getterMethods);
-			
-			// create entity for previously mentioned association map for pattern information and insert it
-			TSPlanExecutionReplacementPattern patternMapping = new TSPlanExecutionReplacementPattern(replacementPattern, ctxVar, ExecutionContextValueType.GLOBAL);
-			for(Method m : getterMethods)
-				patternMapping.addAccessMethod(m);
-			replacementPatternMapping.put(replacementPattern, patternMapping);
-			
-			// evaluate the getter methods against the variable value
-			return evaluateObject(variable, getterMethods);
+			storageDependentPrefix = REPLACEMENT_PATTERN_PREFIX_GLOBAL;
+			type = ExecutionContextValueType.GLOBAL;
 		} else if(replacementPattern.startsWith(REPLACEMENT_PATTERN_PREFIX_RUN) && replacementPattern.endsWith("}")) {
-			
-			// extract the name of the context variable and try to fetch the associated value. if there is no value, return null
-			String ctxVar = extractContextVariableName(replacementPattern, REPLACEMENT_PATTERN_PREFIX_RUN);
-			Serializable variable = transientRunValues.get(ctxVar);
-			
-			if(variable == null)
-				return null;			
-			
-			// if the variable has been found, try to extract the getter method names along the path described
-			String[] getterMethodNames = extractGetterMethodNames(replacementPattern, REPLACEMENT_PATTERN_PREFIX_RUN);
-			if(getterMethodNames == null || getterMethodNames.length < 1)
-				return variable;
-			
-			// convert the getter names into method representations
-			List<Method> getterMethods = new ArrayList<Method>();
-			extractGetterMethods(variable.getClass(), getterMethodNames, getterMethods);
-
-			// create entity for previously mentioned association map for pattern information and insert it
-			TSPlanExecutionReplacementPattern patternMapping = new TSPlanExecutionReplacementPattern(replacementPattern, ctxVar, ExecutionContextValueType.RUN);
-			for(Method m : getterMethods)
-				patternMapping.addAccessMethod(m);
-			replacementPatternMapping.put(replacementPattern, patternMapping);
-			
-			// evaluate the getter methods against the variable value
-			return evaluateObject(variable, getterMethods);
+			storageDependentPrefix = REPLACEMENT_PATTERN_PREFIX_RUN;
+			type = ExecutionContextValueType.RUN;
+		} else {
+			throw new TSVariableEvaluationFailedException("Invalid replacement pattern: " + replacementPattern + ". Expected prefix: ${global||run...}");
 		}
-
-		throw new TSVariableEvaluationFailedException("Invalid replacement pattern: " + replacementPattern + ". Expected prefix: ${global||run...}");
-
-	}
-
-	/**
-	 * Extracts the getter method names that needs to be executed along the expression path for evaluate
-	 * an objects value. The provided prefix helps to speed-up stripping down the storage dependent prefix, eg. ${global.
-	 * @param replacementPattern the provided input is assumed to be not null and must contain the provided prefix
-	 * @param storageDependentPrefix the provided input is assumed to be not null and not empty
-	 * @return
-	 */
-	protected String[] extractGetterMethodNames(String replacementPattern, String storageDependentPrefix) {
-
-		// strip out the named prefix and the closing brackts
-		String[] splittedPath = replacementPattern.substring(storageDependentPrefix.length(), replacementPattern.length() - 1).split("\\.");
-		
-		if(splittedPath != null && splittedPath.length > 1) {			
-			
-			List<String> result = new ArrayList<String>();
-			
-			// iterate through path elements starting with the 2nd element since the first names the variable whereas the second references the first attribute
-			// to be accessed via an assigned getter
-			for(int i = 1; i < splittedPath.length; i++) {				
-				String attrName = splittedPath[i];
-				if(attrName != null && !attrName.isEmpty()) {
-					result.add("get" + attrName.substring(0, 1).toUpperCase() + attrName.substring(1));					
-				}
-			}
 			
-			return (String[])result.toArray(EMPTY_STRING_ARRAY);
-		}
+		// extract the name of the context variable and try to fetch the associated value. if there is no value, return null
+		String ctxVar = extractContextVariableName(replacementPattern, storageDependentPrefix);
+		Serializable variable = getContextValue(ctxVar, type);
+		if(variable == null)
+			return null;
 		
-		return EMPTY_STRING_ARRAY;		
+		// compile the pattern and evaluate it against the variable value - the pattern is shared as soon as it could be evaluated
+		pattern = slotTable.compileReplacementPattern(replacementPattern);
+		Object result = pattern.evaluate(variable);
+		slotTable.getReplacementPatterns().putIfAbsent(replacementPattern, pattern);
+		return result;
 	}
-
+	
 	/**
-	 * Extracts the  {@link Method method representations} for the given path of getter methods 
-	 * @param varType
-	 * @param getterMethodNames
-	 * @param result
+	 * Evaluates the given compiled pattern against the value of the variable it references. If there is no value, the method returns null
+	 * @param replacementPattern
+	 * @return
 	 * @throws TSVariableEvaluationFailedException
 	 */
-	protected void extractGetterMethods(Class<?> varType, String[] getterMethodNames, List<Method> result) throws TSVariableEvaluationFailedException {
-		
-		if(varType != null && getterMethodNames != null && getterMethodNames.length > 0) {
-
-			String nextGetter = getterMethodNames[0];
-			try {
-				Method getterMethod = varType.getMethod(nextGetter, null);
-				result.add(getterMethod);
-				extractGetterMethods(getterMethod.getReturnType(), (String[])ArrayUtils.subarray(getterMethodNames, 1, getterMethodNames.length), result);
-			} catch(NoSuchMethodException e) {
-				throw new TSVariableEvaluationFailedException("No such getter '"+nextGetter+"' for class " + varType.getName());
-			}
-			
-		}
-
+	public Object evaluatePattern(TSPlanExecutionReplacementPattern replacementPattern) throws TSVariableEvaluationFailedException {
+		if(replacementPattern == null)
+			throw new TSVariableEvaluationFailedException("No replacement pattern provided");
+		return replacementPattern.evaluate(getContextValue(replacementPattern.getVariable()));
 	}
 
 	/**
-	 * Evaluates the provided list of methods on the given object and the results of the getter recursively 
-	 * @param input
-	 * @param getterMethods
+	 * Extracts the getter method names that needs to be executed along the expression path for evaluate
+	 * an objects value. The provided prefix helps to speed-up stripping down the storage dependent prefix, eg. ${global.
+	 * Delegates to {@link TSPlanContextSlotTable#extractGetterMethodNames(String, String)} which compiles the patterns
+	 * @param replacementPattern the provided input is assumed to be not null and must contain the provided prefix
+	 * @param storageDependentPrefix the provided input is assumed to be not null and not empty
 	 * @return
-	 * @throws TSVariableEvaluationFailedException
 	 */
-	protected Object evaluateObject(Object input, List<Method> getterMethods) throws TSVariableEvaluationFailedException {
-		
-		if(input == null)
-			return null;
-
-		if(getterMethods != null && !getterMethods.isEmpty()) {
-			
-			Method nextGetterMethod = getterMethods.get(0);
-			Object result = null;
-			
-			try {
-				result = nextGetterMethod.invoke(input, null);
-			} catch (IllegalArgumentException e) {
-				throw new TSVariableEvaluationFailedException("Failed to evaluate method '"+nextGetterMethod.getName()+"' on entity of type " + input.getClass().getName() + ". Error: " + e.getMessage());
-			} catch (IllegalAccessException e) {
-				throw new TSVariableEvaluationFailedException("Failed to evaluate method '"+nextGetterMethod.getName()+"' on entity of type " + input.getClass().getName() + ". Error: " + e.getMessage());
-			} catch (InvocationTargetException e) {
-				throw new TSVariableEvaluationFailedException("Failed to evaluate method '"+nextGetterMethod.getName()+"' on entity of type " + input.getClass().getName() + ". Error: " + e.getMessage());
-			}
-
-			if(getterMethods.size() > 1 && result != null)
-				return evaluateObject(result, getterMethods.subList(1, getterMethods.size()));
-			
-			return result;
-		}
-		
-		return input;
-		
+	protected String[] extractGetterMethodNames(String replacementPattern, String storageDependentPrefix) {
+		return TSPlanContextSlotTable.extractGetterMethodNames(replacementPattern, storageDependentPrefix);
 	}
+
 	/**
 	 * Extracts the context variable name from the given replacement pattern. The provided prefix helps to speed up the
 	 * stripping and must be contained in the replacement pattern
@@ -326,15 +437,198 @@ public class TSPlanExecutionContext implements Serializable {
 		
 	}
 
+	/**
+	 * Returns a copy of the global store contents
+	 * @return
+	 */
 	public Map<String, Serializable> getGlobalValues() {
-		return globalValues;
+		return copyValues(ExecutionContextValueType.GLOBAL);
 	}
 
+	/**
+	 * Returns a copy of the run/transient store contents
+	 * @return
+	 */
 	public Map<String, Serializable> getTransientRunValues() {
-		return transientRunValues;
+		return copyValues(ExecutionContextValueType.RUN);
+	}
+	
+	/**
+	 * Copies the contents of the referenced store into a map
+	 * @param type
+	 * @return
+	 */
+	protected Map<String, Serializable> copyValues(ExecutionContextValueType type) {
+		Map<String, Serializable> values = new HashMap<String, Serializable>();
+		for(int slot = 0; slot < getCapacity(type); slot++) {
+			if(containsValue(type, slot))
+				values.put(slotTable.getVariableName(slot, type), readValue(type, slot));
+		}
+		return values;
 	}
 
+	/**
+	 * Returns the replacement patterns compiled so far - shared by all contexts using the same slot table
+	 * @return
+	 */
 	public Map<String, TSPlanExecutionReplacementPattern> getReplacementPatternMapping() {
-		return replacementPatternMapping;
+		return slotTable.getReplacementPatterns();
+	}
+
+	public TSPlanContextSlotTable getSlotTable() {
+		return slotTable;
+	}
+	
+	public TSPlanSharedContext getSharedContext() {
+		return sharedContext;
+	}
+	
+	/**
+	 * Returns the statistics of the activity currently executed on this context. Activities may record the durations of their
+	 * execution phases and additional counters there - null if the executor does not provide any statistics
+	 * @return
+	 */
+	public TSPlanActivityStatistics getActivityStatistics() {
+		return activityStatistics;
+	}
+
+	public void setActivityStatistics(TSPlanActivityStatistics activityStatistics) {
+		this.activityStatistics = activityStatistics;
+	}
+	
+	/**
+	 * Keeps the values of a single store in an array indexed by slot. Each value is tagged with the generation it has been written 
+	 * in, values of earlier generations are treated as missing, thus clearing the store just increments the generation. Primitive
+	 * values are kept as raw bits in a separate array, the kind of each slot tells how to read it. Masked slots hide the value of a shared layer
+	 * @author mnxfst
+	 */
+	private static class TSPlanContextSlotStore implements Serializable {
+		
+		private static final long serialVersionUID = 2583207743529735718L;
+		
+		private static final byte KIND_OBJECT = 0;
+		private static final byte KIND_LONG = 1;
+		private static final byte KIND_DOUBLE = 2;
+		private static final byte KIND_MASKED = 3;
+
+		/** values by slot */
+		private Serializable[] values = new Serializable[16];
+		/** primitive values by slot - doubles are kept as raw long bits */
+		private long[] primitiveValues = new long[16];
+		/** kind of value each slot holds */
+		private byte[] kinds = new byte[16];
+		/** generation each slot has been written in - 0 marks removed values */
+		private int[] generations = new int[16];
+		/** current generation */
+		private int generation = 1;
+		
+		public Serializable get(int slot) {
+			if(!contains(slot))
+				return null;
+			switch(kinds[slot]) {
+				case KIND_LONG:
+					return Long.valueOf(primitiveValues[slot]);
+				case KIND_DOUBLE:
+					return Double.valueOf(Double.longBitsToDouble(primitiveValues[slot]));
+				default:
+					return values[slot];
+			}
+		}
+		
+		public long getLong(int slot) {
+			switch(kinds[slot]) {
+				case KIND_LONG:
+					return primitiveValues[slot];
+				case KIND_DOUBLE:
+					return (long)Double.longBitsToDouble(primitiveValues[slot]);
+				default:
+					return ((Number)values[slot]).longValue();
+			}
+		}
+		
+		public double getDouble(int slot) {
+			switch(kinds[slot]) {
+				case KIND_LONG:
+					return primitiveValues[slot];
+				case KIND_DOUBLE:
+					return Double.longBitsToDouble(primitiveValues[slot]);
+				default:
+					return ((Number)values[slot]).doubleValue();
+			}
+		}
+		
+		public boolean contains(int slot) {
+			return (slot < generations.length && generations[slot] == generation && kinds[slot] != KIND_MASKED);
+		}
+		
+		public boolean isMasked(int slot) {
+			return (slot < generations.length && generations[slot] == generation && kinds[slot] == KIND_MASKED);
+		}
+		
+		public boolean isNumeric(int slot) {
+			return contains(slot) && (kinds[slot] != KIND_OBJECT || values[slot] instanceof Number);
+		}
+		
+		public void put(int slot, Serializable value) {
+			ensureCapacity(slot);
+			values[slot] = value;
+			kinds[slot] = KIND_OBJECT;
+			generations[slot] = generation;
+		}
+		
+		public void putLong(int slot, long value) {
+			ensureCapacity(slot);
+			values[slot] = null;
+			primitiveValues[slot] = value;
+			kinds[slot] = KIND_LONG;
+			generations[slot] = generation;
+		}
+		
+		public void putDouble(int slot, double value) {
+			ensureCapacity(slot);
+			values[slot] = null;
+			primitiveValues[slot] = Double.doubleToRawLongBits(value);
+			kinds[slot] = KIND_DOUBLE;
+			generations[slot] = generation;
+		}
+		
+		public void mask(int slot) {
+			ensureCapacity(slot);
+			values[slot] = null;
+			kinds[slot] = KIND_MASKED;
+			generations[slot] = generation;
+		}
+		
+		private void ensureCapacity(int slot) {
+			if(slot >= values.length) {
+				int capacity = Math.max(slot + 1, values.length * 2);
+				values = Arrays.copyOf(values, capacity);
+				primitiveValues = Arrays.copyOf(primitiveValues, capacity);
+				kinds = Arrays.copyOf(kinds, capacity);
+				generations = Arrays.copyOf(generations, capacity);
+			}
+		}
+		
+		public void remove(int slot) {
+			if(slot < values.length) {
+				values[slot] = null;
+				kinds[slot] = KIND_OBJECT;
+				generations[slot] = 0;
+			}
+		}
+		
+		public void clear() {
+			generation = generation + 1;
+			if(generation == Integer.MAX_VALUE) {
+				// start over before the counter wraps and old values would become visible again
+				Arrays.fill(values, null);
+				Arrays.fill(generations, 0);
+				generation = 1;
+			}
+		}
+		
+		public int getCapacity() {
+			return values.length;
+		}
 	}
 }
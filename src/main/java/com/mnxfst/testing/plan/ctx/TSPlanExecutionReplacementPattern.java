@@ -20,14 +20,14 @@
 package com.mnxfst.testing.plan.ctx;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
 /**
- * Holds a mapping from a replacement pattern towards a context variable
+ * Holds a mapping from a replacement pattern towards a context variable and the getters to apply on its value. Patterns are
+ * shared by all executors of a test plan, the {@link TSPlanContextAccessor accessor} used for the latest value type is remembered
  * @author mnxfst
  * @since 26.01.2012
  */
@@ -41,12 +41,18 @@ public class TSPlanExecutionReplacementPattern implements Serializable {
 	/** name of variable the pattern must be applied to */
 	private String name = null;
 	
-	/** list of getter methods along the pattern path */
-	private List<Method> accessMethods = new ArrayList<Method>();
+	/** names of the getter methods along the pattern path */
+	private String[] getterMethodNames = new String[0];
+	
+	/** accessor compiled for the type of the most recently evaluated value */
+	private transient volatile TSPlanContextAccessor accessor = null;
 	
 	/** variable type */
 	private ExecutionContextValueType variableStoreType = ExecutionContextValueType.RUN;
 	
+	/** handle of the variable the pattern must be applied to */
+	private TSPlanContextVariable variable = null;
+	
 	public TSPlanExecutionReplacementPattern() {		
 	}
 	
@@ -56,8 +62,23 @@ public class TSPlanExecutionReplacementPattern implements Serializable {
 		this.name = variableName;
 	}
 	
-	public void addAccessMethod(Method method) {
-		this.accessMethods.add(method);
+	/**
+	 * Applies the getter methods along the pattern path on the given variable value. If the value is null, the method returns null 
+	 * @param value
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public Object evaluate(Object value) throws TSVariableEvaluationFailedException {
+		
+		if(value == null || getterMethodNames.length == 0)
+			return value;
+		
+		TSPlanContextAccessor currentAccessor = this.accessor;
+		if(currentAccessor == null || currentAccessor.getType() != value.getClass()) {
+			currentAccessor = TSPlanContextAccessor.getAccessor(value.getClass(), getterMethodNames);
+			this.accessor = currentAccessor;
+		}
+		return currentAccessor.evaluate(value);
 	}
 
 	/**
@@ -89,17 +110,18 @@ public class TSPlanExecutionReplacementPattern implements Serializable {
 	}
 
 	/**
-	 * @return the accessMethods
+	 * @return the getterMethodNames
 	 */
-	public List<Method> getAccessMethods() {
-		return accessMethods;
+	public String[] getGetterMethodNames() {
+		return getterMethodNames;
 	}
 
 	/**
-	 * @param accessMethods the accessMethods to set
+	 * @param getterMethodNames the getterMethodNames to set
 	 */
-	public void setAccessMethods(List<Method> accessMethods) {
-		this.accessMethods = accessMethods;
+	public void setGetterMethodNames(String[] getterMethodNames) {
+		this.getterMethodNames = (getterMethodNames != null ? getterMethodNames : new String[0]);
+		this.accessor = null;
 	}
 
 	/**
@@ -116,6 +138,14 @@ public class TSPlanExecutionReplacementPattern implements Serializable {
 		this.variableStoreType = variableStoreType;
 	}
 	
+	public TSPlanContextVariable getVariable() {
+		return variable;
+	}
+
+	public void setVariable(TSPlanContextVariable variable) {
+		this.variable = variable;
+	}
+	
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -124,7 +154,7 @@ public class TSPlanExecutionReplacementPattern implements Serializable {
 				.append("replacementPattern", this.replacementPattern)
 				.append("name", this.name)
 				.append("variableStoreType", this.variableStoreType)
-				.append("accessMethods", this.accessMethods).toString();
+				.append("getterMethodNames", this.getterMethodNames).toString();
 	}
 	
 }
@@ -0,0 +1,132 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * Immutable layer of {@link ExecutionContextValueType#GLOBAL global} values shared by the {@link TSPlanExecutionContext contexts} of all 
+ * executors running the same test plan, eg. the preconfigured durable variables received with the execution request. It is built once
+ * per execution environment, the values are kept in an array indexed by the global slots of the plan's {@link TSPlanContextSlotTable}.
+ * Contexts read through it whenever they do not hold a global value of their own, values written by a context never reach this layer.
+ * As the values themselves are shared, activities must not modify them in place   
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanSharedContext implements Serializable {
+
+	private static final long serialVersionUID = 6381826101953724417L;
+
+	/** slot table the values are indexed by */
+	private final TSPlanContextSlotTable slotTable;
+	/** values by global slot */
+	private final Serializable[] values;
+	/** marks the slots holding a value */
+	private final boolean[] assigned;
+	/** number of values */
+	private final int size;
+	
+	/**
+	 * Initializes the layer using the provided values. Each name gets a global slot assigned in the given table
+	 * @param slotTable must not be null
+	 * @param values may be null
+	 */
+	public TSPlanSharedContext(TSPlanContextSlotTable slotTable, Map<String, Serializable> values) {
+		
+		if(slotTable == null)
+			throw new IllegalArgumentException("Missing required slot table");
+		
+		this.slotTable = slotTable;
+		
+		int[] slots = new int[(values != null ? values.size() : 0)];
+		Serializable[] tmpValues = new Serializable[slots.length];
+		int capacity = 0;
+		int index = 0;
+		if(values != null) {
+			for(Map.Entry<String, Serializable> entry : values.entrySet()) {
+				if(entry.getKey() == null)
+					continue;
+				slots[index] = slotTable.getVariable(entry.getKey(), ExecutionContextValueType.GLOBAL).getSlot();
+				tmpValues[index] = entry.getValue();
+				capacity = Math.max(capacity, slots[index] + 1);
+				index++;
+			}
+		}
+		
+		this.values = new Serializable[capacity];
+		this.assigned = new boolean[capacity];
+		for(int i = 0; i < index; i++) {
+			this.values[slots[i]] = tmpValues[i];
+			this.assigned[slots[i]] = true;
+		}
+		this.size = index;
+	}
+	
+	/**
+	 * Returns the value of the given global slot or null if there is none
+	 * @param slot
+	 * @return
+	 */
+	public Serializable get(int slot) {
+		return (slot < values.length ? values[slot] : null);
+	}
+	
+	/**
+	 * Returns true in case a value is assigned to the given global slot
+	 * @param slot
+	 * @return
+	 */
+	public boolean contains(int slot) {
+		return (slot < assigned.length && assigned[slot]);
+	}
+	
+	/**
+	 * Returns the number of slots covered by this layer
+	 * @return
+	 */
+	public int getCapacity() {
+		return values.length;
+	}
+	
+	/**
+	 * Returns the number of values held by this layer
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	public TSPlanContextSlotTable getSlotTable() {
+		return slotTable;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("size", this.size)
+				.append("values", Arrays.asList(this.values)).toString();
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Finds the code of activity classes which pins the carrier thread of a virtual thread when blocking: synchronized methods as well as
+ * methods containing synchronized blocks. The latter are found by scanning the bytecode of each method for <i>monitorenter</i> 
+ * instructions. Only the given class and its super classes are inspected - neither nested classes nor the libraries called by the
+ * activity, eg. a jms client or a logging framework  
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanActivityPinningInspector {
+
+	private static final Logger logger = Logger.getLogger(TSPlanActivityPinningInspector.class);
+	
+	private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+	private static final String CODE_ATTRIBUTE = "Code";
+	
+	private static final int OPCODE_TABLESWITCH = 0xaa;
+	private static final int OPCODE_LOOKUPSWITCH = 0xab;
+	private static final int OPCODE_MONITORENTER = 0xc2;
+	private static final int OPCODE_WIDE = 0xc4;
+	private static final int OPCODE_IINC = 0x84;
+	
+	/** length of each instruction including its operands - 0 for instructions of variable length or unknown opcodes */
+	private static final int[] INSTRUCTION_LENGTHS = new int[256];
+	
+	static {
+		for(int opcode = 0x00; opcode <= 0xc9; opcode++)
+			INSTRUCTION_LENGTHS[opcode] = 1;
+		// bipush, ldc, xload, xstore, ret, newarray
+		for(int opcode : new int[] {0x10, 0x12, 0x15, 0x16, 0x17, 0x18, 0x19, 0x36, 0x37, 0x38, 0x39, 0x3a, 0xa9, 0xbc})
+			INSTRUCTION_LENGTHS[opcode] = 2;
+		// sipush, ldc_w, ldc2_w, iinc, new, anewarray, checkcast, instanceof, ifnull, ifnonnull as well as branches, field access and invocations
+		for(int opcode : new int[] {0x11, 0x13, 0x14, 0x84, 0xbb, 0xbd, 0xc0, 0xc1, 0xc6, 0xc7})
+			INSTRUCTION_LENGTHS[opcode] = 3;
+		for(int opcode = 0x99; opcode <= 0xa8; opcode++)
+			INSTRUCTION_LENGTHS[opcode] = 3;
+		for(int opcode = 0xb2; opcode <= 0xb8; opcode++)
+			INSTRUCTION_LENGTHS[opcode] = 3;
+		// multianewarray
+		INSTRUCTION_LENGTHS[0xc5] = 4;
+		// invokeinterface, invokedynamic, goto_w, jsr_w
+		for(int opcode : new int[] {0xb9, 0xba, 0xc8, 0xc9})
+			INSTRUCTION_LENGTHS[opcode] = 5;
+		INSTRUCTION_LENGTHS[OPCODE_TABLESWITCH] = 0;
+		INSTRUCTION_LENGTHS[OPCODE_LOOKUPSWITCH] = 0;
+		INSTRUCTION_LENGTHS[OPCODE_WIDE] = 0;
+	}
+	
+	/**
+	 * Returns the names of the methods declared by the given class or any of its super classes which are synchronized or contain 
+	 * a synchronized block. Each name is prefixed by the declaring class (format: class#method) and reported once
+	 * @param clazz
+	 * @return
+	 */
+	public static List<String> findPinningMethods(Class<?> clazz) {
+		List<String> methods = new ArrayList<String>();
+		for(Class<?> current = clazz; current != null && current != Object.class; current = current.getSuperclass()) {
+			for(Method method : current.getDeclaredMethods()) {
+				if(Modifier.isSynchronized(method.getModifiers()))
+					addMethod(methods, current, method.getName());
+			}
+			for(String methodName : findSynchronizedBlocks(current))
+				addMethod(methods, current, methodName);
+		}
+		return methods;
+	}
+	
+	/**
+	 * Adds the given method to the list unless it is contained already
+	 * @param methods
+	 * @param clazz
+	 * @param methodName
+	 */
+	private static void addMethod(List<String> methods, Class<?> clazz, String methodName) {
+		String name = clazz.getName() + "#" + methodName;
+		if(!methods.contains(name))
+			methods.add(name);
+	}
+	
+	/**
+	 * Returns the names of the methods declared by the given class which contain a synchronized block. Classes whose bytecode 
+	 * cannot be read are skipped
+	 * @param clazz
+	 * @return
+	 */
+	protected static List<String> findSynchronizedBlocks(Class<?> clazz) {
+		
+		String resource = clazz.getName().replace('.', '/') + ".class";
+		ClassLoader classLoader = clazz.getClassLoader();
+		InputStream in = (classLoader != null ? classLoader.getResourceAsStream(resource) : ClassLoader.getSystemResourceAsStream(resource));
+		if(in == null) {
+			logger.debug("No bytecode found for class '"+clazz.getName()+"'");
+			return new ArrayList<String>();
+		}
+		
+		try {
+			return findSynchronizedBlocks(new DataInputStream(in));
+		} catch(IOException e) {
+			logger.warn("Failed to inspect bytecode of class '"+clazz.getName()+"'. Error: " + e.getMessage());
+			return new ArrayList<String>();
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+	
+	/**
+	 * Reads the given class file and returns the names of the methods containing a <i>monitorenter</i> instruction
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	protected static List<String> findSynchronizedBlocks(DataInputStream in) throws IOException {
+		
+		if(in.readInt() != CLASS_FILE_MAGIC)
+			throw new IOException("Invalid class file");
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+		
+		// only utf8 entries are kept as they provide the names of methods and attributes
+		int constantPoolCount = in.readUnsignedShort();
+		String[] utf8Constants = new String[constantPoolCount];
+		for(int i = 1; i < constantPoolCount; i++) {
+			int tag = in.readUnsignedByte();
+			switch(tag) {
+				case 1: // utf8
+					utf8Constants[i] = in.readUTF();
+					break;
+				case 7: // class
+				case 8: // string
+				case 16: // method type
+				case 19: // module
+				case 20: // package
+					skipFully(in, 2);
+					break;
+				case 15: // method handle
+					skipFully(in, 3);
+					break;
+				case 3: // integer
+				case 4: // float
+				case 9: // field reference
+				case 10: // method reference
+				case 11: // interface method reference
+				case 12: // name and type
+				case 17: // dynamic
+				case 18: // invoke dynamic
+					skipFully(in, 4);
+					break;
+				case 5: // long
+				case 6: // double - occupies two entries
+					skipFully(in, 8);
+					i = i + 1;
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+		
+		in.readUnsignedShort(); // access flags
+		in.readUnsignedShort(); // this class
+		in.readUnsignedShort(); // super class
+		skipFully(in, 2 * in.readUnsignedShort()); // interfaces
+		
+		int fieldCount = in.readUnsignedShort();
+		for(int i = 0; i < fieldCount; i++) {
+			skipFully(in, 6);
+			skipAttributes(in);
+		}
+		
+		List<String> methods = new ArrayList<String>();
+		int methodCount = in.readUnsignedShort();
+		for(int i = 0; i < methodCount; i++) {
+			in.readUnsignedShort(); // access flags
+			String methodName = utf8Constants[in.readUnsignedShort()];
+			in.readUnsignedShort(); // descriptor
+			
+			int attributeCount = in.readUnsignedShort();
+			for(int j = 0; j < attributeCount; j++) {
+				String attributeName = utf8Constants[in.readUnsignedShort()];
+				int attributeLength = in.readInt();
+				if(!CODE_ATTRIBUTE.equals(attributeName)) {
+					skipFully(in, attributeLength);
+					continue;
+				}
+				
+				byte[] attribute = new byte[attributeLength];
+				in.readFully(attribute);
+				// max stack, max locals and code length precede the code
+				if(containsMonitorEnter(attribute, 8, readInt(attribute, 4)) && !methods.contains(methodName))
+					methods.add(methodName);
+			}
+		}
+		return methods;
+	}
+	
+	/**
+	 * Walks the instructions of the given code and returns true if any of them is a <i>monitorenter</i>. Operands are skipped, thus 
+	 * they are never mistaken for opcodes
+	 * @param code
+	 * @param offset position of the first instruction
+	 * @param length
+	 * @return
+	 * @throws IOException
+	 */
+	protected static boolean containsMonitorEnter(byte[] code, int offset, int length) throws IOException {
+		
+		int pc = 0;
+		while(pc < length) {
+			int opcode = code[offset + pc] & 0xff;
+			if(opcode == OPCODE_MONITORENTER)
+				return true;
+			
+			int instructionLength = INSTRUCTION_LENGTHS[opcode];
+			if(opcode == OPCODE_WIDE) {
+				instructionLength = ((code[offset + pc + 1] & 0xff) == OPCODE_IINC ? 6 : 4);
+			} else if(opcode == OPCODE_TABLESWITCH || opcode == OPCODE_LOOKUPSWITCH) {
+				// operands are aligned to a multiple of four bytes relative to the start of the code
+				int operands = pc + 1 + ((4 - ((pc + 1) % 4)) % 4);
+				if(opcode == OPCODE_TABLESWITCH) {
+					int low = readInt(code, offset + operands + 4);
+					int high = readInt(code, offset + operands + 8);
+					instructionLength = operands - pc + 12 + 4 * (high - low + 1);
+				} else {
+					int pairs = readInt(code, offset + operands + 4);
+					instructionLength = operands - pc + 8 + 8 * pairs;
+				}
+			} else if(instructionLength == 0) {
+				throw new IOException("Unknown opcode " + opcode + " found at " + pc);
+			}
+			pc = pc + instructionLength;
+		}
+		return false;
+	}
+	
+	/**
+	 * Reads a big endian int from the given position
+	 * @param code
+	 * @param position
+	 * @return
+	 */
+	private static int readInt(byte[] code, int position) {
+		return ((code[position] & 0xff) << 24) | ((code[position + 1] & 0xff) << 16) | ((code[position + 2] & 0xff) << 8) | (code[position + 3] & 0xff);
+	}
+	
+	/**
+	 * Skips the attributes following in the given stream
+	 * @param in
+	 * @throws IOException
+	 */
+	private static void skipAttributes(DataInputStream in) throws IOException {
+		int attributeCount = in.readUnsignedShort();
+		for(int i = 0; i < attributeCount; i++) {
+			in.readUnsignedShort(); // name
+			skipFully(in, in.readInt());
+		}
+	}
+	
+	/**
+	 * Skips the given number of bytes
+	 * @param in
+	 * @param bytes
+	 * @throws IOException
+	 */
+	private static void skipFully(DataInputStream in, int bytes) throws IOException {
+		int remaining = bytes;
+		while(remaining > 0) {
+			int skipped = in.skipBytes(remaining);
+			if(skipped <= 0)
+				throw new IOException("Unexpected end of class file");
+			remaining = remaining - skipped;
+		}
+	}
+}
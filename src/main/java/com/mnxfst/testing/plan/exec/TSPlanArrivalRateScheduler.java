@@ -0,0 +1,373 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanExecutionFailedException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanExecutorResult;
+import com.mnxfst.testing.plan.stats.TSPlanStatisticsRecorder;
+
+/**
+ * Executes a {@link TSPlan} following the open model: plan iterations are started at a fixed arrival rate, no matter
+ * how long it takes to execute them. Each iteration is handed to an idle {@link TSPlanExecutor} running on the provided
+ * worker pool, thus the number of executors caps the number of in-flight iterations.<br/><br/>
+ * If no executor is idle at the intended start of an iteration, the scheduler waits until the next iteration is due. The
+ * iteration is counted as <i>delayed</i> if an executor becomes available within that time, otherwise it is <i>dropped</i>.
+ * Dropped iterations are recorded to the corrected single run durations as the time passed since their intended start plus the 
+ * mean duration of the iterations executed so far, thus the corrected percentiles include the stalls which made them drop.
+ * For {@link TSPlanRecurrenceType#TIMES} the number of recurrences refers to the scheduled iterations, including the dropped ones.
+ * @author mnxfst
+ * @since 21.02.2012
+ */
+public class TSPlanArrivalRateScheduler {
+
+	private static final Logger logger = Logger.getLogger(TSPlanArrivalRateScheduler.class);
+	
+	private static final long NANOS_PER_SECOND = 1000L * 1000L * 1000L;
+
+	/** target arrival rate (iterations per second) */
+	private double arrivalRate = 0;
+	private int recurrences = 0;
+	private TSPlanRecurrenceType recurrenceType = TSPlanRecurrenceType.UNKNOWN;
+	/** number of scheduled iterations treated as warm-up */
+	private int warmUpIterations = 0;
+	/** time (millis) after the schedule start during which scheduled iterations are treated as warm-up */
+	private long warmUpDuration = 0;
+	/** pool running the plan iterations */
+	private ExecutorService workerPool = null;
+	/** holds the workers which are currently not executing an iteration */
+	private BlockingQueue<TSPlanIterationWorker> idleWorkers = null;
+	/** all workers, required for collecting the results */
+	private List<TSPlanIterationWorker> workers = new ArrayList<TSPlanIterationWorker>();
+	
+	/** number of iterations the scheduler tried to start - warm-up iterations excluded */
+	private long scheduledIterations = 0;
+	/** number of iterations started after their intended start as no executor was idle */
+	private long delayedIterations = 0;
+	/** number of iterations dropped as no executor became idle before the next iteration was due */
+	private long droppedIterations = 0;
+	/** receives the corrected durations of the dropped iterations - the recorder of the first executor */
+	private TSPlanStatisticsRecorder droppedIterationRecorder = null;
+	/** sum (nanoseconds) and number of measured iterations executed so far - the expected run time of dropped iterations is derived from them */
+	private final AtomicLong executedIterationNanos = new AtomicLong(0);
+	private final AtomicLong executedIterationCount = new AtomicLong(0);
+	
+	private volatile boolean interrupted = false;
+
+	/**
+	 * Initializes the scheduler
+	 * @param arrivalRate target arrival rate (iterations per second)
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param executors executors running the iterations - the number of executors caps the number of in-flight iterations
+	 * @param workerPool pool running the iterations, must provide at least one thread per executor 
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanArrivalRateScheduler(double arrivalRate, int recurrences, TSPlanRecurrenceType recurrenceType, List<TSPlanExecutor> executors, ExecutorService workerPool) throws TSPlanInstantiationException {
+		this(arrivalRate, recurrences, recurrenceType, 0, 0, executors, workerPool);
+	}
+	
+	/**
+	 * Initializes the scheduler. The iterations scheduled during the warm-up are recorded separately and do not count as recurrences,
+	 * time based recurrences start after the warm-up
+	 * @param arrivalRate target arrival rate (iterations per second)
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param warmUpIterations number of scheduled iterations treated as warm-up - values less than or equal to 0 disable the warm-up by iterations
+	 * @param warmUpDuration time (millis) after the schedule start during which iterations are treated as warm-up - values less than or equal to 0 disable the warm-up by duration
+	 * @param executors executors running the iterations - the number of executors caps the number of in-flight iterations
+	 * @param workerPool pool running the iterations, must provide at least one thread per executor 
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanArrivalRateScheduler(double arrivalRate, int recurrences, TSPlanRecurrenceType recurrenceType, int warmUpIterations, long warmUpDuration, List<TSPlanExecutor> executors, ExecutorService workerPool) throws TSPlanInstantiationException {
+		
+		if(arrivalRate <= 0)
+			throw new TSPlanInstantiationException("Invalid arrival rate: " + arrivalRate + ". Values greater 0 are expected");
+		if(recurrences < 1)
+			throw new TSPlanInstantiationException("Invalid number of recurrences: " + recurrences + ". Values greater 0 are expected");
+		if(recurrenceType == null || recurrenceType == TSPlanRecurrenceType.UNKNOWN || recurrenceType == TSPlanRecurrenceType.INFINITE)
+			throw new TSPlanInstantiationException("Unsupported recurrence type: " + recurrenceType);
+		if(executors == null || executors.isEmpty())
+			throw new TSPlanInstantiationException("No executors provided");
+		if(workerPool == null)
+			throw new TSPlanInstantiationException("No worker pool provided");
+		
+		this.arrivalRate = arrivalRate;
+		this.recurrences = recurrences;
+		this.recurrenceType = recurrenceType;
+		this.warmUpIterations = warmUpIterations;
+		this.warmUpDuration = warmUpDuration;
+		this.workerPool = workerPool;
+		this.idleWorkers = new ArrayBlockingQueue<TSPlanIterationWorker>(executors.size());
+		this.droppedIterationRecorder = executors.get(0).getStatisticsRecorder();
+		for(TSPlanExecutor executor : executors) {
+			TSPlanIterationWorker worker = new TSPlanIterationWorker(executor, idleWorkers, executedIterationNanos, executedIterationCount);
+			workers.add(worker);
+			idleWorkers.add(worker);
+		}
+	}
+	
+	/**
+	 * Schedules the plan iterations at the configured arrival rate until the configured number of recurrences is reached, waits
+	 * for all in-flight iterations to finish and returns the results for each executor
+	 * @return
+	 * @throws TSPlanExecutionFailedException
+	 */
+	public List<TSPlanExecutorResult> execute() throws TSPlanExecutionFailedException {
+		
+		long overallStart = System.currentTimeMillis();
+		
+		// intended start times are computed from the schedule start to avoid accumulating drift 
+		long intervalNanos = (long)(NANOS_PER_SECOND / arrivalRate);
+		if(intervalNanos < 1)
+			intervalNanos = 1;
+		long windowNanos = getScheduleWindowNanos();
+		long scheduleStart = System.nanoTime();
+		
+		// the recurrences are counted from the end of the warm-up
+		boolean warmUp = TSPlanExecutor.isWarmUp(warmUpIterations, warmUpDuration, 0, 0);
+		long measurementStartIteration = 0;
+		long measurementStart = scheduleStart;
+		
+		try {
+			for(long iteration = 0; !interrupted; iteration++) {
+				
+				long intendedStart = scheduleStart + iteration * intervalNanos;
+				if(warmUp && !TSPlanExecutor.isWarmUp(warmUpIterations, warmUpDuration, iteration, TSPlanExecutor.nanosToMillis(intendedStart - scheduleStart))) {
+					warmUp = false;
+					measurementStartIteration = iteration;
+					measurementStart = intendedStart;
+				}
+				
+				if(!warmUp) {
+					if(recurrenceType == TSPlanRecurrenceType.TIMES) {
+						if(iteration - measurementStartIteration >= recurrences)
+							break;
+					} else if(intendedStart - measurementStart >= windowNanos) {
+						break;
+					}
+					scheduledIterations = scheduledIterations + 1;
+				}
+				
+				if(!TSPlanExecutor.waitUntil(intendedStart))
+					break;
+				
+				// fetch an idle worker - if none is available, wait until the next iteration is due
+				TSPlanIterationWorker worker = idleWorkers.poll();
+				if(worker == null) {
+					long remaining = (intendedStart + intervalNanos) - System.nanoTime();
+					if(remaining > 0)
+						worker = idleWorkers.poll(remaining, TimeUnit.NANOSECONDS);
+					if(worker == null) {
+						if(!warmUp) {
+							droppedIterations = droppedIterations + 1;
+							droppedIterationRecorder.recordCorrectedRun(System.nanoTime() - intendedStart + getExpectedRunNanos());
+						}
+						continue;
+					}
+					if(!warmUp)
+						delayedIterations = delayedIterations + 1;
+				}
+				
+				// stop scheduling as soon as any iteration failed
+				if(worker.getFailure() != null) {
+					idleWorkers.offer(worker);
+					break;
+				}
+				
+				// the latency of an iteration is also measured from its intended start to account for the time it had to wait for an executor
+				worker.setIntendedStart(intendedStart);
+				worker.setWarmUp(warmUp);
+				workerPool.execute(worker);
+			}
+			
+			// wait for all in-flight iterations to finish
+			for(int i = 0; i < workers.size(); i++)
+				idleWorkers.take();
+			
+		} catch(InterruptedException e) {
+			throw new TSPlanExecutionFailedException("Interrupted while scheduling test plan iterations. Error: " + e.getMessage(), e);
+		}
+		
+		long overallEnd = System.currentTimeMillis();
+		
+		List<TSPlanExecutorResult> results = new ArrayList<TSPlanExecutorResult>();
+		for(TSPlanIterationWorker worker : workers) {
+			if(worker.getFailure() != null)
+				throw new TSPlanExecutionFailedException("Test plan execution failed. Error: " + worker.getFailure().getMessage(), worker.getFailure());
+			TSPlanExecutorResult result = worker.getExecutor().createResult(overallStart, overallEnd, worker.getActivityExecutionErrorCount());
+			result.setWarmUpErrors(worker.getWarmUpErrorCount());
+			results.add(result);
+		}
+
+		if(logger.isDebugEnabled())
+			logger.debug("[arrivalRate: " + arrivalRate + ", recurrences: " + recurrences + ", recType: " + recurrenceType + ", executors: " + workers.size() + ", scheduled: " + scheduledIterations + ", delayed: " + delayedIterations + ", dropped: " + droppedIterations + "]");
+		
+		return results;
+	}
+	
+	/**
+	 * Returns the mean duration (nanoseconds) of the measured iterations executed so far - 0 if there are none
+	 * @return
+	 */
+	protected long getExpectedRunNanos() {
+		long count = executedIterationCount.get();
+		return (count > 0 ? executedIterationNanos.get() / count : 0);
+	}
+	
+	/**
+	 * Stops scheduling further iterations
+	 */
+	public void interrupt() {
+		this.interrupted = true;
+	}
+	
+	/**
+	 * Returns the time window (nanoseconds) iterations are scheduled for - applies to time based recurrence types only
+	 * @return
+	 */
+	protected long getScheduleWindowNanos() {
+		switch(recurrenceType) {
+			case MILLIS:
+				return TimeUnit.MILLISECONDS.toNanos(recurrences);
+			case SECONDS:
+				return TimeUnit.SECONDS.toNanos(recurrences);
+			case MINUTES:
+				return TimeUnit.MINUTES.toNanos(recurrences);
+			case HOURS:
+				return TimeUnit.HOURS.toNanos(recurrences);
+			case DAYS:
+				return TimeUnit.DAYS.toNanos(recurrences);
+			default:
+				return Long.MAX_VALUE;
+		}
+	}
+	
+	public double getArrivalRate() {
+		return arrivalRate;
+	}
+
+	public long getScheduledIterations() {
+		return scheduledIterations;
+	}
+
+	public long getDelayedIterations() {
+		return delayedIterations;
+	}
+
+	public long getDroppedIterations() {
+		return droppedIterations;
+	}
+	
+	/**
+	 * Executes a single plan iteration on the assigned {@link TSPlanExecutor} and records its duration with the executor. The worker
+	 * is handed over between the scheduler and the worker pool via the idle queue, thus it is never accessed concurrently
+	 * @author mnxfst
+	 * @since 21.02.2012
+	 */
+	private static class TSPlanIterationWorker implements Runnable {
+		
+		private TSPlanExecutor executor = null;
+		private BlockingQueue<TSPlanIterationWorker> idleWorkers = null;
+		/** sum and number of measured iterations executed by all workers */
+		private AtomicLong executedIterationNanos = null;
+		private AtomicLong executedIterationCount = null;
+		/** intended start (nanoseconds) of the next iteration */
+		private long intendedStart = 0;
+		/** true if the next iteration belongs to the warm-up */
+		private boolean warmUp = false;
+		private int activityExecutionErrorCount = 0;
+		private int warmUpErrorCount = 0;
+		private Exception failure = null;
+		
+		public TSPlanIterationWorker(TSPlanExecutor executor, BlockingQueue<TSPlanIterationWorker> idleWorkers, AtomicLong executedIterationNanos, AtomicLong executedIterationCount) {
+			this.executor = executor;
+			this.idleWorkers = idleWorkers;
+			this.executedIterationNanos = executedIterationNanos;
+			this.executedIterationCount = executedIterationCount;
+		}
+		
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			executor.setWarmUp(warmUp);
+			long singleExecStart = System.nanoTime();
+			try {
+				int errors = executor.executePlanIteration();
+				long singleExecEnd = System.nanoTime();
+				if(warmUp) {
+					warmUpErrorCount = warmUpErrorCount + errors;
+					executor.getStatisticsRecorder().recordWarmUpRun(singleExecEnd - singleExecStart);
+				} else {
+					activityExecutionErrorCount = activityExecutionErrorCount + errors;
+					executor.recordRun(singleExecStart, singleExecEnd, intendedStart);
+					executedIterationNanos.addAndGet(singleExecEnd - singleExecStart);
+					executedIterationCount.incrementAndGet();
+				}
+			} catch(TSPlanExecutionFailedException e) {
+				failure = e;
+			} catch(TSPlanActivityExecutionException e) {
+				failure = e;
+			} catch(RuntimeException e) {
+				failure = e;
+			} finally {
+				idleWorkers.offer(this);
+			}
+		}
+
+		public TSPlanExecutor getExecutor() {
+			return executor;
+		}
+
+		public void setIntendedStart(long intendedStart) {
+			this.intendedStart = intendedStart;
+		}
+
+		public void setWarmUp(boolean warmUp) {
+			this.warmUp = warmUp;
+		}
+
+		public int getWarmUpErrorCount() {
+			return warmUpErrorCount;
+		}
+
+		public int getActivityExecutionErrorCount() {
+			return activityExecutionErrorCount;
+		}
+
+		public Exception getFailure() {
+			return failure;
+		}
+		
+	}
+}
@@ -0,0 +1,410 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.activities.TSPlanActivity;
+import com.mnxfst.testing.activities.TSPlanActivityCompletionHandler;
+import com.mnxfst.testing.activities.TSPlanAsyncActivity;
+import com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime;
+import com.mnxfst.testing.activities.TSPlanSyncActivityAdapter;
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanExecutionFailedException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.exception.TSPlanMissingException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.TSCompiledPlan;
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanExecutorResult;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.ctx.TSPlanSharedContext;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStatisticsRecorder;
+
+/**
+ * Event-driven counterpart to the {@link TSPlanExecutor}: keeps a configured number of plan iterations in flight, each one 
+ * behaving like a {@link TSPlanExecutor} of its own (own context, same recurrence settings). Iterations are driven as state
+ * machines which advance whenever an {@link TSPlanAsyncActivity asynchronous activity} completes, thus no thread is held
+ * while an activity waits. Synchronous activities are run through the {@link TSPlanSyncActivityAdapter}. All iterations record 
+ * into the same {@link TSPlanStatisticsRecorder}, thus the results are reported as a single {@link TSPlanExecutorResult} 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanAsyncExecutor implements Callable<TSPlanExecutorResult> {
+
+	private static final Logger logger = Logger.getLogger(TSPlanAsyncExecutor.class);
+	
+	private TSPlan testPlan = null;
+	/** compiled activity graph of the test plan */
+	private TSCompiledPlan compiledPlan = null;
+	/** activities of the compiled plan (by index) - synchronous ones are wrapped by an adapter */
+	private TSPlanAsyncActivity[] activities = null;
+	private String executionEnvironmentId = null;
+	private String planExecutorId = null; 
+	private int recurrences = -1;
+	private TSPlanRecurrenceType recurrenceType = TSPlanRecurrenceType.UNKNOWN;
+	/** number of plan iterations being in flight at the same time */
+	private int concurrentIterations = 0;
+	private volatile boolean interrupted = false;
+	/** global values shared by the contexts of all iterations - may be null */
+	private TSPlanSharedContext sharedContext = null;
+	/** run variable holding the name of the activity to continue with instead of the configured next activity */
+	private TSPlanContextVariable nextActivityOverride = null;
+	/** threads used for driving the iterations */
+	private TSPlanAsyncActivityRuntime runtime = null;
+	/** interval (nanoseconds) between the intended starts of two consecutive plan runs of the same iteration - 0 disables pacing */
+	private long pacingNanos = 0;
+	/** number of plan runs per iteration treated as warm-up */
+	private int warmUpIterations = 0;
+	/** time (millis) after the start during which plan runs are treated as warm-up */
+	private long warmUpDuration = 0;
+	/** number of significant digits used for recording the single run durations */
+	private int histogramSignificantDigits = TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS;
+	/** receives the statistics of all iterations - created for each execution */
+	private TSPlanStatisticsRecorder statisticsRecorder = null;
+	
+	/**
+	 * Initializes the executor
+	 * @param testPlan
+	 * @param executionEnvironmentId
+	 * @param planExecutorId
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param concurrentIterations number of plan iterations being in flight at the same time
+	 * @param preconfiguredDurableContextVariables
+	 * @param histogramSignificantDigits number of significant digits used for recording single run durations
+	 * @param runtime threads used for driving the iterations
+	 */
+	public TSPlanAsyncExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType, int concurrentIterations, Map<String, Serializable> preconfiguredDurableContextVariables, int histogramSignificantDigits, TSPlanAsyncActivityRuntime runtime) throws TSPlanMissingException, TSPlanInstantiationException {
+		
+		if(testPlan == null)
+			throw new TSPlanMissingException("Missing required test plan");
+		if(concurrentIterations < 1)
+			throw new TSPlanInstantiationException("Invalid number of concurrent iterations: " + concurrentIterations + ". Values greater 0 are expected");
+		if(runtime == null || runtime.getEventLoop() == null || runtime.getBlockingExecutor() == null)
+			throw new TSPlanInstantiationException("Missing required event loop or blocking executor");
+		
+		this.testPlan = testPlan;
+		this.compiledPlan = TSPlanExecutor.getCompiledPlan(testPlan);
+		this.activities = new TSPlanAsyncActivity[compiledPlan.getActivityCount()];
+		for(int i = 0; i < activities.length; i++)
+			this.activities[i] = TSPlanSyncActivityAdapter.adapt(compiledPlan.getActivity(i));
+		
+		this.executionEnvironmentId = executionEnvironmentId;
+		this.planExecutorId = planExecutorId;
+		this.recurrences = recurrences;
+		this.recurrenceType = recurrenceType;
+		this.concurrentIterations = concurrentIterations;
+		this.sharedContext = TSPlanExecutor.createSharedContext(testPlan, preconfiguredDurableContextVariables);
+		this.nextActivityOverride = compiledPlan.getContextSlotTable().getVariable(TSPlanExecutor.NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE, ExecutionContextValueType.RUN);
+		this.histogramSignificantDigits = histogramSignificantDigits;
+		this.runtime = runtime;
+		this.pacingNanos = (testPlan.getPacing() > 0 ? testPlan.getPacing() * TSPlanExecutor.NANOS_PER_MILLI : 0);
+		this.warmUpIterations = testPlan.getWarmUpIterations();
+		this.warmUpDuration = testPlan.getWarmUpDuration();
+		
+		if(logger.isDebugEnabled())
+			logger.debug("TSPlanAsyncExecutor[testPlan="+testPlan.getName()+", execEnvId="+executionEnvironmentId+", executorId="+planExecutorId+", recurrences="+recurrences+", recType="+recurrenceType+", concurrentIterations="+concurrentIterations+"]");
+	}
+
+	/**
+	 * Starts the configured number of iterations on the event loop and waits until all of them have finished
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	public TSPlanExecutorResult call() throws Exception {
+		
+		if(recurrenceType == TSPlanRecurrenceType.INFINITE || recurrenceType == TSPlanRecurrenceType.UNKNOWN)
+			throw new TSPlanExecutionFailedException("Unsupported recurrence type: " + recurrenceType);
+
+		long overallStart = System.currentTimeMillis();
+		statisticsRecorder = TSPlanExecutor.createStatisticsRecorder(testPlan, histogramSignificantDigits);
+		
+		CountDownLatch finishedIterations = new CountDownLatch(concurrentIterations);
+		TSPlanIteration[] iterations = new TSPlanIteration[concurrentIterations];
+		for(int i = 0; i < iterations.length; i++)
+			iterations[i] = new TSPlanIteration(finishedIterations, overallStart);
+		for(int i = 0; i < iterations.length; i++)
+			runtime.getEventLoop().execute(iterations[i]);
+		
+		finishedIterations.await();
+		
+		long overallEnd = System.currentTimeMillis();
+
+		// the figures are recorded into the shared recorder, only the error counts are kept by each iteration
+		int activityExecutionErrorCount = 0;
+		int warmUpErrorCount = 0;
+		for(TSPlanIteration iteration : iterations) {
+			if(iteration.executionError != null)
+				throw iteration.executionError;
+			activityExecutionErrorCount = activityExecutionErrorCount + iteration.activityExecutionErrorCount;
+			warmUpErrorCount = warmUpErrorCount + iteration.warmUpErrorCount;
+		}
+		
+		TSLatencyHistogram singleRunDurationHistogram = statisticsRecorder.getSingleRunDurationHistogram();
+		long duration = (overallEnd - overallStart);
+		long singleRunMin = TSPlanExecutor.nanosToMillis(singleRunDurationHistogram.getMinValue());
+		long singleRunMax = TSPlanExecutor.nanosToMillis(singleRunDurationHistogram.getMaxValue());
+		long averagePlanExecDuration = (long)(singleRunDurationHistogram.getMean() / TSPlanExecutor.NANOS_PER_MILLI);
+		double durationMedian = singleRunDurationHistogram.getValueAtPercentile(50.0) / (double)TSPlanExecutor.NANOS_PER_MILLI;
+		
+		if(logger.isDebugEnabled())
+			logger.debug("[execEnv:" + executionEnvironmentId + ", executor: " + planExecutorId + ", recurrences: " + recurrences + ", recType: " + recurrenceType + ", concurrentIterations: " + concurrentIterations + ", duration: " + duration+", averageRunDuration: "+ averagePlanExecDuration +", durationMedian: " +durationMedian +"]");
+		
+		TSPlanExecutorResult result = new TSPlanExecutorResult(executionEnvironmentId, planExecutorId, testPlan.getName(), overallStart, overallEnd, duration, singleRunMin, singleRunMax, averagePlanExecDuration, durationMedian, activityExecutionErrorCount);
+		result.setSingleRunDurationHistogram(singleRunDurationHistogram);
+		result.setCorrectedSingleRunDurationHistogram(statisticsRecorder.getCorrectedSingleRunDurationHistogram());
+		result.setActivityStatistics(statisticsRecorder.getActivityStatistics());
+		result.setWarmUpDurationHistogram(statisticsRecorder.getWarmUpDurationHistogram());
+		result.setWarmUpErrors(warmUpErrorCount);
+		return result;
+	}
+	
+	/**
+	 * Lets all iterations finish after their current plan run
+	 */
+	public void interrupt() {
+		this.interrupted = true;
+	}
+	
+	/**
+	 * Shuts down the contained {@link TSPlanActivity activities}
+	 */
+	public void shutdown() {
+		// activities of shared plans are kept for further executions
+		if(testPlan.isShared())
+			return;
+		for(TSPlanActivity activity : testPlan.getActivities().values()) {
+			try {
+				activity.shutdown();
+				logger.info("Activity '"+activity.getName()+"' successfully shutdown");
+			} catch(Exception e) {
+				logger.error("Failed to shutdown activity '"+activity.getName()+"'. Error: " + e.getMessage(), e);
+			}
+		}
+	}
+	
+	public int getConcurrentIterations() {
+		return concurrentIterations;
+	}
+	
+	/**
+	 * Returns the recorder receiving the statistics of the current or last execution - null if never executed
+	 * @return
+	 */
+	public TSPlanStatisticsRecorder getStatisticsRecorder() {
+		return statisticsRecorder;
+	}
+	
+	/**
+	 * A single iteration walking the plan again and again until the recurrence settings are fulfilled. Each step is executed
+	 * on the event loop: either the start of a plan run or the advance to the next activity after the previous one completed. 
+	 * The iteration is handed over between threads via the event loop queue, thus it is never accessed by two threads at the same time
+	 * @author mnxfst
+	 */
+	private class TSPlanIteration implements Runnable, TSPlanActivityCompletionHandler {
+		
+		private final CountDownLatch finishedIterations;
+		private final long loopExecutionStart;
+		/** start (millis) of the measurement - the end of the warm-up */
+		private long measurementStart = 0;
+		private final long loopExecutionStartNanos = System.nanoTime();
+		private TSPlanExecutionContext context = new TSPlanExecutionContext(compiledPlan.getContextSlotTable(), sharedContext);
+		
+		/** errors counted by this iteration */
+		private int activityExecutionErrorCount = 0;
+		private int warmUpErrorCount = 0;
+		/** true as long as the plan runs belong to the warm-up */
+		private boolean warmUp = false;
+		/** set in case the plan run must be aborted, eg. due to a loop */
+		private TSPlanExecutionFailedException executionError = null;
+		
+		/** plan run number each activity has been visited last - used for detecting loops caused by next activity overrides */
+		private final long[] activityLastVisitedRun = new long[compiledPlan.getActivityCount()];
+		private long completedRuns = 0;
+		/** number of plan runs completed after the warm-up */
+		private long measuredRuns = 0;
+		
+		/** true if the next step is the start of a plan run, false if it is the advance to the next activity */
+		private boolean startRun = true;
+		private long singleExecIntendedStart = 0;
+		private long singleExecStart = 0;
+		private int currentActivityIndex = TSCompiledPlan.FINAL_ACTIVITY_INDEX;
+		/** shared statistics receiving the current activity execution */
+		private TSPlanActivityStatistics currentActivityStatistics = null;
+		private long activityStart = 0;
+		private long activityEnd = 0;
+		private boolean activityFailed = false;
+		
+		TSPlanIteration(CountDownLatch finishedIterations, long loopExecutionStart) {
+			this.finishedIterations = finishedIterations;
+			this.loopExecutionStart = loopExecutionStart;
+			this.measurementStart = loopExecutionStart;
+			this.warmUp = TSPlanExecutor.isWarmUp(warmUpIterations, warmUpDuration, 0, 0);
+			this.singleExecIntendedStart = loopExecutionStartNanos;
+		}
+		
+		/**
+		 * Executes the next step on the event loop
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			try {
+				if(startRun) {
+					startRun = false;
+					singleExecStart = System.nanoTime();
+					if(pacingNanos <= 0)
+						singleExecIntendedStart = singleExecStart;
+					context.clearTransientValueStore();
+					executeActivity(compiledPlan.getInitActivityIndex());
+				} else {
+					advance();
+				}
+			} catch(TSPlanExecutionFailedException e) {
+				logger.error("Plan iteration failed. Error: " + e.getMessage(), e);
+				executionError = e;
+				finishedIterations.countDown();
+			} catch(RuntimeException e) {
+				logger.error("Plan iteration failed. Error: " + e.getMessage(), e);
+				executionError = new TSPlanExecutionFailedException("Plan iteration failed. Error: " + e.getMessage(), e);
+				finishedIterations.countDown();
+			}
+		}
+
+		/**
+		 * @see com.mnxfst.testing.activities.TSPlanActivityCompletionHandler#completed(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext)
+		 */
+		public void completed(TSPlanExecutionContext ctx) {
+			activityEnd = System.nanoTime();
+			activityFailed = false;
+			context = ctx;
+			runtime.getEventLoop().execute(this);
+		}
+
+		/**
+		 * @see com.mnxfst.testing.activities.TSPlanActivityCompletionHandler#failed(com.mnxfst.testing.plan.ctx.TSPlanExecutionContext, com.mnxfst.testing.exception.TSPlanActivityExecutionException)
+		 */
+		public void failed(TSPlanExecutionContext ctx, TSPlanActivityExecutionException e) {
+			activityEnd = System.nanoTime();
+			activityFailed = true;
+			logger.error("Failed to execute activity: " + compiledPlan.getActivityName(currentActivityIndex) +". Error: " + e.getMessage(), e);
+			runtime.getEventLoop().execute(this);
+		}
+		
+		/**
+		 * Starts the activity referenced by the given index or finishes the plan run if the final activity has been reached. Nothing 
+		 * must be done after the activity has been started as it may have completed already
+		 * @param activityIndex
+		 */
+		private void executeActivity(int activityIndex) {
+			if(activityIndex == TSCompiledPlan.FINAL_ACTIVITY_INDEX) {
+				finishRun();
+				return;
+			}
+			activityLastVisitedRun[activityIndex] = completedRuns + 1;
+			currentActivityIndex = activityIndex;
+			currentActivityStatistics = (warmUp ? statisticsRecorder.getWarmUpActivityStatistics(activityIndex) : statisticsRecorder.getActivityStatistics(activityIndex));
+			context.setActivityStatistics(currentActivityStatistics);
+			activityStart = System.nanoTime();
+			activities[activityIndex].executeAsync(context, runtime, this);
+		}
+		
+		/**
+		 * Records the completed activity and moves on to its successor
+		 * @throws TSPlanExecutionFailedException
+		 */
+		private void advance() throws TSPlanExecutionFailedException {
+			
+			currentActivityStatistics.recordExecution(activityEnd - activityStart, activityFailed);
+			if(activityFailed)
+				activityExecutionErrorCount = activityExecutionErrorCount + 1;
+			
+			int nextActivityIndex = TSCompiledPlan.FINAL_ACTIVITY_INDEX;
+			if(context.hasContextVariable(nextActivityOverride)) {
+				String nextActivityName = (String)context.getContextValue(nextActivityOverride);
+				context.removeContextValue(nextActivityOverride);
+				nextActivityIndex = compiledPlan.getActivityIndex(nextActivityName);
+				if(nextActivityIndex == TSCompiledPlan.UNKNOWN_ACTIVITY_INDEX)
+					throw new TSPlanExecutionFailedException("Test plan execution failed. Unknown activity: " + nextActivityName);
+			} else {
+				try {
+					nextActivityIndex = compiledPlan.resolveSuccessor(currentActivityIndex, context);
+				} catch(TSVariableEvaluationFailedException e) {
+					throw new TSPlanExecutionFailedException("Test plan execution failed. Failed to evaluate transition of activity '"+compiledPlan.getActivityName(currentActivityIndex)+"'. Error: " + e.getMessage(), e);
+				}
+				if(nextActivityIndex == TSCompiledPlan.UNKNOWN_ACTIVITY_INDEX)
+					throw new TSPlanExecutionFailedException("Test plan execution failed. Transition of activity '"+compiledPlan.getActivityName(currentActivityIndex)+"' selected an unknown activity");
+			}
+			
+			if(nextActivityIndex != TSCompiledPlan.FINAL_ACTIVITY_INDEX && activityLastVisitedRun[nextActivityIndex] == completedRuns + 1)
+				throw new TSPlanExecutionFailedException("Test plan execution failed. Loop found for activity: " + compiledPlan.getActivityName(nextActivityIndex));
+			
+			executeActivity(nextActivityIndex);
+		}
+		
+		/**
+		 * Records the finished plan run and either schedules the next one or marks the iteration as finished
+		 */
+		private void finishRun() {
+			
+			long singleExecEnd = System.nanoTime();
+			completedRuns = completedRuns + 1;
+			if(warmUp) {
+				statisticsRecorder.recordWarmUpRun(singleExecEnd - singleExecStart);
+				
+				// as soon as the warm-up is completed, the measurement starts from scratch - activities record into the measured statistics from now on
+				if(!TSPlanExecutor.isWarmUp(warmUpIterations, warmUpDuration, completedRuns, System.currentTimeMillis() - loopExecutionStart)) {
+					warmUp = false;
+					warmUpErrorCount = activityExecutionErrorCount;
+					activityExecutionErrorCount = 0;
+					measurementStart = System.currentTimeMillis();
+				}
+			} else {
+				statisticsRecorder.recordRun(singleExecEnd - singleExecStart, singleExecEnd - singleExecIntendedStart);
+				measuredRuns = measuredRuns + 1;
+			}
+			
+			if(interrupted || (!warmUp && TSPlanExecutor.isRecurrenceCompleted(recurrenceType, recurrences, measuredRuns, measurementStart))) {
+				finishedIterations.countDown();
+				return;
+			}
+			
+			startRun = true;
+			if(pacingNanos > 0) {
+				// runs are intended to start at a fixed interval - computed from the loop start to avoid accumulating drift
+				singleExecIntendedStart = loopExecutionStartNanos + completedRuns * pacingNanos;
+				long delay = singleExecIntendedStart - System.nanoTime();
+				if(delay > 0) {
+					runtime.getEventLoop().schedule(this, delay, TimeUnit.NANOSECONDS);
+					return;
+				}
+			}
+			runtime.getEventLoop().execute(this);
+		}
+	}
+}
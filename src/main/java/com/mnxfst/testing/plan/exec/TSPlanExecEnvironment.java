@@ -20,6 +20,8 @@
 package com.mnxfst.testing.plan.exec;
 
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -27,15 +29,25 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
+import com.mnxfst.testing.activities.TSPlanActivity;
+import com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime;
 import com.mnxfst.testing.exception.TSPlanExecutionFailedException;
 import com.mnxfst.testing.exception.TSPlanInstantiationException;
 import com.mnxfst.testing.exception.TSPlanMissingException;
 import com.mnxfst.testing.plan.TSPlan;
 import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
 import com.mnxfst.testing.plan.TSPlanExecutorResult;
+import com.mnxfst.testing.plan.ctx.TSPlanSharedContext;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStageStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStatisticsRecorder;
 
 /**
  * Provides an execution environment for parallel {@link TSPlanExecutor test plan executors} being ramped up
@@ -48,6 +60,11 @@ public class TSPlanExecEnvironment {
 
 	private static final Logger logger = Logger.getLogger(TSPlanExecEnvironment.class); 
 	
+	/** default max. number of threads running blocking work, eg. synchronous activities, for the event loop backend */
+	public static final int DEFAULT_MAX_BLOCKING_THREADS = 64;
+	/** time (seconds) an idle blocking thread is kept alive */
+	private static final long BLOCKING_THREAD_KEEP_ALIVE_SECONDS = 60;
+	
 	// number of parallel executors (= threads) to use
 	private int numberOfParallelExecutors = 0;
 	
@@ -57,11 +74,36 @@ public class TSPlanExecEnvironment {
 	// holds the services which controls the executors
 	private ExecutorService executorService = null;
 	
+	// kind of threads the executors run on
+	private TSPlanExecutorBackend executorBackend = TSPlanExecutorBackend.PLATFORM_THREADS;
+	
 	// as the environment is being initialized, it fills this list containing a configured number of test plan executors 
 	private List<TSPlanExecutor> testPlanExecutors = new ArrayList<TSPlanExecutor>();
 	
+	// recorders shared by the test plan executors - executor n records into recorder n modulo the number of recorders
+	private List<TSPlanStatisticsRecorder> statisticsRecorders = new ArrayList<TSPlanStatisticsRecorder>();
+	
+	// event-driven executor replacing the list of test plan executors when running on the event loop backend
+	private TSPlanAsyncExecutor asyncExecutor = null;
+	
+	// event loop and blocking executor used by the event-driven executor
+	private TSPlanAsyncActivityRuntime asyncActivityRuntime = null;
+	
 	// stores the test plan name
 	private String testPlanName = null;
+	
+	// target arrival rate (iterations per second) taken from the test plan - values less than or equal to 0 select the closed model
+	private double arrivalRate = 0;
+	// interval (millis) between the intended starts of two consecutive plan runs on the same executor taken from the test plan
+	private long pacing = 0;
+	// number of active executors over time - null if all executors are started at once
+	private TSPlanLoadProfile loadProfile = null;
+	// warm-up settings taken from the test plan
+	private int warmUpIterations = 0;
+	private long warmUpDuration = 0;
+	private int recurrences = 0;
+	private TSPlanRecurrenceType recurrenceType = TSPlanRecurrenceType.UNKNOWN;
+	private int histogramSignificantDigits = TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS;
 
 	public TSPlanExecEnvironment(String executionEnvironmentId, final TSPlan testPlan, int recurrences, TSPlanRecurrenceType recurrenceType, int numOfParallelExecutors) throws TSPlanMissingException, TSPlanInstantiationException {
 		this(executionEnvironmentId, testPlan, recurrences, recurrenceType, numOfParallelExecutors, null);
@@ -79,6 +121,78 @@ public class TSPlanExecEnvironment {
 	 * @throws TSPlanInstantiationException
 	 */
 	public TSPlanExecEnvironment(String executionEnvironmentId, final TSPlan testPlan, int recurrences, TSPlanRecurrenceType recurrenceType, int numOfParallelExecutors, Map<String, Serializable> preconfiguredDurableContextVariables) throws TSPlanMissingException, TSPlanInstantiationException {
+		this(executionEnvironmentId, testPlan, recurrences, recurrenceType, numOfParallelExecutors, preconfiguredDurableContextVariables, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+	}
+	
+	/**
+	 * Initializes the execution environment
+	 * @param executionEnvironmentId
+	 * @param testPlan
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param numOfParallelExecutors
+	 * @param preconfiguredDurableContextVariables
+	 * @param histogramSignificantDigits number of significant digits used by the executors for recording single run durations
+	 * @throws TSPlanMissingException
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanExecEnvironment(String executionEnvironmentId, final TSPlan testPlan, int recurrences, TSPlanRecurrenceType recurrenceType, int numOfParallelExecutors, Map<String, Serializable> preconfiguredDurableContextVariables, int histogramSignificantDigits) throws TSPlanMissingException, TSPlanInstantiationException {
+		this(executionEnvironmentId, testPlan, recurrences, recurrenceType, numOfParallelExecutors, preconfiguredDurableContextVariables, histogramSignificantDigits, TSPlanExecutorBackend.PLATFORM_THREADS);
+	}
+	
+	/**
+	 * Initializes the execution environment
+	 * @param executionEnvironmentId
+	 * @param testPlan
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param numOfParallelExecutors
+	 * @param preconfiguredDurableContextVariables
+	 * @param histogramSignificantDigits number of significant digits used by the executors for recording single run durations
+	 * @param executorBackend kind of threads the executors run on
+	 * @throws TSPlanMissingException
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanExecEnvironment(String executionEnvironmentId, final TSPlan testPlan, int recurrences, TSPlanRecurrenceType recurrenceType, int numOfParallelExecutors, Map<String, Serializable> preconfiguredDurableContextVariables, int histogramSignificantDigits, TSPlanExecutorBackend executorBackend) throws TSPlanMissingException, TSPlanInstantiationException {
+		this(executionEnvironmentId, testPlan, recurrences, recurrenceType, numOfParallelExecutors, preconfiguredDurableContextVariables, histogramSignificantDigits, executorBackend, null);
+	}
+	
+	/**
+	 * Initializes the execution environment. If a load profile is provided (or attached to the test plan), the executors are started and
+	 * stopped following that profile: the number of executors is taken from the profile peak and the recurrence settings do not apply   
+	 * @param executionEnvironmentId
+	 * @param testPlan
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param numOfParallelExecutors
+	 * @param preconfiguredDurableContextVariables
+	 * @param histogramSignificantDigits number of significant digits used by the executors for recording single run durations
+	 * @param executorBackend kind of threads the executors run on
+	 * @param loadProfile number of active executors over time, overrides the profile attached to the test plan - may be null
+	 * @throws TSPlanMissingException
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanExecEnvironment(String executionEnvironmentId, final TSPlan testPlan, int recurrences, TSPlanRecurrenceType recurrenceType, int numOfParallelExecutors, Map<String, Serializable> preconfiguredDurableContextVariables, int histogramSignificantDigits, TSPlanExecutorBackend executorBackend, TSPlanLoadProfile loadProfile) throws TSPlanMissingException, TSPlanInstantiationException {
+		this(executionEnvironmentId, testPlan, recurrences, recurrenceType, numOfParallelExecutors, preconfiguredDurableContextVariables, histogramSignificantDigits, executorBackend, loadProfile, DEFAULT_MAX_BLOCKING_THREADS);
+	}
+	
+	/**
+	 * Initializes the execution environment. If a load profile is provided (or attached to the test plan), the executors are started and
+	 * stopped following that profile: the number of executors is taken from the profile peak and the recurrence settings do not apply   
+	 * @param executionEnvironmentId
+	 * @param testPlan
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param numOfParallelExecutors
+	 * @param preconfiguredDurableContextVariables
+	 * @param histogramSignificantDigits number of significant digits used by the executors for recording single run durations
+	 * @param executorBackend kind of threads the executors run on
+	 * @param loadProfile number of active executors over time, overrides the profile attached to the test plan - may be null
+	 * @param maxBlockingThreads max. number of threads running blocking work for the {@link TSPlanExecutorBackend#EVENT_LOOP event loop backend}
+	 * @throws TSPlanMissingException
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanExecEnvironment(String executionEnvironmentId, final TSPlan testPlan, int recurrences, TSPlanRecurrenceType recurrenceType, int numOfParallelExecutors, Map<String, Serializable> preconfiguredDurableContextVariables, int histogramSignificantDigits, TSPlanExecutorBackend executorBackend, TSPlanLoadProfile loadProfile, int maxBlockingThreads) throws TSPlanMissingException, TSPlanInstantiationException {
 		// ensure that the provided input is valid
 		if(executionEnvironmentId == null || executionEnvironmentId.isEmpty())
 			throw new TSPlanInstantiationException("Failed to instantiate test plan due to missing execution environment identifier");
@@ -95,18 +209,130 @@ public class TSPlanExecEnvironment {
 		if(numOfParallelExecutors < 1)
 			throw new TSPlanInstantiationException("Failed to instantiate test plan due to an invalid number of parallel executors provided to execution environment '"+executionEnvironmentId+"'");
 		
+		if(histogramSignificantDigits < 0 || histogramSignificantDigits > TSLatencyHistogram.MAX_SIGNIFICANT_DIGITS)
+			throw new TSPlanInstantiationException("Invalid number of significant histogram digits: " + histogramSignificantDigits + ". Values between 0 and " + TSLatencyHistogram.MAX_SIGNIFICANT_DIGITS + " are expected");
+		
+		if(executorBackend == null || executorBackend == TSPlanExecutorBackend.UNKNOWN)
+			throw new TSPlanInstantiationException("Executor backend not provided or unknown: " + executorBackend);
+		
+		if(maxBlockingThreads < 1)
+			throw new TSPlanInstantiationException("Invalid max. number of blocking threads: " + maxBlockingThreads + ". Values greater 0 are expected");
+		
+		if(executorBackend == TSPlanExecutorBackend.EVENT_LOOP && testPlan.getArrivalRate() > 0)
+			throw new TSPlanInstantiationException("The executor backend " + executorBackend + " does not support arrival rates");
+		
+		if(loadProfile == null)
+			loadProfile = testPlan.getLoadProfile();
+		if(loadProfile != null) {
+			if(testPlan.getArrivalRate() > 0)
+				throw new TSPlanInstantiationException("Load profiles are not supported in combination with arrival rates");
+			if(executorBackend == TSPlanExecutorBackend.EVENT_LOOP)
+				throw new TSPlanInstantiationException("The executor backend " + executorBackend + " does not support load profiles");
+			if(loadProfile.getMaxExecutors() < 1)
+				throw new TSPlanInstantiationException("The load profile does not activate any executor");
+			
+			// the profile peak determines the number of executors 
+			if(numOfParallelExecutors != loadProfile.getMaxExecutors())
+				logger.info("Load profile requires " + loadProfile.getMaxExecutors() + " executors instead of " + numOfParallelExecutors + " in execution environment '"+executionEnvironmentId+"'");
+			numOfParallelExecutors = loadProfile.getMaxExecutors();
+		}
+		
 		// assign received values and initialize executor service		
 		this.executionEnvironmentId = executionEnvironmentId;
 		this.numberOfParallelExecutors = numOfParallelExecutors;			
-		this.executorService = Executors.newFixedThreadPool(this.numberOfParallelExecutors);
+		this.loadProfile = loadProfile;
+		this.pacing = testPlan.getPacing();
+		this.warmUpIterations = testPlan.getWarmUpIterations();
+		this.warmUpDuration = testPlan.getWarmUpDuration();
+		this.executorBackend = executorBackend;
 		this.testPlanName = testPlan.getName();
+		this.arrivalRate = testPlan.getArrivalRate();
+		this.recurrences = recurrences;
+		this.recurrenceType = recurrenceType;
+		this.histogramSignificantDigits = histogramSignificantDigits;
+		
+		if(executorBackend == TSPlanExecutorBackend.EVENT_LOOP) {
+			// a single event-driven executor keeps one plan iteration in flight for each requested executor
+			this.asyncActivityRuntime = new TSPlanAsyncActivityRuntime(Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors()), createBlockingExecutor(Math.min(maxBlockingThreads, this.numberOfParallelExecutors)));
+			this.asyncExecutor = new TSPlanAsyncExecutor(testPlan, executionEnvironmentId, executionEnvironmentId + "-executor-0", recurrences, recurrenceType, this.numberOfParallelExecutors, preconfiguredDurableContextVariables, histogramSignificantDigits, asyncActivityRuntime);
+		} else {
+			this.executorService = createExecutorService(executorBackend, this.numberOfParallelExecutors);
+			
+			// the executors share a number of statistics recorders which does not exceed the number of processors, thus the memory 
+			// allocated for histograms does not grow with the number of executors 
+			int numOfRecorders = Math.min(this.numberOfParallelExecutors, Runtime.getRuntime().availableProcessors());
+			for(int i = 0; i < numOfRecorders; i++)
+				statisticsRecorders.add(TSPlanExecutor.createStatisticsRecorder(testPlan, histogramSignificantDigits));
+			
+			// instantiate a configured number of test plan executors - all of them read the preconfigured variables from the same shared layer
+			TSPlanSharedContext sharedContext = TSPlanExecutor.createSharedContext(testPlan, preconfiguredDurableContextVariables);
+			for(int i = 0; i < this.numberOfParallelExecutors; i++)
+				testPlanExecutors.add(new TSPlanExecutor(testPlan, executionEnvironmentId, executionEnvironmentId + "-executor-"+i, recurrences, recurrenceType, sharedContext, histogramSignificantDigits, statisticsRecorders.get(i % numOfRecorders)));
+		}
 		
-		// instantiate a configured number of test plan executors
-		for(int i = 0; i < this.numberOfParallelExecutors; i++)
-			testPlanExecutors.add(new TSPlanExecutor(testPlan, executionEnvironmentId, executionEnvironmentId + "-executor-"+i, recurrences, recurrenceType, preconfiguredDurableContextVariables));
+		// activities blocking inside synchronized methods or blocks pin the carrier thread of a virtual thread 
+		if(executorBackend == TSPlanExecutorBackend.VIRTUAL_THREADS) {
+			for(String pinningCandidate : findCarrierPinningCandidates(testPlan))
+				logger.warn("Activity method '" + pinningCandidate + "' is synchronized or contains a synchronized block, thus it pins the carrier thread while blocking inside on a virtual thread. " +
+						"Synchronized code of the libraries called by activities is not detected, see " + TSPlanExecutorBackend.class.getName() + "#VIRTUAL_THREADS");
+		}
 		
 		if(logger.isDebugEnabled())
-			logger.debug("New test plan execution environment instantiated: [execEnvId="+executionEnvironmentId+", testPlan="+testPlan.getName()+", numOfParallelExecutors="+testPlanExecutors.size()+", recurrences="+recurrences+", recurrenceType="+recurrenceType+"]");
+			logger.debug("New test plan execution environment instantiated: [execEnvId="+executionEnvironmentId+", testPlan="+testPlan.getName()+", numOfParallelExecutors="+numberOfParallelExecutors+", recurrences="+recurrences+", recurrenceType="+recurrenceType+", executorBackend="+executorBackend+"]");
+	}
+	
+	/**
+	 * Creates the executor service for the given backend: a fixed size thread pool for {@link TSPlanExecutorBackend#PLATFORM_THREADS}
+	 * and a virtual thread per task executor for {@link TSPlanExecutorBackend#VIRTUAL_THREADS}. The latter is looked up
+	 * reflectively as it is available on Java 21+ runtimes only 
+	 * @param executorBackend
+	 * @param numOfThreads
+	 * @return
+	 * @throws TSPlanInstantiationException thrown in case the backend is not supported by the running JVM
+	 */
+	protected static ExecutorService createExecutorService(TSPlanExecutorBackend executorBackend, int numOfThreads) throws TSPlanInstantiationException {
+		
+		if(executorBackend != TSPlanExecutorBackend.VIRTUAL_THREADS)
+			return Executors.newFixedThreadPool(numOfThreads);
+		
+		try {
+			Method factoryMethod = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)factoryMethod.invoke(null);
+		} catch(NoSuchMethodException e) {
+			throw new TSPlanInstantiationException("Virtual threads are not supported by the running JVM (" + System.getProperty("java.version") + "). Java 21 or later is required", e);
+		} catch(IllegalAccessException e) {
+			throw new TSPlanInstantiationException("Failed to create virtual thread executor. Error: " + e.getMessage(), e);
+		} catch(InvocationTargetException e) {
+			throw new TSPlanInstantiationException("Failed to create virtual thread executor. Error: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Creates the executor running blocking work for the event loop backend: a fixed number of threads which are released when idle. 
+	 * Each plan iteration waits for at most one blocking task at a time, thus the queue never holds more tasks than iterations are in flight  
+	 * @param numOfThreads
+	 * @return
+	 */
+	protected static ExecutorService createBlockingExecutor(int numOfThreads) {
+		ThreadPoolExecutor blockingExecutor = new ThreadPoolExecutor(numOfThreads, numOfThreads, BLOCKING_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		blockingExecutor.allowCoreThreadTimeOut(true);
+		return blockingExecutor;
+	}
+	
+	/**
+	 * Returns the methods (format: activity name, class and method) declared by the activities of the given test plan or any of 
+	 * their super classes which are synchronized or contain a synchronized block, see {@link TSPlanActivityPinningInspector}. 
+	 * Blocking inside such a method pins the carrier thread of a virtual thread. Synchronized code of called libraries is not found 
+	 * @param testPlan
+	 * @return
+	 */
+	protected static List<String> findCarrierPinningCandidates(TSPlan testPlan) {
+		List<String> candidates = new ArrayList<String>();
+		for(TSPlanActivity activity : testPlan.getActivities().values()) {
+			for(String method : TSPlanActivityPinningInspector.findPinningMethods(activity.getClass()))
+				candidates.add(activity.getName() + ": " + method);
+		}
+		return candidates;
 	}
 
 	/**
@@ -117,19 +343,27 @@ public class TSPlanExecEnvironment {
 	public TSPlanExecEnvironmentResult execute() throws TSPlanExecutionFailedException {
 		
 		long execStart = System.currentTimeMillis();
-		// TODO: check this for large number of executors and large number of recurrences - there were issues the other day in another test environment
-		// test plan invocation results
-		List<Future<TSPlanExecutorResult>> testPlanInvocResults = null;
-		try {
-			testPlanInvocResults = executorService.invokeAll(testPlanExecutors);			 
-		} catch (InterruptedException e) {
-			throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+		
+		// run the plan either following the open model (fixed arrival rate) or the closed model (executors loop the plan)
+		TSPlanArrivalRateScheduler scheduler = null;
+		List<TSPlanExecutorResult> executorResults = null;
+		if(arrivalRate > 0) {
+			try {
+				scheduler = new TSPlanArrivalRateScheduler(arrivalRate, recurrences, recurrenceType, warmUpIterations, warmUpDuration, testPlanExecutors, executorService);
+			} catch(TSPlanInstantiationException e) {
+				throw new TSPlanExecutionFailedException("Failed to initialize arrival rate scheduler in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+			}
+			executorResults = scheduler.execute();
+		} else if(loadProfile != null) {
+			try {
+				executorResults = new TSPlanLoadProfileScheduler(loadProfile, pacing, warmUpIterations, warmUpDuration, testPlanExecutors, executorService).execute();
+			} catch(TSPlanInstantiationException e) {
+				throw new TSPlanExecutionFailedException("Failed to initialize load profile scheduler in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+			}
+		} else {
+			executorResults = executeClosedModel();
 		}
 		
-		// no results found ==> error
-		if(testPlanInvocResults == null)
-			throw new TSPlanExecutionFailedException("Test plan execution failed for all threads in: " + executionEnvironmentId);		
-
 		// create new exec env result
 		TSPlanExecEnvironmentResult result = new TSPlanExecEnvironmentResult(executionEnvironmentId, testPlanName);
 		result.setStartMillis(execStart);
@@ -149,43 +383,70 @@ public class TSPlanExecEnvironment {
 		long singleRunMax = 0;
 		long singleRunMin = Long.MAX_VALUE;
 		
-		double averageDurationMedian = 0;
+		// merged distributions of single run durations for all executors
+		TSLatencyHistogram singleRunDurationHistogram = null;
+		TSLatencyHistogram correctedSingleRunDurationHistogram = null;
 		
+		// merged distribution of the single runs executed during the warm-up - kept apart from the measured runs
+		TSLatencyHistogram warmUpDurationHistogram = null;
+		int warmUpErrors = 0;
 		
 		// iterate through results, extract them, provide missing data, move to overall result set
-		for(Future<TSPlanExecutorResult> futureRes : testPlanInvocResults) {
-			try {
-				TSPlanExecutorResult executorResult = futureRes.get();
-				if(executorResult == null) {
-					logger.error("Failed to retrieve results from a " + TSPlanExecutor.class.getName());
-				} else {
-					
-					// add plan exec duration and median to overall duration for calculating the average duration
-					averageDuration = averageDuration + executorResult.getDurationMillis();
-					averageDurationMedian = averageDurationMedian + executorResult.getDurationMedian();
-					numOfValidResults = numOfValidResults + 1;
-					
-					// validate the min/max runtimes for each executor and re-set the values if necessary
-					if(maxDuration < executorResult.getDurationMillis())
-						maxDuration = executorResult.getDurationMillis();
-					if(minDuration > executorResult.getDurationMillis())
-						minDuration = executorResult.getDurationMillis();
-					if(executorResult.getErrors() > 0)
-						errors = errors + executorResult.getErrors();
-
-					// count up the average runtimes for a single plan exec run. re-set the min/max timers accordingly
-					singleRunAvg = singleRunAvg + executorResult.getSingleRunExecutionDurationAverage();
-					if(singleRunMax < executorResult.getSingleRunExecutionDurationMax())
-						singleRunMax = executorResult.getSingleRunExecutionDurationMax();
-					if(singleRunMin > executorResult.getSingleRunExecutionDurationMin())
-						singleRunMin = executorResult.getSingleRunExecutionDurationMin();
-					
-					result.addExecutorId(executorResult.getPlanExecutorId());
+		for(TSPlanExecutorResult executorResult : executorResults) {
+			if(executorResult == null) {
+				logger.error("Failed to retrieve results from a " + TSPlanExecutor.class.getName());
+			} else {
+				// add plan exec duration to overall duration for calculating the average duration
+				averageDuration = averageDuration + executorResult.getDurationMillis();
+				numOfValidResults = numOfValidResults + 1;
+				
+				// validate the min/max runtimes for each executor and re-set the values if necessary
+				if(maxDuration < executorResult.getDurationMillis())
+					maxDuration = executorResult.getDurationMillis();
+				if(minDuration > executorResult.getDurationMillis())
+					minDuration = executorResult.getDurationMillis();
+				if(executorResult.getErrors() > 0)
+					errors = errors + executorResult.getErrors();
+
+				// merge the single run durations into the overall distributions
+				singleRunDurationHistogram = mergeHistogram(singleRunDurationHistogram, executorResult.getSingleRunDurationHistogram());
+				correctedSingleRunDurationHistogram = mergeHistogram(correctedSingleRunDurationHistogram, executorResult.getCorrectedSingleRunDurationHistogram());
+				warmUpDurationHistogram = mergeHistogram(warmUpDurationHistogram, executorResult.getWarmUpDurationHistogram());
+				warmUpErrors = warmUpErrors + executorResult.getWarmUpErrors();
+				
+				// merge the activity statistics
+				if(executorResult.getActivityStatistics() != null) {
+					for(TSPlanActivityStatistics statistics : executorResult.getActivityStatistics().values())
+						result.addActivityStatistics(statistics);
 				}
-			} catch (InterruptedException e) {
-				throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
-			} catch (ExecutionException e) {
-				throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+				
+				// merge the load profile stage statistics
+				if(executorResult.getStageStatistics() != null) {
+					for(TSPlanStageStatistics statistics : executorResult.getStageStatistics().values())
+						result.addStageStatistics(statistics);
+				}
+				
+				// count up the average runtimes for a single plan exec run. re-set the min/max timers accordingly
+				singleRunAvg = singleRunAvg + executorResult.getSingleRunExecutionDurationAverage();
+				if(singleRunMax < executorResult.getSingleRunExecutionDurationMax())
+					singleRunMax = executorResult.getSingleRunExecutionDurationMax();
+				if(singleRunMin > executorResult.getSingleRunExecutionDurationMin())
+					singleRunMin = executorResult.getSingleRunExecutionDurationMin();
+				
+				result.addExecutorId(executorResult.getPlanExecutorId());
+			}
+		}
+		
+		// executors sharing a recorder do not report distributions or activity statistics of their own
+		for(TSPlanStatisticsRecorder recorder : statisticsRecorders) {
+			singleRunDurationHistogram = mergeHistogram(singleRunDurationHistogram, recorder.getSingleRunDurationHistogram());
+			correctedSingleRunDurationHistogram = mergeHistogram(correctedSingleRunDurationHistogram, recorder.getCorrectedSingleRunDurationHistogram());
+			warmUpDurationHistogram = mergeHistogram(warmUpDurationHistogram, recorder.getWarmUpDurationHistogram());
+			for(TSPlanActivityStatistics statistics : recorder.getActivityStatistics().values())
+				result.addActivityStatistics(statistics);
+			if(recorder.getStageStatistics() != null) {
+				for(TSPlanStageStatistics statistics : recorder.getStageStatistics().values())
+					result.addStageStatistics(statistics);
 			}
 		}
 		
@@ -196,15 +457,39 @@ public class TSPlanExecEnvironment {
 		result.setAverageDurationMillis(averageDuration / numOfValidResults);
 		result.setMinDurationMillis(minDuration);
 		result.setMaxDurationMillis(maxDuration);
-		result.setAverageDurationMedian(averageDurationMedian / numOfValidResults);
 		result.setErrors(errors);
-		result.setSingleRunExecutionDurationAverage(singleRunAvg / numOfValidResults);
 		result.setSingleRunExecutionDurationMax(singleRunMax);
 		result.setSingleRunExecutionDurationMin(singleRunMin);
+		if(singleRunDurationHistogram != null) {
+			// median and average are computed from the merged distribution instead of averaging the executor values
+			result.setSingleRunDurationHistogram(singleRunDurationHistogram);
+			result.setAverageDurationMedian(singleRunDurationHistogram.getValueAtPercentile(50.0) / 1000000.0);
+			result.setSingleRunExecutionDurationAverage((long)(singleRunDurationHistogram.getMean() / 1000000.0));
+			if(singleRunDurationHistogram.getTotalCount() > 0) {
+				result.setSingleRunExecutionDurationMin(singleRunDurationHistogram.getMinValue() / 1000000);
+				result.setSingleRunExecutionDurationMax(singleRunDurationHistogram.getMaxValue() / 1000000);
+			}
+		} else {
+			result.setSingleRunExecutionDurationAverage(singleRunAvg / numOfValidResults);
+		}
+		result.setCorrectedSingleRunDurationHistogram(correctedSingleRunDurationHistogram);
+		result.setWarmUpDurationHistogram(warmUpDurationHistogram);
+		result.setWarmUpErrors(warmUpErrors);
+		if(scheduler != null) {
+			result.setArrivalRate(scheduler.getArrivalRate());
+			result.setScheduledIterations(scheduler.getScheduledIterations());
+			result.setDelayedIterations(scheduler.getDelayedIterations());
+			result.setDroppedIterations(scheduler.getDroppedIterations());
+		}
 		
 		for(TSPlanExecutor e : testPlanExecutors) {
 			e.shutdown();
 		}
+		if(asyncExecutor != null) {
+			asyncExecutor.shutdown();
+			asyncActivityRuntime.getEventLoop().shutdown();
+			asyncActivityRuntime.getBlockingExecutor().shutdown();
+		}
 			
 		
 		if(logger.isDebugEnabled())
@@ -214,6 +499,67 @@ public class TSPlanExecEnvironment {
 		return result;
 	}
 
+	/**
+	 * Adds the source histogram to the target histogram. If there is no target histogram yet, a copy of the source is returned
+	 * @param target
+	 * @param source
+	 * @return
+	 */
+	private static TSLatencyHistogram mergeHistogram(TSLatencyHistogram target, TSLatencyHistogram source) {
+		if(source == null)
+			return target;
+		if(target == null)
+			return source.copy();
+		target.add(source);
+		return target;
+	}
+	
+	/**
+	 * Executes the test plan following the closed model: each executor loops the plan as fast as possible
+	 * @return
+	 * @throws TSPlanExecutionFailedException
+	 */
+	protected List<TSPlanExecutorResult> executeClosedModel() throws TSPlanExecutionFailedException {
+		
+		// the event-driven executor reports all iterations as a single result
+		if(asyncExecutor != null) {
+			List<TSPlanExecutorResult> executorResults = new ArrayList<TSPlanExecutorResult>();
+			try {
+				executorResults.add(asyncExecutor.call());
+			} catch(TSPlanExecutionFailedException e) {
+				throw e;
+			} catch(Exception e) {
+				throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+			}
+			return executorResults;
+		}
+		
+		// TODO: check this for large number of executors and large number of recurrences - there were issues the other day in another test environment
+		// test plan invocation results
+		List<Future<TSPlanExecutorResult>> testPlanInvocResults = null;
+		try {
+			testPlanInvocResults = executorService.invokeAll(testPlanExecutors);			 
+		} catch (InterruptedException e) {
+			throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+		}
+		
+		// no results found ==> error
+		if(testPlanInvocResults == null)
+			throw new TSPlanExecutionFailedException("Test plan execution failed for all threads in: " + executionEnvironmentId);		
+
+		List<TSPlanExecutorResult> executorResults = new ArrayList<TSPlanExecutorResult>();
+		for(Future<TSPlanExecutorResult> futureRes : testPlanInvocResults) {
+			try {
+				executorResults.add(futureRes.get());
+			} catch (InterruptedException e) {
+				throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+			} catch (ExecutionException e) {
+				throw new TSPlanExecutionFailedException("Test plan execution interrupted in: " + executionEnvironmentId + ". Error: " + e.getMessage(), e);
+			}
+		}
+		return executorResults;
+	}
+
 	public String getExecutionEnvironmentId() {
 		return executionEnvironmentId;
 	}
@@ -222,4 +568,12 @@ public class TSPlanExecEnvironment {
 		return testPlanName;
 	}
 
+	public TSPlanExecutorBackend getExecutorBackend() {
+		return executorBackend;
+	}
+
+	public TSPlanLoadProfile getLoadProfile() {
+		return loadProfile;
+	}
+
 }
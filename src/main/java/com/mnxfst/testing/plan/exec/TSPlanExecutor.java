@@ -20,24 +20,30 @@
 package com.mnxfst.testing.plan.exec;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.log4j.Logger;
 
 import com.mnxfst.testing.activities.TSPlanActivity;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
 import com.mnxfst.testing.exception.TSPlanExecutionFailedException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
 import com.mnxfst.testing.exception.TSPlanMissingException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.TSCompiledPlan;
 import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanBuilder;
 import com.mnxfst.testing.plan.TSPlanExecutorResult;
 import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
 import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.ctx.TSPlanSharedContext;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStatisticsRecorder;
 
 /**
  * Provides a closed runtime environment for a {@link TSPlan}. The results are returned following the {@link TSPlanExecutorResult} structure. 
@@ -49,18 +55,44 @@ public class TSPlanExecutor implements Callable<TSPlanExecutorResult> {
 	private static final Logger logger = Logger.getLogger(TSPlanExecutor.class);
 	
 	/** must be used by {@link TSPlanActivity} to override next activity value and must be removed by the {@link TSPlanExecutor} after forwarding to it */ 
-	private static final String NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE = "nextActivity.override";
+	protected static final String NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE = "nextActivity.override";
 	
-	/** name and identifier of final activity. if this one is reached, the executor stops and returns the result */
-	private static final String FINAL_ACTIVITY_NAME = "finish";
+	protected static final long NANOS_PER_MILLI = 1000L * 1000L;
 	
 	private TSPlan testPlan = null;
+	/** compiled activity graph of the test plan */
+	private TSCompiledPlan compiledPlan = null;
 	private String executionEnvironmentId = null;
 	private String planExecutorId = null; 
 	private int recurrences = -1;
 	private TSPlanRecurrenceType recurrenceType = TSPlanRecurrenceType.UNKNOWN;
-	private boolean interrupted = false;
-	private TSPlanExecutionContext context = new TSPlanExecutionContext();
+	private volatile boolean interrupted = false;
+	/** thread running the executor - woken up by {@link #interrupt()} while waiting for the intended start of a run */
+	private volatile Thread executingThread = null;
+	private TSPlanExecutionContext context = null;
+	/** run variable holding the name of the activity to continue with instead of the configured next activity */
+	private TSPlanContextVariable nextActivityOverride = null;
+	/** holds for each activity (by index) the number of the plan run it was visited last -- used for detecting loops caused by next activity overrides */
+	private long[] activityLastVisitedRun = null;
+	/** number of the current plan run */
+	private long planRunCounter = 0;
+	/** receives the run durations and activity statistics - allocated ahead of execution, thus recording does not allocate */
+	private TSPlanStatisticsRecorder statisticsRecorder = null;
+	/** true if the recorder is shared with other executors, thus the results must be taken from the recorder instead of the executor result */
+	private boolean sharedStatisticsRecorder = false;
+	/** true while the executed plan runs belong to the warm-up */
+	private boolean warmUp = false;
+	/** number, sum, min and max (nanoseconds) of the measured runs - reported by executors sharing their recorder */
+	private long measuredRuns = 0;
+	private long measuredRunNanos = 0;
+	private long measuredRunMinNanos = Long.MAX_VALUE;
+	private long measuredRunMaxNanos = 0;
+	/** interval (nanoseconds) between the intended starts of two consecutive plan runs - 0 disables pacing */
+	private long pacingNanos = 0;
+	/** number of plan runs treated as warm-up */
+	private int warmUpIterations = 0;
+	/** time (millis) after the loop start during which plan runs are treated as warm-up */
+	private long warmUpDuration = 0;
 
 	/**
 	 * Initializes the executor
@@ -70,7 +102,7 @@ public class TSPlanExecutor implements Callable<TSPlanExecutorResult> {
 	 * @param recurrences
 	 * @param recurrenceType
 	 */
-	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType) throws TSPlanMissingException {
+	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType) throws TSPlanMissingException, TSPlanInstantiationException {
 		this(testPlan, executionEnvironmentId, planExecutorId, recurrences, recurrenceType, null);
 	}
 	
@@ -83,28 +115,125 @@ public class TSPlanExecutor implements Callable<TSPlanExecutorResult> {
 	 * @param recurrenceType
 	 * @param context
 	 */
-	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType, Map<String, Serializable> preconfiguredDurableContextVariables) throws TSPlanMissingException  {
+	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType, Map<String, Serializable> preconfiguredDurableContextVariables) throws TSPlanMissingException, TSPlanInstantiationException  {
+		this(testPlan, executionEnvironmentId, planExecutorId, recurrences, recurrenceType, preconfiguredDurableContextVariables, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+	}
+	
+	/**
+	 * Initializes the executor
+	 * @param testPlan
+	 * @param executionEnvironmentId
+	 * @param planExecutorId
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param preconfiguredDurableContextVariables
+	 * @param histogramSignificantDigits number of significant digits used for recording single run durations
+	 */
+	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType, Map<String, Serializable> preconfiguredDurableContextVariables, int histogramSignificantDigits) throws TSPlanMissingException, TSPlanInstantiationException  {
+		this(testPlan, executionEnvironmentId, planExecutorId, recurrences, recurrenceType, createSharedContext(testPlan, preconfiguredDurableContextVariables), histogramSignificantDigits);
+	}
+	
+	/**
+	 * Initializes the executor. The global values of the shared context are read by the executor but never copied into its own context
+	 * @param testPlan
+	 * @param executionEnvironmentId
+	 * @param planExecutorId
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param sharedContext global values shared with all other executors of the test plan - may be null
+	 * @param histogramSignificantDigits number of significant digits used for recording single run durations
+	 */
+	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType, TSPlanSharedContext sharedContext, int histogramSignificantDigits) throws TSPlanMissingException, TSPlanInstantiationException  {
+		this(testPlan, executionEnvironmentId, planExecutorId, recurrences, recurrenceType, sharedContext, histogramSignificantDigits, null);
+	}
+	
+	/**
+	 * Initializes the executor. If a statistics recorder is provided, the executor records into it and its results do not contain any
+	 * distribution or activity statistics: these must be taken from the recorder once all executors sharing it have finished
+	 * @param testPlan
+	 * @param executionEnvironmentId
+	 * @param planExecutorId
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param sharedContext global values shared with all other executors of the test plan - may be null
+	 * @param histogramSignificantDigits number of significant digits used for recording single run durations
+	 * @param statisticsRecorder recorder shared with other executors of the test plan - if null, the executor uses a recorder of its own
+	 */
+	public TSPlanExecutor(TSPlan testPlan, String executionEnvironmentId, String planExecutorId, int recurrences, TSPlanRecurrenceType recurrenceType, TSPlanSharedContext sharedContext, int histogramSignificantDigits, TSPlanStatisticsRecorder statisticsRecorder) throws TSPlanMissingException, TSPlanInstantiationException  {
 		
 		if(testPlan == null)
 			throw new TSPlanMissingException("Missing required test plan");
 		
 		this.testPlan = testPlan;
+		this.compiledPlan = getCompiledPlan(testPlan);
+		if(sharedContext != null && sharedContext.getSlotTable() != compiledPlan.getContextSlotTable())
+			throw new TSPlanInstantiationException("The shared context does not belong to the compiled test plan '"+testPlan.getName()+"'");
+		this.activityLastVisitedRun = new long[compiledPlan.getActivityCount()];
+		this.context = new TSPlanExecutionContext(compiledPlan.getContextSlotTable(), sharedContext);
+		this.nextActivityOverride = compiledPlan.getContextSlotTable().getVariable(NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE, ExecutionContextValueType.RUN);
 		this.executionEnvironmentId = executionEnvironmentId;
 		this.planExecutorId = planExecutorId;
 		this.recurrences = recurrences;
 		this.recurrenceType = recurrenceType;
-		
-		if(preconfiguredDurableContextVariables != null && !preconfiguredDurableContextVariables.isEmpty()) {
-			for(String key : preconfiguredDurableContextVariables.keySet()) {
-				context.addContextValue(key, preconfiguredDurableContextVariables.get(key), ExecutionContextValueType.GLOBAL);
-			}
-		}		
+		this.pacingNanos = (testPlan.getPacing() > 0 ? testPlan.getPacing() * NANOS_PER_MILLI : 0);
+		this.warmUpIterations = testPlan.getWarmUpIterations();
+		this.warmUpDuration = testPlan.getWarmUpDuration();
+		this.sharedStatisticsRecorder = (statisticsRecorder != null);
+		this.statisticsRecorder = (statisticsRecorder != null ? statisticsRecorder : createStatisticsRecorder(testPlan, histogramSignificantDigits));
 				
 		if(logger.isDebugEnabled())
-			logger.debug("TSPlanExecutor[testPlan="+testPlan.getName()+", execEnvId="+executionEnvironmentId+", executorId="+planExecutorId+", recurrences="+recurrences+", recType="+recurrenceType+", preconfiguredVars="+context.getContextValueNames(ExecutionContextValueType.GLOBAL).size()+"]");
+			logger.debug("TSPlanExecutor[testPlan="+testPlan.getName()+", execEnvId="+executionEnvironmentId+", executorId="+planExecutorId+", recurrences="+recurrences+", recType="+recurrenceType+", preconfiguredVars="+(sharedContext != null ? sharedContext.size() : 0)+"]");
 		
 	}
 	
+	/**
+	 * Returns the compiled activity graph of the given test plan. If the plan has not been compiled yet, it is compiled and the 
+	 * result is attached to the plan, thus all executors share the same activity bindings and slot table
+	 * @param testPlan
+	 * @return
+	 * @throws TSPlanInstantiationException
+	 */
+	protected static TSCompiledPlan getCompiledPlan(TSPlan testPlan) throws TSPlanInstantiationException {
+		synchronized(testPlan) {
+			if(testPlan.getCompiledPlan() == null) {
+				try {
+					testPlan.setCompiledPlan(TSPlanBuilder.getInstance().compilePlan(testPlan));
+				} catch(TSPlanConfigurationFormatException e) {
+					throw new TSPlanInstantiationException("Failed to compile test plan '"+testPlan.getName()+"'. Error: " + e.getMessage(), e);
+				}
+			}
+			return testPlan.getCompiledPlan();
+		}
+	}
+	
+	/**
+	 * Creates the layer of global values shared by all executors of the given test plan. If no plan or no values are provided, the method returns null
+	 * @param testPlan
+	 * @param preconfiguredDurableContextVariables
+	 * @return
+	 * @throws TSPlanInstantiationException
+	 */
+	public static TSPlanSharedContext createSharedContext(TSPlan testPlan, Map<String, Serializable> preconfiguredDurableContextVariables) throws TSPlanInstantiationException {
+		if(testPlan == null || preconfiguredDurableContextVariables == null || preconfiguredDurableContextVariables.isEmpty())
+			return null;
+		return new TSPlanSharedContext(getCompiledPlan(testPlan).getContextSlotTable(), preconfiguredDurableContextVariables);
+	}
+	
+	/**
+	 * Creates a recorder for the statistics of the given test plan
+	 * @param testPlan
+	 * @param histogramSignificantDigits
+	 * @return
+	 * @throws TSPlanInstantiationException
+	 */
+	public static TSPlanStatisticsRecorder createStatisticsRecorder(TSPlan testPlan, int histogramSignificantDigits) throws TSPlanInstantiationException {
+		TSCompiledPlan compiledPlan = getCompiledPlan(testPlan);
+		String[] activityNames = new String[compiledPlan.getActivityCount()];
+		for(int i = 0; i < activityNames.length; i++)
+			activityNames[i] = compiledPlan.getActivityName(i);
+		return new TSPlanStatisticsRecorder(activityNames, histogramSignificantDigits);
+	}
+	
 	/**
 	 * Executes the test plan - if provided. In case there is not test plan,
 	 * a {@link TSPlanMissingException} will be thrown
@@ -113,10 +242,8 @@ public class TSPlanExecutor implements Callable<TSPlanExecutorResult> {
 	public TSPlanExecutorResult call() throws Exception {
 		if(testPlan == null)
 			throw new TSPlanMissingException("No test plan found");
+		this.executingThread = Thread.currentThread();
 
-		// holds a list of already visited activities -- used for avoiding loops
-		Set<String> alreadyVisitedActivities = new HashSet<String>();
-		
 		// start timer
 		long overallStart = System.currentTimeMillis();
 		
@@ -127,154 +254,66 @@ public class TSPlanExecutor implements Callable<TSPlanExecutorResult> {
 		// counts the errors which occur while executing an activity
 		int activityExecutionErrorCount = 0;
 		
-		// contain the average plan execution for all iterations
-		long averagePlanExecDuration = 0;
-		
-		// start / stop timestamp
+		// intended start / actual start / stop timestamp (nanoseconds)
+		long singleExecIntendedStart = 0;
 		long singleExecStart = 0;
 		long singleExecEnd = 0;
 		
-		// hold the min and max runtimes for a single run for all iterations
-		long singleRunMin = Long.MAX_VALUE;
-		long singleRunMax = 0;		
-		long singleRunDuration = 0;
+		// runs executed during the warm-up are recorded separately and do not count as recurrences 
+		warmUp = isWarmUp(warmUpIterations, warmUpDuration, 0, 0);
+		int warmUpErrorCount = 0;
+		long warmUpRuns = 0;
 		
 		boolean keepRunning = true;
 		long loopExecutionStart = System.currentTimeMillis();
+		long loopExecutionStartNanos = System.nanoTime();
 		long loopCounter = 0;
+		long iterationCounter = 0;
 		
-		List<Long> testPlanRuntimes = new ArrayList<Long>();
 		do {
 			
-			
-			// clear context for each plan execution run
-			context.clearTransientValueStore();
-			
-			// clear set of already visited activities for each execution run
-			alreadyVisitedActivities.clear();
-			
-			// holds the currently visited activity
-			TSPlanActivity currentActivity = null;
-			
-			// fetch the name of the next activity to visit - which is in this case the initial activity
-			String nextActivityName = testPlan.getInitActivityName();
+			// without pacing each run is intended to start as soon as the previous one has finished, otherwise runs are 
+			// intended to start at a fixed interval - computed from the loop start to avoid accumulating drift
+			if(pacingNanos > 0) {
+				singleExecIntendedStart = loopExecutionStartNanos + iterationCounter * pacingNanos;
+				if(!awaitIntendedStart(singleExecIntendedStart))
+					break;
+			}
+			iterationCounter = iterationCounter + 1;
 			
 			// set start timer
-			singleExecStart = System.currentTimeMillis();
+			singleExecStart = System.nanoTime();
+			if(pacingNanos <= 0)
+				singleExecIntendedStart = singleExecStart;
 			
-			// as long as the name of the next activity does not equal 'finish' and is not null, execute the next activity
-			while(nextActivityName != null && !nextActivityName.equalsIgnoreCase(FINAL_ACTIVITY_NAME)) {
-				
-				// add the activity to the set of already visited one to raise a base for finding loops
-				alreadyVisitedActivities.add(nextActivityName);
-					
-				// fetch the next activity and validate it against null
-				currentActivity = testPlan.getActivity(nextActivityName);
-				if(currentActivity == null)
-					throw new TSPlanExecutionFailedException("Test plan execution failed. Unknown activity: " + nextActivityName);
-					
-				if(context == null)
-					throw new TSPlanActivityExecutionException("Found invalid runtime context. Please check your setup and code");
+			// execute a single plan run
+			int errors = executePlanIteration();
+			
+			// set end timer and record the duration
+			singleExecEnd = System.nanoTime();
+			if(warmUp) {
+				statisticsRecorder.recordWarmUpRun(singleExecEnd - singleExecStart);
+				warmUpErrorCount = warmUpErrorCount + errors;
+				warmUpRuns = warmUpRuns + 1;
 				
-				try {
-					// execute the activity and get the context back
-					context = currentActivity.execute(context);
-				} catch(TSPlanActivityExecutionException e) {
-					activityExecutionErrorCount = activityExecutionErrorCount + 1;
-					logger.error("Failed to execute activity: " + currentActivity.getClass().getName() +". Error: " + e.getMessage(), e);
-				}
-	
-				// if the context has a special marker indicating that the "next activity" attribute must be ignored and
-				// the additionally provided activity must be executed, fetch the name and remove the special marker
-				if(context.hasContextVariable(NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE, ExecutionContextValueType.RUN)) {
-					nextActivityName = (String)context.getContextValue(NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE, ExecutionContextValueType.RUN);
-					context.removeContextValue(NEXT_ACTIVITY_OVERRIDE_ATTRIBUTE, ExecutionContextValueType.RUN);
-					// otherwise: fetch the name of the next activity
-				} else {
-					nextActivityName = currentActivity.getNextActivity();
+				// as soon as the warm-up is completed, the measurement starts from scratch
+				if(!isWarmUp(warmUpIterations, warmUpDuration, warmUpRuns, System.currentTimeMillis() - loopExecutionStart)) {
+					warmUp = false;
+					loopExecutionStart = System.currentTimeMillis();
+					loopExecutionStartNanos = System.nanoTime();
+					iterationCounter = 0;
 				}
-					
-				// check if the next activity has already been visited during this plan exeuction
-				if(alreadyVisitedActivities.contains(nextActivityName))
-					throw new TSPlanExecutionFailedException("Test plan execution failed. Loop found for activity: " + nextActivityName);
+			} else {
+				activityExecutionErrorCount = activityExecutionErrorCount + errors;
+				recordRun(singleExecStart, singleExecEnd, singleExecIntendedStart);
+				loopCounter = loopCounter + 1;
 			}
 			
-			// set end timer
-			singleExecEnd = System.currentTimeMillis();
-			
-			// calculate duration and match it for min / max runtimes so far
-			singleRunDuration = singleExecEnd - singleExecStart;			
-			if(singleRunMin > singleRunDuration )
-				singleRunMin = singleRunDuration;
-			if(singleRunMax < singleRunDuration)
-				singleRunMax = singleRunDuration;
-			
-			// insert the current runtime into the set of runtimes
-			testPlanRuntimes.add(Long.valueOf(singleRunDuration));
-			
-			// add plan exec duration to average plan duration
-			averagePlanExecDuration = averagePlanExecDuration + singleRunDuration;
-			
 			if(interrupted)
 				break;
 
 			// loop interruption
-			switch(recurrenceType) {
-				case DAYS: {
-					long duration = System.currentTimeMillis() - loopExecutionStart;
-					duration = duration / 1000; // millis > sec
-					duration = duration / 60; // sec > min					
-					duration = duration / 60; // min > hours
-					duration = duration / 24; // hours > days
-					
-					if(duration >= recurrences)
-						keepRunning = false;
-					break;
-				}
-				case HOURS: {
-					long duration = System.currentTimeMillis() - loopExecutionStart;
-					duration = duration / 1000; // millis > sec
-					duration = duration / 60; // sec > min					
-					duration = duration / 60; // min > hours
-					
-					if(duration >= recurrences)
-						keepRunning = false;
-					break;
-				}
-				case MINUTES: {
-					long duration = System.currentTimeMillis() - loopExecutionStart;
-					duration = duration / 1000; // millis > sec
-					duration = duration / 60; // sec > min					
-					
-					if(duration >= recurrences)
-						keepRunning = false;
-					break;
-				}
-				case SECONDS: {
-					long duration = System.currentTimeMillis() - loopExecutionStart;
-					duration = duration / 1000; // millis > sec
-					
-					if(duration >= recurrences)
-						keepRunning = false;
-					break;
-				}
-				case MILLIS: {
-					if((System.currentTimeMillis() - loopExecutionStart) >= recurrences)
-						keepRunning = false;
-					break;
-				}
-				case TIMES: {
-					loopCounter = loopCounter + 1;
-					if(loopCounter >= recurrences)
-						keepRunning = false;
-					break;
-				}
-				default: {
-					keepRunning = false;
-					logger.error("Invalid recurrence type " + recurrenceType);
-				}
-
-			}
+			keepRunning = warmUp || !isRecurrenceCompleted(recurrenceType, recurrences, loopCounter, loopExecutionStart);
 			
 		} while(keepRunning);
 		
@@ -282,71 +321,328 @@ public class TSPlanExecutor implements Callable<TSPlanExecutorResult> {
 		// set end timer for whole test run
 		long overallEnd = System.currentTimeMillis();
 		
+		TSPlanExecutorResult result = createResult(overallStart, overallEnd, activityExecutionErrorCount);
+		result.setWarmUpErrors(warmUpErrorCount);
+		return result;
+	}
+	
+	/**
+	 * Executes a single run of the test plan, starting with the initial activity and walking along the activities
+	 * until the final activity is reached. The method uses the context assigned to this executor, thus it must not
+	 * be called concurrently for the same executor
+	 * @return number of activities which failed to execute
+	 * @throws TSPlanExecutionFailedException
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected int executePlanIteration() throws TSPlanExecutionFailedException, TSPlanActivityExecutionException {
+		
+		// counts the errors which occur while executing an activity
+		int activityExecutionErrorCount = 0;
+		
+		// clear context for each plan execution run
+		context.clearTransientValueStore();
+		
+		// a new run number marks all activities as not visited during this run 
+		planRunCounter = planRunCounter + 1;
+		
+		// holds the currently visited activity
+		TSPlanActivity currentActivity = null;
+		
+		// fetch the index of the next activity to visit - which is in this case the initial activity
+		int nextActivityIndex = compiledPlan.getInitActivityIndex();
+		
+		// as long as the final activity has not been reached, execute the next activity
+		while(nextActivityIndex != TSCompiledPlan.FINAL_ACTIVITY_INDEX) {
+			
+			// mark the activity as visited during this run to raise a base for finding loops
+			activityLastVisitedRun[nextActivityIndex] = planRunCounter;
+				
+			// fetch the next activity
+			currentActivity = compiledPlan.getActivity(nextActivityIndex);
+				
+			if(context == null)
+				throw new TSPlanActivityExecutionException("Found invalid runtime context. Please check your setup and code");
+			
+			TSPlanActivityStatistics statistics = (warmUp ? statisticsRecorder.getWarmUpActivityStatistics(nextActivityIndex) : statisticsRecorder.getActivityStatistics(nextActivityIndex));
+			context.setActivityStatistics(statistics);
+			boolean failed = false;
+			long activityStart = System.nanoTime();
+			try {
+				// execute the activity and get the context back
+				context = currentActivity.execute(context);
+			} catch(TSPlanActivityExecutionException e) {
+				failed = true;
+				activityExecutionErrorCount = activityExecutionErrorCount + 1;
+				logger.error("Failed to execute activity: " + currentActivity.getClass().getName() +". Error: " + e.getMessage(), e);
+			}
+			statistics.recordExecution(System.nanoTime() - activityStart, failed);
+
+			// if the context has a special marker indicating that the "next activity" attribute must be ignored and
+			// the additionally provided activity must be executed, fetch the name and remove the special marker
+			if(context.hasContextVariable(nextActivityOverride)) {
+				String nextActivityName = (String)context.getContextValue(nextActivityOverride);
+				context.removeContextValue(nextActivityOverride);
+				nextActivityIndex = compiledPlan.getActivityIndex(nextActivityName);
+				if(nextActivityIndex == TSCompiledPlan.UNKNOWN_ACTIVITY_INDEX)
+					throw new TSPlanExecutionFailedException("Test plan execution failed. Unknown activity: " + nextActivityName);
+				// otherwise: fetch the index of the next activity - either the static successor or the one selected by the transition expression
+			} else {
+				nextActivityIndex = resolveSuccessor(nextActivityIndex);
+			}
+				
+			// check if the next activity has already been visited during this plan exeuction
+			if(nextActivityIndex != TSCompiledPlan.FINAL_ACTIVITY_INDEX && activityLastVisitedRun[nextActivityIndex] == planRunCounter)
+				throw new TSPlanExecutionFailedException("Test plan execution failed. Loop found for activity: " + compiledPlan.getActivityName(nextActivityIndex));
+		}
+		
+		return activityExecutionErrorCount;
+	}
+	
+	/**
+	 * Resolves the successor of the activity at the given index using the current context
+	 * @param activityIndex
+	 * @return
+	 * @throws TSPlanExecutionFailedException
+	 */
+	protected int resolveSuccessor(int activityIndex) throws TSPlanExecutionFailedException {
+		int successorIndex = TSCompiledPlan.FINAL_ACTIVITY_INDEX;
+		try {
+			successorIndex = compiledPlan.resolveSuccessor(activityIndex, context);
+		} catch(TSVariableEvaluationFailedException e) {
+			throw new TSPlanExecutionFailedException("Test plan execution failed. Failed to evaluate transition of activity '"+compiledPlan.getActivityName(activityIndex)+"'. Error: " + e.getMessage(), e);
+		}
+		if(successorIndex == TSCompiledPlan.UNKNOWN_ACTIVITY_INDEX)
+			throw new TSPlanExecutionFailedException("Test plan execution failed. Transition of activity '"+compiledPlan.getActivityName(activityIndex)+"' selected an unknown activity");
+		return successorIndex;
+	}
+	
+	/**
+	 * Records a single measured plan run
+	 * @param singleExecStart start (nanoseconds)
+	 * @param singleExecEnd end (nanoseconds)
+	 * @param singleExecIntendedStart intended start (nanoseconds) the corrected duration is measured from
+	 */
+	protected void recordRun(long singleExecStart, long singleExecEnd, long singleExecIntendedStart) {
+		long durationNanos = singleExecEnd - singleExecStart;
+		statisticsRecorder.recordRun(durationNanos, singleExecEnd - singleExecIntendedStart);
+		measuredRuns = measuredRuns + 1;
+		measuredRunNanos = measuredRunNanos + durationNanos;
+		if(durationNanos < measuredRunMinNanos)
+			measuredRunMinNanos = durationNanos;
+		if(durationNanos > measuredRunMaxNanos)
+			measuredRunMaxNanos = durationNanos;
+	}
+	
+	/**
+	 * Creates the executor result from the provided figures. If the executor shares its statistics recorder, the result contains 
+	 * the min, max and average run duration of this executor only, the median is reported as 0 
+	 * @param overallStart
+	 * @param overallEnd
+	 * @param activityExecutionErrorCount
+	 * @return
+	 */
+	protected TSPlanExecutorResult createResult(long overallStart, long overallEnd, int activityExecutionErrorCount) {
+
 		// calculate overall duration
 		long duration = (overallEnd - overallStart);
 
-		// calculate average plan duration
-		averagePlanExecDuration = averagePlanExecDuration / recurrences;
-		
+		long singleRunMin = 0;
+		long singleRunMax = 0;
+		long averagePlanExecDuration = 0;
 		double durationMedian = 0;
-		Collections.sort(testPlanRuntimes);
-		if(testPlanRuntimes.size() % 2 == 1) {
-			durationMedian = testPlanRuntimes.get((testPlanRuntimes.size() + 1) / 2 - 1);
+		if(sharedStatisticsRecorder) {
+			if(measuredRuns > 0) {
+				singleRunMin = nanosToMillis(measuredRunMinNanos);
+				singleRunMax = nanosToMillis(measuredRunMaxNanos);
+				averagePlanExecDuration = nanosToMillis(measuredRunNanos / measuredRuns);
+			}
 		} else {
-			double lower = testPlanRuntimes.get(testPlanRuntimes.size() / 2 - 1);
-			double upper = testPlanRuntimes.get(testPlanRuntimes.size() / 2);
-			durationMedian = (lower + upper) / 2.0;
+			// derive the single run figures from the recorded histogram: min/max are exact, the median is bound by the histogram precision
+			TSLatencyHistogram singleRunDurationHistogram = statisticsRecorder.getSingleRunDurationHistogram();
+			singleRunMin = nanosToMillis(singleRunDurationHistogram.getMinValue());
+			singleRunMax = nanosToMillis(singleRunDurationHistogram.getMaxValue());
+			averagePlanExecDuration = (long)(singleRunDurationHistogram.getMean() / NANOS_PER_MILLI);
+			durationMedian = singleRunDurationHistogram.getValueAtPercentile(50.0) / (double)NANOS_PER_MILLI;
 		}
 		
 		if(logger.isDebugEnabled())
 			logger.debug("[execEnv:" + executionEnvironmentId + ", executor: " + planExecutorId + ", recurrences: " + recurrences + ", recType: " + recurrenceType + ", duration: " + duration+", averageRunDuration: "+ averagePlanExecDuration +", durationMedian: " +durationMedian +"]");
 		
-		return new TSPlanExecutorResult(executionEnvironmentId, planExecutorId, testPlan.getName(), overallStart, overallEnd, duration, singleRunMin, singleRunMax, averagePlanExecDuration, durationMedian, activityExecutionErrorCount);
+		TSPlanExecutorResult result = new TSPlanExecutorResult(executionEnvironmentId, planExecutorId, testPlan.getName(), overallStart, overallEnd, duration, singleRunMin, singleRunMax, averagePlanExecDuration, durationMedian, activityExecutionErrorCount);
+		if(!sharedStatisticsRecorder) {
+			result.setSingleRunDurationHistogram(statisticsRecorder.getSingleRunDurationHistogram());
+			result.setCorrectedSingleRunDurationHistogram(statisticsRecorder.getCorrectedSingleRunDurationHistogram());
+			result.setWarmUpDurationHistogram(statisticsRecorder.getWarmUpDurationHistogram());
+			result.setActivityStatistics(statisticsRecorder.getActivityStatistics());
+			result.setStageStatistics(statisticsRecorder.getStageStatistics());
+		}
+		return result;
 	}
-/*
 	
-	public static double Median(ArrayList values)
-
-	{
-
-	    Collections.sort(values);
-
-	 
-
-	    if (values.size() % 2 == 1)
-
-	        return values.get((values.size()+1)/2-1);
-
-	    else
-
-	    {
-
-	        double lower = values.get(values.size()/2-1);
-
-	        double upper = values.get(values.size()/2);
-
-	 
-
-	        return (lower + upper) / 2.0;
-
-	    }   
-
+	/**
+	 * Returns the recorder receiving the statistics of this executor
+	 * @return
+	 */
+	public TSPlanStatisticsRecorder getStatisticsRecorder() {
+		return statisticsRecorder;
+	}
+	
+	/**
+	 * Returns true if the statistics recorder is shared with other executors
+	 * @return
+	 */
+	public boolean isSharedStatisticsRecorder() {
+		return sharedStatisticsRecorder;
+	}
+	
+	/**
+	 * Marks the following plan runs as warm-up runs whose activity statistics are kept apart from the measured ones
+	 * @param warmUp
+	 */
+	protected void setWarmUp(boolean warmUp) {
+		this.warmUp = warmUp;
 	}
-
-	 
-*/
 	
+	/**
+	 * Returns true if a plan run following the given number of warm-up runs still belongs to the warm-up, ie. if the
+	 * number of warm-up iterations has not been reached yet or the warm-up duration has not passed yet 
+	 * @param warmUpIterations number of plan runs treated as warm-up - values less than or equal to 0 disable the warm-up by iterations
+	 * @param warmUpDuration time (millis) during which plan runs are treated as warm-up - values less than or equal to 0 disable the warm-up by duration
+	 * @param completedWarmUpRuns number of warm-up runs completed so far
+	 * @param elapsedMillis time (millis) passed since the warm-up start
+	 * @return
+	 */
+	protected static boolean isWarmUp(int warmUpIterations, long warmUpDuration, long completedWarmUpRuns, long elapsedMillis) {
+		return completedWarmUpRuns < warmUpIterations || elapsedMillis < warmUpDuration;
+	}
 	
+	/**
+	 * Returns true if the given recurrence settings are fulfilled, ie. no further plan run must be started
+	 * @param recurrenceType
+	 * @param recurrences
+	 * @param completedRuns number of plan runs completed so far
+	 * @param loopExecutionStart time (millis) the first plan run was started
+	 * @return
+	 */
+	protected static boolean isRecurrenceCompleted(TSPlanRecurrenceType recurrenceType, int recurrences, long completedRuns, long loopExecutionStart) {
+		switch(recurrenceType) {
+			case DAYS: {
+				long duration = System.currentTimeMillis() - loopExecutionStart;
+				duration = duration / 1000; // millis > sec
+				duration = duration / 60; // sec > min					
+				duration = duration / 60; // min > hours
+				duration = duration / 24; // hours > days
+				
+				if(duration >= recurrences)
+					return true;
+				break;
+			}
+			case HOURS: {
+				long duration = System.currentTimeMillis() - loopExecutionStart;
+				duration = duration / 1000; // millis > sec
+				duration = duration / 60; // sec > min					
+				duration = duration / 60; // min > hours
+				
+				if(duration >= recurrences)
+					return true;
+				break;
+			}
+			case MINUTES: {
+				long duration = System.currentTimeMillis() - loopExecutionStart;
+				duration = duration / 1000; // millis > sec
+				duration = duration / 60; // sec > min					
+				
+				if(duration >= recurrences)
+					return true;
+				break;
+			}
+			case SECONDS: {
+				long duration = System.currentTimeMillis() - loopExecutionStart;
+				duration = duration / 1000; // millis > sec
+				
+				if(duration >= recurrences)
+					return true;
+				break;
+			}
+			case MILLIS: {
+				if((System.currentTimeMillis() - loopExecutionStart) >= recurrences)
+					return true;
+				break;
+			}
+			case TIMES: {
+				if(completedRuns >= recurrences)
+					return true;
+				break;
+			}
+			default: {
+				logger.error("Invalid recurrence type " + recurrenceType);
+				return true;
+			}
 
+		}
+		return false;
+	}
+	
+	/**
+	 * Converts the given nanoseconds into milliseconds
+	 * @param nanos
+	 * @return
+	 */
+	protected static long nanosToMillis(long nanos) {
+		return nanos / NANOS_PER_MILLI;
+	}
 	
+	/**
+	 * Parks the current thread until the given point in time (nanoseconds) has been reached. Returns false without waiting any 
+	 * further if the thread has been interrupted - parking returns immediately for interrupted threads
+	 * @param deadline
+	 * @return
+	 */
+	protected static boolean waitUntil(long deadline) {
+		long remaining = deadline - System.nanoTime();
+		while(remaining > 0) {
+			if(Thread.currentThread().isInterrupted())
+				return false;
+			LockSupport.parkNanos(remaining);
+			remaining = deadline - System.nanoTime();
+		}
+		return true;
+	}
+	
+	/**
+	 * Parks the executing thread until the intended start of the next run (nanoseconds) has been reached. Returns false as soon as 
+	 * the executor or its thread has been interrupted
+	 * @param intendedStart
+	 * @return
+	 */
+	protected boolean awaitIntendedStart(long intendedStart) {
+		long remaining = intendedStart - System.nanoTime();
+		while(remaining > 0) {
+			if(interrupted || Thread.currentThread().isInterrupted())
+				return false;
+			LockSupport.parkNanos(this, remaining);
+			remaining = intendedStart - System.nanoTime();
+		}
+		return !interrupted;
+	}
+	
+	/**
+	 * Stops the executor after the current run - an executor waiting for the intended start of the next run stops right away
+	 */
 	public void interrupt() {
 		this.interrupted = true;
+		Thread thread = executingThread;
+		if(thread != null)
+			LockSupport.unpark(thread);
 	}
 	
 	/**
 	 * Shuts down the executor as well as the contained {@link TSPlanActivity activities}
 	 */
 	public void shutdown() {
+		// activities of shared plans are kept for further executions
+		if(testPlan.isShared())
+			return;
 		for(TSPlanActivity activity : testPlan.getActivities().values()) {
 			try {
 				activity.shutdown();
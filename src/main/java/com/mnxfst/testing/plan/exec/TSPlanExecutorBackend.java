@@ -0,0 +1,58 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+
+/**
+ * Selects the kind of threads the {@link TSPlanExecEnvironment} runs its {@link TSPlanExecutor executors} on
+ * @author mnxfst
+ * @since 17.02.2012
+ */
+public enum TSPlanExecutorBackend implements Serializable {
+
+	/** each executor occupies a platform thread taken from a fixed size pool */
+	PLATFORM_THREADS,
+	/** 
+	 * each executor runs on its own virtual thread (requires a Java 21+ runtime). Blocking activities release their carrier 
+	 * thread while waiting, unless they block inside a synchronized block or method which pins the carrier thread (up to 
+	 * Java 23). When the environment is set up, activity methods which are synchronized or contain a synchronized block are
+	 * reported, see {@link TSPlanActivityPinningInspector}. Synchronized code of the libraries called by activities is not 
+	 * detected this way, it may be traced by running the server with <i>-Djdk.tracePinnedThreads=full</i>. Known cases:
+	 * <ul>
+	 *   <li>{@link com.mnxfst.testing.activities.log.ContextLog4jActivity}: log4j 1.2 writes each event inside synchronized 
+	 *       appender and logger methods, thus every execution pins the carrier thread while writing</li>
+	 *   <li>{@link com.mnxfst.testing.activities.jms.JMSDestinationRequestActivity}: the ActiveMQ client sends messages inside 
+	 *       synchronized blocks, thus the carrier thread is pinned while waiting for the broker</li>
+	 *   <li>{@link com.mnxfst.testing.activities.corpus.PayloadCorpusActivity}: opening the corpus - once per activity - maps the 
+	 *       file and may build its index inside a synchronized block</li>
+	 * </ul>
+	 * The {@link com.mnxfst.testing.activities.timer.WaitTimerActivity} and the netty transport of the http activities wait 
+	 * without holding a monitor. Activities blocking inside synchronized code should be run with few virtual users per server
+	 * or on {@link #PLATFORM_THREADS}
+	 */
+	VIRTUAL_THREADS,
+	/** 
+	 * all executors are simulated by a single {@link TSPlanAsyncExecutor} which keeps the plan iterations in flight on a small number
+	 * of event loop threads. Synchronous activities are run on a separate thread pool (closed model only) 
+	 */
+	EVENT_LOOP,
+	UNKNOWN
+	
+}
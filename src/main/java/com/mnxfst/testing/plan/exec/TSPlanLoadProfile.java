@@ -0,0 +1,218 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+
+/**
+ * Describes how the number of active {@link TSPlanExecutor executors} develops over time as sequence of 
+ * {@link TSPlanLoadStage stages}: linear ramps, steps holding a fixed number of executors and spikes. The
+ * first stage starts with no active executor. A profile may be declared in the test plan or passed along
+ * with the execution request using the format <i>type:executors:durationMillis[:name],...</i>, eg. 
+ * <i>ramp:100:30000,step:100:60000,spike:500:5000:peak,ramp:0:10000</i>  
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanLoadProfile implements Serializable {
+
+	private static final long serialVersionUID = 5120364286471935560L;
+
+	public static final String STAGE_SEPARATOR = ",";
+	public static final String STAGE_ATTRIBUTE_SEPARATOR = ":";
+	
+	/** stages in order of execution */
+	private List<TSPlanLoadStage> stages = new ArrayList<TSPlanLoadStage>();
+	/** overall duration (millis) */
+	private long durationMillis = 0;
+	/** max. number of executors active at the same time */
+	private int maxExecutors = 0;
+	/** number of executors active at the end of the last stage */
+	private int currentExecutors = 0;
+
+	/**
+	 * Appends a stage to the profile. If no name is provided, the stage is named after its type and position
+	 * @param name
+	 * @param type
+	 * @param executors number of executors to reach (ramp) or to hold (step, spike)
+	 * @param durationMillis
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	public TSPlanLoadStage addStage(String name, TSPlanLoadStageType type, int executors, long durationMillis) throws TSPlanConfigurationFormatException {
+		
+		if(type == null || type == TSPlanLoadStageType.UNKNOWN)
+			throw new TSPlanConfigurationFormatException("Load stage type not provided or unknown: " + type);
+		if(executors < 0)
+			throw new TSPlanConfigurationFormatException("Invalid number of executors for load stage: " + executors + ". Values greater or equal to 0 are expected");
+		if(durationMillis <= 0)
+			throw new TSPlanConfigurationFormatException("Invalid load stage duration: " + durationMillis + ". Values greater 0 are expected");
+		
+		if(name == null || name.trim().isEmpty())
+			name = type.toString().toLowerCase() + "-" + stages.size();
+		if(getStage(name) != null)
+			throw new TSPlanConfigurationFormatException("Duplicate load stage name: " + name);
+		
+		TSPlanLoadStage stage = new TSPlanLoadStage(name, type, currentExecutors, executors, this.durationMillis, durationMillis);
+		stages.add(stage);
+		
+		// a spike returns to the level active before
+		if(type != TSPlanLoadStageType.SPIKE)
+			currentExecutors = executors;
+		if(stage.getMaxExecutors() > maxExecutors)
+			maxExecutors = stage.getMaxExecutors();
+		this.durationMillis = this.durationMillis + durationMillis;
+		
+		return stage;
+	}
+	
+	/**
+	 * Returns the index of the stage running at the given time (millis) relative to the profile start or -1 if the profile has been completed 
+	 * @param elapsedMillis
+	 * @return
+	 */
+	public int getStageIndex(long elapsedMillis) {
+		if(elapsedMillis < 0)
+			return 0;
+		for(int i = 0; i < stages.size(); i++) {
+			TSPlanLoadStage stage = stages.get(i);
+			if(elapsedMillis < stage.getStartOffsetMillis() + stage.getDurationMillis())
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the number of executors which must be active at the given time (millis) relative to the profile start 
+	 * @param elapsedMillis
+	 * @return
+	 */
+	public int getActiveExecutors(long elapsedMillis) {
+		int stageIndex = getStageIndex(elapsedMillis);
+		if(stageIndex < 0)
+			return 0;
+		TSPlanLoadStage stage = stages.get(stageIndex);
+		return stage.getActiveExecutors(elapsedMillis - stage.getStartOffsetMillis());
+	}
+	
+	/**
+	 * Returns the time (millis) relative to the profile start when either the number of active executors changes next after the
+	 * given time or the next stage starts - whatever comes first. If the profile has been completed, the method returns -1  
+	 * @param elapsedMillis
+	 * @return
+	 */
+	public long getNextChangeMillis(long elapsedMillis) {
+		int stageIndex = getStageIndex(elapsedMillis);
+		if(stageIndex < 0)
+			return -1;
+		TSPlanLoadStage stage = stages.get(stageIndex);
+		return stage.getStartOffsetMillis() + stage.getNextChangeMillis(elapsedMillis - stage.getStartOffsetMillis());
+	}
+	
+	/**
+	 * Returns the stage referenced by the given name or null if there is no such stage
+	 * @param name
+	 * @return
+	 */
+	public TSPlanLoadStage getStage(String name) {
+		for(TSPlanLoadStage stage : stages)
+			if(stage.getName().equals(name))
+				return stage;
+		return null;
+	}
+	
+	/**
+	 * Parses the given profile following the format <i>type:executors:durationMillis[:name],...</i>
+	 * @param profile
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	public static TSPlanLoadProfile parse(String profile) throws TSPlanConfigurationFormatException {
+		
+		if(profile == null || profile.trim().isEmpty())
+			throw new TSPlanConfigurationFormatException("No load profile provided");
+		
+		TSPlanLoadProfile loadProfile = new TSPlanLoadProfile();
+		for(String stage : profile.split(STAGE_SEPARATOR)) {
+			String[] attributes = stage.trim().split(STAGE_ATTRIBUTE_SEPARATOR);
+			if(attributes.length < 3 || attributes.length > 4)
+				throw new TSPlanConfigurationFormatException("Invalid load stage: '" + stage + "'. Expected type:executors:durationMillis[:name]");
+			
+			TSPlanLoadStageType type = parseStageType(attributes[0]);
+			int executors = 0;
+			long durationMillis = 0;
+			try {
+				executors = Integer.parseInt(attributes[1].trim());
+				durationMillis = Long.parseLong(attributes[2].trim());
+			} catch(NumberFormatException e) {
+				throw new TSPlanConfigurationFormatException("Invalid load stage: '" + stage + "'. Expected numerical values for executors and duration");
+			}
+			loadProfile.addStage((attributes.length > 3 ? attributes[3].trim() : null), type, executors, durationMillis);
+		}
+		return loadProfile;
+	}
+	
+	/**
+	 * Parses the given string into a {@link TSPlanLoadStageType} - {@link TSPlanLoadStageType#UNKNOWN} is returned if the value does not match any type
+	 * @param type
+	 * @return
+	 */
+	public static TSPlanLoadStageType parseStageType(String type) {
+		if(type == null)
+			return TSPlanLoadStageType.UNKNOWN;
+		
+		type = type.trim();
+		if(type.equalsIgnoreCase("RAMP"))
+			return TSPlanLoadStageType.RAMP;
+		else if(type.equalsIgnoreCase("STEP"))
+			return TSPlanLoadStageType.STEP;
+		else if(type.equalsIgnoreCase("SPIKE"))
+			return TSPlanLoadStageType.SPIKE;
+		
+		return TSPlanLoadStageType.UNKNOWN;
+	}
+
+	public List<TSPlanLoadStage> getStages() {
+		return stages;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public int getMaxExecutors() {
+		return maxExecutors;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("durationMillis", this.durationMillis)
+				.append("maxExecutors", this.maxExecutors)
+				.append("stages", this.stages).toString();
+	}
+}
@@ -0,0 +1,361 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.log4j.Logger;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanExecutionFailedException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanExecutorResult;
+
+/**
+ * Executes a {@link TSPlan} following a {@link TSPlanLoadProfile}: executor <i>n</i> loops the plan as long as the profile 
+ * demands more than <i>n</i> active executors and idles otherwise, thus executors are started and stopped according to 
+ * the ramps, steps and spikes of the profile instead of hitting the target all at once. An executor which has to stop 
+ * finishes its current plan run first. Each plan run is tagged with the stage it was started in, which allows to split 
+ * the results by stage. The recurrence settings do not apply, the profile duration determines the runtime. Idle executors 
+ * block until the thread calling {@link #execute()} signals a change of the number of active executors, a stage boundary, 
+ * the end of the profile or an interruption.
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanLoadProfileScheduler {
+
+	private static final Logger logger = Logger.getLogger(TSPlanLoadProfileScheduler.class);
+	
+	private TSPlanLoadProfile loadProfile = null;
+	/** pool running the executors, must provide one thread per executor */
+	private ExecutorService workerPool = null;
+	private List<TSPlanLoadProfileWorker> workers = new ArrayList<TSPlanLoadProfileWorker>();
+	/** interval (nanoseconds) between the intended starts of two consecutive plan runs on the same executor - 0 disables pacing */
+	private long pacingNanos = 0;
+	/** number of plan runs per executor treated as warm-up */
+	private int warmUpIterations = 0;
+	/** time (millis) after the profile start during which plan runs are treated as warm-up */
+	private long warmUpDuration = 0;
+	/** profile start (nanoseconds) */
+	private volatile long profileStart = 0;
+	private volatile boolean interrupted = false;
+	/** guards the profile generation which idle and pacing executors wait on */
+	private final ReentrantLock profileLock = new ReentrantLock();
+	private final Condition profileChanged = profileLock.newCondition();
+	/** incremented whenever the number of active executors changes, a stage starts, the profile ends or the execution is interrupted */
+	private long profileGeneration = 0;
+
+	/**
+	 * Initializes the scheduler
+	 * @param loadProfile
+	 * @param pacing interval (millis) between the intended starts of two consecutive plan runs on the same executor - values less than or equal to 0 disable pacing
+	 * @param executors executors running the plan - at least {@link TSPlanLoadProfile#getMaxExecutors()} are required 
+	 * @param workerPool pool running the executors, must provide one thread per executor
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanLoadProfileScheduler(TSPlanLoadProfile loadProfile, long pacing, List<TSPlanExecutor> executors, ExecutorService workerPool) throws TSPlanInstantiationException {
+		this(loadProfile, pacing, 0, 0, executors, workerPool);
+	}
+	
+	/**
+	 * Initializes the scheduler. Plan runs executed during the warm-up are recorded separately and are not tagged with a stage
+	 * @param loadProfile
+	 * @param pacing interval (millis) between the intended starts of two consecutive plan runs on the same executor - values less than or equal to 0 disable pacing
+	 * @param warmUpIterations number of plan runs per executor treated as warm-up - values less than or equal to 0 disable the warm-up by iterations
+	 * @param warmUpDuration time (millis) after the profile start during which plan runs are treated as warm-up - values less than or equal to 0 disable the warm-up by duration
+	 * @param executors executors running the plan - at least {@link TSPlanLoadProfile#getMaxExecutors()} are required 
+	 * @param workerPool pool running the executors, must provide one thread per executor
+	 * @throws TSPlanInstantiationException
+	 */
+	public TSPlanLoadProfileScheduler(TSPlanLoadProfile loadProfile, long pacing, int warmUpIterations, long warmUpDuration, List<TSPlanExecutor> executors, ExecutorService workerPool) throws TSPlanInstantiationException {
+		
+		if(loadProfile == null || loadProfile.getStages().isEmpty())
+			throw new TSPlanInstantiationException("No load profile provided");
+		if(loadProfile.getMaxExecutors() < 1)
+			throw new TSPlanInstantiationException("The load profile does not activate any executor");
+		if(executors == null || executors.size() < loadProfile.getMaxExecutors())
+			throw new TSPlanInstantiationException("The load profile requires " + loadProfile.getMaxExecutors() + " executors, but " + (executors != null ? executors.size() : 0) + " were provided");
+		if(workerPool == null)
+			throw new TSPlanInstantiationException("No worker pool provided");
+		
+		this.loadProfile = loadProfile;
+		this.workerPool = workerPool;
+		this.pacingNanos = (pacing > 0 ? pacing * TSPlanExecutor.NANOS_PER_MILLI : 0);
+		this.warmUpIterations = warmUpIterations;
+		this.warmUpDuration = warmUpDuration;
+		List<String> stageNames = new ArrayList<String>();
+		for(TSPlanLoadStage stage : loadProfile.getStages())
+			stageNames.add(stage.getName());
+		for(int i = 0; i < executors.size(); i++) {
+			executors.get(i).getStatisticsRecorder().initStageStatistics(stageNames);
+			workers.add(new TSPlanLoadProfileWorker(i, executors.get(i)));
+		}
+	}
+	
+	/**
+	 * Runs the executors following the load profile, waits for all executors to finish their last plan run and returns the results for each executor
+	 * @return
+	 * @throws TSPlanExecutionFailedException
+	 */
+	public List<TSPlanExecutorResult> execute() throws TSPlanExecutionFailedException {
+		
+		long overallStart = System.currentTimeMillis();
+		this.profileStart = System.nanoTime();
+		
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for(TSPlanLoadProfileWorker worker : workers)
+			futures.add(workerPool.submit(worker));
+		
+		try {
+			signalProfileChanges();
+		} catch (InterruptedException e) {
+			interrupt();
+			throw new TSPlanExecutionFailedException("Interrupted while executing test plan following a load profile. Error: " + e.getMessage(), e);
+		}
+		
+		for(Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				interrupt();
+				throw new TSPlanExecutionFailedException("Interrupted while executing test plan following a load profile. Error: " + e.getMessage(), e);
+			} catch (ExecutionException e) {
+				interrupt();
+				throw new TSPlanExecutionFailedException("Test plan execution failed. Error: " + e.getMessage(), e);
+			}
+		}
+		
+		long overallEnd = System.currentTimeMillis();
+		
+		List<TSPlanExecutorResult> results = new ArrayList<TSPlanExecutorResult>();
+		for(TSPlanLoadProfileWorker worker : workers) {
+			if(worker.getFailure() != null)
+				throw new TSPlanExecutionFailedException("Test plan execution failed. Error: " + worker.getFailure().getMessage(), worker.getFailure());
+			TSPlanExecutorResult result = worker.getExecutor().createResult(overallStart, overallEnd, worker.getActivityExecutionErrorCount());
+			result.setWarmUpErrors(worker.getWarmUpErrorCount());
+			results.add(result);
+		}
+
+		if(logger.isDebugEnabled())
+			logger.debug("[loadProfile: " + loadProfile + ", executors: " + workers.size() + ", duration: " + (overallEnd - overallStart) + "]");
+		
+		return results;
+	}
+	
+	/**
+	 * Stops all executors after their current plan run
+	 */
+	public void interrupt() {
+		this.interrupted = true;
+		signalProfileChange();
+	}
+	
+	/**
+	 * Waits for each change of the number of active executors and each stage boundary and signals the executors - until 
+	 * the profile has been completed or the execution is interrupted
+	 * @throws InterruptedException
+	 */
+	protected void signalProfileChanges() throws InterruptedException {
+		try {
+			while(!interrupted) {
+				long generation = getProfileGeneration();
+				long nextChangeMillis = loadProfile.getNextChangeMillis(TSPlanExecutor.nanosToMillis(System.nanoTime() - profileStart));
+				if(nextChangeMillis < 0)
+					break;
+				
+				// returns early on interruption only, as the executors never signal a change
+				awaitProfileChange(generation, profileStart + nextChangeMillis * TSPlanExecutor.NANOS_PER_MILLI - System.nanoTime());
+				signalProfileChange();
+			}
+		} finally {
+			// releases all idle executors at the end of the profile
+			signalProfileChange();
+		}
+	}
+	
+	/**
+	 * Returns the current profile generation, must be read before evaluating the profile and passed to {@link #awaitProfileChange(long, long)} 
+	 * @return
+	 */
+	protected long getProfileGeneration() {
+		profileLock.lock();
+		try {
+			return profileGeneration;
+		} finally {
+			profileLock.unlock();
+		}
+	}
+	
+	/**
+	 * Moves to the next profile generation and wakes up all waiting threads
+	 */
+	protected void signalProfileChange() {
+		profileLock.lock();
+		try {
+			profileGeneration = profileGeneration + 1;
+			profileChanged.signalAll();
+		} finally {
+			profileLock.unlock();
+		}
+	}
+	
+	/**
+	 * Waits until the profile generation moves beyond the given one or the timeout (nanoseconds) elapses. Changes signalled after 
+	 * the generation has been read are not missed 
+	 * @param generation
+	 * @param timeoutNanos
+	 * @throws InterruptedException
+	 */
+	protected void awaitProfileChange(long generation, long timeoutNanos) throws InterruptedException {
+		profileLock.lock();
+		try {
+			long remainingNanos = timeoutNanos;
+			while(generation == profileGeneration && remainingNanos > 0)
+				remainingNanos = profileChanged.awaitNanos(remainingNanos);
+		} finally {
+			profileLock.unlock();
+		}
+	}
+	
+	public TSPlanLoadProfile getLoadProfile() {
+		return loadProfile;
+	}
+	
+	/**
+	 * Loops the plan on the assigned {@link TSPlanExecutor} while the load profile demands the executor to be active and 
+	 * records the single run durations with the executor, tagged by stage 
+	 * @author mnxfst
+	 * @since 24.02.2012
+	 */
+	private class TSPlanLoadProfileWorker implements Runnable {
+		
+		/** the executor is active as long as the profile demands more active executors than this index */
+		private int executorIndex = 0;
+		private TSPlanExecutor executor = null;
+		private int activityExecutionErrorCount = 0;
+		private int warmUpErrorCount = 0;
+		private Exception failure = null;
+		
+		public TSPlanLoadProfileWorker(int executorIndex, TSPlanExecutor executor) {
+			this.executorIndex = executorIndex;
+			this.executor = executor;
+		}
+		
+		/**
+		 * @see java.lang.Runnable#run()
+		 */
+		public void run() {
+			
+			// intended start (nanoseconds) of the next paced run - reset whenever the executor is stopped by the profile
+			long nextIntendedStart = -1;
+			boolean warmUp = TSPlanExecutor.isWarmUp(warmUpIterations, warmUpDuration, 0, 0);
+			executor.setWarmUp(warmUp);
+			long warmUpRuns = 0;
+			
+			try {
+				while(!interrupted) {
+					
+					long generation = getProfileGeneration();
+					long now = System.nanoTime();
+					long elapsedMillis = TSPlanExecutor.nanosToMillis(now - profileStart);
+					int stageIndex = loadProfile.getStageIndex(elapsedMillis);
+					if(stageIndex < 0)
+						break;
+					
+					// idle until the profile changes while it does not demand this executor
+					if(executorIndex >= loadProfile.getActiveExecutors(elapsedMillis)) {
+						nextIntendedStart = -1;
+						awaitProfileChange(generation, Long.MAX_VALUE);
+						continue;
+					}
+					
+					// with pacing enabled wait for the intended start, but return early if the profile changes
+					long intendedStart = now;
+					if(pacingNanos > 0) {
+						if(nextIntendedStart < 0)
+							nextIntendedStart = now;
+						if(nextIntendedStart - now > 0) {
+							awaitProfileChange(generation, nextIntendedStart - now);
+							continue;
+						}
+						intendedStart = nextIntendedStart;
+						nextIntendedStart = nextIntendedStart + pacingNanos;
+					}
+					
+					// the activity statistics recorded during the warm-up are kept apart
+					if(warmUp && !TSPlanExecutor.isWarmUp(warmUpIterations, warmUpDuration, warmUpRuns, elapsedMillis)) {
+						warmUp = false;
+						executor.setWarmUp(false);
+					}
+					
+					long singleExecStart = System.nanoTime();
+					int errors = executor.executePlanIteration();
+					long singleExecEnd = System.nanoTime();
+					
+					if(warmUp) {
+						warmUpRuns = warmUpRuns + 1;
+						warmUpErrorCount = warmUpErrorCount + errors;
+						executor.getStatisticsRecorder().recordWarmUpRun(singleExecEnd - singleExecStart);
+					} else {
+						activityExecutionErrorCount = activityExecutionErrorCount + errors;
+						executor.recordRun(singleExecStart, singleExecEnd, intendedStart);
+						executor.getStatisticsRecorder().recordStageRun(stageIndex, singleExecEnd - singleExecStart, errors);
+					}
+				}
+			} catch(TSPlanExecutionFailedException e) {
+				failure = e;
+				interrupt();
+			} catch(TSPlanActivityExecutionException e) {
+				failure = e;
+				interrupt();
+			} catch(InterruptedException e) {
+				failure = e;
+				interrupt();
+			} catch(RuntimeException e) {
+				failure = e;
+				interrupt();
+			}
+		}
+
+		public TSPlanExecutor getExecutor() {
+			return executor;
+		}
+
+		public int getActivityExecutionErrorCount() {
+			return activityExecutionErrorCount;
+		}
+
+		public int getWarmUpErrorCount() {
+			return warmUpErrorCount;
+		}
+
+		public Exception getFailure() {
+			return failure;
+		}
+		
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+/**
+ * A single stage of a {@link TSPlanLoadProfile}. The stage knows the number of executors active at its start as well 
+ * as its target number of executors and computes the number of active executors for any point in time during the stage 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanLoadStage implements Serializable {
+
+	private static final long serialVersionUID = -2381137209146339175L;
+
+	/** stage name - used for tagging the samples recorded during the stage */
+	private String name = null;
+	private TSPlanLoadStageType type = TSPlanLoadStageType.UNKNOWN;
+	/** number of executors active at the start of the stage */
+	private int startExecutors = 0;
+	/** number of executors active at the end of the stage (ramp) or during the whole stage (step, spike) */
+	private int targetExecutors = 0;
+	/** offset (millis) of the stage start relative to the start of the profile */
+	private long startOffsetMillis = 0;
+	/** stage duration (millis) */
+	private long durationMillis = 0;
+	
+	/**
+	 * Initializes the stage
+	 * @param name
+	 * @param type
+	 * @param startExecutors
+	 * @param targetExecutors
+	 * @param startOffsetMillis
+	 * @param durationMillis
+	 */
+	public TSPlanLoadStage(String name, TSPlanLoadStageType type, int startExecutors, int targetExecutors, long startOffsetMillis, long durationMillis) {
+		this.name = name;
+		this.type = type;
+		this.startExecutors = startExecutors;
+		this.targetExecutors = targetExecutors;
+		this.startOffsetMillis = startOffsetMillis;
+		this.durationMillis = durationMillis;
+	}
+	
+	/**
+	 * Returns the number of executors which must be active at the given time (millis) relative to the stage start
+	 * @param elapsedMillis
+	 * @return
+	 */
+	public int getActiveExecutors(long elapsedMillis) {
+		if(type != TSPlanLoadStageType.RAMP || elapsedMillis >= durationMillis)
+			return targetExecutors;
+		if(elapsedMillis <= 0)
+			return startExecutors;
+		return (int)Math.round(startExecutors + (targetExecutors - startExecutors) * ((double)elapsedMillis / (double)durationMillis));
+	}
+
+	/**
+	 * Returns the time (millis) relative to the stage start when the number of active executors changes next after the given 
+	 * time - or the stage duration if it does not change anymore during the stage
+	 * @param elapsedMillis
+	 * @return
+	 */
+	public long getNextChangeMillis(long elapsedMillis) {
+		if(type != TSPlanLoadStageType.RAMP || startExecutors == targetExecutors)
+			return durationMillis;
+		
+		// the number of executors develops monotonically during a ramp, thus the change can be searched for
+		int current = getActiveExecutors(elapsedMillis);
+		long low = Math.max(elapsedMillis, 0) + 1;
+		long high = durationMillis;
+		if(low >= high || getActiveExecutors(high) == current)
+			return durationMillis;
+		while(low < high) {
+			long mid = (low + high) >>> 1;
+			if(getActiveExecutors(mid) != current)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the max. number of executors active during the stage
+	 * @return
+	 */
+	public int getMaxExecutors() {
+		if(type == TSPlanLoadStageType.RAMP)
+			return Math.max(startExecutors, targetExecutors);
+		return targetExecutors;
+	}
+	
+	public String getName() {
+		return name;
+	}
+
+	public TSPlanLoadStageType getType() {
+		return type;
+	}
+
+	public int getStartExecutors() {
+		return startExecutors;
+	}
+
+	public int getTargetExecutors() {
+		return targetExecutors;
+	}
+
+	public long getStartOffsetMillis() {
+		return startOffsetMillis;
+	}
+
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("name", this.name)
+				.append("type", this.type)
+				.append("startExecutors", this.startExecutors)
+				.append("targetExecutors", this.targetExecutors)
+				.append("startOffsetMillis", this.startOffsetMillis)
+				.append("durationMillis", this.durationMillis).toString();
+	}
+}
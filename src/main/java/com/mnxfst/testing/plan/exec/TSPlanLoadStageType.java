@@ -0,0 +1,42 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+
+/**
+ * Describes how the number of active {@link TSPlanExecutor executors} develops during a {@link TSPlanLoadStage}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public enum TSPlanLoadStageType implements Serializable {
+
+	/** the number of active executors grows (or shrinks) linearly from the level of the previous stage to the target level */
+	RAMP,
+	/** the target number of executors is active for the whole stage */
+	STEP,
+	/** 
+	 * the target number of executors is active for the whole stage, afterwards the load returns to the level active before 
+	 * the spike, thus a subsequent ramp starts from that level 
+	 */
+	SPIKE,
+	UNKNOWN
+	
+}
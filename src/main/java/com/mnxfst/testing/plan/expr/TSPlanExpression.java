@@ -0,0 +1,138 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Compiled expression evaluated against a {@link TSPlanExecutionContext}. The expression language supports numerical and string literals,
+ * true, false and null, context variables referenced by replacement patterns (eg. ${run.counter} or ${global.customer.name}), arithmetic 
+ * (+ - * / %), string concatenation (+), comparisons (== != &lt; &lt;= &gt; &gt;=), logical operators (&amp;&amp; || !) and conditional
+ * expressions (condition ? a : b). The source is parsed once into an evaluation tree, constant sub-expressions are folded. After
+ * {@link #bind(TSPlanContextSlotTable) binding} it to the slot table of the test plan, variables are read via their slots.<br/>
+ * Example: <i>${run.remaining} &gt; 0 ? 'sendRequest' : 'finish'</i>
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanExpression {
+
+	/** expression source */
+	private final String source;
+	/** root of the evaluation tree */
+	private final TSPlanExpressionNode root;
+	/** variable nodes of the evaluation tree */
+	private final TSPlanExpressionVariable[] variables;
+	
+	private TSPlanExpression(String source, TSPlanExpressionNode root, TSPlanExpressionVariable[] variables) {
+		this.source = source;
+		this.root = root;
+		this.variables = variables;
+	}
+	
+	/**
+	 * Compiles the provided expression source
+	 * @param source
+	 * @return
+	 * @throws TSPlanConfigurationFormatException thrown in case the source is missing or invalid
+	 */
+	public static TSPlanExpression compile(String source) throws TSPlanConfigurationFormatException {
+		
+		if(source == null || source.trim().isEmpty())
+			throw new TSPlanConfigurationFormatException("No expression provided");
+		
+		List<TSPlanExpressionVariable> variables = new ArrayList<TSPlanExpressionVariable>();
+		TSPlanExpressionNode root = new TSPlanExpressionParser(source, variables).parse();
+		return new TSPlanExpression(source, root, variables.toArray(new TSPlanExpressionVariable[variables.size()]));
+	}
+	
+	/**
+	 * Binds the referenced context variables to the slots of the provided table. Contexts using another table are still 
+	 * supported, their variables are looked up by name
+	 * @param slotTable
+	 */
+	public void bind(TSPlanContextSlotTable slotTable) {
+		for(int i = 0; i < variables.length; i++)
+			variables[i].bind(slotTable);
+	}
+	
+	/**
+	 * Evaluates the expression against the provided context
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	public Object evaluate(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		return root.evaluate(ctx);
+	}
+	
+	/**
+	 * Evaluates the expression against the provided context and returns the result as boolean
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case the result is no boolean value
+	 */
+	public boolean evaluateBoolean(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		return root.evaluateBoolean(ctx);
+	}
+	
+	/**
+	 * Returns true in case the expression does not reference any context variable
+	 * @return
+	 */
+	public boolean isConstant() {
+		return root.isConstant();
+	}
+
+	/**
+	 * Returns the expression source
+	 * @return
+	 */
+	public String getSource() {
+		return source;
+	}
+	
+	/**
+	 * Returns the replacement patterns of the referenced context variables
+	 * @return
+	 */
+	public String[] getVariablePatterns() {
+		String[] patterns = new String[variables.length];
+		for(int i = 0; i < variables.length; i++)
+			patterns[i] = variables[i].getReplacementPattern();
+		return patterns;
+	}
+	
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("source", this.source)
+				.append("tree", this.root).toString();
+	}
+}
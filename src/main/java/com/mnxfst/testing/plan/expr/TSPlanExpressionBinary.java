@@ -0,0 +1,190 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Binary operation. Arithmetic on two integral operands is done using long values, otherwise doubles are used. Adding a
+ * {@link String} to any value concatenates both. Logical operators evaluate the right hand operand only if required  
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+class TSPlanExpressionBinary extends TSPlanExpressionNode {
+
+	private final TSPlanExpressionOperator operator;
+	private final TSPlanExpressionNode left;
+	private final TSPlanExpressionNode right;
+	
+	TSPlanExpressionBinary(TSPlanExpressionOperator operator, TSPlanExpressionNode left, TSPlanExpressionNode right) {
+		this.operator = operator;
+		this.left = left;
+		this.right = right;
+	}
+	
+	Object evaluate(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		
+		switch(operator) {
+			case AND:
+				return Boolean.valueOf(left.evaluateBoolean(ctx) && right.evaluateBoolean(ctx));
+			case OR:
+				return Boolean.valueOf(left.evaluateBoolean(ctx) || right.evaluateBoolean(ctx));
+			default:
+				break;
+		}
+		
+		Object leftValue = left.evaluate(ctx);
+		Object rightValue = right.evaluate(ctx);
+		
+		switch(operator) {
+			case ADD: {
+				if(leftValue instanceof String || rightValue instanceof String || leftValue instanceof Character || rightValue instanceof Character)
+					return new StringBuilder().append(leftValue).append(rightValue).toString();
+				return arithmetic(leftValue, rightValue);
+			}
+			case SUBTRACT:
+			case MULTIPLY:
+			case DIVIDE:
+			case MODULO:
+				return arithmetic(leftValue, rightValue);
+			case EQUAL:
+				return Boolean.valueOf(isEqual(leftValue, rightValue));
+			case NOT_EQUAL:
+				return Boolean.valueOf(!isEqual(leftValue, rightValue));
+			default: {
+				int result = compare(leftValue, rightValue);
+				switch(operator) {
+					case LESS:
+						return Boolean.valueOf(result < 0);
+					case LESS_OR_EQUAL:
+						return Boolean.valueOf(result <= 0);
+					case GREATER:
+						return Boolean.valueOf(result > 0);
+					case GREATER_OR_EQUAL:
+						return Boolean.valueOf(result >= 0);
+					default:
+						throw new TSVariableEvaluationFailedException("Unsupported binary operator: " + operator);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Applies the arithmetic operator on both values
+	 * @param leftValue
+	 * @param rightValue
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	protected Object arithmetic(Object leftValue, Object rightValue) throws TSVariableEvaluationFailedException {
+		
+		Number l = toNumber(leftValue, operator.getSymbol());
+		Number r = toNumber(rightValue, operator.getSymbol());
+		
+		if(isIntegral(leftValue) && isIntegral(rightValue)) {
+			long lv = l.longValue();
+			long rv = r.longValue();
+			switch(operator) {
+				case ADD:
+					return Long.valueOf(lv + rv);
+				case SUBTRACT:
+					return Long.valueOf(lv - rv);
+				case MULTIPLY:
+					return Long.valueOf(lv * rv);
+				case DIVIDE: {
+					if(rv == 0)
+						throw new TSVariableEvaluationFailedException("Division by zero: " + this);
+					return Long.valueOf(lv / rv);
+				}
+				case MODULO: {
+					if(rv == 0)
+						throw new TSVariableEvaluationFailedException("Division by zero: " + this);
+					return Long.valueOf(lv % rv);
+				}
+				default:
+					throw new TSVariableEvaluationFailedException("Unsupported arithmetic operator: " + operator);
+			}
+		}
+		
+		double lv = l.doubleValue();
+		double rv = r.doubleValue();
+		switch(operator) {
+			case ADD:
+				return Double.valueOf(lv + rv);
+			case SUBTRACT:
+				return Double.valueOf(lv - rv);
+			case MULTIPLY:
+				return Double.valueOf(lv * rv);
+			case DIVIDE:
+				return Double.valueOf(lv / rv);
+			case MODULO:
+				return Double.valueOf(lv % rv);
+			default:
+				throw new TSVariableEvaluationFailedException("Unsupported arithmetic operator: " + operator);
+		}
+	}
+	
+	/**
+	 * Returns true in case both values are equal. Numbers are compared by value, eg. 1 == 1.0
+	 * @param leftValue
+	 * @param rightValue
+	 * @return
+	 */
+	protected static boolean isEqual(Object leftValue, Object rightValue) {
+		if(leftValue == null || rightValue == null)
+			return (leftValue == rightValue);
+		if(leftValue instanceof Number && rightValue instanceof Number) {
+			if(isIntegral(leftValue) && isIntegral(rightValue))
+				return ((Number)leftValue).longValue() == ((Number)rightValue).longValue();
+			return ((Number)leftValue).doubleValue() == ((Number)rightValue).doubleValue();
+		}
+		return leftValue.equals(rightValue);
+	}
+	
+	/**
+	 * Compares two numbers or two strings
+	 * @param leftValue
+	 * @param rightValue
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case the values cannot be compared
+	 */
+	protected int compare(Object leftValue, Object rightValue) throws TSVariableEvaluationFailedException {
+		if(leftValue instanceof String && rightValue instanceof String)
+			return ((String)leftValue).compareTo((String)rightValue);
+		
+		Number l = toNumber(leftValue, operator.getSymbol());
+		Number r = toNumber(rightValue, operator.getSymbol());
+		if(isIntegral(leftValue) && isIntegral(rightValue)) {
+			long lv = l.longValue();
+			long rv = r.longValue();
+			return (lv < rv ? -1 : (lv == rv ? 0 : 1));
+		}
+		return Double.compare(l.doubleValue(), r.doubleValue());
+	}
+	
+	boolean isConstant() {
+		return left.isConstant() && right.isConstant();
+	}
+	
+	public String toString() {
+		return "(" + left + " " + operator.getSymbol() + " " + right + ")";
+	}
+}
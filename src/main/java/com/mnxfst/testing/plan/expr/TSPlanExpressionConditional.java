@@ -0,0 +1,53 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Conditional expression: <i>condition ? thenValue : elseValue</i>. Only the selected branch is evaluated
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+class TSPlanExpressionConditional extends TSPlanExpressionNode {
+
+	private final TSPlanExpressionNode condition;
+	private final TSPlanExpressionNode thenNode;
+	private final TSPlanExpressionNode elseNode;
+	
+	TSPlanExpressionConditional(TSPlanExpressionNode condition, TSPlanExpressionNode thenNode, TSPlanExpressionNode elseNode) {
+		this.condition = condition;
+		this.thenNode = thenNode;
+		this.elseNode = elseNode;
+	}
+	
+	Object evaluate(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		return (condition.evaluateBoolean(ctx) ? thenNode.evaluate(ctx) : elseNode.evaluate(ctx));
+	}
+	
+	boolean isConstant() {
+		return condition.isConstant() && thenNode.isConstant() && elseNode.isConstant();
+	}
+	
+	public String toString() {
+		return "(" + condition + " ? " + thenNode + " : " + elseNode + ")";
+	}
+}
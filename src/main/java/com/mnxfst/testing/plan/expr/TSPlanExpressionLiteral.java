@@ -0,0 +1,52 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Constant value - either a literal or the result of folding a constant sub-expression
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+class TSPlanExpressionLiteral extends TSPlanExpressionNode {
+
+	private final Object value;
+	
+	TSPlanExpressionLiteral(Object value) {
+		this.value = value;
+	}
+	
+	Object evaluate(TSPlanExecutionContext ctx) {
+		return value;
+	}
+	
+	boolean isConstant() {
+		return true;
+	}
+	
+	Object getValue() {
+		return value;
+	}
+	
+	public String toString() {
+		return (value instanceof String ? "'" + value + "'" : String.valueOf(value));
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Node of the evaluation tree of a {@link TSPlanExpression compiled expression}. Numerical values are represented by
+ * {@link Long} (integral) and {@link Double} values, conditions by {@link Boolean} values
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+abstract class TSPlanExpressionNode {
+
+	/**
+	 * Evaluates the node against the provided context
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException
+	 */
+	abstract Object evaluate(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException;
+	
+	/**
+	 * Returns true in case the node evaluates to the same value for every context, thus it may be folded while compiling
+	 * @return
+	 */
+	abstract boolean isConstant();
+	
+	/**
+	 * Evaluates the node and returns the result as boolean 
+	 * @param ctx
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case the result is not a boolean value
+	 */
+	boolean evaluateBoolean(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		Object value = evaluate(ctx);
+		if(value instanceof Boolean)
+			return ((Boolean)value).booleanValue();
+		throw new TSVariableEvaluationFailedException("Expected a boolean value but found: " + value);
+	}
+	
+	/**
+	 * Returns true in case the value is an integral number
+	 * @param value
+	 * @return
+	 */
+	static boolean isIntegral(Object value) {
+		return (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte);
+	}
+	
+	/**
+	 * Returns the value as number
+	 * @param value
+	 * @param operator
+	 * @return
+	 * @throws TSVariableEvaluationFailedException thrown in case the value is not numerical
+	 */
+	static Number toNumber(Object value, String operator) throws TSVariableEvaluationFailedException {
+		if(value instanceof Number)
+			return (Number)value;
+		throw new TSVariableEvaluationFailedException("Operator '" + operator + "' expects numerical operands but found: " + value);
+	}
+}
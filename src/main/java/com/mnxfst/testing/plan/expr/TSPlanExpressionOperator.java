@@ -0,0 +1,54 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+/**
+ * Operators supported by the {@link TSPlanExpression expression language}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+enum TSPlanExpressionOperator {
+
+	ADD("+"),
+	SUBTRACT("-"),
+	MULTIPLY("*"),
+	DIVIDE("/"),
+	MODULO("%"),
+	EQUAL("=="),
+	NOT_EQUAL("!="),
+	LESS("<"),
+	LESS_OR_EQUAL("<="),
+	GREATER(">"),
+	GREATER_OR_EQUAL(">="),
+	AND("&&"),
+	OR("||"),
+	NOT("!"),
+	NEGATE("-");
+	
+	private final String symbol;
+	
+	private TSPlanExpressionOperator(String symbol) {
+		this.symbol = symbol;
+	}
+	
+	String getSymbol() {
+		return symbol;
+	}
+}
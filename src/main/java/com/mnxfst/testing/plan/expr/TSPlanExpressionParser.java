@@ -0,0 +1,310 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import java.util.List;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
+/**
+ * Recursive descent parser translating the source of an expression into an evaluation tree. Constant sub-expressions are
+ * folded while parsing. Grammar (lowest precedence first):
+ * <pre>
+ * expression     := or ( '?' expression ':' expression )?
+ * or             := and ( '||' and )*
+ * and            := equality ( '&&' equality )*
+ * equality       := relational ( ( '==' | '!=' ) relational )*
+ * relational     := additive ( ( '<' | '<=' | '>' | '>=' ) additive )*
+ * additive       := multiplicative ( ( '+' | '-' ) multiplicative )*
+ * multiplicative := unary ( ( '*' | '/' | '%' ) unary )*
+ * unary          := ( '-' | '!' ) unary | primary
+ * primary        := number | 'string' | "string" | true | false | null | ${global.name} | ${run.name} | '(' expression ')'
+ * </pre>
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+class TSPlanExpressionParser {
+
+	private final String source;
+	/** receives the variable nodes found while parsing */
+	private final List<TSPlanExpressionVariable> variables;
+	/** current read position */
+	private int position = 0;
+	
+	TSPlanExpressionParser(String source, List<TSPlanExpressionVariable> variables) {
+		this.source = source;
+		this.variables = variables;
+	}
+	
+	/**
+	 * Parses the complete source
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	TSPlanExpressionNode parse() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseExpression();
+		skipWhitespace();
+		if(position < source.length())
+			throw error("Unexpected input");
+		return node;
+	}
+	
+	private TSPlanExpressionNode parseExpression() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode condition = parseOr();
+		if(!consume("?"))
+			return condition;
+		TSPlanExpressionNode thenNode = parseExpression();
+		if(!consume(":"))
+			throw error("Missing ':' of conditional expression");
+		TSPlanExpressionNode elseNode = parseExpression();
+		return fold(new TSPlanExpressionConditional(condition, thenNode, elseNode));
+	}
+	
+	private TSPlanExpressionNode parseOr() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseAnd();
+		while(consume("||"))
+			node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.OR, node, parseAnd()));
+		return node;
+	}
+	
+	private TSPlanExpressionNode parseAnd() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseEquality();
+		while(consume("&&"))
+			node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.AND, node, parseEquality()));
+		return node;
+	}
+	
+	private TSPlanExpressionNode parseEquality() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseRelational();
+		while(true) {
+			if(consume("=="))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.EQUAL, node, parseRelational()));
+			else if(consume("!="))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.NOT_EQUAL, node, parseRelational()));
+			else
+				return node;
+		}
+	}
+	
+	private TSPlanExpressionNode parseRelational() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseAdditive();
+		while(true) {
+			if(consume("<="))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.LESS_OR_EQUAL, node, parseAdditive()));
+			else if(consume(">="))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.GREATER_OR_EQUAL, node, parseAdditive()));
+			else if(consume("<"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.LESS, node, parseAdditive()));
+			else if(consume(">"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.GREATER, node, parseAdditive()));
+			else
+				return node;
+		}
+	}
+	
+	private TSPlanExpressionNode parseAdditive() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseMultiplicative();
+		while(true) {
+			if(consume("+"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.ADD, node, parseMultiplicative()));
+			else if(consume("-"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.SUBTRACT, node, parseMultiplicative()));
+			else
+				return node;
+		}
+	}
+	
+	private TSPlanExpressionNode parseMultiplicative() throws TSPlanConfigurationFormatException {
+		TSPlanExpressionNode node = parseUnary();
+		while(true) {
+			if(consume("*"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.MULTIPLY, node, parseUnary()));
+			else if(consume("/"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.DIVIDE, node, parseUnary()));
+			else if(consume("%"))
+				node = fold(new TSPlanExpressionBinary(TSPlanExpressionOperator.MODULO, node, parseUnary()));
+			else
+				return node;
+		}
+	}
+	
+	private TSPlanExpressionNode parseUnary() throws TSPlanConfigurationFormatException {
+		if(consume("-"))
+			return fold(new TSPlanExpressionUnary(TSPlanExpressionOperator.NEGATE, parseUnary()));
+		if(!lookingAt("!=") && consume("!"))
+			return fold(new TSPlanExpressionUnary(TSPlanExpressionOperator.NOT, parseUnary()));
+		return parsePrimary();
+	}
+	
+	private TSPlanExpressionNode parsePrimary() throws TSPlanConfigurationFormatException {
+		
+		skipWhitespace();
+		if(position >= source.length())
+			throw error("Unexpected end of expression");
+		
+		char c = source.charAt(position);
+		
+		// sub-expression
+		if(c == '(') {
+			position++;
+			TSPlanExpressionNode node = parseExpression();
+			if(!consume(")"))
+				throw error("Missing ')'");
+			return node;
+		}
+		
+		// context variable
+		if(source.startsWith("${", position)) {
+			int end = source.indexOf('}', position);
+			if(end == -1)
+				throw error("Unclosed variable reference");
+			String pattern = source.substring(position, end + 1);
+			if(!pattern.startsWith("${global.") && !pattern.startsWith("${run."))
+				throw error("Invalid variable reference '"+pattern+"'. Expected prefix: ${global||run...}");
+			position = end + 1;
+			TSPlanExpressionVariable variable = new TSPlanExpressionVariable(pattern);
+			variables.add(variable);
+			return variable;
+		}
+		
+		// string literal
+		if(c == '\'' || c == '"') 
+			return new TSPlanExpressionLiteral(parseString(c));
+
+		// numerical literal
+		if(Character.isDigit(c) || (c == '.' && position + 1 < source.length() && Character.isDigit(source.charAt(position + 1))))
+			return new TSPlanExpressionLiteral(parseNumber());
+		
+		// keywords
+		if(Character.isLetter(c)) {
+			int start = position;
+			while(position < source.length() && Character.isLetterOrDigit(source.charAt(position)))
+				position++;
+			String keyword = source.substring(start, position);
+			if(keyword.equals("true"))
+				return new TSPlanExpressionLiteral(Boolean.TRUE);
+			if(keyword.equals("false"))
+				return new TSPlanExpressionLiteral(Boolean.FALSE);
+			if(keyword.equals("null"))
+				return new TSPlanExpressionLiteral(null);
+			position = start;
+			throw error("Unknown identifier '"+keyword+"'");
+		}
+		
+		throw error("Unexpected character '"+c+"'");
+	}
+	
+	/**
+	 * Parses a string literal enclosed by the given quote. A backslash escapes the next character
+	 * @param quote
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	private String parseString(char quote) throws TSPlanConfigurationFormatException {
+		int start = position;
+		position++;
+		StringBuilder value = new StringBuilder();
+		while(position < source.length()) {
+			char c = source.charAt(position++);
+			if(c == quote)
+				return value.toString();
+			if(c == '\\' && position < source.length())
+				c = source.charAt(position++);
+			value.append(c);
+		}
+		position = start;
+		throw error("Unclosed string literal");
+	}
+	
+	/**
+	 * Parses a numerical literal - values containing a fraction are returned as {@link Double}, all others as {@link Long}
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	private Object parseNumber() throws TSPlanConfigurationFormatException {
+		int start = position;
+		boolean fraction = false;
+		while(position < source.length()) {
+			char c = source.charAt(position);
+			if(c == '.' && !fraction)
+				fraction = true;
+			else if(!Character.isDigit(c))
+				break;
+			position++;
+		}
+		String number = source.substring(start, position);
+		try {
+			if(fraction)
+				return Double.valueOf(number);
+			return Long.valueOf(number);
+		} catch(NumberFormatException e) {
+			position = start;
+			throw error("Invalid number '"+number+"'");
+		}
+	}
+	
+	/**
+	 * Replaces constant nodes by a literal holding their value
+	 * @param node
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 */
+	private TSPlanExpressionNode fold(TSPlanExpressionNode node) throws TSPlanConfigurationFormatException {
+		if(!node.isConstant())
+			return node;
+		try {
+			return new TSPlanExpressionLiteral(node.evaluate(null));
+		} catch(TSVariableEvaluationFailedException e) {
+			throw error("Invalid constant expression " + node + ". Error: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Skips whitespaces and consumes the given token if it is found at the current position
+	 * @param token
+	 * @return
+	 */
+	private boolean consume(String token) {
+		if(!lookingAt(token))
+			return false;
+		position = position + token.length();
+		return true;
+	}
+	
+	/**
+	 * Skips whitespaces and returns true in case the given token is found at the current position 
+	 * @param token
+	 * @return
+	 */
+	private boolean lookingAt(String token) {
+		skipWhitespace();
+		return source.startsWith(token, position);
+	}
+	
+	private void skipWhitespace() {
+		while(position < source.length() && Character.isWhitespace(source.charAt(position)))
+			position++;
+	}
+	
+	private TSPlanConfigurationFormatException error(String message) {
+		return new TSPlanConfigurationFormatException(message + " at position " + position + " of expression: " + source);
+	}
+}
@@ -0,0 +1,59 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Unary operation: numerical negation or logical not 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+class TSPlanExpressionUnary extends TSPlanExpressionNode {
+
+	private final TSPlanExpressionOperator operator;
+	private final TSPlanExpressionNode operand;
+	
+	TSPlanExpressionUnary(TSPlanExpressionOperator operator, TSPlanExpressionNode operand) {
+		this.operator = operator;
+		this.operand = operand;
+	}
+	
+	Object evaluate(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		
+		if(operator == TSPlanExpressionOperator.NOT)
+			return Boolean.valueOf(!operand.evaluateBoolean(ctx));
+		
+		Object value = operand.evaluate(ctx);
+		Number number = toNumber(value, operator.getSymbol());
+		if(isIntegral(value))
+			return Long.valueOf(-number.longValue());
+		return Double.valueOf(-number.doubleValue());
+	}
+	
+	boolean isConstant() {
+		return operand.isConstant();
+	}
+	
+	public String toString() {
+		return operator.getSymbol() + operand;
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionReplacementPattern;
+
+/**
+ * References a context variable using a replacement pattern, eg. ${run.counter} or ${global.customer.name}. Once bound to a
+ * slot table, the value is read through the compiled pattern, otherwise the pattern is evaluated by name
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+class TSPlanExpressionVariable extends TSPlanExpressionNode {
+
+	private final String replacementPattern;
+	private volatile TSPlanExecutionReplacementPattern compiledPattern = null;
+	
+	TSPlanExpressionVariable(String replacementPattern) {
+		this.replacementPattern = replacementPattern;
+	}
+	
+	void bind(TSPlanContextSlotTable slotTable) {
+		this.compiledPattern = (slotTable != null ? slotTable.getReplacementPattern(replacementPattern) : null);
+	}
+	
+	Object evaluate(TSPlanExecutionContext ctx) throws TSVariableEvaluationFailedException {
+		TSPlanExecutionReplacementPattern pattern = this.compiledPattern;
+		if(pattern != null)
+			return ctx.evaluatePattern(pattern);
+		return ctx.evaluate(replacementPattern);
+	}
+	
+	boolean isConstant() {
+		return false;
+	}
+	
+	String getReplacementPattern() {
+		return replacementPattern;
+	}
+	
+	public String toString() {
+		return replacementPattern;
+	}
+}
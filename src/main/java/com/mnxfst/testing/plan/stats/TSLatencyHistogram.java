@@ -0,0 +1,537 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.stats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.exception.TSLatencyHistogramEncodingException;
+
+/**
+ * Fixed-size latency histogram following the layout of an HdrHistogram: values (nanoseconds) are sorted into
+ * power-of-two buckets where each bucket is split into a linear set of sub-buckets. The number of sub-buckets
+ * is derived from the configured number of significant decimal digits, thus the relative error of any reported
+ * value is bound by that precision. The memory footprint is fixed at construction time and does not depend on
+ * the number of recorded values. Values exceeding the highest trackable value are recorded as the highest
+ * trackable value.<br/><br/>
+ * Histograms are mergeable: {@link #add(TSLatencyHistogram) adding} the histograms of several executors (or hosts)
+ * yields the distribution of all recorded values, thus percentiles may be computed across any number of sources.
+ * For transfer a histogram may be encoded into a compact, compressed representation which contains only the
+ * non-empty buckets.<br/><br/>
+ * Instances are <b>not</b> thread-safe and are meant to be owned by a single recording thread.
+ * @author mnxfst
+ */
+public class TSLatencyHistogram implements Serializable {
+
+	private static final long serialVersionUID = 4379172302853377862L;
+
+	/** default number of significant decimal digits - 2 digits keep a relative error of 1% */
+	public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+	/** default highest trackable value: one hour in nanoseconds */
+	public static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = 60L * 60L * 1000L * 1000L * 1000L;
+	/** max number of significant decimal digits supported */
+	public static final int MAX_SIGNIFICANT_DIGITS = 5;
+	/** identifies the encoding format */
+	private static final int ENCODING_COOKIE = 0x54534c48;
+
+	/** highest value the histogram is able to distinguish */
+	private final long highestTrackableValue;
+	/** number of significant decimal digits */
+	private final int significantDigits;
+
+	// precomputed layout information
+	private final int subBucketCount;
+	private final int subBucketHalfCount;
+	private final int subBucketHalfCountMagnitude;
+	private final long subBucketMask;
+	private final int leadingZeroCountBase;
+	private final int bucketCount;
+
+	/** holds the counts for all (sub-)buckets */
+	private final long[] counts;
+
+	/** number of recorded values */
+	private long totalCount = 0;
+	/** sum of all recorded values - used for computing the mean */
+	private long totalSum = 0;
+	/** smallest recorded value (exact) */
+	private long minValue = Long.MAX_VALUE;
+	/** largest recorded value (exact) */
+	private long maxValue = 0;
+
+	/**
+	 * Initializes the histogram using {@link #DEFAULT_HIGHEST_TRACKABLE_VALUE} and {@link #DEFAULT_SIGNIFICANT_DIGITS}
+	 */
+	public TSLatencyHistogram() {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_SIGNIFICANT_DIGITS);
+	}
+
+	/**
+	 * Initializes the histogram using {@link #DEFAULT_HIGHEST_TRACKABLE_VALUE} and the given number of significant digits
+	 * @param significantDigits
+	 */
+	public TSLatencyHistogram(int significantDigits) {
+		this(DEFAULT_HIGHEST_TRACKABLE_VALUE, significantDigits);
+	}
+
+	/**
+	 * Initializes the histogram
+	 * @param highestTrackableValue highest value (nanoseconds) to be tracked, must be at least 2
+	 * @param significantDigits number of significant decimal digits, must be between 0 and {@link #MAX_SIGNIFICANT_DIGITS}
+	 */
+	public TSLatencyHistogram(long highestTrackableValue, int significantDigits) {
+
+		if(highestTrackableValue < 2)
+			throw new IllegalArgumentException("Highest trackable value must be at least 2");
+		if(significantDigits < 0 || significantDigits > MAX_SIGNIFICANT_DIGITS)
+			throw new IllegalArgumentException("Number of significant digits must be between 0 and " + MAX_SIGNIFICANT_DIGITS);
+
+		this.highestTrackableValue = highestTrackableValue;
+		this.significantDigits = significantDigits;
+
+		// the sub-buckets must be able to distinguish 2 * 10^digits values at single unit resolution
+		long largestValueWithSingleUnitResolution = 2 * (long)Math.pow(10, significantDigits);
+		int subBucketCountMagnitude = (int)Math.ceil(Math.log(largestValueWithSingleUnitResolution) / Math.log(2));
+		this.subBucketHalfCountMagnitude = (subBucketCountMagnitude > 1 ? subBucketCountMagnitude : 1) - 1;
+		this.subBucketCount = 1 << (subBucketHalfCountMagnitude + 1);
+		this.subBucketHalfCount = subBucketCount / 2;
+		this.subBucketMask = subBucketCount - 1;
+		this.leadingZeroCountBase = 64 - (subBucketHalfCountMagnitude + 1);
+
+		// determine the number of buckets required for covering the highest trackable value
+		long smallestUntrackableValue = ((long)subBucketCount);
+		int bucketsNeeded = 1;
+		while(smallestUntrackableValue <= highestTrackableValue) {
+			if(smallestUntrackableValue > (Long.MAX_VALUE / 2)) {
+				bucketsNeeded = bucketsNeeded + 1;
+				break;
+			}
+			smallestUntrackableValue = smallestUntrackableValue << 1;
+			bucketsNeeded = bucketsNeeded + 1;
+		}
+		this.bucketCount = bucketsNeeded;
+		this.counts = new long[(bucketCount + 1) * subBucketHalfCount];
+	}
+
+	/**
+	 * Records the given value. Negative values are recorded as 0, values exceeding the highest trackable value
+	 * are recorded as highest trackable value
+	 * @param value
+	 */
+	public void recordValue(long value) {
+
+		if(value < 0)
+			value = 0;
+		else if(value > highestTrackableValue)
+			value = highestTrackableValue;
+
+		counts[countsIndexFor(value)]++;
+
+		totalCount = totalCount + 1;
+		totalSum = totalSum + value;
+		if(value < minValue)
+			minValue = value;
+		if(value > maxValue)
+			maxValue = value;
+	}
+
+	/**
+	 * Returns the value found at the given percentile (0.0 - 100.0). The result is the highest value
+	 * which is equivalent to the bucket the percentile falls into. If no value has been recorded so far,
+	 * the method returns 0
+	 * @param percentile
+	 * @return
+	 */
+	public long getValueAtPercentile(double percentile) {
+
+		if(totalCount == 0)
+			return 0;
+
+		if(percentile > 100.0)
+			percentile = 100.0;
+		else if(percentile < 0.0)
+			percentile = 0.0;
+
+		long countAtPercentile = (long)(((percentile / 100.0) * totalCount) + 0.5);
+		if(countAtPercentile < 1)
+			countAtPercentile = 1;
+
+		long countToIndex = 0;
+		for(int i = 0; i < counts.length; i++) {
+			countToIndex = countToIndex + counts[i];
+			if(countToIndex >= countAtPercentile) {
+				long value = highestEquivalentValue(valueFromIndex(i));
+				// never report more than has been seen
+				return (value > maxValue ? maxValue : value);
+			}
+		}
+		return maxValue;
+	}
+
+	/**
+	 * Returns the arithmetic mean of all recorded values or 0 if nothing has been recorded so far
+	 * @return
+	 */
+	public double getMean() {
+		if(totalCount == 0)
+			return 0;
+		return ((double)totalSum) / totalCount;
+	}
+
+	/**
+	 * Resets the histogram to its initial state
+	 */
+	public void reset() {
+		for(int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+		totalCount = 0;
+		totalSum = 0;
+		minValue = Long.MAX_VALUE;
+		maxValue = 0;
+	}
+
+	/**
+	 * Adds all values recorded by the given histogram to this one. Histograms sharing the same layout are merged
+	 * by adding up their counts, otherwise the non-empty buckets of the given histogram are recorded using their
+	 * highest equivalent value
+	 * @param other
+	 */
+	public void add(TSLatencyHistogram other) {
+
+		if(other == null || other.totalCount == 0)
+			return;
+
+		if(other.significantDigits == significantDigits && other.highestTrackableValue == highestTrackableValue) {
+			for(int i = 0; i < counts.length; i++)
+				counts[i] = counts[i] + other.counts[i];
+		} else {
+			for(int i = 0; i < other.counts.length; i++) {
+				if(other.counts[i] > 0) {
+					long value = other.highestEquivalentValue(other.valueFromIndex(i));
+					if(value > other.maxValue)
+						value = other.maxValue;
+					if(value > highestTrackableValue)
+						value = highestTrackableValue;
+					int index = countsIndexFor(value);
+					counts[index] = counts[index] + other.counts[i];
+				}
+			}
+		}
+
+		totalCount = totalCount + other.totalCount;
+		totalSum = totalSum + other.totalSum;
+		if(other.minValue < minValue)
+			minValue = other.minValue;
+		long otherMax = (other.maxValue > highestTrackableValue ? highestTrackableValue : other.maxValue);
+		if(otherMax > maxValue)
+			maxValue = otherMax;
+	}
+
+	/**
+	 * Returns a copy of this histogram
+	 * @return
+	 */
+	public TSLatencyHistogram copy() {
+		TSLatencyHistogram copy = new TSLatencyHistogram(highestTrackableValue, significantDigits);
+		copy.add(this);
+		return copy;
+	}
+
+	/**
+	 * Encodes the histogram into a compressed byte array. Runs of empty buckets are collapsed, thus the size of the
+	 * result depends on the number of non-empty buckets rather than on the number of recorded values
+	 * @return
+	 */
+	public byte[] encodeToCompressedByteArray() {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+			out.writeInt(ENCODING_COOKIE);
+			out.writeInt(significantDigits);
+			out.writeLong(highestTrackableValue);
+			out.writeLong(totalSum);
+			out.writeLong(minValue);
+			out.writeLong(maxValue);
+
+			// non-empty buckets are written as positive counts, runs of empty buckets as negative run lengths
+			int i = 0;
+			while(i < counts.length) {
+				if(counts[i] == 0) {
+					int emptyRun = 0;
+					while(i < counts.length && counts[i] == 0) {
+						emptyRun = emptyRun + 1;
+						i = i + 1;
+					}
+					writeVarLong(out, -emptyRun);
+				} else {
+					writeVarLong(out, counts[i]);
+					i = i + 1;
+				}
+			}
+			out.close();
+		} catch(IOException e) {
+			// not expected to happen as the data is written to memory
+			throw new IllegalStateException("Failed to encode histogram. Error: " + e.getMessage(), e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Encodes the histogram into a compressed and base64 encoded string
+	 * @return
+	 */
+	public String encodeToCompressedString() {
+		try {
+			return new String(Base64.encodeBase64(encodeToCompressedByteArray()), "US-ASCII");
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException("Failed to encode histogram. Error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Decodes a histogram previously encoded via {@link #encodeToCompressedByteArray()}
+	 * @param encoded
+	 * @return
+	 * @throws TSLatencyHistogramEncodingException
+	 */
+	public static TSLatencyHistogram decodeFromCompressedByteArray(byte[] encoded) throws TSLatencyHistogramEncodingException {
+
+		if(encoded == null || encoded.length == 0)
+			throw new TSLatencyHistogramEncodingException("No encoded histogram provided");
+
+		DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(encoded)));
+		try {
+			if(in.readInt() != ENCODING_COOKIE)
+				throw new TSLatencyHistogramEncodingException("Invalid histogram encoding");
+
+			int significantDigits = in.readInt();
+			long highestTrackableValue = in.readLong();
+
+			TSLatencyHistogram histogram = null;
+			try {
+				histogram = new TSLatencyHistogram(highestTrackableValue, significantDigits);
+			} catch(IllegalArgumentException e) {
+				throw new TSLatencyHistogramEncodingException("Invalid histogram layout. Error: " + e.getMessage(), e);
+			}
+			histogram.totalSum = in.readLong();
+			histogram.minValue = in.readLong();
+			histogram.maxValue = in.readLong();
+
+			int i = 0;
+			while(i < histogram.counts.length) {
+				long value = readVarLong(in);
+				if(value < 0) {
+					i = i - (int)value;
+				} else {
+					histogram.counts[i] = value;
+					histogram.totalCount = histogram.totalCount + value;
+					i = i + 1;
+				}
+			}
+			if(i != histogram.counts.length)
+				throw new TSLatencyHistogramEncodingException("Invalid histogram encoding: number of buckets does not match the layout");
+			return histogram;
+		} catch(IOException e) {
+			throw new TSLatencyHistogramEncodingException("Failed to decode histogram. Error: " + e.getMessage(), e);
+		} finally {
+			try {
+				in.close();
+			} catch(IOException e) {
+				//
+			}
+		}
+	}
+
+	/**
+	 * Decodes a histogram previously encoded via {@link #encodeToCompressedString()}
+	 * @param encoded
+	 * @return
+	 * @throws TSLatencyHistogramEncodingException
+	 */
+	public static TSLatencyHistogram decodeFromCompressedString(String encoded) throws TSLatencyHistogramEncodingException {
+		if(encoded == null || encoded.isEmpty())
+			throw new TSLatencyHistogramEncodingException("No encoded histogram provided");
+		try {
+			return decodeFromCompressedByteArray(Base64.decodeBase64(encoded.trim().getBytes("US-ASCII")));
+		} catch(UnsupportedEncodingException e) {
+			throw new TSLatencyHistogramEncodingException("Failed to decode histogram. Error: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the given value as zig-zag encoded variable length integer
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while((zigZag & ~0x7FL) != 0) {
+			out.writeByte((int)((zigZag & 0x7F) | 0x80));
+			zigZag = zigZag >>> 7;
+		}
+		out.writeByte((int)zigZag);
+	}
+
+	/**
+	 * Reads a zig-zag encoded variable length integer
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long zigZag = 0;
+		int shift = 0;
+		while(true) {
+			int b = in.readUnsignedByte();
+			zigZag = zigZag | (((long)(b & 0x7F)) << shift);
+			if((b & 0x80) == 0)
+				break;
+			shift = shift + 7;
+			if(shift > 63)
+				throw new IOException("Malformed variable length integer");
+		}
+		return (zigZag >>> 1) ^ -(zigZag & 1);
+	}
+
+	/**
+	 * Returns the smallest value which is equivalent to the provided one, eg. which is sorted into the same sub-bucket
+	 * @param value
+	 * @return
+	 */
+	public long lowestEquivalentValue(long value) {
+		int bucketIndex = bucketIndexFor(value);
+		int subBucketIndex = subBucketIndexFor(value, bucketIndex);
+		return ((long)subBucketIndex) << bucketIndex;
+	}
+
+	/**
+	 * Returns the largest value which is equivalent to the provided one, eg. which is sorted into the same sub-bucket
+	 * @param value
+	 * @return
+	 */
+	public long highestEquivalentValue(long value) {
+		int bucketIndex = bucketIndexFor(value);
+		int subBucketIndex = subBucketIndexFor(value, bucketIndex);
+		long range = 1L << ((subBucketIndex >= subBucketCount) ? (bucketIndex + 1) : bucketIndex);
+		return lowestEquivalentValue(value) + range - 1;
+	}
+
+	/**
+	 * Returns the index into the counts array for the given value
+	 * @param value
+	 * @return
+	 */
+	protected int countsIndexFor(long value) {
+		int bucketIndex = bucketIndexFor(value);
+		int subBucketIndex = subBucketIndexFor(value, bucketIndex);
+		int bucketBaseIndex = (bucketIndex + 1) << subBucketHalfCountMagnitude;
+		return bucketBaseIndex + (subBucketIndex - subBucketHalfCount);
+	}
+
+	/**
+	 * Computes the lowest value being sorted into the (sub-)bucket referenced by the given counts array index
+	 * @param index
+	 * @return
+	 */
+	protected long valueFromIndex(int index) {
+		int bucketIndex = (index >> subBucketHalfCountMagnitude) - 1;
+		int subBucketIndex = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if(bucketIndex < 0) {
+			subBucketIndex = subBucketIndex - subBucketHalfCount;
+			bucketIndex = 0;
+		}
+		return ((long)subBucketIndex) << bucketIndex;
+	}
+
+	private int bucketIndexFor(long value) {
+		return leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+	}
+
+	private int subBucketIndexFor(long value, int bucketIndex) {
+		return (int)(value >>> bucketIndex);
+	}
+
+	/**
+	 * Returns the number of recorded values
+	 * @return
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the smallest recorded value or 0 if nothing has been recorded so far
+	 * @return
+	 */
+	public long getMinValue() {
+		return (totalCount == 0 ? 0 : minValue);
+	}
+
+	/**
+	 * Returns the largest recorded value
+	 * @return
+	 */
+	public long getMaxValue() {
+		return maxValue;
+	}
+
+	public long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	public int getSignificantDigits() {
+		return significantDigits;
+	}
+
+	/**
+	 * Returns the number of count slots allocated by this histogram
+	 * @return
+	 */
+	public int getCountsLength() {
+		return counts.length;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("significantDigits", this.significantDigits)
+				.append("highestTrackableValue", this.highestTrackableValue)
+				.append("totalCount", this.totalCount)
+				.append("min", getMinValue())
+				.append("max", this.maxValue)
+				.append("mean", getMean())
+				.append("p50", getValueAtPercentile(50.0))
+				.append("p99", getValueAtPercentile(99.0)).toString();
+	}
+}
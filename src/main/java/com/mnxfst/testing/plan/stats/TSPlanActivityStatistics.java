@@ -0,0 +1,222 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.stats;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.activities.TSPlanActivity;
+
+/**
+ * Holds the execution statistics for a single {@link TSPlanActivity}: the distribution of execution durations (nanoseconds)
+ * and the number of failed executions. All memory is allocated on instantiation, thus recording does not allocate anything.<br/>
+ * Activities may additionally record the durations of named execution phases, eg. the connect phase of an http request, and 
+ * named counters. Their histograms and counters are allocated once, on the first record of the respective name.<br/>
+ * Instances are thread-safe as executors sharing a {@link TSPlanStatisticsRecorder} record into the same statistics: all methods 
+ * synchronize on the instance.
+ * @author mnxfst
+ */
+public class TSPlanActivityStatistics implements Serializable {
+
+	private static final long serialVersionUID = 7651958237418843511L;
+
+	/** name of the activity */
+	private String activityName = null;
+	/** distribution of execution durations (nanoseconds) */
+	private TSLatencyHistogram durationHistogram = null;
+	/** number of failed executions */
+	private long errors = 0;
+	/** distribution of phase durations (nanoseconds) by phase name - in order of first occurrence */
+	private final Map<String, TSLatencyHistogram> phaseHistograms = new LinkedHashMap<String, TSLatencyHistogram>();
+	/** named counters - in order of first occurrence */
+	private final Map<String, long[]> counters = new LinkedHashMap<String, long[]>();
+	
+	/**
+	 * Initializes the statistics using {@link TSLatencyHistogram#DEFAULT_SIGNIFICANT_DIGITS}
+	 * @param activityName
+	 */
+	public TSPlanActivityStatistics(String activityName) {
+		this(activityName, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+	}
+	
+	/**
+	 * Initializes the statistics
+	 * @param activityName
+	 * @param histogramSignificantDigits
+	 */
+	public TSPlanActivityStatistics(String activityName, int histogramSignificantDigits) {
+		this.activityName = activityName;
+		this.durationHistogram = new TSLatencyHistogram(histogramSignificantDigits);
+	}
+	
+	/**
+	 * Records a single execution
+	 * @param durationNanos
+	 * @param failed
+	 */
+	public synchronized void recordExecution(long durationNanos, boolean failed) {
+		durationHistogram.recordValue(durationNanos);
+		if(failed)
+			errors = errors + 1;
+	}
+	
+	/**
+	 * Records the duration of a named execution phase
+	 * @param phase
+	 * @param durationNanos
+	 */
+	public synchronized void recordPhase(String phase, long durationNanos) {
+		TSLatencyHistogram histogram = phaseHistograms.get(phase);
+		if(histogram == null) {
+			histogram = new TSLatencyHistogram(durationHistogram.getSignificantDigits());
+			phaseHistograms.put(phase, histogram);
+		}
+		histogram.recordValue(durationNanos);
+	}
+	
+	/**
+	 * Increments the named counter by one
+	 * @param counter
+	 */
+	public synchronized void incrementCounter(String counter) {
+		long[] value = counters.get(counter);
+		if(value == null) {
+			value = new long[1];
+			counters.put(counter, value);
+		}
+		value[0] = value[0] + 1;
+	}
+	
+	/**
+	 * Adds the statistics collected by the given instance to this one
+	 * @param other
+	 */
+	public synchronized void add(TSPlanActivityStatistics other) {
+		if(other == null)
+			return;
+		durationHistogram.add(other.durationHistogram);
+		errors = errors + other.errors;
+		
+		for(Map.Entry<String, TSLatencyHistogram> phase : other.phaseHistograms.entrySet()) {
+			TSLatencyHistogram histogram = phaseHistograms.get(phase.getKey());
+			if(histogram == null) {
+				histogram = new TSLatencyHistogram(durationHistogram.getSignificantDigits());
+				phaseHistograms.put(phase.getKey(), histogram);
+			}
+			histogram.add(phase.getValue());
+		}
+		for(Map.Entry<String, long[]> counter : other.counters.entrySet()) {
+			long[] value = counters.get(counter.getKey());
+			if(value == null) {
+				value = new long[1];
+				counters.put(counter.getKey(), value);
+			}
+			value[0] = value[0] + counter.getValue()[0];
+		}
+	}
+	
+	/**
+	 * Returns a copy of this instance
+	 * @return
+	 */
+	public synchronized TSPlanActivityStatistics copy() {
+		TSPlanActivityStatistics copy = new TSPlanActivityStatistics(activityName, durationHistogram.getSignificantDigits());
+		copy.add(this);
+		return copy;
+	}
+
+	public String getActivityName() {
+		return activityName;
+	}
+
+	public TSLatencyHistogram getDurationHistogram() {
+		return durationHistogram;
+	}
+
+	/**
+	 * Returns the number of executions, including the failed ones
+	 * @return
+	 */
+	public synchronized long getExecutions() {
+		return durationHistogram.getTotalCount();
+	}
+
+	public synchronized long getErrors() {
+		return errors;
+	}
+	
+	/**
+	 * Returns the recorded phase duration histograms by phase name
+	 * @return
+	 */
+	public synchronized Map<String, TSLatencyHistogram> getPhaseHistograms() {
+		return Collections.unmodifiableMap(phaseHistograms);
+	}
+	
+	/**
+	 * Returns the histogram of the named phase - null if the phase has never been recorded
+	 * @param phase
+	 * @return
+	 */
+	public synchronized TSLatencyHistogram getPhaseHistogram(String phase) {
+		return phaseHistograms.get(phase);
+	}
+	
+	/**
+	 * Returns a snapshot of all counters by name
+	 * @return
+	 */
+	public synchronized Map<String, Long> getCounters() {
+		Map<String, Long> result = new LinkedHashMap<String, Long>();
+		for(Map.Entry<String, long[]> counter : counters.entrySet())
+			result.put(counter.getKey(), Long.valueOf(counter.getValue()[0]));
+		return result;
+	}
+	
+	/**
+	 * Returns the value of the named counter - 0 if it has never been incremented
+	 * @param counter
+	 * @return
+	 */
+	public synchronized long getCounter(String counter) {
+		long[] value = counters.get(counter);
+		return (value != null ? value[0] : 0);
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return new ToStringBuilder(this)
+				.append("activityName", this.activityName)
+				.append("executions", getExecutions())
+				.append("errors", this.errors)
+				.append("meanNanos", durationHistogram.getMean())
+				.append("p50Nanos", durationHistogram.getValueAtPercentile(50.0))
+				.append("p99Nanos", durationHistogram.getValueAtPercentile(99.0))
+				.append("maxNanos", durationHistogram.getMaxValue())
+				.append("phases", this.phaseHistograms.keySet())
+				.append("counters", getCounters()).toString();
+	}
+}
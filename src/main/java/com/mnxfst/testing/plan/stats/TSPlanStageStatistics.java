@@ -0,0 +1,129 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.stats;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.plan.exec.TSPlanLoadStage;
+
+/**
+ * Holds the statistics of the plan runs started during a single {@link TSPlanLoadStage}: the distribution of single
+ * run durations (nanoseconds) and the number of activities which failed to execute. All memory is allocated on 
+ * instantiation, thus recording does not allocate anything. Instances are <b>not</b> thread-safe and are meant to be 
+ * owned by a single recording thread.
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanStageStatistics implements Serializable {
+
+	private static final long serialVersionUID = -4317808250963116382L;
+
+	/** name of the stage */
+	private String stageName = null;
+	/** distribution of single run durations (nanoseconds) */
+	private TSLatencyHistogram durationHistogram = null;
+	/** number of activities which failed to execute */
+	private long errors = 0;
+	
+	/**
+	 * Initializes the statistics using {@link TSLatencyHistogram#DEFAULT_SIGNIFICANT_DIGITS}
+	 * @param stageName
+	 */
+	public TSPlanStageStatistics(String stageName) {
+		this(stageName, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS);
+	}
+	
+	/**
+	 * Initializes the statistics
+	 * @param stageName
+	 * @param histogramSignificantDigits
+	 */
+	public TSPlanStageStatistics(String stageName, int histogramSignificantDigits) {
+		this.stageName = stageName;
+		this.durationHistogram = new TSLatencyHistogram(histogramSignificantDigits);
+	}
+	
+	/**
+	 * Records a single plan run
+	 * @param durationNanos
+	 * @param activityExecutionErrors
+	 */
+	public void recordRun(long durationNanos, int activityExecutionErrors) {
+		durationHistogram.recordValue(durationNanos);
+		errors = errors + activityExecutionErrors;
+	}
+	
+	/**
+	 * Adds the statistics collected by the given instance to this one
+	 * @param other
+	 */
+	public void add(TSPlanStageStatistics other) {
+		if(other == null)
+			return;
+		durationHistogram.add(other.durationHistogram);
+		errors = errors + other.errors;
+	}
+	
+	/**
+	 * Returns a copy of this instance
+	 * @return
+	 */
+	public TSPlanStageStatistics copy() {
+		TSPlanStageStatistics copy = new TSPlanStageStatistics(stageName, durationHistogram.getSignificantDigits());
+		copy.add(this);
+		return copy;
+	}
+
+	public String getStageName() {
+		return stageName;
+	}
+
+	public TSLatencyHistogram getDurationHistogram() {
+		return durationHistogram;
+	}
+
+	/**
+	 * Returns the number of plan runs started during the stage
+	 * @return
+	 */
+	public long getRuns() {
+		return durationHistogram.getTotalCount();
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("stageName", this.stageName)
+				.append("runs", getRuns())
+				.append("errors", this.errors)
+				.append("meanNanos", durationHistogram.getMean())
+				.append("p50Nanos", durationHistogram.getValueAtPercentile(50.0))
+				.append("p99Nanos", durationHistogram.getValueAtPercentile(99.0))
+				.append("maxNanos", durationHistogram.getMaxValue()).toString();
+	}
+}
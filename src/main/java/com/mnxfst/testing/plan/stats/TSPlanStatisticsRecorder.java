@@ -0,0 +1,209 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan.stats;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+
+import com.mnxfst.testing.plan.exec.TSPlanExecutor;
+
+/**
+ * Records the statistics of the plan runs executed by one or more {@link TSPlanExecutor executors}: the distributions of single
+ * run durations (plain, corrected and warm-up), the statistics of each activity and - if a load profile applies - of each stage.
+ * An execution environment assigns its executors to a small, fixed number of recorders, thus the memory required for the statistics 
+ * depends on the number of recorders and not on the number of executors. The recorders are merged once the execution has finished.<br/><br/>
+ * Instances are thread-safe: the run figures are recorded while holding the recorder's monitor, activity statistics synchronize on 
+ * themselves. Activity statistics recorded during the warm-up are kept apart and never reported.
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanStatisticsRecorder {
+
+	/** number of significant digits used by all histograms */
+	private final int histogramSignificantDigits;
+	/** distributions of single run durations (nanoseconds) */
+	private final TSLatencyHistogram singleRunDurationHistogram;
+	private final TSLatencyHistogram correctedSingleRunDurationHistogram;
+	/** distribution of the single runs executed during the warm-up - allocated on the first warm-up run */
+	private TSLatencyHistogram warmUpDurationHistogram = null;
+	/** statistics for each activity (by index) */
+	private final TSPlanActivityStatistics[] activityStatistics;
+	/** statistics for each activity (by index) recorded during the warm-up - allocated on first access */
+	private TSPlanActivityStatistics[] warmUpActivityStatistics = null;
+	/** statistics for each load profile stage (by index) - null if no load profile applies */
+	private TSPlanStageStatistics[] stageStatistics = null;
+	
+	/**
+	 * Initializes the recorder
+	 * @param activityNames names of the plan activities (by index)
+	 * @param histogramSignificantDigits
+	 */
+	public TSPlanStatisticsRecorder(String[] activityNames, int histogramSignificantDigits) {
+		this.histogramSignificantDigits = histogramSignificantDigits;
+		this.singleRunDurationHistogram = new TSLatencyHistogram(histogramSignificantDigits);
+		this.correctedSingleRunDurationHistogram = new TSLatencyHistogram(histogramSignificantDigits);
+		this.activityStatistics = createActivityStatistics(activityNames, histogramSignificantDigits);
+	}
+	
+	/**
+	 * Records a single measured plan run
+	 * @param durationNanos
+	 * @param correctedDurationNanos duration measured from the intended start of the run
+	 */
+	public synchronized void recordRun(long durationNanos, long correctedDurationNanos) {
+		singleRunDurationHistogram.recordValue(durationNanos);
+		correctedSingleRunDurationHistogram.recordValue(correctedDurationNanos);
+	}
+	
+	/**
+	 * Records the corrected duration of a plan run which has not been executed at all, eg. an iteration dropped by the arrival rate scheduler
+	 * @param correctedDurationNanos
+	 */
+	public synchronized void recordCorrectedRun(long correctedDurationNanos) {
+		correctedSingleRunDurationHistogram.recordValue(correctedDurationNanos);
+	}
+	
+	/**
+	 * Records a single plan run executed during the warm-up
+	 * @param durationNanos
+	 */
+	public synchronized void recordWarmUpRun(long durationNanos) {
+		if(warmUpDurationHistogram == null)
+			warmUpDurationHistogram = new TSLatencyHistogram(histogramSignificantDigits);
+		warmUpDurationHistogram.recordValue(durationNanos);
+	}
+	
+	/**
+	 * Allocates the statistics for the given load profile stages - if not done before 
+	 * @param stageNames
+	 */
+	public synchronized void initStageStatistics(List<String> stageNames) {
+		if(stageStatistics != null)
+			return;
+		stageStatistics = new TSPlanStageStatistics[stageNames.size()];
+		for(int i = 0; i < stageStatistics.length; i++)
+			stageStatistics[i] = new TSPlanStageStatistics(stageNames.get(i), histogramSignificantDigits);
+	}
+	
+	/**
+	 * Records a single plan run started during the referenced load profile stage
+	 * @param stageIndex
+	 * @param durationNanos
+	 * @param activityExecutionErrors
+	 */
+	public synchronized void recordStageRun(int stageIndex, long durationNanos, int activityExecutionErrors) {
+		stageStatistics[stageIndex].recordRun(durationNanos, activityExecutionErrors);
+	}
+	
+	/**
+	 * Returns the statistics of the referenced activity
+	 * @param activityIndex
+	 * @return
+	 */
+	public TSPlanActivityStatistics getActivityStatistics(int activityIndex) {
+		return activityStatistics[activityIndex];
+	}
+	
+	/**
+	 * Returns the statistics of the referenced activity which receive the executions during the warm-up 
+	 * @param activityIndex
+	 * @return
+	 */
+	public synchronized TSPlanActivityStatistics getWarmUpActivityStatistics(int activityIndex) {
+		if(warmUpActivityStatistics == null) {
+			String[] activityNames = new String[activityStatistics.length];
+			for(int i = 0; i < activityNames.length; i++)
+				activityNames[i] = activityStatistics[i].getActivityName();
+			warmUpActivityStatistics = createActivityStatistics(activityNames, histogramSignificantDigits);
+		}
+		return warmUpActivityStatistics[activityIndex];
+	}
+	
+	/**
+	 * Returns the statistics of all activities by activity name
+	 * @return
+	 */
+	public Map<String, TSPlanActivityStatistics> getActivityStatistics() {
+		Map<String, TSPlanActivityStatistics> result = new LinkedHashMap<String, TSPlanActivityStatistics>();
+		for(int i = 0; i < activityStatistics.length; i++)
+			result.put(activityStatistics[i].getActivityName(), activityStatistics[i]);
+		return result;
+	}
+	
+	/**
+	 * Returns the statistics of all load profile stages by stage name (in stage order) - null if no load profile applies
+	 * @return
+	 */
+	public synchronized Map<String, TSPlanStageStatistics> getStageStatistics() {
+		if(stageStatistics == null)
+			return null;
+		Map<String, TSPlanStageStatistics> result = new LinkedHashMap<String, TSPlanStageStatistics>();
+		for(int i = 0; i < stageStatistics.length; i++)
+			result.put(stageStatistics[i].getStageName(), stageStatistics[i]);
+		return result;
+	}
+	
+	/**
+	 * Creates a set of empty statistics, one for each of the given activities
+	 * @param activityNames
+	 * @param histogramSignificantDigits
+	 * @return
+	 */
+	private static TSPlanActivityStatistics[] createActivityStatistics(String[] activityNames, int histogramSignificantDigits) {
+		TSPlanActivityStatistics[] statistics = new TSPlanActivityStatistics[activityNames.length];
+		for(int i = 0; i < statistics.length; i++)
+			statistics[i] = new TSPlanActivityStatistics(activityNames[i], histogramSignificantDigits);
+		return statistics;
+	}
+
+	public synchronized TSLatencyHistogram getSingleRunDurationHistogram() {
+		return singleRunDurationHistogram;
+	}
+
+	public synchronized TSLatencyHistogram getCorrectedSingleRunDurationHistogram() {
+		return correctedSingleRunDurationHistogram;
+	}
+
+	/**
+	 * Returns the distribution of the warm-up runs - null if no warm-up run has been recorded
+	 * @return
+	 */
+	public synchronized TSLatencyHistogram getWarmUpDurationHistogram() {
+		return warmUpDurationHistogram;
+	}
+
+	public int getHistogramSignificantDigits() {
+		return histogramSignificantDigits;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public synchronized String toString() {
+		return new ToStringBuilder(this)
+				.append("runs", singleRunDurationHistogram.getTotalCount())
+				.append("correctedRuns", correctedSingleRunDurationHistogram.getTotalCount())
+				.append("warmUpRuns", (warmUpDurationHistogram != null ? warmUpDurationHistogram.getTotalCount() : 0))
+				.append("activities", activityStatistics.length)
+				.append("stages", (stageStatistics != null ? stageStatistics.length : 0)).toString();
+	}
+}
@@ -19,6 +19,7 @@
 
 package com.mnxfst.testing.server;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.util.concurrent.Executors;
 
@@ -31,6 +32,9 @@ import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
 
 import com.mnxfst.testing.AbstractTSCommandLineTool;
 import com.mnxfst.testing.exception.TSClientConfigurationException;
+import com.mnxfst.testing.plan.TSPlanCache;
+import com.mnxfst.testing.plan.TSPlanRegistry;
+import com.mnxfst.testing.server.handler.TSHttpRequestHandler;
 
 /**
  * Ramps up the ecommerce services platform test execution server
@@ -45,6 +49,16 @@ public class TSMain extends AbstractTSCommandLineTool {
 	public static final String CMD_OPT_HOSTNAME_SHORT = "h";
 	public static final String CMD_OPT_THREAD_POOL_SIZE = "poolSize";
 	public static final String CMD_OPT_THREAD_POOL_SIZE_SHORT = "ps";
+	public static final String CMD_OPT_PLAN_CACHE_SIZE = "planCacheSize";
+	public static final String CMD_OPT_PLAN_CACHE_SIZE_SHORT = "pcs";
+	public static final String CMD_OPT_PLAN_DATA_DIRECTORY = "planDataDirectory";
+	public static final String CMD_OPT_PLAN_DATA_DIRECTORY_SHORT = "pdd";
+	public static final String CMD_OPT_MAX_CONTENT_LENGTH = "maxContentLength";
+	public static final String CMD_OPT_MAX_CONTENT_LENGTH_SHORT = "mcl";
+	public static final String CMD_OPT_REQUEST_WORKERS = "requestWorkers";
+	public static final String CMD_OPT_REQUEST_WORKERS_SHORT = "rw";
+	public static final String CMD_OPT_REQUEST_QUEUE_CAPACITY = "requestQueueCapacity";
+	public static final String CMD_OPT_REQUEST_QUEUE_CAPACITY_SHORT = "rqc";
 
 	
 	/**
@@ -94,10 +108,66 @@ public class TSMain extends AbstractTSCommandLineTool {
 			threadPoolSize = -1;
 		}
 		
+		int planCacheSize = TSPlanCache.DEFAULT_CAPACITY;
+		try {
+			planCacheSize = extractIntValue(commandLine, CMD_OPT_PLAN_CACHE_SIZE, CMD_OPT_PLAN_CACHE_SIZE_SHORT);
+		} catch(TSClientConfigurationException e) {
+			planCacheSize = TSPlanCache.DEFAULT_CAPACITY;
+		}
+		if(planCacheSize < 1) {
+			printHelp(commandLineOptions, "Failed to parse plan cache size from command-line");
+			return;
+		}
+		
+		int maxContentLength = TSPipelineFactory.DEFAULT_MAX_CONTENT_LENGTH;
+		try {
+			maxContentLength = extractIntValue(commandLine, CMD_OPT_MAX_CONTENT_LENGTH, CMD_OPT_MAX_CONTENT_LENGTH_SHORT);
+		} catch(TSClientConfigurationException e) {
+			maxContentLength = TSPipelineFactory.DEFAULT_MAX_CONTENT_LENGTH;
+		}
+		if(maxContentLength < 1) {
+			printHelp(commandLineOptions, "Failed to parse max. content length from command-line");
+			return;
+		}
+		
+		int requestWorkers = TSHttpRequestHandler.DEFAULT_REQUEST_WORKERS;
+		try {
+			requestWorkers = extractIntValue(commandLine, CMD_OPT_REQUEST_WORKERS, CMD_OPT_REQUEST_WORKERS_SHORT);
+		} catch(TSClientConfigurationException e) {
+			requestWorkers = TSHttpRequestHandler.DEFAULT_REQUEST_WORKERS;
+		}
+		if(requestWorkers < 1) {
+			printHelp(commandLineOptions, "Failed to parse number of request workers from command-line");
+			return;
+		}
+		
+		int requestQueueCapacity = TSHttpRequestHandler.DEFAULT_REQUEST_QUEUE_CAPACITY;
+		try {
+			requestQueueCapacity = extractIntValue(commandLine, CMD_OPT_REQUEST_QUEUE_CAPACITY, CMD_OPT_REQUEST_QUEUE_CAPACITY_SHORT);
+		} catch(TSClientConfigurationException e) {
+			requestQueueCapacity = TSHttpRequestHandler.DEFAULT_REQUEST_QUEUE_CAPACITY;
+		}
+		if(requestQueueCapacity < 1) {
+			printHelp(commandLineOptions, "Failed to parse request queue capacity from command-line");
+			return;
+		}
+		
+		TSPlanRegistry planRegistry = null;
+		try {
+			planRegistry = new TSPlanRegistry(new File(extractStringValue(commandLine, CMD_OPT_PLAN_DATA_DIRECTORY, CMD_OPT_PLAN_DATA_DIRECTORY_SHORT)));
+		} catch(TSClientConfigurationException e) {
+			planRegistry = new TSPlanRegistry();
+		}
+		
 		System.out.println("ptest-server");
 		System.out.println("hostname: " + hostname);
 		System.out.println("port: " + port);
 		System.out.println("server socket thread pool size: " + threadPoolSize);
+		System.out.println("plan cache size: " + planCacheSize);
+		System.out.println("plan data directory: " + planRegistry.getDataDirectory().getAbsolutePath());
+		System.out.println("max. content length: " + maxContentLength);
+		System.out.println("request workers: " + requestWorkers);
+		System.out.println("request queue capacity: " + requestQueueCapacity);
 
 		ChannelFactory channelFactory = null;
 		if(threadPoolSize > 0)
@@ -106,7 +176,7 @@ public class TSMain extends AbstractTSCommandLineTool {
 			channelFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
 		
 		ServerBootstrap serverBootstrap = new ServerBootstrap(channelFactory);
-		serverBootstrap.setPipelineFactory(new TSPipelineFactory(hostname, port));
+		serverBootstrap.setPipelineFactory(new TSPipelineFactory(hostname, port, new TSPlanCache(planCacheSize), planRegistry, maxContentLength, TSHttpRequestHandler.createRequestProcessingExecutor(requestWorkers, requestQueueCapacity)));
 		serverBootstrap.setOption("child.tcpNoDelay", true);
 		serverBootstrap.setOption("child.keepAlive", true);
 		
@@ -124,6 +194,11 @@ public class TSMain extends AbstractTSCommandLineTool {
 		options.addOption(CMD_OPT_HOSTNAME_SHORT, CMD_OPT_HOSTNAME, true, "Host name to be provided to each test plan context as global variable");
 		options.addOption(CMD_OPT_PORT_SHORT, CMD_OPT_PORT, true, "Port to be used for setting up communication");
 		options.addOption(CMD_OPT_THREAD_POOL_SIZE_SHORT, CMD_OPT_THREAD_POOL_SIZE, true, "Size used for setting up the server socket thread pool (optional)");
+		options.addOption(CMD_OPT_PLAN_CACHE_SIZE_SHORT, CMD_OPT_PLAN_CACHE_SIZE, true, "Number of parsed test plans kept for repeated executions (optional, default: " + TSPlanCache.DEFAULT_CAPACITY + ")");
+		options.addOption(CMD_OPT_PLAN_DATA_DIRECTORY_SHORT, CMD_OPT_PLAN_DATA_DIRECTORY, true, "Directory used for extracting the data files of uploaded test plan bundles (optional)");
+		options.addOption(CMD_OPT_MAX_CONTENT_LENGTH_SHORT, CMD_OPT_MAX_CONTENT_LENGTH, true, "Max. size of a request body in bytes, eg. an uploaded test plan bundle (optional, default: " + TSPipelineFactory.DEFAULT_MAX_CONTENT_LENGTH + ")");
+		options.addOption(CMD_OPT_REQUEST_WORKERS_SHORT, CMD_OPT_REQUEST_WORKERS, true, "Number of threads building test plans and submitting executions off the i/o threads (optional, default: number of processors)");
+		options.addOption(CMD_OPT_REQUEST_QUEUE_CAPACITY_SHORT, CMD_OPT_REQUEST_QUEUE_CAPACITY, true, "Number of requests waiting for a request worker before further requests are rejected (optional, default: " + TSHttpRequestHandler.DEFAULT_REQUEST_QUEUE_CAPACITY + ")");
 		return options;
 	}
 	
@@ -19,6 +19,8 @@
 
 package com.mnxfst.testing.server;
 
+import java.util.concurrent.ExecutorService;
+
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.Channels;
@@ -27,6 +29,8 @@ import org.jboss.netty.handler.codec.http.HttpContentCompressor;
 import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
 import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
 
+import com.mnxfst.testing.plan.TSPlanCache;
+import com.mnxfst.testing.plan.TSPlanRegistry;
 import com.mnxfst.testing.server.handler.TSHttpRequestHandler;
 
 /**
@@ -36,12 +40,39 @@ import com.mnxfst.testing.server.handler.TSHttpRequestHandler;
  */
 public class TSPipelineFactory implements ChannelPipelineFactory {
 
+	/** default max. size of a request body - in bytes */
+	public static final int DEFAULT_MAX_CONTENT_LENGTH = 1048576;
+
 	private String hostname = null;
 	private int port = 0;
+	/** parsed test plans shared by all request handlers */
+	private TSPlanCache testPlanCache = null;
+	/** uploaded test plans shared by all request handlers */
+	private TSPlanRegistry testPlanRegistry = null;
+	/** max. size of a request body, eg. an uploaded test plan bundle */
+	private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+	/** pool shared by all request handlers for processing requests off the i/o threads */
+	private ExecutorService requestProcessingExecutor = null;
 	
 	public TSPipelineFactory(String hostname, int port) {
+		this(hostname, port, new TSPlanCache());
+	}
+	
+	public TSPipelineFactory(String hostname, int port, TSPlanCache testPlanCache) {
+		this(hostname, port, testPlanCache, new TSPlanRegistry(), DEFAULT_MAX_CONTENT_LENGTH);
+	}
+	
+	public TSPipelineFactory(String hostname, int port, TSPlanCache testPlanCache, TSPlanRegistry testPlanRegistry, int maxContentLength) {
+		this(hostname, port, testPlanCache, testPlanRegistry, maxContentLength, TSHttpRequestHandler.createRequestProcessingExecutor(TSHttpRequestHandler.DEFAULT_REQUEST_WORKERS, TSHttpRequestHandler.DEFAULT_REQUEST_QUEUE_CAPACITY));
+	}
+	
+	public TSPipelineFactory(String hostname, int port, TSPlanCache testPlanCache, TSPlanRegistry testPlanRegistry, int maxContentLength, ExecutorService requestProcessingExecutor) {
 		this.hostname = hostname;
 		this.port = port;
+		this.testPlanCache = testPlanCache;
+		this.testPlanRegistry = testPlanRegistry;
+		this.maxContentLength = maxContentLength;
+		this.requestProcessingExecutor = requestProcessingExecutor;
 	}
 	
 	/**
@@ -52,10 +83,10 @@ public class TSPipelineFactory implements ChannelPipelineFactory {
 		ChannelPipeline channelPipeline = Channels.pipeline();
 		
 		channelPipeline.addLast("decoder", new HttpRequestDecoder());
-		channelPipeline.addLast("aggregator", new HttpChunkAggregator(1048576));
+		channelPipeline.addLast("aggregator", new HttpChunkAggregator(maxContentLength));
 		channelPipeline.addLast("encoder", new HttpResponseEncoder());
 		channelPipeline.addLast("deflater", new HttpContentCompressor());
-		channelPipeline.addLast("handler", new TSHttpRequestHandler(hostname, port));
+		channelPipeline.addLast("handler", new TSHttpRequestHandler(hostname, port, testPlanCache, testPlanRegistry, requestProcessingExecutor));
 		
 		return channelPipeline;
 		
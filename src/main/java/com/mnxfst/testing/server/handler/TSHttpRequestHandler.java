@@ -19,19 +19,26 @@
 
 package com.mnxfst.testing.server.handler;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.xml.parsers.DocumentBuilderFactory;
-
+import org.apache.commons.lang.StringEscapeUtils;
 import org.apache.log4j.Logger;
 import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.ChannelFuture;
@@ -50,16 +57,25 @@ import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.jboss.netty.handler.codec.http.QueryStringDecoder;
 import org.jboss.netty.util.CharsetUtil;
 import org.jboss.netty.util.internal.ConcurrentHashMap;
-import org.w3c.dom.Document;
 
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
 import com.mnxfst.testing.plan.TSPlan;
-import com.mnxfst.testing.plan.TSPlanBuilder;
+import com.mnxfst.testing.plan.TSPlanCache;
 import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
+import com.mnxfst.testing.plan.TSPlanRegistry;
 import com.mnxfst.testing.plan.exec.TSPlanExecEnvironment;
+import com.mnxfst.testing.plan.exec.TSPlanExecutorBackend;
+import com.mnxfst.testing.plan.exec.TSPlanLoadProfile;
 import com.mnxfst.testing.plan.exec.TSPlanRecurrenceType;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSPlanStageStatistics;
 
 /**
- * Provides a handler for incoming HTTP requests
+ * Provides a handler for incoming HTTP requests. A handler instance is created for each channel, see {@link com.mnxfst.testing.server.TSPipelineFactory}.
+ * Requests of a channel are processed one after another, thus pipelined requests are answered in the order they were received
  * @author mnxfst
  * @since 16.12.2011
  */
@@ -67,22 +83,41 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 
 	private static final Logger logger = Logger.getLogger(TSHttpRequestHandler.class);
 	
-	private static ConcurrentMap<String, TSPlanExecEnvironmentResult> testPlanExecutionResultCache = new ConcurrentHashMap<String, TSPlanExecEnvironmentResult>();
+	/** default number of threads processing requests which require plan building or job submission */
+	public static final int DEFAULT_REQUEST_WORKERS = Runtime.getRuntime().availableProcessors();
+	/** default number of requests waiting for a worker before further requests are rejected */
+	public static final int DEFAULT_REQUEST_QUEUE_CAPACITY = 64;
+	
+	/** result messages of finished executions - encoded once when the execution has been finished, thus collecting them is cheap */
+	private static ConcurrentMap<String, String> testPlanExecutionResultCache = new ConcurrentHashMap<String, String>();
 	private static ExecutorService testPlanExecutorService = Executors.newCachedThreadPool();
+	private static TSPlanCache defaultTestPlanCache = new TSPlanCache();
+	private static TSPlanRegistry defaultTestPlanRegistry = new TSPlanRegistry();
+	private static ExecutorService defaultRequestProcessingExecutor = createRequestProcessingExecutor(DEFAULT_REQUEST_WORKERS, DEFAULT_REQUEST_QUEUE_CAPACITY);
 	
 	private static final String REQUEST_PARAM_EXECUTE_TESTPLAN = "execute";
 	private static final String REQUEST_PARAM_COLLECT_EXECUTION_RESULTS = "collect";
+	private static final String REQUEST_PARAM_REGISTER_TESTPLAN = "registerPlan";
+	private static final String REQUEST_PARAM_UNREGISTER_TESTPLAN = "unregisterPlan";
 	private static final String REQUEST_PARAM_THREADS = "threads";
 	private static final String REQUEST_PARAM_RECURRENCES = "recurrences";
 	private static final String REQUEST_PARAM_RECURRENCE_TYPE = "recurrencetype";
 	private static final String REQUEST_PARAM_TESTPLAN = "testplan";
 	private static final String REQUEST_PARAM_TESTPLAN_RESULT_ID = "resultIdentifier";
+	private static final String REQUEST_PARAM_TESTPLAN_ID = "planIdentifier";
+	private static final String REQUEST_PARAM_EXECUTOR_BACKEND = "executorBackend";
+	private static final String REQUEST_PARAM_LOAD_PROFILE = "loadProfile";
+	private static final String REQUEST_PARAM_WARM_UP_ITERATIONS = "warmUpIterations";
+	private static final String REQUEST_PARAM_WARM_UP_DURATION = "warmUpDuration";
+	private static final String REQUEST_PARAM_BLOCKING_THREADS = "blockingThreads";
 	
 	
 	private static final int RESPONSE_CODE_EXECUTION_STARTED = 1;
 	private static final int RESPONSE_CODE_EXECUTION_RESULTS_CONTAINED = 2;
 	private static final int RESPONSE_CODE_EXECUTION_RESULTS_PENDING = 3;
 	private static final int RESPONSE_CODE_ERROR = 4;	
+	private static final int RESPONSE_CODE_PLAN_REGISTERED = 5;
+	private static final int RESPONSE_CODE_PLAN_UNREGISTERED = 6;
 	private static final int ERROR_CODE_INVALID_OPTION_CODE = 1;
 	private static final int ERROR_CODE_THREADS_MISSING_OR_INVALID = 2; 
 	private static final int ERROR_CODE_RECURRENCES_MISSING_OR_INVALID = 3; 
@@ -90,36 +125,166 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 	private static final int ERROR_CODE_TESTPLAN_MISSING = 5; 
 	private static final int ERROR_CODE_TESTPLAN_PROCESSING_ERROR = 6;
 	private static final int ERROR_CODE_RESULT_ID_MISSING = 7;
+	private static final int ERROR_CODE_EXECUTOR_BACKEND_INVALID = 8;
+	private static final int ERROR_CODE_LOAD_PROFILE_INVALID = 9;
+	private static final int ERROR_CODE_WARM_UP_INVALID = 10;
+	private static final int ERROR_CODE_TESTPLAN_ID_MISSING_OR_UNKNOWN = 11;
+	private static final int ERROR_CODE_SERVER_BUSY = 12;
+	private static final int ERROR_CODE_BLOCKING_THREADS_INVALID = 13;
 	
 	private static final String SERVER_SIDE_CONST_VAR_HOSTNAME = "ptestServerHostname";
 	private static final String SERVER_SIDE_CONST_VAR_PORT = "ptestServerPort";
+	private static final String SERVER_SIDE_CONST_VAR_PLAN_DATA_DIRECTORY = "ptestPlanDataDirectory";
 	
 	private String hostname = null;
 	private int port = 0;
+	/** parsed test plans, referenced by the hash of their content */
+	private TSPlanCache testPlanCache = null;
+	/** plans uploaded once and executed by referencing their identifier */
+	private TSPlanRegistry testPlanRegistry = null;
+	/** bounded pool processing requests which must not block the i/o threads, eg. plan uploads or execution requests */
+	private ExecutorService requestProcessingExecutor = null;
+	/** requests of the channel waiting for a worker - guards processingRequests as well */
+	private final Queue<Runnable> pendingRequests = new LinkedList<Runnable>();
+	/** set while a worker processes the pending requests of the channel */
+	private boolean processingRequests = false;
+	/** processes the pending requests of the channel one after another until none is left */
+	private final Runnable pendingRequestsProcessor = new Runnable() {
+		public void run() {
+			while(true) {
+				Runnable request = null;
+				synchronized(pendingRequests) {
+					request = pendingRequests.poll();
+					if(request == null) {
+						processingRequests = false;
+						return;
+					}
+				}
+				request.run();
+			}
+		}
+	};
 	
 	public TSHttpRequestHandler(String hostname, int port) {
+		this(hostname, port, defaultTestPlanCache, defaultTestPlanRegistry);
+	}
+	
+	public TSHttpRequestHandler(String hostname, int port, TSPlanCache testPlanCache) {
+		this(hostname, port, testPlanCache, defaultTestPlanRegistry);
+	}
+	
+	public TSHttpRequestHandler(String hostname, int port, TSPlanCache testPlanCache, TSPlanRegistry testPlanRegistry) {
+		this(hostname, port, testPlanCache, testPlanRegistry, defaultRequestProcessingExecutor);
+	}
+	
+	public TSHttpRequestHandler(String hostname, int port, TSPlanCache testPlanCache, TSPlanRegistry testPlanRegistry, ExecutorService requestProcessingExecutor) {
 		this.hostname = hostname;
 		this.port = port;
-
+		this.testPlanCache = testPlanCache;
+		this.testPlanRegistry = testPlanRegistry;
+		this.requestProcessingExecutor = requestProcessingExecutor;
+	}
+	
+	/**
+	 * Creates a pool for processing requests off the i/o threads. The pool uses the given number of daemon threads and accepts up to
+	 * queueCapacity waiting requests - further requests are rejected
+	 * @param workers
+	 * @param queueCapacity
+	 * @return
+	 */
+	public static ExecutorService createRequestProcessingExecutor(int workers, int queueCapacity) {
+		return new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ptest-request-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 	
 	/**
 	 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
 	 */
-	public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+	public void messageReceived(ChannelHandlerContext ctx, final MessageEvent event) throws Exception {
 
 		// extract http request from incoming message, get keep alive attribute as it will be transferred to response and decode query string 		
-		HttpRequest httpRequest = (HttpRequest)event.getMessage();
+		final HttpRequest httpRequest = (HttpRequest)event.getMessage();
 		
-		boolean keepAlive = HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(httpRequest.getHeader(HttpHeaders.Names.CONNECTION));		
+		final boolean keepAlive = HttpHeaders.Values.KEEP_ALIVE.equalsIgnoreCase(httpRequest.getHeader(HttpHeaders.Names.CONNECTION));		
 		QueryStringDecoder decoder = new QueryStringDecoder(httpRequest.getUri());
 
 		// fetch query parameters
-		Map<String, List<String>> queryParams = decoder.getParameters();
+		final Map<String, List<String>> queryParams = decoder.getParameters();
+		
+		// anything else may require decoding large request bodies, building plans, initializing activities (eg. dns lookups) or 
+		// shutting them down and removing data files - the response is written by the worker once done
+		Runnable request = new Runnable() {
+			public void run() {
+				try {
+					processRequest(httpRequest, queryParams, keepAlive, event);
+				} catch(Exception e) {
+					logger.error("Failed to process incoming request. Error: " + e.getMessage(), e);
+					List<Integer> codes = new ArrayList<Integer>();
+					codes.add(ERROR_CODE_TESTPLAN_PROCESSING_ERROR);
+					sendResponse(generateErrorMessage(codes, e.getMessage()), keepAlive, event);
+				}
+			}
+		};
+		
+		// responses must be written in request order, thus requests following a pending one wait for the worker processing it. Upstream 
+		// events of a channel are delivered one after another, thus no other request of the channel is added before the worker is submitted
+		// result messages are encoded when the execution finishes, thus collecting them is answered on the i/o thread to keep its latency low
+		boolean collect = queryParams.containsKey(REQUEST_PARAM_COLLECT_EXECUTION_RESULTS);
+		synchronized(pendingRequests) {
+			boolean submit = !processingRequests;
+			if(processingRequests || !collect) {
+				pendingRequests.add(request);
+				processingRequests = true;
+			}
+			if(!submit)
+				return;
+		}
+		if(collect) {
+			collectTestplanResults(queryParams, keepAlive, event);
+			return;
+		}
+		
+		try {
+			requestProcessingExecutor.execute(pendingRequestsProcessor);
+		} catch(RejectedExecutionException e) {
+			synchronized(pendingRequests) {
+				pendingRequests.clear();
+				processingRequests = false;
+			}
+			logger.error("Failed to process incoming request. Error: all request workers are busy");
+			List<Integer> codes = new ArrayList<Integer>();
+			codes.add(ERROR_CODE_SERVER_BUSY);
+			sendResponse(generateErrorMessage(codes, "All request workers are busy"), keepAlive, event);
+		}
+	}
+	
+	/**
+	 * Processes the given request and sends the response to the calling client. The method is executed by the request processing 
+	 * pool as it may decode large request bodies, build test plans and submit test plan executions
+	 * @param httpRequest
+	 * @param queryParams parameters contained in the request uri
+	 * @param keepAlive
+	 * @param event
+	 */
+	private void processRequest(HttpRequest httpRequest, Map<String, List<String>> queryParams, boolean keepAlive, MessageEvent event) {
+		
+		// plan uploads carry the raw plan configuration or bundle as request body
+		if(queryParams.containsKey(REQUEST_PARAM_REGISTER_TESTPLAN)) {
+			byte[] content = new byte[httpRequest.getContent().readableBytes()];
+			httpRequest.getContent().getBytes(httpRequest.getContent().readerIndex(), content);
+			registerTestplan(content, keepAlive, event);
+			return;
+		}
 		
 		// handle post request
 		if(httpRequest.getMethod() == HttpMethod.POST) {
-			decoder = new QueryStringDecoder("?" + httpRequest.getContent().toString(CharsetUtil.UTF_8));
+			QueryStringDecoder decoder = new QueryStringDecoder("?" + httpRequest.getContent().toString(CharsetUtil.UTF_8));
 			queryParams.putAll(decoder.getParameters());
 		}
 				
@@ -127,6 +292,8 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 			executeTestplan(queryParams, keepAlive, event);
 		} else if(queryParams.containsKey(REQUEST_PARAM_COLLECT_EXECUTION_RESULTS)) {
 			collectTestplanResults(queryParams, keepAlive, event);
+		} else if(queryParams.containsKey(REQUEST_PARAM_UNREGISTER_TESTPLAN)) {
+			unregisterTestplan(queryParams, keepAlive, event);
 		} else {
 			List<Integer> codes = new ArrayList<Integer>();
 			codes.add(ERROR_CODE_INVALID_OPTION_CODE);
@@ -171,12 +338,79 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 			recurrencesTypeValid = false;
 		}		
 		
-		boolean testPlanValid = true;
-		List<String> values = queryParams.get(REQUEST_PARAM_TESTPLAN);
-		String testPlan = (values != null && values.size() > 0 ? values.get(0): null);
-		if(testPlan == null || testPlan.isEmpty()) {
+		// the executor backend is optional and defaults to platform threads
+		boolean executorBackendValid = true;
+		TSPlanExecutorBackend executorBackend = TSPlanExecutorBackend.PLATFORM_THREADS;
+		if(queryParams.containsKey(REQUEST_PARAM_EXECUTOR_BACKEND)) {
+			executorBackend = parseSingleExecutorBackend(queryParams.get(REQUEST_PARAM_EXECUTOR_BACKEND));
+			if(executorBackend == null || executorBackend == TSPlanExecutorBackend.UNKNOWN) {
+				errors = errors + 1;
+				executorBackendValid = false;
+			}
+		}
+		
+		// the load profile is optional and overrides the profile declared by the test plan
+		boolean loadProfileValid = true;
+		TSPlanLoadProfile loadProfile = null;
+		if(queryParams.containsKey(REQUEST_PARAM_LOAD_PROFILE)) {
+			loadProfile = parseSingleLoadProfile(queryParams.get(REQUEST_PARAM_LOAD_PROFILE));
+			if(loadProfile == null) {
+				errors = errors + 1;
+				loadProfileValid = false;
+			}
+		}
+		
+		// the warm-up settings are optional and override the ones declared by the test plan
+		boolean warmUpValid = true;
+		Integer warmUpIterations = null;
+		if(queryParams.containsKey(REQUEST_PARAM_WARM_UP_ITERATIONS)) {
+			warmUpIterations = parseSingleIntValue(queryParams.get(REQUEST_PARAM_WARM_UP_ITERATIONS));
+			if(warmUpIterations == null || warmUpIterations.intValue() < 0)
+				warmUpValid = false;
+		}
+		Integer warmUpDuration = null;
+		if(queryParams.containsKey(REQUEST_PARAM_WARM_UP_DURATION)) {
+			warmUpDuration = parseSingleIntValue(queryParams.get(REQUEST_PARAM_WARM_UP_DURATION));
+			if(warmUpDuration == null || warmUpDuration.intValue() < 0)
+				warmUpValid = false;
+		}
+		if(!warmUpValid)
 			errors = errors + 1;
-			testPlanValid = false;
+		
+		// the max. number of threads running blocking work on the event loop backend is optional
+		boolean blockingThreadsValid = true;
+		int blockingThreads = TSPlanExecEnvironment.DEFAULT_MAX_BLOCKING_THREADS;
+		if(queryParams.containsKey(REQUEST_PARAM_BLOCKING_THREADS)) {
+			Integer value = parseSingleIntValue(queryParams.get(REQUEST_PARAM_BLOCKING_THREADS));
+			if(value == null || value.intValue() < 1) {
+				errors = errors + 1;
+				blockingThreadsValid = false;
+			} else {
+				blockingThreads = value.intValue();
+			}
+		}
+		
+		// the test plan is either referenced by the identifier received on upload or contained in the request
+		boolean testPlanValid = true;
+		boolean testPlanIdValid = true;
+		TSPlan registeredPlan = null;
+		File planDataDirectory = null;
+		String testPlan = null;
+		if(queryParams.containsKey(REQUEST_PARAM_TESTPLAN_ID)) {
+			String testPlanId = parseSingleStringValue(queryParams.get(REQUEST_PARAM_TESTPLAN_ID));
+			registeredPlan = (testPlanId != null ? testPlanRegistry.getPlan(testPlanId) : null);
+			if(registeredPlan == null) {
+				errors = errors + 1;
+				testPlanIdValid = false;
+			} else {
+				planDataDirectory = testPlanRegistry.getPlanDataDirectory(testPlanId);
+			}
+		} else {
+			testPlan = parseSingleStringValue(queryParams.get(REQUEST_PARAM_TESTPLAN));
+			if(testPlan == null) {
+				errors = errors + 1;
+				testPlanValid = false;
+			}
 		}
 		
 		Map<String, Serializable> testPlanVars = new HashMap<String, Serializable>();
@@ -199,6 +433,8 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 		}
 		testPlanVars.put(SERVER_SIDE_CONST_VAR_HOSTNAME, hostname);
 		testPlanVars.put(SERVER_SIDE_CONST_VAR_PORT, Integer.valueOf(port));
+		if(planDataDirectory != null)
+			testPlanVars.put(SERVER_SIDE_CONST_VAR_PLAN_DATA_DIRECTORY, planDataDirectory.getAbsolutePath());
 		
 		if(errors > 0) {
 
@@ -216,20 +452,56 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 			if(!testPlanValid) {
 				codes.add(ERROR_CODE_TESTPLAN_MISSING);
 			}
+			if(!testPlanIdValid) {
+				codes.add(ERROR_CODE_TESTPLAN_ID_MISSING_OR_UNKNOWN);
+			}
+			if(!executorBackendValid) {
+				codes.add(ERROR_CODE_EXECUTOR_BACKEND_INVALID);
+			}
+			if(!loadProfileValid) {
+				codes.add(ERROR_CODE_LOAD_PROFILE_INVALID);
+			}
+			if(!warmUpValid) {
+				codes.add(ERROR_CODE_WARM_UP_INVALID);
+			}
+			if(!blockingThreadsValid) {
+				codes.add(ERROR_CODE_BLOCKING_THREADS_INVALID);
+			}
 			
 			sendResponse(generateErrorMessage(codes, ""), keepAlive, event);
 			return false;
 		} else {
 						
+			// the shared plan keeps its activities until the execution has been finished
+			TSPlan sharedPlan = null;
 			try {
-				Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(testPlan.getBytes("UTF-8")));
-				TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
-				TSPlanExecEnvironment env = new TSPlanExecEnvironment("ptest-server", plan, numOfRecurrences, recurrenceType, numOfThreads, testPlanVars);
+				sharedPlan = acquirePlan(registeredPlan, testPlan);
+				if(sharedPlan == null) {
+					List<Integer> codes = new ArrayList<Integer>();
+					codes.add(ERROR_CODE_TESTPLAN_ID_MISSING_OR_UNKNOWN);
+					sendResponse(generateErrorMessage(codes, ""), keepAlive, event);
+					return false;
+				}
+				
+				// cached plans are shared by all executions, thus overriding settings requires a copy
+				TSPlan plan = sharedPlan;
+				if(warmUpIterations != null || warmUpDuration != null) {
+					plan = plan.copy();
+					if(warmUpIterations != null)
+						plan.setWarmUpIterations(warmUpIterations.intValue());
+					if(warmUpDuration != null)
+						plan.setWarmUpDuration(warmUpDuration.longValue());
+				}
+				TSPlanExecEnvironment env = new TSPlanExecEnvironment("ptest-server", plan, numOfRecurrences, recurrenceType, numOfThreads, testPlanVars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, executorBackend, loadProfile, blockingThreads);
 				UUID resultIdentifier = UUID.fromString(new com.eaio.uuid.UUID().toString());
-				testPlanExecutorService.execute(new TSPlanExecutionJob(resultIdentifier.toString(), env));
+				testPlanExecutorService.execute(new TSPlanExecutionJob(resultIdentifier.toString(), env, sharedPlan));
+				sharedPlan = null;
 				sendResponse(generateExecutionStartedMessage(resultIdentifier.toString()), keepAlive, event);
 				return true;
 			} catch(Exception e) {
+				// the execution job has not been started, thus it cannot release the plan
+				if(sharedPlan != null)
+					sharedPlan.releaseExecution();
 				logger.error("Failed to parse testplan. Error: " + e.getMessage(), e);
 				List<Integer> codes = new ArrayList<Integer>();
 				codes.add(ERROR_CODE_TESTPLAN_PROCESSING_ERROR);
@@ -239,6 +511,76 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 		}
 	}
 	
+	/**
+	 * Returns the shared plan {@link TSPlan#acquireExecution() acquired} for an execution. A registered plan which has been removed
+	 * meanwhile leads to null, a cached plan which has been evicted meanwhile is parsed again 
+	 * @param registeredPlan
+	 * @param testPlan
+	 * @return
+	 * @throws TSPlanConfigurationFormatException
+	 * @throws TSPlanInstantiationException
+	 * @throws TSPlanActivityExecutionException
+	 */
+	protected TSPlan acquirePlan(TSPlan registeredPlan, String testPlan) throws TSPlanConfigurationFormatException, TSPlanInstantiationException, TSPlanActivityExecutionException {
+		if(registeredPlan != null)
+			return (registeredPlan.acquireExecution() ? registeredPlan : null);
+		while(true) {
+			TSPlan plan = testPlanCache.getPlan(testPlan);
+			if(plan.acquireExecution())
+				return plan;
+		}
+	}
+	
+	/**
+	 * Registers the test plan or bundle contained in the provided content and sends the plan identifier to the calling client
+	 * @param content
+	 * @param keepAlive
+	 * @param event
+	 * @return
+	 */
+	private boolean registerTestplan(byte[] content, boolean keepAlive, MessageEvent event) {
+		
+		if(content == null || content.length < 1) {
+			List<Integer> codes = new ArrayList<Integer>();
+			codes.add(ERROR_CODE_TESTPLAN_MISSING);
+			sendResponse(generateErrorMessage(codes, ""), keepAlive, event);
+			return false;
+		}
+		
+		try {
+			String testPlanId = testPlanRegistry.registerPlan(content);
+			sendResponse(generatePlanRegistrationMessage(RESPONSE_CODE_PLAN_REGISTERED, testPlanId), keepAlive, event);
+			return true;
+		} catch(Exception e) {
+			logger.error("Failed to register testplan. Error: " + e.getMessage(), e);
+			List<Integer> codes = new ArrayList<Integer>();
+			codes.add(ERROR_CODE_TESTPLAN_PROCESSING_ERROR);
+			sendResponse(generateErrorMessage(codes, e.getMessage()), keepAlive, event);
+			return false;
+		}
+	}
+	
+	/**
+	 * Removes the referenced test plan from the registry
+	 * @param queryParams
+	 * @param keepAlive
+	 * @param event
+	 * @return
+	 */
+	private boolean unregisterTestplan(Map<String, List<String>> queryParams, boolean keepAlive, MessageEvent event) {
+		
+		String testPlanId = parseSingleStringValue(queryParams.get(REQUEST_PARAM_TESTPLAN_ID));
+		if(testPlanId == null || testPlanRegistry.removePlan(testPlanId) == null) {
+			List<Integer> codes = new ArrayList<Integer>();
+			codes.add(ERROR_CODE_TESTPLAN_ID_MISSING_OR_UNKNOWN);
+			sendResponse(generateErrorMessage(codes, ""), keepAlive, event);
+			return false;
+		}
+		
+		sendResponse(generatePlanRegistrationMessage(RESPONSE_CODE_PLAN_UNREGISTERED, testPlanId), keepAlive, event);
+		return true;
+	}
+	
 	private boolean collectTestplanResults(Map<String, List<String>> queryParams, boolean keepAlive, MessageEvent event) {
 		
 		List<String> values = queryParams.get(REQUEST_PARAM_TESTPLAN_RESULT_ID);
@@ -250,10 +592,28 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 			return false;
 		}
 		
-		sendResponse(generateExecutionResultMessage(testPlanExecutionResultCache.get(testResultIdentifier), testResultIdentifier), keepAlive, event);
+		String resultMessage = testPlanExecutionResultCache.get(testResultIdentifier);
+		if(resultMessage == null)
+			resultMessage = generateExecutionResultMessage(null, testResultIdentifier);
+		sendResponse(resultMessage, keepAlive, event);
 		return true;
 	}
 	
+	/**
+	 * Returns the first value contained in the provided list. If the result is null, the list did not contain any non-empty value
+	 * @param values
+	 * @return
+	 */
+	private String parseSingleStringValue(List<String> values) {
+		if(values == null || values.isEmpty())
+			return null;
+		
+		String tmp = values.get(0);
+		if(tmp == null || tmp.isEmpty())
+			return null;
+		return tmp;
+	}
+	
 	/**
 	 * Parses out a single int value from the provided list of values. If the result is null, the list did not contain any value
 	 * or the value could not be parsed into a integer object   
@@ -308,6 +668,49 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 		return null;
 	}
 	
+	/**
+	 * Parses out a single executor backend from the provided list of values. If the result is null, the list did not contain any value
+	 * or the value could not be parsed into a backend   
+	 * @param values
+	 * @return
+	 */
+	private TSPlanExecutorBackend parseSingleExecutorBackend(List<String> values) {
+		if(values == null || values.isEmpty())
+			return null;
+		
+		String tmp = values.get(0);
+		if(tmp == null || tmp.isEmpty())
+			return null;
+		
+		if(tmp.equalsIgnoreCase("PLATFORM") || tmp.equalsIgnoreCase("PLATFORM_THREADS"))
+			return TSPlanExecutorBackend.PLATFORM_THREADS;
+		else if(tmp.equalsIgnoreCase("VIRTUAL") || tmp.equalsIgnoreCase("VIRTUAL_THREADS"))
+			return TSPlanExecutorBackend.VIRTUAL_THREADS;
+		else if(tmp.equalsIgnoreCase("EVENTLOOP") || tmp.equalsIgnoreCase("EVENT_LOOP"))
+			return TSPlanExecutorBackend.EVENT_LOOP;
+		
+		return null;
+	}
+	
+	/**
+	 * Parses out a single load profile from the provided list of values. If the result is null, the list did not contain any value
+	 * or the value could not be parsed into a load profile   
+	 * @param values
+	 * @return
+	 */
+	private TSPlanLoadProfile parseSingleLoadProfile(List<String> values) {
+		if(values == null || values.isEmpty())
+			return null;
+		
+		try {
+			return TSPlanLoadProfile.parse(values.get(0));
+		} catch(TSPlanConfigurationFormatException e) {
+			logger.error("Failed to parse load profile: " + e.getMessage());
+		}
+		
+		return null;
+	}
+	
 	/**
 	 * Generates an error message and inserts the provided information
 	 * @param errorCode
@@ -341,14 +744,35 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 		return buf.toString();
 	}
 	
-	private String generateExecutionResultMessage(TSPlanExecEnvironmentResult tsResult, String resultIdentifier) {
+	/**
+	 * Generates a response message containing the identifier of a registered or removed test plan
+	 * @param responseCode
+	 * @param testPlanId
+	 * @return
+	 */
+	private String generatePlanRegistrationMessage(int responseCode, String testPlanId) {
+		StringBuffer buf = new StringBuffer("<testExecutionResponse>");
+		buf.append("<responseCode>").append(responseCode).append("</responseCode>");
+		buf.append("<planIdentifier>").append(testPlanId).append("</planIdentifier>");
+		buf.append("</testExecutionResponse>");
+		return buf.toString();
+	}
+	
+	/**
+	 * Generates the result message of the given execution - a pending message if the result is null. Encoding the histograms is 
+	 * expensive, thus the message of a finished execution is generated once by {@link #addResponse(String, TSPlanExecEnvironmentResult)}
+	 * @param tsResult
+	 * @param resultIdentifier
+	 * @return
+	 */
+	protected static String generateExecutionResultMessage(TSPlanExecEnvironmentResult tsResult, String resultIdentifier) {
 		StringBuffer buf = new StringBuffer("<testExecutionResponse>");
 		buf.append("<resultIdentifier>").append(resultIdentifier).append("</resultIdentifier>");
 		if(tsResult == null)
 			buf.append("<responseCode>").append(RESPONSE_CODE_EXECUTION_RESULTS_PENDING).append("</responseCode>");
 		else {
 			buf.append("<responseCode>").append(RESPONSE_CODE_EXECUTION_RESULTS_CONTAINED).append("</responseCode>");
-			buf.append("<testplan>").append(tsResult.getTestPlanName()).append("</testplan>");
+			buf.append("<testplan>").append(StringEscapeUtils.escapeXml(tsResult.getTestPlanName())).append("</testplan>");
 			buf.append("<executionEnvironment>").append(tsResult.getExecutionEnvironmentId()).append("</executionEnvironment>");
 			buf.append("<start>").append(tsResult.getStartMillis()).append("</start>");
 			buf.append("<end>").append(tsResult.getEndMillis()).append("</end>");
@@ -358,6 +782,108 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 			buf.append("<singleAverageDuration>").append(tsResult.getSingleRunExecutionDurationAverage()).append("</singleAverageDuration>");
 			buf.append("<averageDurationMedian>").append(tsResult.getAverageDurationMedian()).append("</averageDurationMedian>");
 			buf.append("<errors>").append(tsResult.getErrors()).append("</errors>");
+			
+			// execution statistics for each activity
+			if(tsResult.getActivityStatistics() != null && !tsResult.getActivityStatistics().isEmpty()) {
+				buf.append("<activities>");
+				for(TSPlanActivityStatistics statistics : tsResult.getActivityStatistics().values()) {
+					TSLatencyHistogram activityHistogram = statistics.getDurationHistogram();
+					buf.append("<activity name=\"").append(StringEscapeUtils.escapeXml(statistics.getActivityName())).append("\">");
+					buf.append("<executions>").append(statistics.getExecutions()).append("</executions>");
+					buf.append("<errors>").append(statistics.getErrors()).append("</errors>");
+					buf.append("<durationP50>").append(activityHistogram.getValueAtPercentile(50.0)).append("</durationP50>");
+					buf.append("<durationP90>").append(activityHistogram.getValueAtPercentile(90.0)).append("</durationP90>");
+					buf.append("<durationP99>").append(activityHistogram.getValueAtPercentile(99.0)).append("</durationP99>");
+					buf.append("<durationP999>").append(activityHistogram.getValueAtPercentile(99.9)).append("</durationP999>");
+					buf.append("<durationMax>").append(activityHistogram.getMaxValue()).append("</durationMax>");
+					buf.append("<durationHistogram>").append(activityHistogram.encodeToCompressedString()).append("</durationHistogram>");
+					
+					// execution phases and counters recorded by the activity itself, eg. connect and time-to-first-byte of http requests
+					if(!statistics.getPhaseHistograms().isEmpty()) {
+						buf.append("<phases>");
+						for(Map.Entry<String, TSLatencyHistogram> phase : statistics.getPhaseHistograms().entrySet()) {
+							TSLatencyHistogram phaseHistogram = phase.getValue();
+							buf.append("<phase name=\"").append(StringEscapeUtils.escapeXml(phase.getKey())).append("\">");
+							buf.append("<count>").append(phaseHistogram.getTotalCount()).append("</count>");
+							buf.append("<durationP50>").append(phaseHistogram.getValueAtPercentile(50.0)).append("</durationP50>");
+							buf.append("<durationP90>").append(phaseHistogram.getValueAtPercentile(90.0)).append("</durationP90>");
+							buf.append("<durationP99>").append(phaseHistogram.getValueAtPercentile(99.0)).append("</durationP99>");
+							buf.append("<durationMax>").append(phaseHistogram.getMaxValue()).append("</durationMax>");
+							buf.append("<durationHistogram>").append(phaseHistogram.encodeToCompressedString()).append("</durationHistogram>");
+							buf.append("</phase>");
+						}
+						buf.append("</phases>");
+					}
+					Map<String, Long> counters = statistics.getCounters();
+					if(!counters.isEmpty()) {
+						buf.append("<counters>");
+						for(Map.Entry<String, Long> counter : counters.entrySet())
+							buf.append("<counter name=\"").append(StringEscapeUtils.escapeXml(counter.getKey())).append("\">").append(counter.getValue()).append("</counter>");
+						buf.append("</counters>");
+					}
+					buf.append("</activity>");
+				}
+				buf.append("</activities>");
+			}
+			
+			// single run statistics for each load profile stage
+			if(tsResult.getStageStatistics() != null && !tsResult.getStageStatistics().isEmpty()) {
+				buf.append("<stages>");
+				for(TSPlanStageStatistics statistics : tsResult.getStageStatistics().values()) {
+					TSLatencyHistogram stageHistogram = statistics.getDurationHistogram();
+					buf.append("<stage name=\"").append(StringEscapeUtils.escapeXml(statistics.getStageName())).append("\">");
+					buf.append("<runs>").append(statistics.getRuns()).append("</runs>");
+					buf.append("<errors>").append(statistics.getErrors()).append("</errors>");
+					buf.append("<durationP50>").append(stageHistogram.getValueAtPercentile(50.0)).append("</durationP50>");
+					buf.append("<durationP90>").append(stageHistogram.getValueAtPercentile(90.0)).append("</durationP90>");
+					buf.append("<durationP99>").append(stageHistogram.getValueAtPercentile(99.0)).append("</durationP99>");
+					buf.append("<durationP999>").append(stageHistogram.getValueAtPercentile(99.9)).append("</durationP999>");
+					buf.append("<durationMax>").append(stageHistogram.getMaxValue()).append("</durationMax>");
+					buf.append("<durationHistogram>").append(stageHistogram.encodeToCompressedString()).append("</durationHistogram>");
+					buf.append("</stage>");
+				}
+				buf.append("</stages>");
+			}
+			
+			if(tsResult.getArrivalRate() > 0) {
+				buf.append("<arrivalRate>").append(tsResult.getArrivalRate()).append("</arrivalRate>");
+				buf.append("<scheduledIterations>").append(tsResult.getScheduledIterations()).append("</scheduledIterations>");
+				buf.append("<delayedIterations>").append(tsResult.getDelayedIterations()).append("</delayedIterations>");
+				buf.append("<droppedIterations>").append(tsResult.getDroppedIterations()).append("</droppedIterations>");
+			}
+			
+			// the percentiles are provided for convenience, the histogram allows the client to merge the distributions of all hosts
+			TSLatencyHistogram histogram = tsResult.getSingleRunDurationHistogram();
+			if(histogram != null) {
+				buf.append("<singleRunDurationP50>").append(histogram.getValueAtPercentile(50.0)).append("</singleRunDurationP50>");
+				buf.append("<singleRunDurationP90>").append(histogram.getValueAtPercentile(90.0)).append("</singleRunDurationP90>");
+				buf.append("<singleRunDurationP99>").append(histogram.getValueAtPercentile(99.0)).append("</singleRunDurationP99>");
+				buf.append("<singleRunDurationP999>").append(histogram.getValueAtPercentile(99.9)).append("</singleRunDurationP999>");
+				buf.append("<singleRunDurationP9999>").append(histogram.getValueAtPercentile(99.99)).append("</singleRunDurationP9999>");
+				buf.append("<singleRunDurationHistogram>").append(histogram.encodeToCompressedString()).append("</singleRunDurationHistogram>");
+			}
+			
+			// runs executed during the warm-up - not contained in any other figure
+			TSLatencyHistogram warmUpHistogram = tsResult.getWarmUpDurationHistogram();
+			if(warmUpHistogram != null) {
+				buf.append("<warmUpRuns>").append(warmUpHistogram.getTotalCount()).append("</warmUpRuns>");
+				buf.append("<warmUpErrors>").append(tsResult.getWarmUpErrors()).append("</warmUpErrors>");
+				buf.append("<warmUpDurationP50>").append(warmUpHistogram.getValueAtPercentile(50.0)).append("</warmUpDurationP50>");
+				buf.append("<warmUpDurationP99>").append(warmUpHistogram.getValueAtPercentile(99.0)).append("</warmUpDurationP99>");
+				buf.append("<warmUpDurationMax>").append(warmUpHistogram.getMaxValue()).append("</warmUpDurationMax>");
+				buf.append("<warmUpDurationHistogram>").append(warmUpHistogram.encodeToCompressedString()).append("</warmUpDurationHistogram>");
+			}
+			
+			// durations measured from the intended start of each run - corrected for coordinated omission
+			TSLatencyHistogram correctedHistogram = tsResult.getCorrectedSingleRunDurationHistogram();
+			if(correctedHistogram != null) {
+				buf.append("<correctedSingleRunDurationP50>").append(correctedHistogram.getValueAtPercentile(50.0)).append("</correctedSingleRunDurationP50>");
+				buf.append("<correctedSingleRunDurationP90>").append(correctedHistogram.getValueAtPercentile(90.0)).append("</correctedSingleRunDurationP90>");
+				buf.append("<correctedSingleRunDurationP99>").append(correctedHistogram.getValueAtPercentile(99.0)).append("</correctedSingleRunDurationP99>");
+				buf.append("<correctedSingleRunDurationP999>").append(correctedHistogram.getValueAtPercentile(99.9)).append("</correctedSingleRunDurationP999>");
+				buf.append("<correctedSingleRunDurationP9999>").append(correctedHistogram.getValueAtPercentile(99.99)).append("</correctedSingleRunDurationP9999>");
+				buf.append("<correctedSingleRunDurationHistogram>").append(correctedHistogram.encodeToCompressedString()).append("</correctedSingleRunDurationHistogram>");
+			}
 		}
 		buf.append("</testExecutionResponse>");
 		return buf.toString();
@@ -384,8 +910,14 @@ public class TSHttpRequestHandler extends SimpleChannelUpstreamHandler {
 			future.addListener(ChannelFutureListener.CLOSE);
 	}
 	
+	/**
+	 * Stores the result of a finished execution. The result message is generated right away by the calling execution job, thus 
+	 * collecting it does not encode any histogram on the i/o threads
+	 * @param identifier
+	 * @param result
+	 */
 	protected static void addResponse(String identifier, TSPlanExecEnvironmentResult result) {
-		testPlanExecutionResultCache.put(identifier, result);
+		testPlanExecutionResultCache.put(identifier, generateExecutionResultMessage(result, identifier));
 	}
 	
 	
@@ -2,6 +2,7 @@ package com.mnxfst.testing.server.handler;
 
 import org.apache.log4j.Logger;
 
+import com.mnxfst.testing.plan.TSPlan;
 import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
 import com.mnxfst.testing.plan.exec.TSPlanExecEnvironment;
 
@@ -11,10 +12,17 @@ public class TSPlanExecutionJob implements Runnable {
 	
 	private String identifier = null;
 	private TSPlanExecEnvironment env = null;
+	/** shared plan acquired for the execution - released when the execution has been finished */
+	private TSPlan acquiredPlan = null;
 	
 	public TSPlanExecutionJob(String identifier, TSPlanExecEnvironment env) {
+		this(identifier, env, null);
+	}
+	
+	public TSPlanExecutionJob(String identifier, TSPlanExecEnvironment env, TSPlan acquiredPlan) {
 		this.env = env;
 		this.identifier = identifier;
+		this.acquiredPlan = acquiredPlan;
 	}
 	
 	public void run() {
@@ -27,7 +35,10 @@ public class TSPlanExecutionJob implements Runnable {
 			res.setErrors(1);
 			TSHttpRequestHandler.addResponse(identifier, res);
 			logger.error(e.getMessage(), e);
-		}		
+		} finally {
+			if(acquiredPlan != null)
+				acquiredPlan.releaseExecution();
+		}
 	}
 
 }
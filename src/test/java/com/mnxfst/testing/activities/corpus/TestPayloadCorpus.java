@@ -0,0 +1,153 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+/**
+ * Test case for {@link PayloadCorpus}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestPayloadCorpus {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testOpen() throws IOException {
+		
+		try {
+			PayloadCorpus.open(null);
+			Assert.fail("No file provided");
+		} catch(IOException e) {
+			//
+		}
+		
+		File file = File.createTempFile("corpus", ".bin");
+		try {
+			try {
+				PayloadCorpus.open(file);
+				Assert.fail("Empty corpus");
+			} catch(IOException e) {
+				//
+			}
+			
+			PayloadCorpusWriter writer = new PayloadCorpusWriter(file);
+			writer.append("first", "<a>1</a>".getBytes(UTF8));
+			writer.append("gr\u00fc\u00dfe".getBytes(UTF8));
+			writer.append("third", new byte[0]);
+			writer.append("first", "<a>duplicate</a>".getBytes(UTF8));
+			writer.close();
+			Assert.assertEquals("The index must contain 4 offsets and 3 keys", 12 + 4 * 8 + 3 * 8, new File(file.getPath() + PayloadCorpus.INDEX_FILE_SUFFIX).length());
+			
+			PayloadCorpus corpus = PayloadCorpus.open(file);
+			Assert.assertSame("The corpus must be shared", corpus, PayloadCorpus.open(file));
+			Assert.assertTrue("The corpus must be shared", corpus.isShared());
+			Assert.assertEquals("The corpus must contain 4 records", 4, corpus.size());
+			Assert.assertEquals("The first key must be found", 0, corpus.indexOf("first"));
+			Assert.assertEquals("The key must be found", 2, corpus.indexOf("third"));
+			Assert.assertEquals("The key must not be found", -1, corpus.indexOf("unknown"));
+			Assert.assertEquals("The key must not be found", -1, corpus.indexOf(""));
+			Assert.assertEquals("The key must be read", "third", corpus.getKey(2));
+			Assert.assertNull("The record must not have a key", corpus.getKey(1));
+			Assert.assertEquals("The payload length must be 7", 7, corpus.getPayloadLength(1));
+			Assert.assertEquals("The payload length must be 0", 0, corpus.getPayloadLength(2));
+			
+			ByteBuffer payload = corpus.getPayload(0);
+			Assert.assertTrue("The payload must not be copied to the heap", payload.isDirect());
+			byte[] content = new byte[payload.remaining()];
+			payload.get(content);
+			Assert.assertEquals("The payload must be read", "<a>1</a>", new String(content, UTF8));
+			Assert.assertEquals("The payload must be decoded", "gr\u00fc\u00dfe", corpus.getRecord(1, UTF8).toString());
+			Assert.assertEquals("The payload must be decoded", "<a>duplicate</a>", corpus.getRecord(3, UTF8).toString());
+			
+			// the cursor wraps around
+			int first = corpus.nextIndex();
+			for(int i = 1; i < 8; i++)
+				Assert.assertEquals("The cursor must advance", (first + i) % 4, corpus.nextIndex());
+			for(int i = 0; i < 100; i++) {
+				int index = corpus.randomIndex();
+				Assert.assertTrue("The index must be valid", index >= 0 && index < 4);
+			}
+			
+			// the corpus is shared until all holders released it
+			corpus.release();
+			Assert.assertTrue("The corpus must be shared", corpus.isShared());
+			corpus.release();
+			Assert.assertFalse("The corpus must be released", corpus.isShared());
+			corpus.release();
+			PayloadCorpus reopened = PayloadCorpus.open(file);
+			Assert.assertNotSame("The corpus must be opened again", corpus, reopened);
+			reopened.release();
+		} finally {
+			FileUtils.deleteQuietly(file);
+			FileUtils.deleteQuietly(new File(file.getPath() + PayloadCorpus.INDEX_FILE_SUFFIX));
+		}
+	}
+	
+	@Test
+	public void testBuildIndex() throws IOException {
+		
+		File file = File.createTempFile("corpus", ".bin");
+		File indexFile = new File(file.getPath() + PayloadCorpus.INDEX_FILE_SUFFIX);
+		try {
+			PayloadCorpusWriter writer = new PayloadCorpusWriter(file);
+			for(int i = 0; i < 3000; i++)
+				writer.append("key-" + i, ("payload-" + i).getBytes(UTF8));
+			writer.close();
+			Assert.assertTrue("The index must be deleted", indexFile.delete());
+			
+			PayloadCorpus corpus = new PayloadCorpus(file);
+			Assert.assertEquals("The corpus must contain 3000 records", 3000, corpus.size());
+			Assert.assertEquals("The key must be found", 2999, corpus.indexOf("key-2999"));
+			Assert.assertEquals("The payload must be decoded", "payload-1234", corpus.getRecord(1234, UTF8).toString());
+			Assert.assertEquals("The index must be rebuilt", 12 + 3000 * 8 + 3000 * 8, indexFile.length());
+			for(int i = 0; i < 3000; i += 7)
+				Assert.assertEquals("The key must be found", i, corpus.indexOf("key-" + i));
+			Assert.assertEquals("The key must not be found", -1, corpus.indexOf("key-3000"));
+			
+			// outdated index files are replaced
+			FileUtils.writeByteArrayToFile(indexFile, new byte[] {0, 0, 0, 0, 0, 0, 0, 0});
+			Assert.assertEquals("The key must be found", 17, new PayloadCorpus(file).indexOf("key-17"));
+			Assert.assertEquals("The index must be rebuilt", 12 + 3000 * 8 + 3000 * 8, indexFile.length());
+			
+			// truncated corpus
+			FileUtils.writeByteArrayToFile(file, new byte[] {0, 0, 0, 0, 0, 0, 0, 9, 1});
+			Assert.assertTrue("The index must be deleted", indexFile.delete());
+			try {
+				new PayloadCorpus(file);
+				Assert.fail("Truncated corpus");
+			} catch(IOException e) {
+				//
+			}
+		} finally {
+			FileUtils.deleteQuietly(file);
+			FileUtils.deleteQuietly(indexFile);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.corpus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextByteTemplate;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Test case for {@link PayloadCorpusActivity}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestPayloadCorpusActivity {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testInitialize() throws TSPlanActivityExecutionException {
+		
+		PayloadCorpusActivity activity = new PayloadCorpusActivity();
+		try {
+			activity.initialize(null);
+			Assert.fail("Invalid config options");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		TSPlanConfigOption cfgOpt = new TSPlanConfigOption();
+		try {
+			activity.initialize(cfgOpt);
+			Assert.fail("Missing corpus file");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfgOpt.addOption("corpusFile", "corpus.bin");
+		cfgOpt.addOption("selection", "unknown");
+		try {
+			activity.initialize(cfgOpt);
+			Assert.fail("Invalid selection");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfgOpt.addOption("selection", "key");
+		try {
+			activity.initialize(cfgOpt);
+			Assert.fail("Missing key");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfgOpt.addOption("selection", "Random");
+		try {
+			activity.initialize(cfgOpt);
+			Assert.fail("Missing export variable");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		Map<String, String> exportVariables = new HashMap<String, String>();
+		exportVariables.put("payload", "payload");
+		activity.setContextExportVariables(exportVariables);
+		cfgOpt.addOption("corpusEncoding", "no-such-charset");
+		try {
+			activity.initialize(cfgOpt);
+			Assert.fail("Invalid encoding");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfgOpt.addOption("corpusEncoding", "ISO-8859-1");
+		activity.initialize(cfgOpt);
+		Assert.assertEquals("The selection must be random", PayloadCorpusActivity.SELECTION_RANDOM, activity.getSelection());
+		Assert.assertEquals("The charset must be ISO-8859-1", Charset.forName("ISO-8859-1"), activity.getCorpusCharset());
+		
+		// relative files are opened on first execution
+		try {
+			activity.execute(new TSPlanExecutionContext());
+			Assert.fail("Corpus file does not exist");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+	}
+	
+	@Test
+	public void testExecute() throws IOException, TSPlanActivityExecutionException, TSVariableEvaluationFailedException {
+		
+		File directory = File.createTempFile("corpus", "");
+		Assert.assertTrue("The file must be deleted", directory.delete());
+		Assert.assertTrue("The directory must be created", directory.mkdir());
+		try {
+			PayloadCorpusWriter writer = new PayloadCorpusWriter(new File(directory, "corpus.bin"));
+			writer.append("c1", "<order>1</order>".getBytes(UTF8));
+			writer.append("c2", "<order>2</order>".getBytes(UTF8));
+			writer.close();
+			
+			Map<String, String> exportVariables = new HashMap<String, String>();
+			exportVariables.put("payload", "body");
+			exportVariables.put("payloadKey", "bodyKey");
+			
+			TSPlanConfigOption cfgOpt = new TSPlanConfigOption();
+			cfgOpt.addOption("corpusFile", "corpus.bin");
+			cfgOpt.addOption("selection", "key");
+			cfgOpt.addOption("key", "c${run.customer}");
+			PayloadCorpusActivity activity = new PayloadCorpusActivity();
+			activity.setContextExportVariables(exportVariables);
+			activity.initialize(cfgOpt);
+			
+			TSPlanExecutionContext ctx = new TSPlanExecutionContext();
+			ctx.addContextValue("ptestPlanDataDirectory", directory.getAbsolutePath(), ExecutionContextValueType.GLOBAL);
+			ctx.addContextValue("customer", "2", ExecutionContextValueType.RUN);
+			activity.execute(ctx);
+			Assert.assertEquals("The key must be exported", "c2", ctx.getContextValue("bodyKey", ExecutionContextValueType.RUN));
+			PayloadCorpusRecord record = (PayloadCorpusRecord)ctx.getContextValue("body", ExecutionContextValueType.RUN);
+			Assert.assertEquals("The record must be exported", 1, record.getIndex());
+			Assert.assertFalse("The payload must not be decoded", record.isDecoded());
+			
+			// templates consisting of the payload only return a view on the mapped file
+			TSPlanContextByteTemplate template = new TSPlanContextByteTemplate("${run.body}", UTF8);
+			ChannelBuffer view = template.renderBuffer(ctx);
+			Assert.assertEquals("The view must contain the payload", "<order>2</order>", view.toString(UTF8));
+			Assert.assertFalse("The payload must not be decoded", record.isDecoded());
+			template = new TSPlanContextByteTemplate("<list>${run.body}</list>", UTF8);
+			Assert.assertEquals("The payload must be spliced", "<list><order>2</order></list>", template.renderBuffer(ctx).toString(UTF8));
+			Assert.assertEquals("The payload must be decoded", "<order>2</order>", record.toString());
+			
+			ctx.addContextValue("customer", "3", ExecutionContextValueType.RUN);
+			try {
+				activity.execute(ctx);
+				Assert.fail("Unknown key");
+			} catch(TSPlanActivityExecutionException e) {
+				//
+			}
+			
+			cfgOpt.addOption("selection", "sequential");
+			activity.initialize(cfgOpt);
+			activity.execute(ctx);
+			int first = ((PayloadCorpusRecord)ctx.getContextValue("body", ExecutionContextValueType.RUN)).getIndex();
+			activity.execute(ctx);
+			Assert.assertEquals("The next record must be drawn", (first + 1) % 2, ((PayloadCorpusRecord)ctx.getContextValue("body", ExecutionContextValueType.RUN)).getIndex());
+			
+			// the corpus is released along with the activity
+			PayloadCorpus corpus = activity.getCorpus(ctx);
+			Assert.assertTrue("The corpus must be shared", corpus.isShared());
+			activity.shutdown();
+			Assert.assertFalse("The corpus must be released", corpus.isShared());
+			activity.execute(ctx);
+			Assert.assertNotSame("The corpus must be opened again", corpus, activity.getCorpus(ctx));
+			activity.shutdown();
+		} finally {
+			FileUtils.deleteQuietly(directory);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+/**
+ * Test case for {@link ChannelBufferEntity}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestChannelBufferEntity {
+
+	@Test
+	public void testWriteTo() throws Exception {
+		
+		// the content spans multiple chunks of the copy array
+		byte[] content = new byte[20000];
+		for(int i = 0; i < content.length; i++)
+			content[i] = (byte)i;
+		
+		ChannelBuffer heapBuffer = ChannelBuffers.dynamicBuffer(1024);
+		heapBuffer.writeBytes(new byte[10]);
+		heapBuffer.writeBytes(content);
+		heapBuffer.skipBytes(10);
+		assertWritten(content, heapBuffer);
+		
+		ChannelBuffer directBuffer = ChannelBuffers.directBuffer(content.length + 10);
+		directBuffer.writeBytes(new byte[10]);
+		directBuffer.writeBytes(content);
+		directBuffer.skipBytes(10);
+		assertWritten(content, directBuffer);
+		
+		assertWritten(new byte[0], ChannelBuffers.EMPTY_BUFFER);
+	}
+	
+	/**
+	 * Writes an entity over the given buffer and compares the output with the expected content
+	 * @param expected
+	 * @param buffer
+	 * @throws Exception
+	 */
+	private void assertWritten(byte[] expected, ChannelBuffer buffer) throws Exception {
+		ChannelBufferEntity entity = new ChannelBufferEntity(buffer, "text/plain");
+		Assert.assertEquals("The content length must match", expected.length, entity.getContentLength());
+		
+		// the entity is repeatable, thus writing it twice must produce the same output 
+		for(int i = 0; i < 2; i++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entity.writeTo(out);
+			Assert.assertTrue("The written content must match", Arrays.equals(expected, out.toByteArray()));
+		}
+		Assert.assertEquals("The buffer must not be consumed", expected.length, buffer.readableBytes());
+	}
+}
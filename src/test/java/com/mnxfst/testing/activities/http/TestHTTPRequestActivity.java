@@ -22,11 +22,15 @@ package com.mnxfst.testing.activities.http;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 
 import junit.framework.Assert;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
@@ -34,6 +38,7 @@ import org.apache.http.HttpHost;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
+import org.apache.http.entity.BasicHttpEntity;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.entity.StringEntity;
@@ -55,10 +60,15 @@ import org.apache.http.protocol.RequestExpectContinue;
 import org.apache.http.protocol.RequestTargetHost;
 import org.apache.http.protocol.RequestUserAgent;
 import org.apache.http.util.EntityUtils;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
 
 /**
  * Test case for {@link HTTPRequestActivity} 
@@ -171,6 +181,312 @@ public class TestHTTPRequestActivity {
 		
 	}
 	
+	@Test
+	public void testTransportInit() throws TSPlanActivityExecutionException {
+		
+		TSPlanConfigOption cfg = new TSPlanConfigOption();
+		cfg.addOption("scheme", "http");
+		cfg.addOption("host", "localhost");
+		cfg.addOption("port", "8080");
+		cfg.addOption("method", "GET");
+		
+		HTTPRequestActivity activity = new HTTPRequestActivity();
+		cfg.addOption("transport", "carrier-pigeon");
+		try {
+			activity.initialize(cfg);
+			Assert.fail("Invalid transport");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfg.addOption("transport", "blocking");
+		activity.initialize(cfg);
+		Assert.assertNull("The blocking transport must not create the netty client", activity.nettyClient);
+		
+		cfg.addOption("transport", "netty");
+		cfg.addOption("maxResponseLength", "dd");
+		try {
+			activity.initialize(cfg);
+			Assert.fail("Config option 'maxResponseLength' holds an invalid value");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfg.addOption("maxResponseLength", "1024");
+		activity.initialize(cfg);
+		Assert.assertNotNull("The netty client must be created", activity.nettyClient);
+		activity.shutdown();
+		
+		activity = new HTTPRequestActivity();
+		cfg.addOption("scheme", "https");
+		try {
+			activity.initialize(cfg);
+			Assert.fail("The netty transport supports http only");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+	}
+	
+	@Test
+	public void testResponseBodyModeInit() throws TSPlanActivityExecutionException {
+		
+		TSPlanConfigOption cfg = new TSPlanConfigOption();
+		cfg.addOption("scheme", "http");
+		cfg.addOption("host", "localhost");
+		cfg.addOption("port", "8080");
+		
+		HTTPRequestActivity activity = new HTTPRequestActivity();
+		activity.initialize(cfg);
+		Assert.assertEquals("The body must be discarded if the content is not exported", HTTPRequestActivity.RESPONSE_BODY_MODE_DISCARD, activity.responseBodyMode);
+
+		Map<String, String> exportVars = new HashMap<String, String>();
+		exportVars.put("responseContent", "exportReponseContent");
+		activity.setContextExportVariables(exportVars);
+		activity.initialize(cfg);
+		Assert.assertEquals("The body must be decoded if the content is exported", HTTPRequestActivity.RESPONSE_BODY_MODE_DECODE, activity.responseBodyMode);
+		
+		cfg.addOption("responseBodyMode", "skim");
+		try {
+			activity.initialize(cfg);
+			Assert.fail("Invalid response body mode");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		
+		cfg.addOption("responseBodyMode", "capture");
+		cfg.addOption("responseCaptureLimit", "dd");
+		try {
+			activity.initialize(cfg);
+			Assert.fail("Config option 'responseCaptureLimit' holds an invalid value");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		cfg.addOption("responseCaptureLimit", "128");
+		activity.initialize(cfg);
+		Assert.assertEquals("The capture limit must be 128", 128, activity.responseCaptureLimit);
+		
+		cfg.addOption("responseBodyMode", "CHECKSUM");
+		cfg.addOption("responseChecksumAlgorithm", "NO-SUCH-DIGEST");
+		try {
+			activity.initialize(cfg);
+			Assert.fail("Invalid checksum algorithm");
+		} catch(TSPlanActivityExecutionException e) {
+			//
+		}
+		cfg.addOption("responseChecksumAlgorithm", "SHA-1");
+		activity.initialize(cfg);
+		Assert.assertEquals("The mode must be checksum", HTTPRequestActivity.RESPONSE_BODY_MODE_CHECKSUM, activity.responseBodyMode);
+	}
+	
+	@Test
+	public void testExportResponseEntity() throws Exception {
+		
+		byte[] body = "0123456789".getBytes("ISO-8859-1");
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		
+		// capture truncates the body while its whole length is counted, the charset is taken from the content type
+		HTTPRequestActivity activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_CAPTURE, slotTable);
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseEntity(ctx, createEntity(body, "text/plain; charset=ISO-8859-1"));
+		Assert.assertEquals("The captured content must be truncated", "0123", ctx.getContextValue(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+		
+		activity.responseCaptureLimit = 64;
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseEntity(ctx, createEntity(body, "text/plain; charset=ISO-8859-1"));
+		Assert.assertEquals("The body must be decoded using the charset of the content type", "0123456789", ctx.getContextValue(activity.contextExportResponseContent));
+		
+		// checksum
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_CHECKSUM, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseEntity(ctx, createEntity(body, null));
+		Assert.assertEquals("The checksum must be computed over the whole body", md5(body), ctx.getContextValue(activity.contextExportResponseChecksum));
+		Assert.assertFalse("The content must not be exported", ctx.hasContextVariable(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+		
+		// discard drains the body, thus the connection may be reused
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_DISCARD, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		ByteArrayInputStream in = new ByteArrayInputStream(body);
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(in);
+		entity.setContentLength(-1);
+		activity.exportResponseEntity(ctx, entity);
+		Assert.assertEquals("The body must be drained", 0, in.available());
+		Assert.assertFalse("The content must not be exported", ctx.hasContextVariable(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+		
+		// lazy
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_LAZY, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseEntity(ctx, createEntity(body, "text/plain; charset=ISO-8859-1"));
+		HTTPResponseBody responseBody = (HTTPResponseBody)ctx.getContextValue(activity.contextExportResponseContent);
+		Assert.assertFalse("The body must not be decoded before being accessed", responseBody.isDecoded());
+		Assert.assertEquals("The body must be decoded on access", "0123456789", responseBody.toString());
+		
+		// missing entity
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseEntity(ctx, null);
+		Assert.assertEquals("The length must be 0", Long.valueOf(0), ctx.getContextValue(activity.contextExportResponseLength));
+	}
+	
+	@Test
+	public void testExportResponseContent() throws Exception {
+		
+		byte[] body = "0123456789".getBytes("UTF-8");
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		Charset utf8 = Charset.forName("UTF-8");
+		
+		// capture
+		HTTPRequestActivity activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_CAPTURE, slotTable);
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseContent(ctx, ChannelBuffers.wrappedBuffer(body), utf8);
+		Assert.assertEquals("The captured content must be truncated", "0123", ctx.getContextValue(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+		
+		// checksum
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_CHECKSUM, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseContent(ctx, ChannelBuffers.wrappedBuffer(body), utf8);
+		Assert.assertEquals("The checksum must be computed over the whole body", md5(body), ctx.getContextValue(activity.contextExportResponseChecksum));
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseContent(ctx, ChannelBuffers.EMPTY_BUFFER, utf8);
+		Assert.assertEquals("The checksum of an empty body must be exported", md5(new byte[0]), ctx.getContextValue(activity.contextExportResponseChecksum));
+		
+		// discard
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_DISCARD, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseContent(ctx, ChannelBuffers.wrappedBuffer(body), utf8);
+		Assert.assertFalse("The content must not be exported", ctx.hasContextVariable(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+		
+		// lazy references the backing array of the buffer, thus a change of the array becomes visible on first access
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_LAZY, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		byte[] lazyBody = body.clone();
+		activity.exportResponseContent(ctx, ChannelBuffers.wrappedBuffer(lazyBody), utf8);
+		lazyBody[0] = 'x';
+		HTTPResponseBody responseBody = (HTTPResponseBody)ctx.getContextValue(activity.contextExportResponseContent);
+		Assert.assertEquals("The body must not be copied", "x123456789", responseBody.toString());
+		
+		// decode
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_DECODE, slotTable);
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseContent(ctx, ChannelBuffers.wrappedBuffer(body), utf8);
+		Assert.assertEquals("The body must be decoded", "0123456789", ctx.getContextValue(activity.contextExportResponseContent));
+	}
+	
+	@Test
+	public void testExportResponseStream() throws Exception {
+		
+		byte[] body = "0123456789".getBytes("UTF-8");
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		
+		HTTPRequestActivity activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_DECODE, slotTable);
+		Assert.assertNull("The body must be aggregated in decode mode", activity.createNettyContentConsumer(null));
+		activity.responseBodyMode = HTTPRequestActivity.RESPONSE_BODY_MODE_LAZY;
+		Assert.assertNull("The body must be aggregated in lazy mode", activity.createNettyContentConsumer(null));
+		
+		// the body arrives in parts, the capture limit spans both of them
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_CAPTURE, slotTable);
+		activity.responseCaptureLimit = 6;
+		HTTPResponseBodyStream stream = (HTTPResponseBodyStream)activity.createNettyContentConsumer(null);
+		stream.contentReceived(ChannelBuffers.wrappedBuffer(body, 0, 4));
+		stream.contentReceived(ChannelBuffers.wrappedBuffer(body, 4, 6));
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseStream(ctx, stream, Charset.forName("UTF-8"));
+		Assert.assertEquals("The captured content must be truncated", "012345", ctx.getContextValue(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+		
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_CHECKSUM, slotTable);
+		stream = (HTTPResponseBodyStream)activity.createNettyContentConsumer(null);
+		stream.contentReceived(ChannelBuffers.wrappedBuffer(body, 0, 3));
+		stream.contentReceived(ChannelBuffers.wrappedBuffer(body, 3, 7));
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseStream(ctx, stream, Charset.forName("UTF-8"));
+		Assert.assertEquals("The checksum must be computed over all parts", md5(body), ctx.getContextValue(activity.contextExportResponseChecksum));
+		Assert.assertFalse("The content must not be exported", ctx.hasContextVariable(activity.contextExportResponseContent));
+		
+		activity = createExportActivity(HTTPRequestActivity.RESPONSE_BODY_MODE_DISCARD, slotTable);
+		stream = (HTTPResponseBodyStream)activity.createNettyContentConsumer(null);
+		stream.contentReceived(ChannelBuffers.wrappedBuffer(body));
+		ctx = new TSPlanExecutionContext(slotTable);
+		activity.exportResponseStream(ctx, stream, Charset.forName("UTF-8"));
+		Assert.assertFalse("The content must not be exported", ctx.hasContextVariable(activity.contextExportResponseContent));
+		Assert.assertEquals("The whole body must be counted", Long.valueOf(body.length), ctx.getContextValue(activity.contextExportResponseLength));
+	}
+	
+	@Test
+	public void testReleasePooledRequestBuffer() {
+		
+		HTTPRequestActivity activity = new HTTPRequestActivity();
+		ChannelBuffer buffer = activity.getPooledRequestBuffer();
+		buffer.writeBytes(new byte[1024]);
+		activity.releasePooledRequestBuffer();
+		Assert.assertSame("The buffer must be kept", buffer, activity.getPooledRequestBuffer());
+		
+		buffer = activity.getPooledRequestBuffer();
+		buffer.writeBytes(new byte[AbstractHTTPRequestActivity.MAX_POOLED_REQUEST_BUFFER_CAPACITY + 1]);
+		activity.releasePooledRequestBuffer();
+		ChannelBuffer freshBuffer = activity.getPooledRequestBuffer();
+		Assert.assertNotSame("The grown buffer must be dropped", buffer, freshBuffer);
+		Assert.assertTrue("The fresh buffer must not exceed the max. capacity", freshBuffer.capacity() <= AbstractHTTPRequestActivity.MAX_POOLED_REQUEST_BUFFER_CAPACITY);
+		Assert.assertFalse("The fresh buffer must be empty", freshBuffer.readable());
+	}
+	
+	@Test
+	public void testGetResponseCharset() {
+		HTTPRequestActivity activity = new HTTPRequestActivity();
+		activity.contentCharset = Charset.forName("UTF-8");
+		Assert.assertEquals("The content charset must be returned", activity.contentCharset, activity.getResponseCharset(null));
+		Assert.assertEquals("The content charset must be returned", activity.contentCharset, activity.getResponseCharset("text/plain"));
+		Assert.assertEquals("The content charset must be returned", activity.contentCharset, activity.getResponseCharset("text/plain; charset=no-such-charset"));
+		Assert.assertEquals("The content charset must be returned", activity.contentCharset, activity.getResponseCharset("text/plain; charset=?"));
+		Assert.assertEquals("The charset must be ISO-8859-1", Charset.forName("ISO-8859-1"), activity.getResponseCharset("text/plain; charset=ISO-8859-1"));
+		Assert.assertEquals("The charset must be ISO-8859-1", Charset.forName("ISO-8859-1"), activity.getResponseCharset("text/html; Charset=\"iso-8859-1\"; format=flowed"));
+	}
+	
+	/**
+	 * Returns an activity running in the given body mode which exports content, checksum and length 
+	 * @param responseBodyMode
+	 * @param slotTable
+	 * @return
+	 */
+	private HTTPRequestActivity createExportActivity(String responseBodyMode, TSPlanContextSlotTable slotTable) {
+		HTTPRequestActivity activity = new HTTPRequestActivity();
+		activity.responseBodyMode = responseBodyMode;
+		activity.responseCaptureLimit = 4;
+		activity.responseChecksumAlgorithm = "MD5";
+		activity.contentCharset = Charset.forName("UTF-8");
+		activity.contextExportResponseContent = slotTable.getVariable("content", ExecutionContextValueType.RUN);
+		activity.contextExportResponseChecksum = slotTable.getVariable("checksum", ExecutionContextValueType.RUN);
+		activity.contextExportResponseLength = slotTable.getVariable("length", ExecutionContextValueType.RUN);
+		return activity;
+	}
+	
+	/**
+	 * Returns an entity streaming the given body
+	 * @param body
+	 * @param contentType
+	 * @return
+	 */
+	private HttpEntity createEntity(byte[] body, String contentType) {
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(new ByteArrayInputStream(body));
+		entity.setContentLength(body.length);
+		entity.setContentType(contentType);
+		return entity;
+	}
+	
+	/**
+	 * Returns the hex encoded md5 checksum of the given bytes
+	 * @param bytes
+	 * @return
+	 * @throws NoSuchAlgorithmException
+	 */
+	private String md5(byte[] bytes) throws NoSuchAlgorithmException {
+		return new String(Hex.encodeHex(MessageDigest.getInstance("MD5").digest(bytes)));
+	}
 	
 	public void testExecuteHTTPRequest() throws HttpException, IOException {
 		
@@ -0,0 +1,87 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+
+/**
+ * Test case for {@link HTTPRequestTimings}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestHTTPRequestTimings {
+
+	@Test
+	public void testGetStatusCounter() {
+		Assert.assertEquals("The counter must be status1xx", HTTPRequestTimings.COUNTER_STATUS_1XX, HTTPRequestTimings.getStatusCounter(100));
+		Assert.assertEquals("The counter must be status2xx", HTTPRequestTimings.COUNTER_STATUS_2XX, HTTPRequestTimings.getStatusCounter(204));
+		Assert.assertEquals("The counter must be status3xx", HTTPRequestTimings.COUNTER_STATUS_3XX, HTTPRequestTimings.getStatusCounter(302));
+		Assert.assertEquals("The counter must be status4xx", HTTPRequestTimings.COUNTER_STATUS_4XX, HTTPRequestTimings.getStatusCounter(404));
+		Assert.assertEquals("The counter must be status5xx", HTTPRequestTimings.COUNTER_STATUS_5XX, HTTPRequestTimings.getStatusCounter(503));
+		Assert.assertEquals("The counter must be statusOther", HTTPRequestTimings.COUNTER_STATUS_OTHER, HTTPRequestTimings.getStatusCounter(999));
+	}
+	
+	@Test
+	public void testRecord() {
+		
+		TSPlanActivityStatistics statistics = new TSPlanActivityStatistics("activity", 2);
+		HTTPRequestTimings timings = new HTTPRequestTimings();
+		timings.record(null);
+		timings.record(statistics);
+		Assert.assertTrue("Unset phases must not be recorded", statistics.getPhaseHistograms().isEmpty());
+		Assert.assertTrue("Unsent requests must not be counted", statistics.getCounters().isEmpty());
+		
+		// request on a new connection
+		timings.addDns(100L);
+		timings.addConnect(1000L);
+		timings.addTls(5000L);
+		timings.addRequestWrite(200L);
+		timings.addTimeToFirstByte(10000L);
+		timings.addTransfer(3000L);
+		timings.setStatusCode(200);
+		timings.record(statistics);
+		
+		// request on a reused connection, the negative duration is treated as 0
+		timings.reset();
+		Assert.assertEquals("The phase must be unset", -1, timings.getConnectNanos());
+		timings.addRequestWrite(-5L);
+		timings.addTimeToFirstByte(10000L);
+		timings.addTimeToFirstByte(2000L);
+		timings.addTransfer(3000L);
+		timings.setStatusCode(503);
+		Assert.assertEquals("The durations must be summed up", 12000L, timings.getTimeToFirstByteNanos());
+		Assert.assertEquals("The negative duration must be treated as 0", 0L, timings.getRequestWriteNanos());
+		timings.record(statistics);
+		
+		Assert.assertEquals("Six phases must be recorded", 6, statistics.getPhaseHistograms().size());
+		Assert.assertEquals("The dns phase must be recorded once", 1, statistics.getPhaseHistogram(HTTPRequestTimings.PHASE_DNS).getTotalCount());
+		Assert.assertEquals("The tls phase must be recorded once", 1, statistics.getPhaseHistogram(HTTPRequestTimings.PHASE_TLS).getTotalCount());
+		Assert.assertEquals("The time-to-first-byte phase must be recorded twice", 2, statistics.getPhaseHistogram(HTTPRequestTimings.PHASE_TIME_TO_FIRST_BYTE).getTotalCount());
+		Assert.assertEquals("One 2xx response must be counted", 1, statistics.getCounter(HTTPRequestTimings.COUNTER_STATUS_2XX));
+		Assert.assertEquals("One 5xx response must be counted", 1, statistics.getCounter(HTTPRequestTimings.COUNTER_STATUS_5XX));
+		Assert.assertEquals("One new connection must be counted", 1, statistics.getCounter(HTTPRequestTimings.COUNTER_NEW_CONNECTION));
+		Assert.assertEquals("One reused connection must be counted", 1, statistics.getCounter(HTTPRequestTimings.COUNTER_REUSED_CONNECTION));
+	}
+	
+}
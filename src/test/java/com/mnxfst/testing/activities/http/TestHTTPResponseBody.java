@@ -0,0 +1,97 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.Charset;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test case for {@link HTTPResponseBody}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestHTTPResponseBody {
+
+	@Test
+	public void testConstructor() {
+		
+		try {
+			new HTTPResponseBody(new byte[4], 2, 3, Charset.forName("UTF-8"));
+			Assert.fail("Range exceeds content");
+		} catch(IndexOutOfBoundsException e) {
+			//
+		}
+		
+		try {
+			new HTTPResponseBody(new byte[4], null);
+			Assert.fail("Charset missing");
+		} catch(IllegalArgumentException e) {
+			//
+		}
+		
+		HTTPResponseBody body = new HTTPResponseBody(null, Charset.forName("UTF-8"));
+		Assert.assertEquals("The body must be empty", 0, body.getByteLength());
+		Assert.assertEquals("The body must be empty", "", body.toString());
+	}
+	
+	@Test
+	public void testLazyDecoding() throws Exception {
+		
+		byte[] content = "xx<r>gr\u00fc\u00dfe</r>xx".getBytes("UTF-8");
+		HTTPResponseBody body = new HTTPResponseBody(content, 2, content.length - 4, Charset.forName("UTF-8"));
+		Assert.assertFalse("The body must not be decoded yet", body.isDecoded());
+		Assert.assertEquals("The byte length must be 14", 14, body.getByteLength());
+		Assert.assertEquals("The bytes must be copied from the range", 14, body.getBytes().length);
+		Assert.assertFalse("The body must not be decoded yet", body.isDecoded());
+		
+		Assert.assertEquals("The decoded value must be equal", "<r>gr\u00fc\u00dfe</r>", body.toString());
+		Assert.assertTrue("The body must be decoded", body.isDecoded());
+		Assert.assertSame("The decoded value must be cached", body.toString(), body.toString());
+		Assert.assertEquals("The char length must be 12", 12, body.length());
+		Assert.assertEquals("The char must be equal", '\u00fc', body.charAt(5));
+		Assert.assertEquals("The sub sequence must be equal", "gr", body.subSequence(3, 5).toString());
+		Assert.assertEquals("The appended value must be equal", "a<r>gr\u00fc\u00dfe</r>", new StringBuilder("a").append(body).toString());
+	}
+	
+	@Test
+	public void testSerialization() throws Exception {
+		
+		HTTPResponseBody body = new HTTPResponseBody("<r/>".getBytes("ISO-8859-1"), Charset.forName("ISO-8859-1"));
+		body.toString();
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(body);
+		oos.close();
+		
+		HTTPResponseBody copy = (HTTPResponseBody)new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+		Assert.assertFalse("The copy must not be decoded yet", copy.isDecoded());
+		Assert.assertEquals("The charset must be equal", "ISO-8859-1", copy.getCharsetName());
+		Assert.assertEquals("The decoded value must be equal", "<r/>", copy.toString());
+	}
+	
+}
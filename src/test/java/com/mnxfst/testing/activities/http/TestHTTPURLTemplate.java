@@ -0,0 +1,76 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.nio.charset.Charset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Test case for {@link HTTPURLTemplate}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestHTTPURLTemplate {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testPath() throws TSVariableEvaluationFailedException {
+		
+		HTTPURLTemplate template = HTTPURLTemplate.forPath("/customers/${run.id}/orders", UTF8);
+		Assert.assertFalse("The template must be a path template", template.isQuery());
+		Assert.assertTrue("The template must contain placeholders", template.hasPlaceholders());
+		template.bind(new TSPlanContextSlotTable());
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext();
+		ctx.addContextValue("id", "a b/\u00e4", ExecutionContextValueType.RUN);
+		Assert.assertEquals("The value must be path encoded", "/customers/a%20b/%C3%A4/orders", template.render(ctx));
+		
+		Assert.assertFalse("The template must not contain placeholders", HTTPURLTemplate.forPath("/static%20path", UTF8).hasPlaceholders());
+		Assert.assertEquals("The literal path must be kept", "/static%20path", HTTPURLTemplate.forPath("/static%20path", UTF8).render(ctx));
+	}
+	
+	@Test
+	public void testQuery() throws TSVariableEvaluationFailedException {
+		
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put("q", "a&b ${run.term}");
+		parameters.put("page size", "10");
+		HTTPURLTemplate template = HTTPURLTemplate.forQuery(parameters, UTF8);
+		Assert.assertTrue("The template must be a query template", template.isQuery());
+		Assert.assertEquals("The literals must be encoded", "q=a%26b+${run.term}&page+size=10", template.getTemplate());
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext();
+		ctx.addContextValue("term", "x=1 & y*", ExecutionContextValueType.RUN);
+		Assert.assertEquals("The value must be form encoded", "q=a%26b+x%3D1+%26+y*&page+size=10", template.render(ctx));
+		
+		Assert.assertEquals("The query must be empty", "", HTTPURLTemplate.forQuery(new LinkedHashMap<String, String>(), UTF8).render(ctx));
+	}
+}
@@ -0,0 +1,397 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.activities.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.HttpVersion;
+import org.jboss.netty.util.CharsetUtil;
+import org.junit.Test;
+
+/**
+ * Test case for {@link NettyHTTPClient} - requests are sent to a local netty server which answers depending on the request uri:
+ * {@link #URI_CLOSE} responds and closes the connection, {@link #URI_HANG} never responds, any other uri is answered with a
+ * keep-alive response
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestNettyHTTPClient {
+
+	private static final String URI_OK = "/ok";
+	private static final String URI_CLOSE = "/close";
+	private static final String URI_HANG = "/hang";
+
+	private static final long AWAIT_MILLIS = 5000;
+
+	@Test
+	public void testKeepAliveReuse() throws Exception {
+
+		TestServer server = new TestServer();
+		NettyHTTPClient client = new NettyHTTPClient("localhost", server.getPort(), 4);
+		try {
+			for(int i = 0; i < 5; i++) {
+				HTTPRequestTimings timings = new HTTPRequestTimings();
+				ResponseRecorder recorder = new ResponseRecorder();
+				client.execute(createRequest(URI_OK), timings, recorder);
+				recorder.await();
+
+				Assert.assertNull("The request must not fail", recorder.cause);
+				Assert.assertEquals("The status code must be 200", 200, recorder.response.getStatus().getCode());
+				Assert.assertEquals("The body must be aggregated", "ok", recorder.response.getContent().toString(CharsetUtil.UTF_8));
+				Assert.assertEquals("The status code must be recorded", 200, timings.getStatusCode());
+				if(i == 0)
+					Assert.assertTrue("The connect duration must be recorded for the first request", timings.getConnectNanos() >= 0);
+				else
+					Assert.assertEquals("The connect duration must not be recorded for a reused connection", -1, timings.getConnectNanos());
+			}
+
+			Assert.assertEquals("A single connection must be opened", 1, server.getConnections());
+			Assert.assertEquals("Five requests must be received", 5, server.getRequests());
+			Assert.assertEquals("A single connection must be open", 1, client.getOpenConnections());
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testQueueingBeyondMaxConnections() throws Exception {
+
+		TestServer server = new TestServer();
+		NettyHTTPClient client = new NettyHTTPClient("localhost", server.getPort(), 2);
+		try {
+			List<ResponseRecorder> recorders = new ArrayList<ResponseRecorder>();
+			for(int i = 0; i < 20; i++) {
+				ResponseRecorder recorder = new ResponseRecorder();
+				recorders.add(recorder);
+				client.execute(createRequest(URI_OK), recorder);
+				Assert.assertTrue("The max. number of connections must not be exceeded", client.getOpenConnections() <= 2);
+			}
+
+			for(ResponseRecorder recorder : recorders) {
+				recorder.await();
+				Assert.assertNull("The request must not fail", recorder.cause);
+				Assert.assertEquals("The status code must be 200", 200, recorder.response.getStatus().getCode());
+			}
+
+			Assert.assertTrue("The max. number of connections must not be exceeded", server.getConnections() <= 2);
+			Assert.assertEquals("All requests must be received", 20, server.getRequests());
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testConnectionClose() throws Exception {
+
+		TestServer server = new TestServer();
+		NettyHTTPClient client = new NettyHTTPClient("localhost", server.getPort(), 1);
+		try {
+			for(int i = 0; i < 3; i++) {
+				ResponseRecorder recorder = new ResponseRecorder();
+				client.execute(createRequest(URI_CLOSE), recorder);
+				recorder.await();
+				Assert.assertNull("The request must not fail", recorder.cause);
+				Assert.assertEquals("The status code must be 200", 200, recorder.response.getStatus().getCode());
+			}
+
+			Assert.assertEquals("Each request must open a new connection", 3, server.getConnections());
+			Assert.assertTrue("All closed connections must be uncounted", awaitOpenConnections(client, 0));
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testConnectRefused() throws Exception {
+
+		// the port is free as soon as the socket has been closed
+		ServerSocket socket = new ServerSocket(0);
+		int port = socket.getLocalPort();
+		socket.close();
+
+		NettyHTTPClient client = new NettyHTTPClient("localhost", port, 2);
+		try {
+			ResponseRecorder first = new ResponseRecorder();
+			ResponseRecorder second = new ResponseRecorder();
+			client.execute(createRequest(URI_OK), first);
+			client.execute(createRequest(URI_OK), second);
+			first.await();
+			second.await();
+
+			Assert.assertNotNull("The request must fail", first.cause);
+			Assert.assertNotNull("The request must fail", second.cause);
+			Assert.assertTrue("All failed connections must be uncounted", awaitOpenConnections(client, 0));
+			Thread.sleep(100);
+			Assert.assertEquals("Failed connections must be uncounted only once", 0, client.getOpenConnections());
+		} finally {
+			client.shutdown();
+		}
+	}
+
+	@Test
+	public void testResponseTimeout() throws Exception {
+
+		TestServer server = new TestServer();
+		NettyHTTPClient client = new NettyHTTPClient("localhost", server.getPort(), 1, NettyHTTPClient.DEFAULT_MAX_RESPONSE_LENGTH, 200);
+		try {
+			// the connection is idle for longer than the timeout before serving the request
+			ResponseRecorder recorder = new ResponseRecorder();
+			client.execute(createRequest(URI_OK), recorder);
+			recorder.await();
+			Assert.assertNull("The request must not fail", recorder.cause);
+			Thread.sleep(400);
+			Assert.assertEquals("The idle connection must not be timed out", 1, client.getOpenConnections());
+
+			recorder = new ResponseRecorder();
+			client.execute(createRequest(URI_HANG), recorder);
+			recorder.await();
+			Assert.assertNull("The request must not receive a response", recorder.response);
+			Assert.assertTrue("The request must time out", recorder.cause instanceof IOException);
+			Assert.assertTrue("The timed out connection must be closed", awaitOpenConnections(client, 0));
+			Assert.assertEquals("The idle connection must be reused for the timed out request", 1, server.getConnections());
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testShutdownWithPendingRequests() throws Exception {
+
+		TestServer server = new TestServer();
+		NettyHTTPClient client = new NettyHTTPClient("localhost", server.getPort(), 1, NettyHTTPClient.DEFAULT_MAX_RESPONSE_LENGTH, 0);
+		try {
+			// the only connection is occupied by a request which never receives a response
+			ResponseRecorder hanging = new ResponseRecorder();
+			client.execute(createRequest(URI_HANG), hanging);
+			Assert.assertTrue("The request must be received", server.awaitRequests(1));
+
+			ResponseRecorder pending = new ResponseRecorder();
+			client.execute(createRequest(URI_OK), pending);
+			client.shutdown();
+			pending.await();
+			Assert.assertNull("The pending request must not receive a response", pending.response);
+			Assert.assertTrue("The pending request must fail", pending.cause instanceof IOException);
+
+			ResponseRecorder rejected = new ResponseRecorder();
+			client.execute(createRequest(URI_OK), rejected);
+			Assert.assertEquals("The request must be rejected immediately", 0, rejected.latch.getCount());
+			Assert.assertTrue("The request must be rejected", rejected.cause instanceof IOException);
+
+			// closing the busy connection fails the request it serves
+			server.stop();
+			hanging.await();
+			Assert.assertNull("The request must not receive a response", hanging.response);
+			Assert.assertNotNull("The request must fail", hanging.cause);
+			Assert.assertTrue("The closed connection must be uncounted", awaitOpenConnections(client, 0));
+			Assert.assertEquals("The pending request must not be sent", 1, server.getRequests());
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+
+	/**
+	 * Creates a get request for the given uri
+	 * @param uri
+	 * @return
+	 */
+	private static HttpRequest createRequest(String uri) {
+		HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, uri);
+		request.setHeader(HttpHeaders.Names.HOST, "localhost");
+		return request;
+	}
+
+	/**
+	 * Waits until the client reports the expected number of open connections
+	 * @param client
+	 * @param expected
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private static boolean awaitOpenConnections(NettyHTTPClient client, int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+		while(client.getOpenConnections() != expected) {
+			if(System.currentTimeMillis() > deadline)
+				return false;
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps the outcome of a single request
+	 */
+	private static class ResponseRecorder implements NettyHTTPResponseHandler {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile HttpResponse response = null;
+		private volatile Throwable cause = null;
+
+		public void completed(HttpResponse response) {
+			this.response = response;
+			latch.countDown();
+		}
+
+		public void failed(Throwable cause) {
+			this.cause = cause;
+			latch.countDown();
+		}
+
+		void await() throws InterruptedException {
+			Assert.assertTrue("The outcome must be reported", latch.await(AWAIT_MILLIS, TimeUnit.MILLISECONDS));
+		}
+	}
+
+	/**
+	 * Local http server listening on a free port
+	 */
+	private static class TestServer extends SimpleChannelUpstreamHandler {
+
+		private final ChannelFactory channelFactory;
+		private final Channel serverChannel;
+		private final Queue<Channel> acceptedChannels = new ConcurrentLinkedQueue<Channel>();
+		private final AtomicInteger connections = new AtomicInteger(0);
+		private final AtomicInteger requests = new AtomicInteger(0);
+
+		TestServer() {
+			this.channelFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), Executors.newCachedThreadPool());
+			ServerBootstrap bootstrap = new ServerBootstrap(channelFactory);
+			bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+				public ChannelPipeline getPipeline() throws Exception {
+					ChannelPipeline pipeline = Channels.pipeline();
+					pipeline.addLast("decoder", new HttpRequestDecoder());
+					pipeline.addLast("encoder", new HttpResponseEncoder());
+					pipeline.addLast("handler", TestServer.this);
+					return pipeline;
+				}
+			});
+			this.serverChannel = bootstrap.bind(new InetSocketAddress("localhost", 0));
+		}
+
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#channelConnected(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.ChannelStateEvent)
+		 */
+		public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent event) throws Exception {
+			acceptedChannels.offer(event.getChannel());
+			connections.incrementAndGet();
+		}
+
+		/**
+		 * @see org.jboss.netty.channel.SimpleChannelUpstreamHandler#messageReceived(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.MessageEvent)
+		 */
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent event) throws Exception {
+			HttpRequest request = (HttpRequest)event.getMessage();
+			requests.incrementAndGet();
+			if(URI_HANG.equals(request.getUri()))
+				return;
+
+			ChannelBuffer content = ChannelBuffers.copiedBuffer("ok", CharsetUtil.UTF_8);
+			HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+			response.setContent(content);
+			HttpHeaders.setContentLength(response, content.readableBytes());
+			if(URI_CLOSE.equals(request.getUri())) {
+				response.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+				event.getChannel().write(response).addListener(ChannelFutureListener.CLOSE);
+			} else {
+				event.getChannel().write(response);
+			}
+		}
+
+		/**
+		 * Waits until the expected number of requests has been received
+		 * @param expected
+		 * @return
+		 * @throws InterruptedException
+		 */
+		boolean awaitRequests(int expected) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + AWAIT_MILLIS;
+			while(requests.get() < expected) {
+				if(System.currentTimeMillis() > deadline)
+					return false;
+				Thread.sleep(10);
+			}
+			return true;
+		}
+
+		/**
+		 * Closes the server along with all accepted connections
+		 */
+		void stop() {
+			if(!serverChannel.isOpen())
+				return;
+			serverChannel.close().awaitUninterruptibly();
+			Channel channel = null;
+			while((channel = acceptedChannels.poll()) != null)
+				channel.close().awaitUninterruptibly();
+			channelFactory.releaseExternalResources();
+		}
+
+		int getPort() {
+			return ((InetSocketAddress)serverChannel.getLocalAddress()).getPort();
+		}
+
+		int getConnections() {
+			return connections.get();
+		}
+
+		int getRequests() {
+			return requests.get();
+		}
+	}
+}
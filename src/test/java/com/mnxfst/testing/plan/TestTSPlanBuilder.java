@@ -21,7 +21,9 @@ package com.mnxfst.testing.plan;
 
 
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -35,10 +37,14 @@ import org.xml.sax.SAXException;
 
 import com.mnxfst.testing.activities.TSPlanActivity;
 import com.mnxfst.testing.activities.http.HTTPRequestActivity;
+import com.mnxfst.testing.activities.timer.TimestampActivity;
 import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
 import com.mnxfst.testing.exception.TSPlanInstantiationException;
 import com.mnxfst.testing.plan.config.TSPlanConfigOption;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.exec.TSPlanLoadProfile;
 
 /**
  * Test case for {@link TSPlanBuilder}
@@ -240,6 +246,59 @@ public class TestTSPlanBuilder {
 		
 	}
 	
+	@Test
+	public void testParsePlan() throws Exception {
+		
+		try {
+			TSPlanBuilder.getInstance().parsePlan(null);
+			Assert.fail("Invalid configuration");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		String[] invalidPlans = new String[] {
+				"",
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?><test></test>",
+				"<?xml version=\"1.0\" encoding=\"UTF-8\"?><ptestplan></ptestplan>",
+				"<ptestplan><name>testName</name><description>sample description</description>",
+				"<ptestplan><name></name><description>sample description</description><creationDate>2011-12-20</creationDate><createdBy>mnxfst</createdBy></ptestplan>",
+				"<ptestplan><name>testName</name><description>sample description</description><creationDate>11.12-2011</creationDate><createdBy>mnxfst</createdBy></ptestplan>",
+				"<ptestplan><name>testName</name><description>sample description</description><creationDate>2011-12-20</creationDate><createdBy>me</createdBy><initActivity>test</initActivity></ptestplan>",
+				"<ptestplan><name>testName</name><description>sample description</description><creationDate>2011-12-20</creationDate><createdBy>me</createdBy><initActivity>test</initActivity>" +
+					"<activities><activity id=\"test\" name=\"test\" useGlobalConfig=\"missing\"><class>com.mnxfst.testing.activities.timer.TimestampActivity</class><nextActivity>finish</nextActivity></activity></activities></ptestplan>",
+				"<ptestplan><name>testName</name><description>sample description</description><creationDate>2011-12-20</creationDate><createdBy>me</createdBy><initActivity>test</initActivity>" +
+					"<activities><activity id=\"test\" name=\"test\"><class>com.mnxfst.testing.activities.timer.TimestampActivity</class><nextActivity>unknown</nextActivity></activity></activities></ptestplan>"
+		};
+		for(int i = 0; i < invalidPlans.length; i++) {
+			try {
+				TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(invalidPlans[i].getBytes("UTF-8")));
+				Assert.fail("Invalid plan: " + invalidPlans[i]);
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+		}
+		
+		// global configuration options may be declared after the activities referencing them
+		TSPlan plan = TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(("<ptestplan><name>testName</name><description>sample description</description>" +
+				"<creationDate>2011-12-20</creationDate><createdBy>me</createdBy><initActivity>test</initActivity><activities><activity id=\"test\" name=\"test\" useGlobalConfig=\"cfg\">" +
+				"<class>com.mnxfst.testing.activities.timer.TimestampActivity</class><nextActivity>finish</nextActivity></activity></activities>" +
+				"<globalConfiguration><configuration name=\"cfg\"><key>value</key></configuration></globalConfiguration></ptestplan>").getBytes("UTF-8")));
+		Assert.assertNotNull("The activity 'test' must exist", plan.getActivity("test"));
+		Assert.assertEquals("The plan must be compiled", 1, plan.getCompiledPlan().getActivityCount());
+		
+		// the streamed plans must equal the ones built from documents
+		String[] testPlans = new String[]{"sampleTestPlan.xml", "arrivalRateTestPlan.xml", "loadProfileTestPlan.xml", "expressionTestPlan.xml"};
+		for(int i = 0; i < testPlans.length; i++) {
+			Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/" + testPlans[i]);
+			InputStream in = new FileInputStream("src/test/resources/" + testPlans[i]);
+			try {
+				assertEquivalentPlans(TSPlanBuilder.getInstance().buildPlan(doc), TSPlanBuilder.getInstance().parsePlan(in));
+			} finally {
+				in.close();
+			}
+		}
+	}
+	
 	@Test
 	public void testParseSimpleTextNode() throws SAXException, IOException, ParserConfigurationException {
 		
@@ -294,6 +353,143 @@ public class TestTSPlanBuilder {
 		Assert.assertNotNull("The activity object must not be null", activity);
 
 	}
+	
+	@Test
+	public void testCompilePlan() throws TSPlanConfigurationFormatException {
+		TSPlanBuilder builder = TSPlanBuilder.getInstance();
+		try {
+			builder.compilePlan(null);
+			Assert.fail("No test plan provided");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		TSPlan plan = new TSPlan();
+		plan.addActivity("start", createActivity("start", "middle"));
+		plan.addActivity("middle", createActivity("middle", "end"));
+		plan.addActivity("end", createActivity("end", "FINISH"));
+		plan.addActivity("unreachable", createActivity("unreachable", "end"));
+		try {
+			builder.compilePlan(plan);
+			Assert.fail("No init activity provided");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		plan.setInitActivityName("start");
+		
+		TSCompiledPlan compiledPlan = builder.compilePlan(plan);
+		Assert.assertEquals("The number of activities must be 4", 4, compiledPlan.getActivityCount());
+		Assert.assertEquals("The init activity must be located at index 0", 0, compiledPlan.getInitActivityIndex());
+		Assert.assertEquals("The init activity must be 'start'", "start", compiledPlan.getActivityName(compiledPlan.getInitActivityIndex()));
+		int middle = compiledPlan.getSuccessor(compiledPlan.getInitActivityIndex());
+		Assert.assertEquals("The successor of 'start' must be 'middle'", "middle", compiledPlan.getActivityName(middle));
+		Assert.assertSame("The activity must be 'middle'", plan.getActivity("middle"), compiledPlan.getActivity(middle));
+		int end = compiledPlan.getSuccessor(middle);
+		Assert.assertEquals("The successor of 'middle' must be 'end'", end, compiledPlan.getActivityIndex("end"));
+		Assert.assertEquals("The successor of 'end' must be the final activity", TSCompiledPlan.FINAL_ACTIVITY_INDEX, compiledPlan.getSuccessor(end));
+		Assert.assertEquals("The name 'finish' must reference the final activity", TSCompiledPlan.FINAL_ACTIVITY_INDEX, compiledPlan.getActivityIndex("finish"));
+		Assert.assertEquals("Null must reference the final activity", TSCompiledPlan.FINAL_ACTIVITY_INDEX, compiledPlan.getActivityIndex(null));
+		Assert.assertEquals("The name 'unknown' must not reference any activity", TSCompiledPlan.UNKNOWN_ACTIVITY_INDEX, compiledPlan.getActivityIndex("unknown"));
+		
+		plan.addActivity("unreachable", createActivity("unreachable", "unknown"));
+		Assert.assertNull("The compiled plan must be reset when modifying the activities", plan.getCompiledPlan());
+		try {
+			builder.compilePlan(plan);
+			Assert.fail("Unknown next activity");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		plan.addActivity("unreachable", createActivity("unreachable", "end"));
+		plan.addActivity("end", createActivity("end", "middle"));
+		try {
+			builder.compilePlan(plan);
+			Assert.fail("Loop between 'middle' and 'end'");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		plan.addActivity("end", createActivity("end", "finish"));
+		plan.addActivity("unreachable", createActivity("unreachable", "unreachable"));
+		try {
+			builder.compilePlan(plan);
+			Assert.fail("Loop on 'unreachable'");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+	}
+	
+	@Test
+	public void testContextSlotAssignment() throws Exception {
+		
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/sampleTestPlan.xml");
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		TSPlanContextSlotTable slotTable = plan.getCompiledPlan().getContextSlotTable();
+		Assert.assertNotNull("The slot table must not be null", slotTable);
+		Assert.assertNotNull("The variable 'initTimestamp' must be assigned a slot", slotTable.lookupVariable("initTimestamp", ExecutionContextValueType.RUN));
+		Assert.assertNotNull("The variable 'finalTimestamp' must be assigned a slot", slotTable.lookupVariable("finalTimestamp", ExecutionContextValueType.RUN));
+		Assert.assertNotNull("The variable 'waitTime' must be assigned a slot", slotTable.lookupVariable("waitTime", ExecutionContextValueType.GLOBAL));
+		Assert.assertNull("The variable 'waitTime' must not be assigned a run slot", slotTable.lookupVariable("waitTime", ExecutionContextValueType.RUN));
+	}
+	
+	/**
+	 * Asserts that the provided plans hold the same attributes and activities
+	 * @param expected
+	 * @param actual
+	 */
+	static void assertEquivalentPlans(TSPlan expected, TSPlan actual) {
+		Assert.assertEquals("The names must be equal", expected.getName(), actual.getName());
+		Assert.assertEquals("The descriptions must be equal", expected.getDescription(), actual.getDescription());
+		Assert.assertEquals("The creators must be equal", expected.getCreatedBy(), actual.getCreatedBy());
+		Assert.assertEquals("The creation dates must be equal", expected.getCreationDate(), actual.getCreationDate());
+		Assert.assertEquals("The init activities must be equal", expected.getInitActivityName(), actual.getInitActivityName());
+		Assert.assertEquals("The arrival rates must be equal", expected.getArrivalRate(), actual.getArrivalRate());
+		Assert.assertEquals("The pacings must be equal", expected.getPacing(), actual.getPacing());
+		Assert.assertEquals("The warm-up iterations must be equal", expected.getWarmUpIterations(), actual.getWarmUpIterations());
+		Assert.assertEquals("The warm-up durations must be equal", expected.getWarmUpDuration(), actual.getWarmUpDuration());
+		
+		TSPlanLoadProfile expectedProfile = expected.getLoadProfile();
+		TSPlanLoadProfile actualProfile = actual.getLoadProfile();
+		Assert.assertEquals("The load profiles must either both exist or be missing", expectedProfile == null, actualProfile == null);
+		if(expectedProfile != null) {
+			Assert.assertEquals("The number of stages must be equal", expectedProfile.getStages().size(), actualProfile.getStages().size());
+			Assert.assertEquals("The durations must be equal", expectedProfile.getDurationMillis(), actualProfile.getDurationMillis());
+			Assert.assertEquals("The max executors must be equal", expectedProfile.getMaxExecutors(), actualProfile.getMaxExecutors());
+			for(int i = 0; i < expectedProfile.getStages().size(); i++) {
+				Assert.assertEquals("The stage names must be equal", expectedProfile.getStages().get(i).getName(), actualProfile.getStages().get(i).getName());
+				Assert.assertEquals("The stage types must be equal", expectedProfile.getStages().get(i).getType(), actualProfile.getStages().get(i).getType());
+			}
+		}
+		
+		Assert.assertEquals("The activities must be equal", expected.getActivities().keySet(), actual.getActivities().keySet());
+		for(String activityName : expected.getActivities().keySet()) {
+			TSPlanActivity expectedActivity = expected.getActivity(activityName);
+			TSPlanActivity actualActivity = actual.getActivity(activityName);
+			Assert.assertEquals("The activity classes must be equal", expectedActivity.getClass(), actualActivity.getClass());
+			Assert.assertEquals("The activity ids must be equal", expectedActivity.getId(), actualActivity.getId());
+			Assert.assertEquals("The activity descriptions must be equal", expectedActivity.getDescription(), actualActivity.getDescription());
+			Assert.assertEquals("The next activities must be equal", expectedActivity.getNextActivity(), actualActivity.getNextActivity());
+			Assert.assertEquals("The next activity expressions must be equal", expectedActivity.getNextActivityExpression(), actualActivity.getNextActivityExpression());
+			Assert.assertEquals("The context export variables must be equal", expectedActivity.getContextExportVariables(), actualActivity.getContextExportVariables());
+		}
+		TSPlanContextSlotTable expectedSlots = expected.getCompiledPlan().getContextSlotTable();
+		TSPlanContextSlotTable actualSlots = actual.getCompiledPlan().getContextSlotTable();
+		Assert.assertEquals("The number of run slots must be equal", expectedSlots.getSlotCount(ExecutionContextValueType.RUN), actualSlots.getSlotCount(ExecutionContextValueType.RUN));
+		Assert.assertEquals("The number of global slots must be equal", expectedSlots.getSlotCount(ExecutionContextValueType.GLOBAL), actualSlots.getSlotCount(ExecutionContextValueType.GLOBAL));
+	}
+	
+	/**
+	 * Creates an activity for the given name and next activity
+	 * @param name
+	 * @param nextActivity
+	 * @return
+	 */
+	private TSPlanActivity createActivity(String name, String nextActivity) {
+		TSPlanActivity activity = new TimestampActivity();
+		activity.setName(name);
+		activity.setNextActivity(nextActivity);
+		return activity;
+	}
 		
 	
 }
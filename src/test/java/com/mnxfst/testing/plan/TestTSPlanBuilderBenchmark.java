@@ -0,0 +1,120 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan;
+
+import java.io.ByteArrayInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.Assert;
+
+import org.apache.log4j.Logger;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Compares the time required for building large test plans from documents using {@link TSPlanBuilder#buildPlan(Document)} against
+ * streaming them using {@link TSPlanBuilder#parsePlan(java.io.InputStream)}. Both variants include parsing the raw plan bytes 
+ * as done when receiving a plan via http. The benchmark is excluded from the regular test runs and must be enabled manually 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanBuilderBenchmark {
+
+	private static final Logger logger = Logger.getLogger(TestTSPlanBuilderBenchmark.class);
+	
+	private static final int WARM_UP_ROUNDS = 2;
+	private static final int MEASURED_ROUNDS = 5;
+	
+	@Ignore("benchmark - enable manually")
+	@Test
+	public void testBuildLargePlans() throws Exception {
+		
+		int[] activityCounts = new int[]{100, 250};
+		for(int i = 0; i < activityCounts.length; i++) {
+			byte[] plan = createPlan(activityCounts[i]);
+			
+			TSPlan documentPlan = buildFromDocument(plan);
+			TSPlan streamedPlan = TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(plan));
+			Assert.assertEquals("The plan must contain all activities", activityCounts[i], streamedPlan.getActivities().size());
+			TestTSPlanBuilder.assertEquivalentPlans(documentPlan, streamedPlan);
+			
+			for(int r = 0; r < WARM_UP_ROUNDS; r++) {
+				buildFromDocument(plan);
+				TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(plan));
+			}
+			
+			long documentStart = System.nanoTime();
+			for(int r = 0; r < MEASURED_ROUNDS; r++)
+				buildFromDocument(plan);
+			long documentDuration = (System.nanoTime() - documentStart) / MEASURED_ROUNDS;
+			
+			long streamStart = System.nanoTime();
+			for(int r = 0; r < MEASURED_ROUNDS; r++)
+				TSPlanBuilder.getInstance().parsePlan(new ByteArrayInputStream(plan));
+			long streamDuration = (System.nanoTime() - streamStart) / MEASURED_ROUNDS;
+			
+			logger.info("Activities: " + activityCounts[i] + ", size: " + (plan.length / 1024) + "kb, dom+xpath: " + (documentDuration / 1000) + 
+					"us, stax: " + (streamDuration / 1000) + "us, speedup: " + ((double)documentDuration / (double)streamDuration));
+		}
+	}
+	
+	/**
+	 * Builds the plan from a document parsed from the provided bytes
+	 * @param plan
+	 * @return
+	 * @throws Exception
+	 */
+	private TSPlan buildFromDocument(byte[] plan) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(plan));
+		return TSPlanBuilder.getInstance().buildPlan(doc);
+	}
+	
+	/**
+	 * Creates a test plan holding the given number of chained activities, each one carrying a soap payload template
+	 * @param activityCount
+	 * @return
+	 * @throws Exception
+	 */
+	private byte[] createPlan(int activityCount) throws Exception {
+		
+		StringBuilder payload = new StringBuilder("<soap:Envelope xmlns:soap=\"http://schemas.xmlsoap.org/soap/envelope/\"><soap:Body><request>");
+		for(int i = 0; i < 50; i++)
+			payload.append("<field").append(i).append(">${run.value").append(i % 5).append("}</field").append(i).append(">");
+		payload.append("</request></soap:Body></soap:Envelope>");
+		
+		StringBuilder plan = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><ptestplan>");
+		plan.append("<name>large plan</name><description>generated plan</description><creationDate>2012-02-24</creationDate><createdBy>mnxfst</createdBy>");
+		plan.append("<initActivity>activity-0</initActivity><activities>");
+		for(int i = 0; i < activityCount; i++) {
+			plan.append("<activity id=\"activity-").append(i).append("\" name=\"activity-").append(i).append("\">");
+			plan.append("<description>generated activity ").append(i).append("</description>");
+			plan.append("<class>com.mnxfst.testing.activities.context.ContextExpressionActivity</class>");
+			plan.append("<nextActivity>").append(i < activityCount - 1 ? "activity-" + (i + 1) : "finish").append("</nextActivity>");
+			plan.append("<configuration><expression>${run.counter} + ").append(i).append("</expression>");
+			plan.append("<payload><![CDATA[").append(payload).append("]]></payload></configuration>");
+			plan.append("<contextExportVars><expressionResult>counter</expressionResult></contextExportVars>");
+			plan.append("</activity>");
+		}
+		plan.append("</activities></ptestplan>");
+		return plan.toString().getBytes("UTF-8");
+	}
+}
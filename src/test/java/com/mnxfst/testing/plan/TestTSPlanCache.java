@@ -0,0 +1,146 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+
+/**
+ * Test case for {@link TSPlanCache}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanCache {
+
+	@Test
+	public void testGetPlan() throws Exception {
+		
+		try {
+			new TSPlanCache(0);
+			Assert.fail("Invalid capacity");
+		} catch(IllegalArgumentException e) {
+			//
+		}
+		
+		TSPlanCache cache = new TSPlanCache(2);
+		try {
+			cache.getPlan(null);
+			Assert.fail("No plan provided");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		try {
+			cache.getPlan("<ptestplan><name>invalid</name></ptestplan>");
+			Assert.fail("Invalid plan provided");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		Assert.assertEquals("Invalid plans must not be cached", 0, cache.size());
+		
+		String samplePlan = FileUtils.readFileToString(new File("src/test/resources/sampleTestPlan.xml"), "UTF-8");
+		String arrivalRatePlan = FileUtils.readFileToString(new File("src/test/resources/arrivalRateTestPlan.xml"), "UTF-8");
+		String loadProfilePlan = FileUtils.readFileToString(new File("src/test/resources/loadProfileTestPlan.xml"), "UTF-8");
+		
+		TSPlan plan = cache.getPlan(samplePlan);
+		Assert.assertNotNull("The plan must not be null", plan);
+		Assert.assertSame("The cached plan must be returned", plan, cache.getPlan(samplePlan));
+		Assert.assertSame("The cached plan must be returned", plan, cache.getPlan(new String(samplePlan)));
+		Assert.assertSame("The plan must be referenced by its content hash", plan, cache.getPlanByHash(TSPlanCache.computeContentHash(samplePlan.getBytes("UTF-8"))));
+		Assert.assertEquals("The number of hits must be 2", 2, cache.getHits());
+		Assert.assertEquals("The number of misses must be 2", 2, cache.getMisses());
+		
+		// the sample plan is used more recently than the arrival rate plan, thus the latter one gets evicted
+		TSPlan arrivalRate = cache.getPlan(arrivalRatePlan);
+		Assert.assertSame("The cached plan must be returned", plan, cache.getPlan(samplePlan));
+		cache.getPlan(loadProfilePlan);
+		Assert.assertEquals("The cache must hold 2 plans", 2, cache.size());
+		Assert.assertSame("The sample plan must be kept", plan, cache.getPlan(samplePlan));
+		Assert.assertNull("The arrival rate plan must be evicted", cache.getPlanByHash(TSPlanCache.computeContentHash(arrivalRatePlan.getBytes("UTF-8"))));
+		Assert.assertNotSame("The arrival rate plan must be parsed again", arrivalRate, cache.getPlan(arrivalRatePlan));
+		
+		Assert.assertSame("The removed plan must be returned", plan, cache.removePlan(TSPlanCache.computeContentHash(samplePlan.getBytes("UTF-8"))));
+		cache.clear();
+		Assert.assertEquals("The cache must be empty", 0, cache.size());
+	}
+	
+	@Test
+	public void testEvictPlanWithRunningExecution() throws Exception {
+		
+		TSPlanCache cache = new TSPlanCache(1);
+		TSPlan plan = cache.getPlan(FileUtils.readFileToString(new File("src/test/resources/sampleTestPlan.xml"), "UTF-8"));
+		Assert.assertTrue("The execution must be acquired", plan.acquireExecution());
+		Assert.assertTrue("The execution must be acquired", plan.acquireExecution());
+		Assert.assertEquals("2 executions must be running", 2, plan.getRunningExecutions());
+		
+		// evicting the plan does not affect the running executions
+		cache.getPlan(FileUtils.readFileToString(new File("src/test/resources/arrivalRateTestPlan.xml"), "UTF-8"));
+		Assert.assertTrue("The evicted plan must be released", plan.isReleased());
+		Assert.assertFalse("An evicted plan must not be acquired", plan.acquireExecution());
+		Assert.assertEquals("2 executions must be running", 2, plan.getRunningExecutions());
+		
+		plan.releaseExecution();
+		plan.releaseExecution();
+		plan.releaseExecution();
+		Assert.assertEquals("No execution must be running", 0, plan.getRunningExecutions());
+		
+		// the release task runs once the last execution has been finished
+		final int[] releases = new int[1];
+		Runnable releaseTask = new Runnable() {
+			public void run() {
+				releases[0] = releases[0] + 1;
+			}
+		};
+		TSPlan released = new TSPlan();
+		Assert.assertTrue("The execution must be acquired", released.acquireExecution());
+		released.release(releaseTask);
+		Assert.assertEquals("The plan must not be shut down while running", 0, releases[0]);
+		released.release(releaseTask);
+		released.releaseExecution();
+		Assert.assertEquals("The plan must be shut down once", 1, releases[0]);
+		released.releaseExecution();
+		Assert.assertEquals("The plan must be shut down once", 1, releases[0]);
+		
+		released = new TSPlan();
+		released.release(releaseTask);
+		Assert.assertEquals("An idle plan must be shut down immediately", 2, releases[0]);
+	}
+	
+	@Test
+	public void testCopyPlan() throws Exception {
+		
+		TSPlan plan = new TSPlanCache().getPlan(FileUtils.readFileToString(new File("src/test/resources/sampleTestPlan.xml"), "UTF-8"));
+		TSPlan copy = plan.copy();
+		copy.setWarmUpIterations(10);
+		
+		Assert.assertEquals("The warm-up of the original plan must not change", 0, plan.getWarmUpIterations());
+		Assert.assertEquals("The warm-up of the copy must be changed", 10, copy.getWarmUpIterations());
+		Assert.assertEquals("The name must be copied", plan.getName(), copy.getName());
+		Assert.assertSame("The activities must be shared", plan.getActivity("waitTimer"), copy.getActivity("waitTimer"));
+		Assert.assertSame("The compiled plan must be shared", plan.getCompiledPlan(), copy.getCompiledPlan());
+		Assert.assertTrue("The cached plan must be marked as shared", plan.isShared());
+		Assert.assertTrue("The copy must be marked as shared", copy.isShared());
+	}
+}
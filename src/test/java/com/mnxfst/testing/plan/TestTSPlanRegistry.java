@@ -0,0 +1,195 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+
+/**
+ * Test case for {@link TSPlanRegistry}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanRegistry {
+
+	@Test
+	public void testRegisterPlan() throws Exception {
+		
+		File dataDirectory = new File(FileUtils.getTempDirectory(), "ptest-registry-" + System.nanoTime());
+		TSPlanRegistry registry = new TSPlanRegistry(dataDirectory);
+		try {
+			try {
+				registry.registerPlan(null);
+				Assert.fail("No content provided");
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+			try {
+				registry.registerPlan("<ptestplan><name>invalid</name></ptestplan>".getBytes("UTF-8"));
+				Assert.fail("Invalid plan provided");
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+			
+			byte[] samplePlan = FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"));
+			String planId = registry.registerPlan(samplePlan);
+			Assert.assertEquals("The plan identifier must be the content hash", TSPlanCache.computeContentHash(samplePlan), planId);
+			TSPlan plan = registry.getPlan(planId);
+			Assert.assertNotNull("The plan must be registered", plan);
+			Assert.assertNull("The plan must not have a data directory", registry.getPlanDataDirectory(planId));
+			Assert.assertEquals("The same content must result in the same identifier", planId, registry.registerPlan(samplePlan));
+			Assert.assertSame("The registered plan must be kept", plan, registry.getPlan(planId));
+			Assert.assertEquals("The registry must hold 1 plan", 1, registry.size());
+			
+			// bundle containing the plan along with data files
+			byte[] bundle = createBundle(new String[]{TSPlanRegistry.BUNDLE_PLAN_ENTRY, "data/payloads.txt"}, new byte[][]{samplePlan, "payload".getBytes("UTF-8")});
+			String bundleId = registry.registerPlan(bundle);
+			Assert.assertFalse("The bundle must be registered as separate plan", planId.equals(bundleId));
+			Assert.assertNotNull("The bundle plan must be registered", registry.getPlan(bundleId));
+			File bundleDirectory = registry.getPlanDataDirectory(bundleId);
+			Assert.assertNotNull("The bundle must have a data directory", bundleDirectory);
+			Assert.assertEquals("The data file must be extracted", "payload", FileUtils.readFileToString(new File(bundleDirectory, "data/payloads.txt"), "UTF-8"));
+			Assert.assertFalse("The plan configuration must not be extracted", new File(bundleDirectory, TSPlanRegistry.BUNDLE_PLAN_ENTRY).exists());
+			Assert.assertEquals("The registry must hold 2 plans", 2, registry.size());
+			
+			Assert.assertNotNull("The bundle plan must be removed", registry.removePlan(bundleId));
+			Assert.assertFalse("The data directory must be removed", bundleDirectory.exists());
+			Assert.assertNull("The bundle plan must be removed", registry.getPlan(bundleId));
+			Assert.assertNull("The bundle plan is already removed", registry.removePlan(bundleId));
+			Assert.assertEquals("The registry must hold 1 plan", 1, registry.size());
+			Assert.assertTrue("The remaining plan must be listed", registry.getPlanIdentifiers().contains(planId));
+		} finally {
+			FileUtils.deleteQuietly(dataDirectory);
+		}
+	}
+	
+	@Test
+	public void testConcurrentRegistration() throws Exception {
+		
+		File dataDirectory = new File(FileUtils.getTempDirectory(), "ptest-registry-" + System.nanoTime());
+		final TSPlanRegistry registry = new TSPlanRegistry(dataDirectory);
+		try {
+			byte[] samplePlan = FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"));
+			final byte[] bundle = createBundle(new String[]{TSPlanRegistry.BUNDLE_PLAN_ENTRY, "data/payloads.txt"}, new byte[][]{samplePlan, "payload".getBytes("UTF-8")});
+			
+			final String[] planIds = new String[4];
+			Thread[] threads = new Thread[planIds.length];
+			for(int i = 0; i < threads.length; i++) {
+				final int index = i;
+				threads[i] = new Thread() {
+					public void run() {
+						try {
+							planIds[index] = registry.registerPlan(bundle);
+						} catch(Exception e) {
+							//
+						}
+					}
+				};
+				threads[i].start();
+			}
+			for(int i = 0; i < threads.length; i++)
+				threads[i].join();
+			
+			for(int i = 0; i < planIds.length; i++)
+				Assert.assertEquals("All registrations must return the same identifier", TSPlanCache.computeContentHash(bundle), planIds[i]);
+			Assert.assertEquals("The registry must hold 1 plan", 1, registry.size());
+			Assert.assertEquals("A single data directory must be left", 1, dataDirectory.list().length);
+			Assert.assertEquals("The data file must be extracted", "payload", FileUtils.readFileToString(new File(registry.getPlanDataDirectory(planIds[0]), "data/payloads.txt"), "UTF-8"));
+		} finally {
+			FileUtils.deleteQuietly(dataDirectory);
+		}
+	}
+	
+	@Test
+	public void testRemovePlanWithRunningExecution() throws Exception {
+		
+		File dataDirectory = new File(FileUtils.getTempDirectory(), "ptest-registry-" + System.nanoTime());
+		TSPlanRegistry registry = new TSPlanRegistry(dataDirectory);
+		try {
+			byte[] samplePlan = FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"));
+			String bundleId = registry.registerPlan(createBundle(new String[]{TSPlanRegistry.BUNDLE_PLAN_ENTRY, "data/payloads.txt"}, new byte[][]{samplePlan, "payload".getBytes("UTF-8")}));
+			File bundleDirectory = registry.getPlanDataDirectory(bundleId);
+			TSPlan plan = registry.getPlan(bundleId);
+			Assert.assertTrue("The execution must be acquired", plan.acquireExecution());
+			
+			// the data files are kept until the running execution has been finished
+			Assert.assertSame("The removed plan must be returned", plan, registry.removePlan(bundleId));
+			Assert.assertNull("The plan must be removed", registry.getPlan(bundleId));
+			Assert.assertTrue("The plan must be released", plan.isReleased());
+			Assert.assertFalse("A released plan must not be acquired", plan.acquireExecution());
+			Assert.assertTrue("The data directory must be kept", bundleDirectory.exists());
+			
+			plan.releaseExecution();
+			Assert.assertEquals("No execution must be running", 0, plan.getRunningExecutions());
+			Assert.assertFalse("The data directory must be removed", bundleDirectory.exists());
+		} finally {
+			FileUtils.deleteQuietly(dataDirectory);
+		}
+	}
+	
+	@Test
+	public void testRegisterInvalidBundle() throws Exception {
+		
+		File dataDirectory = new File(FileUtils.getTempDirectory(), "ptest-registry-" + System.nanoTime());
+		TSPlanRegistry registry = new TSPlanRegistry(dataDirectory);
+		try {
+			byte[] samplePlan = FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"));
+			try {
+				registry.registerPlan(createBundle(new String[]{"data/payloads.txt"}, new byte[][]{"payload".getBytes("UTF-8")}));
+				Assert.fail("The bundle does not contain a plan");
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+			try {
+				registry.registerPlan(createBundle(new String[]{TSPlanRegistry.BUNDLE_PLAN_ENTRY, "../escaped.txt"}, new byte[][]{samplePlan, "payload".getBytes("UTF-8")}));
+				Assert.fail("The bundle contains an entry outside the plan data directory");
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+			Assert.assertFalse("The entry must not be extracted", new File(dataDirectory, "escaped.txt").exists());
+			Assert.assertEquals("The registry must be empty", 0, registry.size());
+			Assert.assertTrue("No data must be left", !dataDirectory.exists() || dataDirectory.list().length == 0);
+		} finally {
+			FileUtils.deleteQuietly(dataDirectory);
+		}
+	}
+	
+	private byte[] createBundle(String[] names, byte[][] contents) throws IOException {
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		ZipOutputStream zout = new ZipOutputStream(bout);
+		for(int i = 0; i < names.length; i++) {
+			zout.putNextEntry(new ZipEntry(names[i]));
+			zout.write(contents[i]);
+			zout.closeEntry();
+		}
+		zout.close();
+		return bout.toByteArray();
+	}
+}
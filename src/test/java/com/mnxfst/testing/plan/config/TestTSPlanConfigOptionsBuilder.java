@@ -24,6 +24,9 @@ import java.io.IOException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import junit.framework.Assert;
 
@@ -105,6 +108,70 @@ public class TestTSPlanConfigOptionsBuilder {
 		Assert.assertEquals("The size of the options set must be 6", 6, singleOption.getOptions().size());
 	}
 	
+	@Test
+	public void testParseConfigurationElement() throws TSPlanConfigurationFormatException, XMLStreamException {
+		TSPlanConfigOptionsBuilder parser = new TSPlanConfigOptionsBuilder();
+		
+		try {
+			parser.parseConfigurationElement(null, null);
+			Assert.fail("Null input must lead to exception");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		try {
+			parser.parseConfigurationElement(createReader("<test><url>localhost</url></test>"), "default");
+			Assert.fail("Invalid node name");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+
+		try {
+			parser.parseConfigurationElement(createReader("<configuration><url>localhost</url></configuration>"), null);
+			Assert.fail("No name attribute contained");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		try {
+			parser.parseConfigurationElement(createReader("<configuration name=\"\"><url>localhost</url></configuration>"), "default");
+			Assert.fail("Default provided but the xml contains a name attribute having an empty value");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+
+		try {
+			parser.parseConfigurationElement(createReader("<configuration name=\"configurationStats\"></configuration>"), null);
+			Assert.fail("No child nodes contained");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		XMLStreamReader reader = createReader("<configuration name=\"configurationStats\"><url>localhost</url><port>9160</port><nested>a<b>x</b>c</nested>"+
+				"<payload><![CDATA[<soap:Envelope>${run.id}</soap:Envelope>]]></payload><empty/></configuration>");
+		TSPlanConfigOption singleOption = parser.parseConfigurationElement(reader, "default");
+		Assert.assertTrue("The reader must be positioned at the end of the configuration element", reader.isEndElement());
+		Assert.assertEquals("The options must be named 'configurationStats'", "configurationStats", singleOption.getName());
+		Assert.assertEquals("The url must be localhost", "localhost", singleOption.getOption("url"));
+		Assert.assertEquals("The port must be 9160", "9160", singleOption.getOption("port"));
+		Assert.assertEquals("Nested elements must be skipped", "ac", singleOption.getOption("nested"));
+		Assert.assertEquals("The payload must be read from the CDATA section", "<soap:Envelope>${run.id}</soap:Envelope>", singleOption.getOption("payload"));
+		Assert.assertNull("The empty attribute value must be null", singleOption.getOption("empty"));
+		Assert.assertEquals("The size of the options set must be 5", 5, singleOption.getOptions().size());
+	}
+	
+	/**
+	 * Creates a stream reader for the provided content, positioned at the root element
+	 * @param content
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	private XMLStreamReader createReader(String content) throws XMLStreamException {
+		XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(content.getBytes()));
+		reader.nextTag();
+		return reader;
+	}
+	
 	@Test
 	public void testParse() throws SAXException, IOException, ParserConfigurationException, TSPlanConfigurationFormatException {
 
@@ -0,0 +1,90 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.nio.charset.Charset;
+
+import junit.framework.Assert;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
+/**
+ * Test case for {@link TSPlanContextByteTemplate}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanContextByteTemplate {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	@Test
+	public void testRender() throws TSVariableEvaluationFailedException {
+		
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanContextByteTemplate template = new TSPlanContextByteTemplate("<a>${run.a}</a><b>${run.b}</b>", UTF8);
+		template.bind(slotTable);
+		Assert.assertEquals("The literal length must be 14", 14, template.getLiteralLength());
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		ctx.addContextValue("a", "value", ExecutionContextValueType.RUN);
+		ChannelBuffer buffer = template.renderBuffer(ctx);
+		Assert.assertEquals("Unknown values must be kept as placeholders", "<a>value</a><b>${run.b}</b>", buffer.toString(UTF8));
+		
+		ctx.addContextValue("a", "gr\u00fc\u00dfe", ExecutionContextValueType.RUN);
+		ctx.addContextValue("b", Integer.valueOf(7), ExecutionContextValueType.RUN);
+		buffer = template.renderBuffer(ctx);
+		Assert.assertEquals("Non-ascii values must be encoded", "<a>gr\u00fc\u00dfe</a><b>7</b>", buffer.toString(UTF8));
+		Assert.assertEquals("The buffer must contain 22 bytes", 22, buffer.readableBytes());
+		
+		// rendering appends to the given buffer
+		buffer = ChannelBuffers.dynamicBuffer(4);
+		buffer.writeByte('>');
+		template.renderTo(ctx, buffer);
+		Assert.assertEquals("The template must be appended", "><a>gr\u00fc\u00dfe</a><b>7</b>", buffer.toString(UTF8));
+	}
+	
+	@Test
+	public void testRenderCharset() throws TSVariableEvaluationFailedException {
+		
+		Charset utf16 = Charset.forName("UTF-16BE");
+		TSPlanContextByteTemplate template = new TSPlanContextByteTemplate("x=${run.x}", utf16);
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext();
+		ctx.addContextValue("x", "\u00e9", ExecutionContextValueType.RUN);
+		Assert.assertEquals("The value must be encoded with the template charset", "x=\u00e9", template.renderBuffer(ctx).toString(utf16));
+		Assert.assertEquals("The charset must be kept", utf16, template.getCharset());
+	}
+	
+	@Test
+	public void testRenderInvalidPlaceholder() {
+		
+		TSPlanContextByteTemplate template = new TSPlanContextByteTemplate("value: ${test}", UTF8);
+		template.bind(new TSPlanContextSlotTable());
+		try {
+			template.renderBuffer(new TSPlanExecutionContext());
+			Assert.fail("Invalid placeholder");
+		} catch(TSVariableEvaluationFailedException e) {
+			//
+		}
+	}
+}
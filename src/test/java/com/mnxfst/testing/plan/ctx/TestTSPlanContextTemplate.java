@@ -0,0 +1,96 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.ctx;
+
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+
+/**
+ * Test case for {@link TSPlanContextTemplate}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanContextTemplate {
+
+	@Test
+	public void testParseTemplate() {
+		
+		Assert.assertEquals("The template must not contain placeholders", 0, new TSPlanContextTemplate(null).getPlaceholders().length);
+		Assert.assertEquals("The template must not contain placeholders", 0, new TSPlanContextTemplate("plain text").getPlaceholders().length);
+		Assert.assertEquals("The template must not contain placeholders", 0, new TSPlanContextTemplate("unclosed ${run.test").getPlaceholders().length);
+		
+		TSPlanContextTemplate template = new TSPlanContextTemplate("${run.a}-${global.b.time} ${run.a}");
+		Assert.assertEquals("The template must contain 3 placeholders", 3, template.getPlaceholders().length);
+		Assert.assertEquals("The placeholder must be ${run.a}", "${run.a}", template.getPlaceholders()[0]);
+		Assert.assertEquals("The placeholder must be ${global.b.time}", "${global.b.time}", template.getPlaceholders()[1]);
+		Assert.assertEquals("The placeholder must be ${run.a}", "${run.a}", template.getPlaceholders()[2]);
+	}
+	
+	@Test
+	public void testRender() throws TSVariableEvaluationFailedException {
+		
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanContextTemplate template = new TSPlanContextTemplate("<a>${run.a}</a><b>${global.b.time}</b><c>${run.c}</c> $1");
+		template.bind(slotTable);
+		
+		Assert.assertNotNull("The variable must be registered", slotTable.lookupVariable("a", ExecutionContextValueType.RUN));
+		Assert.assertNotNull("The variable must be registered", slotTable.lookupVariable("b", ExecutionContextValueType.GLOBAL));
+		Assert.assertNotNull("The pattern must be compiled", slotTable.getReplacementPatterns().get("${global.b.time}"));
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		ctx.addContextValue("a", "va$ue\\1", ExecutionContextValueType.RUN);
+		ctx.addContextValue("b", new Date(12345), ExecutionContextValueType.GLOBAL);
+		Assert.assertEquals("Unknown values must be kept as placeholders", "<a>va$ue\\1</a><b>12345</b><c>${run.c}</c> $1", template.render(ctx));
+		
+		ctx.addContextValue("c", Integer.valueOf(7), ExecutionContextValueType.RUN);
+		ctx.addContextValue("a", "next", ExecutionContextValueType.RUN);
+		Assert.assertEquals("The rendered template must contain the current values", "<a>next</a><b>12345</b><c>7</c> $1", template.render(ctx));
+		
+		// contexts using another slot table are evaluated by name
+		TSPlanExecutionContext foreignCtx = new TSPlanExecutionContext();
+		foreignCtx.addContextValue("c", "foreign", ExecutionContextValueType.RUN);
+		Assert.assertEquals("The rendered template must contain the foreign values", "<a>${run.a}</a><b>${global.b.time}</b><c>foreign</c> $1", template.render(foreignCtx));
+	}
+	
+	@Test
+	public void testRenderInvalidPlaceholder() {
+		
+		TSPlanContextTemplate template = new TSPlanContextTemplate("value: ${test}");
+		template.bind(new TSPlanContextSlotTable());
+		try {
+			template.render(new TSPlanExecutionContext());
+			Assert.fail("Invalid placeholder");
+		} catch(TSVariableEvaluationFailedException e) {
+			//
+		}
+		
+		template = new TSPlanContextTemplate("plain");
+		try {
+			Assert.assertEquals("The template must be returned as is", "plain", template.render(new TSPlanExecutionContext()));
+		} catch(TSVariableEvaluationFailedException e) {
+			Assert.fail("No placeholders to evaluate");
+		}
+	}
+}
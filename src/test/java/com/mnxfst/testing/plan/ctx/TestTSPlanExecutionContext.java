@@ -20,9 +20,8 @@
 package com.mnxfst.testing.plan.ctx;
 
 import java.io.Serializable;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 import junit.framework.Assert;
 
@@ -155,28 +154,210 @@ public class TestTSPlanExecutionContext {
 	}
 	
 	@Test
-	public void testExtractGetterMethods() throws TSVariableEvaluationFailedException {
+	public void testSlotAccess() {
 		
-		TSPlanExecutionContext ctx = new TSPlanExecutionContext();
-		List<Method> methods = new ArrayList<Method>();
-		Serializable type = new String("test");
-		ctx.extractGetterMethods(type.getClass(), new String[]{"getClass","getName"}, methods);
-		methods.clear();
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanContextVariable runVar = slotTable.getVariable("runVar", ExecutionContextValueType.RUN);
+		TSPlanContextVariable globalVar = slotTable.getVariable("globalVar", ExecutionContextValueType.GLOBAL);
+		Assert.assertEquals("The run variable must be assigned to slot 0", 0, runVar.getSlot());
+		Assert.assertEquals("The global variable must be assigned to slot 0", 0, globalVar.getSlot());
+		Assert.assertSame("The variable must be assigned once only", runVar, slotTable.getVariable("runVar", ExecutionContextValueType.RUN));
+		Assert.assertNull("The variable must not be known", slotTable.lookupVariable("unknown", ExecutionContextValueType.RUN));
+		Assert.assertSame("The pattern must reference the global variable", globalVar, slotTable.getVariableForPattern("${global.globalVar.name}"));
+		Assert.assertNull("The input is no pattern", slotTable.getVariableForPattern("globalVar"));
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		ctx.addContextValue(runVar, "run");
+		ctx.addContextValue(globalVar, "global");
+		Assert.assertEquals("The run value must be 'run'", "run", ctx.getContextValue(runVar));
+		Assert.assertEquals("The run value must be accessible by name", "run", ctx.getContextValue("runVar", ExecutionContextValueType.RUN));
+		Assert.assertEquals("The global value must be 'global'", "global", ctx.getContextValue(globalVar));
+		Assert.assertNull("The run store must not contain the global variable", ctx.getContextValue("globalVar", ExecutionContextValueType.RUN));
+		
+		// values added by name are assigned to new slots, thus reachable through the handle as well
+		ctx.addContextValue("newVar", Long.valueOf(1), ExecutionContextValueType.RUN);
+		TSPlanContextVariable newVar = slotTable.lookupVariable("newVar", ExecutionContextValueType.RUN);
+		Assert.assertNotNull("The variable must be known", newVar);
+		Assert.assertEquals("The value must be 1", Long.valueOf(1), ctx.getContextValue(newVar));
+		Assert.assertEquals("The run store must contain 2 values", 2, ctx.getContextValueNames(ExecutionContextValueType.RUN).size());
+		
+		// clearing the run store must keep the global one
+		ctx.clearTransientValueStore();
+		Assert.assertFalse("The run value must be removed", ctx.hasContextVariable(runVar));
+		Assert.assertNull("The run value must be removed", ctx.getContextValue("runVar", ExecutionContextValueType.RUN));
+		Assert.assertTrue("The run store must be empty", ctx.getContextValueNames(ExecutionContextValueType.RUN).isEmpty());
+		Assert.assertEquals("The global value must be kept", "global", ctx.getContextValue(globalVar));
+		ctx.addContextValue(runVar, "next run");
+		Assert.assertEquals("The run value must be 'next run'", "next run", ctx.getContextValue(runVar));
+		ctx.removeContextValue(runVar);
+		Assert.assertFalse("The run value must be removed", ctx.hasContextVariable("runVar", ExecutionContextValueType.RUN));
+		
+		// handles of other slot tables are resolved by name
+		TSPlanExecutionContext otherCtx = new TSPlanExecutionContext();
+		otherCtx.addContextValue("unrelated", "value", ExecutionContextValueType.RUN);
+		otherCtx.addContextValue(runVar, "other");
+		Assert.assertEquals("The run value must be 'other'", "other", otherCtx.getContextValue("runVar", ExecutionContextValueType.RUN));
+		Assert.assertEquals("The run value must be 'other'", "other", otherCtx.getContextValue(runVar));
+		Assert.assertTrue("The run value must exist", otherCtx.hasContextVariable(runVar));
+		
+		// the slot arrays must grow on demand
+		for(int i = 0; i < 100; i++)
+			ctx.addContextValue("var-" + i, Integer.valueOf(i), ExecutionContextValueType.GLOBAL);
+		Assert.assertEquals("The value must be 99", Integer.valueOf(99), ctx.getContextValue("var-99", ExecutionContextValueType.GLOBAL));
+		Assert.assertEquals("The global store must contain 101 values", 101, ctx.getGlobalValues().size());
+	}
+	
+	@Test
+	public void testPrimitiveValues() throws TSVariableEvaluationFailedException {
+		
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanContextVariable counter = slotTable.getVariable("counter", ExecutionContextValueType.RUN);
+		TSPlanContextVariable ratio = slotTable.getVariable("ratio", ExecutionContextValueType.GLOBAL);
+		TSPlanContextVariable text = slotTable.getVariable("text", ExecutionContextValueType.RUN);
 		
-		ctx.extractGetterMethods(null, null,  methods);
-		Assert.assertNotNull("The methods list not null", methods);
-		Assert.assertTrue("The methods list is empty", methods.isEmpty());
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		try {
+			ctx.getLongContextValue(counter);
+			Assert.fail("No value available");
+		} catch(TSVariableEvaluationFailedException e) {
+			//
+		}
+		
+		ctx.addLongContextValue(counter, 10);
+		ctx.addLongContextValue(counter, ctx.getLongContextValue(counter) - 3);
+		Assert.assertEquals("The value must be 7", 7, ctx.getLongContextValue(counter));
+		Assert.assertEquals("The value must be 7", 7.0, ctx.getDoubleContextValue(counter), 0);
+		Assert.assertEquals("The boxed value must be 7", Long.valueOf(7), ctx.getContextValue(counter));
+		Assert.assertEquals("The boxed value must be 7", Long.valueOf(7), ctx.evaluate("${run.counter}"));
+		Assert.assertEquals("The copied value must be 7", Long.valueOf(7), ctx.getTransientRunValues().get("counter"));
+		
+		ctx.addDoubleContextValue(ratio, 0.5);
+		Assert.assertEquals("The value must be 0.5", 0.5, ctx.getDoubleContextValue(ratio), 0);
+		Assert.assertEquals("The boxed value must be 0.5", Double.valueOf(0.5), ctx.getContextValue("ratio", ExecutionContextValueType.GLOBAL));
+		
+		// numbers stored as objects are readable as primitives, objects replace primitives
+		ctx.addContextValue(counter, Integer.valueOf(12));
+		Assert.assertEquals("The value must be 12", 12, ctx.getLongContextValue(counter));
+		ctx.addContextValue(text, "text");
+		try {
+			ctx.getLongContextValue(text);
+			Assert.fail("Value is not numerical");
+		} catch(TSVariableEvaluationFailedException e) {
+			//
+		}
+		
+		// clearing the run store removes primitives as well
+		ctx.addLongContextValue(counter, 1);
+		ctx.clearTransientValueStore();
+		Assert.assertFalse("The value must be removed", ctx.hasContextVariable(counter));
+		Assert.assertEquals("The global value must be kept", 0.5, ctx.getDoubleContextValue(ratio), 0);
+		
+		// handles of other slot tables are resolved by name
+		TSPlanExecutionContext otherCtx = new TSPlanExecutionContext();
+		otherCtx.addLongContextValue(counter, 42);
+		Assert.assertEquals("The value must be 42", 42, otherCtx.getLongContextValue(counter));
+		Assert.assertEquals("The value must be 42", Long.valueOf(42), otherCtx.getContextValue("counter", ExecutionContextValueType.RUN));
+	}
+	
+	@Test
+	public void testSharedContext() throws TSVariableEvaluationFailedException {
 		
-		ctx.extractGetterMethods(String.class, null,  methods);
-		Assert.assertNotNull("The methods list not null", methods);
-		Assert.assertTrue("The methods list is empty", methods.isEmpty());
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanContextVariable localVar = slotTable.getVariable("local", ExecutionContextValueType.GLOBAL);
 		
-		ctx.extractGetterMethods(String.class, new String[0],  methods);
-		Assert.assertNotNull("The methods list not null", methods);
-		Assert.assertTrue("The methods list is empty", methods.isEmpty());
+		Map<String, Serializable> values = new HashMap<String, Serializable>();
+		values.put("host", "localhost");
+		values.put("threads", Integer.valueOf(5));
+		TSPlanSharedContext sharedContext = new TSPlanSharedContext(slotTable, values);
+		Assert.assertEquals("The shared context must hold 2 values", 2, sharedContext.size());
+		TSPlanContextVariable hostVar = slotTable.lookupVariable("host", ExecutionContextValueType.GLOBAL);
+		Assert.assertNotNull("The variable must be registered", hostVar);
+		
+		try {
+			new TSPlanExecutionContext(new TSPlanContextSlotTable(), sharedContext);
+			Assert.fail("The slot tables differ");
+		} catch(IllegalArgumentException e) {
+			//
+		}
+		
+		TSPlanExecutionContext ctx1 = new TSPlanExecutionContext(slotTable, sharedContext);
+		TSPlanExecutionContext ctx2 = new TSPlanExecutionContext(null, sharedContext);
+		Assert.assertSame("The slot table of the shared context must be used", slotTable, ctx2.getSlotTable());
+		
+		// reads fall through to the shared layer
+		Assert.assertEquals("The value must be 'localhost'", "localhost", ctx1.getContextValue(hostVar));
+		Assert.assertEquals("The value must be 'localhost'", "localhost", ctx1.evaluate("${global.host}"));
+		Assert.assertTrue("The value must exist", ctx1.hasContextVariable("threads", ExecutionContextValueType.GLOBAL));
+		Assert.assertFalse("The shared layer must not be visible in the run store", ctx1.hasContextVariable("threads", ExecutionContextValueType.RUN));
+		Assert.assertEquals("The value must be 5", 5, ctx1.getLongContextValue(slotTable.lookupVariable("threads", ExecutionContextValueType.GLOBAL)));
+		Assert.assertEquals("The global store must contain 2 values", 2, ctx1.getGlobalValues().size());
+		
+		// writes and removals affect the writing context only
+		ctx1.addContextValue(hostVar, "remote");
+		ctx1.addContextValue(localVar, "local");
+		Assert.assertEquals("The value must be 'remote'", "remote", ctx1.getContextValue(hostVar));
+		Assert.assertEquals("The value must be 'localhost'", "localhost", ctx2.getContextValue(hostVar));
+		Assert.assertEquals("The global store must contain 3 values", 3, ctx1.getContextValueNames(ExecutionContextValueType.GLOBAL).size());
+		Assert.assertFalse("The value must not exist", ctx2.hasContextVariable(localVar));
+		
+		ctx1.removeContextValue(hostVar);
+		Assert.assertNull("The value must be removed", ctx1.getContextValue(hostVar));
+		Assert.assertFalse("The value must be removed", ctx1.hasContextVariable(hostVar));
+		Assert.assertEquals("The value must be 'localhost'", "localhost", ctx2.getContextValue("host", ExecutionContextValueType.GLOBAL));
+		ctx1.addContextValue(hostVar, "again");
+		Assert.assertEquals("The value must be 'again'", "again", ctx1.getContextValue(hostVar));
+		
+		ctx1.clearTransientValueStore();
+		Assert.assertEquals("The value must be kept", "again", ctx1.getContextValue(hostVar));
+		Assert.assertEquals("The value must be 'localhost'", "localhost", sharedContext.get(hostVar.getSlot()));
+	}
+	
+	@Test
+	public void testSharedReplacementPatterns() throws TSVariableEvaluationFailedException {
+		
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanExecutionContext ctx1 = new TSPlanExecutionContext(slotTable);
+		TSPlanExecutionContext ctx2 = new TSPlanExecutionContext(slotTable);
+		ctx1.addContextValue("var", "test-string", ExecutionContextValueType.RUN);
+		ctx2.addContextValue("var", Long.valueOf(1), ExecutionContextValueType.RUN);
+		
+		Assert.assertEquals("The value must be " + String.class.getName(), String.class.getName(), ctx1.evaluate("${run.var.class.name}"));
+		Assert.assertNotNull("The pattern must be shared", ctx2.getReplacementPatternMapping().get("${run.var.class.name}"));
+		Assert.assertEquals("The value must be " + Long.class.getName(), Long.class.getName(), ctx2.evaluate("${run.var.class.name}"));
+		Assert.assertEquals("The value must be " + String.class.getName(), String.class.getName(), ctx1.evaluate("${run.var.class.name}"));
+		Assert.assertEquals("The value must be 'test-string'", "test-string", ctx1.evaluate("${run.var}"));
+		
+		ctx1.clearTransientValueStore();
+		Assert.assertNull("The value must be removed", ctx1.evaluate("${run.var.class.name}"));
+		
+		ctx1.addContextValue("var", "test-string", ExecutionContextValueType.RUN);
+		try {
+			ctx1.evaluate("${run.var.nosuchattribute}");
+			Assert.fail("No such getter");
+		} catch(TSVariableEvaluationFailedException e) {
+			//
+		}
+		Assert.assertNull("The pattern must not be cached", ctx1.getReplacementPatternMapping().get("${run.var.nosuchattribute}"));
+		
+		TSPlanContextAccessor accessor = TSPlanContextAccessor.getAccessor(String.class, new String[]{"getClass", "getName"});
+		Assert.assertSame("The accessor must be shared", accessor, TSPlanContextAccessor.getAccessor(String.class, new String[]{"getClass", "getName"}));
+		Assert.assertNotSame("The accessor must depend on the type", accessor, TSPlanContextAccessor.getAccessor(Long.class, new String[]{"getClass", "getName"}));
+		Assert.assertEquals("The accessor must contain 2 getters", 2, accessor.getGetterMethods().length);
+		Assert.assertEquals("The value must be " + String.class.getName(), String.class.getName(), accessor.evaluate("test"));
+		Assert.assertNull("The value must be null", accessor.evaluate(null));
+	}
+	
+	@Test
+	public void testResolveGetterMethods() throws TSVariableEvaluationFailedException {
+		
+		Serializable type = new String("test");
+		Assert.assertEquals("The methods array must contain 2 elements", 2, TSPlanContextAccessor.resolveGetterMethods(type.getClass(), new String[]{"getClass","getName"}).length);
+		Assert.assertEquals("The methods array must be empty", 0, TSPlanContextAccessor.resolveGetterMethods(null, null).length);
+		Assert.assertEquals("The methods array must be empty", 0, TSPlanContextAccessor.resolveGetterMethods(String.class, null).length);
+		Assert.assertEquals("The methods array must be empty", 0, TSPlanContextAccessor.resolveGetterMethods(String.class, new String[0]).length);
 		
 		try {
-			ctx.extractGetterMethods(String.class, new String[]{"nosuchmethod"},  methods);
+			TSPlanContextAccessor.resolveGetterMethods(String.class, new String[]{"nosuchmethod"});
 			Assert.fail("No such method");
 		} catch(TSVariableEvaluationFailedException e) {
 			//
@@ -0,0 +1,73 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanBuilder;
+
+/**
+ * Loads test plans and creates the {@link TSPlanExecutor executors} handed over to the schedulers under test 
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TSPlanExecutorTestHelper {
+
+	/**
+	 * Builds the plan found in the given file
+	 * @param fileName
+	 * @return
+	 * @throws Exception
+	 */
+	public static TSPlan loadPlan(String fileName) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(fileName);
+		return TSPlanBuilder.getInstance().buildPlan(doc);
+	}
+	
+	/**
+	 * Creates the given number of executors for the plan, each providing the wait time (millis) as variable <i>waitTime</i>
+	 * @param plan
+	 * @param numOfExecutors
+	 * @param recurrences
+	 * @param recurrenceType
+	 * @param waitTime
+	 * @return
+	 * @throws Exception
+	 */
+	public static List<TSPlanExecutor> createExecutors(TSPlan plan, int numOfExecutors, int recurrences, TSPlanRecurrenceType recurrenceType, long waitTime) throws Exception {
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(waitTime));
+		
+		List<TSPlanExecutor> executors = new ArrayList<TSPlanExecutor>();
+		for(int i = 0; i < numOfExecutors; i++)
+			executors.add(new TSPlanExecutor(plan, "test-env", "test-env-executor-" + i, recurrences, recurrenceType, vars));
+		return executors;
+	}
+	
+}
@@ -0,0 +1,157 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
+import com.mnxfst.testing.plan.TSPlanExecutorResult;
+
+/**
+ * Test cases for {@link TSPlanArrivalRateScheduler}
+ * @author mnxfst
+ * @since 21.02.2012
+ */
+public class TestTSPlanArrivalRateScheduler {
+
+	@Test
+	public void testConstructor() throws Exception {
+		
+		List<TSPlanExecutor> executors = TSPlanExecutorTestHelper.createExecutors(loadPlan(), 1, 10, TSPlanRecurrenceType.TIMES, 1);
+		ExecutorService pool = Executors.newFixedThreadPool(1);
+		
+		try {
+			new TSPlanArrivalRateScheduler(0, 10, TSPlanRecurrenceType.TIMES, executors, pool);
+			Assert.fail("Invalid arrival rate");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanArrivalRateScheduler(10, 0, TSPlanRecurrenceType.TIMES, executors, pool);
+			Assert.fail("Invalid number of recurrences");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanArrivalRateScheduler(10, 10, TSPlanRecurrenceType.INFINITE, executors, pool);
+			Assert.fail("Unsupported recurrence type");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanArrivalRateScheduler(10, 10, TSPlanRecurrenceType.TIMES, new ArrayList<TSPlanExecutor>(), pool);
+			Assert.fail("Missing executors");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanArrivalRateScheduler(10, 10, TSPlanRecurrenceType.TIMES, executors, null);
+			Assert.fail("Missing worker pool");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		pool.shutdown();
+	}
+	
+	@Test
+	public void testExecuteWithSufficientExecutors() throws Exception {
+		
+		List<TSPlanExecutor> executors = TSPlanExecutorTestHelper.createExecutors(loadPlan(), 4, 40, TSPlanRecurrenceType.TIMES, 5);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		
+		// 40 iterations at 100 iterations/sec, each taking approx. 5ms, thus never more than one or two in flight
+		TSPlanArrivalRateScheduler scheduler = new TSPlanArrivalRateScheduler(100, 40, TSPlanRecurrenceType.TIMES, executors, pool);
+		long start = System.currentTimeMillis();
+		List<TSPlanExecutorResult> results = scheduler.execute();
+		long duration = System.currentTimeMillis() - start;
+		pool.shutdown();
+		
+		Assert.assertEquals("The number of results must be 4", 4, results.size());
+		Assert.assertEquals("The number of scheduled iterations must be 40", 40, scheduler.getScheduledIterations());
+		Assert.assertEquals("The number of dropped iterations must be 0", 0, scheduler.getDroppedIterations());
+		Assert.assertTrue("The schedule must follow the arrival rate", duration >= 390);
+		
+		long executedIterations = 0;
+		for(TSPlanExecutorResult r : results)
+			executedIterations = executedIterations + r.getSingleRunDurationHistogram().getTotalCount();
+		Assert.assertEquals("The number of executed iterations must be 40", 40, executedIterations);
+	}
+	
+	@Test
+	public void testExecuteWithSaturatedExecutors() throws Exception {
+		
+		List<TSPlanExecutor> executors = TSPlanExecutorTestHelper.createExecutors(loadPlan(), 1, 40, TSPlanRecurrenceType.TIMES, 20);
+		ExecutorService pool = Executors.newFixedThreadPool(1);
+		
+		// 40 iterations at 200 iterations/sec, each taking approx. 20ms on a single executor, thus most of them must be dropped
+		TSPlanArrivalRateScheduler scheduler = new TSPlanArrivalRateScheduler(200, 40, TSPlanRecurrenceType.TIMES, executors, pool);
+		List<TSPlanExecutorResult> results = scheduler.execute();
+		pool.shutdown();
+		
+		Assert.assertEquals("The number of results must be 1", 1, results.size());
+		Assert.assertEquals("The number of scheduled iterations must be 40", 40, scheduler.getScheduledIterations());
+		Assert.assertTrue("Iterations must have been dropped", scheduler.getDroppedIterations() > 0);
+		Assert.assertEquals("The number of executed iterations must match the scheduled but not dropped iterations", scheduler.getScheduledIterations() - scheduler.getDroppedIterations(), results.get(0).getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertTrue("Iterations must have been delayed", scheduler.getDelayedIterations() > 0);
+		Assert.assertTrue("The corrected max must include the time waited for the executor", results.get(0).getCorrectedSingleRunDurationHistogram().getMaxValue() >= results.get(0).getSingleRunDurationHistogram().getMaxValue());
+		Assert.assertEquals("The corrected durations must include the dropped iterations", scheduler.getScheduledIterations(), results.get(0).getCorrectedSingleRunDurationHistogram().getTotalCount());
+	}
+	
+	@Test
+	public void testEnvironmentExecution() throws Exception {
+		
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(1));
+		
+		TSPlan plan = loadPlan();
+		Assert.assertEquals("The arrival rate must be 100", 100.0, plan.getArrivalRate(), 0.001);
+		
+		TSPlanExecEnvironment env = new TSPlanExecEnvironment("test-env", plan, 300, TSPlanRecurrenceType.MILLIS, 2, vars);
+		TSPlanExecEnvironmentResult result = env.execute();
+		
+		Assert.assertNotNull("The result must not be null", result);
+		Assert.assertEquals("The arrival rate must be 100", 100.0, result.getArrivalRate(), 0.001);
+		Assert.assertEquals("The number of scheduled iterations must be 30", 30, result.getScheduledIterations());
+		Assert.assertEquals("The number of executed iterations must match the scheduled but not dropped iterations", result.getScheduledIterations() - result.getDroppedIterations(), result.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+	}
+	
+	private TSPlan loadPlan() throws Exception {
+		return TSPlanExecutorTestHelper.loadPlan("src/test/resources/arrivalRateTestPlan.xml");
+	}
+	
+}
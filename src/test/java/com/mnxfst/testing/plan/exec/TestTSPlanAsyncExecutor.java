@@ -0,0 +1,215 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import com.mnxfst.testing.activities.TSPlanActivity;
+import com.mnxfst.testing.activities.TSPlanAsyncActivityRuntime;
+import com.mnxfst.testing.activities.timer.TimestampActivity;
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.exception.TSPlanMissingException;
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanBuilder;
+import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
+import com.mnxfst.testing.plan.TSPlanExecutorResult;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.stats.TSPlanActivityStatistics;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+
+/**
+ * Test cases for {@link TSPlanAsyncExecutor}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanAsyncExecutor {
+
+	@Test
+	public void testConstructor() throws Exception {
+		
+		TSPlanAsyncActivityRuntime runtime = new TSPlanAsyncActivityRuntime(Executors.newScheduledThreadPool(1), Executors.newCachedThreadPool());
+		try {
+			new TSPlanAsyncExecutor(null, "test-env", "test-exec", 1, TSPlanRecurrenceType.TIMES, 1, null, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, runtime);
+			Assert.fail("Missing test plan");
+		} catch(TSPlanMissingException e) {
+			//
+		}
+		
+		try {
+			new TSPlanAsyncExecutor(loadPlan(), "test-env", "test-exec", 1, TSPlanRecurrenceType.TIMES, 0, null, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, runtime);
+			Assert.fail("Invalid number of concurrent iterations");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanAsyncExecutor(loadPlan(), "test-env", "test-exec", 1, TSPlanRecurrenceType.TIMES, 1, null, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, null);
+			Assert.fail("Missing runtime");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		shutdown(runtime);
+	}
+	
+	@Test
+	public void testExecuteAsyncActivities() throws Exception {
+		
+		// 200 iterations wait 50ms each, 5 times in a row - on two event loop threads and without any blocking thread 
+		ScheduledExecutorService eventLoop = Executors.newScheduledThreadPool(2);
+		ExecutorService blockingExecutor = Executors.newFixedThreadPool(1);
+		TSPlanAsyncActivityRuntime runtime = new TSPlanAsyncActivityRuntime(eventLoop, blockingExecutor);
+		
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(50));
+		TSPlanAsyncExecutor executor = new TSPlanAsyncExecutor(loadPlan(), "test-env", "test-exec", 5, TSPlanRecurrenceType.TIMES, 200, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, runtime);
+		
+		TSPlanExecutorResult result = executor.call();
+		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+		Assert.assertEquals("The number of runs must be 1000", 1000, result.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of wait timer executions must be 1000", 1000, result.getActivityStatistics().get("waitTimer").getExecutions());
+		Assert.assertTrue("The execution time must be greater than 250ms", 250 <= result.getDurationMillis());
+		Assert.assertTrue("The execution time must be less than 5000ms", result.getDurationMillis() < 5000);
+		Assert.assertTrue("The single run min must be greater than 50ms", result.getSingleRunDurationHistogram().getMinValue() >= 50000000L);
+		
+		shutdown(runtime);
+	}
+	
+	@Test
+	public void testExecuteSyncActivities() throws Exception {
+		
+		TSPlan plan = new TSPlan();
+		plan.setName("sync plan");
+		plan.addActivity("first", createActivity("first", "second"));
+		plan.addActivity("second", createActivity("second", "finish"));
+		plan.setInitActivityName("first");
+		
+		TSPlanAsyncActivityRuntime runtime = new TSPlanAsyncActivityRuntime(Executors.newScheduledThreadPool(1), Executors.newFixedThreadPool(2));
+		TSPlanAsyncExecutor executor = new TSPlanAsyncExecutor(plan, "test-env", "test-exec", 20, TSPlanRecurrenceType.TIMES, 10, null, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, runtime);
+		TSPlanExecutorResult result = executor.call();
+		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+		Assert.assertEquals("The number of runs must be 200", 200, result.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of executions must be 200", 200, result.getActivityStatistics().get("first").getExecutions());
+		Assert.assertEquals("The number of executions must be 200", 200, result.getActivityStatistics().get("second").getExecutions());
+		
+		shutdown(runtime);
+	}
+	
+	@Test
+	public void testRecordPhases() throws Exception {
+		
+		// each execution records a phase into the statistics provided by the context
+		TSPlanActivity activity = new TimestampActivity() {
+			public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+				ctx.getActivityStatistics().recordPhase("phase", 1000);
+				return super.execute(ctx);
+			}
+		};
+		activity.setName("phased");
+		activity.setNextActivity("finish");
+		activity.initialize(null);
+		
+		TSPlan plan = new TSPlan();
+		plan.setName("phase plan");
+		plan.addActivity("phased", activity);
+		plan.setInitActivityName("phased");
+		plan.setWarmUpIterations(2);
+		
+		TSPlanAsyncActivityRuntime runtime = new TSPlanAsyncActivityRuntime(Executors.newScheduledThreadPool(2), Executors.newFixedThreadPool(2));
+		TSPlanAsyncExecutor executor = new TSPlanAsyncExecutor(plan, "test-env", "test-exec", 20, TSPlanRecurrenceType.TIMES, 10, null, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, runtime);
+		TSPlanExecutorResult result = executor.call();
+		
+		TSPlanActivityStatistics statistics = result.getActivityStatistics().get("phased");
+		Assert.assertSame("All iterations must record into the shared statistics", executor.getStatisticsRecorder().getActivityStatistics(0), statistics);
+		Assert.assertEquals("The number of executions must be 200", 200, statistics.getExecutions());
+		Assert.assertEquals("The phase must be recorded for each measured execution", 200, statistics.getPhaseHistogram("phase").getTotalCount());
+		Assert.assertEquals("The phase must be recorded for each warm-up execution", 20, executor.getStatisticsRecorder().getWarmUpActivityStatistics(0).getPhaseHistogram("phase").getTotalCount());
+		Assert.assertEquals("The number of warm-up runs must be 20", 20, result.getWarmUpDurationHistogram().getTotalCount());
+		
+		shutdown(runtime);
+	}
+	
+	@Test
+	public void testEnvironmentExecution() throws Exception {
+
+		TSPlan plan = loadPlan();
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(10));
+		
+		plan.setArrivalRate(100);
+		try {
+			new TSPlanExecEnvironment("test-env", plan, 5, TSPlanRecurrenceType.TIMES, 50, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.EVENT_LOOP);
+			Assert.fail("Arrival rates are not supported by the event loop backend");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		plan.setArrivalRate(0);
+		TSPlanExecEnvironment env = new TSPlanExecEnvironment("test-env", plan, 5, TSPlanRecurrenceType.TIMES, 50, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.EVENT_LOOP);
+		TSPlanExecEnvironmentResult result = env.execute();
+		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+		Assert.assertEquals("The number of runs must be 250", 250, result.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of executor results must be 1", 1, result.getExecutorIds().size());
+	}
+	
+	/**
+	 * Loads the test plan containing a single wait timer
+	 * @return
+	 * @throws Exception
+	 */
+	private TSPlan loadPlan() throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setArrivalRate(0);
+		return plan;
+	}
+	
+	/**
+	 * Creates a synchronous activity for the given name and next activity
+	 * @param name
+	 * @param nextActivity
+	 * @return
+	 * @throws Exception
+	 */
+	private TSPlanActivity createActivity(String name, String nextActivity) throws Exception {
+		TSPlanActivity activity = new TimestampActivity();
+		activity.setName(name);
+		activity.setNextActivity(nextActivity);
+		activity.initialize(null);
+		return activity;
+	}
+	
+	private void shutdown(TSPlanAsyncActivityRuntime runtime) {
+		runtime.getEventLoop().shutdown();
+		runtime.getBlockingExecutor().shutdown();
+	}
+}
@@ -21,7 +21,10 @@ package com.mnxfst.testing.plan.exec;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -30,11 +33,15 @@ import junit.framework.Assert;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
+import com.mnxfst.testing.activities.timer.TimestampActivity;
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
 import com.mnxfst.testing.exception.TSPlanInstantiationException;
 import com.mnxfst.testing.exception.TSPlanMissingException;
 import com.mnxfst.testing.plan.TSPlan;
 import com.mnxfst.testing.plan.TSPlanBuilder;
 import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
 
 /**
  * Test cases for {@link TSPlanExecEnvironment}
@@ -132,5 +139,162 @@ public class TestTSPlanExecEnvironment {
 		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());		
 	}
 	
+	@Test
+	public void testExecutorBackend() throws Exception {
+
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setArrivalRate(0);
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(1));
+		
+		try {
+			new TSPlanExecEnvironment("env-1", plan, 5, TSPlanRecurrenceType.TIMES, 2, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, null);
+			Assert.fail("Missing executor backend");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanExecEnvironment("env-1", plan, 5, TSPlanRecurrenceType.TIMES, 2, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.UNKNOWN);
+			Assert.fail("Unknown executor backend");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		TSPlanExecEnvironment env = new TSPlanExecEnvironment("env-1", plan, 5, TSPlanRecurrenceType.TIMES, 2, vars);
+		Assert.assertEquals("The executor backend must be PLATFORM_THREADS", TSPlanExecutorBackend.PLATFORM_THREADS, env.getExecutorBackend());
+		
+		boolean virtualThreadsSupported = true;
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch(NoSuchMethodException e) {
+			virtualThreadsSupported = false;
+		}
+		
+		try {
+			env = new TSPlanExecEnvironment("env-1", plan, 5, TSPlanRecurrenceType.TIMES, 100, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.VIRTUAL_THREADS);
+			if(!virtualThreadsSupported)
+				Assert.fail("Virtual threads are not supported by the running JVM");
+			
+			TSPlanExecEnvironmentResult result = env.execute();
+			Assert.assertEquals("The executor backend must be VIRTUAL_THREADS", TSPlanExecutorBackend.VIRTUAL_THREADS, env.getExecutorBackend());
+			Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+			Assert.assertEquals("The number of runs must be 500", 500, result.getSingleRunDurationHistogram().getTotalCount());
+		} catch(TSPlanInstantiationException e) {
+			if(virtualThreadsSupported)
+				throw e;
+		}
+	}
+	
+	@Test
+	public void testBlockingExecutor() throws Exception {
+
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setArrivalRate(0);
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(1));
+		
+		try {
+			new TSPlanExecEnvironment("env-1", plan, 5, TSPlanRecurrenceType.TIMES, 2, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.EVENT_LOOP, null, 0);
+			Assert.fail("Invalid max. number of blocking threads");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		ThreadPoolExecutor blockingExecutor = (ThreadPoolExecutor)TSPlanExecEnvironment.createBlockingExecutor(4);
+		Assert.assertEquals("The core pool size must be 4", 4, blockingExecutor.getCorePoolSize());
+		Assert.assertEquals("The max pool size must be 4", 4, blockingExecutor.getMaximumPoolSize());
+		Assert.assertTrue("Idle core threads must time out", blockingExecutor.allowsCoreThreadTimeOut());
+		blockingExecutor.shutdown();
+		
+		// 20 iterations in flight share 2 blocking threads 
+		TSPlanExecEnvironment env = new TSPlanExecEnvironment("env-1", plan, 5, TSPlanRecurrenceType.TIMES, 20, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.EVENT_LOOP, null, 2);
+		TSPlanExecEnvironmentResult result = env.execute();
+		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+		Assert.assertEquals("The number of runs must be 100", 100, result.getSingleRunDurationHistogram().getTotalCount());
+	}
+	
+	@Test
+	public void testFindCarrierPinningCandidates() throws Exception {
+		
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/sampleTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		Assert.assertTrue("The sample test plan must not contain synchronized activity methods", TSPlanExecEnvironment.findCarrierPinningCandidates(plan).isEmpty());
+		
+		TimestampActivity activity = new SynchronizedTimestampActivity();
+		activity.setName("syncTimestamp");
+		plan.addActivity("syncTimestamp", activity);
+		List<String> candidates = TSPlanExecEnvironment.findCarrierPinningCandidates(plan);
+		Assert.assertEquals("The number of candidates must be 1", 1, candidates.size());
+		Assert.assertEquals("The candidate must be the synchronized execute method", "syncTimestamp: " + SynchronizedTimestampActivity.class.getName() + "#execute", candidates.get(0));
+		
+		// synchronized blocks are found in the bytecode
+		activity = new SynchronizedBlockTimestampActivity();
+		activity.setName("syncBlockTimestamp");
+		plan.addActivity("syncBlockTimestamp", activity);
+		candidates = TSPlanExecEnvironment.findCarrierPinningCandidates(plan);
+		Assert.assertEquals("The number of candidates must be 2", 2, candidates.size());
+		Assert.assertTrue("The candidate must be the execute method containing the block", candidates.contains("syncBlockTimestamp: " + SynchronizedBlockTimestampActivity.class.getName() + "#execute"));
+		
+		// switches are skipped as a whole, thus their operands are not mistaken for monitorenter instructions
+		Assert.assertTrue("The switch must not be reported", TSPlanActivityPinningInspector.findSynchronizedBlocks(SwitchingTimestampActivity.class).isEmpty());
+		Assert.assertEquals("The synchronized block must be found", 1, TSPlanActivityPinningInspector.findSynchronizedBlocks(SynchronizedBlockTimestampActivity.class).size());
+	}
+	
+	/**
+	 * Activity with a synchronized execute method
+	 * @author mnxfst
+	 */
+	public static class SynchronizedTimestampActivity extends TimestampActivity {
+		public synchronized TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+			return super.execute(ctx);
+		}
+	}
+	
+	/**
+	 * Activity executing inside a synchronized block
+	 * @author mnxfst
+	 */
+	public static class SynchronizedBlockTimestampActivity extends TimestampActivity {
+		private final Object lock = new Object();
+		public TSPlanExecutionContext execute(TSPlanExecutionContext ctx) throws TSPlanActivityExecutionException {
+			synchronized(lock) {
+				return super.execute(ctx);
+			}
+		}
+	}
+	
+	/**
+	 * Activity containing table and lookup switches whose operands include the monitorenter opcode (0xc2 = 194) 
+	 * @author mnxfst
+	 */
+	public static class SwitchingTimestampActivity extends TimestampActivity {
+		public int select(int value) {
+			switch(value) {
+				case 194: return 1;
+				case 195: return 2;
+				case 196: return 3;
+				case 197: return 4;
+				default: return 0;
+			}
+		}
+		public int lookup(int value) {
+			switch(value) {
+				case -1040187392: return 1;
+				case 194: return 2;
+				case 49664: return 3;
+				default: return 0;
+			}
+		}
+		public long wide(long value) {
+			long a = value, b = a + 194L, c = b * 3;
+			for(int i = 0; i < 300; i++)
+				c = c + i;
+			return c;
+		}
+	}
+	
 	
 }
@@ -23,6 +23,8 @@ package com.mnxfst.testing.plan.exec;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 
@@ -73,4 +75,117 @@ public class TestTSPlanExecutor {
 		
 	}
 	
+	@Test
+	public void testPacing() throws Exception {
+		
+		Map<String, Serializable> addVars = new HashMap<String, Serializable>();
+		addVars.put("waitTime", Long.valueOf(30));
+		
+		// each run takes approx. 30ms but is intended to start every 10ms, thus the delay accumulates in the corrected distribution only
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setPacing(10);
+		TSPlanExecutorResult result = new TSPlanExecutor(plan, "junit", "exec-1", 10, TSPlanRecurrenceType.TIMES, addVars).call();
+		Assert.assertEquals("The number of runs must be 10", 10, result.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of corrected runs must be 10", 10, result.getCorrectedSingleRunDurationHistogram().getTotalCount());
+		Assert.assertTrue("The uncorrected max must be less than 100ms", result.getSingleRunDurationHistogram().getMaxValue() < 100000000L);
+		Assert.assertTrue("The corrected max must be greater than 150ms", result.getCorrectedSingleRunDurationHistogram().getMaxValue() > 150000000L);
+		Assert.assertNotNull("The statistics for activity 'waitTimer' must exist", result.getActivityStatistics().get("waitTimer"));
+		Assert.assertEquals("The activity 'waitTimer' must be executed 10 times", 10, result.getActivityStatistics().get("waitTimer").getExecutions());
+		Assert.assertEquals("The activity 'waitTimer' must not fail", 0, result.getActivityStatistics().get("waitTimer").getErrors());
+		
+		// each run takes approx. 5ms and is intended to start every 20ms, thus the executor waits between runs and nothing needs to be corrected
+		addVars.put("waitTime", Long.valueOf(5));
+		doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setPacing(20);
+		result = new TSPlanExecutor(plan, "junit", "exec-1", 10, TSPlanRecurrenceType.TIMES, addVars).call();
+		Assert.assertTrue("The execution time must be greater than 180ms", 180 <= result.getDurationMillis());
+		Assert.assertTrue("The corrected max must be less than 20ms", result.getCorrectedSingleRunDurationHistogram().getMaxValue() < 20000000L);
+	}
+	
+	@Test
+	public void testInterrupt() throws Exception {
+		
+		// parking returns immediately for interrupted threads, thus waiting must not spin until the deadline
+		long start = System.nanoTime();
+		Thread.currentThread().interrupt();
+		try {
+			Assert.assertFalse("The wait must be aborted", TSPlanExecutor.waitUntil(start + TimeUnit.SECONDS.toNanos(5)));
+			Assert.assertTrue("The wait must be aborted right away", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		} finally {
+			Thread.interrupted();
+		}
+		Assert.assertTrue("The deadline must be reached", TSPlanExecutor.waitUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10)));
+		
+		// runs are intended to start every 5s, thus the executor waits for the second run when being interrupted
+		Map<String, Serializable> addVars = new HashMap<String, Serializable>();
+		addVars.put("waitTime", Long.valueOf(5));
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setPacing(5000);
+		TSPlanExecutor executor = new TSPlanExecutor(plan, "junit", "exec-1", 10, TSPlanRecurrenceType.TIMES, addVars);
+		FutureTask<TSPlanExecutorResult> task = new FutureTask<TSPlanExecutorResult>(executor);
+		new Thread(task).start();
+		Thread.sleep(500);
+		
+		start = System.nanoTime();
+		executor.interrupt();
+		TSPlanExecutorResult result = task.get(5, TimeUnit.SECONDS);
+		Assert.assertTrue("The executor must stop right away", System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+		Assert.assertEquals("The executor must stop after the first run", 1, result.getSingleRunDurationHistogram().getTotalCount());
+	}
+	
+	@Test
+	public void testTransitionExpressions() throws Exception {
+		
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/expressionTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		Assert.assertNotNull("The transition of activity 'compute' must be compiled", plan.getCompiledPlan().getTransition(plan.getCompiledPlan().getActivityIndex("compute")));
+		Assert.assertNull("The activity 'large' must not have a transition", plan.getCompiledPlan().getTransition(plan.getCompiledPlan().getActivityIndex("large")));
+		
+		Map<String, Serializable> addVars = new HashMap<String, Serializable>();
+		addVars.put("limit", Long.valueOf(7));
+		TSPlanExecutorResult result = new TSPlanExecutor(plan, "junit", "exec-1", 5, TSPlanRecurrenceType.TIMES, addVars).call();
+		Assert.assertEquals("The activity 'compute' must be executed 5 times", 5, result.getActivityStatistics().get("compute").getExecutions());
+		Assert.assertEquals("The activity 'compute' must not fail", 0, result.getActivityStatistics().get("compute").getErrors());
+		Assert.assertEquals("The activity 'large' must be executed 5 times", 5, result.getActivityStatistics().get("large").getExecutions());
+		Assert.assertEquals("The activity 'small' must not be executed", 0, result.getActivityStatistics().get("small").getExecutions());
+		
+		addVars.put("limit", Long.valueOf(3));
+		result = new TSPlanExecutor(plan, "junit", "exec-1", 5, TSPlanRecurrenceType.TIMES, addVars).call();
+		Assert.assertEquals("The activity 'large' must not be executed", 0, result.getActivityStatistics().get("large").getExecutions());
+		Assert.assertEquals("The activity 'small' must be executed 5 times", 5, result.getActivityStatistics().get("small").getExecutions());
+	}
+	
+	@Test
+	public void testWarmUp() throws Exception {
+		
+		Assert.assertTrue("Warm-up must be active until the iterations are completed", TSPlanExecutor.isWarmUp(5, 0, 4, 1000));
+		Assert.assertTrue("Warm-up must be active until the duration elapsed", TSPlanExecutor.isWarmUp(5, 100, 5, 99));
+		Assert.assertFalse("Warm-up must be finished", TSPlanExecutor.isWarmUp(5, 100, 5, 100));
+		Assert.assertFalse("No warm-up configured", TSPlanExecutor.isWarmUp(0, 0, 0, 0));
+		
+		Map<String, Serializable> addVars = new HashMap<String, Serializable>();
+		addVars.put("waitTime", Long.valueOf(2));
+		
+		// the warm-up runs must neither be counted as recurrences nor show up in the measured distribution or activity statistics
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse("src/test/resources/arrivalRateTestPlan.xml");		
+		TSPlan plan = TSPlanBuilder.getInstance().buildPlan(doc);
+		plan.setWarmUpIterations(5);
+		TSPlanExecutorResult result = new TSPlanExecutor(plan, "junit", "exec-1", 10, TSPlanRecurrenceType.TIMES, addVars).call();
+		Assert.assertEquals("The number of measured runs must be 10", 10, result.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of corrected runs must be 10", 10, result.getCorrectedSingleRunDurationHistogram().getTotalCount());
+		Assert.assertNotNull("The warm-up histogram must not be null", result.getWarmUpDurationHistogram());
+		Assert.assertEquals("The number of warm-up runs must be 5", 5, result.getWarmUpDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of warm-up errors must be 0", 0, result.getWarmUpErrors());
+		Assert.assertEquals("The activity 'waitTimer' must be measured 10 times", 10, result.getActivityStatistics().get("waitTimer").getExecutions());
+		
+		// without warm-up no warm-up distribution is provided
+		plan.setWarmUpIterations(0);
+		result = new TSPlanExecutor(plan, "junit", "exec-1", 3, TSPlanRecurrenceType.TIMES, addVars).call();
+		Assert.assertNull("The warm-up histogram must be null", result.getWarmUpDurationHistogram());
+		Assert.assertEquals("The number of measured runs must be 3", 3, result.getSingleRunDurationHistogram().getTotalCount());
+	}
+	
 }
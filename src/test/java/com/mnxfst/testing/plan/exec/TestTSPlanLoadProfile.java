@@ -0,0 +1,155 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+
+/**
+ * Test cases for {@link TSPlanLoadProfile}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanLoadProfile {
+
+	@Test
+	public void testAddStage() throws Exception {
+		
+		TSPlanLoadProfile profile = new TSPlanLoadProfile();
+		
+		try {
+			profile.addStage("invalid", TSPlanLoadStageType.UNKNOWN, 10, 1000);
+			Assert.fail("Unknown stage type");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		try {
+			profile.addStage("invalid", TSPlanLoadStageType.STEP, -1, 1000);
+			Assert.fail("Invalid number of executors");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		try {
+			profile.addStage("invalid", TSPlanLoadStageType.STEP, 10, 0);
+			Assert.fail("Invalid duration");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		profile.addStage("rampUp", TSPlanLoadStageType.RAMP, 100, 1000);
+		try {
+			profile.addStage("rampUp", TSPlanLoadStageType.STEP, 10, 1000);
+			Assert.fail("Duplicate stage name");
+		} catch(TSPlanConfigurationFormatException e) {
+			//
+		}
+		
+		TSPlanLoadStage stage = profile.addStage(null, TSPlanLoadStageType.STEP, 50, 2000);
+		Assert.assertEquals("The stage name must be derived from type and position", "step-1", stage.getName());
+		Assert.assertEquals("The step must start at the level reached by the ramp", 100, stage.getStartExecutors());
+		Assert.assertEquals("The step must start after the ramp", 1000, stage.getStartOffsetMillis());
+		Assert.assertEquals("The profile duration must be 3000", 3000, profile.getDurationMillis());
+		Assert.assertEquals("The max number of executors must be 100", 100, profile.getMaxExecutors());
+	}
+	
+	@Test
+	public void testActiveExecutors() throws Exception {
+		
+		TSPlanLoadProfile profile = TSPlanLoadProfile.parse("ramp:100:1000, step:50:1000, spike:200:500:peak, ramp:0:1000");
+		Assert.assertEquals("The profile must contain 4 stages", 4, profile.getStages().size());
+		Assert.assertEquals("The profile duration must be 3500", 3500, profile.getDurationMillis());
+		Assert.assertEquals("The max number of executors must be 200", 200, profile.getMaxExecutors());
+		Assert.assertNotNull("The spike must be named 'peak'", profile.getStage("peak"));
+		
+		// linear ramp from 0 to 100
+		Assert.assertEquals("No executor must be active at the start", 0, profile.getActiveExecutors(0));
+		Assert.assertEquals("25 executors must be active", 25, profile.getActiveExecutors(250));
+		Assert.assertEquals("50 executors must be active", 50, profile.getActiveExecutors(500));
+		Assert.assertEquals("99 executors must be active", 99, profile.getActiveExecutors(990));
+		
+		// step
+		Assert.assertEquals("The step must be active", 1, profile.getStageIndex(1000));
+		Assert.assertEquals("50 executors must be active", 50, profile.getActiveExecutors(1000));
+		Assert.assertEquals("50 executors must be active", 50, profile.getActiveExecutors(1999));
+		
+		// spike
+		Assert.assertEquals("The spike must be active", 2, profile.getStageIndex(2000));
+		Assert.assertEquals("200 executors must be active", 200, profile.getActiveExecutors(2250));
+		
+		// the ramp down starts at the level active before the spike
+		Assert.assertEquals("The ramp must start at the level before the spike", 50, profile.getStages().get(3).getStartExecutors());
+		Assert.assertEquals("25 executors must be active", 25, profile.getActiveExecutors(3000));
+		
+		// completed
+		Assert.assertEquals("The profile must be completed", -1, profile.getStageIndex(3500));
+		Assert.assertEquals("No executor must be active after completion", 0, profile.getActiveExecutors(3500));
+	}
+	
+	@Test
+	public void testNextChange() throws Exception {
+		
+		TSPlanLoadProfile profile = TSPlanLoadProfile.parse("ramp:100:1000, step:50:1000, spike:200:500:peak, ramp:0:1000");
+		
+		// the ramp adds an executor every 10 millis
+		Assert.assertEquals("The first executor must be added after 5 millis", 5, profile.getNextChangeMillis(0));
+		Assert.assertEquals("The second executor must be added after 15 millis", 15, profile.getNextChangeMillis(5));
+		Assert.assertEquals("The second executor must be added after 15 millis", 15, profile.getNextChangeMillis(10));
+		Assert.assertEquals("The step must start after 1000 millis", 1000, profile.getNextChangeMillis(995));
+		
+		// steps and spikes change at their boundaries only
+		Assert.assertEquals("The spike must start after 2000 millis", 2000, profile.getNextChangeMillis(1000));
+		Assert.assertEquals("The ramp must start after 2500 millis", 2500, profile.getNextChangeMillis(2100));
+		
+		// the ramp down removes an executor every 20 millis
+		Assert.assertEquals("The first executor must be removed after 2511 millis", 2511, profile.getNextChangeMillis(2500));
+		Assert.assertEquals(49, profile.getActiveExecutors(2511));
+		Assert.assertEquals(50, profile.getActiveExecutors(2510));
+		
+		// completed
+		Assert.assertEquals("The profile must end after 3500 millis", 3500, profile.getNextChangeMillis(3499));
+		Assert.assertEquals("The profile must be completed", -1, profile.getNextChangeMillis(3500));
+	}
+	
+	@Test
+	public void testParse() throws Exception {
+		
+		String[] invalidProfiles = new String[]{null, "", "ramp:10", "ramp:10:1000:name:more", "jump:10:1000", "ramp:ten:1000", "ramp:10:1s", "step:10:1000:a,step:20:1000:a"};
+		for(String invalidProfile : invalidProfiles) {
+			try {
+				TSPlanLoadProfile.parse(invalidProfile);
+				Assert.fail("Invalid profile: " + invalidProfile);
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+		}
+		
+		TSPlanLoadProfile profile = TSPlanLoadProfile.parse("STEP:10:1000");
+		Assert.assertEquals("The profile must contain 1 stage", 1, profile.getStages().size());
+		Assert.assertEquals("The stage type must be STEP", TSPlanLoadStageType.STEP, profile.getStages().get(0).getType());
+		Assert.assertEquals("The stage name must be step-0", "step-0", profile.getStages().get(0).getName());
+		Assert.assertEquals("10 executors must be active from the start", 10, profile.getActiveExecutors(0));
+	}
+	
+}
@@ -0,0 +1,198 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.exec;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.plan.TSPlan;
+import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
+import com.mnxfst.testing.plan.TSPlanExecutorResult;
+import com.mnxfst.testing.plan.stats.TSLatencyHistogram;
+import com.mnxfst.testing.plan.stats.TSPlanStageStatistics;
+
+/**
+ * Test cases for {@link TSPlanLoadProfileScheduler}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanLoadProfileScheduler {
+
+	@Test
+	public void testConstructor() throws Exception {
+		
+		TSPlanLoadProfile profile = TSPlanLoadProfile.parse("step:2:100");
+		List<TSPlanExecutor> executors = createExecutors(loadPlan(), 2, 1);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		
+		try {
+			new TSPlanLoadProfileScheduler(null, 0, executors, pool);
+			Assert.fail("Missing load profile");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanLoadProfileScheduler(TSPlanLoadProfile.parse("step:0:100"), 0, executors, pool);
+			Assert.fail("No executor activated by the load profile");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanLoadProfileScheduler(TSPlanLoadProfile.parse("step:3:100"), 0, executors, pool);
+			Assert.fail("Insufficient executors");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		try {
+			new TSPlanLoadProfileScheduler(profile, 0, executors, null);
+			Assert.fail("Missing worker pool");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+		
+		pool.shutdown();
+	}
+	
+	@Test
+	public void testExecute() throws Exception {
+		
+		// one executor for the whole profile, a second one during the step only 
+		TSPlanLoadProfile profile = TSPlanLoadProfile.parse("step:1:200:single,step:2:200:double,step:1:200:singleAgain");
+		List<TSPlanExecutor> executors = createExecutors(loadPlan(), 2, 5);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		
+		TSPlanLoadProfileScheduler scheduler = new TSPlanLoadProfileScheduler(profile, 0, executors, pool);
+		long start = System.currentTimeMillis();
+		List<TSPlanExecutorResult> results = scheduler.execute();
+		long duration = System.currentTimeMillis() - start;
+		pool.shutdown();
+		
+		Assert.assertEquals("The number of results must be 2", 2, results.size());
+		Assert.assertTrue("The execution must follow the profile duration", duration >= 600);
+		
+		Map<String, TSPlanStageStatistics> first = results.get(0).getStageStatistics();
+		Map<String, TSPlanStageStatistics> second = results.get(1).getStageStatistics();
+		Assert.assertEquals("The stages must be reported in order", "single", first.keySet().iterator().next());
+		Assert.assertTrue("The first executor must run in all stages", first.get("single").getRuns() > 0 && first.get("double").getRuns() > 0 && first.get("singleAgain").getRuns() > 0);
+		Assert.assertEquals("The second executor must not run in the first stage", 0, second.get("single").getRuns());
+		Assert.assertTrue("The second executor must run in the second stage", second.get("double").getRuns() > 0);
+		
+		// a run is tagged with the stage it was started in, thus the last stage of the second executor may hold at most a single run
+		Assert.assertTrue("The second executor must stop after the second stage", second.get("singleAgain").getRuns() <= 1);
+		
+		long stageRuns = 0;
+		for(TSPlanStageStatistics statistics : second.values())
+			stageRuns = stageRuns + statistics.getRuns();
+		Assert.assertEquals("Each run must be tagged with a stage", results.get(1).getSingleRunDurationHistogram().getTotalCount(), stageRuns);
+	}
+	
+	@Test
+	public void testAwaitProfileChange() throws Exception {
+		
+		ExecutorService pool = Executors.newFixedThreadPool(1);
+		final TSPlanLoadProfileScheduler scheduler = new TSPlanLoadProfileScheduler(TSPlanLoadProfile.parse("step:1:100"), 0, createExecutors(loadPlan(), 1, 1), pool);
+		pool.shutdown();
+		
+		// a change signalled after reading the generation must not be missed
+		long generation = scheduler.getProfileGeneration();
+		scheduler.signalProfileChange();
+		long start = System.currentTimeMillis();
+		scheduler.awaitProfileChange(generation, Long.MAX_VALUE);
+		Assert.assertTrue("A signalled change must not block", System.currentTimeMillis() - start < 1000);
+		
+		// the timeout applies if nothing changes
+		start = System.currentTimeMillis();
+		scheduler.awaitProfileChange(scheduler.getProfileGeneration(), 50 * TSPlanExecutor.NANOS_PER_MILLI);
+		Assert.assertTrue("The timeout must apply", System.currentTimeMillis() - start >= 49);
+		
+		// an interruption releases waiting executors
+		Thread interrupter = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch(InterruptedException e) {
+					//
+				}
+				scheduler.interrupt();
+			}
+		};
+		start = System.currentTimeMillis();
+		interrupter.start();
+		scheduler.awaitProfileChange(scheduler.getProfileGeneration(), Long.MAX_VALUE);
+		Assert.assertTrue("The interruption must release the waiting thread", System.currentTimeMillis() - start < 1000);
+		interrupter.join();
+	}
+	
+	@Test
+	public void testEnvironmentExecution() throws Exception {
+		
+		Map<String, Serializable> vars = new HashMap<String, Serializable>();
+		vars.put("waitTime", Long.valueOf(5));
+		
+		TSPlan plan = loadPlan();
+		Assert.assertNotNull("The load profile must not be null", plan.getLoadProfile());
+		Assert.assertEquals("The load profile must contain 3 stages", 3, plan.getLoadProfile().getStages().size());
+		Assert.assertEquals("The load profile must peak at 6 executors", 6, plan.getLoadProfile().getMaxExecutors());
+		
+		// the profile peak overrides the number of executors
+		TSPlanExecEnvironment env = new TSPlanExecEnvironment("test-env", plan, 1, TSPlanRecurrenceType.TIMES, 1, vars);
+		TSPlanExecEnvironmentResult result = env.execute();
+		
+		Assert.assertNotNull("The result must not be null", result);
+		Assert.assertEquals("The number of executors must be 6", 6, result.getExecutorIds().size());
+		Assert.assertEquals("The result must contain 3 stages", 3, result.getStageStatistics().size());
+		Assert.assertTrue("Runs must have been recorded during the spike", result.getStageStatistics().get("peak").getRuns() > 0);
+		Assert.assertEquals("The number of errors must be 0", 0, result.getErrors());
+		
+		// a profile passed along with the request overrides the one attached to the plan
+		env = new TSPlanExecEnvironment("test-env", plan, 1, TSPlanRecurrenceType.TIMES, 1, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.PLATFORM_THREADS, TSPlanLoadProfile.parse("step:2:100"));
+		Assert.assertEquals("The load profile must contain 1 stage", 1, env.getLoadProfile().getStages().size());
+		result = env.execute();
+		Assert.assertEquals("The number of executors must be 2", 2, result.getExecutorIds().size());
+		
+		try {
+			new TSPlanExecEnvironment("test-env", plan, 1, TSPlanRecurrenceType.TIMES, 1, vars, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSPlanExecutorBackend.EVENT_LOOP);
+			Assert.fail("Load profiles are not supported by the event loop backend");
+		} catch(TSPlanInstantiationException e) {
+			//
+		}
+	}
+	
+	private TSPlan loadPlan() throws Exception {
+		return TSPlanExecutorTestHelper.loadPlan("src/test/resources/loadProfileTestPlan.xml");
+	}
+	
+	private List<TSPlanExecutor> createExecutors(TSPlan plan, int numOfExecutors, long waitTime) throws Exception {
+		return TSPlanExecutorTestHelper.createExecutors(plan, numOfExecutors, 1, TSPlanRecurrenceType.TIMES, waitTime);
+	}
+	
+}
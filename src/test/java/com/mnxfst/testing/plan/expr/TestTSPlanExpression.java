@@ -0,0 +1,124 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.expr;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSVariableEvaluationFailedException;
+import com.mnxfst.testing.plan.ctx.ExecutionContextValueType;
+import com.mnxfst.testing.plan.ctx.TSPlanContextSlotTable;
+import com.mnxfst.testing.plan.ctx.TSPlanContextVariable;
+import com.mnxfst.testing.plan.ctx.TSPlanExecutionContext;
+
+/**
+ * Test case for {@link TSPlanExpression}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanExpression {
+
+	@Test
+	public void testCompileInvalidExpression() {
+		
+		String[] invalidExpressions = new String[]{null, "", " ", "1 +", "(1 + 2", "1 2", "'unclosed", "${run.a", "true ? 1", "unknown", "1 / 0", "-'a'"};
+		for(int i = 0; i < invalidExpressions.length; i++) {
+			try {
+				TSPlanExpression.compile(invalidExpressions[i]);
+				Assert.fail("Invalid expression: " + invalidExpressions[i]);
+			} catch(TSPlanConfigurationFormatException e) {
+				//
+			}
+		}
+	}
+	
+	@Test
+	public void testConstantExpressions() throws TSPlanConfigurationFormatException, TSVariableEvaluationFailedException {
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext();
+		
+		Assert.assertEquals("Operator precedence must be respected", Long.valueOf(7), TSPlanExpression.compile("1 + 2 * 3").evaluate(ctx));
+		Assert.assertEquals("Parentheses must be respected", Long.valueOf(9), TSPlanExpression.compile("(1 + 2) * 3").evaluate(ctx));
+		Assert.assertEquals("Integral division must be used", Long.valueOf(3), TSPlanExpression.compile("7 / 2").evaluate(ctx));
+		Assert.assertEquals("Modulo must be computed", Long.valueOf(1), TSPlanExpression.compile("7 % 2").evaluate(ctx));
+		Assert.assertEquals("Floating point division must be used", Double.valueOf(3.5), TSPlanExpression.compile("7.0 / 2").evaluate(ctx));
+		Assert.assertEquals("Negation must be applied", Long.valueOf(-4), TSPlanExpression.compile("-(2 + 2)").evaluate(ctx));
+		Assert.assertEquals("Strings must be concatenated", "id-12", TSPlanExpression.compile("'id-' + 1 + 2").evaluate(ctx));
+		Assert.assertEquals("Escapes must be resolved", "it's", TSPlanExpression.compile("'it\\'s'").evaluate(ctx));
+		Assert.assertEquals("Comparison must be true", Boolean.TRUE, TSPlanExpression.compile("2 >= 2.0 && 'a' < 'b'").evaluate(ctx));
+		Assert.assertEquals("Equality must be false", Boolean.FALSE, TSPlanExpression.compile("1 == 2 || !true").evaluate(ctx));
+		Assert.assertEquals("Conditional must select the second value", "b", TSPlanExpression.compile("1 > 2 ? 'a' : 'b'").evaluate(ctx));
+		Assert.assertNull("Null must be returned", TSPlanExpression.compile("null").evaluate(ctx));
+		Assert.assertTrue("The expression must be folded into a constant", TSPlanExpression.compile("(1 + 2) * 3 > 4 ? 'a' : 'b'").isConstant());
+	}
+	
+	@Test
+	public void testVariables() throws TSPlanConfigurationFormatException, TSVariableEvaluationFailedException {
+		
+		TSPlanContextSlotTable slotTable = new TSPlanContextSlotTable();
+		TSPlanExpression expression = TSPlanExpression.compile("${run.remaining} > 0 ? 'request' : ${global.final}");
+		Assert.assertFalse("The expression must not be constant", expression.isConstant());
+		Assert.assertEquals("The expression must reference 2 variables", 2, expression.getVariablePatterns().length);
+		expression.bind(slotTable);
+		
+		TSPlanContextVariable remaining = slotTable.lookupVariable("remaining", ExecutionContextValueType.RUN);
+		Assert.assertNotNull("The variable must be registered", remaining);
+		Assert.assertNotNull("The variable must be registered", slotTable.lookupVariable("final", ExecutionContextValueType.GLOBAL));
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext(slotTable);
+		ctx.addLongContextValue(remaining, 2);
+		ctx.addContextValue("final", "finish", ExecutionContextValueType.GLOBAL);
+		Assert.assertEquals("The expression must select the request", "request", expression.evaluate(ctx));
+		ctx.addLongContextValue(remaining, 0);
+		Assert.assertEquals("The expression must select the final value", "finish", expression.evaluate(ctx));
+		
+		// contexts using another slot table are evaluated by name
+		TSPlanExecutionContext foreignCtx = new TSPlanExecutionContext();
+		foreignCtx.addContextValue("remaining", Integer.valueOf(5), ExecutionContextValueType.RUN);
+		Assert.assertEquals("The expression must select the request", "request", expression.evaluate(foreignCtx));
+		
+		TSPlanExpression arithmetic = TSPlanExpression.compile("${run.counter} * 2 + 1");
+		arithmetic.bind(slotTable);
+		ctx.addLongContextValue(slotTable.lookupVariable("counter", ExecutionContextValueType.RUN), 20);
+		Assert.assertEquals("The value must be computed", Long.valueOf(41), arithmetic.evaluate(ctx));
+		ctx.addDoubleContextValue(slotTable.lookupVariable("counter", ExecutionContextValueType.RUN), 0.25);
+		Assert.assertEquals("The value must be computed", Double.valueOf(1.5), arithmetic.evaluate(ctx));
+	}
+	
+	@Test
+	public void testEvaluationFailures() throws TSPlanConfigurationFormatException {
+		
+		TSPlanExecutionContext ctx = new TSPlanExecutionContext();
+		ctx.addContextValue("zero", Long.valueOf(0), ExecutionContextValueType.RUN);
+		ctx.addContextValue("text", "abc", ExecutionContextValueType.RUN);
+		
+		String[] failingExpressions = new String[]{"1 / ${run.zero}", "${run.text} * 2", "${run.missing} > 1", "${run.text} ? 1 : 2"};
+		for(int i = 0; i < failingExpressions.length; i++) {
+			try {
+				TSPlanExpression.compile(failingExpressions[i]).evaluate(ctx);
+				Assert.fail("Evaluation must fail: " + failingExpressions[i]);
+			} catch(TSVariableEvaluationFailedException e) {
+				//
+			}
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package com.mnxfst.testing.plan.stats;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.mnxfst.testing.exception.TSLatencyHistogramEncodingException;
+
+/**
+ * Test cases for {@link TSLatencyHistogram}
+ * @author mnxfst
+ */
+public class TestTSLatencyHistogram {
+
+	@Test
+	public void testConstructor() {
+		
+		try {
+			new TSLatencyHistogram(1, 2);
+			Assert.fail("Invalid highest trackable value");
+		} catch(IllegalArgumentException e) {
+			//
+		}
+		
+		try {
+			new TSLatencyHistogram(-1);
+			Assert.fail("Invalid number of significant digits");
+		} catch(IllegalArgumentException e) {
+			//
+		}
+		
+		try {
+			new TSLatencyHistogram(TSLatencyHistogram.MAX_SIGNIFICANT_DIGITS + 1);
+			Assert.fail("Invalid number of significant digits");
+		} catch(IllegalArgumentException e) {
+			//
+		}
+		
+		TSLatencyHistogram histogram = new TSLatencyHistogram();
+		Assert.assertEquals("The number of significant digits must be " + TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, TSLatencyHistogram.DEFAULT_SIGNIFICANT_DIGITS, histogram.getSignificantDigits());
+		Assert.assertEquals("The highest trackable value must be " + TSLatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, TSLatencyHistogram.DEFAULT_HIGHEST_TRACKABLE_VALUE, histogram.getHighestTrackableValue());
+		Assert.assertEquals("The total count must be 0", 0, histogram.getTotalCount());
+		Assert.assertEquals("The percentile must be 0", 0, histogram.getValueAtPercentile(99.0));
+		Assert.assertEquals("The min value must be 0", 0, histogram.getMinValue());
+		Assert.assertEquals("The mean must be 0", 0.0, histogram.getMean());
+	}
+	
+	@Test
+	public void testRecordValueAndPercentiles() {
+		
+		TSLatencyHistogram histogram = new TSLatencyHistogram(3);
+		for(long i = 1; i <= 10000; i++)
+			histogram.recordValue(i * 1000);
+		
+		Assert.assertEquals("The total count must be 10000", 10000, histogram.getTotalCount());
+		Assert.assertEquals("The min value must be 1000", 1000, histogram.getMinValue());
+		Assert.assertEquals("The max value must be 10000000", 10000000, histogram.getMaxValue());
+		Assert.assertEquals("The mean must be 5000500", 5000500.0, histogram.getMean(), 0.001);
+		
+		assertWithinPrecision(5000000, histogram.getValueAtPercentile(50.0), 3);
+		assertWithinPrecision(9000000, histogram.getValueAtPercentile(90.0), 3);
+		assertWithinPrecision(9900000, histogram.getValueAtPercentile(99.0), 3);
+		assertWithinPrecision(9990000, histogram.getValueAtPercentile(99.9), 3);
+		Assert.assertEquals("The 100th percentile must equal the max value", 10000000, histogram.getValueAtPercentile(100.0));
+		Assert.assertTrue("The 0th percentile must be close to the min value", histogram.getValueAtPercentile(0.0) >= 1000 && histogram.getValueAtPercentile(0.0) <= 1001);
+	}
+	
+	@Test
+	public void testEquivalentValues() {
+		
+		TSLatencyHistogram histogram = new TSLatencyHistogram(2);
+		for(long value = 0; value < 100000000L; value = value * 3 + 7) {
+			long lowest = histogram.lowestEquivalentValue(value);
+			long highest = histogram.highestEquivalentValue(value);
+			Assert.assertTrue("The lowest equivalent value must not exceed the value", lowest <= value);
+			Assert.assertTrue("The highest equivalent value must not be less than the value", highest >= value);
+			Assert.assertTrue("The equivalent range must be within 1% of the value", (highest - lowest) <= Math.max(1, value / 100));
+		}
+	}
+	
+	@Test
+	public void testClampingAndReset() {
+		
+		TSLatencyHistogram histogram = new TSLatencyHistogram(1000000, 2);
+		histogram.recordValue(-10);
+		histogram.recordValue(5000000);
+		
+		Assert.assertEquals("The total count must be 2", 2, histogram.getTotalCount());
+		Assert.assertEquals("The min value must be 0", 0, histogram.getMinValue());
+		Assert.assertEquals("The max value must be clamped to 1000000", 1000000, histogram.getMaxValue());
+		
+		histogram.reset();
+		Assert.assertEquals("The total count must be 0", 0, histogram.getTotalCount());
+		Assert.assertEquals("The max value must be 0", 0, histogram.getMaxValue());
+		Assert.assertEquals("The percentile must be 0", 0, histogram.getValueAtPercentile(50.0));
+	}
+	
+	@Test
+	public void testFixedMemory() {
+		
+		TSLatencyHistogram histogram = new TSLatencyHistogram();
+		int countsLength = histogram.getCountsLength();
+		Assert.assertTrue("The number of count slots must be small", countsLength < 5000);
+		
+		for(long i = 0; i < 1000000; i++)
+			histogram.recordValue(i * 3571);
+		Assert.assertEquals("The number of count slots must not change", countsLength, histogram.getCountsLength());
+	}
+	
+	@Test
+	public void testAdd() {
+		
+		TSLatencyHistogram combined = new TSLatencyHistogram();
+		TSLatencyHistogram first = new TSLatencyHistogram();
+		TSLatencyHistogram second = new TSLatencyHistogram();
+		
+		for(long i = 1; i <= 5000; i++) {
+			first.recordValue(i * 1000);
+			combined.recordValue(i * 1000);
+		}
+		for(long i = 1; i <= 500; i++) {
+			second.recordValue(i * 1000000);
+			combined.recordValue(i * 1000000);
+		}
+		
+		TSLatencyHistogram merged = first.copy();
+		merged.add(second);
+		merged.add(null);
+		merged.add(new TSLatencyHistogram());
+		
+		Assert.assertEquals("The copy must not be modified by the original", 5000, first.copy().getTotalCount());
+		Assert.assertEquals("The total count must be 5500", combined.getTotalCount(), merged.getTotalCount());
+		Assert.assertEquals("The min value must be equal", combined.getMinValue(), merged.getMinValue());
+		Assert.assertEquals("The max value must be equal", combined.getMaxValue(), merged.getMaxValue());
+		Assert.assertEquals("The mean must be equal", combined.getMean(), merged.getMean(), 0.001);
+		for(double percentile : new double[]{50.0, 90.0, 99.0, 99.9, 99.99})
+			Assert.assertEquals("The percentile " + percentile + " must be equal", combined.getValueAtPercentile(percentile), merged.getValueAtPercentile(percentile));
+	}
+	
+	@Test
+	public void testAddDifferentLayout() {
+		
+		TSLatencyHistogram precise = new TSLatencyHistogram(3);
+		for(long i = 1; i <= 10000; i++)
+			precise.recordValue(i * 1000);
+		
+		TSLatencyHistogram merged = new TSLatencyHistogram(2);
+		merged.add(precise);
+		
+		Assert.assertEquals("The total count must be 10000", 10000, merged.getTotalCount());
+		Assert.assertEquals("The max value must be 10000000", 10000000, merged.getMaxValue());
+		assertWithinPrecision(5000000, merged.getValueAtPercentile(50.0), 2);
+		assertWithinPrecision(9900000, merged.getValueAtPercentile(99.0), 2);
+	}
+	
+	@Test
+	public void testEncodeDecode() throws Exception {
+		
+		try {
+			TSLatencyHistogram.decodeFromCompressedString(null);
+			Assert.fail("No encoded histogram provided");
+		} catch(TSLatencyHistogramEncodingException e) {
+			//
+		}
+		
+		try {
+			TSLatencyHistogram.decodeFromCompressedString("bm90IGEgaGlzdG9ncmFt");
+			Assert.fail("Invalid encoded histogram provided");
+		} catch(TSLatencyHistogramEncodingException e) {
+			//
+		}
+		
+		TSLatencyHistogram histogram = new TSLatencyHistogram();
+		for(long i = 1; i <= 100000; i++)
+			histogram.recordValue(i * 7919);
+		
+		String encoded = histogram.encodeToCompressedString();
+		Assert.assertTrue("The encoded histogram must be compact", encoded.length() < 8 * histogram.getCountsLength());
+		
+		TSLatencyHistogram decoded = TSLatencyHistogram.decodeFromCompressedString(encoded);
+		Assert.assertEquals("The number of significant digits must be equal", histogram.getSignificantDigits(), decoded.getSignificantDigits());
+		Assert.assertEquals("The highest trackable value must be equal", histogram.getHighestTrackableValue(), decoded.getHighestTrackableValue());
+		Assert.assertEquals("The total count must be equal", histogram.getTotalCount(), decoded.getTotalCount());
+		Assert.assertEquals("The min value must be equal", histogram.getMinValue(), decoded.getMinValue());
+		Assert.assertEquals("The max value must be equal", histogram.getMaxValue(), decoded.getMaxValue());
+		Assert.assertEquals("The mean must be equal", histogram.getMean(), decoded.getMean(), 0.001);
+		for(double percentile : new double[]{50.0, 90.0, 99.0, 99.9, 99.99})
+			Assert.assertEquals("The percentile " + percentile + " must be equal", histogram.getValueAtPercentile(percentile), decoded.getValueAtPercentile(percentile));
+		
+		TSLatencyHistogram empty = TSLatencyHistogram.decodeFromCompressedString(new TSLatencyHistogram().encodeToCompressedString());
+		Assert.assertEquals("The total count must be 0", 0, empty.getTotalCount());
+		Assert.assertEquals("The min value must be 0", 0, empty.getMinValue());
+	}
+	
+	private static void assertWithinPrecision(long expected, long actual, int significantDigits) {
+		double maxError = expected / Math.pow(10, significantDigits);
+		Assert.assertTrue("Value " + actual + " must be within " + maxError + " of " + expected, Math.abs(expected - actual) <= maxError);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan.stats;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link TSPlanActivityStatistics}
+ * @author mnxfst
+ */
+public class TestTSPlanActivityStatistics {
+
+	@Test
+	public void testRecordExecution() {
+		
+		TSPlanActivityStatistics statistics = new TSPlanActivityStatistics("activity");
+		Assert.assertEquals("The activity name must be 'activity'", "activity", statistics.getActivityName());
+		Assert.assertEquals("The number of executions must be 0", 0, statistics.getExecutions());
+		Assert.assertEquals("The number of errors must be 0", 0, statistics.getErrors());
+		
+		for(int i = 1; i <= 100; i++)
+			statistics.recordExecution(i * 1000L, (i % 10 == 0));
+		
+		Assert.assertEquals("The number of executions must be 100", 100, statistics.getExecutions());
+		Assert.assertEquals("The number of errors must be 10", 10, statistics.getErrors());
+		Assert.assertTrue("The max duration must be equivalent to 100000", statistics.getDurationHistogram().lowestEquivalentValue(statistics.getDurationHistogram().getMaxValue()) == statistics.getDurationHistogram().lowestEquivalentValue(100000L));
+	}
+	
+	@Test
+	public void testAddAndCopy() {
+		
+		TSPlanActivityStatistics first = new TSPlanActivityStatistics("activity", 2);
+		TSPlanActivityStatistics second = new TSPlanActivityStatistics("activity", 2);
+		for(int i = 0; i < 50; i++) {
+			first.recordExecution(1000L, false);
+			second.recordExecution(2000L, (i < 5));
+		}
+		
+		TSPlanActivityStatistics copy = first.copy();
+		Assert.assertEquals("The copy must hold 50 executions", 50, copy.getExecutions());
+		Assert.assertEquals("The activity name must be copied", "activity", copy.getActivityName());
+		
+		copy.add(second);
+		copy.add(null);
+		Assert.assertEquals("The merged statistics must hold 100 executions", 100, copy.getExecutions());
+		Assert.assertEquals("The merged statistics must hold 5 errors", 5, copy.getErrors());
+		Assert.assertEquals("The source must not be modified", 50, first.getExecutions());
+		Assert.assertEquals("The source must not be modified", 0, first.getErrors());
+	}
+	
+	@Test
+	public void testPhasesAndCounters() {
+		
+		TSPlanActivityStatistics first = new TSPlanActivityStatistics("activity", 2);
+		Assert.assertTrue("No phases must be recorded", first.getPhaseHistograms().isEmpty());
+		Assert.assertNull("The phase must be unknown", first.getPhaseHistogram("connect"));
+		Assert.assertEquals("The counter must be 0", 0, first.getCounter("status2xx"));
+		
+		for(int i = 0; i < 10; i++) {
+			first.recordPhase("connect", 1000L);
+			first.recordPhase("transfer", 5000L);
+			first.incrementCounter("status2xx");
+		}
+		first.incrementCounter("status5xx");
+		
+		Assert.assertEquals("Two phases must be recorded", 2, first.getPhaseHistograms().size());
+		Assert.assertEquals("The phases must be kept in order of occurrence", "connect", first.getPhaseHistograms().keySet().iterator().next());
+		Assert.assertEquals("The connect phase must be recorded 10 times", 10, first.getPhaseHistogram("connect").getTotalCount());
+		Assert.assertEquals("The counter must be 10", 10, first.getCounter("status2xx"));
+		Assert.assertEquals("The counter must be 1", 1, first.getCounters().get("status5xx").longValue());
+		Assert.assertEquals("The phase recording must not count as execution", 0, first.getExecutions());
+		
+		TSPlanActivityStatistics second = new TSPlanActivityStatistics("activity", 2);
+		second.recordPhase("connect", 2000L);
+		second.recordPhase("tls", 3000L);
+		second.incrementCounter("status2xx");
+		
+		TSPlanActivityStatistics copy = first.copy();
+		copy.add(second);
+		Assert.assertEquals("Three phases must be recorded", 3, copy.getPhaseHistograms().size());
+		Assert.assertEquals("The connect phase must be recorded 11 times", 11, copy.getPhaseHistogram("connect").getTotalCount());
+		Assert.assertEquals("The tls phase must be recorded once", 1, copy.getPhaseHistogram("tls").getTotalCount());
+		Assert.assertEquals("The counter must be 11", 11, copy.getCounter("status2xx"));
+		Assert.assertEquals("The source must not be modified", 10, first.getPhaseHistogram("connect").getTotalCount());
+		Assert.assertEquals("The source must not be modified", 10, first.getCounter("status2xx"));
+	}
+	
+}
@@ -0,0 +1,103 @@
+/*
+ *  ptest-server and client provides you with a performance test utility
+ *  Copyright (C) 2012  Christian Kreutzfeldt <mnxfst@googlemail.com>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package com.mnxfst.testing.plan.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link TSPlanStatisticsRecorder}
+ * @author mnxfst
+ * @since 24.02.2012
+ */
+public class TestTSPlanStatisticsRecorder {
+
+	@Test
+	public void testRecordRun() {
+		
+		TSPlanStatisticsRecorder recorder = new TSPlanStatisticsRecorder(new String[]{"first", "second"}, 2);
+		Assert.assertEquals("The recorder must hold statistics for 2 activities", 2, recorder.getActivityStatistics().size());
+		Assert.assertNull("The warm-up histogram must be null", recorder.getWarmUpDurationHistogram());
+		Assert.assertNull("The stage statistics must be null", recorder.getStageStatistics());
+		
+		recorder.recordRun(1000L, 3000L);
+		recorder.recordCorrectedRun(5000L);
+		recorder.recordWarmUpRun(2000L);
+		recorder.getActivityStatistics(0).recordExecution(500L, false);
+		recorder.getWarmUpActivityStatistics(0).recordExecution(500L, true);
+		
+		Assert.assertEquals("The number of runs must be 1", 1, recorder.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of corrected runs must be 2", 2, recorder.getCorrectedSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("The number of warm-up runs must be 1", 1, recorder.getWarmUpDurationHistogram().getTotalCount());
+		Assert.assertEquals("The activity 'first' must be executed once", 1, recorder.getActivityStatistics().get("first").getExecutions());
+		Assert.assertEquals("The warm-up execution must not be reported", 0, recorder.getActivityStatistics().get("first").getErrors());
+		Assert.assertEquals("The activity 'second' must not be executed", 0, recorder.getActivityStatistics().get("second").getExecutions());
+		
+		recorder.initStageStatistics(Arrays.asList("ramp", "peak"));
+		recorder.initStageStatistics(Arrays.asList("ignored"));
+		recorder.recordStageRun(1, 1000L, 2);
+		Assert.assertEquals("The recorder must hold statistics for 2 stages", 2, recorder.getStageStatistics().size());
+		Assert.assertEquals("The stages must be reported in order", "ramp", recorder.getStageStatistics().keySet().iterator().next());
+		Assert.assertEquals("The stage 'peak' must hold 1 run", 1, recorder.getStageStatistics().get("peak").getRuns());
+		Assert.assertEquals("The stage 'peak' must hold 2 errors", 2, recorder.getStageStatistics().get("peak").getErrors());
+	}
+	
+	@Test
+	public void testConcurrentRecording() throws Exception {
+		
+		final TSPlanStatisticsRecorder recorder = new TSPlanStatisticsRecorder(new String[]{"activity"}, 2);
+		final int numOfThreads = 8;
+		final int runsPerThread = 10000;
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[numOfThreads];
+		for(int i = 0; i < numOfThreads; i++) {
+			threads[i] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						start.await();
+					} catch(InterruptedException e) {
+						return;
+					}
+					for(int j = 0; j < runsPerThread; j++) {
+						recorder.recordRun(1000L + j, 2000L + j);
+						recorder.getActivityStatistics(0).recordExecution(500L, false);
+						recorder.getActivityStatistics(0).recordPhase("connect", 100L);
+						recorder.getActivityStatistics(0).incrementCounter("status.2xx");
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for(Thread thread : threads)
+			thread.join();
+		
+		long expected = numOfThreads * runsPerThread;
+		Assert.assertEquals("No run must be lost", expected, recorder.getSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("No corrected run must be lost", expected, recorder.getCorrectedSingleRunDurationHistogram().getTotalCount());
+		Assert.assertEquals("No execution must be lost", expected, recorder.getActivityStatistics(0).getExecutions());
+		Assert.assertEquals("No phase must be lost", expected, recorder.getActivityStatistics(0).getPhaseHistogram("connect").getTotalCount());
+		Assert.assertEquals("No counter increment must be lost", expected, recorder.getActivityStatistics(0).getCounter("status.2xx"));
+	}
+	
+}
@@ -19,20 +19,44 @@
 
 package com.mnxfst.testing.server.handler;
 
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
 import org.jboss.netty.buffer.ChannelBuffer;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.handler.codec.http.DefaultHttpRequest;
 import org.jboss.netty.handler.codec.http.HttpHeaders;
 import org.jboss.netty.handler.codec.http.HttpMethod;
 import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
 import org.jboss.netty.handler.codec.http.HttpVersion;
 import org.jboss.netty.handler.codec.http.QueryStringDecoder;
 import org.jboss.netty.util.CharsetUtil;
 import org.junit.Test;
 
+import com.mnxfst.testing.exception.TSPlanActivityExecutionException;
+import com.mnxfst.testing.exception.TSPlanConfigurationFormatException;
+import com.mnxfst.testing.exception.TSPlanInstantiationException;
+import com.mnxfst.testing.plan.TSPlanCache;
+import com.mnxfst.testing.plan.TSPlanExecEnvironmentResult;
+import com.mnxfst.testing.plan.TSPlanRegistry;
+
 /**
  * Test case for {@link TSHttpRequestHandler}
  * @author ckreutzfeldt
@@ -70,4 +94,250 @@ public class TestTSHttpRequestHandler {
 
 	}
 	
+	@Test
+	public void testRequestProcessingExecutor() throws Exception {
+		
+		ExecutorService executor = TSHttpRequestHandler.createRequestProcessingExecutor(1, 1);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final boolean[] daemon = new boolean[1];
+		Runnable blocking = new Runnable() {
+			public void run() {
+				daemon[0] = Thread.currentThread().isDaemon();
+				started.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					//
+				}
+			}
+		};
+		
+		executor.execute(blocking);
+		Assert.assertTrue("The worker must pick up the first request", started.await(5, TimeUnit.SECONDS));
+		executor.execute(blocking);
+		try {
+			executor.execute(blocking);
+			Assert.fail("The queue is full, thus the request must be rejected");
+		} catch(RejectedExecutionException e) {
+			//
+		}
+		
+		release.countDown();
+		executor.shutdown();
+		Assert.assertTrue("The executor must terminate", executor.awaitTermination(5, TimeUnit.SECONDS));
+		Assert.assertTrue("The workers must not keep the server alive", daemon[0]);
+	}
+	
+	@Test
+	public void testRequestDispatching() throws Exception {
+		
+		File dataDirectory = new File(FileUtils.getTempDirectory(), "ptest-handler-" + System.nanoTime());
+		ExecutorService executor = TSHttpRequestHandler.createRequestProcessingExecutor(1, 1);
+		TSHttpRequestHandler handler = new TSHttpRequestHandler("localhost", 9090, new TSPlanCache(), new TSPlanRegistry(dataDirectory), executor);
+		ResponseRecorder recorder = new ResponseRecorder();
+		String ioThread = Thread.currentThread().getName();
+		
+		// keep the single worker busy
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				started.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					//
+				}
+			}
+		});
+		Assert.assertTrue("The worker must pick up the blocking task", started.await(5, TimeUnit.SECONDS));
+		
+		try {
+			// result collection is answered on the i/o thread even though the worker is busy
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?collect=1&resultIdentifier=unknown", null));
+			Assert.assertEquals("The collect request must be answered inline", 1, recorder.getResponseCount());
+			Assert.assertEquals("The collect request must be answered by the i/o thread", ioThread, recorder.getThreadName(0));
+			
+			// the execution request waits in the queue, the registration received by another channel is rejected as the queue is full
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?execute=1&threads=1&recurrences=1&recurrencetype=times&planIdentifier=unknown", null));
+			Assert.assertEquals("The execution request must be queued", 1, recorder.getResponseCount());
+			TSHttpRequestHandler otherHandler = new TSHttpRequestHandler("localhost", 9090, new TSPlanCache(), new TSPlanRegistry(dataDirectory), executor);
+			ResponseRecorder otherRecorder = new ResponseRecorder();
+			otherHandler.messageReceived(otherRecorder.getContext(), otherRecorder.createEvent(HttpMethod.POST, "/?registerPlan=1", FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"))));
+			Assert.assertEquals("The rejected request must be answered inline", 1, otherRecorder.getResponseCount());
+			Assert.assertEquals("The rejected request must be answered by the i/o thread", ioThread, otherRecorder.getThreadName(0));
+			Assert.assertTrue("The server must report being busy", otherRecorder.getContent(0).contains("<errorCode>12</errorCode>"));
+			
+			release.countDown();
+			Assert.assertTrue("The execution request must be answered", recorder.awaitResponses(2, 5000));
+			Assert.assertFalse("The execution request must be answered off the i/o thread", ioThread.equals(recorder.getThreadName(1)));
+			Assert.assertTrue("The plan identifier is unknown", recorder.getContent(1).contains("<errorCode>11</errorCode>"));
+			
+			// registrations and removals are processed by the worker as well
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.POST, "/?registerPlan=1", FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"))));
+			Assert.assertTrue("The registration must be answered", recorder.awaitResponses(3, 5000));
+			Assert.assertFalse("The registration must be answered off the i/o thread", ioThread.equals(recorder.getThreadName(2)));
+			Assert.assertTrue("The plan must be registered", recorder.getContent(2).contains("<responseCode>5</responseCode>"));
+			
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?unregisterPlan=1&planIdentifier=unknown", null));
+			Assert.assertTrue("The removal must be answered", recorder.awaitResponses(4, 5000));
+			Assert.assertFalse("The removal must be answered off the i/o thread", ioThread.equals(recorder.getThreadName(3)));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+			FileUtils.deleteQuietly(dataDirectory);
+		}
+	}
+	
+	@Test
+	public void testPipelinedRequests() throws Exception {
+		
+		File dataDirectory = new File(FileUtils.getTempDirectory(), "ptest-handler-" + System.nanoTime());
+		final CountDownLatch registering = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		TSPlanRegistry registry = new TSPlanRegistry(dataDirectory) {
+			public String registerPlan(byte[] content) throws TSPlanConfigurationFormatException, TSPlanInstantiationException, TSPlanActivityExecutionException {
+				registering.countDown();
+				try {
+					release.await();
+				} catch(InterruptedException e) {
+					//
+				}
+				return super.registerPlan(content);
+			}
+		};
+		
+		// enough workers to answer the second request while the first one is still being processed
+		ExecutorService executor = TSHttpRequestHandler.createRequestProcessingExecutor(4, 16);
+		TSHttpRequestHandler handler = new TSHttpRequestHandler("localhost", 9090, new TSPlanCache(), registry, executor);
+		ResponseRecorder recorder = new ResponseRecorder();
+		String ioThread = Thread.currentThread().getName();
+		try {
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.POST, "/?registerPlan=1", FileUtils.readFileToByteArray(new File("src/test/resources/sampleTestPlan.xml"))));
+			Assert.assertTrue("The registration must be processed", registering.await(5, TimeUnit.SECONDS));
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?unregisterPlan=1&planIdentifier=unknown", null));
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?collect=1&resultIdentifier=unknown", null));
+			Assert.assertFalse("The following requests must wait for the registration", recorder.awaitResponses(1, 200));
+			
+			release.countDown();
+			Assert.assertTrue("All requests must be answered", recorder.awaitResponses(3, 5000));
+			Assert.assertTrue("The registration must be answered first", recorder.getContent(0).contains("<responseCode>5</responseCode>"));
+			Assert.assertTrue("The removal must be answered second", recorder.getContent(1).contains("<errorCode>11</errorCode>"));
+			Assert.assertTrue("The collect request must be answered last", recorder.getContent(2).contains("<responseCode>3</responseCode>"));
+			Assert.assertFalse("The queued collect request must be answered off the i/o thread", ioThread.equals(recorder.getThreadName(2)));
+			
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?unregisterPlan=1&planIdentifier=unknown", null));
+			Assert.assertTrue("Further requests must be answered", recorder.awaitResponses(4, 5000));
+		} finally {
+			release.countDown();
+			executor.shutdown();
+			FileUtils.deleteQuietly(dataDirectory);
+		}
+	}
+	
+	@Test
+	public void testCollectResults() throws Exception {
+		
+		ExecutorService executor = TSHttpRequestHandler.createRequestProcessingExecutor(1, 1);
+		TSHttpRequestHandler handler = new TSHttpRequestHandler("localhost", 9090, new TSPlanCache(), new TSPlanRegistry(), executor);
+		ResponseRecorder recorder = new ResponseRecorder();
+		try {
+			TSPlanExecEnvironmentResult result = new TSPlanExecEnvironmentResult("env-1", "collected plan");
+			result.setErrors(3);
+			TSHttpRequestHandler.addResponse("collect-test", result);
+			
+			// the message is encoded when the result is added, collecting it returns the stored message
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?collect=1&resultIdentifier=collect-test", null));
+			Assert.assertEquals("The collect request must be answered inline", 1, recorder.getResponseCount());
+			Assert.assertTrue("The results must be contained", recorder.getContent(0).contains("<responseCode>2</responseCode>"));
+			Assert.assertTrue("The results must be contained", recorder.getContent(0).contains("<testplan>collected plan</testplan>"));
+			Assert.assertTrue("The results must be contained", recorder.getContent(0).contains("<errors>3</errors>"));
+			
+			handler.messageReceived(recorder.getContext(), recorder.createEvent(HttpMethod.GET, "/?collect=1&resultIdentifier=unknown", null));
+			Assert.assertEquals("The collect request must be answered inline", 2, recorder.getResponseCount());
+			Assert.assertTrue("The results must be pending", recorder.getContent(1).contains("<responseCode>3</responseCode>"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Provides channel handler context, message events and channel backed by dynamic proxies and records the responses 
+	 * written to the channel along with the name of the writing thread
+	 */
+	private static class ResponseRecorder implements InvocationHandler {
+		
+		private final List<String> threadNames = new ArrayList<String>();
+		private final List<String> contents = new ArrayList<String>();
+		private final Channel channel = (Channel)createProxy(Channel.class);
+		private final ChannelHandlerContext context = (ChannelHandlerContext)createProxy(ChannelHandlerContext.class);
+		
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if(method.getName().equals("write") && args != null && args.length > 0 && args[0] instanceof HttpResponse) {
+				synchronized(this) {
+					threadNames.add(Thread.currentThread().getName());
+					contents.add(((HttpResponse)args[0]).getContent().toString(CharsetUtil.UTF_8));
+					notifyAll();
+				}
+			}
+			if(method.getName().equals("getChannel"))
+				return channel;
+			if(method.getReturnType() == ChannelFuture.class)
+				return createProxy(ChannelFuture.class);
+			if(method.getName().equals("hashCode"))
+				return Integer.valueOf(System.identityHashCode(proxy));
+			if(method.getName().equals("equals"))
+				return Boolean.valueOf(proxy == args[0]);
+			if(method.getReturnType() == boolean.class)
+				return Boolean.FALSE;
+			if(method.getReturnType() == int.class)
+				return Integer.valueOf(0);
+			return null;
+		}
+		
+		public MessageEvent createEvent(HttpMethod method, String uri, byte[] content) {
+			final HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, method, uri);
+			request.setHeader(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.KEEP_ALIVE);
+			if(content != null) {
+				request.setContent(ChannelBuffers.wrappedBuffer(content));
+				request.setHeader(HttpHeaders.Names.CONTENT_LENGTH, content.length);
+			}
+			return (MessageEvent)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{MessageEvent.class}, new InvocationHandler() {
+				public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+					if(m.getName().equals("getMessage"))
+						return request;
+					return ResponseRecorder.this.invoke(proxy, m, args);
+				}
+			});
+		}
+		
+		public synchronized boolean awaitResponses(int count, long timeoutMillis) throws InterruptedException {
+			long end = System.currentTimeMillis() + timeoutMillis;
+			while(contents.size() < count && System.currentTimeMillis() < end)
+				wait(Math.max(1, end - System.currentTimeMillis()));
+			return contents.size() >= count;
+		}
+		
+		public synchronized int getResponseCount() {
+			return contents.size();
+		}
+		
+		public synchronized String getThreadName(int index) {
+			return threadNames.get(index);
+		}
+		
+		public synchronized String getContent(int index) {
+			return contents.get(index);
+		}
+		
+		public ChannelHandlerContext getContext() {
+			return context;
+		}
+		
+		private Object createProxy(Class<?> type) {
+			return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, this);
+		}
+	}
+	
 }